@@ -0,0 +1,138 @@
+package processing.core;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Composites a stack of layers with blend() and copy(), the way an
+ * installation that builds its frame on the CPU would. Each invocation
+ * is one frame, with one thread and with all of them. The blitter splits
+ * its work across the pool it is called from, so each frame is drawn
+ * inside a pool of the given size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BlendBench implements PConstants {
+
+  @Param({ "1920x1080" })
+  public String size;
+
+  @Param({ "24" })
+  public int layers;
+
+  /** Size of the pool, or "all" for one thread per core. */
+  @Param({ "1", "all" })
+  public String threads;
+
+  PImage frame;
+  PImage[] stack;
+  ForkJoinPool pool;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    String[] wh = size.split("x");
+    int width = Integer.parseInt(wh[0]);
+    int height = Integer.parseInt(wh[1]);
+    frame = new PImage(width, height, RGB);
+    stack = new PImage[layers];
+    for (int i = 0; i < layers; i++) {
+      stack[i] = layer(width, height, i);
+    }
+    pool = new ForkJoinPool(threads.equals("all") ?
+                            Runtime.getRuntime().availableProcessors() :
+                            Integer.parseInt(threads));
+  }
+
+
+  @TearDown(Level.Trial)
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+
+  PImage draw(int mode, boolean scaled) {
+    int w = frame.width;
+    int h = frame.height;
+    pool.submit(() -> {
+      for (PImage layer : stack) {
+        if (scaled) {
+          // draw the middle of each layer up a little larger
+          frame.blend(layer, w/8, h/8, w*3/4, h*3/4, 0, 0, w, h, mode);
+        } else {
+          frame.blend(layer, 0, 0, w, h, 0, 0, w, h, mode);
+        }
+      }
+    }).join();
+    return frame;
+  }
+
+
+  @Benchmark
+  public PImage copy() {
+    return draw(REPLACE, false);
+  }
+
+
+  @Benchmark
+  public PImage copyScaled() {
+    return draw(REPLACE, true);
+  }
+
+
+  @Benchmark
+  public PImage blend() {
+    return draw(BLEND, false);
+  }
+
+
+  @Benchmark
+  public PImage blendScaled() {
+    return draw(BLEND, true);
+  }
+
+
+  @Benchmark
+  public PImage add() {
+    return draw(ADD, false);
+  }
+
+
+  @Benchmark
+  public PImage multiply() {
+    return draw(MULTIPLY, false);
+  }
+
+
+  @Benchmark
+  public PImage overlay() {
+    return draw(OVERLAY, false);
+  }
+
+
+  /** A soft shape on a transparent background, like a sprite or a mask. */
+  static PImage layer(int width, int height, int seed) {
+    Random random = new Random(seed);
+    PImage image = new PImage(width, height, ARGB);
+    float cx = random.nextFloat() * width;
+    float cy = random.nextFloat() * height;
+    float radius = (0.1f + random.nextFloat() * 0.3f) * height;
+    int rgb = random.nextInt() & 0xffffff;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        float d = (float) Math.hypot(x - cx, y - cy) / radius;
+        int alpha = (d < 0.8f) ? 255 : (d < 1) ? (int) ((1 - d) * 5 * 255) : 0;
+        image.pixels[y*width + x] = (alpha << 24) | rgb;
+      }
+    }
+    return image;
+  }
+}
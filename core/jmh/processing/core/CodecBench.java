@@ -0,0 +1,148 @@
+package processing.core;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Loading TIFF and TGA files from disk, the way loadImage() does it, for
+ * each kind of compression, with one thread and with all of them. The
+ * decoders split their work across the pool they are called from, so
+ * each invocation runs inside a pool of the given size. ImageIO reading
+ * the same TIFF files is in a nested class for reference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CodecBench implements PConstants {
+
+  @Param({ "tiff", "tiff-lzw", "tiff-packbits", "tga-rle" })
+  public String format;
+
+  /** Size of the pool, or "all" for one thread per core. */
+  @Param({ "1", "all" })
+  public String threads;
+
+  File file;
+  ForkJoinPool pool;
+
+
+  @Setup(Level.Trial)
+  public void save() throws IOException {
+    file = write(format);
+    pool = new ForkJoinPool(threads.equals("all") ?
+                            Runtime.getRuntime().availableProcessors() :
+                            Integer.parseInt(threads));
+  }
+
+
+  @TearDown(Level.Trial)
+  public void delete() {
+    pool.shutdown();
+    file.delete();
+  }
+
+
+  @Benchmark
+  public PImage load() {
+    return pool.submit(() -> {
+      try (InputStream input = new FileInputStream(file)) {
+        return format.startsWith("tga") ?
+          PImage.loadTGA(input) : PImage.loadTIFF(input);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }).join();
+  }
+
+
+  /** Save the test image in a temporary file with this format. */
+  static File write(String format) throws IOException {
+    PImage image = image(3840, 2160);
+    boolean tga = format.startsWith("tga");
+    File file = File.createTempFile("codec", tga ? ".tga" : ".tif");
+    try (OutputStream output = new FileOutputStream(file)) {
+      if (tga) {
+        image.saveTGA(output);
+      } else if (format.equals("tiff-lzw")) {
+        image.saveTIFF(output, TIFFCodec.LZW);
+      } else if (format.equals("tiff-packbits")) {
+        image.saveTIFF(output, TIFFCodec.PACKBITS);
+      } else {
+        image.saveTIFF(output, TIFFCodec.NONE);
+      }
+    }
+    return file;
+  }
+
+
+  /** Something like a render pass: smooth shading, flat areas, and noise. */
+  static PImage image(int width, int height) {
+    Random random = new Random(16);
+    PImage image = new PImage(width, height, RGB);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int c;
+        if (y < height / 3) {
+          c = 0x203040;
+        } else {
+          int r = (x * 255 / width) & 0xff;
+          int g = (y * 255 / height) & 0xff;
+          int b = (y > 2 * height / 3) ? random.nextInt(256) : 128;
+          c = (r << 16) | (g << 8) | b;
+        }
+        image.pixels[y*width + x] = 0xff000000 | c;
+      }
+    }
+    return image;
+  }
+
+
+  /** The same TIFF files read with ImageIO. */
+  @State(Scope.Benchmark)
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Fork(1)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public static class ImageIORead {
+
+    @Param({ "tiff", "tiff-lzw", "tiff-packbits" })
+    public String format;
+
+    File file;
+
+
+    @Setup(Level.Trial)
+    public void save() throws IOException {
+      file = write(format);
+    }
+
+
+    @TearDown(Level.Trial)
+    public void delete() {
+      file.delete();
+    }
+
+
+    @Benchmark
+    public BufferedImage load() throws IOException {
+      return ImageIO.read(file);
+    }
+  }
+}
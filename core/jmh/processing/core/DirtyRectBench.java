@@ -0,0 +1,114 @@
+package processing.core;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import processing.awt.PGraphicsJava2D;
+
+
+/**
+ * Paints a few small dabs into the pixels of a 4K canvas every frame,
+ * the way a drawing or cellular automaton sketch would, and compares
+ * marking the whole image with updatePixels() to passing each dab's
+ * rectangle. Runs headless with the Java2D renderer, once updating the
+ * renderer's own pixels and once drawing a changed PImage with image().
+ * Each invocation is one frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DirtyRectBench implements PConstants {
+  static final int DAB = 16;
+
+  @Param({ "3840x2160" })
+  public String size;
+
+  @Param({ "20" })
+  public int dabs;
+
+  /** "whole" calls updatePixels(), "regions" passes each dab's rectangle. */
+  @Param({ "whole", "regions" })
+  public String update;
+
+  PGraphicsJava2D pg;
+  PImage canvas;
+  boolean regions;
+  Random random;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    String[] wh = size.split("x");
+    int width = Integer.parseInt(wh[0]);
+    int height = Integer.parseInt(wh[1]);
+    regions = update.equals("regions");
+
+    pg = new PGraphicsJava2D();
+    pg.setParent(new PApplet());
+    pg.setPrimary(false);
+    pg.setSize(width, height);
+    pg.beginDraw();
+    pg.background(0);
+    pg.loadPixels();
+    pg.endDraw();
+
+    canvas = new PImage(width, height, RGB);
+    random = new Random(1);
+  }
+
+
+  /** Change pixels[] of the renderer itself, then update it. */
+  @Benchmark
+  public PImage renderer() {
+    pg.beginDraw();
+    for (int i = 0; i < dabs; i++) {
+      int x = random.nextInt(pg.pixelWidth - DAB);
+      int y = random.nextInt(pg.pixelHeight - DAB);
+      dab(pg.pixels, pg.pixelWidth, x, y, 0xff000000 | random.nextInt());
+      if (regions) {
+        pg.updatePixels(x, y, DAB, DAB);
+      }
+    }
+    if (!regions) {
+      pg.updatePixels();
+    }
+    pg.setModified(false);
+    pg.g2.dispose();  // what endDraw() does, minus its loadPixels()
+    return pg;
+  }
+
+
+  /** Change pixels[] of an image, and draw it with image(). */
+  @Benchmark
+  public PImage image() {
+    pg.beginDraw();
+    for (int i = 0; i < dabs; i++) {
+      int x = random.nextInt(canvas.pixelWidth - DAB);
+      int y = random.nextInt(canvas.pixelHeight - DAB);
+      dab(canvas.pixels, canvas.pixelWidth, x, y, 0xff000000 | random.nextInt());
+      if (regions) {
+        canvas.updatePixels(x, y, DAB, DAB);
+      }
+    }
+    if (!regions) {
+      canvas.updatePixels();
+    }
+    pg.image(canvas, 0, 0);
+    pg.g2.dispose();
+    return pg;
+  }
+
+
+  static void dab(int[] pixels, int stride, int x, int y, int color) {
+    for (int row = y; row < y + DAB; row++) {
+      for (int col = x; col < x + DAB; col++) {
+        pixels[row * stride + col] = color;
+      }
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package processing.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import processing.data.Datasets;
+
+
+/**
+ * PImage.filter() at screen sizes, with one thread and with all of them.
+ * The filters split their work across the pool they are called from, so
+ * each invocation runs inside a pool of the given size. PImageBench has
+ * the same filters on square images, called from the benchmark thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FilterBench implements PConstants {
+
+  @Param({ "640x480", "1920x1080", "3840x2160" })
+  public String size;
+
+  /** Size of the pool, or "all" for one thread per core. */
+  @Param({ "1", "all" })
+  public String threads;
+
+  int[] source;
+  PImage image;
+  ForkJoinPool pool;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    String[] wh = size.split("x");
+    int width = Integer.parseInt(wh[0]);
+    int height = Integer.parseInt(wh[1]);
+    source = Datasets.pixels(width, height);
+    image = new PImage(width, height, ARGB);
+    pool = new ForkJoinPool(threads.equals("all") ?
+                            Runtime.getRuntime().availableProcessors() :
+                            Integer.parseInt(threads));
+  }
+
+
+  @TearDown(Level.Trial)
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+
+  @Setup(Level.Invocation)
+  public void reset() {
+    // the filters work in place, and a blurred image blurs faster
+    System.arraycopy(source, 0, image.pixels, 0, source.length);
+  }
+
+
+  PImage filter(int kind, float param) {
+    pool.submit(() -> {
+      if (param < 0) {
+        image.filter(kind);
+      } else {
+        image.filter(kind, param);
+      }
+    }).join();
+    return image;
+  }
+
+
+  @Benchmark
+  public PImage blur1() {
+    return filter(BLUR, 1);
+  }
+
+
+  @Benchmark
+  public PImage blur6() {
+    // radius 21, where the separable kernel matters most
+    return filter(BLUR, 6);
+  }
+
+
+  @Benchmark
+  public PImage gray() {
+    return filter(GRAY, -1);
+  }
+
+
+  @Benchmark
+  public PImage threshold() {
+    return filter(THRESHOLD, 0.5f);
+  }
+
+
+  @Benchmark
+  public PImage posterize() {
+    return filter(POSTERIZE, 4);
+  }
+
+
+  @Benchmark
+  public PImage erode() {
+    return filter(ERODE, -1);
+  }
+}
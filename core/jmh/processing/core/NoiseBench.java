@@ -0,0 +1,70 @@
+package processing.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Perlin noise() with the default octaves and falloff, sampled along
+ * a line, a grid, and a volume.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class NoiseBench {
+
+  @Param({ "1000", "100000" })
+  public int samples;
+
+  PApplet applet;
+
+
+  @Setup(Level.Trial)
+  public void setup() {
+    applet = new PApplet();
+    applet.noiseSeed(0);
+    applet.noise(0);  // builds the table outside the measurement
+  }
+
+
+  @Benchmark
+  public float noise1D() {
+    float sum = 0;
+    for (int i = 0; i < samples; i++) {
+      sum += applet.noise(i * 0.01f);
+    }
+    return sum;
+  }
+
+
+  @Benchmark
+  public float noise2D() {
+    int side = (int) Math.sqrt(samples);
+    float sum = 0;
+    for (int y = 0; y < side; y++) {
+      for (int x = 0; x < side; x++) {
+        sum += applet.noise(x * 0.01f, y * 0.01f);
+      }
+    }
+    return sum;
+  }
+
+
+  @Benchmark
+  public float noise3D() {
+    int side = (int) Math.cbrt(samples);
+    float sum = 0;
+    for (int z = 0; z < side; z++) {
+      for (int y = 0; y < side; y++) {
+        for (int x = 0; x < side; x++) {
+          sum += applet.noise(x * 0.01f, y * 0.01f, z * 0.01f);
+        }
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,96 @@
+package processing.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import processing.data.Datasets;
+
+
+/**
+ * PImage filter() and blend() on square ARGB images. Each invocation
+ * starts from a fresh copy of the source pixels, since the filters
+ * work in place and a blurred image blurs faster.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PImageBench implements PConstants {
+
+  @Param({ "256", "1024", "2048" })
+  public int size;
+
+  int[] source;
+  PImage image;
+  PImage other;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    source = Datasets.pixels(size, size);
+    other = new PImage(size, size, ARGB);
+    for (int i = 0; i < source.length; i++) {
+      // same picture flipped, so the blend isn't of an image with itself
+      other.pixels[i] = source[source.length - 1 - i];
+    }
+    image = new PImage(size, size, ARGB);
+  }
+
+
+  @Setup(Level.Invocation)
+  public void reset() {
+    System.arraycopy(source, 0, image.pixels, 0, source.length);
+  }
+
+
+  @Benchmark
+  public PImage blur() {
+    image.filter(BLUR, 3);
+    return image;
+  }
+
+
+  @Benchmark
+  public PImage gray() {
+    image.filter(GRAY);
+    return image;
+  }
+
+
+  @Benchmark
+  public PImage invert() {
+    image.filter(INVERT);
+    return image;
+  }
+
+
+  @Benchmark
+  public PImage threshold() {
+    image.filter(THRESHOLD, 0.5f);
+    return image;
+  }
+
+
+  @Benchmark
+  public PImage erode() {
+    image.filter(ERODE);
+    return image;
+  }
+
+
+  @Benchmark
+  public PImage blendMultiply() {
+    image.blend(other, 0, 0, size, size, 0, 0, size, size, MULTIPLY);
+    return image;
+  }
+
+
+  @Benchmark
+  public PImage blendAdd() {
+    image.blend(other, 0, 0, size, size, 0, 0, size, size, ADD);
+    return image;
+  }
+}
@@ -0,0 +1,82 @@
+package processing.core;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import processing.data.Datasets;
+
+
+/**
+ * Transforming arrays of points by a PMatrix3D, and the matrix
+ * operations the renderers do for every pushMatrix()/rotate().
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PMatrix3DBench {
+
+  @Param({ "1000", "100000" })
+  public int points;
+
+  PVector[] source;
+  PVector[] target;
+  PMatrix3D matrix;
+  PMatrix3D other;
+
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random random = new Random(Datasets.SEED);
+    source = new PVector[points];
+    target = new PVector[points];
+    for (int i = 0; i < points; i++) {
+      source[i] = new PVector(random.nextFloat(), random.nextFloat(), random.nextFloat());
+      target[i] = new PVector();
+    }
+    matrix = new PMatrix3D();
+    matrix.translate(10, 20, 30);
+    matrix.rotate(0.3f, 1, 2, 3);
+    matrix.scale(2);
+    other = matrix.get();
+    other.invert();
+  }
+
+
+  @Benchmark
+  public PVector[] multPoints() {
+    for (int i = 0; i < points; i++) {
+      matrix.mult(source[i], target[i]);
+    }
+    return target;
+  }
+
+
+  @Benchmark
+  public PMatrix3D apply() {
+    PMatrix3D result = matrix.get();
+    result.apply(other);
+    return result;
+  }
+
+
+  @Benchmark
+  public void invert(Blackhole bh) {
+    PMatrix3D result = matrix.get();
+    bh.consume(result.invert());
+    bh.consume(result);
+  }
+
+
+  @Benchmark
+  public PMatrix3D rotate() {
+    PMatrix3D result = matrix.get();
+    result.rotate(0.1f, 0.2f, 0.3f, 0.4f);
+    return result;
+  }
+}
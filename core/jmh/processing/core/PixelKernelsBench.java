@@ -0,0 +1,95 @@
+package processing.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import processing.data.Datasets;
+
+
+/**
+ * The per-pixel filters and the OpenGL byte order conversion on a large
+ * image, plain Java against the Vector API versions, on a single thread
+ * so that only the vectorization is measured. The Vector API is used when
+ * the JVM was started with the incubator module, which the jmh target
+ * does on JDK 17 and later; without it, both kinds are the plain ones.
+ * gray, invert, and mask have no Vector API versions, since HotSpot
+ * already vectorizes those loops; they're here to keep checking that.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class PixelKernelsBench {
+
+  @Param({ "3840x2160" })
+  public String size;
+
+  @Param({ "plain", "vector" })
+  public String kernels;
+
+  int[] source;
+  int[] pixels;
+  int[] mask;
+  PixelKernels kernel;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    String[] wh = size.split("x");
+    source = Datasets.pixels(Integer.parseInt(wh[0]), Integer.parseInt(wh[1]));
+    pixels = new int[source.length];
+    mask = source.clone();
+    kernel = kernels.equals("vector") ? PixelKernels.get() : new PixelKernels();
+  }
+
+
+  @Setup(Level.Invocation)
+  public void reset() {
+    System.arraycopy(source, 0, pixels, 0, source.length);
+  }
+
+
+  @Benchmark
+  public int[] gray() {
+    kernel.gray(pixels, 0, pixels.length);
+    return pixels;
+  }
+
+
+  @Benchmark
+  public int[] invert() {
+    kernel.invert(pixels, 0, pixels.length);
+    return pixels;
+  }
+
+
+  @Benchmark
+  public int[] threshold() {
+    kernel.threshold(pixels, 0, pixels.length, 128);
+    return pixels;
+  }
+
+
+  @Benchmark
+  public int[] posterize() {
+    kernel.posterize(pixels, 0, pixels.length, 4);
+    return pixels;
+  }
+
+
+  @Benchmark
+  public int[] mask() {
+    kernel.mask(pixels, mask, 0, pixels.length);
+    return pixels;
+  }
+
+
+  @Benchmark
+  public int[] toNative() {
+    kernel.convert(pixels, 0, pixels, 0, pixels.length, PixelKernels.SWAP_RED_BLUE);
+    return pixels;
+  }
+}
@@ -0,0 +1,201 @@
+package processing.core;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * PNG encoding of a 1080p frame at a few compression levels, with one
+ * thread and with all of them, next to ImageIO. The Recording benchmark
+ * saves frames through a FrameRecorder as fast as they can be submitted,
+ * and reports the time each save() takes in draw(), along with how many
+ * frames were saved and dropped with each policy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RecorderBench implements PConstants {
+
+  @Param({ "0", "1", "4", "6", "9" })
+  public int level;
+
+  /** Size of the pool, or "all" for one thread per core. */
+  @Param({ "1", "all" })
+  public String threads;
+
+  PImage frame;
+  ByteArrayOutputStream output;
+  ForkJoinPool pool;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    frame = frame(1920, 1080, 0);
+    output = new ByteArrayOutputStream();
+    pool = new ForkJoinPool(threads.equals("all") ?
+                            Runtime.getRuntime().availableProcessors() :
+                            Integer.parseInt(threads));
+  }
+
+
+  @TearDown(Level.Trial)
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+
+  @Benchmark
+  public int encode() {
+    output.reset();
+    pool.submit(() -> {
+      try {
+        PNGEncoder.write(output, frame.pixels, frame.width, frame.height,
+                         RGB, level);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }).join();
+    return output.size();
+  }
+
+
+  /** A gradient with some noise and a moving square, like a sketch. */
+  static PImage frame(int width, int height, int index) {
+    Random random = new Random(index);
+    PImage image = new PImage(width, height, RGB);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int r = (x * 255 / width + random.nextInt(8)) & 0xff;
+        int g = (y * 255 / height) & 0xff;
+        boolean inside = Math.abs(x - 200 - index * 40) < 150 && Math.abs(y - 540) < 150;
+        int b = inside ? 240 : 40;
+        image.pixels[y*width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+      }
+    }
+    return image;
+  }
+
+
+  /** The same frame through ImageIO, which has no level to choose. */
+  @State(Scope.Benchmark)
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Fork(1)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public static class ImageIOEncode {
+    BufferedImage image;
+    ByteArrayOutputStream output;
+
+
+    @Setup(Level.Trial)
+    public void load() {
+      PImage frame = frame(1920, 1080, 0);
+      image = new BufferedImage(frame.width, frame.height,
+                                BufferedImage.TYPE_INT_RGB);
+      image.setRGB(0, 0, frame.width, frame.height, frame.pixels, 0, frame.width);
+      output = new ByteArrayOutputStream();
+    }
+
+
+    @Benchmark
+    public int encode() throws IOException {
+      output.reset();
+      ImageIO.write(image, "png", output);
+      return output.size();
+    }
+  }
+
+
+  /**
+   * Frames submitted back to back at compression level 1. With BLOCK, the
+   * time per save() is how long the encoders take per frame; with the
+   * other policies it stays short, and the saved and dropped counters
+   * show what was lost.
+   */
+  @State(Scope.Benchmark)
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Fork(1)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public static class Recording {
+
+    @Param({ "BLOCK", "DROP_NEWEST", "DROP_OLDEST" })
+    public String policy;
+
+    PImage[] sequence;
+    File folder;
+    FrameRecorder recorder;
+    int index;
+
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+      sequence = new PImage[8];
+      for (int i = 0; i < sequence.length; i++) {
+        sequence[i] = frame(1920, 1080, i);
+      }
+      folder = Files.createTempDirectory("recorder").toFile();
+    }
+
+
+    @Setup(Level.Iteration)
+    public void start() {
+      int kind = policy.equals("BLOCK") ? FrameRecorder.BLOCK :
+        policy.equals("DROP_NEWEST") ? FrameRecorder.DROP_NEWEST :
+        FrameRecorder.DROP_OLDEST;
+      recorder = new FrameRecorder(new PApplet());
+      recorder.policy(kind).compression(1);
+    }
+
+
+    @TearDown(Level.Iteration)
+    public void stop() {
+      recorder.dispose();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void delete() {
+      for (File file : folder.listFiles()) {
+        file.delete();
+      }
+      folder.delete();
+    }
+
+
+    @Benchmark
+    public boolean save(Counts counts) {
+      // the same few names over and over, so the disk doesn't fill up
+      int i = index++ % sequence.length;
+      boolean queued =
+        recorder.save(sequence[i], new File(folder, i + ".png").getAbsolutePath());
+      counts.saved = recorder.saved();
+      counts.dropped = recorder.dropped();
+      return queued;
+    }
+  }
+
+
+  /** Frames the recorder saved and dropped during each iteration. */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Counts {
+    public long saved;
+    public long dropped;
+  }
+}
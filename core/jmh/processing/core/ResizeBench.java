@@ -0,0 +1,122 @@
+package processing.core;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import processing.data.Datasets;
+
+
+/**
+ * PImage.resize() with each filter, shrinking a photo to a 256 pixel wide
+ * thumbnail and enlarging 960x540 to 3840x2160, with one thread and with
+ * all of them. Resizing works on the pool it is called from, so each
+ * invocation runs inside a pool of the given size. Java2D has a bilinear
+ * drawImage() thumbnail for reference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ResizeBench implements PConstants {
+
+  @Param({ "NEAREST", "BILINEAR", "BICUBIC", "LANCZOS" })
+  public String filter;
+
+  /** Size of the pool, or "all" for one thread per core. */
+  @Param({ "1", "all" })
+  public String threads;
+
+  static final int PHOTO_WIDTH = 4000;
+  static final int PHOTO_HEIGHT = 3000;
+
+  int kind;
+  PImage photo;
+  PImage small;
+  PImage image;
+  ForkJoinPool pool;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    switch (filter) {
+    case "NEAREST": kind = NEAREST; break;
+    case "BILINEAR": kind = BILINEAR; break;
+    case "BICUBIC": kind = BICUBIC; break;
+    default: kind = LANCZOS; break;
+    }
+    photo = image(PHOTO_WIDTH, PHOTO_HEIGHT);
+    small = image(960, 540);
+    pool = new ForkJoinPool(threads.equals("all") ?
+                            Runtime.getRuntime().availableProcessors() :
+                            Integer.parseInt(threads));
+  }
+
+
+  @TearDown(Level.Trial)
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+
+  @Benchmark
+  public PImage thumbnail() {
+    image = photo.copy();
+    pool.submit(() -> image.resize(256, 0, kind)).join();
+    return image;
+  }
+
+
+  @Benchmark
+  public PImage enlarge() {
+    image = small.copy();
+    pool.submit(() -> image.resize(3840, 2160, kind)).join();
+    return image;
+  }
+
+
+  static PImage image(int width, int height) {
+    PImage image = new PImage(width, height, ARGB);
+    image.pixels = Datasets.pixels(width, height);
+    return image;
+  }
+
+
+  /** The same thumbnail with Java2D, which has no filter to choose. */
+  @State(Scope.Benchmark)
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Fork(1)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public static class Java2D {
+    BufferedImage source;
+
+
+    @Setup(Level.Trial)
+    public void load() {
+      int[] pixels = Datasets.pixels(PHOTO_WIDTH, PHOTO_HEIGHT);
+      source = new BufferedImage(PHOTO_WIDTH, PHOTO_HEIGHT,
+                                 BufferedImage.TYPE_INT_ARGB);
+      source.setRGB(0, 0, PHOTO_WIDTH, PHOTO_HEIGHT, pixels, 0, PHOTO_WIDTH);
+    }
+
+
+    @Benchmark
+    public BufferedImage thumbnail() {
+      BufferedImage thumb = new BufferedImage(256, 192, BufferedImage.TYPE_INT_ARGB);
+      Graphics2D g2 = thumb.createGraphics();
+      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g2.drawImage(source, 0, 0, 256, 192, null);
+      g2.dispose();
+      return thumb;
+    }
+  }
+}
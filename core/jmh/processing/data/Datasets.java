@@ -0,0 +1,264 @@
+package processing.data;
+
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+
+/**
+ * The standard data used by the JMH benchmarks. Everything is generated
+ * from a fixed seed, so a data set of a given size is identical on every
+ * machine and in every release, and results can be compared over time.
+ * <p>
+ * Files are written once to a cache folder (java.io.tmpdir/processing-jmh
+ * unless the processing.jmh.cache property is set) since several forks
+ * of the same benchmark will all ask for them. Run main() to write the
+ * full set to a folder of your choosing.
+ */
+public class Datasets {
+  static public final long SEED = 0x50524F43L;
+
+  /** Sizes written by main(), same as the benchmark defaults. */
+  static public final int[] ROWS = { 1000, 100000, 1000000 };
+  static public final int[] IMAGE_SIZES = { 256, 1024, 2048 };
+
+  static final String[] SENSORS = new String[64];
+  static {
+    for (int i = 0; i < SENSORS.length; i++) {
+      SENSORS[i] = "sensor" + i;
+    }
+  }
+
+
+  static public void main(String[] args) throws IOException {
+    File folder = new File(args.length > 0 ? args[0] : "datasets");
+    folder.mkdirs();
+    for (int rows : ROWS) {
+      writeCSV(new File(folder, "table-" + rows + ".csv"), rows);
+      writeJSON(new File(folder, "objects-" + rows + ".json"), rows);
+    }
+    for (int size : IMAGE_SIZES) {
+      BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+      image.setRGB(0, 0, size, size, pixels(size, size), 0, size);
+      ImageIO.write(image, "png", new File(folder, "image-" + size + ".png"));
+    }
+    System.out.println("Wrote data sets to " + folder.getAbsolutePath());
+  }
+
+
+  static public File cacheFolder() {
+    String path = System.getProperty("processing.jmh.cache");
+    File folder = (path != null) ?
+      new File(path) : new File(System.getProperty("java.io.tmpdir"), "processing-jmh");
+    folder.mkdirs();
+    return folder;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * CSV with a header and five columns: a unique int id, a sensor name
+   * from a set of 64, a float reading, a small int quality score, and a
+   * note that is quoted (with a comma and a newline inside) every 50 rows.
+   */
+  static public File csvFile(int rows) throws IOException {
+    File file = new File(cacheFolder(), "table-" + rows + ".csv");
+    if (!file.exists()) {
+      File temp = new File(file.getPath() + ".tmp");
+      writeCSV(temp, rows);
+      temp.renameTo(file);
+    }
+    return file;
+  }
+
+
+  static public void writeCSV(File file, int rows) throws IOException {
+    Random random = new Random(SEED);
+    try (PrintWriter writer = writer(file)) {
+      writer.println("id,sensor,value,quality,note");
+      for (int i = 0; i < rows; i++) {
+        writer.print(i);
+        writer.print(',');
+        writer.print(SENSORS[random.nextInt(SENSORS.length)]);
+        writer.print(',');
+        writer.print(random.nextInt(1000000) / 100f);
+        writer.print(',');
+        writer.print(random.nextInt(5));
+        writer.print(',');
+        if (i % 50 == 0) {
+          writer.print("\"quoted, with a comma\nand a newline\"");
+        } else {
+          writer.print("ok");
+        }
+        writer.println();
+      }
+    }
+  }
+
+
+  /** Same contents as csvFile(), already loaded. */
+  static public Table table(int rows) {
+    Random random = new Random(SEED);
+    Table table = new Table();
+    table.addColumn("id", Table.INT);
+    table.addColumn("sensor", Table.STRING);
+    table.addColumn("value", Table.FLOAT);
+    table.addColumn("quality", Table.INT);
+    table.addColumn("note", Table.STRING);
+    table.setRowCount(rows);
+    for (int i = 0; i < rows; i++) {
+      table.setInt(i, 0, i);
+      table.setString(i, 1, SENSORS[random.nextInt(SENSORS.length)]);
+      table.setFloat(i, 2, random.nextInt(1000000) / 100f);
+      table.setInt(i, 3, random.nextInt(5));
+      table.setString(i, 4, (i % 50 == 0) ? "quoted, with a comma\nand a newline" : "ok");
+    }
+    return table;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * A JSON array of objects that each have a few numbers, a string,
+   * a boolean, a null, and a nested array and object.
+   */
+  static public String json(int objects) {
+    StringWriter out = new StringWriter();
+    try (PrintWriter writer = new PrintWriter(out)) {
+      writeJSON(writer, objects);
+    }
+    return out.toString();
+  }
+
+
+  static public File jsonFile(int objects) throws IOException {
+    File file = new File(cacheFolder(), "objects-" + objects + ".json");
+    if (!file.exists()) {
+      File temp = new File(file.getPath() + ".tmp");
+      writeJSON(temp, objects);
+      temp.renameTo(file);
+    }
+    return file;
+  }
+
+
+  static public void writeJSON(File file, int objects) throws IOException {
+    try (PrintWriter writer = writer(file)) {
+      writeJSON(writer, objects);
+    }
+  }
+
+
+  static void writeJSON(PrintWriter writer, int objects) {
+    Random random = new Random(SEED);
+    writer.print('[');
+    for (int i = 0; i < objects; i++) {
+      if (i != 0) {
+        writer.println(',');
+      }
+      writer.print("{\"id\": ");
+      writer.print(i);
+      writer.print(", \"sensor\": \"");
+      writer.print(SENSORS[random.nextInt(SENSORS.length)]);
+      writer.print("\", \"value\": ");
+      writer.print(random.nextInt(1000000) / 100f);
+      writer.print(", \"timestamp\": ");
+      writer.print(1600000000000L + random.nextInt(1 << 30));
+      writer.print(", \"ok\": ");
+      writer.print(random.nextBoolean());
+      writer.print(", \"note\": null, \"position\": [");
+      writer.print(random.nextFloat());
+      writer.print(", ");
+      writer.print(random.nextFloat());
+      writer.print("], \"tags\": {\"a\": ");
+      writer.print(random.nextInt(10));
+      writer.print(", \"b\": \"x\\ty\"}}");
+    }
+    writer.println(']');
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Random ints, the same for every run. */
+  static public int[] ints(int count, int bound) {
+    Random random = new Random(SEED);
+    int[] outgoing = new int[count];
+    for (int i = 0; i < count; i++) {
+      outgoing[i] = random.nextInt(bound);
+    }
+    return outgoing;
+  }
+
+
+  static public float[] floats(int count) {
+    Random random = new Random(SEED);
+    float[] outgoing = new float[count];
+    for (int i = 0; i < count; i++) {
+      outgoing[i] = (float) random.nextGaussian();
+    }
+    return outgoing;
+  }
+
+
+  static public double[] doubles(int count) {
+    Random random = new Random(SEED);
+    double[] outgoing = new double[count];
+    for (int i = 0; i < count; i++) {
+      outgoing[i] = random.nextGaussian();
+    }
+    return outgoing;
+  }
+
+
+  /** Keys for the dictionaries, 'distinct' different ones in all. */
+  static public String[] keys(int count, int distinct) {
+    String[] names = new String[distinct];
+    for (int i = 0; i < distinct; i++) {
+      names[i] = "key" + i;
+    }
+    Random random = new Random(SEED);
+    String[] outgoing = new String[count];
+    for (int i = 0; i < count; i++) {
+      outgoing[i] = names[random.nextInt(distinct)];
+    }
+    return outgoing;
+  }
+
+
+  /**
+   * ARGB pixels that look a little like a photo: smooth gradients with
+   * some noise and hard edges, and alpha that isn't always opaque.
+   * Flat or random pixels would both make the image code look better or
+   * worse than it is.
+   */
+  static public int[] pixels(int width, int height) {
+    Random random = new Random(SEED);
+    int[] pixels = new int[width * height];
+    int index = 0;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int r = (x * 255 / width + random.nextInt(16)) & 0xff;
+        int g = (y * 255 / height + random.nextInt(16)) & 0xff;
+        int b = (((x / 32) ^ (y / 32)) & 1) == 0 ? 40 : 200;
+        int a = (x < width / 8) ? (x * 255 / (width / 8 + 1)) : 255;
+        pixels[index++] = (a << 24) | (r << 16) | (g << 8) | b;
+      }
+    }
+    return pixels;
+  }
+
+
+  static PrintWriter writer(File file) throws IOException {
+    return new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+      new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16));
+  }
+}
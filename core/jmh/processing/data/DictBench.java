@@ -0,0 +1,271 @@
+package processing.data;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * increment(), get(), and remove() on IntDict and IntIntDict with every
+ * key different, next to a HashMap with boxed values doing the same work
+ * (which is roughly what IntDict did internally before it had its own
+ * hash table). Each key is incremented twice, so half of the calls add
+ * an entry and half find one. ListDictBench has the case where most keys
+ * are already there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DictBench {
+
+  @Param({ "1000000", "10000000" })
+  public int entries;
+
+  String[] names;
+  IntDict intDict;
+  IntIntDict intIntDict;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    names = names(entries);
+    intDict = new IntDict();
+    intIntDict = new IntIntDict();
+    for (int i = 0; i < entries; i++) {
+      intDict.increment(names[i]);
+      intIntDict.increment(scramble(i));
+    }
+  }
+
+
+  @Benchmark
+  public IntDict intDictIncrement() {
+    IntDict dict = new IntDict();
+    for (String name : names) {
+      dict.increment(name);
+    }
+    for (String name : names) {
+      dict.increment(name);
+    }
+    return dict;
+  }
+
+
+  @Benchmark
+  public long intDictGet() {
+    long sum = 0;
+    for (String name : names) {
+      sum += intDict.get(name);
+    }
+    return sum;
+  }
+
+
+  @Benchmark
+  public IntIntDict intIntDictIncrement() {
+    IntIntDict dict = new IntIntDict();
+    for (int i = 0; i < entries; i++) {
+      dict.increment(scramble(i));
+    }
+    for (int i = 0; i < entries; i++) {
+      dict.increment(scramble(i));
+    }
+    return dict;
+  }
+
+
+  @Benchmark
+  public long intIntDictGet() {
+    long sum = 0;
+    for (int i = 0; i < entries; i++) {
+      sum += intIntDict.get(scramble(i));
+    }
+    return sum;
+  }
+
+
+  /** Unique, but not sequential, ids. */
+  static int scramble(int i) {
+    return i * 0x9E3779B1;
+  }
+
+
+  /** The same keys (and so the same String hash codes) for every run. */
+  static String[] names(int entries) {
+    String[] names = new String[entries];
+    for (int i = 0; i < entries; i++) {
+      names[i] = "key" + scramble(i);
+    }
+    return names;
+  }
+
+
+  /** The same work with a HashMap and boxed values. */
+  @State(Scope.Benchmark)
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Fork(1)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public static class Boxed {
+
+    @Param({ "1000000", "10000000" })
+    public int entries;
+
+    String[] names;
+    HashMap<String, Integer> stringMap;
+    HashMap<Integer, Integer> intMap;
+
+
+    @Setup(Level.Trial)
+    public void load() {
+      names = names(entries);
+      stringMap = new HashMap<>();
+      intMap = new HashMap<>();
+      for (int i = 0; i < entries; i++) {
+        stringMap.merge(names[i], 1, Integer::sum);
+        intMap.merge(scramble(i), 1, Integer::sum);
+      }
+    }
+
+
+    @Benchmark
+    public HashMap<String, Integer> stringIncrement() {
+      HashMap<String, Integer> map = new HashMap<>();
+      for (String name : names) {
+        map.merge(name, 1, Integer::sum);
+      }
+      for (String name : names) {
+        map.merge(name, 1, Integer::sum);
+      }
+      return map;
+    }
+
+
+    @Benchmark
+    public long stringGet() {
+      long sum = 0;
+      for (String name : names) {
+        sum += stringMap.get(name);
+      }
+      return sum;
+    }
+
+
+    @Benchmark
+    public HashMap<Integer, Integer> intIncrement() {
+      HashMap<Integer, Integer> map = new HashMap<>();
+      for (int i = 0; i < entries; i++) {
+        map.merge(scramble(i), 1, Integer::sum);
+      }
+      for (int i = 0; i < entries; i++) {
+        map.merge(scramble(i), 1, Integer::sum);
+      }
+      return map;
+    }
+
+
+    @Benchmark
+    public long intGet() {
+      long sum = 0;
+      for (int i = 0; i < entries; i++) {
+        sum += intMap.get(scramble(i));
+      }
+      return sum;
+    }
+  }
+
+
+  /**
+   * Removing every other entry, then asking for the keys, so that the
+   * Dict classes have to put the rest back in order. Each invocation
+   * starts from a full dictionary or map.
+   */
+  @State(Scope.Benchmark)
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Fork(1)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public static class Remove {
+
+    @Param({ "1000000", "10000000" })
+    public int entries;
+
+    @Param({ "IntDict", "IntIntDict", "HashMap<String>", "HashMap<Integer>" })
+    public String kind;
+
+    String[] names;
+    IntDict intDict;
+    IntIntDict intIntDict;
+    HashMap<String, Integer> stringMap;
+    HashMap<Integer, Integer> intMap;
+
+
+    @Setup(Level.Trial)
+    public void load() {
+      names = names(entries);
+    }
+
+
+    @Setup(Level.Invocation)
+    public void fill() {
+      switch (kind) {
+        case "IntDict":
+          intDict = new IntDict();
+          for (String name : names) {
+            intDict.increment(name);
+          }
+          break;
+        case "IntIntDict":
+          intIntDict = new IntIntDict();
+          for (int i = 0; i < entries; i++) {
+            intIntDict.increment(scramble(i));
+          }
+          break;
+        case "HashMap<String>":
+          stringMap = new HashMap<>();
+          for (String name : names) {
+            stringMap.put(name, 1);
+          }
+          break;
+        default:
+          intMap = new HashMap<>();
+          for (int i = 0; i < entries; i++) {
+            intMap.put(scramble(i), 1);
+          }
+      }
+    }
+
+
+    @Benchmark
+    public int remove() {
+      switch (kind) {
+        case "IntDict":
+          for (int i = 0; i < entries; i += 2) {
+            intDict.remove(names[i]);
+          }
+          return intDict.keyArray().length;
+        case "IntIntDict":
+          for (int i = 0; i < entries; i += 2) {
+            intIntDict.remove(scramble(i));
+          }
+          return intIntDict.keyArray().length;
+        case "HashMap<String>":
+          for (int i = 0; i < entries; i += 2) {
+            stringMap.remove(names[i]);
+          }
+          return stringMap.size();
+        default:
+          for (int i = 0; i < entries; i += 2) {
+            intMap.remove(scramble(i));
+          }
+          return intMap.size();
+      }
+    }
+  }
+}
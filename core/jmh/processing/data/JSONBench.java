@@ -0,0 +1,72 @@
+package processing.data;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Parsing the same document into JSONArray/JSONObject, streaming it
+ * token by token with JSONReader, and writing it back out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JSONBench {
+
+  @Param({ "1000", "100000" })
+  public int objects;
+
+  String source;
+  JSONArray parsed;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    source = Datasets.json(objects);
+    parsed = JSONArray.parse(source);
+  }
+
+
+  @Benchmark
+  public JSONArray parse() {
+    return JSONArray.parse(source);
+  }
+
+
+  @Benchmark
+  public double stream() {
+    // what a sketch would do to sum one field without building the tree
+    double sum = 0;
+    JSONReader reader = new JSONReader(new StringReader(source));
+    int token;
+    while ((token = reader.next()) != JSONReader.END) {
+      if (token == JSONReader.KEY && "value".equals(reader.getKey())) {
+        reader.next();
+        sum += reader.getDouble();
+      }
+    }
+    return sum;
+  }
+
+
+  @Benchmark
+  public void getValues(Blackhole bh) {
+    for (int i = 0; i < parsed.size(); i++) {
+      JSONObject object = parsed.getJSONObject(i);
+      bh.consume(object.getFloat("value"));
+      bh.consume(object.getString("sensor"));
+    }
+  }
+
+
+  @Benchmark
+  public String format() {
+    return parsed.format(-1);
+  }
+}
@@ -0,0 +1,107 @@
+package processing.data;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Reads a newline-delimited JSON feed three ways: a tree per line with
+ * the old JSONTokener, trees from JSONReader, and streaming through the
+ * tokens with JSONReader without building anything. Each pulls out the
+ * first of the readings in every record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class JSONFeedBench {
+
+  @Param({ "200000" })
+  public int records;
+
+  File file;
+
+
+  @Setup(Level.Trial)
+  public void save() throws IOException {
+    file = File.createTempFile("feed", ".ndjson");
+    JSONWriter writer = new JSONWriter(new FileOutputStream(file));
+    for (int i = 0; i < records; i++) {
+      writer.beginObject();
+      writer.key("id").value(i);
+      writer.key("station").value("station" + (i % 100));
+      writer.key("lat").value(40 + (i % 1000) / 997.0);
+      writer.key("lon").value(-74 - (i % 777) / 331.0);
+      writer.key("readings").beginArray();
+      for (int j = 0; j < 4; j++) {
+        writer.value((i * 31 + j) % 1000 / 10f);
+      }
+      writer.endArray();
+      writer.endObject();
+    }
+    writer.close();
+  }
+
+
+  @TearDown(Level.Trial)
+  public void delete() {
+    file.delete();
+  }
+
+
+  @Benchmark
+  public double tokenerTrees() throws IOException {
+    double total = 0;
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        JSONObject obj = new JSONObject(new JSONTokener(line));
+        total += obj.getJSONArray("readings").getFloat(0);
+      }
+    }
+    return total;
+  }
+
+
+  @Benchmark
+  public double readerTrees() throws IOException {
+    double total = 0;
+    JSONReader json = new JSONReader(new FileInputStream(file));
+    Object value;
+    while ((value = json.readValue()) != null) {
+      total += ((JSONObject) value).getJSONArray("readings").getFloat(0);
+    }
+    json.close();
+    return total;
+  }
+
+
+  @Benchmark
+  public double readerTokens() throws IOException {
+    double total = 0;
+    JSONReader json = new JSONReader(new FileInputStream(file));
+    int token;
+    while ((token = json.next()) != JSONReader.END) {
+      if (token == JSONReader.KEY && json.getKey().equals("readings")) {
+        json.next();  // the start of the array
+        json.next();
+        total += json.getFloat();
+        json.next();  // the other three, and the end of the array
+        json.next();
+        json.next();
+        json.next();
+      }
+    }
+    json.close();
+    return total;
+  }
+}
@@ -0,0 +1,104 @@
+package processing.data;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * The primitive lists and dictionaries. Keys for the dictionaries are
+ * drawn from a set of a quarter as many distinct values, so increment()
+ * hits existing entries most of the time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ListDictBench {
+
+  @Param({ "1000", "1000000", "10000000" })
+  public int count;
+
+  int[] ints;
+  float[] floats;
+  String[] keys;
+
+  IntDict intDict;
+  FloatDict floatDict;
+  IntList unsorted;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    ints = Datasets.ints(count, Integer.MAX_VALUE);
+    floats = Datasets.floats(count);
+    keys = Datasets.keys(count, Math.max(1, count / 4));
+
+    intDict = new IntDict();
+    floatDict = new FloatDict();
+    for (int i = 0; i < count; i++) {
+      intDict.increment(keys[i]);
+      floatDict.set(keys[i], floats[i]);
+    }
+  }
+
+
+  @Setup(Level.Invocation)
+  public void copy() {
+    unsorted = new IntList(ints);
+  }
+
+
+  @Benchmark
+  public IntList intListAppend() {
+    IntList list = new IntList();
+    for (int value : ints) {
+      list.append(value);
+    }
+    return list;
+  }
+
+
+  @Benchmark
+  public IntList intListSort() {
+    unsorted.sort();
+    return unsorted;
+  }
+
+
+  @Benchmark
+  public IntDict intDictIncrement() {
+    IntDict dict = new IntDict();
+    for (String key : keys) {
+      dict.increment(key);
+    }
+    return dict;
+  }
+
+
+  @Benchmark
+  public void intDictGet(Blackhole bh) {
+    for (String key : keys) {
+      bh.consume(intDict.get(key));
+    }
+  }
+
+
+  @Benchmark
+  public void floatDictGet(Blackhole bh) {
+    for (String key : keys) {
+      bh.consume(floatDict.get(key));
+    }
+  }
+
+
+  @Benchmark
+  public FloatDict floatDictSortValues() {
+    FloatDict dict = floatDict.copy();
+    dict.sortValues();
+    return dict;
+  }
+}
@@ -0,0 +1,144 @@
+package processing.data;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * The primitive sorts in Sort, and the generic Sort.run() on data that is
+ * already in order, which was the worst case for the old pivot. The same
+ * arrays through Arrays.sort() are in a nested class for reference.
+ * Table.sort() is measured by TableBench.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SortBench {
+
+  @Param({ "1000000", "10000000" })
+  public int length;
+
+  int[] ints;
+  float[] floats;
+  double[] doubles;
+  int[] sorted;
+
+  int[] intCopy;
+  float[] floatCopy;
+  double[] doubleCopy;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    ints = Datasets.ints(length, Integer.MAX_VALUE);
+    floats = Datasets.floats(length);
+    doubles = Datasets.doubles(length);
+    sorted = ints.clone();
+    Arrays.sort(sorted);
+  }
+
+
+  @Setup(Level.Invocation)
+  public void copy() {
+    intCopy = ints.clone();
+    floatCopy = floats.clone();
+    doubleCopy = doubles.clone();
+  }
+
+
+  @Benchmark
+  public int[] sortInt() {
+    Sort.sort(intCopy, 0, intCopy.length);
+    return intCopy;
+  }
+
+
+  @Benchmark
+  public float[] sortFloat() {
+    Sort.sort(floatCopy, 0, floatCopy.length);
+    return floatCopy;
+  }
+
+
+  @Benchmark
+  public double[] sortDouble() {
+    Sort.sort(doubleCopy, 0, doubleCopy.length);
+    return doubleCopy;
+  }
+
+
+  @Benchmark
+  public int[] runPresorted() {
+    final int[] data = sorted;
+    new Sort() {
+      public int size() { return data.length; }
+      public int compare(int i, int j) { return Integer.compare(data[i], data[j]); }
+      public void swap(int i, int j) { int temp = data[i]; data[i] = data[j]; data[j] = temp; }
+    }.run();
+    return data;
+  }
+
+
+  /** The same arrays through Arrays.sort(). */
+  @State(Scope.Benchmark)
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Fork(1)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public static class ArraysSort {
+
+    @Param({ "1000000", "10000000" })
+    public int length;
+
+    int[] ints;
+    float[] floats;
+    double[] doubles;
+
+    int[] intCopy;
+    float[] floatCopy;
+    double[] doubleCopy;
+
+
+    @Setup(Level.Trial)
+    public void load() {
+      ints = Datasets.ints(length, Integer.MAX_VALUE);
+      floats = Datasets.floats(length);
+      doubles = Datasets.doubles(length);
+    }
+
+
+    @Setup(Level.Invocation)
+    public void copy() {
+      intCopy = ints.clone();
+      floatCopy = floats.clone();
+      doubleCopy = doubles.clone();
+    }
+
+
+    @Benchmark
+    public int[] sortInt() {
+      Arrays.sort(intCopy);
+      return intCopy;
+    }
+
+
+    @Benchmark
+    public float[] sortFloat() {
+      Arrays.sort(floatCopy);
+      return floatCopy;
+    }
+
+
+    @Benchmark
+    public double[] sortDouble() {
+      Arrays.sort(doubleCopy);
+      return doubleCopy;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package processing.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Loading, sorting, searching, and grouping a Table. The CSV has a
+ * quoted field with an embedded newline every 50 rows, so the parser
+ * can't take its fast path everywhere.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TableBench {
+
+  @Param({ "1000", "100000", "1000000" })
+  public int rows;
+
+  File csv;
+  Table table;
+  Table unsorted;
+
+
+  @Setup(Level.Trial)
+  public void load() throws IOException {
+    csv = Datasets.csvFile(rows);
+    table = Datasets.table(rows);
+  }
+
+
+  @Setup(Level.Invocation)
+  public void copy() {
+    unsorted = table.copy();
+  }
+
+
+  @Benchmark
+  public Table parseCSV() throws IOException {
+    return new Table(csv, "header");
+  }
+
+
+  @Benchmark
+  public Table parseCSVParallel() throws IOException {
+    return new Table(csv, "header,parallel");
+  }
+
+
+  @Benchmark
+  public Table sortFloat() {
+    unsorted.sort("value");
+    return unsorted;
+  }
+
+
+  @Benchmark
+  public Table sortString() {
+    unsorted.sort("sensor");
+    return unsorted;
+  }
+
+
+  @Benchmark
+  public void findRow(Blackhole bh) {
+    // the id column is unique, so this is a full scan each time
+    bh.consume(table.findRow(String.valueOf(rows - 1), "id"));
+  }
+
+
+  @Benchmark
+  public Table groupBySum() {
+    return table.groupBy("sensor").sum("value");
+  }
+}
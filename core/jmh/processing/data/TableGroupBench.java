@@ -0,0 +1,67 @@
+package processing.data;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * getTally() against groupBy().agg(), grouping readings from 200 stations
+ * over a year by the station (a CATEGORY column), by the day (an int
+ * column), and by both together.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TableGroupBench {
+
+  @Param({ "100000", "1000000" })
+  public int rows;
+
+  Table table;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    table = new Table();
+    table.addColumn("station");
+    table.addColumn("day", Table.INT);
+    table.addColumn("temperature", Table.FLOAT);
+    table.setRowCount(rows);
+    Random random = new Random(Datasets.SEED);
+    for (int row = 0; row < rows; row++) {
+      table.setString(row, 0, "station" + random.nextInt(200));
+      table.setInt(row, 1, random.nextInt(365));
+      table.setFloat(row, 2, random.nextFloat() * 40 - 10);
+    }
+    table.setColumnType(0, Table.CATEGORY);
+  }
+
+
+  @Benchmark
+  public IntDict tally() {
+    return table.getTally(0);
+  }
+
+
+  @Benchmark
+  public Table countByStation() {
+    return table.groupBy(0).count();
+  }
+
+
+  @Benchmark
+  public Table statsByDay() {
+    return table.groupBy(1).agg("mean(temperature)", "min(temperature)", "max(temperature)");
+  }
+
+
+  @Benchmark
+  public Table byStationAndDay() {
+    return table.groupBy(0, 1).agg("count", "mean(temperature)");
+  }
+}
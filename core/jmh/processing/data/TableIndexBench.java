@@ -0,0 +1,143 @@
+package processing.data;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Lookups on a Table with no index against the same lookups with a
+ * SORTED index on the int and float columns and a HASH index on the
+ * String column. Each invocation is one lookup, cycling through a fixed
+ * list of values that are in the table. update() is the cost that the
+ * indexes add to setInt() and setString(), and Build is the time it
+ * takes to make them in the first place.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TableIndexBench {
+  static final int LOOKUPS = 256;
+
+  @Param({ "100000", "1000000" })
+  public int rows;
+
+  /** "none" scans the column, "indexed" uses createIndex(). */
+  @Param({ "none", "indexed" })
+  public String index;
+
+  Table table;
+  String[] ids;
+  String[] names;
+  Random random;
+  int next;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    table = table(rows);
+    if (index.equals("indexed")) {
+      createIndexes(table);
+    }
+    random = new Random(Datasets.SEED);
+    ids = new String[LOOKUPS];
+    names = new String[LOOKUPS];
+    for (int i = 0; i < LOOKUPS; i++) {
+      ids[i] = table.getString(random.nextInt(rows), 0);
+      names[i] = table.getString(random.nextInt(rows), 1);
+    }
+  }
+
+
+  @Benchmark
+  public int[] findId() {
+    return table.findRowIndices(ids[next++ % LOOKUPS], 0);
+  }
+
+
+  @Benchmark
+  public int[] findName() {
+    return table.findRowIndices(names[next++ % LOOKUPS], 1);
+  }
+
+
+  @Benchmark
+  public int[] findRange() {
+    int low = next++ % 1000;
+    return table.findRowIndicesInRange(low, low + 1, 2);
+  }
+
+
+  @Benchmark
+  public Table update() {
+    int i = next++ % LOOKUPS;
+    int row = random.nextInt(rows);
+    table.setInt(row, 0, random.nextInt(rows));
+    table.setString(row, 1, names[i]);
+    return table;
+  }
+
+
+  /** An int id, a name from a quarter as many, and a float up to 1000. */
+  static Table table(int rows) {
+    Table table = new Table();
+    table.addColumn("id", Table.INT);
+    table.addColumn("name", Table.STRING);
+    table.addColumn("value", Table.FLOAT);
+    table.setRowCount(rows);
+    Random random = new Random(Datasets.SEED);
+    for (int row = 0; row < rows; row++) {
+      table.setInt(row, 0, random.nextInt(rows));
+      table.setString(row, 1, "name" + random.nextInt(rows / 4 + 1));
+      table.setFloat(row, 2, random.nextFloat() * 1000);
+    }
+    return table;
+  }
+
+
+  static void createIndexes(Table table) {
+    table.createIndex(0, Table.SORTED);
+    table.createIndex(1, Table.HASH);
+    table.createIndex(2, Table.SORTED);
+  }
+
+
+  /** Making all three indexes on a table that has none. */
+  @State(Scope.Benchmark)
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Fork(1)
+  @Warmup(iterations = 3, time = 1)
+  @Measurement(iterations = 5, time = 1)
+  public static class Build {
+
+    @Param({ "100000", "1000000" })
+    public int rows;
+
+    Table source;
+    Table table;
+
+
+    @Setup(Level.Trial)
+    public void load() {
+      source = table(rows);
+    }
+
+
+    @Setup(Level.Invocation)
+    public void copy() {
+      table = source.copy();
+    }
+
+
+    @Benchmark
+    public Table createIndexes() {
+      TableIndexBench.createIndexes(table);
+      return table;
+    }
+  }
+}
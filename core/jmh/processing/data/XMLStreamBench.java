@@ -0,0 +1,72 @@
+package processing.data;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Reads the latitude of every track point in a GPX file, once by loading
+ * the whole document and once with XML.stream(). The difference that
+ * matters most is memory; run with -prof gc to see the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class XMLStreamBench {
+
+  @Param({ "200000" })
+  public int points;
+
+  File file;
+
+
+  @Setup(Level.Trial)
+  public void save() throws IOException {
+    file = File.createTempFile("track", ".gpx");
+    try (PrintWriter writer = Datasets.writer(file)) {
+      writer.println("<?xml version=\"1.0\"?>");
+      writer.println("<gpx version=\"1.1\"><trk><trkseg>");
+      for (int i = 0; i < points; i++) {
+        writer.format("<trkpt lat=\"%.5f\" lon=\"%.5f\"><ele>%d</ele><time>2020-01-01T00:00:%02dZ</time></trkpt>%n",
+                      40 + i * 1e-5, -74 - i * 1e-5, i % 300, i % 60);
+      }
+      writer.println("</trkseg></trk></gpx>");
+    }
+  }
+
+
+  @TearDown(Level.Trial)
+  public void delete() {
+    file.delete();
+  }
+
+
+  @Benchmark
+  public double document() throws Exception {
+    double total = 0;
+    for (XML point : new XML(file).getChildren("trk/trkseg/trkpt")) {
+      total += point.getFloat("lat");
+    }
+    return total;
+  }
+
+
+  @Benchmark
+  public double stream() throws Exception {
+    double total = 0;
+    try (FileInputStream input = new FileInputStream(file)) {
+      for (XML point : XML.stream(input, "trk/trkseg/trkpt")) {
+        total += point.getFloat("lat");
+      }
+    }
+    return total;
+  }
+}
@@ -0,0 +1,96 @@
+package processing.opengl;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Sorts soups of random triangles the way hint(ENABLE_DEPTH_SORT) does
+ * before every flush, headless: small ones scattered over the screen like
+ * the particles of a transparent scene. Each soup is sorted on all of the
+ * common pool's threads, and on a pool with a single thread to see how
+ * the sort scales. The sort reorders the indices in place, so they're put
+ * back before each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class DepthSortBench {
+
+  @Param({ "20000", "50000", "100000" })
+  public int triangles;
+
+  PGraphicsOpenGL pg;
+  PGraphicsOpenGL.DepthSorter sorter;
+  short[] indices;
+  ForkJoinPool single;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    // One flush for the whole soup, so it's sorted all at once
+    PGL.FLUSH_VERTEX_COUNT = Integer.MAX_VALUE;
+    pg = soup(triangles);
+    sorter = new PGraphicsOpenGL.DepthSorter(pg);
+    indices = pg.tessGeo.polyIndices.clone();
+    single = new ForkJoinPool(1);
+  }
+
+
+  @TearDown(Level.Trial)
+  public void shutdown() {
+    single.shutdown();
+  }
+
+
+  @Setup(Level.Invocation)
+  public void reset() {
+    System.arraycopy(indices, 0, pg.tessGeo.polyIndices, 0, indices.length);
+  }
+
+
+  @Benchmark
+  public short[] sort() {
+    sorter.sort(pg.tessGeo);
+    return pg.tessGeo.polyIndices;
+  }
+
+
+  @Benchmark
+  public short[] sortOneThread() throws InterruptedException, ExecutionException {
+    single.submit(() -> sorter.sort(pg.tessGeo)).get();
+    return pg.tessGeo.polyIndices;
+  }
+
+
+  static PGraphicsOpenGL soup(int count) {
+    PGraphicsOpenGL pg = new PGraphics3D();
+    pg.tessellator = new PGraphicsOpenGL.Tessellator();
+    pg.width = pg.height = 1000;
+    pg.fill = true;
+    pg.fillColor = 0x80cc8844;
+    pg.stroke = false;
+
+    Random random = new Random(count);
+    pg.beginShape(PGraphicsOpenGL.TRIANGLES);
+    for (int i = 0; i < count; i++) {
+      float x = random.nextFloat() * 2 - 1;
+      float y = random.nextFloat() * 2 - 1;
+      float z = random.nextFloat() * 2 - 1;
+      for (int j = 0; j < 3; j++) {
+        pg.vertex(x + random.nextFloat() * 0.05f,
+                  y + random.nextFloat() * 0.05f,
+                  z + random.nextFloat() * 0.05f);
+      }
+    }
+    pg.endShape();
+    return pg;
+  }
+}
@@ -0,0 +1,123 @@
+package processing.opengl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import processing.core.PConstants;
+import processing.core.PShape;
+
+
+/**
+ * Tessellates a large group shape, like an SVG map or an OBJ file with
+ * thousands of children, headless: on the calling thread the way the
+ * first draw() does it, and with tessellateAsync(). For the latter,
+ * asyncCall is how long the call itself takes, which is all the sketch
+ * waits for, and asyncReady is how long until the shape can be drawn.
+ * A new shape is built before each invocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ShapeTessellationBench implements PConstants {
+
+  @Param({ "5000" })
+  public int children;
+
+  PGraphicsOpenGL pg;
+  PShapeOpenGL shape;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    pg = renderer();
+  }
+
+
+  @Setup(Level.Invocation)
+  public void build() {
+    shape = group(pg, children);
+  }
+
+
+  @TearDown(Level.Invocation)
+  public void finish() {
+    // asyncCall leaves the workers running
+    shape.updateTessellation();
+  }
+
+
+  @Benchmark
+  public PShapeOpenGL sync() {
+    shape.updateTessellation();
+    return shape;
+  }
+
+
+  @Benchmark
+  public PShapeOpenGL asyncCall() {
+    shape.tessellateAsync();
+    return shape;
+  }
+
+
+  @Benchmark
+  public PShapeOpenGL asyncReady() {
+    shape.tessellateAsync();
+    shape.updateTessellation();
+    return shape;
+  }
+
+
+  static PGraphicsOpenGL renderer() {
+    PGraphicsOpenGL pg = new PGraphicsOpenGL();
+    pg.tessellator = new PGraphicsOpenGL.Tessellator();
+    pg.width = pg.height = 1000;
+    pg.fill = true;
+    pg.fillColor = 0xffcc8844;
+    pg.stroke = true;
+    pg.strokeColor = 0xff000000;
+    pg.strokeWeight = 1;
+    return pg;
+  }
+
+
+  /** Outlines with curves and holes, like the paths in an SVG, and ellipses. */
+  static PShapeOpenGL group(PGraphicsOpenGL pg, int count) {
+    Random random = new Random(1);
+    PShapeOpenGL group = new PShapeOpenGL(pg, GROUP);
+    for (int i = 0; i < count; i++) {
+      float x = random.nextFloat() * 1000;
+      float y = random.nextFloat() * 1000;
+      PShapeOpenGL child;
+      if (i % 4 == 0) {
+        child = new PShapeOpenGL(pg, ELLIPSE, x, y, 20, 12);
+      } else {
+        child = new PShapeOpenGL(pg, PShape.PATH);
+        child.beginShape();
+        int sides = 8 + random.nextInt(24);
+        for (int j = 0; j < sides; j++) {
+          double angle = 2 * Math.PI * j / sides;
+          float r = 10 + random.nextFloat() * 10;
+          child.vertex(x + r * (float) Math.cos(angle),
+                       y + r * (float) Math.sin(angle));
+        }
+        child.bezierVertex(x + 30, y + 10, x + 20, y - 20, x + 10, y);
+        child.beginContour();
+        for (int j = 0; j < 6; j++) {
+          double angle = -2 * Math.PI * j / 6;
+          child.vertex(x + 4 * (float) Math.cos(angle),
+                       y + 4 * (float) Math.sin(angle));
+        }
+        child.endContour();
+        child.endShape(CLOSE);
+      }
+      group.addChild(child);
+    }
+    return group;
+  }
+}
@@ -0,0 +1,198 @@
+package processing.opengl;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Tessellates a few kinds of polygon with PolygonTessellator, headless:
+ * a big convex ellipse, a concave star, a glyph-like outline with a hole,
+ * and a scribble that crosses itself all over. The same polygons also go
+ * through the GLU tessellator of JOGL, with callbacks that only count the
+ * vertices, for comparison. The winding rule alternates between calls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TessellatorBench {
+
+  @Param({ "ellipse", "star", "glyph", "scribble" })
+  public String polygon;
+
+  @Param({ "java", "glu" })
+  public String tessellator;
+
+  interface Tess {
+    void winding(boolean nonzero);
+    void begin();
+    void contour();
+    void vertex(double[] v);
+    void end();
+  }
+
+  double[][][] contours;
+  Tess tess;
+  int round;
+
+
+  @Setup(Level.Trial)
+  public void load() {
+    switch (polygon) {
+    case "ellipse":
+      contours = new double[][][] { ellipse(0, 0, 200, 100, 1000, false) };
+      break;
+    case "star":
+      contours = new double[][][] { star(100, 50, 200) };
+      break;
+    case "glyph":
+      contours = new double[][][] {
+        ellipse(0, 0, 100, 120, 120, false), ellipse(0, 0, 60, 90, 80, true)
+      };
+      break;
+    default:
+      contours = new double[][][] { scribble(60) };
+      break;
+    }
+    tess = tessellator.equals("glu") ? gluTessellator() : polygonTessellator();
+    if (tess == null) {
+      throw new IllegalStateException("JOGL isn't on the class path");
+    }
+  }
+
+
+  @Benchmark
+  public Tess tessellate() {
+    tess.begin();
+    tess.winding(round++ % 2 == 0);
+    for (double[][] contour : contours) {
+      tess.contour();
+      for (double[] v : contour) {
+        // a fresh copy each time, like the renderer's
+        tess.vertex(v.clone());
+      }
+    }
+    tess.end();
+    return tess;
+  }
+
+
+  static Tess polygonTessellator() {
+    PolygonTessellator tess = new PolygonTessellator(new PolygonTessellator.Callback() {
+      @Override
+      public void combine(double[] coords, Object[] data,
+                          float[] weight, Object[] outData) {
+        outData[0] = combined(coords, data, weight);
+      }
+
+      @Override
+      public void triangles(double[][] vertices, int[] indices, int count) { }
+    });
+    return new Tess() {
+      public void winding(boolean nonzero) {
+        tess.setWindingRule(nonzero ? PolygonTessellator.WINDING_NONZERO :
+                                      PolygonTessellator.WINDING_ODD);
+      }
+      public void begin() { tess.beginPolygon(); }
+      public void contour() { tess.beginContour(); }
+      public void vertex(double[] v) { tess.addVertex(v); }
+      public void end() { tess.endContour(); tess.endPolygon(); }
+    };
+  }
+
+
+  /** Loaded by name, so that this compiles without JOGL. */
+  static Tess gluTessellator() {
+    PGL.Tessellator tess;
+    try {
+      // sets up the TESS_WINDING constants
+      Class.forName("processing.opengl.PJOGL");
+      Class<?> c = Class.forName("processing.opengl.PJOGL$Tessellator");
+      PGL.TessellatorCallback callback = new PGL.TessellatorCallback() {
+        int vertices;
+        public void begin(int type) { }
+        public void end() { }
+        public void vertex(Object data) { vertices++; }
+        public void combine(double[] coords, Object[] data,
+                            float[] weight, Object[] outData) {
+          outData[0] = combined(coords, data, weight);
+        }
+        public void error(int errnum) { }
+      };
+      tess = (PGL.Tessellator)
+        c.getConstructor(PGL.TessellatorCallback.class).newInstance(callback);
+    } catch (Exception | LinkageError e) {
+      return null;
+    }
+    return new Tess() {
+      public void winding(boolean nonzero) {
+        tess.setWindingRule(nonzero ? PGL.TESS_WINDING_NONZERO :
+                                      PGL.TESS_WINDING_ODD);
+      }
+      public void begin() { tess.beginPolygon(); }
+      public void contour() { tess.beginContour(); }
+      public void vertex(double[] v) { tess.addVertex(v); }
+      public void end() { tess.endContour(); tess.endPolygon(); }
+    };
+  }
+
+
+  /** Same work as the renderer's combine(), on 25 doubles. */
+  static double[] combined(double[] coords, Object[] data, float[] weight) {
+    int n = ((double[]) data[0]).length;
+    double[] vertex = new double[n];
+    System.arraycopy(coords, 0, vertex, 0, 3);
+    for (int i = 3; i < n; i++) {
+      for (int j = 0; j < 4; j++) {
+        double[] d = (double[]) data[j];
+        if (d != null) vertex[i] += weight[j] * d[i];
+      }
+    }
+    return vertex;
+  }
+
+
+  static double[] vertex(double x, double y) {
+    double[] v = new double[25];
+    v[0] = x;
+    v[1] = y;
+    v[3] = 255;
+    return v;
+  }
+
+
+  static double[][] ellipse(double cx, double cy, double rx, double ry,
+                            int count, boolean clockwise) {
+    double[][] points = new double[count][];
+    for (int i = 0; i < count; i++) {
+      double angle = 2 * Math.PI * i / count * (clockwise ? -1 : 1);
+      points[i] = vertex(cx + rx * Math.cos(angle), cy + ry * Math.sin(angle));
+    }
+    return points;
+  }
+
+
+  static double[][] star(int count, double inner, double outer) {
+    double[][] points = new double[count][];
+    for (int i = 0; i < count; i++) {
+      double angle = 2 * Math.PI * i / count;
+      double r = (i % 2 == 0) ? outer : inner;
+      points[i] = vertex(r * Math.cos(angle), r * Math.sin(angle));
+    }
+    return points;
+  }
+
+
+  static double[][] scribble(int count) {
+    Random random = new Random(1);
+    double[][] points = new double[count][];
+    for (int i = 0; i < count; i++) {
+      points[i] = vertex(random.nextDouble() * 400, random.nextDouble() * 400);
+    }
+    return points;
+  }
+}
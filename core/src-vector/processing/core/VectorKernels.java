@@ -0,0 +1,144 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+/**
+ * PixelKernels done with the Vector API, as many pixels at a time as
+ * the CPU's widest registers hold. Whatever is left over at the end of
+ * a run is handed to the plain versions.
+ * <p>
+ * Only the loops that HotSpot can't vectorize by itself are here: the
+ * comparison in threshold(), the divisions in posterize(), and the byte
+ * order conversions. The plain gray(), invert(), and mask() loops are
+ * already compiled to vector instructions, and writing them out by hand
+ * was measured to be no faster (see PixelKernelsBench).
+ * <p>
+ * This is the only class in core that needs more than Java 11, so it
+ * lives in its own source folder and is compiled separately, with the
+ * incubator module added. PixelKernels.get() only loads it when the
+ * module is there.
+ */
+final class VectorKernels extends PixelKernels {
+  static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+
+  VectorKernels() { }
+
+
+  @Override
+  public boolean isVectorized() {
+    return true;
+  }
+
+
+  @Override
+  public void threshold(int[] pixels, int start, int stop, int thresh) {
+    IntVector white = IntVector.broadcast(INTS, 0xffffff);
+    int i = start;
+    int bound = start + INTS.loopBound(stop - start);
+    for (; i < bound; i += INTS.length()) {
+      IntVector col = IntVector.fromArray(INTS, pixels, i);
+      IntVector max = channel(col, 16).max(channel(col, 8)).max(channel(col, 0));
+      VectorMask<Integer> below = max.compare(VectorOperators.LT, thresh);
+      col.and(PImage.ALPHA_MASK)
+        .or(white.blend(0, below))
+        .intoArray(pixels, i);
+    }
+    super.threshold(pixels, i, stop, thresh);
+  }
+
+
+  /**
+   * Each channel is first cut down to a step from 0 to levels - 1, and
+   * the step looked up in a vector that holds step * 255 / (levels - 1)
+   * in each lane, which avoids dividing. Only works when there are no
+   * more levels than lanes; otherwise the plain version's table is used.
+   */
+  @Override
+  public void posterize(int[] pixels, int start, int stop, int levels) {
+    if (levels > INTS.length()) {
+      super.posterize(pixels, start, stop, levels);
+      return;
+    }
+    int[] steps = new int[INTS.length()];
+    for (int step = 0; step < levels; step++) {
+      steps[step] = (step * 255) / (levels - 1);
+    }
+    IntVector table = IntVector.fromArray(INTS, steps, 0);
+
+    int i = start;
+    int bound = start + INTS.loopBound(stop - start);
+    for (; i < bound; i += INTS.length()) {
+      IntVector col = IntVector.fromArray(INTS, pixels, i);
+      col.and(PImage.ALPHA_MASK)
+        .or(posterize(table, channel(col, 16), levels).lanewise(VectorOperators.LSHL, 16))
+        .or(posterize(table, channel(col, 8), levels).lanewise(VectorOperators.LSHL, 8))
+        .or(posterize(table, channel(col, 0), levels))
+        .intoArray(pixels, i);
+    }
+    super.posterize(pixels, i, stop, levels);
+  }
+
+
+  static private IntVector posterize(IntVector table, IntVector level, int levels) {
+    IntVector step = level.mul(levels).lanewise(VectorOperators.ASHR, 8);
+    return table.rearrange(step.toShuffle());
+  }
+
+
+  @Override
+  public void convert(int[] source, int from, int[] target, int to,
+                      int count, int order) {
+    int i = 0;
+    int bound = INTS.loopBound(count);
+    for (; i < bound; i += INTS.length()) {
+      IntVector col = IntVector.fromArray(INTS, source, from + i);
+      IntVector result;
+      if (order == RGBA_TO_ARGB) {
+        result = col.lanewise(VectorOperators.LSHR, 8)
+          .or(col.lanewise(VectorOperators.LSHL, 24));
+      } else if (order == ARGB_TO_RGBA) {
+        result = col.lanewise(VectorOperators.LSHR, 24)
+          .or(col.lanewise(VectorOperators.LSHL, 8));
+      } else {
+        IntVector rb = col.and(0x00FF00FF);
+        result = col.and(0xFF00FF00)
+          .or(rb.lanewise(VectorOperators.LSHL, 16))
+          .or(rb.lanewise(VectorOperators.LSHR, 16));
+      }
+      result.intoArray(target, to + i);
+    }
+    super.convert(source, from + i, target, to + i, count - i, order);
+  }
+
+
+  /** The 8 bits at shift, as an int from 0 to 255 in each lane. */
+  static private IntVector channel(IntVector col, int shift) {
+    return col.lanewise(VectorOperators.LSHR, shift).and(0xff);
+  }
+}
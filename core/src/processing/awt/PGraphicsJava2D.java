@@ -1666,7 +1666,8 @@ public class PGraphicsJava2D extends PGraphics {
     /**
      * Update the pixels of the cache image. Already determined that the tint
      * has changed, or the pixels have changed, so should just go through
-     * with the update without further checks.
+     * with the update without further checks. Only the rectangles marked
+     * as modified in the source are copied.
      */
     public void update(PImage source, boolean tint, int tintColor) {
       //int bufferType = BufferedImage.TYPE_INT_ARGB;
@@ -1691,126 +1692,144 @@ public class PGraphicsJava2D extends PGraphics {
       }
 
       WritableRaster wr = image.getRaster();
-      if (tint) {
-        if (tintedTemp == null || tintedTemp.length != source.pixelWidth) {
-          tintedTemp = new int[source.pixelWidth];
+      if (!tint && targetType == RGB && (source.pixels[0] >> 24 == 0)) {
+        // If it's an RGB image and the high bits aren't set, need to set
+        // the high bits to opaque because we're drawing ARGB images.
+        source.filter(OPAQUE);
+        // Opting to just manipulate the image here, since it shouldn't
+        // affect anything else (and alpha(get(x, y)) should return 0xff).
+        // Wel also make no guarantees about the values of the pixels array
+        // in a PImage and how the high bits will be set.
+      }
+      // Only copy the parts of the image that were changed
+      int count = source.getModifiedCount();
+      int[] rects = source.getModifiedRects();
+      for (int i = 0; i < count; i++) {
+        int x1 = rects[i*4];
+        int y1 = rects[i*4 + 1];
+        int x2 = rects[i*4 + 2];
+        int y2 = rects[i*4 + 3];
+        if (tint) {
+          updateTinted(source, wr, targetType, tintColor, x1, y1, x2, y2);
+        } else if (x1 == 0 && y1 == 0 &&
+                   x2 == source.pixelWidth && y2 == source.pixelHeight) {
+          // If no tint, just shove the pixels on in there verbatim
+          wr.setDataElements(0, 0, source.pixelWidth, source.pixelHeight, source.pixels);
+        } else {
+          copyRows(source.pixels, source.pixelWidth, wr, x1, y1, x2, y2);
         }
-        int a2 = (tintColor >> 24) & 0xff;
-//        System.out.println("tint color is " + a2);
-//        System.out.println("source.pixels[0] alpha is " + (source.pixels[0] >>> 24));
-        int r2 = (tintColor >> 16) & 0xff;
-        int g2 = (tintColor >> 8) & 0xff;
-        int b2 = (tintColor) & 0xff;
-
-        //if (bufferType == BufferedImage.TYPE_INT_RGB) {
-        if (targetType == RGB) {
-          // The target image is opaque, meaning that the source image has no
-          // alpha (is not ARGB), and the tint has no alpha.
-          int index = 0;
-          for (int y = 0; y < source.pixelHeight; y++) {
-            for (int x = 0; x < source.pixelWidth; x++) {
-              int argb1 = source.pixels[index++];
-              int r1 = (argb1 >> 16) & 0xff;
-              int g1 = (argb1 >> 8) & 0xff;
-              int b1 = (argb1) & 0xff;
-
-              // Prior to 2.1, the alpha channel was commented out here,
-              // but can't remember why (just thought unnecessary b/c of RGB?)
-              // https://github.com/processing/processing/issues/2030
-              tintedTemp[x] = 0xFF000000 |
-                  (((r2 * r1) & 0xff00) << 8) |
-                  ((g2 * g1) & 0xff00) |
-                  (((b2 * b1) & 0xff00) >> 8);
-            }
-            wr.setDataElements(0, y, source.pixelWidth, 1, tintedTemp);
+      }
+      this.tinted = tint;
+      this.tintedColor = tintColor;
+
+//      GraphicsConfiguration gc = parent.getGraphicsConfiguration();
+//      compat = gc.createCompatibleImage(image.getWidth(),
+//                                        image.getHeight(),
+//                                        Transparency.TRANSLUCENT);
+//
+//      Graphics2D g = compat.createGraphics();
+//      g.drawImage(image, 0, 0, null);
+//      g.dispose();
+    }
+
+
+    private void updateTinted(PImage source, WritableRaster wr,
+                              int targetType, int tintColor,
+                              int x1, int y1, int x2, int y2) {
+      int w = x2 - x1;
+      if (tintedTemp == null || tintedTemp.length < w) {
+        tintedTemp = new int[source.pixelWidth];
+      }
+      int a2 = (tintColor >> 24) & 0xff;
+      int r2 = (tintColor >> 16) & 0xff;
+      int g2 = (tintColor >> 8) & 0xff;
+      int b2 = (tintColor) & 0xff;
+
+      //if (bufferType == BufferedImage.TYPE_INT_RGB) {
+      if (targetType == RGB) {
+        // The target image is opaque, meaning that the source image has no
+        // alpha (is not ARGB), and the tint has no alpha.
+        for (int y = y1; y < y2; y++) {
+          int index = y * source.pixelWidth + x1;
+          for (int x = 0; x < w; x++) {
+            int argb1 = source.pixels[index++];
+            int r1 = (argb1 >> 16) & 0xff;
+            int g1 = (argb1 >> 8) & 0xff;
+            int b1 = (argb1) & 0xff;
+
+            // Prior to 2.1, the alpha channel was commented out here,
+            // but can't remember why (just thought unnecessary b/c of RGB?)
+            // https://github.com/processing/processing/issues/2030
+            tintedTemp[x] = 0xFF000000 |
+                (((r2 * r1) & 0xff00) << 8) |
+                ((g2 * g1) & 0xff00) |
+                (((b2 * b1) & 0xff00) >> 8);
           }
-          // could this be any slower?
+          wr.setDataElements(x1, y, w, 1, tintedTemp);
+        }
+        // could this be any slower?
 //          float[] scales = { tintR, tintG, tintB };
 //          float[] offsets = new float[3];
 //          RescaleOp op = new RescaleOp(scales, offsets, null);
 //          op.filter(image, image);
 
-        //} else if (bufferType == BufferedImage.TYPE_INT_ARGB) {
-        } else if (targetType == ARGB) {
-          if (source.format == RGB &&
-              (tintColor & 0xffffff) == 0xffffff) {
-            int hi = tintColor & 0xff000000;
-            int index = 0;
-            for (int y = 0; y < source.pixelHeight; y++) {
-              for (int x = 0; x < source.pixelWidth; x++) {
-                tintedTemp[x] = hi | (source.pixels[index++] & 0xFFFFFF);
-              }
-              wr.setDataElements(0, y, source.pixelWidth, 1, tintedTemp);
+      //} else if (bufferType == BufferedImage.TYPE_INT_ARGB) {
+      } else if (targetType == ARGB) {
+        if (source.format == RGB &&
+            (tintColor & 0xffffff) == 0xffffff) {
+          int hi = tintColor & 0xff000000;
+          for (int y = y1; y < y2; y++) {
+            int index = y * source.pixelWidth + x1;
+            for (int x = 0; x < w; x++) {
+              tintedTemp[x] = hi | (source.pixels[index++] & 0xFFFFFF);
             }
-          } else {
-            int index = 0;
-            for (int y = 0; y < source.pixelHeight; y++) {
-              if (source.format == RGB) {
-                int alpha = tintColor & 0xFF000000;
-                for (int x = 0; x < source.pixelWidth; x++) {
-                  int argb1 = source.pixels[index++];
-                  int r1 = (argb1 >> 16) & 0xff;
-                  int g1 = (argb1 >> 8) & 0xff;
-                  int b1 = (argb1) & 0xff;
-                  tintedTemp[x] = alpha |
-                      (((r2 * r1) & 0xff00) << 8) |
-                      ((g2 * g1) & 0xff00) |
-                      (((b2 * b1) & 0xff00) >> 8);
-                }
-              } else if (source.format == ARGB) {
-                for (int x = 0; x < source.pixelWidth; x++) {
-                  int argb1 = source.pixels[index++];
-                  int a1 = (argb1 >> 24) & 0xff;
-                  int r1 = (argb1 >> 16) & 0xff;
-                  int g1 = (argb1 >> 8) & 0xff;
-                  int b1 = (argb1) & 0xff;
-                  tintedTemp[x] =
-                      (((a2 * a1) & 0xff00) << 16) |
-                      (((r2 * r1) & 0xff00) << 8) |
-                      ((g2 * g1) & 0xff00) |
-                      (((b2 * b1) & 0xff00) >> 8);
-                }
-              } else if (source.format == ALPHA) {
-                int lower = tintColor & 0xFFFFFF;
-                for (int x = 0; x < source.pixelWidth; x++) {
-                  int a1 = source.pixels[index++];
-                  tintedTemp[x] =
-                      (((a2 * a1) & 0xff00) << 16) | lower;
-                }
+            wr.setDataElements(x1, y, w, 1, tintedTemp);
+          }
+        } else {
+          for (int y = y1; y < y2; y++) {
+            int index = y * source.pixelWidth + x1;
+            if (source.format == RGB) {
+              int alpha = tintColor & 0xFF000000;
+              for (int x = 0; x < w; x++) {
+                int argb1 = source.pixels[index++];
+                int r1 = (argb1 >> 16) & 0xff;
+                int g1 = (argb1 >> 8) & 0xff;
+                int b1 = (argb1) & 0xff;
+                tintedTemp[x] = alpha |
+                    (((r2 * r1) & 0xff00) << 8) |
+                    ((g2 * g1) & 0xff00) |
+                    (((b2 * b1) & 0xff00) >> 8);
+              }
+            } else if (source.format == ARGB) {
+              for (int x = 0; x < w; x++) {
+                int argb1 = source.pixels[index++];
+                int a1 = (argb1 >> 24) & 0xff;
+                int r1 = (argb1 >> 16) & 0xff;
+                int g1 = (argb1 >> 8) & 0xff;
+                int b1 = (argb1) & 0xff;
+                tintedTemp[x] =
+                    (((a2 * a1) & 0xff00) << 16) |
+                    (((r2 * r1) & 0xff00) << 8) |
+                    ((g2 * g1) & 0xff00) |
+                    (((b2 * b1) & 0xff00) >> 8);
+              }
+            } else if (source.format == ALPHA) {
+              int lower = tintColor & 0xFFFFFF;
+              for (int x = 0; x < w; x++) {
+                int a1 = source.pixels[index++];
+                tintedTemp[x] =
+                    (((a2 * a1) & 0xff00) << 16) | lower;
               }
-              wr.setDataElements(0, y, source.pixelWidth, 1, tintedTemp);
             }
+            wr.setDataElements(x1, y, w, 1, tintedTemp);
           }
-          // Not sure why ARGB images take the scales in this order...
+        }
+        // Not sure why ARGB images take the scales in this order...
 //          float[] scales = { tintR, tintG, tintB, tintA };
 //          float[] offsets = new float[4];
 //          RescaleOp op = new RescaleOp(scales, offsets, null);
 //          op.filter(image, image);
-        }
-      } else {  // !tint
-        if (targetType == RGB && (source.pixels[0] >> 24 == 0)) {
-          // If it's an RGB image and the high bits aren't set, need to set
-          // the high bits to opaque because we're drawing ARGB images.
-          source.filter(OPAQUE);
-          // Opting to just manipulate the image here, since it shouldn't
-          // affect anything else (and alpha(get(x, y)) should return 0xff).
-          // Wel also make no guarantees about the values of the pixels array
-          // in a PImage and how the high bits will be set.
-        }
-        // If no tint, just shove the pixels on in there verbatim
-        wr.setDataElements(0, 0, source.pixelWidth, source.pixelHeight, source.pixels);
       }
-      this.tinted = tint;
-      this.tintedColor = tintColor;
-
-//      GraphicsConfiguration gc = parent.getGraphicsConfiguration();
-//      compat = gc.createCompatibleImage(image.getWidth(),
-//                                        image.getHeight(),
-//                                        Transparency.TRANSLUCENT);
-//
-//      Graphics2D g = compat.createGraphics();
-//      g.drawImage(image, 0, 0, null);
-//      g.dispose();
     }
   }
 
@@ -2792,21 +2811,41 @@ public class PGraphicsJava2D extends PGraphics {
    * <P>
    * Unlike in PImage, where updatePixels() only requests that the
    * update happens, in PGraphicsJava2D, this will happen immediately.
+   * Only the pixels inside the region are copied.
    */
   @Override
   public void updatePixels(int x, int y, int c, int d) {
-    //if ((x == 0) && (y == 0) && (c == width) && (d == height)) {
-//    System.err.format("%d %d %d %d .. w/h = %d %d .. pw/ph = %d %d %n", x, y, c, d, width, height, pixelWidth, pixelHeight);
-    if ((x != 0) || (y != 0) || (c != pixelWidth) || (d != pixelHeight)) {
-      // Show a warning message, but continue anyway.
-      showVariationWarning("updatePixels(x, y, w, h)");
-//      new Exception().printStackTrace(System.out);
+    int x1 = Math.max(0, x);
+    int y1 = Math.max(0, y);
+    int x2 = Math.min(pixelWidth, x + c);
+    int y2 = Math.min(pixelHeight, y + d);
+    if (pixels != null && x1 < x2 && y1 < y2) {
+      WritableRaster raster = getRaster();
+      if (x1 == 0 && y1 == 0 && x2 == pixelWidth && y2 == pixelHeight) {
+        raster.setDataElements(0, 0, pixelWidth, pixelHeight, pixels);
+      } else {
+        copyRows(pixels, pixelWidth, raster, x1, y1, x2, y2);
+      }
     }
-//    updatePixels();
-    if (pixels != null) {
-      getRaster().setDataElements(0, 0, pixelWidth, pixelHeight, pixels);
+    // mark the region, so that it's all that's copied when this is
+    // drawn into another renderer
+    super.updatePixels(x, y, c, d);
+  }
+
+
+  /**
+   * Copy a rectangle of an image-sized pixel array into the raster,
+   * one row at a time, since setDataElements() only takes the pixels
+   * for the area being set.
+   */
+  static protected void copyRows(int[] pixels, int stride, WritableRaster wr,
+                                 int x1, int y1, int x2, int y2) {
+    int w = x2 - x1;
+    int[] row = new int[w];
+    for (int y = y1; y < y2; y++) {
+      System.arraycopy(pixels, y * stride + x1, row, 0, w);
+      wr.setDataElements(x1, y, w, 1, row);
     }
-    modified = true;
   }
 
 
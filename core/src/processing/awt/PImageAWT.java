@@ -22,14 +22,13 @@
 
 package processing.awt;
 
-import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.RenderingHints;
-import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
 import java.awt.image.PixelGrabber;
+import java.awt.image.Raster;
 import java.awt.image.WritableRaster;
 import java.io.BufferedOutputStream;
 import java.io.File;
@@ -131,109 +130,6 @@ public class PImageAWT extends PImage {
   }
 
 
-  @Override
-  public void resize(int w, int h) {  // ignore
-    if (w <= 0 && h <= 0) {
-      throw new IllegalArgumentException("width or height must be > 0 for resize");
-    }
-
-    if (w == 0) {  // Use height to determine relative size
-      float diff = (float) h / (float) height;
-      w = (int) (width * diff);
-    } else if (h == 0) {  // Use the width to determine relative size
-      float diff = (float) w / (float) width;
-      h = (int) (height * diff);
-    }
-
-    BufferedImage img =
-      shrinkImage((BufferedImage) getNative(), w*pixelDensity, h*pixelDensity);
-
-    PImage temp = new PImageAWT(img);
-    this.pixelWidth = temp.width;
-    this.pixelHeight = temp.height;
-
-    // Get the resized pixel array
-    this.pixels = temp.pixels;
-
-    this.width = pixelWidth / pixelDensity;
-    this.height = pixelHeight / pixelDensity;
-
-    // Mark the pixels array as altered
-    updatePixels();
-  }
-
-
-  // Adapted from getFasterScaledInstance() method from page 111 of
-  // "Filthy Rich Clients" by Chet Haase and Romain Guy
-  // Additional modifications and simplifications have been added,
-  // plus a fix to deal with an infinite loop if images are expanded.
-  // http://code.google.com/p/processing/issues/detail?id=1463
-  static private BufferedImage shrinkImage(BufferedImage img,
-                                           int targetWidth, int targetHeight) {
-    int type = (img.getTransparency() == Transparency.OPAQUE) ?
-      BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
-    BufferedImage outgoing = img;
-    BufferedImage scratchImage = null;
-    Graphics2D g2 = null;
-    int prevW = outgoing.getWidth();
-    int prevH = outgoing.getHeight();
-    boolean isTranslucent = img.getTransparency() != Transparency.OPAQUE;
-
-    // Use multi-step technique: start with original size, then scale down in
-    // multiple passes with drawImage() until the target size is reached
-    int w = img.getWidth();
-    int h = img.getHeight();
-
-    do {
-      if (w > targetWidth) {
-        w /= 2;
-        // if this is the last step, do the exact size
-        if (w < targetWidth) {
-          w = targetWidth;
-        }
-      } else if (targetWidth >= w) {
-        w = targetWidth;
-      }
-      if (h > targetHeight) {
-        h /= 2;
-        if (h < targetHeight) {
-          h = targetHeight;
-        }
-      } else if (targetHeight >= h) {
-        h = targetHeight;
-      }
-      if (scratchImage == null || isTranslucent) {
-        // Use a single scratch buffer for all iterations and then copy
-        // to the final, correctly-sized image before returning
-        scratchImage = new BufferedImage(w, h, type);
-        g2 = scratchImage.createGraphics();
-      }
-      g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
-                          RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-      g2.drawImage(outgoing, 0, 0, w, h, 0, 0, prevW, prevH, null);
-      prevW = w;
-      prevH = h;
-      outgoing = scratchImage;
-    } while (w != targetWidth || h != targetHeight);
-
-    if (g2 != null) {
-      g2.dispose();
-    }
-
-    // If we used a scratch buffer that is larger than our target size,
-    // create an image of the right size and copy the results into it
-    if (targetWidth != outgoing.getWidth() ||
-        targetHeight != outgoing.getHeight()) {
-      scratchImage = new BufferedImage(targetWidth, targetHeight, type);
-      g2 = scratchImage.createGraphics();
-      g2.drawImage(outgoing, 0, 0, null);
-      g2.dispose();
-      outgoing = scratchImage;
-    }
-    return outgoing;
-  }
-
-
   @Override
   protected boolean saveImpl(String filename) {
     if (saveImageFormats == null) {
@@ -282,8 +178,21 @@ public class PImageAWT extends PImage {
         outputFormat = BufferedImage.TYPE_INT_RGB;
       }
 
-      BufferedImage bimage = new BufferedImage(pixelWidth, pixelHeight, outputFormat);
-      bimage.setRGB(0, 0, pixelWidth, pixelHeight, pixels, 0, pixelWidth);
+      // Wrap pixels[] instead of copying it into a new image. The color
+      // model is the same as TYPE_INT_RGB or TYPE_INT_ARGB, so ImageIO
+      // sees one of those, and nothing is allocated per save.
+      int[] masks = (outputFormat == BufferedImage.TYPE_INT_ARGB) ?
+        new int[] { 0xff0000, 0xff00, 0xff, 0xff000000 } :
+        new int[] { 0xff0000, 0xff00, 0xff };
+      DirectColorModel model = (masks.length == 4) ?
+        new DirectColorModel(32, masks[0], masks[1], masks[2], masks[3]) :
+        new DirectColorModel(24, masks[0], masks[1], masks[2]);
+      DataBufferInt buffer =
+        new DataBufferInt(pixels, pixelWidth * pixelHeight);
+      WritableRaster raster =
+        Raster.createPackedRaster(buffer, pixelWidth, pixelHeight,
+                                  pixelWidth, masks, null);
+      BufferedImage bimage = new BufferedImage(model, raster, false, null);
 
       File file = new File(path);
 
@@ -14,6 +14,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.zip.GZIPInputStream;
 
 import java.awt.DisplayMode;
 import java.awt.GraphicsConfiguration;
@@ -32,6 +33,7 @@ import javax.swing.filechooser.FileSystemView;
 import processing.core.PApplet;
 import processing.core.PConstants;
 import processing.core.PImage;
+import processing.core.PImageFloat;
 
 
 /**
@@ -145,6 +147,26 @@ public class ShimAWT implements PConstants {
   }
 
 
+  /**
+   * Like createInput(), but without the BufferedInputStream, so that the
+   * decoders can read a file straight into a buffer of the right size.
+   * Names ending in .gz are still decompressed, as createInput() does.
+   */
+  static private InputStream createImageInput(PApplet sketch, String filename) {
+    InputStream input = sketch.createInputRaw(filename);
+    if (input != null && filename.toLowerCase().endsWith(".gz")) {
+      try {
+        return new GZIPInputStream(input, 1 << 16);
+
+      } catch (IOException e) {
+        e.printStackTrace();
+        return null;
+      }
+    }
+    return input;
+  }
+
+
   static public PImage loadImage(PApplet sketch, String filename, Object... args) {
     String extension = null;
     if (args != null && args.length > 0) {
@@ -175,11 +197,13 @@ public class ShimAWT implements PConstants {
 
     if (extension.equals("tga")) {
       try {
-        InputStream input = sketch.createInput(filename);
+        InputStream input = createImageInput(sketch, filename);
         if (input == null) return null;
 
         PImage image = PImage.loadTGA(input);
-        image.parent = sketch;
+        if (image != null) {
+          image.parent = sketch;
+        }
         return image;
 
       } catch (IOException e) {
@@ -189,11 +213,20 @@ public class ShimAWT implements PConstants {
     }
 
     if (extension.equals("tif") || extension.equals("tiff")) {
-      InputStream input = sketch.createInput(filename);
+      InputStream input = createImageInput(sketch, filename);
       PImage image =  (input == null) ? null : PImage.loadTIFF(input);
       return image;
     }
 
+    if (extension.equals("pfm")) {
+      InputStream input = createImageInput(sketch, filename);
+      PImage image = (input == null) ? null : PImageFloat.loadPFM(input);
+      if (image != null) {
+        image.parent = sketch;
+      }
+      return image;
+    }
+
     // For jpeg, gif, and png, load them using createImage(),
     // because the javax.imageio code was found to be much slower.
     // http://dev.processing.org/bugs/show_bug.cgi?id=392
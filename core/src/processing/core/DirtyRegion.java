@@ -0,0 +1,152 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.Arrays;
+
+
+/**
+ * The parts of an image changed since it was last uploaded, kept as a
+ * short list of rectangles so that two small edits at opposite corners
+ * don't turn into a copy of everything in between.
+ * <p>
+ * Each rectangle is stored as x1, y1, x2, y2 (the second corner is
+ * exclusive). A new rectangle is merged with an existing one when the
+ * pixels wasted by copying their bounding box instead are fewer than
+ * the cost of a separate copy, and the list never grows past MAX: at
+ * that point the pair that is cheapest to merge gets merged.
+ */
+final class DirtyRegion {
+  /** Most rectangles kept before they're merged together. */
+  static final int MAX = 8;
+
+  /** Overhead of one more copy or upload, counted in pixels. */
+  static final int COST = 4096;
+
+  int[] rects = new int[(MAX + 1) * 4];
+  int count;
+
+
+  void clear() {
+    count = 0;
+  }
+
+
+  /**
+   * Add a rectangle that's already been clipped to the image.
+   */
+  void add(int x1, int y1, int x2, int y2) {
+    if (x1 >= x2 || y1 >= y2) {
+      return;
+    }
+    // keep merging for as long as the growing rectangle touches others
+    boolean merged = true;
+    while (merged) {
+      merged = false;
+      for (int i = 0; i < count; i++) {
+        int o = i * 4;
+        int ux1 = Math.min(x1, rects[o]);
+        int uy1 = Math.min(y1, rects[o+1]);
+        int ux2 = Math.max(x2, rects[o+2]);
+        int uy2 = Math.max(y2, rects[o+3]);
+        if (area(ux1, uy1, ux2, uy2) <=
+            area(x1, y1, x2, y2) + area(rects, o) + COST) {
+          x1 = ux1; y1 = uy1; x2 = ux2; y2 = uy2;
+          remove(i);
+          merged = true;
+          break;
+        }
+      }
+    }
+    int o = count * 4;
+    rects[o] = x1;
+    rects[o+1] = y1;
+    rects[o+2] = x2;
+    rects[o+3] = y2;
+    count++;
+
+    if (count > MAX) {
+      mergeCheapest();
+    }
+  }
+
+
+  /** Total number of pixels inside the rectangles. */
+  long area() {
+    long sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += area(rects, i * 4);
+    }
+    return sum;
+  }
+
+
+  @Override
+  public String toString() {
+    return Arrays.toString(Arrays.copyOf(rects, count * 4));
+  }
+
+
+  private void mergeCheapest() {
+    int first = 0, second = 1;
+    long least = Long.MAX_VALUE;
+    for (int i = 0; i < count; i++) {
+      for (int j = i + 1; j < count; j++) {
+        int a = i * 4, b = j * 4;
+        long waste =
+          area(Math.min(rects[a], rects[b]), Math.min(rects[a+1], rects[b+1]),
+               Math.max(rects[a+2], rects[b+2]), Math.max(rects[a+3], rects[b+3])) -
+          area(rects, a) - area(rects, b);
+        if (waste < least) {
+          least = waste;
+          first = i;
+          second = j;
+        }
+      }
+    }
+    int a = first * 4, b = second * 4;
+    int x1 = Math.min(rects[a], rects[b]);
+    int y1 = Math.min(rects[a+1], rects[b+1]);
+    int x2 = Math.max(rects[a+2], rects[b+2]);
+    int y2 = Math.max(rects[a+3], rects[b+3]);
+    remove(second);
+    remove(first);
+    add(x1, y1, x2, y2);
+  }
+
+
+  private void remove(int index) {
+    count--;
+    System.arraycopy(rects, (index + 1) * 4, rects, index * 4,
+                     (count - index) * 4);
+  }
+
+
+  static private long area(int[] rects, int o) {
+    return area(rects[o], rects[o+1], rects[o+2], rects[o+3]);
+  }
+
+
+  static private long area(int x1, int y1, int x2, int y2) {
+    return (long) (x2 - x1) * (y2 - y1);
+  }
+}
@@ -0,0 +1,414 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+
+
+/**
+ * Saves a sequence of frames on background threads, for recording a
+ * sketch to an image sequence without slowing down draw().
+ * <pre>
+ * FrameRecorder recorder;
+ *
+ * void setup() {
+ *   size(1920, 1080);
+ *   recorder = new FrameRecorder(this);
+ *   recorder.policy(FrameRecorder.DROP_OLDEST);
+ *   recorder.compression(1);
+ * }
+ *
+ * void draw() {
+ *   ...
+ *   recorder.saveFrame("frames/####.png");
+ * }
+ * </pre>
+ * Frames are copied into a queue of a fixed size, and the copies are
+ * reused once they've been written, so recording doesn't churn through
+ * memory. When the threads can't keep up and the queue is full, the
+ * policy decides what happens: BLOCK (the default) holds up the sketch
+ * until there's room so that no frames are lost, DROP_NEWEST skips the
+ * frame being saved, and DROP_OLDEST throws out the oldest waiting frame
+ * to make room for it.
+ * <p>
+ * PNG, TGA, and TIFF files are written directly, with PNG compression
+ * itself spread across all cores. Other extensions go through
+ * PImage.save(). Use toString() or the other numbers to see whether the
+ * recording is keeping up.
+ *
+ * @nowebref
+ */
+public class FrameRecorder {
+  /** Wait for room in the queue, so that every frame is saved. */
+  public static final int BLOCK = 0;
+  /** Skip the frame being saved when the queue is full. */
+  public static final int DROP_NEWEST = 1;
+  /** Discard the oldest waiting frame when the queue is full. */
+  public static final int DROP_OLDEST = 2;
+
+  static final String THREAD_PREFIX = "SAVE-FRAME";
+
+  protected PApplet parent;
+
+  private final Object lock = new Object();
+  private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+  private final ArrayDeque<int[]> spare = new ArrayDeque<>();
+  private final Thread[] threads;
+  private final int capacity;
+  private int policy = BLOCK;
+  private int compression = 6;
+
+  private boolean started;
+  private boolean disposed;
+  private int encoding;
+
+  private long submitted;
+  private long dropped;
+  private long saved;
+  private long failed;
+  private long encodeNanos;
+  private int highWater;
+
+
+  /**
+   * Queue up to eight frames, with two threads writing them.
+   */
+  public FrameRecorder(PApplet parent) {
+    this(parent, 8, 2);
+  }
+
+
+  /**
+   * @param queueSize how many frames can be waiting to be written
+   * @param threads number of frames written at the same time
+   */
+  public FrameRecorder(PApplet parent, int queueSize, int threads) {
+    if (queueSize < 1 || threads < 1) {
+      throw new IllegalArgumentException("FrameRecorder needs a queue and " +
+                                         "at least one thread");
+    }
+    this.parent = parent;
+    this.capacity = queueSize;
+    this.threads = new Thread[threads];
+    parent.registerMethod("dispose", this);
+  }
+
+
+  /**
+   * What to do when the queue is full: BLOCK, DROP_NEWEST, or DROP_OLDEST.
+   */
+  public FrameRecorder policy(int policy) {
+    if (policy != BLOCK && policy != DROP_NEWEST && policy != DROP_OLDEST) {
+      throw new IllegalArgumentException("Use BLOCK, DROP_NEWEST, or " +
+                                         "DROP_OLDEST for the policy");
+    }
+    synchronized (lock) {
+      this.policy = policy;
+    }
+    return this;
+  }
+
+
+  /**
+   * PNG compression from 0 (none, fastest) to 9 (smallest files).
+   * The default is 6. Level 1 is usually the one for recording, since it
+   * is several times faster than 6 for files that are only a bit bigger.
+   * TIFF files are LZW compressed unless this is 0.
+   */
+  public FrameRecorder compression(int level) {
+    if (level < 0 || level > 9) {
+      throw new IllegalArgumentException("PNG compression level must be " +
+                                         "between 0 and 9");
+    }
+    synchronized (lock) {
+      compression = level;
+    }
+    return this;
+  }
+
+
+  /**
+   * Save the contents of the sketch window. Like saveFrame(), a run of #
+   * signs in the filename is replaced with the frame number.
+   *
+   * @return false if the frame was dropped
+   */
+  public boolean saveFrame(String filename) {
+    return save(parent.g, parent.insertFrame(filename));
+  }
+
+
+  /**
+   * Queue a copy of an image to be saved. A relative filename is put
+   * inside the sketch folder, the same as with save().
+   *
+   * @return false if the image was dropped
+   */
+  public boolean save(PImage image, String filename) {
+    image.loadPixels();
+    String path = parent.savePath(filename);
+    int count = image.pixelWidth * image.pixelHeight;
+
+    synchronized (lock) {
+      if (disposed) {
+        return false;
+      }
+      start();
+      submitted++;
+      while (queue.size() >= capacity) {
+        if (policy == DROP_NEWEST) {
+          dropped++;
+          return false;
+
+        } else if (policy == DROP_OLDEST) {
+          spare.push(queue.poll().pixels);
+          dropped++;
+
+        } else {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            dropped++;
+            return false;
+          }
+          if (disposed) {
+            return false;
+          }
+        }
+      }
+      int[] buffer = spare.poll();
+      if (buffer == null || buffer.length != count) {
+        // the size changed, or every buffer is in use
+        buffer = new int[count];
+      }
+      System.arraycopy(image.pixels, 0, buffer, 0, count);
+      queue.add(new Frame(buffer, image.pixelWidth, image.pixelHeight,
+                          image.format, path, compression));
+      highWater = Math.max(highWater, queue.size());
+      lock.notifyAll();
+    }
+    return true;
+  }
+
+
+  /**
+   * Wait until every queued frame has been written.
+   */
+  public void flush() {
+    synchronized (lock) {
+      while (!queue.isEmpty() || encoding > 0) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Write whatever is still queued and stop the threads. Called
+   * automatically when the sketch exits.
+   */
+  public void dispose() {
+    flush();
+    synchronized (lock) {
+      disposed = true;
+      spare.clear();
+      lock.notifyAll();
+    }
+  }
+
+
+  /** Number of frames waiting to be written. */
+  public int queued() {
+    synchronized (lock) {
+      return queue.size();
+    }
+  }
+
+
+  /** Number of frames thrown away because the queue was full. */
+  public long dropped() {
+    synchronized (lock) {
+      return dropped;
+    }
+  }
+
+
+  /** Number of frames written to disk. */
+  public long saved() {
+    synchronized (lock) {
+      return saved;
+    }
+  }
+
+
+  /** Number of frames that couldn't be written. */
+  public long failed() {
+    synchronized (lock) {
+      return failed;
+    }
+  }
+
+
+  /** Average time in milliseconds to encode and write one frame. */
+  public float encodeTime() {
+    synchronized (lock) {
+      long count = saved + failed;
+      return (count == 0) ? 0 : encodeNanos / 1e6f / count;
+    }
+  }
+
+
+  /** All the numbers on one line, for println(). */
+  @Override
+  public String toString() {
+    synchronized (lock) {
+      return String.format("FrameRecorder: %d frames, %d saved " +
+                           "(%.1f ms each), %d dropped, %d failed, " +
+                           "%d/%d queued (most %d)",
+                           submitted, saved, encodeTime(), dropped, failed,
+                           queue.size(), capacity, highWater);
+    }
+  }
+
+
+  /**
+   * Write one frame. Override this to save frames some other way;
+   * it's called from the recording threads.
+   */
+  protected void encode(int[] pixels, int width, int height, int format,
+                        String path, int compression) throws IOException {
+    String lower = path.toLowerCase();
+    boolean png = lower.endsWith(".png");
+    boolean tga = lower.endsWith(".tga");
+    boolean tiff = lower.endsWith(".tif") || lower.endsWith(".tiff");
+
+    if (png || tga || tiff) {
+      try (OutputStream output =
+           new BufferedOutputStream(new FileOutputStream(path), 1 << 16)) {
+        if (png) {
+          PNGEncoder.write(output, pixels, width, height, format, compression);
+        } else {
+          PImage image = wrap(pixels, width, height, format);
+          int method = (compression > 0) ? TIFFCodec.LZW : TIFFCodec.NONE;
+          if (!(tga ? image.saveTGA(output) : image.saveTIFF(output, method))) {
+            throw new IOException("Could not write " + path);
+          }
+        }
+      }
+    } else if (!wrap(pixels, width, height, format).save(path)) {
+      throw new IOException("Could not write " + path);
+    }
+  }
+
+
+  private PImage wrap(int[] pixels, int width, int height, int format) {
+    return new PImage(width, height, pixels, false, parent, format, 1);
+  }
+
+
+  private void start() {
+    if (!started) {
+      for (int i = 0; i < threads.length; i++) {
+        threads[i] = new Thread(this::work, THREAD_PREFIX + "-" + i);
+        threads[i].setDaemon(true);
+        threads[i].start();
+      }
+      started = true;
+    }
+  }
+
+
+  private void work() {
+    while (true) {
+      Frame frame;
+      synchronized (lock) {
+        while (queue.isEmpty() && !disposed) {
+          try {
+            lock.wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (queue.isEmpty()) {
+          return;  // disposed
+        }
+        frame = queue.poll();
+        encoding++;
+        lock.notifyAll();  // there's room in the queue
+      }
+
+      long begin = System.nanoTime();
+      boolean success = false;
+      try {
+        encode(frame.pixels, frame.width, frame.height, frame.format,
+               frame.path, frame.compression);
+        success = true;
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Error while saving " + frame.path);
+        e.printStackTrace();
+      }
+      long elapsed = System.nanoTime() - begin;
+
+      synchronized (lock) {
+        encoding--;
+        if (success) {
+          saved++;
+        } else {
+          failed++;
+        }
+        encodeNanos += elapsed;
+        if (!disposed) {
+          spare.push(frame.pixels);
+        }
+        lock.notifyAll();
+      }
+    }
+  }
+
+
+  static private class Frame {
+    final int[] pixels;
+    final int width;
+    final int height;
+    final int format;
+    final String path;
+    final int compression;
+
+    Frame(int[] pixels, int width, int height, int format,
+          String path, int compression) {
+      this.pixels = pixels;
+      this.width = width;
+      this.height = height;
+      this.format = format;
+      this.path = path;
+      this.compression = compression;
+    }
+  }
+}
@@ -31,10 +31,7 @@ import java.nio.charset.StandardCharsets;
 import java.text.*;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
 import java.util.regex.*;
 import java.util.zip.*;
 
@@ -3642,6 +3639,10 @@ public class PApplet implements PConstants {
       }
       // run dispose() methods registered by libraries
       handleMethods("dispose");
+
+      if (requestImageLoader != null) {
+        requestImageLoader.dispose();
+      }
     }
 
     if (platform == MACOS) {
@@ -5287,9 +5288,23 @@ public class PApplet implements PConstants {
 
 
   /**
+   * Once imageLoader().cacheSize() is set, this also uses the cache of
+   * decoded images, so loading the same file a second time returns the
+   * same (shared) PImage instead of reading it again.
+   *
    * @param extension type of image to load, for example "png", "gif", "jpg"
    */
   public PImage loadImage(String filename, String extension) {
+    PImageLoader loader = requestImageLoader;
+    if (loader != null && loader.caching()) {
+      return loader.load(filename, extension);
+    }
+    return decodeImage(filename, extension);
+  }
+
+
+  /** Read an image from the file every time, without the cache. */
+  PImage decodeImage(String filename, String extension) {
     // awaitAsyncSaveCompletion() has to run on the main thread, because P2D
     // and P3D call GL functions. If this runs on background, requestImage()
     // already called awaitAsyncSaveCompletion() on the main thread.
@@ -5301,9 +5316,9 @@ public class PApplet implements PConstants {
   }
 
 
-  static private final String REQUEST_IMAGE_THREAD_PREFIX = "requestImage";
-  // fixed-size thread pool used by requestImage()
-  ExecutorService requestImagePool;
+  static final String REQUEST_IMAGE_THREAD_PREFIX = "requestImage";
+  // loads images for requestImage(), created the first time it's used
+  PImageLoader requestImageLoader;
 
 
   public PImage requestImage(String filename) {
@@ -5339,33 +5354,26 @@ public class PApplet implements PConstants {
     if (g != null) {
       g.awaitAsyncSaveCompletion(filename);
     }
-    PImage vessel = createImage(0, 0, ARGB);
-
-    // if the image loading thread pool hasn't been created, create it
-    if (requestImagePool == null) {
-      ThreadFactory factory = r -> new Thread(r, REQUEST_IMAGE_THREAD_PREFIX);
-      requestImagePool = Executors.newFixedThreadPool(4, factory);
-    }
-    requestImagePool.execute(() -> {
-      PImage actual = loadImage(filename, extension);
+    return imageLoader().request(filename, extension);
+  }
 
-      // An error message should have already printed
-      if (actual == null) {
-        vessel.width = -1;
-        vessel.height = -1;
 
-      } else {
-        vessel.width = actual.width;
-        vessel.height = actual.height;
-        vessel.format = actual.format;
-        vessel.pixels = actual.pixels;
-
-        vessel.pixelWidth = actual.width;
-        vessel.pixelHeight = actual.height;
-        vessel.pixelDensity = 1;
+  /**
+   * The image loader used by requestImage(). Use it to turn on caching
+   * of decoded images (for loadImage() too), change the number of threads,
+   * cancel requests that are no longer needed, or to see load times and
+   * cache hit rate.
+   *
+   * @nowebref
+   * @see PImageLoader
+   */
+  public PImageLoader imageLoader() {
+    synchronized (this) {
+      if (requestImageLoader == null) {
+        requestImageLoader = new PImageLoader(this);
       }
-    });
-    return vessel;
+      return requestImageLoader;
+    }
   }
 
 
@@ -5647,7 +5655,10 @@ public class PApplet implements PConstants {
    * dictionary file can only be tab separated values (.tsv) and its extension
    * will be ignored. This option was added in Processing 2.0.2.
    *
-   * @param options may contain "header", "tsv", "csv", or "bin" separated by commas
+   * Use the "parallel" option with very large CSV or TSV files to split
+   * the parsing across all available cores.
+   *
+   * @param options may contain "header", "tsv", "csv", "bin", or "cbin" separated by commas
    */
   public Table loadTable(String filename, String options) {
     try {
@@ -5660,6 +5671,18 @@ public class PApplet implements PConstants {
           return dictionary.typedParse(createInput(filename), optionStr);
         }
       }
+      for (String opt : optionList) {
+        if (opt.equals("cbin")) {
+          // columnar tables are memory mapped when they're local files
+          File file = dataFile(filename);
+          if (file == null || !file.exists()) {
+            file = sketchFile(filename);
+          }
+          if (file.exists()) {
+            return new Table(file, optionStr);
+          }
+        }
+      }
       InputStream input = createInput(filename);
       if (input == null) {
         System.err.println(filename + " does not exist or could not be read");
@@ -5687,7 +5710,7 @@ public class PApplet implements PConstants {
 
 
   /**
-   * @param options can be one of "tsv", "csv", "bin", or "html"
+   * @param options can be one of "tsv", "csv", "bin", "cbin", or "html"
    */
   public boolean saveTable(Table table, String filename, String options) {
 //    String ext = checkExtension(filename);
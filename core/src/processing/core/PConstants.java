@@ -255,6 +255,15 @@ public interface PConstants {
   static final int DILATE    = 18;
 
 
+  // resize filters
+  // @see processing.core.PImage#resize(int, int, int)
+
+  static final int NEAREST  = 19;
+  static final int BILINEAR = 20;
+  static final int BICUBIC  = 21;
+  static final int LANCZOS  = 22;
+
+
   // blend mode keyword definitions
   // @see processing.core.PImage#blendColor(int,int,int)
 
@@ -527,5 +536,8 @@ public interface PConstants {
   static final int DISABLE_ASYNC_SAVEFRAME    =  12;
   static final int ENABLE_ASYNC_SAVEFRAME     = -12;
 
-  static final int HINT_COUNT                 =  13;
+  static final int ENABLE_BUFFER_STREAMING    =  13;
+  static final int DISABLE_BUFFER_STREAMING   = -13;
+
+  static final int HINT_COUNT                 =  14;
 }
@@ -0,0 +1,146 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Reads and writes Portable Float Maps, the simplest format that holds
+ * 32-bit float pixels. The header is "PF" (color) or "Pf" (gray), the
+ * size, and a scale whose sign gives the byte order, each on its own
+ * line, followed by the rows from the bottom up.
+ * <p>
+ * There's no alpha channel in the format, so images are written as RGB
+ * and read back opaque.
+ */
+final class PFMCodec {
+
+  private PFMCodec() { }
+
+
+  static PImageFloat read(ByteBuffer data) throws IOException {
+    ByteBuffer source = data.duplicate();
+    String magic = token(source);
+    boolean color;
+    if ("PF".equals(magic)) {
+      color = true;
+    } else if ("Pf".equals(magic)) {
+      color = false;
+    } else {
+      throw new IOException("Not a .pfm file");
+    }
+    int width, height;
+    float scale;
+    try {
+      width = Integer.parseInt(token(source));
+      height = Integer.parseInt(token(source));
+      scale = Float.parseFloat(token(source));
+    } catch (NumberFormatException e) {
+      throw new IOException("Bad .pfm header: " + e.getMessage());
+    }
+    if (width <= 0 || height <= 0 || scale == 0) {
+      throw new IOException("Bad .pfm header");
+    }
+    int channels = color ? 3 : 1;
+    if ((long) width * height * channels * 4 > source.remaining()) {
+      throw new IOException(".pfm file is cut short");
+    }
+    source.order(scale < 0 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    int start = source.position();
+
+    PImageFloat image = new PImageFloat(width, height);
+    float[] values = image.values;
+    PixelBands.run(height, width * channels, (first, last) -> {
+      ByteBuffer rows = source.duplicate().order(source.order());
+      for (int y = first; y < last; y++) {
+        // stored bottom row first
+        int position = start + (height - 1 - y) * width * channels * 4;
+        int v = y * width * 4;
+        for (int x = 0; x < width; x++) {
+          float r = rows.getFloat(position);
+          float g = r, b = r;
+          if (color) {
+            g = rows.getFloat(position + 4);
+            b = rows.getFloat(position + 8);
+          }
+          position += channels * 4;
+          values[v++] = r;
+          values[v++] = g;
+          values[v++] = b;
+          values[v++] = 1;
+        }
+      }
+    });
+    image.updatePixels();
+    return image;
+  }
+
+
+  /** Skip whitespace, then read up to and past the next whitespace. */
+  static private String token(ByteBuffer source) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    while (source.hasRemaining()) {
+      char c = (char) (source.get() & 0xff);
+      if (Character.isWhitespace(c)) {
+        if (sb.length() > 0) {
+          return sb.toString();
+        }
+      } else {
+        sb.append(c);
+        if (sb.length() > 32) {
+          break;
+        }
+      }
+    }
+    throw new IOException("Bad .pfm header");
+  }
+
+
+  /**
+   * Write red, green, and blue from values (four per pixel) as a little
+   * endian color PFM. Alpha is dropped.
+   */
+  static void write(OutputStream output, float[] values,
+                    int width, int height) throws IOException {
+    String header = "PF\n" + width + " " + height + "\n-1.0\n";
+    output.write(header.getBytes(StandardCharsets.US_ASCII));
+
+    ByteBuffer row = ByteBuffer.allocate(width * 3 * 4).order(ByteOrder.LITTLE_ENDIAN);
+    for (int y = height - 1; y >= 0; y--) {
+      row.clear();
+      int v = y * width * 4;
+      for (int x = 0; x < width; x++) {
+        row.putFloat(values[v]);
+        row.putFloat(values[v + 1]);
+        row.putFloat(values[v + 2]);
+        v += 4;
+      }
+      output.write(row.array());
+    }
+    output.flush();
+  }
+}
@@ -1075,8 +1075,21 @@ public class PGraphics extends PImage implements PConstants {
     reapplySettings = false;
   }
 
-  // inherit from PImage
-  //public void resize(int wide, int high){ }
+  /**
+   * Not available, see the notes for PImage.resize(). Use get() to make
+   * a PImage copy of the contents, and resize that.
+   */
+  @Override
+  public void resize(int wide, int high) {
+    showMethodWarning("resize");
+  }
+
+
+  @Override
+  public void resize(int wide, int high, int filter) {
+    showMethodWarning("resize");
+  }
+
 
   //////////////////////////////////////////////////////////////
 
@@ -1149,6 +1162,12 @@ public class PGraphics extends PImage implements PConstants {
    * is written to the drive. This was the default behavior in 3.0b7 and before.
    * To enable, call hint(ENABLE_ASYNC_SAVEFRAME).
    * <br/> <br/>
+   * hint(ENABLE_BUFFER_STREAMING) - P2D/P3D only - geometry drawn in
+   * immediate mode is streamed into ring buffers that are reused from frame to
+   * frame, instead of reallocating the vertex buffers at every flush. This
+   * helps sketches that draw many shapes with beginShape()/endShape() every
+   * frame. Restore the default with hint(DISABLE_BUFFER_STREAMING).
+   * <br/> <br/>
    * As of release 0149, unhint() has been removed in favor of adding
    * additional ENABLE/DISABLE constants to reset the default behavior. This
    * prevents the double negatives, and also reinforces which hints can be
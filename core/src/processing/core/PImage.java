@@ -26,10 +26,14 @@ package processing.core;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 
 /**
@@ -60,17 +64,6 @@ import java.io.OutputStream;
  */
 public class PImage implements PConstants, Cloneable {
 
-  private static final byte TIFF_HEADER[] = {
-    77, 77, 0, 42, 0, 0, 0, 8, 0, 9, 0, -2, 0, 4, 0, 0, 0, 1, 0, 0,
-    0, 0, 1, 0, 0, 3, 0, 0, 0, 1, 0, 0, 0, 0, 1, 1, 0, 3, 0, 0, 0, 1,
-    0, 0, 0, 0, 1, 2, 0, 3, 0, 0, 0, 3, 0, 0, 0, 122, 1, 6, 0, 3, 0,
-    0, 0, 1, 0, 2, 0, 0, 1, 17, 0, 4, 0, 0, 0, 1, 0, 0, 3, 0, 1, 21,
-    0, 3, 0, 0, 0, 1, 0, 3, 0, 0, 1, 22, 0, 3, 0, 0, 0, 1, 0, 0, 0, 0,
-    1, 23, 0, 4, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 8, 0, 8, 0, 8
-  };
-
-  private static final String TIFF_ERROR = "Error: Processing can only read its own TIFF files.";
-
   /**
    * Format for this image, one of RGB, ARGB or ALPHA.
    * note that RGB images still require 0xff in the high byte
@@ -148,6 +141,8 @@ public class PImage implements PConstants, Cloneable {
   /** modified portion of the image */
   protected boolean modified;
   protected int mx1, my1, mx2, my2;
+  /** separate rectangles inside the modified bounds, made on first use */
+  private DirtyRegion dirty;
 
   /** Loaded pixels flag */
   public boolean loaded = false;
@@ -155,13 +150,6 @@ public class PImage implements PConstants, Cloneable {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  // private fields
-  private int fracU, ifU, fracV, ifV, u1, u2, v1, v2, sX, sY, iw, iw1, ih1;
-  private int ul, ll, ur, lr, cUL, cLL, cUR, cLR;
-  private int srcXOffset, srcYOffset;
-  private int r, g, b, a;
-  private int[] srcBuffer;
-
   // fixed point precision is limited to 15 bits!!
   static final int PRECISIONB = 15;
   static final int PRECISIONF = 1 << PRECISIONB;
@@ -173,7 +161,6 @@ public class PImage implements PConstants, Cloneable {
   private int blurRadius;
   private int blurKernelSize;
   private int[] blurKernel;
-  private int[][] blurMult;
 
   // colour component bitmasks (moved from PConstants in 2.0b7)
   public static final int ALPHA_MASK = 0xff000000;
@@ -329,6 +316,9 @@ public class PImage implements PConstants, Cloneable {
     this.format = format;
     this.pixelDensity = factor;
     this.pixels = pixels;
+
+    pixelWidth = width * pixelDensity;
+    pixelHeight = height * pixelDensity;
   }
 
 
@@ -353,11 +343,53 @@ public class PImage implements PConstants, Cloneable {
     my1 = 0;
     mx2 = pixelWidth;
     my2 = pixelHeight;
+    if (dirty != null) {
+      dirty.clear();
+    }
   }
 
 
   public void setModified(boolean m) {  // ignore
     modified = m;
+    if (!m && dirty != null) {
+      dirty.clear();
+    }
+  }
+
+
+  /**
+   * Number of separate rectangles that have been modified, which all fit
+   * inside getModifiedX1() et al. Renderers can copy just these instead
+   * of the whole bounding box; it's 0 if the image isn't modified.
+   */
+  public int getModifiedCount() {  // ignore
+    if (!modified) {
+      return 0;
+    }
+    if (dirty == null || dirty.count == 0) {
+      // set with setModified(), or with the mx1/my1/mx2/my2 fields
+      return (mx1 < mx2 && my1 < my2) ? 1 : 0;
+    }
+    return dirty.count;
+  }
+
+
+  /**
+   * The modified rectangles as x1, y1, x2, y2 for each, for as many as
+   * getModifiedCount() says. The array is reused, so read it before
+   * the image is next changed, and don't write to it.
+   */
+  public int[] getModifiedRects() {  // ignore
+    if (dirty == null) {
+      dirty = new DirtyRegion();
+    }
+    if (dirty.count == 0) {
+      dirty.rects[0] = mx1;
+      dirty.rects[1] = my1;
+      dirty.rects[2] = mx2;
+      dirty.rects[3] = my2;
+    }
+    return dirty.rects;
   }
 
 
@@ -433,15 +465,15 @@ public class PImage implements PConstants, Cloneable {
    * function in the current Processing release, this will always be subject
    * to change.
    * <br/> <br/>
-   * Currently, none of the renderers use the additional parameters to
-   * <b>updatePixels()</b>, however this may be implemented in the future.
+   * When only a small part of the image has changed, pass its location
+   * to <b>updatePixels()</b> so that only that part has to be copied.
    *
    * ( end auto-generated )
    * <h3>Advanced</h3>
-   * Mark the pixels in this region as needing an update.
-   * This is not currently used by any of the renderers, however the api
-   * is structured this way in the hope of being able to use this to
-   * speed things up in the future.
+   * Mark the pixels in this region as needing an update. Successive
+   * calls add to a short list of rectangles (see getModifiedRects()),
+   * and rectangles that are close together are merged, so renderers
+   * only have to copy the parts that actually changed.
    * @webref pimage:pixels
    * @brief Updates the image with the data in its pixels[] array
    * @usage web_application
@@ -454,6 +486,18 @@ public class PImage implements PConstants, Cloneable {
     int x2 = x + w;
     int y2 = y + h;
 
+    if (dirty == null) {
+      dirty = new DirtyRegion();
+    }
+    if (!modified) {
+      dirty.clear();
+    } else if (dirty.count == 0) {
+      // marked some other way, so start from those bounds
+      dirty.add(mx1, my1, mx2, my2);
+    }
+    dirty.add(PApplet.max(0, x), PApplet.max(0, y),
+              PApplet.min(pixelWidth, x2), PApplet.min(pixelHeight, y2));
+
     if (!modified) {
       mx1 = PApplet.max(0, x);
       mx2 = PApplet.min(pixelWidth, x2);
@@ -518,7 +562,44 @@ public class PImage implements PConstants, Cloneable {
    * @see PImage#get(int, int, int, int)
    */
   public void resize(int w, int h) {  // ignore
-    throw new RuntimeException("resize() not implemented for this PImage type");
+    resize(w, h, BILINEAR);
+  }
+
+
+  /**
+   * Resize using a particular filter. NEAREST is fastest and keeps hard
+   * edges (for pixel art), BILINEAR is the default, BICUBIC is sharper,
+   * and LANCZOS is sharpest and slowest, good for thumbnails and other
+   * large reductions. All of them take every source pixel into account
+   * when shrinking.
+   *
+   * @param filter NEAREST, BILINEAR, BICUBIC, or LANCZOS
+   */
+  public void resize(int w, int h, int filter) {  // ignore
+    if (w <= 0 && h <= 0) {
+      throw new IllegalArgumentException("width or height must be > 0 for resize");
+    }
+
+    if (w == 0) {  // Use height to determine relative size
+      float diff = (float) h / (float) height;
+      w = Math.max(1, (int) (width * diff));
+    } else if (h == 0) {  // Use the width to determine relative size
+      float diff = (float) w / (float) width;
+      h = Math.max(1, (int) (height * diff));
+    }
+
+    loadPixels();
+    int wide = w * pixelDensity;
+    int high = h * pixelDensity;
+    pixels = Resampler.resize(pixels, pixelWidth, pixelHeight, format,
+                              wide, high, filter);
+    pixelWidth = wide;
+    pixelHeight = high;
+    width = w;
+    height = h;
+
+    // Mark the pixels array as altered
+    updatePixels();
   }
 
 
@@ -820,9 +901,9 @@ public class PImage implements PConstants, Cloneable {
     if (maskArray.length != pixels.length) {
       throw new IllegalArgumentException("mask() can only be used with an image that's the same size.");
     }
-    for (int i = 0; i < pixels.length; i++) {
-      pixels[i] = ((maskArray[i] & 0xff) << 24) | (pixels[i] & 0xffffff);
-    }
+    PixelKernels kernels = PixelKernels.get();
+    PixelBands.run(pixels.length, 1, (start, stop) ->
+      kernels.mask(pixels, maskArray, start, stop));
     format = ARGB;
     updatePixels();
   }
@@ -877,6 +958,7 @@ public class PImage implements PConstants, Cloneable {
 
   public void filter(int kind) {
     loadPixels();
+    PixelKernels kernels = PixelKernels.get();
 
     switch (kind) {
       case BLUR:
@@ -889,33 +971,26 @@ public class PImage implements PConstants, Cloneable {
       case GRAY:
         if (format == ALPHA) {
           // for an alpha image, convert it to an opaque grayscale
-          for (int i = 0; i < pixels.length; i++) {
-            int col = 255 - pixels[i];
-            pixels[i] = 0xff000000 | (col << 16) | (col << 8) | col;
-          }
+          PixelBands.run(pixels.length, 1, (start, stop) -> {
+            for (int i = start; i < stop; i++) {
+              int col = 255 - pixels[i];
+              pixels[i] = 0xff000000 | (col << 16) | (col << 8) | col;
+            }
+          });
           format = RGB;
 
         } else {
           // Converts RGB image data into grayscale using
           // weighted RGB components, and keeps alpha channel intact.
           // [toxi 040115]
-          for (int i = 0; i < pixels.length; i++) {
-            int col = pixels[i];
-            // luminance = 0.3*red + 0.59*green + 0.11*blue
-            // 0.30 * 256 =  77
-            // 0.59 * 256 = 151
-            // 0.11 * 256 =  28
-            int lum = (77*(col>>16&0xff) + 151*(col>>8&0xff) + 28*(col&0xff))>>8;
-            pixels[i] = (col & ALPHA_MASK) | lum<<16 | lum<<8 | lum;
-          }
+          PixelBands.run(pixels.length, 1, (start, stop) ->
+            kernels.gray(pixels, start, stop));
         }
         break;
 
       case INVERT:
-        for (int i = 0; i < pixels.length; i++) {
-          //pixels[i] = 0xff000000 |
-          pixels[i] ^= 0xffffff;
-        }
+        PixelBands.run(pixels.length, 1, (start, stop) ->
+          kernels.invert(pixels, start, stop));
         break;
 
       case POSTERIZE:
@@ -923,9 +998,11 @@ public class PImage implements PConstants, Cloneable {
         "instead of filter(POSTERIZE)");
 
       case OPAQUE:
-        for (int i = 0; i < pixels.length; i++) {
-          pixels[i] |= 0xff000000;
-        }
+        PixelBands.run(pixels.length, 1, (start, stop) -> {
+          for (int i = start; i < stop; i++) {
+            pixels[i] |= 0xff000000;
+          }
+        });
         format = RGB;
         break;
 
@@ -1001,6 +1078,7 @@ public class PImage implements PConstants, Cloneable {
    */
   public void filter(int kind, float param) {
     loadPixels();
+    PixelKernels kernels = PixelKernels.get();
 
     switch (kind) {
       case BLUR:
@@ -1030,30 +1108,14 @@ public class PImage implements PConstants, Cloneable {
           throw new RuntimeException("Levels must be between 2 and 255 for " +
                                      "filter(POSTERIZE, levels)");
         }
-        int levels1 = levels - 1;
-        for (int i = 0; i < pixels.length; i++) {
-          int rlevel = (pixels[i] >> 16) & 0xff;
-          int glevel = (pixels[i] >> 8) & 0xff;
-          int blevel = pixels[i] & 0xff;
-          rlevel = (((rlevel * levels) >> 8) * 255) / levels1;
-          glevel = (((glevel * levels) >> 8) * 255) / levels1;
-          blevel = (((blevel * levels) >> 8) * 255) / levels1;
-          pixels[i] = ((0xff000000 & pixels[i]) |
-                       (rlevel << 16) |
-                       (glevel << 8) |
-                       blevel);
-        }
+        PixelBands.run(pixels.length, 4, (start, stop) ->
+          kernels.posterize(pixels, start, stop, levels));
         break;
 
       case THRESHOLD:  // greater than or equal to the threshold
         int thresh = (int) (param * 255);
-        for (int i = 0; i < pixels.length; i++) {
-          int max = Math.max((pixels[i] & RED_MASK) >> 16,
-                             Math.max((pixels[i] & GREEN_MASK) >> 8,
-                                      (pixels[i] & BLUE_MASK)));
-          pixels[i] = (pixels[i] & ALPHA_MASK) |
-            ((max < thresh) ? 0x000000 : 0xffffff);
-        }
+        PixelBands.run(pixels.length, 1, (start, stop) ->
+          kernels.threshold(pixels, start, stop, thresh));
         break;
 
         // [toxi20050728] added new filters
@@ -1076,6 +1138,33 @@ public class PImage implements PConstants, Cloneable {
   }
 
 
+  /**
+   * Kernels never change for a given radius, so they're built once and
+   * shared by all images. This used to be a [radius][256] table of
+   * pre-multiplied values for each image, 500k for a large radius, which
+   * isn't any faster than the multiply on current hardware.
+   */
+  static private final int[][] blurKernels = new int[249][];
+
+
+  static synchronized int[] blurKernel(int radius) {
+    int[] kernel = blurKernels[radius];
+    if (kernel == null) {
+      // the size is (1 + radius) << 1 because of operator precedence,
+      // which leaves zeroes on the end. It's kept that way so that
+      // the edges come out the same as they always have.
+      kernel = new int[1 + radius<<1];
+      for (int i = 1, radiusi = radius - 1; i < radius; i++) {
+        kernel[radius+i] = kernel[radiusi] = radiusi * radiusi;
+        radiusi--;
+      }
+      kernel[radius] = radius * radius;
+      blurKernels[radius] = kernel;
+    }
+    return kernel;
+  }
+
+
   /**
    * Optimized code for building the blur kernel.
    * further optimized blur code (approx. 15% for radius=20)
@@ -1088,265 +1177,238 @@ public class PImage implements PConstants, Cloneable {
     radius = (radius < 1) ? 1 : ((radius < 248) ? radius : 248);
     if (blurRadius != radius) {
       blurRadius = radius;
-      blurKernelSize = 1 + blurRadius<<1;
-      blurKernel = new int[blurKernelSize];
-      blurMult = new int[blurKernelSize][256];
-
-      int bk,bki;
-      int[] bm,bmi;
-
-      for (int i = 1, radiusi = radius - 1; i < radius; i++) {
-        blurKernel[radius+i] = blurKernel[radiusi] = bki = radiusi * radiusi;
-        bm=blurMult[radius+i];
-        bmi=blurMult[radiusi--];
-        for (int j = 0; j < 256; j++)
-          bm[j] = bmi[j] = bki*j;
-      }
-      bk = blurKernel[radius] = radius * radius;
-      bm = blurMult[radius];
-      for (int j = 0; j < 256; j++)
-        bm[j] = bk*j;
+      blurKernel = blurKernel(radius);
+      blurKernelSize = blurKernel.length;
     }
   }
 
 
+  // The blurs are two passes, across the rows and then down the columns.
+  // Each output row depends only on the input, never on other output rows,
+  // so both passes are split into bands of rows and run in parallel. The
+  // same integer products are summed (only the order differs in the
+  // second pass, which doesn't matter for ints), so the results match
+  // the single-threaded version exactly.
+
+
   protected void blurAlpha(float r) {
-    int sum, cb;
-    int read, ri, ym, ymi, bk0;
     int[] b2 = new int[pixels.length];
-    int yi = 0;
 
     buildBlurKernel(r);
-
-    for (int y = 0; y < pixelHeight; y++) {
-      for (int x = 0; x < pixelWidth; x++) {
-        //cb = cg = cr = sum = 0;
-        cb = sum = 0;
-        read = x - blurRadius;
-        if (read<0) {
-          bk0=-read;
-          read=0;
-        } else {
-          if (read >= pixelWidth)
-            break;
-          bk0=0;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (read >= pixelWidth)
-            break;
-          int c = pixels[read + yi];
-          int[] bm = blurMult[i];
-          cb += bm[c & BLUE_MASK];
-          sum += blurKernel[i];
-          read++;
+    int radius = blurRadius;
+    int kernelSize = blurKernelSize;
+    int[] kernel = blurKernel;
+    int cost = pixelWidth * kernelSize;
+
+    PixelBands.run(pixelHeight, cost, (start, stop) -> {
+      for (int y = start; y < stop; y++) {
+        int yi = y * pixelWidth;
+        for (int x = 0; x < pixelWidth; x++) {
+          int cb = 0, sum = 0;
+          int read = x - radius;
+          int bk0 = 0;
+          if (read < 0) {
+            bk0 = -read;
+            read = 0;
+          }
+          for (int i = bk0; i < kernelSize; i++) {
+            if (read >= pixelWidth)
+              break;
+            int c = pixels[read + yi];
+            int bk = kernel[i];
+            cb += bk * (c & BLUE_MASK);
+            sum += bk;
+            read++;
+          }
+          b2[yi + x] = cb / sum;
         }
-        ri = yi + x;
-        b2[ri] = cb / sum;
       }
-      yi += pixelWidth;
-    }
-
-    yi = 0;
-    ym = -blurRadius;
-    ymi = ym * pixelWidth;
-
-    for (int y = 0; y < pixelHeight; y++) {
-      for (int x = 0; x < pixelWidth; x++) {
-        cb = sum = 0;
-        if (ym < 0) {
-          bk0 = ri = -ym;
-          read = x;
-        } else {
-          if (ym >= pixelHeight)
-            break;
-          bk0 = 0;
-          ri = ym;
-          read = x + ymi;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (ri >= pixelHeight)
-            break;
-          int[] bm = blurMult[i];
-          cb += bm[b2[read]];
-          sum += blurKernel[i];
-          ri++;
+    });
+
+    PixelBands.run(pixelHeight, cost, (start, stop) -> {
+      int[] cb = new int[pixelWidth];
+      for (int y = start; y < stop; y++) {
+        // the rows of the kernel that fall inside the image are the same
+        // for every pixel in the row, so add them up a whole row at a time
+        int ym = y - radius;
+        int bk0 = (ym < 0) ? -ym : 0;
+        int end = Math.min(kernelSize, pixelHeight - Math.max(ym, 0));
+        int read = Math.max(ym, 0) * pixelWidth;
+        Arrays.fill(cb, 0);
+        int sum = 0;
+        for (int i = bk0; i < end; i++) {
+          int bk = kernel[i];
+          for (int x = 0; x < pixelWidth; x++) {
+            cb[x] += bk * b2[read + x];
+          }
+          sum += bk;
           read += pixelWidth;
         }
-        pixels[x+yi] = (cb/sum);
+        int yi = y * pixelWidth;
+        for (int x = 0; x < pixelWidth; x++) {
+          pixels[x+yi] = (cb[x]/sum);
+        }
       }
-      yi += pixelWidth;
-      ymi += pixelWidth;
-      ym++;
-    }
+    });
   }
 
 
   protected void blurRGB(float r) {
-    int sum, cr, cg, cb; //, k;
-    int /*pixel,*/ read, ri, /*roff,*/ ym, ymi, /*riw,*/ bk0;
     int[] r2 = new int[pixels.length];
     int[] g2 = new int[pixels.length];
     int[] b2 = new int[pixels.length];
-    int yi = 0;
 
     buildBlurKernel(r);
-
-    for (int y = 0; y < pixelHeight; y++) {
-      for (int x = 0; x < pixelWidth; x++) {
-        cb = cg = cr = sum = 0;
-        read = x - blurRadius;
-        if (read < 0) {
-          bk0 = -read;
-          read = 0;
-        } else {
-          if (read >= pixelWidth) {
-            break;
+    int radius = blurRadius;
+    int kernelSize = blurKernelSize;
+    int[] kernel = blurKernel;
+    int cost = pixelWidth * kernelSize * 3;
+
+    PixelBands.run(pixelHeight, cost, (start, stop) -> {
+      for (int y = start; y < stop; y++) {
+        int yi = y * pixelWidth;
+        for (int x = 0; x < pixelWidth; x++) {
+          int cr = 0, cg = 0, cb = 0, sum = 0;
+          int read = x - radius;
+          int bk0 = 0;
+          if (read < 0) {
+            bk0 = -read;
+            read = 0;
           }
-          bk0 = 0;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (read >= pixelWidth) {
-            break;
+          for (int i = bk0; i < kernelSize; i++) {
+            if (read >= pixelWidth) {
+              break;
+            }
+            int c = pixels[read + yi];
+            int bk = kernel[i];
+            cr += bk * ((c & RED_MASK) >> 16);
+            cg += bk * ((c & GREEN_MASK) >> 8);
+            cb += bk * (c & BLUE_MASK);
+            sum += bk;
+            read++;
           }
-          int c = pixels[read + yi];
-          int[] bm = blurMult[i];
-          cr += bm[(c & RED_MASK) >> 16];
-          cg += bm[(c & GREEN_MASK) >> 8];
-          cb += bm[c & BLUE_MASK];
-          sum += blurKernel[i];
-          read++;
+          int ri = yi + x;
+          r2[ri] = cr / sum;
+          g2[ri] = cg / sum;
+          b2[ri] = cb / sum;
         }
-        ri = yi + x;
-        r2[ri] = cr / sum;
-        g2[ri] = cg / sum;
-        b2[ri] = cb / sum;
       }
-      yi += pixelWidth;
-    }
-
-    yi = 0;
-    ym = -blurRadius;
-    ymi = ym * pixelWidth;
-
-    for (int y = 0; y < pixelHeight; y++) {
-      for (int x = 0; x < pixelWidth; x++) {
-        cb = cg = cr = sum = 0;
-        if (ym < 0) {
-          bk0 = ri = -ym;
-          read = x;
-        } else {
-          if (ym >= pixelHeight) {
-            break;
+    });
+
+    PixelBands.run(pixelHeight, cost, (start, stop) -> {
+      int[] cr = new int[pixelWidth];
+      int[] cg = new int[pixelWidth];
+      int[] cb = new int[pixelWidth];
+      for (int y = start; y < stop; y++) {
+        // the rows of the kernel that fall inside the image are the same
+        // for every pixel in the row, so add them up a whole row at a time
+        int ym = y - radius;
+        int bk0 = (ym < 0) ? -ym : 0;
+        int end = Math.min(kernelSize, pixelHeight - Math.max(ym, 0));
+        int read = Math.max(ym, 0) * pixelWidth;
+        Arrays.fill(cr, 0);
+        Arrays.fill(cg, 0);
+        Arrays.fill(cb, 0);
+        int sum = 0;
+        for (int i = bk0; i < end; i++) {
+          int bk = kernel[i];
+          for (int x = 0; x < pixelWidth; x++) {
+            cr[x] += bk * r2[read + x];
+            cg[x] += bk * g2[read + x];
+            cb[x] += bk * b2[read + x];
           }
-          bk0 = 0;
-          ri = ym;
-          read = x + ymi;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (ri >= pixelHeight) {
-            break;
-          }
-          int[] bm = blurMult[i];
-          cr += bm[r2[read]];
-          cg += bm[g2[read]];
-          cb += bm[b2[read]];
-          sum += blurKernel[i];
-          ri++;
+          sum += bk;
           read += pixelWidth;
         }
-        pixels[x+yi] = 0xff000000 | (cr/sum)<<16 | (cg/sum)<<8 | (cb/sum);
+        int yi = y * pixelWidth;
+        for (int x = 0; x < pixelWidth; x++) {
+          pixels[x+yi] = 0xff000000 | (cr[x]/sum)<<16 | (cg[x]/sum)<<8 | (cb[x]/sum);
+        }
       }
-      yi += pixelWidth;
-      ymi += pixelWidth;
-      ym++;
-    }
+    });
   }
 
 
   protected void blurARGB(float r) {
-    int sum, cr, cg, cb, ca;
-    int /*pixel,*/ read, ri, /*roff,*/ ym, ymi, /*riw,*/ bk0;
     int wh = pixels.length;
     int[] r2 = new int[wh];
     int[] g2 = new int[wh];
     int[] b2 = new int[wh];
     int[] a2 = new int[wh];
-    int yi = 0;
 
     buildBlurKernel(r);
-
-    for (int y = 0; y < pixelHeight; y++) {
-      for (int x = 0; x < pixelWidth; x++) {
-        cb = cg = cr = ca = sum = 0;
-        read = x - blurRadius;
-        if (read < 0) {
-          bk0 = -read;
-          read = 0;
-        } else {
-          if (read >= pixelWidth) {
-            break;
+    int radius = blurRadius;
+    int kernelSize = blurKernelSize;
+    int[] kernel = blurKernel;
+    int cost = pixelWidth * kernelSize * 4;
+
+    PixelBands.run(pixelHeight, cost, (start, stop) -> {
+      for (int y = start; y < stop; y++) {
+        int yi = y * pixelWidth;
+        for (int x = 0; x < pixelWidth; x++) {
+          int ca = 0, cr = 0, cg = 0, cb = 0, sum = 0;
+          int read = x - radius;
+          int bk0 = 0;
+          if (read < 0) {
+            bk0 = -read;
+            read = 0;
           }
-          bk0=0;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (read >= pixelWidth) {
-            break;
+          for (int i = bk0; i < kernelSize; i++) {
+            if (read >= pixelWidth) {
+              break;
+            }
+            int c = pixels[read + yi];
+            int bk = kernel[i];
+            ca += bk * ((c & ALPHA_MASK) >>> 24);
+            cr += bk * ((c & RED_MASK) >> 16);
+            cg += bk * ((c & GREEN_MASK) >> 8);
+            cb += bk * (c & BLUE_MASK);
+            sum += bk;
+            read++;
           }
-          int c = pixels[read + yi];
-          int[] bm=blurMult[i];
-          ca += bm[(c & ALPHA_MASK) >>> 24];
-          cr += bm[(c & RED_MASK) >> 16];
-          cg += bm[(c & GREEN_MASK) >> 8];
-          cb += bm[c & BLUE_MASK];
-          sum += blurKernel[i];
-          read++;
+          int ri = yi + x;
+          a2[ri] = ca / sum;
+          r2[ri] = cr / sum;
+          g2[ri] = cg / sum;
+          b2[ri] = cb / sum;
         }
-        ri = yi + x;
-        a2[ri] = ca / sum;
-        r2[ri] = cr / sum;
-        g2[ri] = cg / sum;
-        b2[ri] = cb / sum;
       }
-      yi += pixelWidth;
-    }
-
-    yi = 0;
-    ym = -blurRadius;
-    ymi = ym * pixelWidth;
-
-    for (int y = 0; y < pixelHeight; y++) {
-      for (int x = 0; x < pixelWidth; x++) {
-        cb = cg = cr = ca = sum = 0;
-        if (ym < 0) {
-          bk0 = ri = -ym;
-          read = x;
-        } else {
-          if (ym >= pixelHeight) {
-            break;
-          }
-          bk0 = 0;
-          ri = ym;
-          read = x + ymi;
-        }
-        for (int i = bk0; i < blurKernelSize; i++) {
-          if (ri >= pixelHeight) {
-            break;
+    });
+
+    PixelBands.run(pixelHeight, cost, (start, stop) -> {
+      int[] ca = new int[pixelWidth];
+      int[] cr = new int[pixelWidth];
+      int[] cg = new int[pixelWidth];
+      int[] cb = new int[pixelWidth];
+      for (int y = start; y < stop; y++) {
+        // the rows of the kernel that fall inside the image are the same
+        // for every pixel in the row, so add them up a whole row at a time
+        int ym = y - radius;
+        int bk0 = (ym < 0) ? -ym : 0;
+        int end = Math.min(kernelSize, pixelHeight - Math.max(ym, 0));
+        int read = Math.max(ym, 0) * pixelWidth;
+        Arrays.fill(ca, 0);
+        Arrays.fill(cr, 0);
+        Arrays.fill(cg, 0);
+        Arrays.fill(cb, 0);
+        int sum = 0;
+        for (int i = bk0; i < end; i++) {
+          int bk = kernel[i];
+          for (int x = 0; x < pixelWidth; x++) {
+            ca[x] += bk * a2[read + x];
+            cr[x] += bk * r2[read + x];
+            cg[x] += bk * g2[read + x];
+            cb[x] += bk * b2[read + x];
           }
-          int[] bm=blurMult[i];
-          ca += bm[a2[read]];
-          cr += bm[r2[read]];
-          cg += bm[g2[read]];
-          cb += bm[b2[read]];
-          sum += blurKernel[i];
-          ri++;
+          sum += bk;
           read += pixelWidth;
         }
-        pixels[x+yi] = (ca/sum)<<24 | (cr/sum)<<16 | (cg/sum)<<8 | (cb/sum);
+        int yi = y * pixelWidth;
+        for (int x = 0; x < pixelWidth; x++) {
+          pixels[x+yi] = (ca[x]/sum)<<24 | (cr[x]/sum)<<16 | (cg[x]/sum)<<8 | (cb[x]/sum);
+        }
       }
-      yi += pixelWidth;
-      ymi += pixelWidth;
-      ym++;
-    }
+    });
   }
 
 
@@ -1355,139 +1417,85 @@ public class PImage implements PConstants, Cloneable {
    * as decision factor. [toxi 050728]
    */
   protected void dilate() {  // formerly dilate(false)
-    int index = 0;
-    int maxIndex = pixels.length;
-    int[] outgoing = new int[maxIndex];
-
     // erosion (grow light areas)
-    while (index < maxIndex) {
-      int curRowIndex = index;
-      int maxRowIndex = index + pixelWidth;
-      while (index < maxRowIndex) {
-        int orig = pixels[index];
-        int result = orig;
-        int idxLeft = index - 1;
-        int idxRight = index + 1;
-        int idxUp = index - pixelWidth;
-        int idxDown = index + pixelWidth;
-        if (idxLeft < curRowIndex) {
-          idxLeft = index;
-        }
-        if (idxRight >= maxRowIndex) {
-          idxRight = index;
-        }
-        if (idxUp < 0) {
-          idxUp = index;
-        }
-        if (idxDown >= maxIndex) {
-          idxDown = index;
-        }
-
-        int colUp = pixels[idxUp];
-        int colLeft = pixels[idxLeft];
-        int colDown = pixels[idxDown];
-        int colRight = pixels[idxRight];
-
-        // compute luminance
-        int currLum =
-          77*(orig>>16&0xff) + 151*(orig>>8&0xff) + 28*(orig&0xff);
-        int lumLeft =
-          77*(colLeft>>16&0xff) + 151*(colLeft>>8&0xff) + 28*(colLeft&0xff);
-        int lumRight =
-          77*(colRight>>16&0xff) + 151*(colRight>>8&0xff) + 28*(colRight&0xff);
-        int lumUp =
-          77*(colUp>>16&0xff) + 151*(colUp>>8&0xff) + 28*(colUp&0xff);
-        int lumDown =
-          77*(colDown>>16&0xff) + 151*(colDown>>8&0xff) + 28*(colDown&0xff);
-
-        if (lumLeft > currLum) {
-          result = colLeft;
-          currLum = lumLeft;
-        }
-        if (lumRight > currLum) {
-          result = colRight;
-          currLum = lumRight;
-        }
-        if (lumUp > currLum) {
-          result = colUp;
-          currLum = lumUp;
-        }
-        if (lumDown > currLum) {
-          result = colDown;
-          currLum = lumDown;
-        }
-        outgoing[index++] = result;
-      }
-    }
-    System.arraycopy(outgoing, 0, pixels, 0, maxIndex);
+    dilate(false);
   }
 
 
   protected void erode() {  // formerly dilate(true)
-    int index = 0;
+    // dilate (grow dark areas)
+    dilate(true);
+  }
+
+
+  private void dilate(boolean erode) {
     int maxIndex = pixels.length;
     int[] outgoing = new int[maxIndex];
+    // Eroding picks the darkest neighbor instead of the lightest, which
+    // is the same as picking the lightest with the luminance negated.
+    int sign = erode ? -1 : 1;
+
+    PixelBands.run(maxIndex / pixelWidth, pixelWidth * 5, (start, stop) -> {
+      for (int y = start; y < stop; y++) {
+        int curRowIndex = y * pixelWidth;
+        int maxRowIndex = curRowIndex + pixelWidth;
+        for (int index = curRowIndex; index < maxRowIndex; index++) {
+          int orig = pixels[index];
+          int result = orig;
+          int idxLeft = index - 1;
+          int idxRight = index + 1;
+          int idxUp = index - pixelWidth;
+          int idxDown = index + pixelWidth;
+          if (idxLeft < curRowIndex) {
+            idxLeft = index;
+          }
+          if (idxRight >= maxRowIndex) {
+            idxRight = index;
+          }
+          if (idxUp < 0) {
+            idxUp = index;
+          }
+          if (idxDown >= maxIndex) {
+            idxDown = index;
+          }
 
-    // dilate (grow dark areas)
-    while (index < maxIndex) {
-      int curRowIndex = index;
-      int maxRowIndex = index + pixelWidth;
-      while (index < maxRowIndex) {
-        int orig = pixels[index];
-        int result = orig;
-        int idxLeft = index - 1;
-        int idxRight = index + 1;
-        int idxUp = index - pixelWidth;
-        int idxDown = index + pixelWidth;
-        if (idxLeft < curRowIndex) {
-          idxLeft = index;
-        }
-        if (idxRight >= maxRowIndex) {
-          idxRight = index;
-        }
-        if (idxUp < 0) {
-          idxUp = index;
-        }
-        if (idxDown >= maxIndex) {
-          idxDown = index;
-        }
-
-        int colUp = pixels[idxUp];
-        int colLeft = pixels[idxLeft];
-        int colDown = pixels[idxDown];
-        int colRight = pixels[idxRight];
-
-        // compute luminance
-        int currLum =
-          77*(orig>>16&0xff) + 151*(orig>>8&0xff) + 28*(orig&0xff);
-        int lumLeft =
-          77*(colLeft>>16&0xff) + 151*(colLeft>>8&0xff) + 28*(colLeft&0xff);
-        int lumRight =
-          77*(colRight>>16&0xff) + 151*(colRight>>8&0xff) + 28*(colRight&0xff);
-        int lumUp =
-          77*(colUp>>16&0xff) + 151*(colUp>>8&0xff) + 28*(colUp&0xff);
-        int lumDown =
-          77*(colDown>>16&0xff) + 151*(colDown>>8&0xff) + 28*(colDown&0xff);
-
-        if (lumLeft < currLum) {
-          result = colLeft;
-          currLum = lumLeft;
-        }
-        if (lumRight < currLum) {
-          result = colRight;
-          currLum = lumRight;
-        }
-        if (lumUp < currLum) {
-          result = colUp;
-          currLum = lumUp;
-        }
-        if (lumDown < currLum) {
-          result = colDown;
-          currLum = lumDown;
+          int colUp = pixels[idxUp];
+          int colLeft = pixels[idxLeft];
+          int colDown = pixels[idxDown];
+          int colRight = pixels[idxRight];
+
+          // compute luminance
+          int currLum = sign *
+            (77*(orig>>16&0xff) + 151*(orig>>8&0xff) + 28*(orig&0xff));
+          int lumLeft = sign *
+            (77*(colLeft>>16&0xff) + 151*(colLeft>>8&0xff) + 28*(colLeft&0xff));
+          int lumRight = sign *
+            (77*(colRight>>16&0xff) + 151*(colRight>>8&0xff) + 28*(colRight&0xff));
+          int lumUp = sign *
+            (77*(colUp>>16&0xff) + 151*(colUp>>8&0xff) + 28*(colUp&0xff));
+          int lumDown = sign *
+            (77*(colDown>>16&0xff) + 151*(colDown>>8&0xff) + 28*(colDown&0xff));
+
+          if (lumLeft > currLum) {
+            result = colLeft;
+            currLum = lumLeft;
+          }
+          if (lumRight > currLum) {
+            result = colRight;
+            currLum = lumRight;
+          }
+          if (lumUp > currLum) {
+            result = colUp;
+            currLum = lumUp;
+          }
+          if (lumDown > currLum) {
+            result = colDown;
+            currLum = lumDown;
+          }
+          outgoing[index] = result;
         }
-        outgoing[index++] = result;
       }
-    }
+    });
     System.arraycopy(outgoing, 0, pixels, 0, maxIndex);
   }
 
@@ -1800,6 +1808,13 @@ public class PImage implements PConstants, Cloneable {
    * Internal blitter/resizer/copier from toxi.
    * Uses bilinear filtering if smooth() has been enabled
    * 'mode' determines the blending mode used in the process.
+   * <P>
+   * Each row of the destination is sampled from the source into a
+   * buffer, then blended with a separate loop for each mode, so there
+   * are no per-pixel calls or state in fields. When the source isn't
+   * scaled, the bilinear weights all land on one pixel, so the source
+   * row is used as-is. Large regions are split into bands of rows and
+   * run in parallel.
    */
   private void blit_resize(PImage img,
                            int srcX1, int srcY1, int srcX2, int srcY2,
@@ -1816,12 +1831,6 @@ public class PImage implements PConstants, Cloneable {
     int destW = destX2 - destX1;
     int destH = destY2 - destY1;
 
-    boolean smooth = true;  // may as well go with the smoothing these days
-
-    if (!smooth) {
-      srcW++; srcH++;
-    }
-
     if (destW <= 0 || destH <= 0 ||
         srcW <= 0 || srcH <= 0 ||
         destX1 >= screenW || destY1 >= screenH ||
@@ -1832,8 +1841,8 @@ public class PImage implements PConstants, Cloneable {
     int dx = (int) (srcW / (float) destW * PRECISIONF);
     int dy = (int) (srcH / (float) destH * PRECISIONF);
 
-    srcXOffset = destX1 < 0 ? -destX1 * dx : srcX1 * PRECISIONF;
-    srcYOffset = destY1 < 0 ? -destY1 * dy : srcY1 * PRECISIONF;
+    int srcXOffset = destX1 < 0 ? -destX1 * dx : srcX1 * PRECISIONF;
+    int srcYOffset = destY1 < 0 ? -destY1 * dy : srcY1 * PRECISIONF;
 
     if (destX1 < 0) {
       destW += destX1;
@@ -1844,497 +1853,206 @@ public class PImage implements PConstants, Cloneable {
       destY1 = 0;
     }
 
-    destW = min(destW, screenW - destX1);
-    destH = min(destH, screenH - destY1);
+    int rowW = min(destW, screenW - destX1);
+    int rows = min(destH, screenH - destY1);
+    if (rowW <= 0 || rows <= 0) {
+      return;  // clipped away entirely
+    }
 
     int destOffset = destY1 * screenW + destX1;
-    srcBuffer = img.pixels;
-
-    if (smooth) {
-      // use bilinear filtering
-      iw = img.pixelWidth;
-      iw1 = img.pixelWidth - 1;
-      ih1 = img.pixelHeight - 1;
-
-      switch (mode) {
-
-      case BLEND:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            // davbol  - renamed old blend_multiply to blend_blend
-            destPixels[destOffset + x] =
-              blend_blend(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
+    int[] srcBuffer = img.pixels;
+    int iw = img.pixelWidth;
+    int ih1 = img.pixelHeight - 1;
+
+    // integer offsets only; anything else has to be filtered
+    boolean unscaled = (dx == PRECISIONF && dy == PRECISIONF);
+
+    PixelBands.run(rows, unscaled ? rowW : rowW * 4, (start, stop) -> {
+      int[] sample = unscaled ? null : new int[rowW];
+      int[] u1 = null, u2 = null, ifU = null;
+      if (!unscaled) {
+        u1 = new int[rowW];
+        u2 = new int[rowW];
+        ifU = new int[rowW];
+        int sX = srcXOffset;
+        for (int x = 0; x < rowW; x++) {
+          ifU[x] = PREC_MAXVAL - (sX & PREC_MAXVAL) + 1;
+          u1[x] = (sX >> PRECISIONB);
+          u2[x] = min(u1[x] + 1, iw - 1);
+          sX += dx;
         }
-        break;
-
-      case ADD:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_add_pin(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case SUBTRACT:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_sub_pin(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case LIGHTEST:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_lightest(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case DARKEST:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_darkest(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case REPLACE:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] = filter_bilinear();
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case DIFFERENCE:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_difference(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case EXCLUSION:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_exclusion(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case MULTIPLY:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_multiply(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case SCREEN:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_screen(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
+      }
+      for (int y = start; y < stop; y++) {
+        int sY = srcYOffset + y * dy;
+        int offset = destOffset + y * screenW;
+        if (unscaled) {
+          blend_row(srcBuffer, (sY >> PRECISIONB) * iw + (srcXOffset >> PRECISIONB),
+                    destPixels, offset, rowW, mode);
+        } else {
+          filter_bilinear(srcBuffer, iw, ih1, sY, u1, u2, ifU, sample);
+          blend_row(sample, 0, destPixels, offset, rowW, mode);
         }
-        break;
+      }
+    });
+  }
 
-      case OVERLAY:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_overlay(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
 
-      case HARD_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_hard_light(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+  /**
+   * Sample one row at vertical position sY (fixed point), with the
+   * horizontal positions and weights already worked out for each pixel.
+   */
+  static private void filter_bilinear(int[] srcBuffer, int iw, int ih1, int sY,
+                                      int[] u1, int[] u2, int[] ifU,
+                                      int[] outgoing) {
+    int fracV = sY & PREC_MAXVAL;
+    int ifV = PREC_MAXVAL - fracV + 1;
+    int v1 = (sY >> PRECISIONB) * iw;
+    int v2 = min((sY >> PRECISIONB) + 1, ih1) * iw;
+
+    for (int x = 0; x < outgoing.length; x++) {
+      int ul = (ifU[x] * ifV) >> PRECISIONB;
+      int ll = ifU[x] - ul;
+      int ur = ifV - ul;
+      int lr = PREC_MAXVAL + 1 - ul - ll - ur;
+
+      // get color values of the 4 neighbouring texels
+      int cUL = srcBuffer[v1 + u1[x]];
+      int cUR = srcBuffer[v1 + u2[x]];
+      int cLL = srcBuffer[v2 + u1[x]];
+      int cLR = srcBuffer[v2 + u2[x]];
+
+      int r = ((ul*((cUL&RED_MASK)>>16) + ll*((cLL&RED_MASK)>>16) +
+                ur*((cUR&RED_MASK)>>16) + lr*((cLR&RED_MASK)>>16))
+               << PREC_RED_SHIFT) & RED_MASK;
+
+      int g = ((ul*(cUL&GREEN_MASK) + ll*(cLL&GREEN_MASK) +
+                ur*(cUR&GREEN_MASK) + lr*(cLR&GREEN_MASK))
+               >>> PRECISIONB) & GREEN_MASK;
+
+      int b = (ul*(cUL&BLUE_MASK) + ll*(cLL&BLUE_MASK) +
+               ur*(cUR&BLUE_MASK) + lr*(cLR&BLUE_MASK))
+                 >>> PRECISIONB;
+
+      int a = ((ul*((cUL&ALPHA_MASK)>>>24) + ll*((cLL&ALPHA_MASK)>>>24) +
+                ur*((cUR&ALPHA_MASK)>>>24) + lr*((cLR&ALPHA_MASK)>>>24))
+               << PREC_ALPHA_SHIFT) & ALPHA_MASK;
+
+      outgoing[x] = a | r | g | b;
+    }
+  }
 
-      case SOFT_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_soft_light(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
 
-      // davbol - proposed 2007-01-09
-      case DODGE:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_dodge(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+  /**
+   * Blend count pixels from src into dst. The switch is outside the
+   * loops so that each mode gets its own loop with the blend inlined.
+   */
+  static private void blend_row(int[] src, int srcOffset,
+                                int[] dst, int dstOffset,
+                                int count, int mode) {
+    int end = dstOffset + count;
+    int s = srcOffset;
+    switch (mode) {
 
-      case BURN:
-        for (int y = 0; y < destH; y++) {
-          filter_new_scanline();
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_burn(destPixels[destOffset + x], filter_bilinear());
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
+    case REPLACE:
+      System.arraycopy(src, srcOffset, dst, dstOffset, count);
+      break;
+
+    case BLEND:
+      for (int d = dstOffset; d < end; d++) {
+        // davbol  - renamed old blend_multiply to blend_blend
+        int c = src[s++];
+        int a = c >>> 24;
+        // the same results blend_blend() gives for these, much quicker
+        if (a == 0xFF) {
+          dst[d] = c;
+        } else if (a != 0) {
+          dst[d] = blend_blend(dst[d], c);
         }
-        break;
-
       }
+      break;
 
-    } else {
-      // nearest neighbour scaling (++fast!)
-      switch (mode) {
-
-      case BLEND:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            // davbol - renamed old blend_multiply to blend_blend
-            destPixels[destOffset + x] =
-              blend_blend(destPixels[destOffset + x],
-                          srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case ADD:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_add_pin(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case SUBTRACT:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_sub_pin(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
-
-      case LIGHTEST:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_lightest(destPixels[destOffset + x],
-                             srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case ADD:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_add_pin(dst[d], src[s++]);
+      }
+      break;
 
-      case DARKEST:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_darkest(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case SUBTRACT:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_sub_pin(dst[d], src[s++]);
+      }
+      break;
 
-      case REPLACE:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] = srcBuffer[sY + (sX >> PRECISIONB)];
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case LIGHTEST:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_lightest(dst[d], src[s++]);
+      }
+      break;
 
-      case DIFFERENCE:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_difference(destPixels[destOffset + x],
-                               srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case DARKEST:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_darkest(dst[d], src[s++]);
+      }
+      break;
 
-      case EXCLUSION:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_exclusion(destPixels[destOffset + x],
-                              srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case DIFFERENCE:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_difference(dst[d], src[s++]);
+      }
+      break;
 
-      case MULTIPLY:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_multiply(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case EXCLUSION:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_exclusion(dst[d], src[s++]);
+      }
+      break;
 
-      case SCREEN:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_screen(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case MULTIPLY:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_multiply(dst[d], src[s++]);
+      }
+      break;
 
-      case OVERLAY:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_overlay(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case SCREEN:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_screen(dst[d], src[s++]);
+      }
+      break;
 
-      case HARD_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_hard_light(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case OVERLAY:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_overlay(dst[d], src[s++]);
+      }
+      break;
 
-      case SOFT_LIGHT:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_soft_light(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case HARD_LIGHT:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_hard_light(dst[d], src[s++]);
+      }
+      break;
 
-      // davbol - proposed 2007-01-09
-      case DODGE:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_dodge(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    case SOFT_LIGHT:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_soft_light(dst[d], src[s++]);
+      }
+      break;
 
-      case BURN:
-        for (int y = 0; y < destH; y++) {
-          sX = srcXOffset;
-          sY = (srcYOffset >> PRECISIONB) * img.pixelWidth;
-          for (int x = 0; x < destW; x++) {
-            destPixels[destOffset + x] =
-              blend_burn(destPixels[destOffset + x],
-                            srcBuffer[sY + (sX >> PRECISIONB)]);
-            sX += dx;
-          }
-          destOffset += screenW;
-          srcYOffset += dy;
-        }
-        break;
+    // davbol - proposed 2007-01-09
+    case DODGE:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_dodge(dst[d], src[s++]);
+      }
+      break;
 
+    case BURN:
+      for (int d = dstOffset; d < end; d++) {
+        dst[d] = blend_burn(dst[d], src[s++]);
       }
+      break;
     }
   }
 
 
-  private void filter_new_scanline() {
-    sX = srcXOffset;
-    fracV = srcYOffset & PREC_MAXVAL;
-    ifV = PREC_MAXVAL - fracV + 1;
-    v1 = (srcYOffset >> PRECISIONB) * iw;
-    v2 = min((srcYOffset >> PRECISIONB) + 1, ih1) * iw;
-  }
-
-
-  private int filter_bilinear() {
-    fracU = sX & PREC_MAXVAL;
-    ifU = PREC_MAXVAL - fracU + 1;
-    ul = (ifU * ifV) >> PRECISIONB;
-    ll = ifU - ul;
-    ur = ifV - ul;
-    lr = PREC_MAXVAL + 1 - ul - ll - ur;
-    u1 = (sX >> PRECISIONB);
-    u2 = min(u1 + 1, iw1);
-
-    // get color values of the 4 neighbouring texels
-    cUL = srcBuffer[v1 + u1];
-    cUR = srcBuffer[v1 + u2];
-    cLL = srcBuffer[v2 + u1];
-    cLR = srcBuffer[v2 + u2];
-
-    r = ((ul*((cUL&RED_MASK)>>16) + ll*((cLL&RED_MASK)>>16) +
-          ur*((cUR&RED_MASK)>>16) + lr*((cLR&RED_MASK)>>16))
-         << PREC_RED_SHIFT) & RED_MASK;
-
-    g = ((ul*(cUL&GREEN_MASK) + ll*(cLL&GREEN_MASK) +
-          ur*(cUR&GREEN_MASK) + lr*(cLR&GREEN_MASK))
-         >>> PRECISIONB) & GREEN_MASK;
-
-    b = (ul*(cUL&BLUE_MASK) + ll*(cLL&BLUE_MASK) +
-         ur*(cUR&BLUE_MASK) + lr*(cLR&BLUE_MASK))
-           >>> PRECISIONB;
-
-    a = ((ul*((cUL&ALPHA_MASK)>>>24) + ll*((cLL&ALPHA_MASK)>>>24) +
-          ur*((cUR&ALPHA_MASK)>>>24) + lr*((cLR&ALPHA_MASK)>>>24))
-         << PREC_ALPHA_SHIFT) & ALPHA_MASK;
-
-    return a | r | g | b;
-  }
-
-
 
   //////////////////////////////////////////////////////////////
 
@@ -2827,87 +2545,42 @@ int testFunction(int dst, int src) {
   }
 
 
+  /**
+   * Reads baseline TIFF files: gray, RGB, or RGBA, 8 or 16 bits per
+   * sample, uncompressed or with LZW or PackBits. Prints an error and
+   * returns null for anything else.
+   */
   static public PImage loadTIFF(InputStream input) {  // ignore
-    byte tiff[] = PApplet.loadBytes(input);
+    try {
+      return TIFFCodec.read(readInput(input));
 
-    if ((tiff[42] != tiff[102]) ||  // width/height in both places
-        (tiff[43] != tiff[103])) {
-      System.err.println(TIFF_ERROR);
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not read TIFF file: " + e.getMessage());
       return null;
-    }
 
-    int width =
-      ((tiff[30] & 0xff) << 8) | (tiff[31] & 0xff);
-    int height =
-      ((tiff[42] & 0xff) << 8) | (tiff[43] & 0xff);
-
-    int count =
-      ((tiff[114] & 0xff) << 24) |
-      ((tiff[115] & 0xff) << 16) |
-      ((tiff[116] & 0xff) << 8) |
-      (tiff[117] & 0xff);
-    if (count != width * height * 3) {
-      System.err.println(TIFF_ERROR + " (" + width + ", " + height +")");
-      return null;
+    } finally {
+      try {
+        input.close();
+      } catch (IOException e) { }
     }
+  }
 
-    // check the rest of the header
-    for (int i = 0; i < TIFF_HEADER.length; i++) {
-      if ((i == 30) || (i == 31) || (i == 42) || (i == 43) ||
-          (i == 102) || (i == 103) ||
-          (i == 114) || (i == 115) || (i == 116) || (i == 117)) continue;
-
-      if (tiff[i] != TIFF_HEADER[i]) {
-        System.err.println(TIFF_ERROR + " (" + i + ")");
-        return null;
-      }
-    }
 
-    PImage outgoing = new PImage(width, height, RGB);
-    int index = 768;
-    count /= 3;
-    for (int i = 0; i < count; i++) {
-      outgoing.pixels[i] =
-        0xFF000000 |
-        (tiff[index++] & 0xff) << 16 |
-        (tiff[index++] & 0xff) << 8 |
-        (tiff[index++] & 0xff);
-    }
-    return outgoing;
+  /**
+   * Uncompressed TIFF, with alpha for ARGB images and as gray for ALPHA.
+   */
+  protected boolean saveTIFF(OutputStream output) {
+    return saveTIFF(output, TIFFCodec.NONE);
   }
 
-  protected boolean saveTIFF(OutputStream output) {
-    // shutting off the warning, people can figure this out themselves
-    /*
-    if (format != RGB) {
-      System.err.println("Warning: only RGB information is saved with " +
-                         ".tif files. Use .tga or .png for ARGB images and others.");
-    }
-    */
+
+  /**
+   * @param compression TIFFCodec.NONE, LZW, or PACKBITS
+   */
+  boolean saveTIFF(OutputStream output, int compression) {
     try {
-      byte[] tiff = new byte[768];
-      System.arraycopy(TIFF_HEADER, 0, tiff, 0, TIFF_HEADER.length);
-
-      tiff[30] = (byte) ((pixelWidth >> 8) & 0xff);
-      tiff[31] = (byte) ((pixelWidth) & 0xff);
-      tiff[42] = tiff[102] = (byte) ((pixelHeight >> 8) & 0xff);
-      tiff[43] = tiff[103] = (byte) ((pixelHeight) & 0xff);
-
-      int count = pixelWidth*pixelHeight*3;
-      tiff[114] = (byte) ((count >> 24) & 0xff);
-      tiff[115] = (byte) ((count >> 16) & 0xff);
-      tiff[116] = (byte) ((count >> 8) & 0xff);
-      tiff[117] = (byte) ((count) & 0xff);
-
-      // spew the header to the disk
-      output.write(tiff);
-
-      for (int i = 0; i < pixels.length; i++) {
-        output.write((pixels[i] >> 16) & 0xff);
-        output.write((pixels[i] >> 8) & 0xff);
-        output.write(pixels[i] & 0xff);
-      }
-      output.flush();
+      TIFFCodec.write(output, pixels, pixelWidth, pixelHeight,
+                      format, compression);
       return true;
 
     } catch (IOException e) {
@@ -2917,6 +2590,32 @@ int testFunction(int dst, int src) {
   }
 
 
+  /**
+   * Read the whole input for the decoders. The size of a file is known
+   * up front, so it's read straight into a buffer of the right size,
+   * instead of growing an array as it goes like other streams need.
+   * (Files aren't mapped, because on Windows a mapped file stays locked
+   * until the buffer is garbage collected, and saving over it fails.)
+   */
+  static ByteBuffer readInput(InputStream input) throws IOException {
+    if (input instanceof FileInputStream) {
+      FileChannel channel = ((FileInputStream) input).getChannel();
+      long size = channel.size() - channel.position();
+      if (size <= Integer.MAX_VALUE) {
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer) != -1) { }
+        buffer.flip();
+        return buffer;
+      }
+    }
+    byte[] bytes = PApplet.loadBytes(input);
+    if (bytes == null) {
+      throw new IOException("could not read the file");
+    }
+    return ByteBuffer.wrap(bytes);
+  }
+
+
   /**
    * Targa image loader for RLE-compressed TGA files.
    * <p>
@@ -2924,195 +2623,39 @@ int testFunction(int dst, int src) {
    * For 0125, non-RLE encoded images are now supported, along with
    * images whose y-order is reversed (which is standard for TGA files).
    * <p>
-   * A version of this function is in MovieMaker.java. Any fixes here
-   * should be applied over in MovieMaker as well.
-   * <p>
-   * Known issue with RLE encoding and odd behavior in some apps:
+   * The decoder itself is in TGACodec, which also reads 15- and 16-bit
+   * files, and skips the image ID field. RLE images are flipped according
+   * to the origin bit in the header, so files written by saveTGA() with
+   * their origin at the top no longer come back upside down.
    * https://github.com/processing/processing/issues/2096
-   * Please help!
    */
   static public PImage loadTGA(InputStream input) throws IOException {  // ignore
-    byte[] header = new byte[18];
-    int offset = 0;
-    do {
-      int count = input.read(header, offset, header.length - offset);
-      if (count == -1) return null;
-      offset += count;
-    } while (offset < 18);
-
-    /*
-      header[2] image type code
-      2  (0x02) - Uncompressed, RGB images.
-      3  (0x03) - Uncompressed, black and white images.
-      10 (0x0A) - Run-length encoded RGB images.
-      11 (0x0B) - Compressed, black and white images. (grayscale?)
-
-      header[16] is the bit depth (8, 24, 32)
-
-      header[17] image descriptor (packed bits)
-      0x20 is 32 = origin upper-left
-      0x28 is 32 + 8 = origin upper-left + 32 bits
-
-        7  6  5  4  3  2  1  0
-      128 64 32 16  8  4  2  1
-    */
-
-    int format = 0;
-
-    if (((header[2] == 3) || (header[2] == 11)) &&  // B&W, plus RLE or not
-        (header[16] == 8) &&  // 8 bits
-        ((header[17] == 0x8) || (header[17] == 0x28))) {  // origin, 32 bit
-      format = ALPHA;
-
-    } else if (((header[2] == 2) || (header[2] == 10)) &&  // RGB, RLE or not
-               (header[16] == 24) &&  // 24 bits
-               ((header[17] == 0x20) || (header[17] == 0))) {  // origin
-      format = RGB;
-
-    } else if (((header[2] == 2) || (header[2] == 10)) &&
-               (header[16] == 32) &&
-               ((header[17] == 0x8) || (header[17] == 0x28))) {  // origin, 32
-      format = ARGB;
-    }
+    try {
+      return TGACodec.read(readInput(input));
 
-    if (format == 0) {
-      System.err.println("Unknown .tga file format");
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not read .tga file: " + e.getMessage());
       return null;
+
+    } finally {
+      input.close();
     }
+  }
 
-    int w = ((header[13] & 0xff) << 8) + (header[12] & 0xff);
-    int h = ((header[15] & 0xff) << 8) + (header[14] & 0xff);
-    PImage outgoing = new PImage(w, h, format);
-
-    // where "reversed" means upper-left corner (normal for most of
-    // the modernized world, but "reversed" for the tga spec)
-    //boolean reversed = (header[17] & 0x20) != 0;
-    // https://github.com/processing/processing/issues/1682
-    boolean reversed = (header[17] & 0x20) == 0;
-
-    if ((header[2] == 2) || (header[2] == 3)) {  // not RLE encoded
-      if (reversed) {
-        int index = (h-1) * w;
-        switch (format) {
-        case ALPHA:
-          for (int y = h-1; y >= 0; y--) {
-            for (int x = 0; x < w; x++) {
-              outgoing.pixels[index + x] = input.read();
-            }
-            index -= w;
-          }
-          break;
-        case RGB:
-          for (int y = h-1; y >= 0; y--) {
-            for (int x = 0; x < w; x++) {
-              outgoing.pixels[index + x] =
-                input.read() | (input.read() << 8) | (input.read() << 16) |
-                0xff000000;
-            }
-            index -= w;
-          }
-          break;
-        case ARGB:
-          for (int y = h-1; y >= 0; y--) {
-            for (int x = 0; x < w; x++) {
-              outgoing.pixels[index + x] =
-                input.read() | (input.read() << 8) | (input.read() << 16) |
-                (input.read() << 24);
-            }
-            index -= w;
-          }
-        }
-      } else {  // not reversed
-        int count = w * h;
-        switch (format) {
-        case ALPHA:
-          for (int i = 0; i < count; i++) {
-            outgoing.pixels[i] = input.read();
-          }
-          break;
-        case RGB:
-          for (int i = 0; i < count; i++) {
-            outgoing.pixels[i] =
-              input.read() | (input.read() << 8) | (input.read() << 16) |
-              0xff000000;
-          }
-          break;
-        case ARGB:
-          for (int i = 0; i < count; i++) {
-            outgoing.pixels[i] =
-              input.read() | (input.read() << 8) | (input.read() << 16) |
-              (input.read() << 24);
-          }
-          break;
-        }
-      }
 
-    } else {  // header[2] is 10 or 11
-      int index = 0;
-      int[] px = outgoing.pixels;
-
-      while (index < px.length) {
-        int num = input.read();
-        boolean isRLE = (num & 0x80) != 0;
-        if (isRLE) {
-          num -= 127;  // (num & 0x7F) + 1
-          int pixel = 0;
-          switch (format) {
-          case ALPHA:
-            pixel = input.read();
-            break;
-          case RGB:
-            pixel = 0xFF000000 |
-              input.read() | (input.read() << 8) | (input.read() << 16);
-            //(is.read() << 16) | (is.read() << 8) | is.read();
-            break;
-          case ARGB:
-            pixel = input.read() |
-              (input.read() << 8) | (input.read() << 16) | (input.read() << 24);
-            break;
-          }
-          for (int i = 0; i < num; i++) {
-            px[index++] = pixel;
-            if (index == px.length) break;
-          }
-        } else {  // write up to 127 bytes as uncompressed
-          num += 1;
-          switch (format) {
-          case ALPHA:
-            for (int i = 0; i < num; i++) {
-              px[index++] = input.read();
-            }
-            break;
-          case RGB:
-            for (int i = 0; i < num; i++) {
-              px[index++] = 0xFF000000 |
-                input.read() | (input.read() << 8) | (input.read() << 16);
-              //(is.read() << 16) | (is.read() << 8) | is.read();
-            }
-            break;
-          case ARGB:
-            for (int i = 0; i < num; i++) {
-              px[index++] = input.read() | //(is.read() << 24) |
-                (input.read() << 8) | (input.read() << 16) | (input.read() << 24);
-              //(is.read() << 16) | (is.read() << 8) | is.read();
-            }
-            break;
-          }
-        }
-      }
+  /**
+   * Writes the image as a PNG. Used by save() when there's no ImageIO to
+   * do it; RGB, ARGB, and ALPHA images keep their format in the file.
+   */
+  protected boolean savePNG(OutputStream output) {
+    try {
+      PNGEncoder.write(output, pixels, pixelWidth, pixelHeight, format, 6);
+      return true;
 
-      if (!reversed) {
-        int[] temp = new int[w];
-        for (int y = 0; y < h/2; y++) {
-          int z = (h-1) - y;
-          System.arraycopy(px, y*w, temp, 0, w);
-          System.arraycopy(px, z*w, px, y*w, w);
-          System.arraycopy(temp, 0, px, z*w, w);
-        }
-      }
+    } catch (IOException e) {
+      e.printStackTrace();
     }
-    input.close();
-    return outgoing;
+    return false;
   }
 
 
@@ -3135,138 +2678,14 @@ int testFunction(int dst, int src) {
    * <A HREF="http://www.wotsit.org/download.asp?f=tga">specification</A>
    */
   protected boolean saveTGA(OutputStream output) {
-    byte[] header = new byte[18];
-
-     if (format == ALPHA) {  // save ALPHA images as 8bit grayscale
-       header[2] = 0x0B;
-       header[16] = 0x08;
-       header[17] = 0x28;
-
-     } else if (format == RGB) {
-       header[2] = 0x0A;
-       header[16] = 24;
-       header[17] = 0x20;
-
-     } else if (format == ARGB) {
-       header[2] = 0x0A;
-       header[16] = 32;
-       header[17] = 0x28;
-
-     } else {
-       throw new RuntimeException("Image format not recognized inside save()");
-     }
-     // set image dimensions lo-hi byte order
-     header[12] = (byte) (pixelWidth & 0xff);
-     header[13] = (byte) (pixelWidth >> 8);
-     header[14] = (byte) (pixelHeight & 0xff);
-     header[15] = (byte) (pixelHeight >> 8);
-
-     try {
-       output.write(header);
-
-       int maxLen = pixelHeight * pixelWidth;
-       int index = 0;
-       int col; //, prevCol;
-       int[] currChunk = new int[128];
-
-       // 8bit image exporter is in separate loop
-       // to avoid excessive conditionals...
-       if (format == ALPHA) {
-         while (index < maxLen) {
-           boolean isRLE = false;
-           int rle = 1;
-           currChunk[0] = col = pixels[index] & 0xff;
-           while (index + rle < maxLen) {
-             if (col != (pixels[index + rle]&0xff) || rle == 128) {
-               isRLE = (rle > 1);
-               break;
-             }
-             rle++;
-           }
-           if (isRLE) {
-             output.write(0x80 | (rle - 1));
-             output.write(col);
-
-           } else {
-             rle = 1;
-             while (index + rle < maxLen) {
-               int cscan = pixels[index + rle] & 0xff;
-               if ((col != cscan && rle < 128) || rle < 3) {
-                 currChunk[rle] = col = cscan;
-               } else {
-                 if (col == cscan) rle -= 2;
-                 break;
-               }
-               rle++;
-             }
-             output.write(rle - 1);
-             for (int i = 0; i < rle; i++) output.write(currChunk[i]);
-           }
-           index += rle;
-         }
-       } else {  // export 24/32 bit TARGA
-         while (index < maxLen) {
-           boolean isRLE = false;
-           currChunk[0] = col = pixels[index];
-           int rle = 1;
-           // try to find repeating bytes (min. len = 2 pixels)
-           // maximum chunk size is 128 pixels
-           while (index + rle < maxLen) {
-             if (col != pixels[index + rle] || rle == 128) {
-               isRLE = (rle > 1); // set flag for RLE chunk
-               break;
-             }
-             rle++;
-           }
-           if (isRLE) {
-             output.write(128 | (rle - 1));
-             output.write(col & 0xff);
-             output.write(col >> 8 & 0xff);
-             output.write(col >> 16 & 0xff);
-             if (format == ARGB) output.write(col >>> 24 & 0xff);
-
-           } else {  // not RLE
-             rle = 1;
-             while (index + rle < maxLen) {
-               if ((col != pixels[index + rle] && rle < 128) || rle < 3) {
-                 currChunk[rle] = col = pixels[index + rle];
-               } else {
-                 // check if the exit condition was the start of
-                 // a repeating colour
-                 if (col == pixels[index + rle]) rle -= 2;
-                 break;
-               }
-               rle++;
-             }
-             // write uncompressed chunk
-             output.write(rle - 1);
-             if (format == ARGB) {
-               for (int i = 0; i < rle; i++) {
-                 col = currChunk[i];
-                 output.write(col & 0xff);
-                 output.write(col >> 8 & 0xff);
-                 output.write(col >> 16 & 0xff);
-                 output.write(col >>> 24 & 0xff);
-               }
-             } else {
-               for (int i = 0; i < rle; i++) {
-                 col = currChunk[i];
-                 output.write(col & 0xff);
-                 output.write(col >> 8 & 0xff);
-                 output.write(col >> 16 & 0xff);
-               }
-             }
-           }
-           index += rle;
-         }
-       }
-       output.flush();
-       return true;
+    try {
+      TGACodec.write(output, pixels, pixelWidth, pixelHeight, format);
+      return true;
 
-     } catch (IOException e) {
-       e.printStackTrace();
-       return false;
-     }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return false;
+    }
   }
 
 
@@ -3303,7 +2722,7 @@ int testFunction(int dst, int src) {
    * To get a list of the supported formats for writing, use: <BR>
    * <TT>println(javax.imageio.ImageIO.getReaderFormatNames())</TT>
    * <p>
-   * To use the original built-in image writers, use .tga or .tif as the
+   * To use the original built-in image writers, use .tga, .png, or .tif as the
    * extension, or don't include an extension. When no extension is used,
    * the extension .tif will be added to the file name.
    * <p>
@@ -3350,6 +2769,10 @@ int testFunction(int dst, int src) {
          os = new BufferedOutputStream(new FileOutputStream(filename), 32768);
          success = saveTGA(os); //, pixels, width, height, format);
 
+       } else if (filename.toLowerCase().endsWith(".png")) {
+         os = new BufferedOutputStream(new FileOutputStream(filename), 32768);
+         success = savePNG(os);
+
        } else {
          if (!filename.toLowerCase().endsWith(".tif") &&
              !filename.toLowerCase().endsWith(".tiff")) {
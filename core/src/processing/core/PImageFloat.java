@@ -0,0 +1,914 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+
+/**
+ * An image that keeps each channel as a float, for work that loses too
+ * much at 8 bits: averaging hundreds of frames, long exposures, feedback
+ * that fades out slowly, or files with 16 or 32 bits per channel.
+ * <pre>
+ * PImageFloat exposure;
+ *
+ * void setup() {
+ *   size(1280, 720);
+ *   exposure = new PImageFloat(width, height);
+ * }
+ *
+ * void draw() {
+ *   drawScene();
+ *   exposure.accumulate(get(), 0.01);  // the last 100 or so frames
+ *   exposure.accumulate(exposure, -0.01);
+ *   image(exposure, 0, 0);
+ * }
+ * </pre>
+ * values[] holds red, green, blue, and alpha for every pixel, with 1.0
+ * for full intensity and alpha not premultiplied. Colors aren't clamped,
+ * so they can go past 1.0 and come back down without losing anything.
+ * pixels[] is an 8-bit copy, clamped, which is what image() draws and
+ * what save() writes for formats other than .pfm and .tif.
+ * <p>
+ * get(), set(), copy(), blend(), filter(), mask(), and resize() all work
+ * on the floats. After changing values[] directly, call updatePixels() so
+ * that pixels[] catches up. pixels[] can be changed directly too, the same
+ * way as for other images: updatePixels() copies the pixels that changed
+ * back into values[], rounded to 8 bits, and so does any of the methods
+ * above before it uses the floats. Where both were changed since the last
+ * updatePixels(), pixels[] wins.
+ * <p>
+ * save() writes .pfm files with 32-bit floats (without alpha), and .tif
+ * files with 16 bits per channel. loadImage() reads .pfm files as a
+ * PImageFloat, and load() reads 16-bit TIFFs without rounding them.
+ *
+ * @nowebref
+ */
+public class PImageFloat extends PImage {
+  /** Red, green, blue, and alpha for each pixel, 1.0 for full. */
+  public float[] values;
+
+  /**
+   * pixels[] as it was last made from values[], so that updatePixels()
+   * can tell which pixels the sketch changed directly.
+   */
+  private int[] synced;
+
+
+  public PImageFloat(int width, int height) {
+    super(width, height, ARGB);
+    values = new float[pixelWidth * pixelHeight * 4];
+    // all zero, same as the transparent black in values[]
+    synced = new int[pixelWidth * pixelHeight];
+  }
+
+
+  /**
+   * A copy of another image, with each channel divided by 255 (unless
+   * it's already a PImageFloat).
+   */
+  public PImageFloat(PImage source) {
+    this(source.pixelWidth, source.pixelHeight);
+    parent = source.parent;
+    source.loadPixels();
+    set(0, 0, source);
+  }
+
+
+  /**
+   * Load a .pfm file, a TIFF with its 16 bits kept, or anything else
+   * that loadImage() can read, converted. Prints an error and returns
+   * null if the file can't be read.
+   */
+  static public PImageFloat load(PApplet parent, String filename) {
+    String lower = filename.toLowerCase();
+    PImageFloat image = null;
+    if (lower.endsWith(".pfm") || lower.endsWith(".tif") || lower.endsWith(".tiff")) {
+      InputStream input = parent.createInputRaw(filename);
+      if (input == null) {
+        System.err.println("Could not find " + filename);
+        return null;
+      }
+      try {
+        image = lower.endsWith(".pfm") ?
+          PFMCodec.read(readInput(input)) : TIFFCodec.readFloat(readInput(input));
+
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Could not read " + filename + ": " + e.getMessage());
+
+      } finally {
+        try {
+          input.close();
+        } catch (IOException e) { }
+      }
+    } else {
+      PImage source = parent.loadImage(filename);
+      if (source != null) {
+        image = new PImageFloat(source);
+      }
+    }
+    if (image != null) {
+      image.parent = parent;
+    }
+    return image;
+  }
+
+
+  /**
+   * Read a Portable Float Map, for loadImage(). Prints an error and
+   * returns null if it can't be read.
+   */
+  static public PImageFloat loadPFM(InputStream input) {  // ignore
+    try {
+      return PFMCodec.read(readInput(input));
+
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Could not read PFM file: " + e.getMessage());
+      return null;
+
+    } finally {
+      try {
+        input.close();
+      } catch (IOException e) { }
+    }
+  }
+
+
+  /**
+   * An ordinary ARGB copy, with the values clamped to 0 to 1.
+   */
+  public PImage toImage() {
+    readPixels();
+    PImage image = new PImage(pixelWidth, pixelHeight, ARGB);
+    image.parent = parent;
+    float[] values = this.values;
+    int[] pixels = image.pixels;
+    PixelBands.run(pixels.length, 1, (start, stop) -> {
+      for (int i = start; i < stop; i++) {
+        pixels[i] = color(values, i * 4);
+      }
+    });
+    return image;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // PIXELS
+
+
+  /**
+   * pixels[] is always kept up to date, this only has to make it again
+   * if a renderer threw it away.
+   */
+  @Override
+  public void loadPixels() {  // ignore
+    if (pixels == null || pixels.length != pixelWidth * pixelHeight) {
+      pixels = new int[pixelWidth * pixelHeight];
+      synced = new int[pixels.length];
+      updatePixels();
+    }
+    setLoaded();
+  }
+
+
+  /**
+   * Bring values[] and pixels[] together in this region, and mark it to
+   * be drawn again. Pixels that were changed in pixels[] are copied into
+   * values[], and the others are made again from values[].
+   */
+  @Override
+  public void updatePixels(int x, int y, int w, int h) {  // ignore
+    syncPixels(x, y, w, h, true);
+    super.updatePixels(x, y, w, h);
+  }
+
+
+  /**
+   * Copy whatever the sketch changed in pixels[] into values[], before
+   * a method works on the floats.
+   */
+  private void readPixels() {
+    syncPixels(0, 0, pixelWidth, pixelHeight, false);
+  }
+
+
+  private void syncPixels(int x, int y, int w, int h, boolean write) {
+    int x1 = Math.max(0, x);
+    int y1 = Math.max(0, y);
+    int x2 = Math.min(pixelWidth, x + w);
+    int y2 = Math.min(pixelHeight, y + h);
+    if (values != null && pixels != null && x1 < x2 && y1 < y2) {
+      if (synced == null || synced.length != pixels.length) {
+        // pixels[] was replaced by one of another size, so none of it
+        // can be told apart from values[], trust the floats
+        synced = new int[pixels.length];
+        Arrays.fill(synced, ~0);
+      }
+      float[] values = this.values;
+      int[] pixels = this.pixels;
+      int[] synced = this.synced;
+      PixelBands.run(y2 - y1, x2 - x1, (start, stop) -> {
+        for (int row = y1 + start; row < y1 + stop; row++) {
+          int index = row * pixelWidth + x1;
+          for (int col = x1; col < x2; col++) {
+            int c = pixels[index];
+            if (c != synced[index]) {
+              unpack(c, ARGB, values, index * 4);
+              synced[index] = c;
+            } else if (write) {
+              pixels[index] = synced[index] = color(values, index * 4);
+            }
+            index++;
+          }
+        }
+      });
+    }
+  }
+
+
+  /** Make one pixel again from values[], whatever pixels[] had. */
+  private void writePixel(int x, int y) {
+    int index = y*pixelWidth + x;
+    if (pixels != null && synced != null && index < pixels.length) {
+      pixels[index] = synced[index] = color(values, index * 4);
+    }
+    super.updatePixels(x, y, 1, 1);
+  }
+
+
+  @Override
+  public int get(int x, int y) {
+    if ((x < 0) || (y < 0) || (x >= pixelWidth) || (y >= pixelHeight)) return 0;
+    syncPixels(x, y, 1, 1, false);
+    return color(values, (y*pixelWidth + x) * 4);
+  }
+
+
+  /**
+   * The red, green, blue, and alpha of one pixel, without rounding them
+   * to 8 bits. Transparent black if it's outside the image.
+   *
+   * @param rgba array for the four values, or null to make a new one
+   */
+  public float[] getFloat(int x, int y, float[] rgba) {
+    if (rgba == null) {
+      rgba = new float[4];
+    }
+    if ((x < 0) || (y < 0) || (x >= pixelWidth) || (y >= pixelHeight)) {
+      rgba[0] = rgba[1] = rgba[2] = rgba[3] = 0;
+    } else {
+      syncPixels(x, y, 1, 1, false);
+      System.arraycopy(values, (y*pixelWidth + x) * 4, rgba, 0, 4);
+    }
+    return rgba;
+  }
+
+
+  /**
+   * A PImageFloat with a copy of part of this one, so that nothing is
+   * lost. Use toImage() for an ordinary PImage.
+   */
+  @Override
+  public PImage get(int x, int y, int w, int h) {
+    PImageFloat target = new PImageFloat(Math.max(0, w), Math.max(0, h));
+    target.parent = parent;
+    target.set(-x, -y, this);
+    return target;
+  }
+
+
+  @Override
+  public void set(int x, int y, int c) {
+    if ((x < 0) || (y < 0) || (x >= pixelWidth) || (y >= pixelHeight)) return;
+    unpack(c, ARGB, values, (y*pixelWidth + x) * 4);
+    writePixel(x, y);
+  }
+
+
+  /**
+   * Set one pixel without going through 8 bits.
+   */
+  public void setFloat(int x, int y, float r, float g, float b, float a) {
+    if ((x < 0) || (y < 0) || (x >= pixelWidth) || (y >= pixelHeight)) return;
+    int v = (y*pixelWidth + x) * 4;
+    values[v] = r;
+    values[v+1] = g;
+    values[v+2] = b;
+    values[v+3] = a;
+    writePixel(x, y);
+  }
+
+
+  @Override
+  protected void setImpl(PImage sourceImage,
+                         int sourceX, int sourceY,
+                         int sourceWidth, int sourceHeight,
+                         int targetX, int targetY) {
+    readPixels();
+    if (sourceImage instanceof PImageFloat) {
+      ((PImageFloat) sourceImage).readPixels();
+    }
+    for (int row = 0; row < sourceHeight; row++) {
+      int from = (sourceY + row) * sourceImage.pixelWidth + sourceX;
+      int to = ((targetY + row) * pixelWidth + targetX) * 4;
+      if (sourceImage instanceof PImageFloat) {
+        System.arraycopy(((PImageFloat) sourceImage).values, from * 4,
+                         values, to, sourceWidth * 4);
+      } else {
+        for (int i = 0; i < sourceWidth; i++) {
+          unpack(sourceImage.pixels[from + i], sourceImage.format, values, to);
+          to += 4;
+        }
+      }
+    }
+    updatePixels(targetX, targetY, sourceWidth, sourceHeight);
+  }
+
+
+  /**
+   * Add each value of another image of the same size, times amount, to
+   * this one. This is how to sum frames for a long exposure, or keep a
+   * running average: accumulate a new frame at 0.05, and this image
+   * itself at -0.05. A negative amount subtracts; nothing is clamped.
+   */
+  public void accumulate(PImage source, float amount) {
+    if (source.pixelWidth != pixelWidth || source.pixelHeight != pixelHeight) {
+      throw new IllegalArgumentException("accumulate() needs an image " +
+                                         "that's the same size");
+    }
+    readPixels();
+    float[] values = this.values;
+    if (source instanceof PImageFloat) {
+      ((PImageFloat) source).readPixels();
+    } else {
+      source.loadPixels();
+    }
+    float[] from = (source instanceof PImageFloat) ?
+      ((PImageFloat) source).values : null;
+    int[] pixels = source.pixels;
+    int format = source.format;
+    PixelBands.run(pixelWidth * pixelHeight, 4, (start, stop) -> {
+      float[] rgba = new float[4];
+      for (int i = start; i < stop; i++) {
+        int v = i * 4;
+        if (from != null) {
+          // read all four first, since from may be values itself
+          rgba[0] = from[v];
+          rgba[1] = from[v+1];
+          rgba[2] = from[v+2];
+          rgba[3] = from[v+3];
+        } else {
+          unpack(pixels[i], format, rgba, 0);
+        }
+        values[v] += amount * rgba[0];
+        values[v+1] += amount * rgba[1];
+        values[v+2] += amount * rgba[2];
+        values[v+3] += amount * rgba[3];
+      }
+    });
+    updatePixels();
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // ALPHA CHANNEL
+
+
+  @Override
+  public void mask(int[] maskArray) {  // ignore
+    if (maskArray.length != pixelWidth * pixelHeight) {
+      throw new IllegalArgumentException("mask() can only be used with an image that's the same size.");
+    }
+    readPixels();
+    for (int i = 0; i < maskArray.length; i++) {
+      values[i*4 + 3] = (maskArray[i] & 0xff) / 255f;
+    }
+    updatePixels();
+  }
+
+
+  /**
+   * Like mask() for any other image, but takes the alpha from the blue
+   * values when the mask is a PImageFloat too.
+   */
+  @Override
+  public void mask(PImage img) {
+    if (!(img instanceof PImageFloat)) {
+      super.mask(img);
+      return;
+    }
+    float[] from = ((PImageFloat) img).values;
+    if (from.length != values.length) {
+      throw new IllegalArgumentException("mask() can only be used with an image that's the same size.");
+    }
+    readPixels();
+    ((PImageFloat) img).readPixels();
+    for (int v = 0; v < values.length; v += 4) {
+      values[v + 3] = from[v + 2];
+    }
+    updatePixels();
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // IMAGE FILTERS
+
+
+  @Override
+  public void filter(int kind) {
+    readPixels();
+    float[] values = this.values;
+    switch (kind) {
+      case BLUR:
+        filter(BLUR, 1);
+        return;
+
+      case GRAY:
+        PixelBands.run(pixelWidth * pixelHeight, 1, (start, stop) -> {
+          for (int v = start * 4; v < stop * 4; v += 4) {
+            float lum = luminance(values, v);
+            values[v] = values[v+1] = values[v+2] = lum;
+          }
+        });
+        break;
+
+      case INVERT:
+        PixelBands.run(pixelWidth * pixelHeight, 1, (start, stop) -> {
+          for (int v = start * 4; v < stop * 4; v += 4) {
+            values[v] = 1 - values[v];
+            values[v+1] = 1 - values[v+1];
+            values[v+2] = 1 - values[v+2];
+          }
+        });
+        break;
+
+      case POSTERIZE:
+        throw new RuntimeException("Use filter(POSTERIZE, int levels) " +
+        "instead of filter(POSTERIZE)");
+
+      case OPAQUE:
+        for (int v = 3; v < values.length; v += 4) {
+          values[v] = 1;
+        }
+        break;
+
+      case THRESHOLD:
+        filter(THRESHOLD, 0.5f);
+        return;
+
+      case ERODE:
+        dilate(true);
+        break;
+
+      case DILATE:
+        dilate(false);
+        break;
+    }
+    updatePixels();
+  }
+
+
+  /**
+   * The same filters as for other images, but worked out on the floats.
+   * The blur uses the same kernel, and ERODE and DILATE pick neighbors
+   * by the same measure of luminance.
+   */
+  @Override
+  public void filter(int kind, float param) {
+    readPixels();
+    float[] values = this.values;
+    switch (kind) {
+      case BLUR:
+        blur(param);
+        break;
+
+      case GRAY:
+        throw new RuntimeException("Use filter(GRAY) instead of " +
+                                   "filter(GRAY, param)");
+
+      case INVERT:
+        throw new RuntimeException("Use filter(INVERT) instead of " +
+                                   "filter(INVERT, param)");
+
+      case OPAQUE:
+        throw new RuntimeException("Use filter(OPAQUE) instead of " +
+                                   "filter(OPAQUE, param)");
+
+      case POSTERIZE:
+        int levels = (int) param;
+        if ((levels < 2) || (levels > 255)) {
+          throw new RuntimeException("Levels must be between 2 and 255 for " +
+                                     "filter(POSTERIZE, levels)");
+        }
+        float step = 1f / (levels - 1);
+        PixelBands.run(pixelWidth * pixelHeight, 4, (start, stop) -> {
+          for (int v = start * 4; v < stop * 4; v += 4) {
+            for (int k = v; k < v + 3; k++) {
+              float level = Math.min((float) Math.floor(values[k] * levels), levels - 1);
+              values[k] = Math.max(0, level) * step;
+            }
+          }
+        });
+        break;
+
+      case THRESHOLD:  // greater than or equal to the threshold
+        // rounded down to a level out of 255, as for other images, so that
+        // the same pixels come out white
+        float thresh = (int) (param * 255) / 255f;
+        PixelBands.run(pixelWidth * pixelHeight, 1, (start, stop) -> {
+          for (int v = start * 4; v < stop * 4; v += 4) {
+            float max = Math.max(values[v], Math.max(values[v+1], values[v+2]));
+            values[v] = values[v+1] = values[v+2] = (max < thresh) ? 0 : 1;
+          }
+        });
+        break;
+
+      case ERODE:
+        throw new RuntimeException("Use filter(ERODE) instead of " +
+                                   "filter(ERODE, param)");
+      case DILATE:
+        throw new RuntimeException("Use filter(DILATE) instead of " +
+                                   "filter(DILATE, param)");
+    }
+    updatePixels();
+  }
+
+
+  private void blur(float r) {
+    // the same radius as buildBlurKernel()
+    int r35 = (int) (r * 3.5f);
+    int radius = (r35 < 1) ? 1 : ((r35 < 248) ? r35 : 248);
+    int[] kernel = blurKernel(radius);
+    int w = pixelWidth;
+    int h = pixelHeight;
+    float[] values = this.values;
+    float[] temp = new float[values.length];
+
+    // across the rows into temp, then down the columns back into values
+    PixelBands.run(h, w * kernel.length * 4, (start, stop) -> {
+      for (int y = start; y < stop; y++) {
+        for (int x = 0; x < w; x++) {
+          blurPixel(values, temp, (y*w + x) * 4, x - radius, w, 4, kernel, radius);
+        }
+      }
+    });
+    PixelBands.run(h, w * kernel.length * 4, (start, stop) -> {
+      for (int y = start; y < stop; y++) {
+        for (int x = 0; x < w; x++) {
+          blurPixel(temp, values, (y*w + x) * 4, y - radius, h, w * 4, kernel, radius);
+        }
+      }
+    });
+  }
+
+
+  /**
+   * Weighted sum of the pixels along one line, for the pixel at v. The
+   * kernel starts at position first (which may be off the edge) and the
+   * pixels are step floats apart.
+   */
+  static private void blurPixel(float[] from, float[] to, int v, int first,
+                                int length, int step, int[] kernel, int radius) {
+    float r = 0, g = 0, b = 0, a = 0;
+    int sum = 0;
+    int i = (first < 0) ? -first : 0;
+    int last = Math.min(kernel.length, length - first);
+    int read = v + (i - radius) * step;
+    for (; i < last; i++) {
+      int k = kernel[i];
+      r += k * from[read];
+      g += k * from[read + 1];
+      b += k * from[read + 2];
+      a += k * from[read + 3];
+      sum += k;
+      read += step;
+    }
+    to[v] = r / sum;
+    to[v+1] = g / sum;
+    to[v+2] = b / sum;
+    to[v+3] = a / sum;
+  }
+
+
+  private void dilate(boolean erode) {
+    int w = pixelWidth;
+    int h = pixelHeight;
+    float[] values = this.values;
+    float[] outgoing = new float[values.length];
+    // eroding picks the darkest neighbor instead of the lightest
+    float sign = erode ? -1 : 1;
+
+    PixelBands.run(h, w * 5, (start, stop) -> {
+      int[] neighbors = new int[4];
+      for (int y = start; y < stop; y++) {
+        for (int x = 0; x < w; x++) {
+          int index = y*w + x;
+          int result = index;
+          float best = sign * luminance(values, index * 4);
+          neighbors[0] = (x > 0) ? index - 1 : index;
+          neighbors[1] = (x < w - 1) ? index + 1 : index;
+          neighbors[2] = (y > 0) ? index - w : index;
+          neighbors[3] = (y < h - 1) ? index + w : index;
+          for (int n : neighbors) {
+            float lum = sign * luminance(values, n * 4);
+            if (lum > best) {
+              result = n;
+              best = lum;
+            }
+          }
+          System.arraycopy(values, result * 4, outgoing, index * 4, 4);
+        }
+      }
+    });
+    System.arraycopy(outgoing, 0, values, 0, values.length);
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // RESIZE, BLEND
+
+
+  @Override
+  public void resize(int w, int h, int filter) {  // ignore
+    if (w <= 0 && h <= 0) {
+      throw new IllegalArgumentException("width or height must be > 0 for resize");
+    }
+    if (w == 0) {  // Use height to determine relative size
+      w = Math.max(1, (int) (width * ((float) h / height)));
+    } else if (h == 0) {  // Use the width to determine relative size
+      h = Math.max(1, (int) (height * ((float) w / width)));
+    }
+    readPixels();
+    values = Resampler.resize(values, pixelWidth, pixelHeight, w, h, filter);
+    width = pixelWidth = w;
+    height = pixelHeight = h;
+    pixels = new int[w * h];
+    synced = new int[w * h];
+    updatePixels();
+  }
+
+
+  /**
+   * The same modes as blend() for other images, worked out on floats
+   * and without clamping, so that ADD can go past 1.0. The source can
+   * be any kind of image. When the sizes differ, the source is sampled
+   * bilinearly.
+   */
+  @Override
+  public void blend(PImage src,
+                    int sx, int sy, int sw, int sh,
+                    int dx, int dy, int dw, int dh, int mode) {
+    if (sw <= 0 || sh <= 0 || dw <= 0 || dh <= 0) {
+      return;
+    }
+    readPixels();
+    if (src == this) {
+      // work from a copy, in case the two areas overlap
+      src = get(sx, sy, sw, sh);
+      sx = 0;
+      sy = 0;
+    } else if (src instanceof PImageFloat) {
+      ((PImageFloat) src).readPixels();
+    } else {
+      src.loadPixels();
+    }
+    PImage source = src;
+    float[] from = (src instanceof PImageFloat) ? ((PImageFloat) src).values : null;
+    int srcX = sx, srcY = sy;
+    int x1 = Math.max(0, dx), x2 = Math.min(pixelWidth, dx + dw);
+    int y1 = Math.max(0, dy), y2 = Math.min(pixelHeight, dy + dh);
+    if (x1 >= x2 || y1 >= y2) {
+      return;
+    }
+    boolean scaled = (sw != dw || sh != dh);
+    float scaleX = (float) sw / dw;
+    float scaleY = (float) sh / dh;
+    // the part of the source that can be read
+    int left = Math.max(0, sx), right = Math.min(src.pixelWidth, sx + sw) - 1;
+    int top = Math.max(0, sy), bottom = Math.min(src.pixelHeight, sy + sh) - 1;
+    if (left > right || top > bottom) {
+      return;
+    }
+    float[] values = this.values;
+
+    PixelBands.run(y2 - y1, (x2 - x1) * (scaled ? 4 : 1), (start, stop) -> {
+      float[] s = new float[4];
+      float[] corner = new float[4];
+      for (int y = y1 + start; y < y1 + stop; y++) {
+        for (int x = x1; x < x2; x++) {
+          if (scaled) {
+            float u = srcX + (x - dx + 0.5f) * scaleX - 0.5f;
+            float v = srcY + (y - dy + 0.5f) * scaleY - 0.5f;
+            bilinear(source, from, u, v, left, top, right, bottom, s, corner);
+          } else {
+            int u = srcX + x - dx;
+            int v = srcY + y - dy;
+            if (u < left || u > right || v < top || v > bottom) {
+              continue;
+            }
+            fetch(source, from, v * source.pixelWidth + u, s);
+          }
+          mix(values, (y * pixelWidth + x) * 4, s, mode);
+        }
+      }
+    });
+    updatePixels(x1, y1, x2 - x1, y2 - y1);
+  }
+
+
+  static private void fetch(PImage source, float[] from, int index, float[] out) {
+    if (from != null) {
+      System.arraycopy(from, index * 4, out, 0, 4);
+    } else {
+      unpack(source.pixels[index], source.format, out, 0);
+    }
+  }
+
+
+  static private void bilinear(PImage source, float[] from, float u, float v,
+                               int left, int top, int right, int bottom,
+                               float[] out, float[] corner) {
+    u = Math.min(Math.max(u, left), right);
+    v = Math.min(Math.max(v, top), bottom);
+    int u0 = (int) u, v0 = (int) v;
+    int u1 = Math.min(u0 + 1, right), v1 = Math.min(v0 + 1, bottom);
+    float fu = u - u0, fv = v - v0;
+    out[0] = out[1] = out[2] = out[3] = 0;
+    int w = source.pixelWidth;
+    accumulate(source, from, v0 * w + u0, (1 - fu) * (1 - fv), out, corner);
+    accumulate(source, from, v0 * w + u1, fu * (1 - fv), out, corner);
+    accumulate(source, from, v1 * w + u0, (1 - fu) * fv, out, corner);
+    accumulate(source, from, v1 * w + u1, fu * fv, out, corner);
+  }
+
+
+  static private void accumulate(PImage source, float[] from, int index,
+                                 float weight, float[] out, float[] corner) {
+    if (weight != 0) {
+      fetch(source, from, index, corner);
+      for (int k = 0; k < 4; k++) {
+        out[k] += weight * corner[k];
+      }
+    }
+  }
+
+
+  /**
+   * Blend one source pixel into values[v], with its alpha as the
+   * amount, the same way blendColor() does for ints.
+   */
+  static private void mix(float[] values, int v, float[] s, int mode) {
+    if (mode == REPLACE) {
+      System.arraycopy(s, 0, values, v, 4);
+      return;
+    }
+    float sa = s[3];
+    if (mode == SUBTRACT) {
+      // all of the source times its alpha comes off, down to black,
+      // rather than fading toward max(0, d - s)
+      for (int k = 0; k < 3; k++) {
+        values[v + k] = Math.max(0, values[v + k] - s[k] * sa);
+      }
+    } else {
+      for (int k = 0; k < 3; k++) {
+        float d = values[v + k];
+        float c = blend(d, s[k], mode);
+        values[v + k] = d + (c - d) * sa;
+      }
+    }
+    values[v + 3] = Math.min(values[v + 3] + sa, 1);
+  }
+
+
+  static private float blend(float d, float s, int mode) {
+    switch (mode) {
+      case BLEND:      return s;
+      case ADD:        return d + s;
+      case LIGHTEST:   return Math.max(d, s);
+      case DARKEST:    return Math.min(d, s);
+      case DIFFERENCE: return Math.abs(d - s);
+      case EXCLUSION:  return d + s - 2*d*s;
+      case MULTIPLY:   return d * s;
+      case SCREEN:     return d + s - d*s;
+      case OVERLAY:    return (d < 0.5f) ? 2*d*s : 1 - 2*(1-d)*(1-s);
+      case HARD_LIGHT: return (s < 0.5f) ? 2*d*s : 1 - 2*(1-d)*(1-s);
+      case SOFT_LIGHT: return (1 - 2*s)*d*d + 2*s*d;
+      case DODGE:      return d / Math.max(1 - s, 1 / 256f);
+      case BURN:       return Math.max(0, 1 - (1 - d) / Math.max(s, 1 / 256f));
+    }
+    throw new IllegalArgumentException("Unknown blend mode " + mode);
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // FILE I/O
+
+
+  /**
+   * .pfm files are written with 32-bit floats, and .tif files with 16 bits
+   * per channel (and alpha if any of the image isn't opaque). Others are
+   * saved from the 8-bit pixels[].
+   */
+  @Override
+  public boolean save(String filename) {  // ignore
+    String lower = filename.toLowerCase();
+    boolean pfm = lower.endsWith(".pfm");
+    if (!pfm && !lower.endsWith(".tif") && !lower.endsWith(".tiff")) {
+      return super.save(filename);
+    }
+    File file = new File((parent != null) ? parent.savePath(filename) : filename);
+    if (!file.isAbsolute()) {
+      return super.save(filename);  // which explains what's wrong
+    }
+    PApplet.createPath(file);
+    readPixels();
+
+    try (OutputStream output =
+         new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+      if (pfm) {
+        PFMCodec.write(output, values, pixelWidth, pixelHeight);
+      } else {
+        boolean alpha = false;
+        for (int v = 3; v < values.length && !alpha; v += 4) {
+          alpha = values[v] < 1;
+        }
+        TIFFCodec.write(output, values, pixelWidth, pixelHeight,
+                        alpha, TIFFCodec.NONE);
+      }
+      return true;
+
+    } catch (IOException e) {
+      System.err.println("Error while saving image.");
+      e.printStackTrace();
+      return false;
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+  // CONVERSION
+
+
+  /** values[v] through values[v+3] as an 8-bit ARGB color. */
+  static int color(float[] values, int v) {
+    return channel(values[v+3]) << 24 | channel(values[v]) << 16 |
+      channel(values[v+1]) << 8 | channel(values[v+2]);
+  }
+
+
+  static private int channel(float value) {
+    // NaN ends up as 0, like anything below zero
+    return (value >= 1) ? 255 : ((value > 0) ? (int) (value * 255 + 0.5f) : 0);
+  }
+
+
+  /** An 8-bit pixel in one of the PImage formats, as four floats. */
+  static void unpack(int c, int format, float[] values, int v) {
+    if (format == ALPHA) {
+      values[v] = values[v+1] = values[v+2] = 1;
+      values[v+3] = (c & 0xff) / 255f;
+    } else {
+      values[v] = ((c >> 16) & 0xff) / 255f;
+      values[v+1] = ((c >> 8) & 0xff) / 255f;
+      values[v+2] = (c & 0xff) / 255f;
+      values[v+3] = (format == RGB) ? 1 : (c >>> 24) / 255f;
+    }
+  }
+
+
+  static private float luminance(float[] values, int v) {
+    // same weights as filter(GRAY) on other images
+    return 0.30f * values[v] + 0.59f * values[v+1] + 0.11f * values[v+2];
+  }
+}
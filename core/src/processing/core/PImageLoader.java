@@ -0,0 +1,486 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Loads images on a set of background threads, and optionally keeps the
+ * decoded images in memory so that loading the same file again doesn't
+ * read and decode it a second time. This is what's behind requestImage(),
+ * get it with imageLoader() to change its settings or see how it's doing.
+ * <p>
+ * Requests with a higher priority are started first, and requests that
+ * haven't started yet can be cancelled, so a sketch that pages through a
+ * gallery can drop the images for pages that have already gone by:
+ * <pre>
+ * PImageLoader loader = imageLoader();
+ * loader.cacheSize(256 * 1024 * 1024);
+ * ...
+ * loader.cancelAll();  // new page, forget the old requests
+ * for (int i = 0; i &lt; 12; i++) {
+ *   thumbs[i] = loader.request(files[page*12 + i], null, 12 - i);
+ * }
+ * </pre>
+ * The cache is off (zero bytes) unless cacheSize() is set, and once it's
+ * on, loadImage() goes through it as well. Cached images are shared by
+ * everyone that loads the same file, so use copy() before changing the
+ * pixels of one. Memory is counted as four bytes per pixel, and the least
+ * recently used images are dropped first.
+ *
+ * @nowebref
+ */
+public class PImageLoader {
+  protected PApplet parent;
+
+  private final ThreadPoolExecutor executor;
+  private final AtomicInteger threadCount = new AtomicInteger();
+  private long sequence;
+
+  // guards everything below
+  private final Object lock = new Object();
+
+  private long cacheLimit;
+  private long cacheBytes;
+  private final LinkedHashMap<String, PImage> cache =
+    new LinkedHashMap<>(16, 0.75f, true);  // access order, for LRU
+  private final Map<PImage, Request> pending = new HashMap<>();
+
+  private long hits;
+  private long misses;
+  private long loads;
+  private long failures;
+  private long cancels;
+  private long evictions;
+  private long loadNanos;
+  private long latencyNanos;
+  private long latencyCount;
+
+
+  /** Four threads and no cache, the same as requestImage() has always done. */
+  public PImageLoader(PApplet parent) {
+    this(parent, 4, 0);
+  }
+
+
+  /**
+   * @param threads number of images to load at the same time
+   * @param cacheBytes memory to use for decoded images, or 0 for no cache
+   */
+  public PImageLoader(PApplet parent, int threads, long cacheBytes) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("PImageLoader needs at least one thread");
+    }
+    this.parent = parent;
+    this.cacheLimit = Math.max(0, cacheBytes);
+    executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                                      new PriorityBlockingQueue<>(), r -> {
+      Thread thread = new Thread(r, PApplet.REQUEST_IMAGE_THREAD_PREFIX +
+                                 "-" + threadCount.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Set how much memory the cache can use, in bytes. Images are dropped
+   * right away if it's smaller than what's already cached, and setting
+   * it to 0 turns the cache off.
+   */
+  public void cacheSize(long bytes) {
+    synchronized (lock) {
+      cacheLimit = Math.max(0, bytes);
+      trim();
+    }
+  }
+
+
+  /** True when cacheSize() has been set, and loadImage() uses the cache. */
+  boolean caching() {
+    synchronized (lock) {
+      return cacheLimit > 0;
+    }
+  }
+
+
+  /** Set the number of images that are loaded at the same time. */
+  public void threads(int count) {
+    if (count < 1) {
+      throw new IllegalArgumentException("PImageLoader needs at least one thread");
+    }
+    // raise the max first, since core can't be larger than max
+    if (count > executor.getMaximumPoolSize()) {
+      executor.setMaximumPoolSize(count);
+      executor.setCorePoolSize(count);
+    } else {
+      executor.setCorePoolSize(count);
+      executor.setMaximumPoolSize(count);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Load an image on the calling thread, or get it from the cache.
+   * Returns null if the image can't be loaded, same as loadImage().
+   */
+  public PImage load(String filename, String extension) {
+    String key = key(filename, extension);
+    synchronized (lock) {
+      PImage image = cache.get(key);
+      if (image != null) {
+        hits++;
+        return image;
+      }
+      misses++;
+    }
+    return decodeAndCache(key, filename, extension);
+  }
+
+
+  public PImage request(String filename, String extension) {
+    return request(filename, extension, 0);
+  }
+
+
+  /**
+   * Start loading an image in the background. Like requestImage(), this
+   * returns an image right away, with a width and height of 0 until it
+   * has loaded, or -1 if it couldn't be loaded. If the image is already
+   * in the cache, that image is returned instead, ready to use.
+   *
+   * @param priority requests with higher numbers are started first
+   */
+  public PImage request(String filename, String extension, int priority) {
+    String key = key(filename, extension);
+    Request request;
+    synchronized (lock) {
+      PImage image = cache.get(key);
+      if (image != null) {
+        hits++;
+        return image;
+      }
+      misses++;
+      PImage vessel = parent.createImage(0, 0, PConstants.ARGB);
+      request = new Request(key, filename, extension, vessel, priority, sequence++);
+      pending.put(vessel, request);
+    }
+    executor.execute(request);
+    return request.vessel;
+  }
+
+
+  /**
+   * Cancel a request that hasn't started loading yet. The image stays
+   * at 0 by 0. Returns false if it's already loading or finished.
+   */
+  public boolean cancel(PImage vessel) {
+    Request request;
+    synchronized (lock) {
+      request = pending.get(vessel);
+      if (request == null || request.started) {
+        return false;
+      }
+      pending.remove(vessel);
+      cancels++;
+    }
+    executor.remove(request);
+    return true;
+  }
+
+
+  /**
+   * Cancel every request that hasn't started yet. Images that are
+   * already loading will still finish.
+   */
+  public void cancelAll() {
+    List<Request> removed = new ArrayList<>();
+    synchronized (lock) {
+      Iterator<Request> it = pending.values().iterator();
+      while (it.hasNext()) {
+        Request request = it.next();
+        if (!request.started) {
+          removed.add(request);
+          it.remove();
+        }
+      }
+      cancels += removed.size();
+    }
+    for (Request request : removed) {
+      executor.remove(request);
+    }
+  }
+
+
+  /** Number of requests that are waiting or loading. */
+  public int pendingCount() {
+    synchronized (lock) {
+      return pending.size();
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Remove one image from the cache, for instance if the file changed. */
+  public void evict(String filename, String extension) {
+    synchronized (lock) {
+      PImage image = cache.remove(key(filename, extension));
+      if (image != null) {
+        cacheBytes -= bytes(image);
+      }
+    }
+  }
+
+
+  /** Empty the cache. The settings and stats stay the same. */
+  public void clear() {
+    synchronized (lock) {
+      cache.clear();
+      cacheBytes = 0;
+    }
+  }
+
+
+  /** Stop the threads. Anything that hasn't been loaded yet won't be. */
+  public void dispose() {
+    cancelAll();
+    executor.shutdownNow();
+    clear();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Number of images in the cache. */
+  public int cacheCount() {
+    synchronized (lock) {
+      return cache.size();
+    }
+  }
+
+
+  /** Memory used by the images in the cache. */
+  public long cacheBytes() {
+    synchronized (lock) {
+      return cacheBytes;
+    }
+  }
+
+
+  /** Fraction (0..1) of load() and request() calls that used the cache. */
+  public float hitRate() {
+    synchronized (lock) {
+      long total = hits + misses;
+      return (total == 0) ? 0 : (float) hits / total;
+    }
+  }
+
+
+  /** Average time in milliseconds to read and decode one image. */
+  public float loadTime() {
+    synchronized (lock) {
+      return (loads == 0) ? 0 : loadNanos / 1e6f / loads;
+    }
+  }
+
+
+  /**
+   * Average time in milliseconds from request() to the image being
+   * ready, including the time spent waiting for a free thread.
+   */
+  public float latency() {
+    synchronized (lock) {
+      return (latencyCount == 0) ? 0 : latencyNanos / 1e6f / latencyCount;
+    }
+  }
+
+
+  /** All the numbers on one line, for println(). */
+  @Override
+  public String toString() {
+    synchronized (lock) {
+      return String.format("PImageLoader: %d hits, %d misses (%.0f%% hit rate), " +
+                           "%d loaded (%.1f ms each, %.1f ms latency), " +
+                           "%d failed, %d cancelled, %d pending, " +
+                           "cache %d images %.1f/%.1f MB, %d evicted",
+                           hits, misses, 100 * hitRate(),
+                           loads, loadTime(), latency(),
+                           failures, cancels, pending.size(),
+                           cache.size(), cacheBytes / 1048576.0,
+                           cacheLimit / 1048576.0, evictions);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Read and decode an image. Override to load images from somewhere
+   * other than the sketch, or to process them before they're cached.
+   */
+  protected PImage decode(String filename, String extension) {
+    return parent.decodeImage(filename, extension);
+  }
+
+
+  private PImage decodeAndCache(String key, String filename, String extension) {
+    long start = System.nanoTime();
+    PImage image = decode(filename, extension);
+    long elapsed = System.nanoTime() - start;
+
+    synchronized (lock) {
+      if (image == null || image.width <= 0) {
+        failures++;
+        return image;
+      }
+      loads++;
+      loadNanos += elapsed;
+
+      if (cacheLimit > 0) {
+        // another thread may have loaded the same file in the meantime
+        PImage previous = cache.put(key, image);
+        if (previous != null) {
+          cacheBytes -= bytes(previous);
+        }
+        cacheBytes += bytes(image);
+        trim();
+      }
+    }
+    return image;
+  }
+
+
+  // call with the lock held
+  private void trim() {
+    Iterator<PImage> it = cache.values().iterator();
+    while (cacheBytes > cacheLimit && it.hasNext()) {
+      cacheBytes -= bytes(it.next());
+      it.remove();
+      evictions++;
+    }
+  }
+
+
+  static private long bytes(PImage image) {
+    return (image.pixels == null) ? 0 : 4L * image.pixels.length;
+  }
+
+
+  static private String key(String filename, String extension) {
+    return (extension == null) ? filename : filename + "\u0000" + extension;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private class Request implements Runnable, Comparable<Request> {
+    final String key;
+    final String filename;
+    final String extension;
+    final PImage vessel;
+    final int priority;
+    final long order;
+    final long requested = System.nanoTime();
+    boolean started;  // guarded by lock
+
+
+    Request(String key, String filename, String extension,
+            PImage vessel, int priority, long order) {
+      this.key = key;
+      this.filename = filename;
+      this.extension = extension;
+      this.vessel = vessel;
+      this.priority = priority;
+      this.order = order;
+    }
+
+
+    @Override
+    public int compareTo(Request o) {
+      // higher priority first, then in the order they were made
+      if (priority != o.priority) {
+        return (priority > o.priority) ? -1 : 1;
+      }
+      return Long.compare(order, o.order);
+    }
+
+
+    @Override
+    public void run() {
+      PImage actual;
+      synchronized (lock) {
+        // cancelled while waiting in the queue
+        if (pending.get(vessel) != this) {
+          return;
+        }
+        started = true;
+        actual = cache.get(key);  // loaded while this one was waiting
+      }
+      if (actual == null) {
+        actual = decodeAndCache(key, filename, extension);
+      }
+
+      // An error message should have already printed
+      if (actual == null) {
+        vessel.width = -1;
+        vessel.height = -1;
+
+      } else {
+        vessel.format = actual.format;
+        vessel.pixels = actual.pixels;
+
+        vessel.pixelWidth = actual.width;
+        vessel.pixelHeight = actual.height;
+        vessel.pixelDensity = 1;
+        // set last, since sketches check for width > 0 to know it's done
+        vessel.height = actual.height;
+        vessel.width = actual.width;
+      }
+      synchronized (lock) {
+        pending.remove(vessel);
+        latencyNanos += System.nanoTime() - requested;
+        latencyCount++;
+      }
+    }
+  }
+}
@@ -0,0 +1,344 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+/**
+ * Writes PNG files without ImageIO or AWT. RGB images are written as
+ * 8-bit truecolor, ARGB with an alpha channel, and ALPHA as grayscale.
+ * <p>
+ * Each row gets whichever PNG filter makes its bytes smallest (the same
+ * guess libpng makes), then the filtered data is cut into chunks that
+ * are deflated in parallel, the way pigz does it. Every chunk is primed
+ * with the last 32k of the one before it, so the file is barely bigger
+ * than if it had been compressed in one go, and ends with a sync flush
+ * so that the pieces can simply be written one after the other.
+ */
+final class PNGEncoder implements PConstants {
+  /** Bytes of filtered image data deflated as one piece. */
+  static final int CHUNK = 128 * 1024;
+
+  /** Size of the deflate window, primed from the previous chunk. */
+  static final int WINDOW = 32 * 1024;
+
+  static final byte[] SIGNATURE = {
+    (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'
+  };
+
+  // row filters from the PNG spec
+  static final int NONE = 0;
+  static final int SUB = 1;
+  static final int UP = 2;
+  static final int AVERAGE = 3;
+  static final int PAETH = 4;
+
+
+  private PNGEncoder() { }
+
+
+  /**
+   * @param level deflate level from 0 (stored, fastest) to 9 (smallest)
+   */
+  static void write(OutputStream output, int[] pixels,
+                    int width, int height, int format,
+                    int level) throws IOException {
+    if (level < 0 || level > 9) {
+      throw new IllegalArgumentException("PNG compression level must be " +
+                                         "between 0 and 9");
+    }
+    int bpp = (format == ARGB) ? 4 : ((format == ALPHA) ? 1 : 3);
+    int stride = 1 + width * bpp;
+    byte[] data = filter(pixels, width, height, bpp, level > 0);
+    byte[][] pieces = deflate(data, level);
+
+    output.write(SIGNATURE);
+
+    byte[] header = new byte[13];
+    putInt(header, 0, width);
+    putInt(header, 4, height);
+    header[8] = 8;  // bits per channel
+    header[9] = (byte) ((bpp == 4) ? 6 : ((bpp == 1) ? 0 : 2));
+    // compression, filter, and interlace methods all stay zero
+    writeChunk(output, "IHDR", header);
+
+    // one IDAT holding the zlib stream: header, the pieces, checksum
+    long length = 2 + 4;
+    for (byte[] piece : pieces) {
+      length += piece.length;
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Image is too large to save as PNG");
+    }
+    Adler32 adler = new Adler32();
+    adler.update(data, 0, height * stride);
+
+    byte[] zlibHeader = { 0x78, (byte) zlibFlags(level) };
+    byte[] checksum = new byte[4];
+    putInt(checksum, 0, (int) adler.getValue());
+
+    CRC32 crc = new CRC32();
+    byte[] type = { 'I', 'D', 'A', 'T' };
+    byte[] number = new byte[4];
+    putInt(number, 0, (int) length);
+    output.write(number);
+    output.write(type);
+    crc.update(type);
+    output.write(zlibHeader);
+    crc.update(zlibHeader);
+    for (byte[] piece : pieces) {
+      output.write(piece);
+      crc.update(piece);
+    }
+    output.write(checksum);
+    crc.update(checksum);
+    putInt(number, 0, (int) crc.getValue());
+    output.write(number);
+
+    writeChunk(output, "IEND", new byte[0]);
+    output.flush();
+  }
+
+
+  /**
+   * Unpacks the pixels into PNG byte order, one filter type byte at the
+   * start of each row, and filters every row if adaptive is set.
+   */
+  static private byte[] filter(int[] pixels, int width, int height,
+                               int bpp, boolean adaptive) {
+    int stride = 1 + width * bpp;
+    byte[] data = new byte[height * stride];
+
+    // the row above the first one counts as all zeros
+    PixelBands.run(height, width * (adaptive ? 8 : 1), (start, stop) -> {
+      byte[] prev = new byte[stride - 1];
+      byte[] curr = new byte[stride - 1];
+      if (start > 0) {
+        unpack(pixels, (start - 1) * width, width, bpp, prev);
+      }
+      for (int y = start; y < stop; y++) {
+        unpack(pixels, y * width, width, bpp, curr);
+        int offset = y * stride;
+        int kind = adaptive ? choose(curr, prev, bpp) : NONE;
+        data[offset] = (byte) kind;
+        apply(kind, curr, prev, bpp, data, offset + 1);
+
+        byte[] temp = prev;
+        prev = curr;
+        curr = temp;
+      }
+    });
+    return data;
+  }
+
+
+  static private void unpack(int[] pixels, int index, int width,
+                             int bpp, byte[] row) {
+    int i = 0;
+    if (bpp == 1) {
+      for (int x = 0; x < width; x++) {
+        row[i++] = (byte) pixels[index++];
+      }
+    } else {
+      for (int x = 0; x < width; x++) {
+        int c = pixels[index++];
+        row[i++] = (byte) (c >> 16);
+        row[i++] = (byte) (c >> 8);
+        row[i++] = (byte) c;
+        if (bpp == 4) {
+          row[i++] = (byte) (c >>> 24);
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Pick the filter whose output has the smallest sum of absolute
+   * (signed) values, which tends to deflate best.
+   */
+  static private int choose(byte[] curr, byte[] prev, int bpp) {
+    long none = 0, sub = 0, up = 0, average = 0, paeth = 0;
+    for (int i = 0; i < curr.length; i++) {
+      int x = curr[i] & 0xff;
+      int a = (i >= bpp) ? curr[i - bpp] & 0xff : 0;
+      int b = prev[i] & 0xff;
+      int c = (i >= bpp) ? prev[i - bpp] & 0xff : 0;
+      none += Math.abs((byte) x);
+      sub += Math.abs((byte) (x - a));
+      up += Math.abs((byte) (x - b));
+      average += Math.abs((byte) (x - ((a + b) >> 1)));
+      paeth += Math.abs((byte) (x - predict(a, b, c)));
+    }
+    int best = NONE;
+    long least = none;
+    if (sub < least) { best = SUB; least = sub; }
+    if (up < least) { best = UP; least = up; }
+    if (average < least) { best = AVERAGE; least = average; }
+    if (paeth < least) { best = PAETH; }
+    return best;
+  }
+
+
+  static private void apply(int kind, byte[] curr, byte[] prev, int bpp,
+                            byte[] out, int offset) {
+    int length = curr.length;
+    switch (kind) {
+    case NONE:
+      System.arraycopy(curr, 0, out, offset, length);
+      break;
+
+    case SUB:
+      for (int i = 0; i < length; i++) {
+        int a = (i >= bpp) ? curr[i - bpp] : 0;
+        out[offset + i] = (byte) (curr[i] - a);
+      }
+      break;
+
+    case UP:
+      for (int i = 0; i < length; i++) {
+        out[offset + i] = (byte) (curr[i] - prev[i]);
+      }
+      break;
+
+    case AVERAGE:
+      for (int i = 0; i < length; i++) {
+        int a = (i >= bpp) ? curr[i - bpp] & 0xff : 0;
+        out[offset + i] = (byte) (curr[i] - ((a + (prev[i] & 0xff)) >> 1));
+      }
+      break;
+
+    case PAETH:
+      for (int i = 0; i < length; i++) {
+        int a = (i >= bpp) ? curr[i - bpp] & 0xff : 0;
+        int c = (i >= bpp) ? prev[i - bpp] & 0xff : 0;
+        out[offset + i] = (byte) (curr[i] - predict(a, prev[i] & 0xff, c));
+      }
+      break;
+    }
+  }
+
+
+  static private int predict(int a, int b, int c) {
+    int p = a + b - c;
+    int pa = Math.abs(p - a);
+    int pb = Math.abs(p - b);
+    int pc = Math.abs(p - c);
+    if (pa <= pb && pa <= pc) return a;
+    return (pb <= pc) ? b : c;
+  }
+
+
+  /**
+   * Compress the data as raw deflate pieces that can be concatenated.
+   * All but the last end on a byte boundary with a sync flush.
+   */
+  static private byte[][] deflate(byte[] data, int level) {
+    int count = Math.max(1, (data.length + CHUNK - 1) / CHUNK);
+    byte[][] pieces = new byte[count][];
+
+    PixelBands.run(count, CHUNK / 16, (start, stop) -> {
+      Deflater deflater = new Deflater(level, true);
+      try {
+        for (int i = start; i < stop; i++) {
+          deflater.reset();
+          int offset = i * CHUNK;
+          int length = Math.min(CHUNK, data.length - offset);
+          if (offset > 0) {
+            int window = Math.min(WINDOW, offset);
+            deflater.setDictionary(data, offset - window, window);
+          }
+          deflater.setInput(data, offset, length);
+          pieces[i] = drain(deflater, length, i == count - 1);
+        }
+      } finally {
+        deflater.end();
+      }
+    });
+    return pieces;
+  }
+
+
+  static private byte[] drain(Deflater deflater, int length, boolean last) {
+    // stored blocks add 5 bytes per 16k, so this is almost always enough
+    byte[] out = new byte[length + (length >> 8) + 64];
+    int used = 0;
+    if (last) {
+      deflater.finish();
+    }
+    while (true) {
+      int room = out.length - used;
+      used += last ?
+        deflater.deflate(out, used, room) :
+        deflater.deflate(out, used, room, Deflater.SYNC_FLUSH);
+      if (last ? deflater.finished() : used < out.length) {
+        break;
+      }
+      if (used == out.length) {
+        out = Arrays.copyOf(out, out.length * 2);
+      }
+    }
+    return Arrays.copyOf(out, used);
+  }
+
+
+  static private int zlibFlags(int level) {
+    // FLEVEL says how hard the compressor tried, and the flags byte
+    // has to make the two header bytes a multiple of 31
+    int flevel = (level < 2) ? 0 : ((level < 6) ? 1 : ((level == 6) ? 2 : 3));
+    int flags = flevel << 6;
+    return flags + (31 - (0x78 * 256 + flags) % 31) % 31;
+  }
+
+
+  static private void writeChunk(OutputStream output, String type,
+                                 byte[] data) throws IOException {
+    byte[] number = new byte[4];
+    putInt(number, 0, data.length);
+    output.write(number);
+
+    byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+    output.write(name);
+    output.write(data);
+
+    CRC32 crc = new CRC32();
+    crc.update(name);
+    crc.update(data);
+    putInt(number, 0, (int) crc.getValue());
+    output.write(number);
+  }
+
+
+  static private void putInt(byte[] bytes, int offset, int value) {
+    bytes[offset] = (byte) (value >>> 24);
+    bytes[offset + 1] = (byte) (value >>> 16);
+    bytes[offset + 2] = (byte) (value >>> 8);
+    bytes[offset + 3] = (byte) value;
+  }
+}
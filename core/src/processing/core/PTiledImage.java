@@ -0,0 +1,754 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * An ARGB image too big for a PImage, stored as square tiles on disk or
+ * outside of the Java heap, with only the most recently used tiles kept
+ * in memory. A PImage needs all of its pixels in one array, which tops
+ * out at about 2 billion pixels and has to fit in the heap; a 50,000 by
+ * 50,000 mural is 2.5 billion pixels and 10 GB.
+ * <pre>
+ * PTiledImage mural = new PTiledImage(50000, 50000, new File("/big/mural.tiles"));
+ * for (Photo p : photos) {
+ *   mural.set(p.x, p.y, loadImage(p.filename));  // one at a time
+ * }
+ * mural.save();  // only writes tiles that changed since the last save()
+ *
+ * PImage detail = mural.get(21000, 9000, width, height);
+ * PImage overview = mural.get(0, 0, 50000, 50000, 1000, 1000);
+ * </pre>
+ * get() with a region copies it out into an ordinary PImage, and the
+ * version with a target size averages down to that size, reading one
+ * band of tiles at a time. copyTo() and blendTo() draw a region into
+ * another PImage the way copy() and blend() do, and set() writes a
+ * PImage in. To work on the whole image with a small heap, go through
+ * it one region at a time with get(), change the pixels, and set()
+ * them back.
+ * <p>
+ * Tiles that have never been written read as transparent black and
+ * take no space. The tile file has a 16 byte header (magic, width,
+ * height, and tile size, as big-endian ints) followed by each row of
+ * tiles, each tile stored as tileSize * tileSize big-endian ARGB ints.
+ * Tiles kept off-heap use direct buffers, which may need a larger
+ * -XX:MaxDirectMemorySize.
+ * <p>
+ * All methods are synchronized, so one image can be used from several
+ * threads, though not any faster than from one.
+ *
+ * @nowebref
+ */
+public class PTiledImage implements PConstants {
+  static final int MAGIC = 0x50546931;  // "PTi1"
+  static final int HEADER = 16;
+
+  /** Tiles kept in memory unless cacheSize() is set. */
+  static public final int DEFAULT_CACHE = 64;
+
+  public final int width;
+  public final int height;
+  public final int tileSize;
+
+  /** Number of tiles across and down. */
+  protected final int columns;
+  protected final int rows;
+
+  private Store store;
+  private File file;  // the tile file, if there is one
+
+  // changed since the last save(), whether still in the cache or not
+  private final BitSet changed = new BitSet();
+
+  private final LinkedHashMap<Integer, Tile> cache =
+    new LinkedHashMap<>(16, 0.75f, true);  // access order, for LRU
+  private int cacheLimit = DEFAULT_CACHE;
+
+  long hits;
+  long reads;
+  long writes;
+
+
+  /**
+   * An image with its tiles off-heap, 256 pixels on a side.
+   */
+  public PTiledImage(int width, int height) {
+    this(width, height, 256, null);
+  }
+
+
+  /**
+   * An image with its tiles in a new file, 256 pixels on a side. An
+   * existing file is replaced.
+   */
+  public PTiledImage(int width, int height, File file) {
+    this(width, height, 256, file);
+  }
+
+
+  /**
+   * @param tileSize pixels on each side of a tile, from 8 to 4096
+   * @param file a new file for the tiles, or null to keep them off-heap
+   */
+  public PTiledImage(int width, int height, int tileSize, File file) {
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("PTiledImage needs a width and height above 0");
+    }
+    if (tileSize < 8 || tileSize > 4096) {
+      throw new IllegalArgumentException("tileSize must be between 8 and 4096");
+    }
+    this.width = width;
+    this.height = height;
+    this.tileSize = tileSize;
+    columns = (width + tileSize - 1) / tileSize;
+    rows = (height + tileSize - 1) / tileSize;
+    if ((long) columns * rows > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Too many tiles, use a larger tileSize");
+    }
+    if (file == null) {
+      store = new MemoryStore(columns * rows, tileSize * tileSize);
+    } else {
+      try {
+        store = FileStore.create(file, width, height, tileSize);
+      } catch (IOException e) {
+        throw new RuntimeException("Could not create " + file, e);
+      }
+      this.file = file;
+    }
+  }
+
+
+  /**
+   * Open a tile file written by an earlier PTiledImage. Changes are
+   * written back to it.
+   */
+  public PTiledImage(File file) throws IOException {
+    FileStore fs = FileStore.open(file);
+    width = fs.width;
+    height = fs.height;
+    tileSize = fs.tileSize;
+    columns = (width + tileSize - 1) / tileSize;
+    rows = (height + tileSize - 1) / tileSize;
+    store = fs;
+    this.file = file;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Set how many tiles are kept in memory, at least 1. Each one takes
+   * tileSize * tileSize * 4 bytes, 256 KB for the default size. Give it
+   * enough for a row of tiles across the regions that are used most.
+   */
+  public synchronized void cacheSize(int tiles) {
+    cacheLimit = Math.max(1, tiles);
+    trim();
+  }
+
+
+  /** The file holding the tiles, or null if they're kept off-heap. */
+  public File getFile() {
+    return file;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** One pixel, or 0 if it's outside the image. */
+  public synchronized int get(int x, int y) {
+    if (x < 0 || y < 0 || x >= width || y >= height) {
+      return 0;
+    }
+    Tile tile = tile(x / tileSize, y / tileSize, false);
+    return tile.pixels[(y % tileSize) * tileSize + (x % tileSize)];
+  }
+
+
+  public synchronized void set(int x, int y, int argb) {
+    if (x < 0 || y < 0 || x >= width || y >= height) {
+      return;
+    }
+    Tile tile = tile(x / tileSize, y / tileSize, true);
+    tile.pixels[(y % tileSize) * tileSize + (x % tileSize)] = argb;
+  }
+
+
+  /**
+   * Copy a region into a new ARGB PImage. The parts of it that are
+   * outside of this image are transparent black.
+   */
+  public synchronized PImage get(int x, int y, int w, int h) {
+    if (w <= 0 || h <= 0 || (long) w * h > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("get() needs a width and height " +
+                                         "above 0, with fewer than 2^31 pixels");
+    }
+    PImage image = new PImage(w, h, ARGB);
+    transfer(x, y, w, h, image.pixels, false);
+    return image;
+  }
+
+
+  /**
+   * Copy a region into a new ARGB PImage of another size. When the
+   * region is larger, each pixel is the average of the pixels it
+   * covers (with the colors weighted by alpha, like resize() does), and
+   * only a band of tiles is read at a time, so this works for an
+   * overview of the whole image. When it's smaller, the region is
+   * scaled up the way copy() does.
+   */
+  public synchronized PImage get(int x, int y, int w, int h,
+                                 int targetWidth, int targetHeight) {
+    if (w <= 0 || h <= 0 || targetWidth <= 0 || targetHeight <= 0 ||
+        (long) targetWidth * targetHeight > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("get() needs sizes above 0");
+    }
+    if (w == targetWidth && h == targetHeight) {
+      return get(x, y, w, h);
+    }
+    PImage image;
+    if (w <= targetWidth && h <= targetHeight) {
+      image = get(x, y, w, h);
+    } else {
+      image = average(x, y, w, h, Math.min(w, targetWidth), Math.min(h, targetHeight));
+    }
+    if (image.pixelWidth == targetWidth && image.pixelHeight == targetHeight) {
+      return image;
+    }
+    PImage target = new PImage(targetWidth, targetHeight, ARGB);
+    target.copy(image, 0, 0, image.pixelWidth, image.pixelHeight,
+                0, 0, targetWidth, targetHeight);
+    return target;
+  }
+
+
+  /**
+   * Write an image into this one with its top left corner at x, y. RGB
+   * images are written opaque, and ALPHA images as white.
+   */
+  public synchronized void set(int x, int y, PImage image) {
+    image.loadPixels();
+    int[] pixels = image.pixels;
+    if (image.format == RGB || image.format == ALPHA) {
+      pixels = new int[pixels.length];
+      for (int i = 0; i < pixels.length; i++) {
+        int c = image.pixels[i];
+        pixels[i] = (image.format == RGB) ?
+          (c | 0xff000000) : ((c << 24) | 0xffffff);
+      }
+    }
+    transfer(x, y, image.pixelWidth, image.pixelHeight, pixels, true);
+  }
+
+
+  /**
+   * Draw a region of this image into target, scaled to fit the target
+   * rectangle, the same as target.copy() would.
+   */
+  public void copyTo(PImage target, int sx, int sy, int sw, int sh,
+                     int dx, int dy, int dw, int dh) {
+    PImage region = get(sx, sy, sw, sh, dw, dh);
+    target.copy(region, 0, 0, dw, dh, dx, dy, dw, dh);
+  }
+
+
+  /**
+   * Blend a region of this image into target, scaled to fit the target
+   * rectangle, the same as target.blend() would.
+   */
+  public void blendTo(PImage target, int sx, int sy, int sw, int sh,
+                      int dx, int dy, int dw, int dh, int mode) {
+    PImage region = get(sx, sy, sw, sh, dw, dh);
+    target.blend(region, 0, 0, dw, dh, dx, dy, dw, dh, mode);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Write the changes to the tile file. Only tiles that changed since
+   * the last save() are written, so saving often is cheap. Throws an
+   * exception for an image whose tiles are off-heap; use save(File).
+   */
+  public synchronized void save() throws IOException {
+    if (file == null) {
+      throw new IllegalStateException("This image has no file, use save(File)");
+    }
+    flush();
+    ((FileStore) store).sync();
+    changed.clear();
+  }
+
+
+  /**
+   * Write the tiles to a file that can be opened again with
+   * new PTiledImage(file). For an image with its tiles off-heap, saving
+   * to the same file again only writes the tiles that changed.
+   */
+  public synchronized void save(File target) throws IOException {
+    if (target.equals(file)) {
+      save();
+      return;
+    }
+    flush();
+    boolean again = store instanceof MemoryStore &&
+      target.equals(((MemoryStore) store).savedTo) && target.exists();
+    FileStore out = again ?
+      FileStore.open(target) : FileStore.create(target, width, height, tileSize);
+    try {
+      int[] pixels = new int[tileSize * tileSize];
+      int count = columns * rows;
+      for (int index = 0; index < count; index++) {
+        if (again && !changed.get(index)) {
+          continue;
+        }
+        if (store.read(index, pixels)) {
+          out.write(index, pixels);
+        }
+      }
+      out.sync();
+    } finally {
+      out.close();
+    }
+    if (store instanceof MemoryStore) {
+      ((MemoryStore) store).savedTo = target;
+      changed.clear();
+    }
+  }
+
+
+  /**
+   * Save (if there's a file), and let go of the tiles. The image can't
+   * be used afterwards.
+   */
+  public synchronized void dispose() {
+    if (store == null) {
+      return;
+    }
+    try {
+      if (file != null) {
+        save();
+      }
+      store.close();
+
+    } catch (IOException e) {
+      throw new RuntimeException("Could not save " + file, e);
+
+    } finally {
+      store = null;
+      cache.clear();
+    }
+  }
+
+
+  /** Tiles that are in memory right now. */
+  public synchronized int cacheCount() {
+    return cache.size();
+  }
+
+
+  /** The fraction of tile lookups that found the tile in memory. */
+  public synchronized float hitRate() {
+    long total = hits + reads;
+    return (total == 0) ? 0 : hits / (float) total;
+  }
+
+
+  @Override
+  public synchronized String toString() {
+    return "PTiledImage " + width + "x" + height + ", " +
+      columns + "x" + rows + " tiles of " + tileSize + ", " +
+      cache.size() + " in memory, " + reads + " read, " + writes + " written";
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Copy between the tiles and a w * h array, for the part of the
+   * rectangle that's inside the image.
+   */
+  private void transfer(int x, int y, int w, int h, int[] pixels, boolean write) {
+    int x1 = Math.max(0, x), y1 = Math.max(0, y);
+    int x2 = (int) Math.min(width, (long) x + w);
+    int y2 = (int) Math.min(height, (long) y + h);
+    if (x1 >= x2 || y1 >= y2) {
+      return;
+    }
+    for (int ty = y1 / tileSize; ty * tileSize < y2; ty++) {
+      int top = Math.max(y1, ty * tileSize);
+      int bottom = Math.min(y2, (ty + 1) * tileSize);
+      for (int tx = x1 / tileSize; tx * tileSize < x2; tx++) {
+        int left = Math.max(x1, tx * tileSize);
+        int right = Math.min(x2, (tx + 1) * tileSize);
+        if (!write && blank(tx, ty)) {
+          continue;  // the array is already zeros
+        }
+        Tile tile = tile(tx, ty, write);
+        for (int row = top; row < bottom; row++) {
+          int inTile = (row - ty * tileSize) * tileSize + (left - tx * tileSize);
+          int inArray = (row - y) * w + (left - x);
+          if (write) {
+            System.arraycopy(pixels, inArray, tile.pixels, inTile, right - left);
+          } else {
+            System.arraycopy(tile.pixels, inTile, pixels, inArray, right - left);
+          }
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Box filter a region down to tw * th. The output rows are done in
+   * bands covering about one row of tiles, so the sums only need to be
+   * kept for a band at a time. Tiles that were never written are
+   * skipped, they only add to how many pixels each output pixel covers.
+   */
+  private PImage average(int x, int y, int w, int h, int tw, int th) {
+    PImage image = new PImage(tw, th, ARGB);
+    int x1 = Math.max(0, x);
+    int x2 = (int) Math.min(width, (long) x + w);
+    if (x1 >= x2) {
+      return image;
+    }
+    int band = (int) Math.max(1, (long) th * tileSize / h);
+    long[] sums = new long[tw * band * 4];
+    int[] columnCounts = new int[tw];
+    int[] rowCounts = new int[band];
+    int[] px = new int[x2 - x1];  // which output column for each x
+
+    for (int col = x1; col < x2; col++) {
+      px[col - x1] = (int) ((long) (col - x) * tw / w);
+      columnCounts[px[col - x1]]++;
+    }
+
+    for (int oy = 0; oy < th; oy += band) {
+      int oyEnd = Math.min(th, oy + band);
+      // the source rows that land in output rows oy up to oyEnd
+      long top = y + ceilDiv((long) oy * h, th);
+      long bottom = y + ceilDiv((long) oyEnd * h, th);
+      int y1 = (int) Math.max(0, top);
+      int y2 = (int) Math.min(height, bottom);
+      Arrays.fill(sums, 0);
+      Arrays.fill(rowCounts, 0);
+      for (int row = y1; row < y2; row++) {
+        rowCounts[(int) ((long) (row - y) * th / h - oy)]++;
+      }
+
+      for (int ty = y1 / tileSize; ty * tileSize < y2; ty++) {
+        int rowStart = Math.max(y1, ty * tileSize);
+        int rowStop = Math.min(y2, (ty + 1) * tileSize);
+        for (int tx = x1 / tileSize; tx * tileSize < x2; tx++) {
+          if (blank(tx, ty)) {
+            continue;
+          }
+          int left = Math.max(x1, tx * tileSize);
+          int right = Math.min(x2, (tx + 1) * tileSize);
+          int[] pixels = tile(tx, ty, false).pixels;
+          for (int row = rowStart; row < rowStop; row++) {
+            int out = (int) ((long) (row - y) * th / h - oy) * tw;
+            int in = (row - ty * tileSize) * tileSize - tx * tileSize;
+            for (int col = left; col < right; col++) {
+              int c = pixels[in + col];
+              int o = out + px[col - x1];
+              int a = c >>> 24;
+              sums[o*4] += a;
+              sums[o*4 + 1] += a * ((c >> 16) & 0xff);
+              sums[o*4 + 2] += a * ((c >> 8) & 0xff);
+              sums[o*4 + 3] += a * (c & 0xff);
+            }
+          }
+        }
+      }
+      for (int o = 0; o < (oyEnd - oy) * tw; o++) {
+        long a = sums[o*4];
+        if (a == 0) {
+          continue;  // transparent, or outside the image
+        }
+        long count = (long) rowCounts[o / tw] * columnCounts[o % tw];
+        int alpha = (int) ((a + count / 2) / count);
+        int r = (int) ((sums[o*4 + 1] + a / 2) / a);
+        int g = (int) ((sums[o*4 + 2] + a / 2) / a);
+        int b = (int) ((sums[o*4 + 3] + a / 2) / a);
+        image.pixels[oy * tw + o] = alpha << 24 | r << 16 | g << 8 | b;
+      }
+    }
+    return image;
+  }
+
+
+  static private long ceilDiv(long a, long b) {
+    return (a + b - 1) / b;
+  }
+
+
+  /** True for a tile that's never been written, so it's all zeros. */
+  private boolean blank(int tx, int ty) {
+    if (store == null) {
+      throw new IllegalStateException("This PTiledImage has been disposed");
+    }
+    int index = ty * columns + tx;
+    return !cache.containsKey(index) && !store.exists(index);
+  }
+
+
+  private Tile tile(int tx, int ty, boolean write) {
+    if (store == null) {
+      throw new IllegalStateException("This PTiledImage has been disposed");
+    }
+    int index = ty * columns + tx;
+    Tile tile = cache.get(index);
+    if (tile != null) {
+      hits++;
+    } else {
+      tile = new Tile(tileSize * tileSize);
+      try {
+        store.read(index, tile.pixels);
+      } catch (IOException e) {
+        throw new RuntimeException("Could not read a tile from " + file, e);
+      }
+      reads++;
+      cache.put(index, tile);
+      trim();
+    }
+    if (write) {
+      tile.dirty = true;
+      changed.set(index);
+    }
+    return tile;
+  }
+
+
+  /** Drop the least recently used tiles, writing them back if needed. */
+  private void trim() {
+    Iterator<Map.Entry<Integer, Tile>> it = cache.entrySet().iterator();
+    while (cache.size() > cacheLimit && it.hasNext()) {
+      Map.Entry<Integer, Tile> entry = it.next();
+      writeBack(entry.getKey(), entry.getValue());
+      it.remove();
+    }
+  }
+
+
+  private void flush() {
+    for (Map.Entry<Integer, Tile> entry : cache.entrySet()) {
+      writeBack(entry.getKey(), entry.getValue());
+    }
+  }
+
+
+  private void writeBack(int index, Tile tile) {
+    if (tile.dirty) {
+      try {
+        store.write(index, tile.pixels);
+      } catch (IOException e) {
+        throw new RuntimeException("Could not write a tile to " + file, e);
+      }
+      tile.dirty = false;
+      writes++;
+    }
+  }
+
+
+  static private class Tile {
+    final int[] pixels;
+    boolean dirty;
+
+    Tile(int count) {
+      pixels = new int[count];
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  interface Store {
+    /** Fill pixels with a tile, or with 0 and return false if it's never been written. */
+    boolean read(int index, int[] pixels) throws IOException;
+    boolean exists(int index);
+    void write(int index, int[] pixels) throws IOException;
+    void close() throws IOException;
+  }
+
+
+  /** Tiles in direct buffers, allocated the first time each is written. */
+  static class MemoryStore implements Store {
+    final ByteBuffer[] tiles;
+    final int count;
+    File savedTo;
+
+    MemoryStore(int tiles, int count) {
+      this.tiles = new ByteBuffer[tiles];
+      this.count = count;
+    }
+
+    public boolean exists(int index) {
+      return tiles[index] != null;
+    }
+
+    public boolean read(int index, int[] pixels) {
+      ByteBuffer tile = tiles[index];
+      if (tile == null) {
+        Arrays.fill(pixels, 0);
+        return false;
+      }
+      tile.asIntBuffer().get(pixels, 0, count);
+      return true;
+    }
+
+    public void write(int index, int[] pixels) {
+      if (tiles[index] == null) {
+        tiles[index] = ByteBuffer.allocateDirect(count * 4).order(ByteOrder.nativeOrder());
+      }
+      tiles[index].asIntBuffer().put(pixels, 0, count);
+    }
+
+    public void close() {
+      Arrays.fill(tiles, null);
+    }
+  }
+
+
+  /**
+   * Tiles in a file, at fixed places after the header. Tiles that were
+   * never written are past the end of the file or in a hole, and read
+   * back as zeros.
+   */
+  static class FileStore implements Store {
+    final FileChannel channel;
+    final ByteBuffer buffer;
+    final int width, height, tileSize;
+
+    private FileStore(FileChannel channel, int width, int height, int tileSize) {
+      this.channel = channel;
+      this.width = width;
+      this.height = height;
+      this.tileSize = tileSize;
+      buffer = ByteBuffer.allocateDirect(tileSize * tileSize * 4);
+    }
+
+    static FileStore create(File file, int width, int height,
+                            int tileSize) throws IOException {
+      PApplet.createPath(file);
+      FileChannel channel =
+        FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                         StandardOpenOption.TRUNCATE_EXISTING,
+                         StandardOpenOption.READ, StandardOpenOption.WRITE);
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      header.putInt(MAGIC).putInt(width).putInt(height).putInt(tileSize).flip();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+      return new FileStore(channel, width, height, tileSize);
+    }
+
+    static FileStore open(File file) throws IOException {
+      FileChannel channel =
+        FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                         StandardOpenOption.WRITE);
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      while (header.hasRemaining() && channel.read(header, header.position()) > 0) { }
+      header.flip();
+      if (header.remaining() < HEADER || header.getInt() != MAGIC) {
+        channel.close();
+        throw new IOException(file + " is not a PTiledImage file");
+      }
+      int width = header.getInt();
+      int height = header.getInt();
+      int tileSize = header.getInt();
+      if (width <= 0 || height <= 0 || tileSize < 8 || tileSize > 4096) {
+        channel.close();
+        throw new IOException("Bad header in " + file);
+      }
+      return new FileStore(channel, width, height, tileSize);
+    }
+
+    private long position(int index) {
+      return HEADER + (long) index * buffer.capacity();
+    }
+
+    public boolean exists(int index) {
+      try {
+        return position(index) < channel.size();
+      } catch (IOException e) {
+        return true;  // let read() report it
+      }
+    }
+
+    public boolean read(int index, int[] pixels) throws IOException {
+      long position = position(index);
+      if (position >= channel.size()) {
+        Arrays.fill(pixels, 0);
+        return false;
+      }
+      buffer.clear();
+      while (buffer.hasRemaining()) {
+        int n = channel.read(buffer, position + buffer.position());
+        if (n < 0) {
+          break;
+        }
+      }
+      // zeros for whatever was past the end
+      while (buffer.hasRemaining()) {
+        buffer.put((byte) 0);
+      }
+      buffer.flip();
+      buffer.asIntBuffer().get(pixels);
+      return true;
+    }
+
+    public void write(int index, int[] pixels) throws IOException {
+      long position = position(index);
+      buffer.clear();
+      buffer.asIntBuffer().put(pixels);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer, position + buffer.position());
+      }
+    }
+
+    void sync() throws IOException {
+      channel.force(false);
+    }
+
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
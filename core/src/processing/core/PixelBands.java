@@ -0,0 +1,77 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
+
+
+/**
+ * Splits work on an image into bands of rows (or runs of pixels) and
+ * runs them on the common fork-join pool, or on the pool of the caller
+ * if it is already a fork-join task. Each band writes only to its own
+ * part of the output, so the results are the same no matter how many
+ * threads there are. Small jobs stay on the calling thread, where the
+ * split would cost more than it saves.
+ */
+final class PixelBands {
+  /** Jobs smaller than this (count times cost) aren't split. */
+  static final int MIN_PARALLEL = 1 << 16;
+
+  /** Bands per thread, so a slow thread doesn't hold up the rest. */
+  static final int BANDS_PER_THREAD = 4;
+
+
+  interface Band {
+    /** Handle items (rows or pixels) from start up to, not including, stop. */
+    void run(int start, int stop);
+  }
+
+
+  private PixelBands() { }
+
+
+  /**
+   * @param count number of rows (or pixels) to process
+   * @param cost rough amount of work for each, e.g. the width of a row
+   */
+  static void run(int count, int cost, Band band) {
+    int threads = parallelism();
+    if (threads < 2 || count < 2 || (long) count * cost < MIN_PARALLEL) {
+      band.run(0, count);
+
+    } else {
+      int bands = Math.min(count, threads * BANDS_PER_THREAD);
+      IntStream.range(0, bands).parallel().forEach(i ->
+        band.run((int) ((long) count * i / bands),
+                 (int) ((long) count * (i + 1) / bands)));
+    }
+  }
+
+
+  static int parallelism() {
+    ForkJoinPool pool = ForkJoinTask.getPool();
+    return (pool != null) ?
+      pool.getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+  }
+}
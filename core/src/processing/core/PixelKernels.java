@@ -0,0 +1,211 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+
+/**
+ * The inner loops of the filters and conversions that treat each pixel
+ * on its own: filter(GRAY), INVERT, THRESHOLD, and POSTERIZE, mask(),
+ * and the byte order conversions that OpenGL needs for loadPixels()
+ * and updatePixels(). Not meant to be used from sketches.
+ * <p>
+ * This class has the plain Java versions. When the JDK's Vector API
+ * (the jdk.incubator.vector module) is available, get() returns a
+ * subclass that does several pixels per instruction where that helps
+ * (HotSpot already vectorizes the simplest of these loops). The module
+ * has to be added when Java starts, with
+ * <pre>--add-modules jdk.incubator.vector</pre>
+ * otherwise, or on Java 11, these versions are used. Both give exactly
+ * the same results.
+ *
+ * @nowebref
+ */
+public class PixelKernels {
+  /** Little endian OpenGL order to Java ARGB, or back: swaps red and blue. */
+  static public final int SWAP_RED_BLUE = 0;
+  /** Big endian OpenGL RGBA to Java ARGB. */
+  static public final int RGBA_TO_ARGB = 1;
+  /** Java ARGB to big endian OpenGL RGBA. */
+  static public final int ARGB_TO_RGBA = 2;
+
+  static private final String VECTOR_MODULE = "jdk.incubator.vector";
+  static private final String VECTOR_CLASS = "processing.core.VectorKernels";
+
+  static private PixelKernels instance;
+
+
+  protected PixelKernels() { }
+
+
+  /**
+   * The Vector API versions if they could be loaded, otherwise these.
+   */
+  static public synchronized PixelKernels get() {
+    if (instance == null) {
+      instance = load();
+    }
+    return instance;
+  }
+
+
+  static private PixelKernels load() {
+    if (ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+      try {
+        Class<?> c = Class.forName(VECTOR_CLASS);
+        return (PixelKernels) c.getDeclaredConstructor().newInstance();
+
+      } catch (Exception | LinkageError e) {
+        // not built with the vector classes, or an older JDK:
+        // nothing's wrong, it's just slower
+      }
+    }
+    return new PixelKernels();
+  }
+
+
+  /** True for the Vector API versions. */
+  public boolean isVectorized() {
+    return false;
+  }
+
+
+  /** filter(GRAY) on RGB or ARGB pixels, keeping alpha. */
+  public void gray(int[] pixels, int start, int stop) {
+    for (int i = start; i < stop; i++) {
+      int col = pixels[i];
+      // luminance = 0.3*red + 0.59*green + 0.11*blue
+      // 0.30 * 256 =  77
+      // 0.59 * 256 = 151
+      // 0.11 * 256 =  28
+      int lum = (77*(col>>16&0xff) + 151*(col>>8&0xff) + 28*(col&0xff))>>8;
+      pixels[i] = (col & PImage.ALPHA_MASK) | lum<<16 | lum<<8 | lum;
+    }
+  }
+
+
+  /** filter(INVERT): flips red, green, and blue, but not alpha. */
+  public void invert(int[] pixels, int start, int stop) {
+    for (int i = start; i < stop; i++) {
+      pixels[i] ^= 0xffffff;
+    }
+  }
+
+
+  /**
+   * filter(THRESHOLD): white where the brightest of red, green, and blue
+   * is at least thresh (0 to 255), black elsewhere, keeping alpha.
+   */
+  public void threshold(int[] pixels, int start, int stop, int thresh) {
+    for (int i = start; i < stop; i++) {
+      int max = Math.max((pixels[i] & PImage.RED_MASK) >> 16,
+                         Math.max((pixels[i] & PImage.GREEN_MASK) >> 8,
+                                  (pixels[i] & PImage.BLUE_MASK)));
+      pixels[i] = (pixels[i] & PImage.ALPHA_MASK) |
+        ((max < thresh) ? 0x000000 : 0xffffff);
+    }
+  }
+
+
+  /**
+   * filter(POSTERIZE, levels), with levels from 2 to 255. The answer
+   * for each channel only depends on its value, so the divisions are
+   * done once for all 256 values.
+   */
+  public void posterize(int[] pixels, int start, int stop, int levels) {
+    int[] table = posterizeTable(levels);
+    for (int i = start; i < stop; i++) {
+      int col = pixels[i];
+      pixels[i] = ((0xff000000 & col) |
+                   (table[(col >> 16) & 0xff] << 16) |
+                   (table[(col >> 8) & 0xff] << 8) |
+                   table[col & 0xff]);
+    }
+  }
+
+
+  static int[] posterizeTable(int levels) {
+    int levels1 = levels - 1;
+    int[] table = new int[256];
+    for (int level = 0; level < 256; level++) {
+      table[level] = (((level * levels) >> 8) * 255) / levels1;
+    }
+    return table;
+  }
+
+
+  /** mask(): alpha from the low byte of each mask value. */
+  public void mask(int[] pixels, int[] mask, int start, int stop) {
+    for (int i = start; i < stop; i++) {
+      pixels[i] = ((mask[i] & 0xff) << 24) | (pixels[i] & 0xffffff);
+    }
+  }
+
+
+  /**
+   * Convert count pixels starting at from, writing them starting at to,
+   * which may be the same place.
+   *
+   * @param order SWAP_RED_BLUE, RGBA_TO_ARGB, or ARGB_TO_RGBA
+   */
+  public void convert(int[] source, int from, int[] target, int to,
+                      int count, int order) {
+    for (int i = 0; i < count; i++) {
+      target[to + i] = convert(source[from + i], order);
+    }
+  }
+
+
+  static int convert(int color, int order) {
+    if (order == RGBA_TO_ARGB) {
+      return (color >>> 8) | (color << 24);
+    } else if (order == ARGB_TO_RGBA) {
+      return (color >>> 24) | (color << 8);
+    } else {
+      int rb = color & 0x00FF00FF;
+      return (color & 0xFF00FF00) | (rb << 16) | (rb >> 16);
+    }
+  }
+
+
+  /**
+   * Convert every pixel and flip the image vertically at the same time,
+   * which is what the OpenGL renderers need for loadPixels() and
+   * updatePixels(). Pairs of rows are swapped in parallel.
+   */
+  public void convertFlipped(int[] pixels, int width, int height, int order) {
+    int pairs = height / 2;
+    PixelBands.run(pairs, width * 2, (start, stop) -> {
+      int[] row = new int[width];
+      for (int y = start; y < stop; y++) {
+        int top = y * width;
+        int bottom = (height - 1 - y) * width;
+        System.arraycopy(pixels, top, row, 0, width);
+        convert(pixels, bottom, pixels, top, width, order);
+        convert(row, 0, pixels, bottom, width, order);
+      }
+    });
+    if ((height % 2) == 1) {  // the center row stays where it is
+      int center = pairs * width;
+      convert(pixels, center, pixels, center, width, order);
+    }
+  }
+}
@@ -0,0 +1,343 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.util.Arrays;
+
+
+/**
+ * Resizes pixels[] arrays for PImage.resize(), without going through
+ * AWT, so it works the same with every renderer.
+ * <p>
+ * The filters are separable: each row is resampled horizontally into a
+ * float buffer, then each column of that vertically. The weights for
+ * every output column and row are worked out once up front. When
+ * shrinking, the filter is widened by the scale factor so that every
+ * source pixel contributes, which is what keeps thumbnails from
+ * aliasing. ARGB images are resampled with premultiplied alpha, so
+ * the color of transparent pixels doesn't bleed into their neighbors.
+ * Both passes are split into bands of rows and run in parallel.
+ */
+final class Resampler implements PConstants {
+
+  private Resampler() { }
+
+
+  static int[] resize(int[] pixels, int srcW, int srcH, int format,
+                      int dstW, int dstH, int filter) {
+    if (dstW == srcW && dstH == srcH) {
+      return pixels.clone();
+    }
+    if (filter == NEAREST) {
+      return nearest(pixels, srcW, srcH, dstW, dstH);
+    }
+    if (filter != BILINEAR && filter != BICUBIC && filter != LANCZOS) {
+      throw new IllegalArgumentException("Use NEAREST, BILINEAR, BICUBIC, " +
+                                         "or LANCZOS with resize()");
+    }
+
+    Weights across = new Weights(srcW, dstW, filter);
+    Weights down = new Weights(srcH, dstH, filter);
+    boolean premultiply = (format == ARGB);
+
+    // horizontal pass: srcH rows of dstW pixels, four floats per pixel
+    float[] temp = new float[dstW * srcH * 4];
+    PixelBands.run(srcH, dstW * across.stride, (start, stop) -> {
+      for (int y = start; y < stop; y++) {
+        int row = y * srcW;
+        int t = y * dstW * 4;
+        for (int x = 0; x < dstW; x++) {
+          float a = 0, r = 0, g = 0, b = 0;
+          int read = row + across.start[x];
+          int w = x * across.stride;
+          int wstop = w + across.count[x];
+          if (premultiply) {
+            while (w < wstop) {
+              int c = pixels[read++];
+              float wa = (c >>> 24) * across.weights[w++];
+              a += wa;
+              r += wa * ((c >> 16) & 0xff);
+              g += wa * ((c >> 8) & 0xff);
+              b += wa * (c & 0xff);
+            }
+          } else {
+            while (w < wstop) {
+              int c = pixels[read++];
+              float weight = across.weights[w++];
+              r += weight * ((c >> 16) & 0xff);
+              g += weight * ((c >> 8) & 0xff);
+              b += weight * (c & 0xff);
+            }
+          }
+          temp[t++] = a;
+          temp[t++] = r;
+          temp[t++] = g;
+          temp[t++] = b;
+        }
+      }
+    });
+
+    // vertical pass, a whole row at a time so that temp is read in order
+    int[] outgoing = new int[dstW * dstH];
+    PixelBands.run(dstH, dstW * down.stride, (start, stop) -> {
+      float[] sum = new float[dstW * 4];
+      for (int y = start; y < stop; y++) {
+        Arrays.fill(sum, 0);
+        int w = y * down.stride;
+        int read = down.start[y] * dstW * 4;
+        for (int k = 0; k < down.count[y]; k++) {
+          float weight = down.weights[w + k];
+          for (int i = 0; i < sum.length; i++) {
+            sum[i] += weight * temp[read + i];
+          }
+          read += sum.length;
+        }
+        int index = y * dstW;
+        for (int i = 0; i < sum.length; i += 4) {
+          outgoing[index++] = pack(sum[i], sum[i+1], sum[i+2], sum[i+3], format);
+        }
+      }
+    });
+    return outgoing;
+  }
+
+
+  /**
+   * The same filters for the float values of a PImageFloat, four per
+   * pixel with straight alpha. Nothing is clamped at the top, but the
+   * negative lobes of BICUBIC and LANCZOS aren't let below zero.
+   */
+  static float[] resize(float[] values, int srcW, int srcH,
+                        int dstW, int dstH, int filter) {
+    if (dstW == srcW && dstH == srcH) {
+      return values.clone();
+    }
+    if (filter == NEAREST) {
+      float[] outgoing = new float[dstW * dstH * 4];
+      PixelBands.run(dstH, dstW, (start, stop) -> {
+        for (int y = start; y < stop; y++) {
+          int row = Math.min((int) ((y + 0.5) * srcH / dstH), srcH - 1) * srcW;
+          int o = y * dstW * 4;
+          for (int x = 0; x < dstW; x++) {
+            int column = Math.min((int) ((x + 0.5) * srcW / dstW), srcW - 1);
+            System.arraycopy(values, (row + column) * 4, outgoing, o, 4);
+            o += 4;
+          }
+        }
+      });
+      return outgoing;
+    }
+    if (filter != BILINEAR && filter != BICUBIC && filter != LANCZOS) {
+      throw new IllegalArgumentException("Use NEAREST, BILINEAR, BICUBIC, " +
+                                         "or LANCZOS with resize()");
+    }
+
+    Weights across = new Weights(srcW, dstW, filter);
+    Weights down = new Weights(srcH, dstH, filter);
+
+    // horizontal pass with alpha premultiplied, as for ARGB above
+    float[] temp = new float[dstW * srcH * 4];
+    PixelBands.run(srcH, dstW * across.stride, (start, stop) -> {
+      for (int y = start; y < stop; y++) {
+        int row = y * srcW;
+        int t = y * dstW * 4;
+        for (int x = 0; x < dstW; x++) {
+          float a = 0, r = 0, g = 0, b = 0;
+          int read = (row + across.start[x]) * 4;
+          int w = x * across.stride;
+          int wstop = w + across.count[x];
+          while (w < wstop) {
+            float wa = values[read + 3] * across.weights[w++];
+            r += wa * values[read];
+            g += wa * values[read + 1];
+            b += wa * values[read + 2];
+            a += wa;
+            read += 4;
+          }
+          temp[t++] = r;
+          temp[t++] = g;
+          temp[t++] = b;
+          temp[t++] = a;
+        }
+      }
+    });
+
+    float[] outgoing = new float[dstW * dstH * 4];
+    PixelBands.run(dstH, dstW * down.stride, (start, stop) -> {
+      float[] sum = new float[dstW * 4];
+      for (int y = start; y < stop; y++) {
+        Arrays.fill(sum, 0);
+        int w = y * down.stride;
+        int read = down.start[y] * dstW * 4;
+        for (int k = 0; k < down.count[y]; k++) {
+          float weight = down.weights[w + k];
+          for (int i = 0; i < sum.length; i++) {
+            sum[i] += weight * temp[read + i];
+          }
+          read += sum.length;
+        }
+        int o = y * dstW * 4;
+        for (int i = 0; i < sum.length; i += 4) {
+          float a = sum[i + 3];
+          if (a > 0) {
+            outgoing[o] = Math.max(0, sum[i] / a);
+            outgoing[o + 1] = Math.max(0, sum[i + 1] / a);
+            outgoing[o + 2] = Math.max(0, sum[i + 2] / a);
+            outgoing[o + 3] = Math.min(1, a);
+          }
+          o += 4;
+        }
+      }
+    });
+    return outgoing;
+  }
+
+
+  static private int pack(float a, float r, float g, float b, int format) {
+    if (format == ALPHA) {
+      return clamp(b);
+
+    } else if (format == ARGB) {
+      if (a <= 0) {
+        return 0;
+      }
+      // colors were weighted by alpha, so divide it back out
+      return clamp(a) << 24 |
+        clamp(r / a) << 16 | clamp(g / a) << 8 | clamp(b / a);
+    }
+    return 0xff000000 | clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+  }
+
+
+  static private int clamp(float value) {
+    int v = (int) (value + 0.5f);
+    return (v < 0) ? 0 : ((v > 255) ? 255 : v);
+  }
+
+
+  static private int[] nearest(int[] pixels, int srcW, int srcH,
+                               int dstW, int dstH) {
+    int[] columns = new int[dstW];
+    for (int x = 0; x < dstW; x++) {
+      columns[x] = Math.min((int) ((x + 0.5) * srcW / dstW), srcW - 1);
+    }
+    int[] outgoing = new int[dstW * dstH];
+    PixelBands.run(dstH, dstW, (start, stop) -> {
+      for (int y = start; y < stop; y++) {
+        int row = Math.min((int) ((y + 0.5) * srcH / dstH), srcH - 1) * srcW;
+        int index = y * dstW;
+        for (int x = 0; x < dstW; x++) {
+          outgoing[index++] = pixels[row + columns[x]];
+        }
+      }
+    });
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Which source pixels contribute to each output pixel along one axis,
+   * and by how much. Weights for output i start at i * stride.
+   */
+  static private class Weights {
+    final int[] start;
+    final int[] count;
+    final float[] weights;
+    final int stride;
+
+
+    Weights(int srcSize, int dstSize, int filter) {
+      double scale = (double) srcSize / dstSize;
+      double stretch = Math.max(scale, 1);
+      double support = radius(filter) * stretch;
+      stride = (int) Math.ceil(support * 2) + 3;
+
+      start = new int[dstSize];
+      count = new int[dstSize];
+      weights = new float[dstSize * stride];
+      double[] w = new double[stride];
+
+      for (int i = 0; i < dstSize; i++) {
+        // pixel j covers j..j+1, so its center is at j + 0.5
+        double center = (i + 0.5) * scale;
+        int left = Math.max(0, (int) Math.floor(center - support));
+        int right = Math.min(srcSize - 1, (int) Math.ceil(center + support));
+        int n = 0;
+        double total = 0;
+        for (int j = left; j <= right; j++) {
+          double k = kernel((j + 0.5 - center) / stretch, filter);
+          w[n++] = k;
+          total += k;
+        }
+        // drop the zero weights at either end
+        int first = 0;
+        while (first < n - 1 && w[first] == 0) first++;
+        while (n > first + 1 && w[n - 1] == 0) n--;
+
+        if (total == 0) {
+          // can't happen with these filters, but don't divide by zero
+          start[i] = Math.min((int) center, srcSize - 1);
+          count[i] = 1;
+          weights[i * stride] = 1;
+
+        } else {
+          start[i] = left + first;
+          count[i] = n - first;
+          for (int k = first; k < n; k++) {
+            weights[i * stride + k - first] = (float) (w[k] / total);
+          }
+        }
+      }
+    }
+  }
+
+
+  static private double radius(int filter) {
+    switch (filter) {
+      case BICUBIC: return 2;
+      case LANCZOS: return 3;
+    }
+    return 1;  // BILINEAR
+  }
+
+
+  static private double kernel(double x, int filter) {
+    x = Math.abs(x);
+    switch (filter) {
+      case BICUBIC:
+        // Catmull-Rom, the usual "bicubic" (a = -0.5)
+        if (x < 1) return (1.5 * x - 2.5) * x * x + 1;
+        if (x < 2) return ((-0.5 * x + 2.5) * x - 4) * x + 2;
+        return 0;
+
+      case LANCZOS:
+        if (x == 0) return 1;
+        if (x >= 3) return 0;
+        double px = Math.PI * x;
+        return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+    }
+    return (x < 1) ? 1 - x : 0;  // BILINEAR
+  }
+}
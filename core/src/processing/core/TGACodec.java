@@ -0,0 +1,265 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+
+/**
+ * Reads and writes Targa images for loadImage() and save().
+ * <p>
+ * Reads uncompressed and RLE files with 8-bit gray, or 15-, 16-, 24-,
+ * or 32-bit color, from either corner. Uncompressed rows are decoded in
+ * parallel straight from the buffer. Writing is always RLE, and builds
+ * each packet in a buffer rather than going a byte at a time.
+ */
+final class TGACodec implements PConstants {
+  static final int HEADER = 18;
+
+
+  private TGACodec() { }
+
+
+  static PImage read(ByteBuffer data) throws IOException {
+    ByteBuffer source = data.duplicate();
+    if (source.limit() < HEADER) {
+      throw new IOException("Not a .tga file");
+    }
+    int idLength = source.get(0) & 0xff;
+    int mapType = source.get(1) & 0xff;
+    int type = source.get(2) & 0xff;
+    int depth = source.get(16) & 0xff;
+    int descriptor = source.get(17) & 0xff;
+    int alphaBits = descriptor & 0x0f;
+    boolean topDown = (descriptor & 0x20) != 0;
+    boolean rle = (type == 10 || type == 11);
+
+    int format = (mapType == 0) ? format(type, depth, alphaBits) : 0;
+    if (format == 0) {
+      throw new IOException("Unknown .tga file format");
+    }
+
+    int w = (source.get(12) & 0xff) | (source.get(13) & 0xff) << 8;
+    int h = (source.get(14) & 0xff) | (source.get(15) & 0xff) << 8;
+    int bytes = (depth + 7) / 8;
+    int start = HEADER + idLength;
+    PImage outgoing = new PImage(w, h, format);
+    int[] px = outgoing.pixels;
+
+    if (!rle) {
+      if (start + (long) w * h * bytes > source.limit()) {
+        throw new IOException(".tga file is cut short");
+      }
+      PixelBands.run(h, w, (first, last) -> {
+        ByteBuffer rows = data.duplicate();
+        for (int y = first; y < last; y++) {
+          int index = (topDown ? y : h - 1 - y) * w;
+          int position = start + y * w * bytes;
+          for (int x = 0; x < w; x++) {
+            px[index++] = pixel(rows, position, depth, format);
+            position += bytes;
+          }
+        }
+      });
+
+    } else {
+      int position = start;
+      int limit = source.limit();
+      int index = 0;
+      while (index < px.length && position < limit) {
+        int packet = source.get(position++) & 0xff;
+        int count = Math.min((packet & 0x7f) + 1, px.length - index);
+        if (position + ((packet & 0x80) != 0 ? 1 : count) * bytes > limit) {
+          break;  // cut short, leave the rest black
+        }
+        if ((packet & 0x80) != 0) {
+          int pixel = pixel(source, position, depth, format);
+          position += bytes;
+          for (int i = 0; i < count; i++) {
+            px[index++] = pixel;
+          }
+        } else {
+          for (int i = 0; i < count; i++) {
+            px[index++] = pixel(source, position, depth, format);
+            position += bytes;
+          }
+        }
+      }
+      if (!topDown) {
+        int[] temp = new int[w];
+        for (int y = 0; y < h/2; y++) {
+          int z = (h-1) - y;
+          System.arraycopy(px, y*w, temp, 0, w);
+          System.arraycopy(px, z*w, px, y*w, w);
+          System.arraycopy(temp, 0, px, z*w, w);
+        }
+      }
+    }
+    return outgoing;
+  }
+
+
+  /** The PImage format for a file, or 0 if it can't be read. */
+  static private int format(int type, int depth, int alphaBits) {
+    if (type == 3 || type == 11) {  // gray, RLE or not
+      return (depth == 8) ? ALPHA : 0;
+
+    } else if (type == 2 || type == 10) {  // color, RLE or not
+      if (depth == 24 || depth == 15) {
+        return RGB;
+      } else if (depth == 32 || depth == 16) {
+        return (alphaBits == 0) ? RGB : ARGB;
+      }
+    }
+    return 0;
+  }
+
+
+  /** Read one pixel, which is stored as BGR(A), or 5 bits per color. */
+  static private int pixel(ByteBuffer source, int position,
+                           int depth, int format) {
+    switch (depth) {
+    case 8:
+      return source.get(position) & 0xff;
+
+    case 15:
+    case 16:
+      int c = (source.get(position) & 0xff) | (source.get(position + 1) & 0xff) << 8;
+      int r = (c >> 10) & 0x1f;
+      int g = (c >> 5) & 0x1f;
+      int b = c & 0x1f;
+      int a = (format == ARGB && (c & 0x8000) == 0) ? 0 : 0xff;
+      return a << 24 |
+        ((r << 3) | (r >> 2)) << 16 | ((g << 3) | (g >> 2)) << 8 | ((b << 3) | (b >> 2));
+
+    case 24:
+      return 0xff000000 |
+        (source.get(position + 2) & 0xff) << 16 |
+        (source.get(position + 1) & 0xff) << 8 |
+        (source.get(position) & 0xff);
+    }
+    int alpha = (format == ARGB) ? (source.get(position + 3) & 0xff) : 0xff;
+    return alpha << 24 |
+      (source.get(position + 2) & 0xff) << 16 |
+      (source.get(position + 1) & 0xff) << 8 |
+      (source.get(position) & 0xff);
+  }
+
+
+  /**
+   * Write an RLE Targa file, top row first. RGB images are 24-bit,
+   * ARGB 32-bit, and ALPHA 8-bit gray (from the low byte of each pixel).
+   */
+  static void write(OutputStream output, int[] pixels, int width, int height,
+                    int format) throws IOException {
+    byte[] header = new byte[HEADER];
+    int bytes;
+    if (format == ALPHA) {
+      header[2] = 0x0B;
+      header[16] = 0x08;
+      header[17] = 0x28;
+      bytes = 1;
+
+    } else if (format == RGB) {
+      header[2] = 0x0A;
+      header[16] = 24;
+      header[17] = 0x20;
+      bytes = 3;
+
+    } else if (format == ARGB) {
+      header[2] = 0x0A;
+      header[16] = 32;
+      header[17] = 0x28;
+      bytes = 4;
+
+    } else {
+      throw new RuntimeException("Image format not recognized inside save()");
+    }
+    // set image dimensions lo-hi byte order
+    header[12] = (byte) (width & 0xff);
+    header[13] = (byte) (width >> 8);
+    header[14] = (byte) (height & 0xff);
+    header[15] = (byte) (height >> 8);
+    output.write(header);
+
+    // compare only the bytes that end up in the file
+    int mask = (format == ALPHA) ? 0xff : ((format == RGB) ? 0xffffff : -1);
+    int count = width * height;
+    byte[] out = new byte[64 * 1024];
+    int o = 0;
+    int index = 0;
+
+    while (index < count) {
+      if (o > out.length - (1 + 128 * bytes)) {
+        output.write(out, 0, o);
+        o = 0;
+      }
+      int col = pixels[index] & mask;
+      int run = 1;
+      while (index + run < count && run < 128 &&
+             (pixels[index + run] & mask) == col) {
+        run++;
+      }
+      if (run > 1) {
+        out[o++] = (byte) (0x80 | (run - 1));
+        o = put(out, o, col, bytes);
+        index += run;
+
+      } else {
+        // raw pixels up to the next run of three, which is worth a packet
+        run = 1;
+        while (index + run < count && run < 128) {
+          int next = pixels[index + run] & mask;
+          if (run >= 2 && next == col &&
+              (pixels[index + run - 2] & mask) == col) {
+            run -= 2;
+            break;
+          }
+          col = next;
+          run++;
+        }
+        out[o++] = (byte) (run - 1);
+        for (int i = 0; i < run; i++) {
+          o = put(out, o, pixels[index + i], bytes);
+        }
+        index += run;
+      }
+    }
+    output.write(out, 0, o);
+    output.flush();
+  }
+
+
+  static private int put(byte[] out, int o, int col, int bytes) {
+    out[o++] = (byte) col;
+    if (bytes > 1) {
+      out[o++] = (byte) (col >> 8);
+      out[o++] = (byte) (col >> 16);
+      if (bytes == 4) {
+        out[o++] = (byte) (col >>> 24);
+      }
+    }
+    return o;
+  }
+}
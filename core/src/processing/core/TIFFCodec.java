@@ -0,0 +1,905 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.core;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+
+/**
+ * Reads and writes baseline TIFF images for loadImage() and save().
+ * <p>
+ * Reading handles strips of 8- or 16-bit gray, gray with alpha, RGB, or
+ * RGBA samples, in either byte order, uncompressed or compressed with
+ * PackBits or LZW (with or without the horizontal predictor). That
+ * covers what most renderers and compositing apps write. 16-bit samples
+ * are rounded to 8 bits for a PImage, or kept whole as floats for a
+ * PImageFloat, and premultiplied alpha is divided back out.
+ * Tiled, planar, and floating point files are turned down with an error.
+ * <p>
+ * The strips are decoded in parallel straight from the buffer, which is
+ * usually the file mapped into memory, so uncompressed images are never
+ * copied anywhere but pixels[].
+ */
+final class TIFFCodec implements PConstants {
+  // values for the Compression tag
+  static final int NONE = 1;
+  static final int LZW = 5;
+  static final int PACKBITS = 32773;
+
+  // tags that are read or written
+  static final int IMAGE_WIDTH = 256;
+  static final int IMAGE_LENGTH = 257;
+  static final int BITS_PER_SAMPLE = 258;
+  static final int COMPRESSION = 259;
+  static final int PHOTOMETRIC = 262;
+  static final int STRIP_OFFSETS = 273;
+  static final int SAMPLES_PER_PIXEL = 277;
+  static final int ROWS_PER_STRIP = 278;
+  static final int STRIP_BYTE_COUNTS = 279;
+  static final int PLANAR_CONFIG = 284;
+  static final int PREDICTOR = 317;
+  static final int TILE_WIDTH = 322;
+  static final int EXTRA_SAMPLES = 338;
+  static final int SAMPLE_FORMAT = 339;
+
+  // field types
+  static final int BYTE = 1;
+  static final int SHORT = 3;
+  static final int LONG = 4;
+
+  static final int CLEAR_CODE = 256;
+  static final int EOI_CODE = 257;
+  static final int FIRST_CODE = 258;
+  static final int MAX_CODE = 4095;
+
+  /** Uncompressed size of the strips that are written. */
+  static final int STRIP_SIZE = 64 * 1024;
+
+
+  private TIFFCodec() { }
+
+
+  /**
+   * Everything needed from the first image directory of a file.
+   */
+  static class Layout {
+    ByteOrder order;
+    int width;
+    int height;
+    int bits;
+    int samples;
+    int compression = NONE;
+    int photometric = -1;
+    int predictor = 1;
+    int rowsPerStrip;
+    int[] offsets;
+    int[] counts;
+    boolean alpha;
+    boolean premultiplied;
+
+    int rowBytes() {
+      return width * samples * (bits / 8);
+    }
+  }
+
+
+  static PImage read(ByteBuffer data) throws IOException {
+    Layout layout = layout(data);
+    PImage image = new PImage(layout.width, layout.height,
+                              layout.alpha ? ARGB : RGB);
+    int[] pixels = image.pixels;
+    decode(data, layout, (source, position, index, count) ->
+           convert(layout, source, position, pixels, index, count));
+    return image;
+  }
+
+
+  /**
+   * Read a TIFF with every sample kept as a float from 0 to 1, so that
+   * 16-bit files don't lose anything.
+   */
+  static PImageFloat readFloat(ByteBuffer data) throws IOException {
+    Layout layout = layout(data);
+    PImageFloat image = new PImageFloat(layout.width, layout.height);
+    float[] values = image.values;
+    decode(data, layout, (source, position, index, count) ->
+           convert(layout, source, position, values, index, count));
+    image.updatePixels();
+    return image;
+  }
+
+
+  /** Takes decoded rows of samples, count pixels starting at index. */
+  interface Rows {
+    void convert(byte[] source, int position, int index, int count);
+  }
+
+
+  static private void decode(ByteBuffer data, Layout layout, Rows rows) {
+    int rowBytes = layout.rowBytes();
+    int rowsPerStrip = layout.rowsPerStrip;
+
+    PixelBands.run(layout.offsets.length, rowsPerStrip * layout.width, (start, stop) -> {
+      ByteBuffer source = data.duplicate().order(layout.order);
+      byte[] scratch = null;
+      for (int strip = start; strip < stop; strip++) {
+        int row = strip * rowsPerStrip;
+        int count = Math.min(rowsPerStrip, layout.height - row);
+        if (count <= 0) break;
+        int offset = layout.offsets[strip];
+        int length = count * rowBytes;
+
+        if (layout.compression == NONE && layout.predictor == 1) {
+          if (offset + length > source.limit()) {
+            throw new RuntimeException("TIFF file is cut short");
+          }
+          int index = row * layout.width;
+          if (source.hasArray()) {
+            rows.convert(source.array(), source.arrayOffset() + offset,
+                         index, count * layout.width);
+          } else {
+            // a mapped file, so copy out a row at a time
+            if (scratch == null) {
+              scratch = new byte[rowBytes];
+            }
+            source.position(offset);
+            for (int y = 0; y < count; y++) {
+              source.get(scratch, 0, rowBytes);
+              rows.convert(scratch, 0, index, layout.width);
+              index += layout.width;
+            }
+          }
+
+        } else {
+          if (scratch == null || scratch.length < length) {
+            scratch = new byte[length];
+          }
+          int end = Math.min(source.limit(), offset + layout.counts[strip]);
+          int got;
+          if (layout.compression == LZW) {
+            got = decodeLZW(source, offset, end, scratch, length);
+          } else if (layout.compression == PACKBITS) {
+            got = decodePackBits(source, offset, end, scratch, length);
+          } else {
+            got = Math.min(length, end - offset);
+            source.position(offset);
+            source.get(scratch, 0, got);
+          }
+          // a short strip leaves the rest of it black, as other readers do
+          Arrays.fill(scratch, got, length, (byte) 0);
+          if (layout.predictor == 2) {
+            undoPredictor(layout, scratch, count);
+          }
+          rows.convert(scratch, 0, row * layout.width, count * layout.width);
+        }
+      }
+    });
+  }
+
+
+  static Layout layout(ByteBuffer data) throws IOException {
+    ByteBuffer buffer = data.duplicate();
+    if (buffer.limit() < 8) {
+      throw new IOException("Not a TIFF file");
+    }
+    Layout layout = new Layout();
+    int b0 = buffer.get(0), b1 = buffer.get(1);
+    if (b0 == 'I' && b1 == 'I') {
+      layout.order = ByteOrder.LITTLE_ENDIAN;
+    } else if (b0 == 'M' && b1 == 'M') {
+      layout.order = ByteOrder.BIG_ENDIAN;
+    } else {
+      throw new IOException("Not a TIFF file");
+    }
+    buffer.order(layout.order);
+    if (buffer.getShort(2) != 42) {
+      throw new IOException("Not a TIFF file (BigTIFF isn't supported)");
+    }
+
+    int directory = buffer.getInt(4);
+    int entries = buffer.getShort(directory) & 0xffff;
+    int[] bits = { 1 };
+    int[] extra = new int[0];
+    int sampleFormat = 1;
+    int planar = 1;
+    layout.samples = 1;
+
+    for (int i = 0; i < entries; i++) {
+      int entry = directory + 2 + i*12;
+      int tag = buffer.getShort(entry) & 0xffff;
+      int[] value = values(buffer, entry);
+      switch (tag) {
+        case IMAGE_WIDTH: layout.width = value[0]; break;
+        case IMAGE_LENGTH: layout.height = value[0]; break;
+        case BITS_PER_SAMPLE: bits = value; break;
+        case COMPRESSION: layout.compression = value[0]; break;
+        case PHOTOMETRIC: layout.photometric = value[0]; break;
+        case STRIP_OFFSETS: layout.offsets = value; break;
+        case SAMPLES_PER_PIXEL: layout.samples = value[0]; break;
+        case ROWS_PER_STRIP: layout.rowsPerStrip = value[0]; break;
+        case STRIP_BYTE_COUNTS: layout.counts = value; break;
+        case PLANAR_CONFIG: planar = value[0]; break;
+        case PREDICTOR: layout.predictor = value[0]; break;
+        case TILE_WIDTH: throw new IOException("Tiled TIFF images aren't supported");
+        case EXTRA_SAMPLES: extra = value; break;
+        case SAMPLE_FORMAT: sampleFormat = value[0]; break;
+      }
+    }
+
+    layout.bits = bits[0];
+    for (int b : bits) {
+      if (b != layout.bits) {
+        throw new IOException("TIFF images with different sizes of samples " +
+                              "aren't supported");
+      }
+    }
+    if (layout.bits != 8 && layout.bits != 16) {
+      throw new IOException(layout.bits + "-bit TIFF images aren't supported");
+    }
+    if (sampleFormat != 1) {
+      throw new IOException("Only TIFF images with integer samples are supported");
+    }
+    if (planar != 1) {
+      throw new IOException("Planar TIFF images aren't supported");
+    }
+    if (layout.compression != NONE &&
+        layout.compression != LZW &&
+        layout.compression != PACKBITS) {
+      throw new IOException("TIFF compression type " + layout.compression +
+                            " isn't supported, use none, LZW, or PackBits");
+    }
+    if (layout.predictor != 1 && layout.predictor != 2) {
+      throw new IOException("TIFF predictor " + layout.predictor + " isn't supported");
+    }
+    if (layout.width <= 0 || layout.height <= 0 || layout.offsets == null) {
+      throw new IOException("TIFF file is missing its size or image data");
+    }
+    if (layout.photometric == -1) {
+      layout.photometric = (layout.samples >= 3) ? 2 : 1;
+    }
+
+    boolean rgb = (layout.photometric == 2);
+    int colors = rgb ? 3 : 1;
+    if (layout.photometric > 2 || layout.samples < colors ||
+        layout.samples > colors + 1) {
+      throw new IOException("Only gray and RGB TIFF images are supported");
+    }
+    layout.alpha = (layout.samples == colors + 1);
+    layout.premultiplied = layout.alpha && extra.length > 0 && extra[0] == 1;
+
+    if (layout.rowsPerStrip <= 0 || layout.rowsPerStrip > layout.height) {
+      layout.rowsPerStrip = layout.height;
+    }
+    int strips = (layout.height + layout.rowsPerStrip - 1) / layout.rowsPerStrip;
+    if (layout.offsets.length < strips) {
+      throw new IOException("TIFF file is missing some of its strips");
+    }
+    if (layout.counts == null) {
+      if (layout.compression != NONE || strips != 1) {
+        throw new IOException("TIFF file is missing its strip sizes");
+      }
+      layout.counts = new int[] { layout.height * layout.rowBytes() };
+    }
+    layout.offsets = Arrays.copyOf(layout.offsets, strips);
+    return layout;
+  }
+
+
+  /** Read the values of a directory entry as ints. */
+  static private int[] values(ByteBuffer buffer, int entry) {
+    int type = buffer.getShort(entry + 2) & 0xffff;
+    int count = buffer.getInt(entry + 4);
+    int size = (type == SHORT) ? 2 : ((type == LONG) ? 4 : 1);
+    int position = entry + 8;
+    if ((long) count * size > 4) {
+      position = buffer.getInt(position);
+    }
+    int[] value = new int[Math.max(1, count)];
+    for (int i = 0; i < count; i++) {
+      if (type == SHORT) {
+        value[i] = buffer.getShort(position + i*2) & 0xffff;
+      } else if (type == LONG) {
+        value[i] = buffer.getInt(position + i*4);
+      } else {
+        value[i] = buffer.get(position + i) & 0xff;
+      }
+    }
+    return value;
+  }
+
+
+  /**
+   * Turn rows of samples into pixels. Gray is spread across red, green,
+   * and blue, and 16-bit samples are rounded to the nearest 8-bit value.
+   */
+  static private void convert(Layout layout, byte[] source, int position,
+                              int[] pixels, int index, int count) {
+    int samples = layout.samples;
+    boolean rgb = (layout.photometric == 2);
+    boolean invert = (layout.photometric == 0);  // WhiteIsZero
+
+    if (layout.bits == 8 && rgb && samples == 3) {
+      // the common case, kept simple so that it runs as fast as it can
+      for (int i = 0; i < count; i++) {
+        pixels[index++] = 0xff000000 |
+          (source[position] & 0xff) << 16 |
+          (source[position + 1] & 0xff) << 8 |
+          (source[position + 2] & 0xff);
+        position += 3;
+      }
+      return;
+    }
+
+    boolean little = (layout.order == ByteOrder.LITTLE_ENDIAN);
+    int step = (layout.bits == 16) ? 2 : 1;
+    for (int i = 0; i < count; i++) {
+      int r = sample(source, position, step, little);
+      int g = r, b = r, a = 255;
+      if (rgb) {
+        g = sample(source, position + step, step, little);
+        b = sample(source, position + 2*step, step, little);
+      } else if (invert) {
+        r = g = b = 255 - r;
+      }
+      if (layout.alpha) {
+        a = sample(source, position + (samples - 1)*step, step, little);
+        if (layout.premultiplied && a != 255) {
+          if (a == 0) {
+            r = g = b = 0;
+          } else {
+            r = Math.min(255, (r * 255 + a/2) / a);
+            g = Math.min(255, (g * 255 + a/2) / a);
+            b = Math.min(255, (b * 255 + a/2) / a);
+          }
+        }
+      }
+      pixels[index++] = a << 24 | r << 16 | g << 8 | b;
+      position += samples * step;
+    }
+  }
+
+
+  static private int sample(byte[] source, int position, int step,
+                            boolean little) {
+    if (step == 1) {
+      return source[position] & 0xff;
+    }
+    // divide by 257 and round, which maps 0xffff to 0xff
+    return (get16(source, position, little) * 255 + 32767) / 65535;
+  }
+
+
+  /**
+   * Turn rows of samples into four floats per pixel, red, green, blue,
+   * and alpha, from 0 to 1.
+   */
+  static private void convert(Layout layout, byte[] source, int position,
+                              float[] values, int index, int count) {
+    int samples = layout.samples;
+    boolean rgb = (layout.photometric == 2);
+    boolean invert = (layout.photometric == 0);
+    boolean little = (layout.order == ByteOrder.LITTLE_ENDIAN);
+    int step = (layout.bits == 16) ? 2 : 1;
+    float scale = (step == 2) ? 1 / 65535f : 1 / 255f;
+    int v = index * 4;
+    for (int i = 0; i < count; i++) {
+      float r = raw(source, position, step, little) * scale;
+      float g = r, b = r, a = 1;
+      if (rgb) {
+        g = raw(source, position + step, step, little) * scale;
+        b = raw(source, position + 2*step, step, little) * scale;
+      } else if (invert) {
+        r = g = b = 1 - r;
+      }
+      if (layout.alpha) {
+        a = raw(source, position + (samples - 1)*step, step, little) * scale;
+        if (layout.premultiplied && a != 1) {
+          if (a == 0) {
+            r = g = b = 0;
+          } else {
+            r /= a;
+            g /= a;
+            b /= a;
+          }
+        }
+      }
+      values[v++] = r;
+      values[v++] = g;
+      values[v++] = b;
+      values[v++] = a;
+      position += samples * step;
+    }
+  }
+
+
+  static private int raw(byte[] source, int position, int step,
+                         boolean little) {
+    return (step == 1) ? source[position] & 0xff : get16(source, position, little);
+  }
+
+
+  static private void undoPredictor(Layout layout, byte[] data, int rows) {
+    int samples = layout.samples;
+    int rowBytes = layout.rowBytes();
+    boolean little = (layout.order == ByteOrder.LITTLE_ENDIAN);
+    for (int y = 0; y < rows; y++) {
+      int start = y * rowBytes;
+      if (layout.bits == 8) {
+        for (int i = start + samples; i < start + rowBytes; i++) {
+          data[i] += data[i - samples];
+        }
+      } else {
+        int stride = samples * 2;
+        for (int i = start + stride; i < start + rowBytes; i += 2) {
+          int sum = get16(data, i, little) + get16(data, i - stride, little);
+          put16(data, i, sum, little);
+        }
+      }
+    }
+  }
+
+
+  static private int get16(byte[] data, int i, boolean little) {
+    return little ?
+      (data[i] & 0xff) | (data[i + 1] & 0xff) << 8 :
+      (data[i] & 0xff) << 8 | (data[i + 1] & 0xff);
+  }
+
+
+  static private void put16(byte[] data, int i, int value, boolean little) {
+    data[i + (little ? 0 : 1)] = (byte) value;
+    data[i + (little ? 1 : 0)] = (byte) (value >> 8);
+  }
+
+
+  /**
+   * Decompress a strip of PackBits data.
+   * @return number of bytes written to out
+   */
+  static int decodePackBits(ByteBuffer source, int position, int end,
+                            byte[] out, int length) {
+    int o = 0;
+    while (o < length && position < end) {
+      int n = source.get(position++);
+      if (n >= 0) {  // copy the next n+1 bytes
+        int count = Math.min(Math.min(n + 1, length - o), end - position);
+        source.position(position);
+        source.get(out, o, count);
+        position += n + 1;
+        o += count;
+
+      } else if (n != -128) {  // repeat the next byte 1-n times
+        if (position >= end) break;
+        int count = Math.min(1 - n, length - o);
+        Arrays.fill(out, o, o + count, source.get(position++));
+        o += count;
+      }
+    }
+    return o;
+  }
+
+
+  /**
+   * Decompress a strip of LZW data. Each code stands for a string that's
+   * already somewhere in the output, so the table only needs to hold where
+   * that is and how long it is, and strings are copied out of the output.
+   * @return number of bytes written to out
+   */
+  static int decodeLZW(ByteBuffer source, int position, int end,
+                       byte[] out, int length) {
+    int[] start = new int[MAX_CODE + 1];
+    int[] size = new int[MAX_CODE + 1];
+    int next = FIRST_CODE;
+    int width = 9;
+    int buffer = 0;
+    int bits = 0;
+    int o = 0;
+    int previous = -1;
+    int previousStart = 0;
+
+    while (o < length) {
+      while (bits < width) {
+        if (position >= end) return o;
+        buffer = (buffer << 8) | (source.get(position++) & 0xff);
+        bits += 8;
+      }
+      bits -= width;
+      int code = (buffer >>> bits) & ((1 << width) - 1);
+
+      if (code == EOI_CODE) {
+        break;
+      }
+      if (code == CLEAR_CODE) {
+        next = FIRST_CODE;
+        width = 9;
+        previous = -1;
+        continue;
+      }
+
+      int here = o;
+      int previousSize = o - previousStart;
+      if (code < CLEAR_CODE) {
+        out[o++] = (byte) code;
+
+      } else if (code < next && previous != -1) {
+        int count = Math.min(size[code], length - o);
+        System.arraycopy(out, start[code], out, o, count);
+        o += count;
+
+      } else if (code == next && previous != -1) {
+        // the string for the previous code, plus its own first byte
+        int count = Math.min(previousSize, length - o);
+        System.arraycopy(out, previousStart, out, o, count);
+        o += count;
+        if (o < length) {
+          out[o++] = out[previousStart];
+        }
+
+      } else {
+        throw new RuntimeException("Bad LZW code in TIFF file");
+      }
+
+      if (previous != -1 && next <= MAX_CODE) {
+        // the previous string plus the first byte of this one, which
+        // is exactly what follows it in the output
+        start[next] = previousStart;
+        size[next] = previousSize + 1;
+        next++;
+      }
+      // TIFF switches to wider codes one code early
+      if (next >= (1 << width) - 1 && width < 12) {
+        width++;
+      }
+      previous = code;
+      previousStart = here;
+    }
+    return o;
+  }
+
+
+  //////////////////////////////////////////////////////////////
+
+
+  /**
+   * Write pixels as a TIFF file: RGB as 8-bit RGB, ARGB with an extra
+   * unassociated alpha sample, and ALPHA as 8-bit gray.
+   *
+   * @param compression NONE, LZW, or PACKBITS
+   */
+  static void write(OutputStream output, int[] pixels, int width, int height,
+                    int format, int compression) throws IOException {
+    int samples = (format == ARGB) ? 4 : ((format == ALPHA) ? 1 : 3);
+    write(output, width, height, samples, 8, compression,
+          (row, rows, raw) -> unpack(pixels, row * width, rows * width, samples, raw));
+  }
+
+
+  /**
+   * Write float values (four per pixel, 0 to 1) as a 16-bit TIFF, RGB,
+   * or RGBA with unassociated alpha. Values outside 0 to 1 are clamped.
+   */
+  static void write(OutputStream output, float[] values, int width, int height,
+                    boolean alpha, int compression) throws IOException {
+    int samples = alpha ? 4 : 3;
+    write(output, width, height, samples, 16, compression,
+          (row, rows, raw) -> unpack(values, row * width, rows * width, samples, raw));
+  }
+
+
+  /** Fills raw with the big-endian samples for a run of rows. */
+  interface Strip {
+    void unpack(int row, int rows, byte[] raw);
+  }
+
+
+  static private void write(OutputStream output, int width, int height,
+                            int samples, int bits, int compression,
+                            Strip source) throws IOException {
+    if (compression != NONE && compression != LZW && compression != PACKBITS) {
+      throw new IllegalArgumentException("Use NONE, LZW, or PACKBITS");
+    }
+    int bytes = bits / 8;
+    int rowBytes = width * samples * bytes;
+    int rowsPerStrip = Math.max(1, Math.min(height, STRIP_SIZE / Math.max(1, rowBytes)));
+    int strips = (height + rowsPerStrip - 1) / rowsPerStrip;
+
+    // compress every strip first, since the sizes go in the header
+    byte[][] packed = new byte[strips][];
+    int[] counts = new int[strips];
+    PixelBands.run(strips, rowsPerStrip * width * bytes, (start, stop) -> {
+      byte[] raw = new byte[rowsPerStrip * rowBytes];
+      for (int strip = start; strip < stop; strip++) {
+        int row = strip * rowsPerStrip;
+        int rows = Math.min(rowsPerStrip, height - row);
+        int length = rows * rowBytes;
+        if (compression == NONE) {
+          counts[strip] = length;
+          continue;
+        }
+        source.unpack(row, rows, raw);
+        if (compression == LZW) {
+          predict(raw, rows, rowBytes, samples, bytes);
+          packed[strip] = encodeLZW(raw, length);
+        } else {
+          packed[strip] = encodePackBits(raw, length, rowBytes);
+        }
+        counts[strip] = packed[strip].length;
+      }
+    });
+
+    int tags = (compression == LZW ? 11 : 10) + (samples == 4 ? 1 : 0);
+    int directory = 8;
+    int extra = directory + 2 + tags * 12 + 4;
+    int bitsAt = extra;
+    extra += (samples > 2) ? samples * 2 : 0;
+    int offsetsAt = extra;
+    extra += (strips > 1) ? strips * 4 : 0;
+    int countsAt = extra;
+    extra += (strips > 1) ? strips * 4 : 0;
+
+    ByteBuffer header = ByteBuffer.allocate(extra).order(ByteOrder.BIG_ENDIAN);
+    header.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(directory);
+    header.putShort((short) tags);
+    entry(header, IMAGE_WIDTH, LONG, 1, width);
+    entry(header, IMAGE_LENGTH, LONG, 1, height);
+    entry(header, BITS_PER_SAMPLE, SHORT, samples, (samples > 2) ? bitsAt : bits);
+    entry(header, COMPRESSION, SHORT, 1, compression);
+    entry(header, PHOTOMETRIC, SHORT, 1, (samples > 2) ? 2 : 1);
+    entry(header, STRIP_OFFSETS, LONG, strips, (strips > 1) ? offsetsAt : extra);
+    entry(header, SAMPLES_PER_PIXEL, SHORT, 1, samples);
+    entry(header, ROWS_PER_STRIP, LONG, 1, rowsPerStrip);
+    entry(header, STRIP_BYTE_COUNTS, LONG, strips, (strips > 1) ? countsAt : counts[0]);
+    entry(header, PLANAR_CONFIG, SHORT, 1, 1);
+    if (compression == LZW) {
+      entry(header, PREDICTOR, SHORT, 1, 2);
+    }
+    if (samples == 4) {
+      entry(header, EXTRA_SAMPLES, SHORT, 1, 2);  // unassociated alpha
+    }
+    header.putInt(0);  // no more directories
+
+    if (samples > 2) {
+      for (int i = 0; i < samples; i++) {
+        header.putShort((short) bits);
+      }
+    }
+    if (strips > 1) {
+      int offset = extra;
+      for (int i = 0; i < strips; i++) {
+        header.putInt(offset);
+        offset += counts[i];
+      }
+      for (int i = 0; i < strips; i++) {
+        header.putInt(counts[i]);
+      }
+    }
+    output.write(header.array());
+
+    if (compression == NONE) {
+      byte[] raw = new byte[rowsPerStrip * rowBytes];
+      for (int strip = 0; strip < strips; strip++) {
+        int row = strip * rowsPerStrip;
+        int rows = Math.min(rowsPerStrip, height - row);
+        source.unpack(row, rows, raw);
+        output.write(raw, 0, rows * rowBytes);
+      }
+    } else {
+      for (byte[] strip : packed) {
+        output.write(strip);
+      }
+    }
+    output.flush();
+  }
+
+
+  /** The horizontal predictor: each sample less the one to its left. */
+  static private void predict(byte[] raw, int rows, int rowBytes,
+                              int samples, int bytes) {
+    for (int y = rows - 1; y >= 0; y--) {
+      int first = y * rowBytes;
+      if (bytes == 1) {
+        for (int i = first + rowBytes - 1; i >= first + samples; i--) {
+          raw[i] -= raw[i - samples];
+        }
+      } else {
+        int stride = samples * 2;
+        for (int i = first + rowBytes - 2; i >= first + stride; i -= 2) {
+          put16(raw, i, get16(raw, i, false) - get16(raw, i - stride, false), false);
+        }
+      }
+    }
+  }
+
+
+  static private void entry(ByteBuffer header, int tag, int type,
+                            int count, int value) {
+    header.putShort((short) tag).putShort((short) type).putInt(count);
+    if (type == SHORT && count == 1) {
+      header.putShort((short) value).putShort((short) 0);  // left-justified
+    } else {
+      header.putInt(value);
+    }
+  }
+
+
+  static private void unpack(int[] pixels, int index, int count,
+                             int samples, byte[] out) {
+    int o = 0;
+    for (int i = 0; i < count; i++) {
+      int c = pixels[index++];
+      if (samples == 1) {
+        out[o++] = (byte) c;
+      } else {
+        out[o++] = (byte) (c >> 16);
+        out[o++] = (byte) (c >> 8);
+        out[o++] = (byte) c;
+        if (samples == 4) {
+          out[o++] = (byte) (c >>> 24);
+        }
+      }
+    }
+  }
+
+
+  static private void unpack(float[] values, int index, int count,
+                             int samples, byte[] out) {
+    int o = 0;
+    int v = index * 4;
+    for (int i = 0; i < count; i++) {
+      for (int k = 0; k < samples; k++) {
+        float f = values[v + k];
+        int value = (f <= 0) ? 0 : ((f >= 1) ? 65535 : (int) (f * 65535 + 0.5f));
+        out[o++] = (byte) (value >> 8);
+        out[o++] = (byte) value;
+      }
+      v += 4;
+    }
+  }
+
+
+  /** PackBits, with each row packed on its own as the spec asks. */
+  static byte[] encodePackBits(byte[] data, int length, int rowBytes) {
+    byte[] out = new byte[length + (length + 127) / 128 + length / rowBytes + 1];
+    int o = 0;
+    for (int row = 0; row < length; row += rowBytes) {
+      int i = row;
+      int end = row + rowBytes;
+      while (i < end) {
+        int run = 1;
+        while (i + run < end && run < 128 && data[i + run] == data[i]) {
+          run++;
+        }
+        if (run >= 3) {
+          out[o++] = (byte) (1 - run);
+          out[o++] = data[i];
+          i += run;
+
+        } else {
+          // literal bytes until the next run of three
+          int literal = 0;
+          while (i + literal < end && literal < 128) {
+            int j = i + literal;
+            if (j + 2 < end && data[j] == data[j + 1] && data[j] == data[j + 2]) {
+              break;
+            }
+            literal++;
+          }
+          out[o++] = (byte) (literal - 1);
+          System.arraycopy(data, i, out, o, literal);
+          o += literal;
+          i += literal;
+        }
+      }
+    }
+    return Arrays.copyOf(out, o);
+  }
+
+
+  /**
+   * LZW the same way as libtiff: a clear code first, wider codes as the
+   * table grows, and a fresh table once it's full.
+   */
+  static byte[] encodeLZW(byte[] data, int length) {
+    // open addressing, keyed by (prefix code << 8 | next byte) + 1
+    int[] keys = new int[1 << 13];
+    short[] codes = new short[1 << 13];
+    int mask = keys.length - 1;
+
+    byte[] out = new byte[length + length / 2 + 16];
+    int o = 0;
+    long buffer = 0;
+    int bits = 0;
+    int width = 9;
+    int next = FIRST_CODE;
+
+    // every strip starts with a clear code
+    buffer = CLEAR_CODE;
+    bits = 9;
+
+    if (length > 0) {
+      int prefix = data[0] & 0xff;
+      for (int i = 1; i < length; i++) {
+        int c = data[i] & 0xff;
+        int key = ((prefix << 8) | c) + 1;
+        int slot = (key * 0x9E3779B1) >>> 19;
+        while (keys[slot] != 0 && keys[slot] != key) {
+          slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == key) {
+          prefix = codes[slot];
+          continue;
+        }
+        // output the prefix, and add the new string to the table
+        buffer = (buffer << width) | prefix;
+        bits += width;
+        while (bits >= 8) {
+          bits -= 8;
+          out[o++] = (byte) (buffer >>> bits);
+        }
+        keys[slot] = key;
+        codes[slot] = (short) next;
+        next++;
+        if (next == MAX_CODE - 1) {
+          buffer = (buffer << width) | CLEAR_CODE;
+          bits += width;
+          Arrays.fill(keys, 0);
+          next = FIRST_CODE;
+          width = 9;
+        } else if (next > (1 << width) - 1) {
+          width++;
+        }
+        while (bits >= 8) {
+          bits -= 8;
+          out[o++] = (byte) (buffer >>> bits);
+        }
+        prefix = c;
+        if (o + 8 > out.length) {
+          out = Arrays.copyOf(out, out.length * 2);
+        }
+      }
+      buffer = (buffer << width) | prefix;
+      bits += width;
+      next++;
+      if (next == MAX_CODE - 1) {
+        buffer = (buffer << width) | CLEAR_CODE;
+        bits += width;
+        width = 9;
+      } else if (next > (1 << width) - 1) {
+        width++;
+      }
+    }
+    buffer = (buffer << width) | EOI_CODE;
+    bits += width;
+    while (bits >= 8) {
+      bits -= 8;
+      out[o++] = (byte) (buffer >>> bits);
+    }
+    if (bits > 0) {
+      out[o++] = (byte) (buffer << (8 - bits));
+    }
+    return Arrays.copyOf(out, o);
+  }
+}
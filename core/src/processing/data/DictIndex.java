@@ -0,0 +1,303 @@
+package processing.data;
+
+import java.util.Arrays;
+
+
+/**
+ * Open-addressing hash table that maps a key to its position in the
+ * parallel keys/values arrays of a Dict class. Only the positions (and
+ * the hash codes, so that most mismatches never reach equals) are stored,
+ * so there are no Integer objects or Map.Entry allocations, and the keys
+ * themselves are compared against the Dict's own array.
+ * <p>
+ * Removing a key leaves a tombstone in its slot, so that keys further
+ * along the same probe sequence can still be found. Tombstones are reused
+ * by later insertions, and cleared out whenever the table is rehashed.
+ * <p>
+ * There are String and int versions of each method, since the point of
+ * this class is to avoid boxing the keys for IntIntDict and IntFloatDict.
+ * For int keys, the key itself is used as the hash code, so a lookup
+ * never has to read the keys array at all.
+ */
+class DictIndex {
+  static final int EMPTY = 0;
+  static final int TOMBSTONE = -1;
+
+  static final int MIN_CAPACITY = 16;
+  static final int MAX_CAPACITY = 1 << 29;
+
+  /**
+   * Two ints for each slot: the position + 1 of the entry that uses it
+   * (or EMPTY or TOMBSTONE), followed by the hash code of its key.
+   * Keeping both together means a probe only touches one cache line.
+   */
+  int[] slots;
+
+  int capacity;  // number of slots, always a power of 2
+  int used;  // slots with a position
+  int dead;  // tombstones
+
+
+  DictIndex() {
+    this(0);
+  }
+
+
+  DictIndex(int expected) {
+    allocate(capacityFor(expected));
+  }
+
+
+  /**
+   * Smallest power of 2 that keeps this many entries under half full.
+   * Linear probing gets slow quickly past that, and two ints per slot
+   * is still far less than a HashMap.Node for each entry.
+   */
+  static int capacityFor(int expected) {
+    int capacity = MIN_CAPACITY;
+    while (capacity < MAX_CAPACITY && (long) capacity < (long) expected * 2) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+
+  private void allocate(int capacity) {
+    this.capacity = capacity;
+    slots = new int[capacity << 1];
+    used = 0;
+    dead = 0;
+  }
+
+
+  void clear() {
+    Arrays.fill(slots, EMPTY);
+    used = 0;
+    dead = 0;
+  }
+
+
+  DictIndex copy() {
+    DictIndex outgoing = new DictIndex();
+    outgoing.slots = slots.clone();
+    outgoing.capacity = capacity;
+    outgoing.used = used;
+    outgoing.dead = dead;
+    return outgoing;
+  }
+
+
+  static int hash(String key) {
+    return (key == null) ? 0 : key.hashCode();
+  }
+
+
+  /** Index into slots[] of the first slot to try for a hash code. */
+  private int start(int hash) {
+    int h = hash * 0x9E3779B9;  // String.hashCode() is weak in the low bits
+    return ((h ^ (h >>> 16)) & (capacity - 1)) << 1;
+  }
+
+
+  /** Index into slots[] of the slot after this one, wrapping around. */
+  private int next(int i) {
+    i += 2;
+    return (i == slots.length) ? 0 : i;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Position of the key, or -1 if it's not in the table. */
+  int find(String key, String[] keys) {
+    int hash = hash(key);
+    int i = start(hash);
+    int entry;
+    while ((entry = slots[i]) != EMPTY) {
+      if (entry != TOMBSTONE && slots[i+1] == hash) {
+        String found = keys[entry - 1];
+        if (found == key || (key != null && key.equals(found))) {
+          return entry - 1;
+        }
+      }
+      i = next(i);
+    }
+    return -1;
+  }
+
+
+  /**
+   * Add a key that will be found at the specified position. If the key is
+   * already present, returns its current position and leaves it alone
+   * (or moves it to the new position when 'replace' is set). Returns -1
+   * when the key was new.
+   */
+  int put(String key, String[] keys, int position, boolean replace) {
+    int hash = hash(key);
+    int i = start(hash);
+    int free = -1;
+    int entry;
+    while ((entry = slots[i]) != EMPTY) {
+      if (entry == TOMBSTONE) {
+        if (free == -1) free = i;
+      } else if (slots[i+1] == hash) {
+        String found = keys[entry - 1];
+        if (found == key || (key != null && key.equals(found))) {
+          if (replace) slots[i] = position + 1;
+          return entry - 1;
+        }
+      }
+      i = next(i);
+    }
+    insert(free == -1 ? i : free, hash, position);
+    return -1;
+  }
+
+
+  /** Remove a key, returning the position it had, or -1 if not found. */
+  int remove(String key, String[] keys) {
+    int hash = hash(key);
+    int i = start(hash);
+    int entry;
+    while ((entry = slots[i]) != EMPTY) {
+      if (entry != TOMBSTONE && slots[i+1] == hash) {
+        String found = keys[entry - 1];
+        if (found == key || (key != null && key.equals(found))) {
+          release(i);
+          return entry - 1;
+        }
+      }
+      i = next(i);
+    }
+    return -1;
+  }
+
+
+  /** Index the first 'count' keys, replacing whatever was here before. */
+  void rebuild(String[] keys, int count) {
+    reset(count);
+    for (int i = 0; i < count; i++) {
+      // later duplicates win, same as successive HashMap.put() calls
+      put(keys[i], keys, i, true);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  int find(int key) {
+    int i = start(key);
+    int entry;
+    while ((entry = slots[i]) != EMPTY) {
+      if (entry != TOMBSTONE && slots[i+1] == key) {
+        return entry - 1;
+      }
+      i = next(i);
+    }
+    return -1;
+  }
+
+
+  int put(int key, int position, boolean replace) {
+    int i = start(key);
+    int free = -1;
+    int entry;
+    while ((entry = slots[i]) != EMPTY) {
+      if (entry == TOMBSTONE) {
+        if (free == -1) free = i;
+      } else if (slots[i+1] == key) {
+        if (replace) slots[i] = position + 1;
+        return entry - 1;
+      }
+      i = next(i);
+    }
+    insert(free == -1 ? i : free, key, position);
+    return -1;
+  }
+
+
+  int remove(int key) {
+    int i = start(key);
+    int entry;
+    while ((entry = slots[i]) != EMPTY) {
+      if (entry != TOMBSTONE && slots[i+1] == key) {
+        release(i);
+        return entry - 1;
+      }
+      i = next(i);
+    }
+    return -1;
+  }
+
+
+  void rebuild(int[] keys, int count) {
+    reset(count);
+    for (int i = 0; i < count; i++) {
+      put(keys[i], i, true);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Empty the table, and make sure it's big enough for 'count' keys. */
+  private void reset(int count) {
+    if (capacity < capacityFor(count)) {
+      allocate(capacityFor(count));
+    } else {
+      clear();
+    }
+  }
+
+
+  private void insert(int i, int hash, int position) {
+    if (slots[i] == TOMBSTONE) {
+      dead--;
+    }
+    slots[i] = position + 1;
+    slots[i+1] = hash;
+    used++;
+    if ((long) (used + dead) * 2 > (long) capacity) {
+      // mostly tombstones: clean up at the same size, otherwise grow
+      if (used * 4 < capacity || capacity == MAX_CAPACITY) {
+        rehash(capacity);
+      } else {
+        rehash(capacity << 1);
+      }
+    }
+  }
+
+
+  private void release(int i) {
+    used--;
+    if (slots[next(i)] == EMPTY) {
+      // nothing probes past this slot, so no tombstone needed
+      slots[i] = EMPTY;
+    } else {
+      slots[i] = TOMBSTONE;
+      dead++;
+    }
+  }
+
+
+  /** Move everything into a new table, which also drops the tombstones. */
+  private void rehash(int newCapacity) {
+    int[] oldSlots = slots;
+    allocate(newCapacity);
+    for (int j = 0; j < oldSlots.length; j += 2) {
+      int entry = oldSlots[j];
+      if (entry > 0) {
+        int i = start(oldSlots[j+1]);
+        while (slots[i] != EMPTY) {
+          i = next(i);
+        }
+        slots[i] = entry;
+        slots[i+1] = oldSlots[j+1];
+        used++;
+      }
+    }
+  }
+}
@@ -1,7 +1,7 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -18,14 +18,20 @@ import processing.core.PApplet;
  */
 public class DoubleDict {
 
-  /** Number of elements in the table */
+  /**
+   * Number of elements in the table, including removed entries that
+   * have not been squeezed out yet (see compact)
+   */
   protected int count;
 
   protected String[] keys;
   protected double[] values;
 
+  /** Number of entries in keys/values that have been removed */
+  private int removed;
+
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private DictIndex indices = new DictIndex();
 
 
   public DoubleDict() {
@@ -45,6 +51,7 @@ public class DoubleDict {
     count = 0;
     keys = new String[length];
     values = new double[length];
+    indices = new DictIndex(length);
   }
 
 
@@ -64,7 +71,7 @@ public class DoubleDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = PApplet.parseFloat(pieces[1]);
-        indices.put(pieces[0], count);
+        indices.put(pieces[0], keys, count, true);
         count++;
       }
     }
@@ -82,7 +89,7 @@ public class DoubleDict {
     this.values = values;
     count = keys.length;
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys[i], keys, i, true);
     }
   }
 
@@ -103,7 +110,7 @@ public class DoubleDict {
     for (int i = 0; i < count; i++) {
       keys[i] = (String) pairs[i][0];
       values[i] = (Float) pairs[i][1];
-      indices.put(keys[i], i);
+      indices.put(keys[i], keys, i, true);
     }
   }
 
@@ -116,7 +123,7 @@ public class DoubleDict {
     for (Map.Entry<String, Double> e : incoming.entrySet()) {
       keys[index] = e.getKey();
       values[index] = e.getValue();
-      indices.put(keys[index], index);
+      indices.put(keys[index], keys, index, true);
       index++;
     }
   }
@@ -127,7 +134,7 @@ public class DoubleDict {
    * @brief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - removed;
   }
 
 
@@ -136,6 +143,7 @@ public class DoubleDict {
    * Helpful for situations like sorting and then grabbing the top 50 entries.
    */
   public void resize(int length) {
+    compact();
     if (length == count) return;
 
     if (length > count) {
@@ -164,15 +172,60 @@ public class DoubleDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    removed = 0;
+    indices.clear();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+    indices.rebuild(keys, count);
+  }
+
+
+  /**
+   * Squeeze out the entries that were removed, so that the arrays
+   * are in order again. Removing is O(1), and the shifting is only
+   * done here, once for any number of removals, before the next
+   * time that something needs an entry by its position, or when the
+   * arrays are full and mostly removed entries (see create).
+   */
+  private void compact() {
+    if (removed != 0) {
+      int live = 0;
+      for (int i = 0; i < count; i++) {
+        // only the positions before i have been overwritten
+        if (indices.find(keys[i], keys) == i) {
+          keys[live] = keys[i];
+          values[live] = values[i];
+          live++;
+        }
+      }
+      Arrays.fill(keys, live, count, null);
+      count = live;
+      removed = 0;
+      resetIndices();
+    }
+  }
+
+
+  /** Position of the next entry that hasn't been removed. */
+  private int nextIndex(int index) {
+    index++;
+    if (removed != 0) {
+      while (index < count && indices.find(keys[index], keys) != index) {
+        index++;
+      }
+    }
+    return index;
+  }
+
+
+  private int advance(int index) {
+    index = nextIndex(index);
+    if (index >= count) {
+      throw new NoSuchElementException();
     }
+    return index;
   }
 
 
@@ -205,18 +258,16 @@ public class DoubleDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeEntry(index);
       }
 
       public Entry next() {
-        ++index;
-        Entry e = new Entry(keys[index], values[index]);
-        return e;
+        index = advance(index);
+        return new Entry(keys[index], values[index]);
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return nextIndex(index) < count;
       }
     };
   }
@@ -226,11 +277,13 @@ public class DoubleDict {
 
 
   public String key(int index) {
+    compact();
     return keys[index];
   }
 
 
   protected void crop() {
+    compact();
     if (count != keys.length) {
       keys = PApplet.subset(keys, 0, count);
       values = PApplet.subset(values, 0, count);
@@ -255,16 +308,16 @@ public class DoubleDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeEntry(index);
       }
 
       public String next() {
-        return key(++index);
+        index = advance(index);
+        return keys[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return nextIndex(index) < count;
       }
     };
   }
@@ -283,6 +336,7 @@ public class DoubleDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    compact();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -292,6 +346,7 @@ public class DoubleDict {
 
 
   public double value(int index) {
+    compact();
     return values[index];
   }
 
@@ -316,16 +371,16 @@ public class DoubleDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeEntry(index);
       }
 
       public Double next() {
-        return value(++index);
+        index = advance(index);
+        return values[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return nextIndex(index) < count;
       }
     };
   }
@@ -349,6 +404,7 @@ public class DoubleDict {
    * size as the number of values, a new array will be allocated and returned.
    */
   public double[] valueArray(double[] array) {
+    compact();
     if (array == null || array.length != size()) {
       array = new double[count];
     }
@@ -364,7 +420,7 @@ public class DoubleDict {
    * @brief Return a value for the specified key
    */
   public double get(String key) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index == -1) {
       throw new IllegalArgumentException("No key named '" + key + "'");
     }
@@ -373,7 +429,7 @@ public class DoubleDict {
 
 
   public double get(String key, double alternate) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index == -1) {
       return alternate;
     }
@@ -386,7 +442,7 @@ public class DoubleDict {
    * @brief Create a new key/value pair or change the value of one
    */
   public void set(String key, double amount) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -396,11 +452,14 @@ public class DoubleDict {
 
 
   public void setIndex(int index, String key, double value) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
+    indices.remove(keys[index], keys);
     keys[index] = key;
     values[index] = value;
+    indices.put(key, keys, index, true);
   }
 
 
@@ -409,7 +468,7 @@ public class DoubleDict {
    * @brief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return indices.find(key, keys) != -1;
   }
 
 
@@ -418,7 +477,7 @@ public class DoubleDict {
    * @brief Add to a value
    */
   public void add(String key, double amount) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -441,7 +500,7 @@ public class DoubleDict {
    * @brief Multiply a value
    */
   public void mult(String key, double amount) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index != -1) {
       values[index] *= amount;
     }
@@ -453,7 +512,7 @@ public class DoubleDict {
    * @brief Divide a value
    */
   public void div(String key, double amount) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index != -1) {
       values[index] /= amount;
     }
@@ -461,7 +520,7 @@ public class DoubleDict {
 
 
   private void checkMinMax(String functionName) {
-    if (count == 0) {
+    if (size() == 0) {
       String msg =
         String.format("Cannot use %s() on an empty %s.",
                       functionName, getClass().getSimpleName());
@@ -475,6 +534,7 @@ public class DoubleDict {
    * @brief Return the smallest value
    */
   public int minIndex() {
+    compact();
     //checkMinMax("minIndex");
     if (count == 0) return -1;
 
@@ -530,6 +590,7 @@ public class DoubleDict {
    */
   // The index of the entry that has the max value. Reference above is incorrect.
   public int maxIndex() {
+    compact();
     //checkMinMax("maxIndex");
     if (count == 0) {
       return -1;
@@ -581,6 +642,7 @@ public class DoubleDict {
 
 
   public double sum() {
+    compact();
     double sum = 0;
     for (int i = 0; i < count; i++) {
       sum += values[i];
@@ -590,17 +652,24 @@ public class DoubleDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    compact();
+    return indices.find(what, keys);
   }
 
 
   protected void create(String what, double much) {
     if (count == keys.length) {
-      keys = PApplet.expand(keys);
-      values = PApplet.expand(values);
+      // under add/remove churn, reuse the space of the removed
+      // entries instead of growing the arrays without bound
+      if (removed > count / 2) {
+        compact();
+      }
+      if (count == keys.length) {
+        keys = PApplet.expand(keys);
+        values = PApplet.expand(values);
+      }
     }
-    indices.put(what, Integer.valueOf(count));
+    indices.put(what, keys, count, false);
     keys[count] = what;
     values[count] = much;
     count++;
@@ -612,44 +681,71 @@ public class DoubleDict {
    * @brief Remove a key/value pair
    */
   public double remove(String key) {
-    int index = index(key);
+    int index = indices.remove(key, keys);
     if (index == -1) {
       throw new NoSuchElementException("'" + key + "' not found");
     }
     double value = values[index];
-    removeIndex(index);
+    discard(index);
     return value;
   }
 
 
   public double removeIndex(int index) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
     double value = values[index];
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = 0;
+    removeEntry(index);
     return value;
   }
 
 
+  private void removeEntry(int index) {
+    indices.remove(keys[index], keys);
+    discard(index);
+  }
+
+
+  /** The entry at this position is gone from the index, deal with the arrays. */
+  private void discard(int index) {
+    if (index == count - 1) {
+      count--;
+      keys[count] = null;
+      values[count] = 0;
+    } else {
+      removed++;
+    }
+  }
+
+
   public void swap(int a, int b) {
+    compact();
+    if (a < 0 || a >= count) {
+      throw new ArrayIndexOutOfBoundsException(a);
+    }
+    if (b < 0 || b >= count) {
+      throw new ArrayIndexOutOfBoundsException(b);
+    }
+    // the index finds entries by position, so take both keys out
+    // before they move, and put them back at their new positions
+    indices.remove(keys[a], keys);
+    indices.remove(keys[b], keys);
+    swapEntries(a, b);
+    indices.put(keys[a], keys, a, true);
+    indices.put(keys[b], keys, b, true);
+  }
+
+
+  /** Swap two entries without touching the index, for sortImpl(). */
+  private void swapEntries(int a, int b) {
     String tkey = keys[a];
     double tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-//    indices.put(keys[a], Integer.valueOf(a));
-//    indices.put(keys[b], Integer.valueOf(b));
   }
 
 
@@ -711,6 +807,7 @@ public class DoubleDict {
 
   protected void sortImpl(final boolean useKeys, final boolean reverse,
                           final boolean stable) {
+    compact();
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -763,7 +860,7 @@ public class DoubleDict {
 
       @Override
       public void swap(int a, int b) {
-        DoubleDict.this.swap(a, b);
+        swapEntries(a, b);
       }
     };
     s.run();
@@ -791,18 +888,18 @@ public class DoubleDict {
 
   /** Returns a duplicate copy of this object. */
   public DoubleDict copy() {
+    compact();
     DoubleDict outgoing = new DoubleDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices = indices.copy();
     outgoing.count = count;
     return outgoing;
   }
 
 
   public void print() {
+    compact();
     for (int i = 0; i < size(); i++) {
       System.out.println(keys[i] + " = " + values[i]);
     }
@@ -824,6 +921,7 @@ public class DoubleDict {
    * @param writer
    */
   public void write(PrintWriter writer) {
+    compact();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -835,6 +933,7 @@ public class DoubleDict {
    * Return this dictionary as a String in JSON format.
    */
   public String toJSON() {
+    compact();
     StringList items = new StringList();
     for (int i = 0; i < count; i++) {
       items.append(JSONObject.quote(keys[i])+ ": " + values[i]);
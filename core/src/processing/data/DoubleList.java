@@ -648,7 +648,7 @@ public class DoubleList implements Iterable<Double> {
    * @brief Sorts an array, lowest to highest
    */
   public void sort() {
-    Arrays.sort(data, 0, count);
+    Sort.sort(data, 0, count);
   }
 
 
@@ -659,45 +659,17 @@ public class DoubleList implements Iterable<Double> {
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
-    new Sort() {
-      @Override
-      public int size() {
-        // if empty, don't even mess with the NaN check, it'll AIOOBE
-        if (count == 0) {
-          return 0;
-        }
-        // move NaN values to the end of the list and don't sort them
-        int right = count - 1;
-        while (data[right] != data[right]) {
-          right--;
-          if (right == -1) {  // all values are NaN
-            return 0;
-          }
-        }
-        for (int i = right; i >= 0; --i) {
-          double v = data[i];
-          if (v != v) {
-            data[i] = data[right];
-            data[right] = v;
-            --right;
-          }
-        }
-        return right + 1;
-      }
-
-      @Override
-      public int compare(int a, int b) {
-        double diff = data[b] - data[a];
-        return diff == 0 ? 0 : (diff < 0 ? -1 : 1);
-      }
-
-      @Override
-      public void swap(int a, int b) {
-        double temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
-      }
-    }.run();
+    Sort.sort(data, 0, count);
+    // NaN values are sorted to the end, leave them there
+    int right = count;
+    while (right > 0 && data[right-1] != data[right-1]) {
+      right--;
+    }
+    for (int i = 0, j = right - 1; i < j; i++, j--) {
+      double temp = data[i];
+      data[i] = data[j];
+      data[j] = temp;
+    }
   }
 
 
@@ -0,0 +1,563 @@
+package processing.data;
+
+import java.io.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import processing.core.PApplet;
+
+
+/**
+ * A simple class to use an int as a lookup for a float value, like
+ * FloatDict but without turning each id into a String. Entries keep the
+ * order in which they were added.
+ *
+ * @nowebref
+ * @see FloatDict
+ * @see IntFloatDict
+ */
+public class IntFloatDict extends IntKeyDict {
+
+  protected float[] values;
+
+
+  public IntFloatDict() {
+    this(10);
+  }
+
+
+  /**
+   * Create a new lookup with a specific size. This is more efficient than not
+   * specifying a size. Use it when you know the rough size of the thing you're creating.
+   */
+  public IntFloatDict(int length) {
+    super(length);
+    values = new float[length];
+  }
+
+
+  /**
+   * Read a set of entries from a Reader that has each key/value pair on
+   * a single line, separated by a tab.
+   */
+  public IntFloatDict(BufferedReader reader) {
+    this(PApplet.loadStrings(reader));
+  }
+
+
+  private IntFloatDict(String[] lines) {
+    super(lines.length);
+    values = new float[lines.length];
+
+    for (int i = 0; i < lines.length; i++) {
+      String[] pieces = PApplet.split(lines[i], '\t');
+      if (pieces.length == 2) {
+        keys[count] = PApplet.parseInt(pieces[0]);
+        values[count] = PApplet.parseFloat(pieces[1]);
+        indices.put(keys[count], count, true);
+        count++;
+      }
+    }
+  }
+
+
+  public IntFloatDict(int[] keys, float[] values) {
+    super(keys);
+    if (keys.length != values.length) {
+      throw new IllegalArgumentException("key and value arrays must be the same length");
+    }
+    this.values = values;
+  }
+
+
+  @Override
+  void resizeValues(int length) {
+    values = PApplet.expand(values, length);
+  }
+
+
+  @Override
+  void moveValue(int from, int to) {
+    values[to] = values[from];
+  }
+
+
+  @Override
+  void swapValues(int a, int b) {
+    float tvalue = values[a];
+    values[a] = values[b];
+    values[b] = tvalue;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public class Entry {
+    public int key;
+    public float value;
+
+    Entry(int key, float value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+
+  public Iterable<Entry> entries() {
+    return new Iterable<Entry>() {
+
+      public Iterator<Entry> iterator() {
+        return entryIterator();
+      }
+    };
+  }
+
+
+  public Iterator<Entry> entryIterator() {
+    return new Iterator<Entry>() {
+      int index = -1;
+
+      public void remove() {
+        removeEntry(index);
+      }
+
+      public Entry next() {
+        index = advance(index);
+        return new Entry(keys[index], values[index]);
+      }
+
+      public boolean hasNext() {
+        return nextIndex(index) < count;
+      }
+    };
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public float value(int index) {
+    compact();
+    return values[index];
+  }
+
+
+  public Iterable<Float> values() {
+    return new Iterable<Float>() {
+
+      @Override
+      public Iterator<Float> iterator() {
+        return valueIterator();
+      }
+    };
+  }
+
+
+  public Iterator<Float> valueIterator() {
+    return new Iterator<Float>() {
+      int index = -1;
+
+      public void remove() {
+        removeEntry(index);
+      }
+
+      public Float next() {
+        index = advance(index);
+        return values[index];
+      }
+
+      public boolean hasNext() {
+        return nextIndex(index) < count;
+      }
+    };
+  }
+
+
+  /**
+   * Create a new array and copy each of the values into it.
+   */
+  public float[] valueArray() {
+    return valueArray(null);
+  }
+
+
+  /**
+   * Fill an already-allocated array with the values (more efficient than
+   * creating a new array each time). If 'array' is null, or not the same
+   * size as the number of values, a new array will be allocated and returned.
+   */
+  public float[] valueArray(float[] array) {
+    compact();
+    if (array == null || array.length != count) {
+      array = new float[count];
+    }
+    System.arraycopy(values, 0, array, 0, count);
+    return array;
+  }
+
+
+  /**
+   * Return a value for the specified key.
+   */
+  public float get(int key) {
+    int index = indices.find(key);
+    if (index == -1) {
+      throw new IllegalArgumentException("No key " + key);
+    }
+    return values[index];
+  }
+
+
+  public float get(int key, float alternate) {
+    int index = indices.find(key);
+    if (index == -1) return alternate;
+    return values[index];
+  }
+
+
+  /**
+   * Create a new key/value pair or change the value of one.
+   */
+  public void set(int key, float amount) {
+    int index = indices.find(key);
+    if (index == -1) {
+      create(key, amount);
+    } else {
+      values[index] = amount;
+    }
+  }
+
+
+  public void setIndex(int index, int key, float value) {
+    compact();
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    indices.remove(keys[index]);
+    keys[index] = key;
+    values[index] = value;
+    indices.put(key, index, true);
+  }
+
+
+  public void add(int key, float amount) {
+    int index = indices.find(key);
+    if (index == -1) {
+      create(key, amount);
+    } else {
+      values[index] += amount;
+    }
+  }
+
+
+  public void sub(int key, float amount) {
+    add(key, -amount);
+  }
+
+
+  public void mult(int key, float amount) {
+    int index = indices.find(key);
+    if (index != -1) {
+      values[index] *= amount;
+    }
+  }
+
+
+  public void div(int key, float amount) {
+    int index = indices.find(key);
+    if (index != -1) {
+      values[index] /= amount;
+    }
+  }
+
+
+  private void checkMinMax(String functionName) {
+    if (size() == 0) {
+      String msg =
+        String.format("Cannot use %s() on an empty %s.",
+                      functionName, getClass().getSimpleName());
+      throw new RuntimeException(msg);
+    }
+  }
+
+
+  // return the index of the minimum value, skipping NaN
+  public int minIndex() {
+    compact();
+    // Will still return -1 if there are 1 or more entries, and they're all NaN
+    float m = Float.NaN;
+    int mi = -1;
+    for (int i = 0; i < count; i++) {
+      float d = values[i];
+      if ((d == d) && (mi == -1 || d < m)) {
+        m = d;
+        mi = i;
+      }
+    }
+    return mi;
+  }
+
+
+  // return the key for the minimum value
+  public int minKey() {
+    checkMinMax("minKey");
+    int index = minIndex();
+    if (index == -1) {
+      throw new RuntimeException("minKey() has no answer when all values are NaN");
+    }
+    return keys[index];
+  }
+
+
+  /** The min value. (Or NaN if they're all NaN.) */
+  public float minValue() {
+    checkMinMax("minValue");
+    int index = minIndex();
+    if (index == -1) {
+      return Float.NaN;
+    }
+    return values[index];
+  }
+
+
+  // return the index of the max value, skipping NaN
+  public int maxIndex() {
+    compact();
+    float m = Float.NaN;
+    int mi = -1;
+    for (int i = 0; i < count; i++) {
+      float d = values[i];
+      if ((d == d) && (mi == -1 || d > m)) {
+        m = d;
+        mi = i;
+      }
+    }
+    return mi;
+  }
+
+
+  // return the key for the maximum value
+  public int maxKey() {
+    checkMinMax("maxKey");
+    int index = maxIndex();
+    if (index == -1) {
+      throw new RuntimeException("maxKey() has no answer when all values are NaN");
+    }
+    return keys[index];
+  }
+
+
+  /** The max value. (Or NaN if they're all NaN.) */
+  public float maxValue() {
+    checkMinMax("maxValue");
+    int index = maxIndex();
+    if (index == -1) {
+      return Float.NaN;
+    }
+    return values[index];
+  }
+
+
+  public float sum() {
+    double amount = sumDouble();
+    if (amount > Float.MAX_VALUE) {
+      throw new RuntimeException("sum() exceeds " + Float.MAX_VALUE + ", use sumDouble()");
+    }
+    if (amount < -Float.MAX_VALUE) {
+      throw new RuntimeException("sum() lower than " + -Float.MAX_VALUE + ", use sumDouble()");
+    }
+    return (float) amount;
+  }
+
+
+  public double sumDouble() {
+    compact();
+    double sum = 0;
+    for (int i = 0; i < count; i++) {
+      sum += values[i];
+    }
+    return sum;
+  }
+
+
+  protected void create(int what, float much) {
+    // append() may replace the values array, so don't read it first
+    int index = append(what);
+    values[index] = much;
+  }
+
+
+  /** Remove a key/value pair, returning its value. */
+  public float remove(int key) {
+    int index = indices.remove(key);
+    if (index == -1) {
+      throw new NoSuchElementException("Key " + key + " not found");
+    }
+    float value = values[index];
+    discard(index);
+    return value;
+  }
+
+
+  public float removeIndex(int index) {
+    compact();
+    if (index < 0 || index >= count) {
+      throw new ArrayIndexOutOfBoundsException(index);
+    }
+    float value = values[index];
+    removeEntry(index);
+    return value;
+  }
+
+
+  /** Sort the keys in ascending order. */
+  public void sortKeys() {
+    sortImpl(true, false, true);
+  }
+
+
+  public void sortKeysReverse() {
+    sortImpl(true, true, true);
+  }
+
+
+  /** Sort by values in ascending order. The smallest value will be at [0]. */
+  public void sortValues() {
+    sortValues(true);
+  }
+
+
+  /**
+   * Set true to ensure that the order returned is identical. Slightly
+   * slower because the tie-breaker for identical values compares the keys.
+   */
+  public void sortValues(boolean stable) {
+    sortImpl(false, false, stable);
+  }
+
+
+  /** Sort by values in descending order. The largest value will be at [0]. */
+  public void sortValuesReverse() {
+    sortValuesReverse(true);
+  }
+
+
+  public void sortValuesReverse(boolean stable) {
+    sortImpl(false, true, stable);
+  }
+
+
+  protected void sortImpl(final boolean useKeys, final boolean reverse,
+                          final boolean stable) {
+    compact();
+    Sort s = new Sort() {
+      @Override
+      public int size() {
+        if (useKeys || count == 0) {
+          return count;
+        }
+        // same as FloatDict, move NaN values to the end of the list first
+        int right = count - 1;
+        while (values[right] != values[right]) {
+          right--;
+          if (right == -1) {
+            return 0;  // all values are NaN
+          }
+        }
+        for (int i = right; i >= 0; --i) {
+          if (Float.isNaN(values[i])) {
+            swap(i, right);
+            --right;
+          }
+        }
+        return right + 1;
+      }
+
+      @Override
+      public int compare(int a, int b) {
+        int diff;
+        if (useKeys) {
+          diff = Integer.compare(keys[a], keys[b]);
+        } else {  // sort values
+          diff = Float.compare(values[a], values[b]);
+          if (diff == 0 && stable) {
+            diff = Integer.compare(keys[a], keys[b]);
+          }
+        }
+        return reverse ? -diff : diff;
+      }
+
+      @Override
+      public void swap(int a, int b) {
+        swapEntries(a, b);
+      }
+    };
+    s.run();
+
+    // Set the indices after sort/swaps
+    resetIndices();
+  }
+
+
+  /** Returns a duplicate copy of this object. */
+  public IntFloatDict copy() {
+    compact();
+    IntFloatDict outgoing = new IntFloatDict(count);
+    System.arraycopy(keys, 0, outgoing.keys, 0, count);
+    System.arraycopy(values, 0, outgoing.values, 0, count);
+    outgoing.indices = indices.copy();
+    outgoing.count = count;
+    return outgoing;
+  }
+
+
+  public void print() {
+    compact();
+    for (int i = 0; i < count; i++) {
+      System.out.println(keys[i] + " = " + values[i]);
+    }
+  }
+
+
+  /**
+   * Save tab-delimited entries to a file (TSV format, UTF-8 encoding)
+   */
+  public void save(File file) {
+    PrintWriter writer = PApplet.createWriter(file);
+    write(writer);
+    writer.close();
+  }
+
+
+  /**
+   * Write tab-delimited entries to a PrintWriter
+   */
+  public void write(PrintWriter writer) {
+    compact();
+    for (int i = 0; i < count; i++) {
+      writer.println(keys[i] + "\t" + values[i]);
+    }
+    writer.flush();
+  }
+
+
+  /**
+   * Return this dictionary as a String in JSON format. The keys are
+   * written as strings, since JSON doesn't allow numbers there.
+   */
+  public String toJSON() {
+    compact();
+    StringList items = new StringList();
+    for (int i = 0; i < count; i++) {
+      items.append("\"" + keys[i] + "\": " + values[i]);
+    }
+    return "{ " + items.join(", ") + " }";
+  }
+
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " size=" + size() + " " + toJSON();
+  }
+}
@@ -0,0 +1,275 @@
+package processing.data;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import processing.core.PApplet;
+
+
+/**
+ * The parts of IntIntDict and IntFloatDict that only deal with the keys:
+ * the index, the order of the entries, and removing them. The subclasses
+ * hold the values array, and move its entries when asked to here.
+ */
+abstract class IntKeyDict {
+
+  /**
+   * Number of elements in the table, including removed entries that
+   * have not been squeezed out yet (see compact)
+   */
+  protected int count;
+
+  protected int[] keys;
+
+  /** Number of entries in keys/values that have been removed */
+  int removed;
+
+  /** Internal implementation for faster lookups */
+  DictIndex indices;
+
+
+  IntKeyDict(int length) {
+    keys = new int[length];
+    indices = new DictIndex(length);
+  }
+
+
+  IntKeyDict(int[] keys) {
+    this.keys = keys;
+    count = keys.length;
+    indices = new DictIndex(count);
+    resetIndices();
+  }
+
+
+  /** Copy the values array into a new one of this length. */
+  abstract void resizeValues(int length);
+
+
+  /** Copy a value to another (lower) position, for compact(). */
+  abstract void moveValue(int from, int to);
+
+
+  abstract void swapValues(int a, int b);
+
+
+  /**
+   * Returns the number of key/value pairs
+   */
+  public int size() {
+    return count - removed;
+  }
+
+
+  /**
+   * Resize the internal data, this can only be used to shrink the list.
+   * Helpful for situations like sorting and then grabbing the top 50 entries.
+   */
+  public void resize(int length) {
+    compact();
+    if (length > count) {
+      throw new IllegalArgumentException("resize() can only be used to shrink the dictionary");
+    }
+    if (length < 1) {
+      throw new IllegalArgumentException("resize(" + length + ") is too small, use 1 or higher");
+    }
+    keys = PApplet.expand(keys, length);
+    resizeValues(length);
+    count = length;
+    resetIndices();
+  }
+
+
+  /**
+   * Remove all entries.
+   */
+  public void clear() {
+    count = 0;
+    removed = 0;
+    indices.clear();
+  }
+
+
+  void resetIndices() {
+    indices.rebuild(keys, count);
+  }
+
+
+  /**
+   * Squeeze out the entries that were removed, so that the arrays
+   * are in order again. Same as IntDict, removing is O(1) and the
+   * shifting is only done here, before the next positional access,
+   * or when the arrays would otherwise have to grow.
+   */
+  void compact() {
+    if (removed != 0) {
+      int live = 0;
+      for (int i = 0; i < count; i++) {
+        if (indices.find(keys[i]) == i) {
+          keys[live] = keys[i];
+          moveValue(i, live);
+          live++;
+        }
+      }
+      count = live;
+      removed = 0;
+      resetIndices();
+    }
+  }
+
+
+  /** Position of the next entry that hasn't been removed. */
+  int nextIndex(int index) {
+    index++;
+    if (removed != 0) {
+      while (index < count && indices.find(keys[index]) != index) {
+        index++;
+      }
+    }
+    return index;
+  }
+
+
+  int advance(int index) {
+    index = nextIndex(index);
+    if (index >= count) {
+      throw new NoSuchElementException();
+    }
+    return index;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public int key(int index) {
+    compact();
+    return keys[index];
+  }
+
+
+  public Iterable<Integer> keys() {
+    return new Iterable<Integer>() {
+
+      @Override
+      public Iterator<Integer> iterator() {
+        return keyIterator();
+      }
+    };
+  }
+
+
+  // Use this to iterate when you want to be able to remove elements along the way
+  public Iterator<Integer> keyIterator() {
+    return new Iterator<Integer>() {
+      int index = -1;
+
+      public void remove() {
+        removeEntry(index);
+      }
+
+      public Integer next() {
+        index = advance(index);
+        return keys[index];
+      }
+
+      public boolean hasNext() {
+        return nextIndex(index) < count;
+      }
+    };
+  }
+
+
+  /**
+   * Return a copy of the internal keys array. This array can be modified.
+   */
+  public int[] keyArray() {
+    return keyArray(null);
+  }
+
+
+  public int[] keyArray(int[] outgoing) {
+    compact();
+    if (outgoing == null || outgoing.length != count) {
+      outgoing = new int[count];
+    }
+    System.arraycopy(keys, 0, outgoing, 0, count);
+    return outgoing;
+  }
+
+
+  public boolean hasKey(int key) {
+    return indices.find(key) != -1;
+  }
+
+
+  public int index(int what) {
+    compact();
+    return indices.find(what);
+  }
+
+
+  /**
+   * Add a key at the end of the arrays, and return its position so
+   * that the subclass can set the value.
+   */
+  int append(int key) {
+    if (count == keys.length) {
+      // under add/remove churn, reuse the space of the removed
+      // entries instead of growing the arrays without bound
+      if (removed > count / 2) {
+        compact();
+      }
+      if (count == keys.length) {
+        keys = PApplet.expand(keys);
+        resizeValues(keys.length);
+      }
+    }
+    indices.put(key, count, false);
+    keys[count] = key;
+    return count++;
+  }
+
+
+  void removeEntry(int index) {
+    indices.remove(keys[index]);
+    discard(index);
+  }
+
+
+  /** The entry at this position is gone from the index, deal with the arrays. */
+  void discard(int index) {
+    if (index == count - 1) {
+      count--;
+    } else {
+      removed++;
+    }
+  }
+
+
+  public void swap(int a, int b) {
+    compact();
+    if (a < 0 || a >= count) {
+      throw new ArrayIndexOutOfBoundsException(a);
+    }
+    if (b < 0 || b >= count) {
+      throw new ArrayIndexOutOfBoundsException(b);
+    }
+    // the index finds entries by position, so take both keys out
+    // before they move, and put them back at their new positions
+    indices.remove(keys[a]);
+    indices.remove(keys[b]);
+    swapEntries(a, b);
+    indices.put(keys[a], a, true);
+    indices.put(keys[b], b, true);
+  }
+
+
+  /** Swap two entries without touching the index, for sortImpl(). */
+  void swapEntries(int a, int b) {
+    int tkey = keys[a];
+    keys[a] = keys[b];
+    keys[b] = tkey;
+    swapValues(a, b);
+  }
+}
@@ -625,7 +625,7 @@ public class IntList implements Iterable<Integer> {
    * @brief Sorts the array, lowest to highest
    */
   public void sort() {
-    Arrays.sort(data, 0, count);
+    Sort.sort(data, 0, count);
   }
 
 
@@ -636,24 +636,8 @@ public class IntList implements Iterable<Integer> {
    * @brief Reverse sort, orders values from highest to lowest
    */
   public void sortReverse() {
-    new Sort() {
-      @Override
-      public int size() {
-        return count;
-      }
-
-      @Override
-      public int compare(int a, int b) {
-        return data[b] - data[a];
-      }
-
-      @Override
-      public void swap(int a, int b) {
-        int temp = data[a];
-        data[a] = data[b];
-        data[b] = temp;
-      }
-    }.run();
+    Sort.sort(data, 0, count);
+    reverse();
   }
 
 
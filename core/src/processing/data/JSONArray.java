@@ -38,6 +38,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Array;
@@ -117,7 +118,28 @@ public class JSONArray {
    * @nowebref
    */
   public JSONArray(Reader reader) {
-    this(new JSONTokener(reader));
+    this(new JSONReader(reader));
+  }
+
+
+  /**
+   * Construct a JSONArray from the array that starts at the reader's
+   * current token (or its first token, if nothing has been read yet).
+   * @throws RuntimeException If there is a syntax error.
+   * @nowebref
+   */
+  protected JSONArray(JSONReader reader) {
+    this();
+    if (reader.token == JSONReader.NONE) {
+      reader.next();
+    }
+    if (reader.token != JSONReader.BEGIN_ARRAY) {
+      throw new RuntimeException("A JSONArray text must start with '['" +
+                                 reader.location());
+    }
+    while (reader.next() != JSONReader.END_ARRAY) {
+      myArrayList.add(reader.getValue());
+    }
   }
 
 
@@ -203,7 +225,7 @@ public class JSONArray {
    */
   static public JSONArray parse(String source) {
     try {
-      return new JSONArray(new JSONTokener(source));
+      return new JSONArray(new StringReader(source));
     } catch (Exception e) {
       return null;
     }
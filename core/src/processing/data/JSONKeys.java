@@ -0,0 +1,79 @@
+package processing.data;
+
+
+/**
+ * Shared cache of JSON object keys, so that the thousands of objects in a
+ * typical data set all point at the same few String instances. Like
+ * String.intern(), but with a fixed size so that memory isn't tied up
+ * forever, and safe to use from several threads at once.
+ * <p>
+ * Each key has exactly one slot (based on its hash code), and a new key
+ * simply replaces whatever was there. Two threads racing on the same slot
+ * can at worst both store their own copy, which only costs a little
+ * sharing. Strings are immutable, so a reference read from the table is
+ * always a complete String even without locking.
+ */
+class JSONKeys {
+  static final int SIZE = 2048;  // must be a power of 2
+
+  /** Longer keys are rarely repeated, and are more work to compare. */
+  static final int MAX_LENGTH = 64;
+
+  static private final String[] table = new String[SIZE];
+
+
+  static String intern(String key) {
+    int length = key.length();
+    if (length > MAX_LENGTH) {
+      return key;
+    }
+    int slot = slot(key.hashCode());
+    String found = table[slot];
+    if (found != null && found.equals(key)) {
+      return found;
+    }
+    table[slot] = key;
+    return key;
+  }
+
+
+  /**
+   * Return the key for these characters, only creating a new String
+   * the first time (or after its slot was taken by another key).
+   */
+  static String intern(char[] chars, int offset, int length) {
+    if (length > MAX_LENGTH) {
+      return new String(chars, offset, length);
+    }
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      hash = 31*hash + chars[offset + i];
+    }
+    int slot = slot(hash);
+    String found = table[slot];
+    if (found != null && matches(found, chars, offset, length)) {
+      return found;
+    }
+    String key = new String(chars, offset, length);
+    table[slot] = key;
+    return key;
+  }
+
+
+  static private int slot(int hash) {
+    return (hash ^ (hash >>> 16)) & (SIZE - 1);
+  }
+
+
+  static private boolean matches(String key, char[] chars, int offset, int length) {
+    if (key.length() != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (key.charAt(i) != chars[offset + i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -38,6 +38,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Method;
@@ -111,21 +112,6 @@ import processing.core.PApplet;
  * @see PApplet#saveJSONArray(JSONArray, String)
  */
 public class JSONObject {
-  /**
-   * The maximum number of keys in the key pool.
-   */
-  private static final int keyPoolSize = 100;
-
-  /**
-   * Key pooling is like string interning, but without permanently tying up
-   * memory. To help conserve memory, storage of duplicated key strings in
-   * JSONObjects will be avoided by using a key pool to manage unique key
-   * string objects. This is used by JSONObject.put(string, object).
-   */
-  private static HashMap<String, Object> keyPool =
-    new HashMap<>(keyPoolSize);
-
-
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
@@ -223,7 +209,29 @@ public class JSONObject {
    * @nowebref
    */
   public JSONObject(Reader reader) {
-    this(new JSONTokener(reader));
+    this(new JSONReader(reader));
+  }
+
+
+  /**
+   * Construct a JSONObject from the object that starts at the reader's
+   * current token (or its first token, if nothing has been read yet).
+   * @throws RuntimeException If there is a syntax error or a duplicated key.
+   */
+  protected JSONObject(JSONReader reader) {
+    this();
+    if (reader.token == JSONReader.NONE) {
+      reader.next();
+    }
+    if (reader.token != JSONReader.BEGIN_OBJECT) {
+      throw new RuntimeException("A JSONObject text must begin with '{'" +
+                                 reader.location());
+    }
+    while (reader.next() != JSONReader.END_OBJECT) {
+      String key = reader.key;
+      reader.next();
+      this.putOnce(key, reader.getValue());
+    }
   }
 
 
@@ -398,7 +406,7 @@ public class JSONObject {
    *  string or a duplicated key.
    */
   static public JSONObject parse(String source) {
-    return new JSONObject(new JSONTokener(source));
+    return new JSONObject(new StringReader(source));
   }
 
 
@@ -1317,22 +1325,13 @@ public class JSONObject {
    *  or if the key is null.
    */
   public JSONObject put(String key, Object value) {
-    String pooled;
     if (key == null) {
       throw new RuntimeException("Null key.");
     }
     if (value != null) {
       testValidity(value);
-      pooled = (String)keyPool.get(key);
-      if (pooled == null) {
-        if (keyPool.size() >= keyPoolSize) {
-          keyPool = new HashMap<>(keyPoolSize);
-        }
-        keyPool.put(key, key);
-      } else {
-        key = pooled;
-      }
-      this.map.put(key, value);
+      // share one copy of each key, to help conserve memory
+      this.map.put(JSONKeys.intern(key), value);
     } else {
       this.remove(key);
     }
@@ -0,0 +1,791 @@
+package processing.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Reads JSON one token at a time, without building JSONObject or JSONArray
+ * trees. Useful for large files, and for newline-delimited feeds where each
+ * line is a separate JSON value (several top-level values are read one
+ * after another).
+ * <pre>
+ * JSONReader json = new JSONReader(createReader("quakes.json"));
+ * float total = 0;
+ * int token;
+ * while ((token = json.next()) != JSONReader.END) {
+ *   if (token == JSONReader.KEY &amp;&amp; json.getKey().equals("mag")) {
+ *     json.next();
+ *     total += json.getFloat();
+ *   }
+ * }
+ * json.close();
+ * </pre>
+ * Numbers are parsed straight from the input buffer by the typed getters,
+ * and object keys come from a shared cache, so reading a stream of
+ * numbers and keys creates almost no garbage. Use getObject(), getArray()
+ * or readValue() to build a tree for just part of the input.
+ * <p>
+ * The same relaxed syntax as JSONObject.parse() is accepted: single quoted
+ * and unquoted strings, '=' or '=&gt;' after keys, and ';' between values.
+ *
+ * @see JSONWriter
+ */
+public class JSONReader implements Closeable {
+  /** End of the input. */
+  static public final int END = 0;
+  static public final int BEGIN_OBJECT = 1;
+  static public final int END_OBJECT = 2;
+  static public final int BEGIN_ARRAY = 3;
+  static public final int END_ARRAY = 4;
+  /** The name of an object member, available from getKey(). */
+  static public final int KEY = 5;
+  static public final int STRING = 6;
+  static public final int NUMBER = 7;
+  static public final int BOOLEAN = 8;
+  static public final int NULL = 9;
+
+  /** Before the first call to next(). */
+  static final int NONE = -1;
+
+  // what comes next inside each open object or array
+  static final int OPENED = 0;       // first member or element, or the end
+  static final int AFTER_KEY = 1;    // ':' and then a value
+  static final int AFTER_VALUE = 2;  // ',' or the end
+
+  static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  Reader reader;
+  char[] buffer = new char[8192];
+  int position;
+  int limit;
+  long consumed;  // characters in earlier buffers
+  int line = 1;
+
+  boolean[] isObject = new boolean[32];
+  int[] state = new int[32];
+  int depth;
+
+  int token = NONE;
+  char[] text = new char[64];
+  int textLength;
+  boolean integral;  // NUMBER without a fraction or exponent
+  boolean bool;
+  String key;
+
+
+  public JSONReader(Reader reader) {
+    this.reader = reader;
+  }
+
+
+  /** Reads from a UTF-8 encoded stream. */
+  public JSONReader(InputStream input) {
+    this(new InputStreamReader(input, StandardCharsets.UTF_8));
+  }
+
+
+  public void close() throws IOException {
+    reader.close();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Move to the next token and return its type: BEGIN_OBJECT, END_OBJECT,
+   * BEGIN_ARRAY, END_ARRAY, KEY, STRING, NUMBER, BOOLEAN, NULL, or END
+   * once the input has run out.
+   * @throws RuntimeException if the JSON is malformed
+   */
+  public int next() {
+    int c = peekClean();
+    if (depth == 0) {
+      if (c == -1) {
+        return token = END;
+      }
+      return token = readValue(c);
+    }
+
+    int top = depth - 1;
+    if (isObject[top]) {
+      switch (state[top]) {
+        case OPENED:
+          if (c == '}') {
+            return endContainer();
+          }
+          return token = readKey(c);
+
+        case AFTER_KEY:
+          if (c == '=') {
+            position++;
+            if (peek() == '>') {
+              position++;
+            }
+          } else if (c == ':') {
+            position++;
+          } else {
+            throw syntaxError("Expected a ':' after a key");
+          }
+          state[top] = AFTER_VALUE;
+          return token = readValue(peekClean());
+
+        default:  // AFTER_VALUE
+          if (c == ',' || c == ';') {
+            position++;
+            c = peekClean();
+            if (c == '}') {
+              return endContainer();
+            }
+            return token = readKey(c);
+          } else if (c == '}') {
+            return endContainer();
+          }
+          throw syntaxError("Expected a ',' or '}'");
+      }
+
+    } else {
+      if (state[top] == OPENED) {
+        state[top] = AFTER_VALUE;
+        if (c == ']') {
+          return endContainer();
+        }
+      } else if (c == ',' || c == ';') {
+        position++;
+        c = peekClean();
+        if (c == ']') {
+          return endContainer();
+        }
+      } else if (c == ']') {
+        return endContainer();
+      } else {
+        throw syntaxError("Expected a ',' or ']'");
+      }
+      if (c == ',' || c == ';') {
+        // an empty element, as in [1,,2]
+        textLength = 0;
+        return token = NULL;
+      }
+      return token = readValue(c);
+    }
+  }
+
+
+  /** The type of the token that next() last returned. */
+  public int getToken() {
+    return token;
+  }
+
+
+  /** Number of objects and arrays that contain the current position. */
+  public int getDepth() {
+    return depth;
+  }
+
+
+  /** Line number of the current position, for error messages. */
+  public int getLine() {
+    return line;
+  }
+
+
+  /**
+   * Skip over the value at the current position. After a KEY, this is
+   * the value for that key. After BEGIN_OBJECT or BEGIN_ARRAY, this is
+   * everything up to and including the matching end.
+   */
+  public void skipValue() {
+    if (token == KEY) {
+      next();
+    }
+    if (token == BEGIN_OBJECT || token == BEGIN_ARRAY) {
+      int target = depth - 1;
+      while (depth > target) {
+        if (next() == END) {
+          throw syntaxError("Unexpected end of input");
+        }
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Name of the current KEY. */
+  public String getKey() {
+    if (token != KEY) {
+      throw new RuntimeException("Not a key" + location());
+    }
+    return key;
+  }
+
+
+  /**
+   * The current token as a String: the text of a STRING or NUMBER,
+   * "true" or "false" for a BOOLEAN, or null for NULL.
+   */
+  public String getString() {
+    switch (token) {
+      case KEY:
+        return key;
+      case STRING:
+      case NUMBER:
+        return new String(text, 0, textLength);
+      case BOOLEAN:
+        return bool ? "true" : "false";
+      case NULL:
+        return null;
+    }
+    throw new RuntimeException("Not a value" + location());
+  }
+
+
+  public boolean isNull() {
+    return token == NULL;
+  }
+
+
+  public boolean getBoolean() {
+    if (token == BOOLEAN) {
+      return bool;
+    }
+    if (token == STRING) {
+      if (textIs("true")) return true;
+      if (textIs("false")) return false;
+    }
+    throw new RuntimeException("Not a boolean" + location());
+  }
+
+
+  public int getInt() {
+    long value = getLong();
+    if (value != (int) value) {
+      throw new RuntimeException(getString() + " is too large for an int" + location());
+    }
+    return (int) value;
+  }
+
+
+  public long getLong() {
+    checkNumber();
+    if (!integral) {
+      return (long) getDouble();
+    }
+    int i = 0;
+    boolean negative = false;
+    if (text[0] == '-' || text[0] == '+') {
+      negative = text[0] == '-';
+      i++;
+    }
+    if (textLength - i > 18) {
+      // might overflow, leave that to the experts
+      return Long.parseLong(new String(text, 0, textLength));
+    }
+    long value = 0;
+    for (; i < textLength; i++) {
+      value = value*10 + (text[i] - '0');
+    }
+    return negative ? -value : value;
+  }
+
+
+  public float getFloat() {
+    checkNumber();
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean negative = false;
+    int i = 0;
+    if (text[0] == '-' || text[0] == '+') {
+      negative = text[0] == '-';
+      i++;
+    }
+    boolean point = false;
+    for (; i < textLength; i++) {
+      char c = text[i];
+      if (c == '.') {
+        point = true;
+      } else if (c >= '0' && c <= '9') {
+        if (digits < 18) {
+          mantissa = mantissa*10 + (c - '0');
+          if (mantissa != 0) digits++;
+          if (point) exponent--;
+        } else {
+          digits++;
+          if (!point) exponent++;
+        }
+      } else {  // e or E
+        break;
+      }
+    }
+    if (i < textLength) {
+      exponent += parseExponent(i + 1);
+    }
+    // Both the mantissa and the power of ten are exact as floats,
+    // so a single multiply or divide rounds correctly.
+    if (digits <= 7 && exponent >= -10 && exponent <= 10) {
+      float value = mantissa;
+      if (exponent < 0) {
+        value /= (float) POWERS_OF_TEN[-exponent];
+      } else {
+        value *= (float) POWERS_OF_TEN[exponent];
+      }
+      return negative ? -value : value;
+    }
+    return Float.parseFloat(new String(text, 0, textLength));
+  }
+
+
+  public double getDouble() {
+    checkNumber();
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean negative = false;
+    int i = 0;
+    if (text[0] == '-' || text[0] == '+') {
+      negative = text[0] == '-';
+      i++;
+    }
+    boolean point = false;
+    for (; i < textLength; i++) {
+      char c = text[i];
+      if (c == '.') {
+        point = true;
+      } else if (c >= '0' && c <= '9') {
+        if (digits < 18) {
+          mantissa = mantissa*10 + (c - '0');
+          if (mantissa != 0) digits++;
+          if (point) exponent--;
+        } else {
+          digits++;
+          if (!point) exponent++;
+        }
+      } else {
+        break;
+      }
+    }
+    if (i < textLength) {
+      exponent += parseExponent(i + 1);
+    }
+    // Clinger's fast path: exact mantissa and power of ten
+    if (digits <= 15 && exponent >= -22 && exponent <= 22) {
+      double value = mantissa;
+      if (exponent < 0) {
+        value /= POWERS_OF_TEN[-exponent];
+      } else {
+        value *= POWERS_OF_TEN[exponent];
+      }
+      return negative ? -value : value;
+    }
+    return Double.parseDouble(new String(text, 0, textLength));
+  }
+
+
+  private int parseExponent(int i) {
+    boolean negative = false;
+    if (text[i] == '-' || text[i] == '+') {
+      negative = text[i] == '-';
+      i++;
+    }
+    int value = 0;
+    for (; i < textLength; i++) {
+      // clamp so that silly exponents go the slow (correct) way
+      value = Math.min(value*10 + (text[i] - '0'), 100000);
+    }
+    return negative ? -value : value;
+  }
+
+
+  private void checkNumber() {
+    if (token == STRING) {
+      // numbers in quotes are common enough, allow them if they parse
+      if (!isNumber(text, textLength)) {
+        throw new RuntimeException(getString() + " is not a number" + location());
+      }
+      integral = isIntegral(text, textLength);
+    } else if (token != NUMBER) {
+      throw new RuntimeException("Not a number" + location());
+    }
+  }
+
+
+  private boolean textIs(String s) {
+    if (s.length() != textLength) {
+      return false;
+    }
+    for (int i = 0; i < textLength; i++) {
+      if (text[i] != s.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Read the next value (calling next() first) and return it as a
+   * JSONObject, JSONArray, String, Integer, Long, Double, Boolean,
+   * or JSONObject.NULL. Returns null at the end of the input.
+   */
+  public Object readValue() {
+    return (next() == END) ? null : getValue();
+  }
+
+
+  /**
+   * Return the value at the current position, reading the rest of it first
+   * if this is the start of an object or array.
+   */
+  public Object getValue() {
+    switch (token) {
+      case BEGIN_OBJECT:
+        return getObject();
+      case BEGIN_ARRAY:
+        return getArray();
+      case STRING:
+        return new String(text, 0, textLength);
+      case NUMBER:
+        return numberValue();
+      case BOOLEAN:
+        return bool ? Boolean.TRUE : Boolean.FALSE;
+      case NULL:
+        return JSONObject.NULL;
+    }
+    throw new RuntimeException("Not a value" + location());
+  }
+
+
+  /** Read the object that starts at the current BEGIN_OBJECT. */
+  public JSONObject getObject() {
+    return new JSONObject(this);
+  }
+
+
+  /** Read the array that starts at the current BEGIN_ARRAY. */
+  public JSONArray getArray() {
+    return new JSONArray(this);
+  }
+
+
+  /** Same rules as JSONObject.stringToValue() for unquoted numbers. */
+  private Object numberValue() {
+    if (integral) {
+      try {
+        long value = getLong();
+        if (value == (int) value) {
+          return Integer.valueOf((int) value);
+        }
+        return Long.valueOf(value);
+      } catch (NumberFormatException e) {
+        return new String(text, 0, textLength);  // too large for a long
+      }
+    }
+    double value = getDouble();
+    if (Double.isInfinite(value)) {
+      return new String(text, 0, textLength);
+    }
+    return Double.valueOf(value);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private int endContainer() {
+    position++;  // the '}' or ']'
+    depth--;
+    return token = isObject[depth] ? END_OBJECT : END_ARRAY;
+  }
+
+
+  private void push(boolean object) {
+    if (depth == isObject.length) {
+      isObject = Arrays.copyOf(isObject, depth << 1);
+      state = Arrays.copyOf(state, depth << 1);
+    }
+    isObject[depth] = object;
+    state[depth] = OPENED;
+    depth++;
+  }
+
+
+  private int readKey(int c) {
+    if (c == -1) {
+      throw syntaxError("A JSONObject text must end with '}'");
+    }
+    if (c == '"' || c == '\'') {
+      position++;
+      readString((char) c);
+    } else {
+      readUnquoted();
+    }
+    key = JSONKeys.intern(text, 0, textLength);
+    state[depth - 1] = AFTER_KEY;
+    return KEY;
+  }
+
+
+  private int readValue(int c) {
+    if (depth > 0) {
+      state[depth - 1] = AFTER_VALUE;
+    }
+    switch (c) {
+      case -1:
+        throw syntaxError("Missing value");
+      case '{':
+        position++;
+        push(true);
+        return BEGIN_OBJECT;
+      case '[':
+        position++;
+        push(false);
+        return BEGIN_ARRAY;
+      case '"':
+      case '\'':
+        position++;
+        readString((char) c);
+        return STRING;
+    }
+    readUnquoted();
+    if (textLength == 4 && matchesIgnoreCase("true")) {
+      bool = true;
+      return BOOLEAN;
+    } else if (textLength == 5 && matchesIgnoreCase("false")) {
+      bool = false;
+      return BOOLEAN;
+    } else if (textLength == 4 && matchesIgnoreCase("null")) {
+      return NULL;
+    } else if (isNumber(text, textLength)) {
+      integral = isIntegral(text, textLength);
+      return NUMBER;
+    }
+    return STRING;
+  }
+
+
+  private boolean matchesIgnoreCase(String word) {
+    for (int i = 0; i < textLength; i++) {
+      if (Character.toLowerCase(text[i]) != word.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  /** Sign, digits, optional fraction, optional exponent. */
+  static boolean isNumber(char[] s, int length) {
+    int i = 0;
+    if (i < length && (s[i] == '-' || s[i] == '+')) i++;
+    int digits = 0;
+    while (i < length && s[i] >= '0' && s[i] <= '9') { i++; digits++; }
+    if (i < length && s[i] == '.') {
+      i++;
+      while (i < length && s[i] >= '0' && s[i] <= '9') { i++; digits++; }
+    }
+    if (digits == 0) {
+      return false;
+    }
+    if (i < length && (s[i] == 'e' || s[i] == 'E')) {
+      i++;
+      if (i < length && (s[i] == '-' || s[i] == '+')) i++;
+      int expDigits = 0;
+      while (i < length && s[i] >= '0' && s[i] <= '9') { i++; expDigits++; }
+      if (expDigits == 0) {
+        return false;
+      }
+    }
+    return i == length;
+  }
+
+
+  static boolean isIntegral(char[] s, int length) {
+    for (int i = 0; i < length; i++) {
+      char c = s[i];
+      if (c == '.' || c == 'e' || c == 'E') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+
+  private void readString(char quote) {
+    textLength = 0;
+    for (;;) {
+      if (position == limit && !fill()) {
+        throw syntaxError("Unterminated string");
+      }
+      // copy runs of plain characters in one go
+      int start = position;
+      while (position < limit) {
+        char c = buffer[position];
+        if (c == quote || c == '\\' || c == '\n' || c == '\r') {
+          break;
+        }
+        position++;
+      }
+      append(buffer, start, position - start);
+      if (position == limit) {
+        continue;
+      }
+      char c = buffer[position++];
+      if (c == quote) {
+        return;
+      } else if (c == '\\') {
+        char escaped = nextChar();
+        switch (escaped) {
+          case 'b': append('\b'); break;
+          case 't': append('\t'); break;
+          case 'n': append('\n'); break;
+          case 'f': append('\f'); break;
+          case 'r': append('\r'); break;
+          case 'u':
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+              int digit = JSONTokener.dehexchar(nextChar());
+              if (digit == -1) {
+                throw syntaxError("Illegal escape.");
+              }
+              value = (value << 4) | digit;
+            }
+            append((char) value);
+            break;
+          case '"':
+          case '\'':
+          case '\\':
+          case '/':
+            append(escaped);
+            break;
+          default:
+            throw syntaxError("Illegal escape.");
+        }
+      } else {
+        throw syntaxError("Unterminated string");
+      }
+    }
+  }
+
+
+  private void readUnquoted() {
+    textLength = 0;
+    for (;;) {
+      if (position == limit && !fill()) {
+        break;
+      }
+      char c = buffer[position];
+      if (c < ' ' || ",:]}/\\\"[{;=#".indexOf(c) >= 0) {
+        break;
+      }
+      append(c);
+      position++;
+    }
+    // trim, same as the old tokener
+    int start = 0;
+    while (start < textLength && text[start] <= ' ') start++;
+    while (textLength > start && text[textLength - 1] <= ' ') textLength--;
+    if (start > 0) {
+      System.arraycopy(text, start, text, 0, textLength - start);
+      textLength -= start;
+    }
+    if (textLength == 0) {
+      throw syntaxError("Missing value");
+    }
+  }
+
+
+  private void append(char c) {
+    if (textLength == text.length) {
+      text = Arrays.copyOf(text, textLength << 1);
+    }
+    text[textLength++] = c;
+  }
+
+
+  private void append(char[] chars, int offset, int length) {
+    if (textLength + length > text.length) {
+      text = Arrays.copyOf(text, Math.max(textLength + length, text.length << 1));
+    }
+    System.arraycopy(chars, offset, text, textLength, length);
+    textLength += length;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Refill the buffer, returning false at the end of the input. */
+  private boolean fill() {
+    try {
+      consumed += limit;
+      position = 0;
+      limit = 0;
+      int count = reader.read(buffer, 0, buffer.length);
+      if (count <= 0) {
+        return false;
+      }
+      limit = count;
+      return true;
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  private int peek() {
+    if (position == limit && !fill()) {
+      return -1;
+    }
+    return buffer[position];
+  }
+
+
+  /** Skip whitespace and return the next character without consuming it. */
+  private int peekClean() {
+    for (;;) {
+      if (position == limit && !fill()) {
+        return -1;
+      }
+      char c = buffer[position];
+      if (c > ' ') {
+        return c;
+      }
+      if (c == '\n') {
+        line++;
+      }
+      position++;
+    }
+  }
+
+
+  private char nextChar() {
+    if (position == limit && !fill()) {
+      throw syntaxError("Unterminated string");
+    }
+    return buffer[position++];
+  }
+
+
+  String location() {
+    return " at " + (consumed + position) + " [line " + line + "]";
+  }
+
+
+  private RuntimeException syntaxError(String message) {
+    return new RuntimeException(message + location());
+  }
+}
@@ -0,0 +1,295 @@
+package processing.data;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * Writes JSON one value at a time, without building a JSONObject or
+ * JSONArray first. Output is compact, and each top-level value goes on
+ * its own line, so a series of objects makes a newline-delimited feed
+ * that JSONReader can read back.
+ * <pre>
+ * JSONWriter json = new JSONWriter(createWriter("points.json"));
+ * for (PVector p : points) {
+ *   json.beginObject();
+ *   json.key("x").value(p.x);
+ *   json.key("y").value(p.y);
+ *   json.endObject();
+ * }
+ * json.close();
+ * </pre>
+ * @see JSONReader
+ */
+public class JSONWriter implements Closeable, Flushable {
+  Writer writer;
+
+  // for each open object or array, whether anything has been written
+  boolean[] isObject = new boolean[32];
+  boolean[] started = new boolean[32];
+  int depth;
+  boolean afterKey;
+  boolean topLevelStarted;
+
+  char[] digits = new char[20];
+
+
+  public JSONWriter(Writer writer) {
+    this.writer = writer;
+  }
+
+
+  /** Writes UTF-8 to a stream. */
+  public JSONWriter(OutputStream output) {
+    this(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+  }
+
+
+  public void flush() {
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  public void close() throws IOException {
+    if (depth != 0) {
+      throw new IllegalStateException("Closed with " + depth + " objects or arrays still open");
+    }
+    writer.close();
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  public JSONWriter beginObject() {
+    return begin(true, '{');
+  }
+
+
+  public JSONWriter endObject() {
+    return end(true, '}');
+  }
+
+
+  public JSONWriter beginArray() {
+    return begin(false, '[');
+  }
+
+
+  public JSONWriter endArray() {
+    return end(false, ']');
+  }
+
+
+  /** Name of the next member of the current object. */
+  public JSONWriter key(String name) {
+    if (name == null) {
+      throw new RuntimeException("Null key.");
+    }
+    if (depth == 0 || !isObject[depth - 1] || afterKey) {
+      throw new IllegalStateException("key() is only allowed inside an object, before a value");
+    }
+    try {
+      if (started[depth - 1]) {
+        writer.write(',');
+      }
+      started[depth - 1] = true;
+      JSONObject.quote(name, writer);
+      writer.write(':');
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    afterKey = true;
+    return this;
+  }
+
+
+  public JSONWriter value(String value) {
+    if (value == null) {
+      return nullValue();
+    }
+    try {
+      separate();
+      JSONObject.quote(value, writer);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  public JSONWriter value(int value) {
+    return value((long) value);
+  }
+
+
+  public JSONWriter value(long value) {
+    try {
+      separate();
+      writeLong(value);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  public JSONWriter value(float value) {
+    if (Float.isNaN(value) || Float.isInfinite(value)) {
+      throw new RuntimeException("JSON does not allow non-finite numbers.");
+    }
+    if (value == (long) value && Math.abs(value) < 1e15f) {
+      // same as JSONObject, no trailing .0 for whole numbers
+      return value((long) value);
+    }
+    return number(Float.toString(value));
+  }
+
+
+  public JSONWriter value(double value) {
+    if (Double.isNaN(value) || Double.isInfinite(value)) {
+      throw new RuntimeException("JSON does not allow non-finite numbers.");
+    }
+    if (value == (long) value && Math.abs(value) < 1e15) {
+      return value((long) value);
+    }
+    return number(Double.toString(value));
+  }
+
+
+  public JSONWriter value(boolean value) {
+    try {
+      separate();
+      writer.write(value ? "true" : "false");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  public JSONWriter nullValue() {
+    try {
+      separate();
+      writer.write("null");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  /**
+   * Write a JSONObject, JSONArray, String, Number, Boolean, or
+   * JSONObject.NULL as a single (compact) value.
+   */
+  public JSONWriter value(Object value) {
+    try {
+      separate();
+      JSONObject.writeValue(writer, value, -1, 0);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  private JSONWriter begin(boolean object, char c) {
+    try {
+      separate();
+      writer.write(c);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (depth == isObject.length) {
+      isObject = Arrays.copyOf(isObject, depth << 1);
+      started = Arrays.copyOf(started, depth << 1);
+    }
+    isObject[depth] = object;
+    started[depth] = false;
+    depth++;
+    return this;
+  }
+
+
+  private JSONWriter end(boolean object, char c) {
+    if (depth == 0 || isObject[depth - 1] != object || afterKey) {
+      throw new IllegalStateException("Nothing to close with '" + c + "'");
+    }
+    depth--;
+    try {
+      writer.write(c);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  /** Write whatever needs to come before a value. */
+  private void separate() throws IOException {
+    if (depth == 0) {
+      if (topLevelStarted) {
+        writer.write('\n');
+      }
+      topLevelStarted = true;
+    } else if (isObject[depth - 1]) {
+      if (!afterKey) {
+        throw new IllegalStateException("Values inside an object need a key() first");
+      }
+      afterKey = false;
+    } else {
+      if (started[depth - 1]) {
+        writer.write(',');
+      }
+      started[depth - 1] = true;
+    }
+  }
+
+
+  private JSONWriter number(String text) {
+    try {
+      separate();
+      writer.write(text);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return this;
+  }
+
+
+  /** Write the digits without creating a String. */
+  private void writeLong(long value) throws IOException {
+    if (value == Long.MIN_VALUE) {
+      writer.write("-9223372036854775808");
+      return;
+    }
+    int index = digits.length;
+    boolean negative = value < 0;
+    if (negative) {
+      value = -value;
+    }
+    do {
+      digits[--index] = (char) ('0' + (value % 10));
+      value /= 10;
+    } while (value != 0);
+    if (negative) {
+      digits[--index] = '-';
+    }
+    writer.write(digits, index, digits.length - index);
+  }
+}
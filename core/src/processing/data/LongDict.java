@@ -1,7 +1,7 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -17,14 +17,20 @@ import processing.core.PApplet;
  */
 public class LongDict {
 
-  /** Number of elements in the table */
+  /**
+   * Number of elements in the table, including removed entries that
+   * have not been squeezed out yet (see compact)
+   */
   protected int count;
 
   protected String[] keys;
   protected long[] values;
 
+  /** Number of entries in keys/values that have been removed */
+  private int removed;
+
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private DictIndex indices = new DictIndex();
 
 
   public LongDict() {
@@ -44,6 +50,7 @@ public class LongDict {
     count = 0;
     keys = new String[length];
     values = new long[length];
+    indices = new DictIndex(length);
   }
 
 
@@ -63,7 +70,7 @@ public class LongDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = PApplet.parseInt(pieces[1]);
-        indices.put(pieces[0], count);
+        indices.put(pieces[0], keys, count, true);
         count++;
       }
     }
@@ -80,7 +87,7 @@ public class LongDict {
     this.values = values;
     count = keys.length;
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys[i], keys, i, true);
     }
   }
 
@@ -101,7 +108,7 @@ public class LongDict {
     for (int i = 0; i < count; i++) {
       keys[i] = (String) pairs[i][0];
       values[i] = (Integer) pairs[i][1];
-      indices.put(keys[i], i);
+      indices.put(keys[i], keys, i, true);
     }
   }
 
@@ -113,7 +120,7 @@ public class LongDict {
    * @brief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - removed;
   }
 
 
@@ -122,6 +129,7 @@ public class LongDict {
    * Helpful for situations like sorting and then grabbing the top 50 entries.
    */
   public void resize(int length) {
+    compact();
     if (length > count) {
       throw new IllegalArgumentException("resize() can only be used to shrink the dictionary");
     }
@@ -148,18 +156,63 @@ public class LongDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    removed = 0;
+    indices.clear();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+    indices.rebuild(keys, count);
+  }
+
+
+  /**
+   * Squeeze out the entries that were removed, so that the arrays
+   * are in order again. Removing is O(1), and the shifting is only
+   * done here, once for any number of removals, before the next
+   * time that something needs an entry by its position, or when the
+   * arrays are full and mostly removed entries (see create).
+   */
+  private void compact() {
+    if (removed != 0) {
+      int live = 0;
+      for (int i = 0; i < count; i++) {
+        // only the positions before i have been overwritten
+        if (indices.find(keys[i], keys) == i) {
+          keys[live] = keys[i];
+          values[live] = values[i];
+          live++;
+        }
+      }
+      Arrays.fill(keys, live, count, null);
+      count = live;
+      removed = 0;
+      resetIndices();
     }
   }
 
 
+  /** Position of the next entry that hasn't been removed. */
+  private int nextIndex(int index) {
+    index++;
+    if (removed != 0) {
+      while (index < count && indices.find(keys[index], keys) != index) {
+        index++;
+      }
+    }
+    return index;
+  }
+
+
+  private int advance(int index) {
+    index = nextIndex(index);
+    if (index >= count) {
+      throw new NoSuchElementException();
+    }
+    return index;
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
@@ -189,18 +242,16 @@ public class LongDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeEntry(index);
       }
 
       public Entry next() {
-        ++index;
-        Entry e = new Entry(keys[index], values[index]);
-        return e;
+        index = advance(index);
+        return new Entry(keys[index], values[index]);
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return nextIndex(index) < count;
       }
     };
   }
@@ -210,11 +261,13 @@ public class LongDict {
 
 
   public String key(int index) {
+    compact();
     return keys[index];
   }
 
 
   protected void crop() {
+    compact();
     if (count != keys.length) {
       keys = PApplet.subset(keys, 0, count);
       values = PApplet.subset(values, 0, count);
@@ -239,16 +292,16 @@ public class LongDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeEntry(index);
       }
 
       public String next() {
-        return key(++index);
+        index = advance(index);
+        return keys[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return nextIndex(index) < count;
       }
     };
   }
@@ -267,6 +320,7 @@ public class LongDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    compact();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -276,6 +330,7 @@ public class LongDict {
 
 
   public long value(int index) {
+    compact();
     return values[index];
   }
 
@@ -300,16 +355,16 @@ public class LongDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeEntry(index);
       }
 
       public Long next() {
-        return value(++index);
+        index = advance(index);
+        return values[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return nextIndex(index) < count;
       }
     };
   }
@@ -335,6 +390,7 @@ public class LongDict {
    * @param array values to copy into the array
    */
   public int[] valueArray(int[] array) {
+    compact();
     if (array == null || array.length != size()) {
       array = new int[count];
     }
@@ -350,7 +406,7 @@ public class LongDict {
    * @brief Return a value for the specified key
    */
   public long get(String key) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index == -1) {
       throw new IllegalArgumentException("No key named '" + key + "'");
     }
@@ -359,7 +415,7 @@ public class LongDict {
 
 
   public long get(String key, long alternate) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index == -1) return alternate;
     return values[index];
   }
@@ -372,7 +428,7 @@ public class LongDict {
    * @brief Create a new key/value pair or change the value of one
    */
   public void set(String key, long amount) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -382,11 +438,14 @@ public class LongDict {
 
 
   public void setIndex(int index, String key, long value) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
+    indices.remove(keys[index], keys);
     keys[index] = key;
     values[index] = value;
+    indices.put(key, keys, index, true);
   }
 
 
@@ -395,7 +454,7 @@ public class LongDict {
    * @brief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return indices.find(key, keys) != -1;
   }
 
 
@@ -416,7 +475,7 @@ public class LongDict {
    * even though it's technically an add().
    */
   public void increment(LongDict dict) {
-    for (int i = 0; i < dict.count; i++) {
+    for (int i = 0; i < dict.size(); i++) {
       add(dict.key(i), dict.value(i));
     }
   }
@@ -427,7 +486,7 @@ public class LongDict {
    * @brief Add to a value
    */
   public void add(String key, long amount) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index == -1) {
       create(key, amount);
     } else {
@@ -450,7 +509,7 @@ public class LongDict {
    * @brief Multiply a value
    */
   public void mult(String key, long amount) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index != -1) {
       values[index] *= amount;
     }
@@ -462,7 +521,7 @@ public class LongDict {
    * @brief Divide a value
    */
   public void div(String key, long amount) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index != -1) {
       values[index] /= amount;
     }
@@ -470,7 +529,7 @@ public class LongDict {
 
 
   private void checkMinMax(String functionName) {
-    if (count == 0) {
+    if (size() == 0) {
       String msg =
         String.format("Cannot use %s() on an empty %s.",
                       functionName, getClass().getSimpleName());
@@ -481,6 +540,7 @@ public class LongDict {
 
   // return the index of the minimum value
   public int minIndex() {
+    compact();
     //checkMinMax("minIndex");
     if (count == 0) return -1;
 
@@ -516,6 +576,7 @@ public class LongDict {
 
   // return the index of the max value
   public int maxIndex() {
+    compact();
     //checkMinMax("maxIndex");
     if (count == 0) {
       return -1;
@@ -551,6 +612,7 @@ public class LongDict {
 
 
   public long sum() {
+    compact();
     long sum = 0;
     for (int i = 0; i < count; i++) {
       sum += values[i];
@@ -560,17 +622,24 @@ public class LongDict {
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    compact();
+    return indices.find(what, keys);
   }
 
 
   protected void create(String what, long much) {
     if (count == keys.length) {
-      keys = PApplet.expand(keys);
-      values = PApplet.expand(values);
+      // under add/remove churn, reuse the space of the removed
+      // entries instead of growing the arrays without bound
+      if (removed > count / 2) {
+        compact();
+      }
+      if (count == keys.length) {
+        keys = PApplet.expand(keys);
+        values = PApplet.expand(values);
+      }
     }
-    indices.put(what, Integer.valueOf(count));
+    indices.put(what, keys, count, false);
     keys[count] = what;
     values[count] = much;
     count++;
@@ -582,44 +651,71 @@ public class LongDict {
    * @brief Remove a key/value pair
    */
   public long remove(String key) {
-    int index = index(key);
+    int index = indices.remove(key, keys);
     if (index == -1) {
       throw new NoSuchElementException("'" + key + "' not found");
     }
     long value = values[index];
-    removeIndex(index);
+    discard(index);
     return value;
   }
 
 
   public long removeIndex(int index) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
     long value = values[index];
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = 0;
+    removeEntry(index);
     return value;
   }
 
 
+  private void removeEntry(int index) {
+    indices.remove(keys[index], keys);
+    discard(index);
+  }
+
+
+  /** The entry at this position is gone from the index, deal with the arrays. */
+  private void discard(int index) {
+    if (index == count - 1) {
+      count--;
+      keys[count] = null;
+      values[count] = 0;
+    } else {
+      removed++;
+    }
+  }
+
+
   public void swap(int a, int b) {
+    compact();
+    if (a < 0 || a >= count) {
+      throw new ArrayIndexOutOfBoundsException(a);
+    }
+    if (b < 0 || b >= count) {
+      throw new ArrayIndexOutOfBoundsException(b);
+    }
+    // the index finds entries by position, so take both keys out
+    // before they move, and put them back at their new positions
+    indices.remove(keys[a], keys);
+    indices.remove(keys[b], keys);
+    swapEntries(a, b);
+    indices.put(keys[a], keys, a, true);
+    indices.put(keys[b], keys, b, true);
+  }
+
+
+  /** Swap two entries without touching the index, for sortImpl(). */
+  private void swapEntries(int a, int b) {
     String tkey = keys[a];
     long tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-//    indices.put(keys[a], Integer.valueOf(a));
-//    indices.put(keys[b], Integer.valueOf(b));
   }
 
 
@@ -685,6 +781,7 @@ public class LongDict {
 
   protected void sortImpl(final boolean useKeys, final boolean reverse,
                           final boolean stable) {
+    compact();
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -716,7 +813,7 @@ public class LongDict {
 
       @Override
       public void swap(int a, int b) {
-        LongDict.this.swap(a, b);
+        swapEntries(a, b);
       }
     };
     s.run();
@@ -744,18 +841,18 @@ public class LongDict {
 
   /** Returns a duplicate copy of this object. */
   public LongDict copy() {
+    compact();
     LongDict outgoing = new LongDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices = indices.copy();
     outgoing.count = count;
     return outgoing;
   }
 
 
   public void print() {
+    compact();
     for (int i = 0; i < size(); i++) {
       System.out.println(keys[i] + " = " + values[i]);
     }
@@ -776,6 +873,7 @@ public class LongDict {
    * Write tab-delimited entries to a PrintWriter
    */
   public void write(PrintWriter writer) {
+    compact();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -787,6 +885,7 @@ public class LongDict {
    * Return this dictionary as a String in JSON format.
    */
   public String toJSON() {
+    compact();
     StringList items = new StringList();
     for (int i = 0; i < count; i++) {
       items.append(JSONObject.quote(keys[i])+ ": " + values[i]);
@@ -1,11 +1,39 @@
 package processing.data;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 
 /**
  * Internal sorter used by several data classes.
  * Advanced users only, not official API.
+ * <p>
+ * Subclasses provide size(), compare(), and swap(), and run() sorts with
+ * an introsort: quicksort with a median-of-three pivot, insertion sort for
+ * short ranges, and heapsort if the partitions go badly, so presorted or
+ * adversarial input is still O(n log n).
+ * <p>
+ * The static methods are faster paths for primitive arrays that don't
+ * need a compare() call for each element: radix sorts for large arrays
+ * (the JDK's dual-pivot quicksort for the small ones), stable row orders
+ * for sorting a Table by a column, and a stable merge sort that runs on
+ * all cores for everything else.
  */
 public abstract class Sort implements Runnable {
+  /** Ranges shorter than this use insertion sort. */
+  static final int INSERTION_SORT = 16;
+
+  /** Arrays shorter than this are left to Arrays.sort() */
+  static final int RADIX_SORT = 1 << 12;
+
+  /** Bits sorted by each pass of a radix sort. */
+  static final int RADIX_BITS = 11;
+  static final int RADIX_MASK = (1 << RADIX_BITS) - 1;
+
+  /** Below this size, a merge sort just runs on the current thread. */
+  static final int PARALLEL_MERGE = 1 << 13;
+
 
   public Sort() { }
 
@@ -18,29 +46,450 @@ public abstract class Sort implements Runnable {
   }
 
 
+  /** Sort the range from i to j, inclusive. */
   protected void sort(int i, int j) {
-    int pivotIndex = (i+j)/2;
-    swap(pivotIndex, j);
-    int k = partition(i-1, j);
-    swap(k, j);
-    if ((k-i) > 1) sort(i, k-1);
-    if ((j-k) > 1) sort(k+1, j);
+    int depth = 2 * (31 - Integer.numberOfLeadingZeros(j - i + 1));
+    introSort(i, j, depth);
+  }
+
+
+  private void introSort(int lo, int hi, int depth) {
+    while (hi - lo >= INSERTION_SORT) {
+      if (depth-- == 0) {
+        heapSort(lo, hi);
+        return;
+      }
+      // order lo, mid, hi so that both ends act as sentinels,
+      // then use the median as the pivot, parked at hi-1
+      int mid = (lo + hi) >>> 1;
+      if (compare(mid, lo) < 0) swap(mid, lo);
+      if (compare(hi, lo) < 0) swap(hi, lo);
+      if (compare(hi, mid) < 0) swap(hi, mid);
+      int pivot = hi - 1;
+      swap(mid, pivot);
+
+      // stopping on equal values keeps runs of duplicates balanced
+      int left = lo;
+      int right = pivot;
+      while (true) {
+        while (compare(++left, pivot) < 0) { }
+        while (compare(--right, pivot) > 0) { }
+        if (left >= right) break;
+        swap(left, right);
+      }
+      swap(left, pivot);
+
+      // recurse on the smaller side, loop on the larger one
+      if (left - lo < hi - left) {
+        introSort(lo, left - 1, depth);
+        lo = left + 1;
+      } else {
+        introSort(left + 1, hi, depth);
+        hi = left - 1;
+      }
+    }
+    insertionSort(lo, hi);
   }
 
 
-  protected int partition(int left, int right) {
-    int pivot = right;
-    do {
-      while (compare(++left, pivot) < 0) { }
-      while ((right != 0) && (compare(--right, pivot) > 0)) { }
-      swap(left, right);
-    } while (left < right);
-    swap(left, right);
-    return left;
+  private void insertionSort(int lo, int hi) {
+    for (int i = lo + 1; i <= hi; i++) {
+      for (int j = i; j > lo && compare(j - 1, j) > 0; j--) {
+        swap(j - 1, j);
+      }
+    }
+  }
+
+
+  private void heapSort(int lo, int hi) {
+    int n = hi - lo + 1;
+    for (int i = n/2 - 1; i >= 0; i--) {
+      siftDown(lo, i, n);
+    }
+    for (int end = n - 1; end > 0; end--) {
+      swap(lo, lo + end);
+      siftDown(lo, 0, end);
+    }
+  }
+
+
+  private void siftDown(int lo, int i, int n) {
+    while (true) {
+      int child = 2*i + 1;
+      if (child >= n) return;
+      if (child + 1 < n && compare(lo + child, lo + child + 1) < 0) {
+        child++;
+      }
+      if (compare(lo + i, lo + child) >= 0) return;
+      swap(lo + i, lo + child);
+      i = child;
+    }
   }
 
 
   abstract public int size();
   abstract public int compare(int a, int b);
   abstract public void swap(int a, int b);
-}
\ No newline at end of file
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Compares two rows, items, etc. by their index. */
+  interface IndexComparator {
+    int compare(int a, int b);
+  }
+
+
+  static void sort(int[] data, int from, int to) {
+    if (to - from < RADIX_SORT) {
+      Arrays.sort(data, from, to);
+      return;
+    }
+    int count = to - from;
+    int[] bits = new int[count];
+    for (int i = 0; i < count; i++) {
+      bits[i] = data[from + i] ^ Integer.MIN_VALUE;
+    }
+    bits = radixSort(bits, null, count);
+    for (int i = 0; i < count; i++) {
+      data[from + i] = bits[i] ^ Integer.MIN_VALUE;
+    }
+  }
+
+
+  static void sort(long[] data, int from, int to) {
+    if (to - from < RADIX_SORT) {
+      Arrays.sort(data, from, to);
+      return;
+    }
+    int count = to - from;
+    long[] bits = new long[count];
+    for (int i = 0; i < count; i++) {
+      bits[i] = data[from + i] ^ Long.MIN_VALUE;
+    }
+    bits = radixSort(bits, null, count);
+    for (int i = 0; i < count; i++) {
+      data[from + i] = bits[i] ^ Long.MIN_VALUE;
+    }
+  }
+
+
+  /** Same order as Arrays.sort(), with NaN values at the end. */
+  static void sort(float[] data, int from, int to) {
+    if (to - from < RADIX_SORT) {
+      Arrays.sort(data, from, to);
+      return;
+    }
+    int count = to - from;
+    int[] bits = new int[count];
+    for (int i = 0; i < count; i++) {
+      bits[i] = floatBits(data[from + i]);
+    }
+    bits = radixSort(bits, null, count);
+    for (int i = 0; i < count; i++) {
+      int b = bits[i];
+      data[from + i] = Float.intBitsToFloat(b ^ ((~b >> 31) | Integer.MIN_VALUE));
+    }
+  }
+
+
+  static void sort(double[] data, int from, int to) {
+    if (to - from < RADIX_SORT) {
+      Arrays.sort(data, from, to);
+      return;
+    }
+    int count = to - from;
+    long[] bits = new long[count];
+    for (int i = 0; i < count; i++) {
+      bits[i] = doubleBits(data[from + i]);
+    }
+    bits = radixSort(bits, null, count);
+    for (int i = 0; i < count; i++) {
+      long b = bits[i];
+      data[from + i] = Double.longBitsToDouble(b ^ ((~b >> 63) | Long.MIN_VALUE));
+    }
+  }
+
+
+  /**
+   * Float bits rearranged so that comparing them as unsigned ints gives
+   * the same order as Float.compare(), with NaN after positive infinity.
+   */
+  static int floatBits(float value) {
+    int b = Float.floatToIntBits(value);
+    return b ^ ((b >> 31) | Integer.MIN_VALUE);
+  }
+
+
+  static long doubleBits(double value) {
+    long b = Double.doubleToLongBits(value);
+    return b ^ ((b >> 63) | Long.MIN_VALUE);
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Stable order of the first 'count' items by value, i.e. the index of
+   * the smallest value first, and equal values in their original order.
+   * Same ordering as Integer.compare(), or reversed for descending order.
+   */
+  static int[] order(int[] values, int count, boolean reverse) {
+    int flip = reverse ? -1 : 0;
+    int[] bits = new int[count];
+    for (int i = 0; i < count; i++) {
+      bits[i] = (values[i] ^ Integer.MIN_VALUE) ^ flip;
+    }
+    return orderBits(bits, count);
+  }
+
+
+  static int[] order(long[] values, int count, boolean reverse) {
+    long flip = reverse ? -1 : 0;
+    long[] bits = new long[count];
+    for (int i = 0; i < count; i++) {
+      bits[i] = (values[i] ^ Long.MIN_VALUE) ^ flip;
+    }
+    return orderBits(bits, count);
+  }
+
+
+  /**
+   * Same ordering as Float.compare(), so NaN values come last. They stay
+   * last when reversed too, like FloatList.sortReverse() leaves them.
+   */
+  static int[] order(float[] values, int count, boolean reverse) {
+    int flip = reverse ? -1 : 0;
+    int[] bits = new int[count];
+    for (int i = 0; i < count; i++) {
+      float value = values[i];
+      // no number maps to all ones, so NaN sorts after everything
+      bits[i] = (value != value) ? -1 : floatBits(value) ^ flip;
+    }
+    return orderBits(bits, count);
+  }
+
+
+  static int[] order(double[] values, int count, boolean reverse) {
+    long flip = reverse ? -1 : 0;
+    long[] bits = new long[count];
+    for (int i = 0; i < count; i++) {
+      double value = values[i];
+      bits[i] = (value != value) ? -1 : doubleBits(value) ^ flip;
+    }
+    return orderBits(bits, count);
+  }
+
+
+  /**
+   * Stable order of 'count' items using a comparator, sorted with a merge
+   * sort that splits the work across the common ForkJoinPool. The
+   * comparator must be safe to call from several threads at once.
+   */
+  static int[] order(int count, IndexComparator comparator) {
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    int[] buffer = new int[count];
+    if (count < PARALLEL_MERGE) {
+      mergeSort(order, buffer, 0, count, comparator);
+    } else {
+      ForkJoinPool.commonPool().invoke(new MergeTask(order, buffer, 0, count, comparator));
+    }
+    return order;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Unsigned keys in bits[] become sorted, 'order' (if any) follows along. */
+  static int[] orderBits(int[] bits, int count) {
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    radixSort(bits, order, count);
+    return order;
+  }
+
+
+  static int[] orderBits(long[] bits, int count) {
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    radixSort(bits, order, count);
+    return order;
+  }
+
+
+  /**
+   * LSD radix sort of unsigned ints, which is stable, so that 'order'
+   * can carry the original positions along. Passes where every value
+   * has the same digit are skipped. Returns the sorted array, which may
+   * be 'bits' or a new one; 'order' is always updated in place.
+   */
+  static private int[] radixSort(int[] bits, int[] order, int count) {
+    if (count == 0) {
+      return bits;
+    }
+    int[] bitsOut = new int[count];
+    int[] orderOut = (order != null) ? new int[count] : null;
+    int[] bitsIn = bits;
+    int[] orderIn = order;
+    int[] histogram = new int[RADIX_MASK + 1];
+
+    for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+      Arrays.fill(histogram, 0);
+      for (int i = 0; i < count; i++) {
+        histogram[(bitsIn[i] >>> shift) & RADIX_MASK]++;
+      }
+      if (histogram[(bitsIn[0] >>> shift) & RADIX_MASK] == count) {
+        continue;  // nothing would move
+      }
+      int total = 0;
+      for (int d = 0; d <= RADIX_MASK; d++) {
+        int c = histogram[d];
+        histogram[d] = total;
+        total += c;
+      }
+      for (int i = 0; i < count; i++) {
+        int b = bitsIn[i];
+        int to = histogram[(b >>> shift) & RADIX_MASK]++;
+        bitsOut[to] = b;
+        if (orderIn != null) {
+          orderOut[to] = orderIn[i];
+        }
+      }
+      int[] temp = bitsIn; bitsIn = bitsOut; bitsOut = temp;
+      temp = orderIn; orderIn = orderOut; orderOut = temp;
+    }
+    if (order != null && orderIn != order) {
+      System.arraycopy(orderIn, 0, order, 0, count);
+    }
+    return bitsIn;
+  }
+
+
+  static private long[] radixSort(long[] bits, int[] order, int count) {
+    if (count == 0) {
+      return bits;
+    }
+    long[] bitsOut = new long[count];
+    int[] orderOut = (order != null) ? new int[count] : null;
+    long[] bitsIn = bits;
+    int[] orderIn = order;
+    int[] histogram = new int[RADIX_MASK + 1];
+
+    for (int shift = 0; shift < 64; shift += RADIX_BITS) {
+      Arrays.fill(histogram, 0);
+      for (int i = 0; i < count; i++) {
+        histogram[(int) (bitsIn[i] >>> shift) & RADIX_MASK]++;
+      }
+      if (histogram[(int) (bitsIn[0] >>> shift) & RADIX_MASK] == count) {
+        continue;
+      }
+      int total = 0;
+      for (int d = 0; d <= RADIX_MASK; d++) {
+        int c = histogram[d];
+        histogram[d] = total;
+        total += c;
+      }
+      for (int i = 0; i < count; i++) {
+        long b = bitsIn[i];
+        int to = histogram[(int) (b >>> shift) & RADIX_MASK]++;
+        bitsOut[to] = b;
+        if (orderIn != null) {
+          orderOut[to] = orderIn[i];
+        }
+      }
+      long[] temp = bitsIn; bitsIn = bitsOut; bitsOut = temp;
+      int[] tempOrder = orderIn; orderIn = orderOut; orderOut = tempOrder;
+    }
+    if (order != null && orderIn != order) {
+      System.arraycopy(orderIn, 0, order, 0, count);
+    }
+    return bitsIn;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Stable sort of order[from, to) using buffer[from, to) as scratch. */
+  static private void mergeSort(int[] order, int[] buffer, int from, int to,
+                                IndexComparator comparator) {
+    if (to - from <= INSERTION_SORT) {
+      for (int i = from + 1; i < to; i++) {
+        int item = order[i];
+        int j = i;
+        while (j > from && comparator.compare(order[j - 1], item) > 0) {
+          order[j] = order[j - 1];
+          j--;
+        }
+        order[j] = item;
+      }
+      return;
+    }
+    int mid = (from + to) >>> 1;
+    mergeSort(order, buffer, from, mid, comparator);
+    mergeSort(order, buffer, mid, to, comparator);
+    merge(order, buffer, from, mid, to, comparator);
+  }
+
+
+  static private void merge(int[] order, int[] buffer, int from, int mid, int to,
+                            IndexComparator comparator) {
+    if (comparator.compare(order[mid - 1], order[mid]) <= 0) {
+      return;  // already in order, common with presorted data
+    }
+    System.arraycopy(order, from, buffer, from, mid - from);
+    int left = from;
+    int right = mid;
+    int out = from;
+    while (left < mid && right < to) {
+      // take from the left on ties, which is what keeps this stable
+      if (comparator.compare(order[right], buffer[left]) < 0) {
+        order[out++] = order[right++];
+      } else {
+        order[out++] = buffer[left++];
+      }
+    }
+    System.arraycopy(buffer, left, order, out, mid - left);
+  }
+
+
+  static class MergeTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    final int[] order;
+    final int[] buffer;
+    final int from, to;
+    final IndexComparator comparator;
+
+    MergeTask(int[] order, int[] buffer, int from, int to,
+              IndexComparator comparator) {
+      this.order = order;
+      this.buffer = buffer;
+      this.from = from;
+      this.to = to;
+      this.comparator = comparator;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from < PARALLEL_MERGE) {
+        mergeSort(order, buffer, from, to, comparator);
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new MergeTask(order, buffer, from, mid, comparator),
+                  new MergeTask(order, buffer, mid, to, comparator));
+        merge(order, buffer, from, mid, to, comparator);
+      }
+    }
+  }
+}
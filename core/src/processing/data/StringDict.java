@@ -1,7 +1,7 @@
 package processing.data;
 
 import java.io.*;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -17,14 +17,20 @@ import processing.core.PApplet;
  */
 public class StringDict {
 
-  /** Number of elements in the table */
+  /**
+   * Number of elements in the table, including removed entries that
+   * have not been squeezed out yet (see compact)
+   */
   protected int count;
 
   protected String[] keys;
   protected String[] values;
 
+  /** Number of entries in keys/values that have been removed */
+  private int removed;
+
   /** Internal implementation for faster lookups */
-  private HashMap<String, Integer> indices = new HashMap<>();
+  private DictIndex indices = new DictIndex();
 
 
   public StringDict() {
@@ -45,6 +51,7 @@ public class StringDict {
     count = 0;
     keys = new String[length];
     values = new String[length];
+    indices = new DictIndex(length);
   }
 
 
@@ -64,7 +71,7 @@ public class StringDict {
       if (pieces.length == 2) {
         keys[count] = pieces[0];
         values[count] = pieces[1];
-        indices.put(keys[count], count);
+        indices.put(keys[count], keys, count, true);
         count++;
       }
     }
@@ -82,7 +89,7 @@ public class StringDict {
     this.values = values;
     count = keys.length;
     for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+      indices.put(keys[i], keys, i, true);
     }
   }
 
@@ -104,7 +111,7 @@ public class StringDict {
     for (int i = 0; i < count; i++) {
       keys[i] = pairs[i][0];
       values[i] = pairs[i][1];
-      indices.put(keys[i], i);
+      indices.put(keys[i], keys, i, true);
     }
   }
 
@@ -134,7 +141,7 @@ public class StringDict {
    * @brief Returns the number of key/value pairs
    */
   public int size() {
-    return count;
+    return count - removed;
   }
 
 
@@ -143,6 +150,7 @@ public class StringDict {
    * Helpful for situations like sorting and then grabbing the top 50 entries.
    */
   public void resize(int length) {
+    compact();
     if (length > count) {
       throw new IllegalArgumentException("resize() can only be used to shrink the dictionary");
     }
@@ -169,15 +177,61 @@ public class StringDict {
    */
   public void clear() {
     count = 0;
-    indices = new HashMap<>();
+    removed = 0;
+    indices.clear();
   }
 
 
   private void resetIndices() {
-    indices = new HashMap<>(count);
-    for (int i = 0; i < count; i++) {
-      indices.put(keys[i], i);
+    indices.rebuild(keys, count);
+  }
+
+
+  /**
+   * Squeeze out the entries that were removed, so that the arrays
+   * are in order again. Removing is O(1), and the shifting is only
+   * done here, once for any number of removals, before the next
+   * time that something needs an entry by its position, or when the
+   * arrays are full and mostly removed entries (see create).
+   */
+  private void compact() {
+    if (removed != 0) {
+      int live = 0;
+      for (int i = 0; i < count; i++) {
+        // only the positions before i have been overwritten
+        if (indices.find(keys[i], keys) == i) {
+          keys[live] = keys[i];
+          values[live] = values[i];
+          live++;
+        }
+      }
+      Arrays.fill(keys, live, count, null);
+      Arrays.fill(values, live, count, null);
+      count = live;
+      removed = 0;
+      resetIndices();
+    }
+  }
+
+
+  /** Position of the next entry that hasn't been removed. */
+  private int nextIndex(int index) {
+    index++;
+    if (removed != 0) {
+      while (index < count && indices.find(keys[index], keys) != index) {
+        index++;
+      }
+    }
+    return index;
+  }
+
+
+  private int advance(int index) {
+    index = nextIndex(index);
+    if (index >= count) {
+      throw new NoSuchElementException();
     }
+    return index;
   }
 
 
@@ -210,18 +264,16 @@ public class StringDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeEntry(index);
       }
 
       public Entry next() {
-        ++index;
-        Entry e = new Entry(keys[index], values[index]);
-        return e;
+        index = advance(index);
+        return new Entry(keys[index], values[index]);
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return nextIndex(index) < count;
       }
     };
   }
@@ -231,11 +283,13 @@ public class StringDict {
 
 
   public String key(int index) {
+    compact();
     return keys[index];
   }
 
 
   protected void crop() {
+    compact();
     if (count != keys.length) {
       keys = PApplet.subset(keys, 0, count);
       values = PApplet.subset(values, 0, count);
@@ -260,16 +314,16 @@ public class StringDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeEntry(index);
       }
 
       public String next() {
-        return key(++index);
+        index = advance(index);
+        return keys[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return nextIndex(index) < count;
       }
     };
   }
@@ -288,6 +342,7 @@ public class StringDict {
 
 
   public String[] keyArray(String[] outgoing) {
+    compact();
     if (outgoing == null || outgoing.length != count) {
       outgoing = new String[count];
     }
@@ -297,6 +352,7 @@ public class StringDict {
 
 
   public String value(int index) {
+    compact();
     return values[index];
   }
 
@@ -320,16 +376,16 @@ public class StringDict {
       int index = -1;
 
       public void remove() {
-        removeIndex(index);
-        index--;
+        removeEntry(index);
       }
 
       public String next() {
-        return value(++index);
+        index = advance(index);
+        return values[index];
       }
 
       public boolean hasNext() {
-        return index+1 < size();
+        return nextIndex(index) < count;
       }
     };
   }
@@ -353,6 +409,7 @@ public class StringDict {
    * size as the number of values, a new array will be allocated and returned.
    */
   public String[] valueArray(String[] array) {
+    compact();
     if (array == null || array.length != size()) {
       array = new String[count];
     }
@@ -368,14 +425,14 @@ public class StringDict {
    * @brief Return a value for the specified key
    */
   public String get(String key) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index == -1) return null;
     return values[index];
   }
 
 
   public String get(String key, String alternate) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index == -1) return alternate;
     return values[index];
   }
@@ -386,7 +443,7 @@ public class StringDict {
    * @brief Create a new key/value pair or change the value of one
    */
   public void set(String key, String value) {
-    int index = index(key);
+    int index = indices.find(key, keys);
     if (index == -1) {
       create(key, value);
     } else {
@@ -396,17 +453,20 @@ public class StringDict {
 
 
   public void setIndex(int index, String key, String value) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
+    indices.remove(keys[index], keys);
     keys[index] = key;
     values[index] = value;
+    indices.put(key, keys, index, true);
   }
 
 
   public int index(String what) {
-    Integer found = indices.get(what);
-    return (found == null) ? -1 : found.intValue();
+    compact();
+    return indices.find(what, keys);
   }
 
 
@@ -415,16 +475,23 @@ public class StringDict {
    * @brief Check if a key is a part of the data structure
    */
   public boolean hasKey(String key) {
-    return index(key) != -1;
+    return indices.find(key, keys) != -1;
   }
 
 
   protected void create(String key, String value) {
     if (count == keys.length) {
-      keys = PApplet.expand(keys);
-      values = PApplet.expand(values);
+      // under add/remove churn, reuse the space of the removed
+      // entries instead of growing the arrays without bound
+      if (removed > count / 2) {
+        compact();
+      }
+      if (count == keys.length) {
+        keys = PApplet.expand(keys);
+        values = PApplet.expand(values);
+      }
     }
-    indices.put(key, Integer.valueOf(count));
+    indices.put(key, keys, count, false);
     keys[count] = key;
     values[count] = value;
     count++;
@@ -435,45 +502,72 @@ public class StringDict {
    * @brief Remove a key/value pair
    */
   public String remove(String key) {
-    int index = index(key);
+    int index = indices.remove(key, keys);
     if (index == -1) {
       throw new NoSuchElementException("'" + key + "' not found");
     }
     String value = values[index];
-    removeIndex(index);
+    discard(index);
     return value;
   }
 
 
   public String removeIndex(int index) {
+    compact();
     if (index < 0 || index >= count) {
       throw new ArrayIndexOutOfBoundsException(index);
     }
     String value = values[index];
-    indices.remove(keys[index]);
-    for (int i = index; i < count-1; i++) {
-      keys[i] = keys[i+1];
-      values[i] = values[i+1];
-      indices.put(keys[i], i);
-    }
-    count--;
-    keys[count] = null;
-    values[count] = null;
+    removeEntry(index);
     return value;
   }
 
 
+  private void removeEntry(int index) {
+    indices.remove(keys[index], keys);
+    discard(index);
+  }
+
+
+  /** The entry at this position is gone from the index, deal with the arrays. */
+  private void discard(int index) {
+    if (index == count - 1) {
+      count--;
+      keys[count] = null;
+      values[count] = null;
+    } else {
+      removed++;
+    }
+  }
+
+
 
   public void swap(int a, int b) {
+    compact();
+    if (a < 0 || a >= count) {
+      throw new ArrayIndexOutOfBoundsException(a);
+    }
+    if (b < 0 || b >= count) {
+      throw new ArrayIndexOutOfBoundsException(b);
+    }
+    // the index finds entries by position, so take both keys out
+    // before they move, and put them back at their new positions
+    indices.remove(keys[a], keys);
+    indices.remove(keys[b], keys);
+    swapEntries(a, b);
+    indices.put(keys[a], keys, a, true);
+    indices.put(keys[b], keys, b, true);
+  }
+
+
+  /** Swap two entries without touching the index, for sortImpl(). */
+  private void swapEntries(int a, int b) {
     String tkey = keys[a];
     String tvalue = values[a];
     keys[a] = keys[b];
     values[a] = values[b];
     keys[b] = tkey;
     values[b] = tvalue;
-
-//    indices.put(keys[a], Integer.valueOf(a));
-//    indices.put(keys[b], Integer.valueOf(b));
   }
 
 
@@ -518,6 +612,7 @@ public class StringDict {
 
 
   protected void sortImpl(final boolean useKeys, final boolean reverse) {
+    compact();
     Sort s = new Sort() {
       @Override
       public int size() {
@@ -543,7 +638,7 @@ public class StringDict {
 
       @Override
       public void swap(int a, int b) {
-        StringDict.this.swap(a, b);
+        swapEntries(a, b);
       }
     };
     s.run();
@@ -555,18 +650,18 @@ public class StringDict {
 
   /** Returns a duplicate copy of this object. */
   public StringDict copy() {
+    compact();
     StringDict outgoing = new StringDict(count);
     System.arraycopy(keys, 0, outgoing.keys, 0, count);
     System.arraycopy(values, 0, outgoing.values, 0, count);
-    for (int i = 0; i < count; i++) {
-      outgoing.indices.put(keys[i], i);
-    }
+    outgoing.indices = indices.copy();
     outgoing.count = count;
     return outgoing;
   }
 
 
   public void print() {
+    compact();
     for (int i = 0; i < size(); i++) {
       System.out.println(keys[i] + " = " + values[i]);
     }
@@ -587,6 +682,7 @@ public class StringDict {
    * Write tab-delimited entries to a PrintWriter
    */
   public void write(PrintWriter writer) {
+    compact();
     for (int i = 0; i < count; i++) {
       writer.println(keys[i] + "\t" + values[i]);
     }
@@ -598,6 +694,7 @@ public class StringDict {
    * Return this dictionary as a String in JSON format.
    */
   public String toJSON() {
+    compact();
     StringList items = new StringList();
     for (int i = 0; i < count; i++) {
       items.append(JSONObject.quote(keys[i])+ ": " + JSONObject.quote(values[i]));
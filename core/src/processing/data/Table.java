@@ -25,21 +25,33 @@ package processing.data;
 
 import java.io.*;
 import java.lang.reflect.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Types;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
-import javax.xml.parsers.ParserConfigurationException;
-
-import org.xml.sax.SAXException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import processing.core.PApplet;
 import processing.core.PConstants;
@@ -92,8 +104,21 @@ public class Table {
   static public final int CATEGORY = 5;
   int[] columnTypes;
 
+  // index types for createIndex()
+  static public final int HASH = 1;
+  static public final int SORTED = 2;
+
+  // adding more rows than this at once rebuilds indexes instead
+  static final int INDEX_BATCH = 16;
+
   protected RowIterator rowIterator;
 
+  // columns from a cbin file that haven't been decoded yet
+  protected ColumnarSource columnarSource;
+
+  // lookup structures from createIndex(), null for columns without one
+  protected ColumnIndex[] indexes;
+
   // 0 for doubling each time, otherwise the number of rows to increment on
   // each expansion.
   protected int expandIncrement;
@@ -121,10 +146,16 @@ public class Table {
    * @nowebref
    */
   public Table(File file, String options) throws IOException {
-    // uses createInput() to handle .gz (and eventually .bz2) files
     init();
-    parse(PApplet.createInput(file),
-          extensionOptions(true, file.getName(), options));
+    options = extensionOptions(true, file.getName(), options);
+    if (hasOption(options, "cbin") &&
+        !file.getName().toLowerCase().endsWith(".gz")) {
+      // map the file directly instead of streaming through it
+      loadColumnar(file);
+    } else {
+      // uses createInput() to handle .gz (and eventually .bz2) files
+      parse(PApplet.createInput(file), options);
+    }
   }
 
   /**
@@ -142,6 +173,9 @@ public class Table {
    * <li>tsv - parse the table as tab-separated values
    * <li>newlines - this CSV file contains newlines inside individual cells
    * <li>header - this table has a header (title) row
+   * <li>bin - the table is in Processing's binary format
+   * <li>cbin - the table is in the columnar binary format, see saveColumnar()
+   * <li>parallel - split the file into chunks and parse them on all cores
    * </ul>
    *
    * @nowebref
@@ -302,8 +336,8 @@ public class Table {
   */
 
 
-  static final String[] loadExtensions = { "csv", "tsv", "ods", "bin" };
-  static final String[] saveExtensions = { "csv", "tsv", "ods", "bin", "html" };
+  static final String[] loadExtensions = { "csv", "tsv", "ods", "bin", "cbin" };
+  static final String[] saveExtensions = { "csv", "tsv", "ods", "bin", "cbin", "html" };
 
   static public String extensionOptions(boolean loading, String filename, String options) {
     String extension = PApplet.checkExtension(filename);
@@ -324,11 +358,26 @@ public class Table {
   }
 
 
+  /** Returns true if the comma-separated option list includes 'option'. */
+  static boolean hasOption(String options, String option) {
+    if (options != null) {
+      for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+        if (opt.equals(option)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+
   protected void parse(InputStream input, String options) throws IOException {
 //    boolean awfulCSV = false;
     boolean header = false;
     String extension = null;
     boolean binary = false;
+    boolean columnar = false;
+    boolean parallel = false;
     String encoding = "UTF-8";
 
     String worksheet = null;
@@ -351,8 +400,13 @@ public class Table {
         } else if (opt.equals("bin")) {
           binary = true;
           extension = "bin";
+        } else if (opt.equals("cbin")) {
+          columnar = true;
+          extension = "cbin";
         } else if (opt.equals("header")) {
           header = true;
+        } else if (opt.equals("parallel")) {
+          parallel = true;
         } else if (opt.startsWith(sheetParam)) {
           worksheet = opt.substring(sheetParam.length());
         } else if (opt.startsWith("dictionary=")) {
@@ -372,6 +426,9 @@ public class Table {
     if (binary) {
       loadBinary(input);
 
+    } else if (columnar) {
+      loadColumnar(input);
+
     } else if (extension.equals("ods")) {
       odsParse(input, worksheet, header);
 
@@ -396,8 +453,13 @@ public class Table {
         parseBasic(reader, header, false);
       }
       */
-      parseBasic(reader, header, "tsv".equals(extension));
+      if (parallel) {
+        parseParallel(reader, header, "tsv".equals(extension));
+      } else {
+        parseBasic(reader, header, "tsv".equals(extension));
+      }
     }
+    invalidateIndexes();
   }
 
 
@@ -451,6 +513,265 @@ public class Table {
   }
 
 
+  /**
+   * Number of chars handed to each worker by parseParallel(). Large enough
+   * that the per-chunk overhead disappears, small enough that a few dozen
+   * chunks in flight won't eat the heap.
+   */
+  static final int PARALLEL_CHUNK_SIZE = 1 << 22;
+
+
+  /**
+   * Parallel version of parseBasic(), used with the "parallel" option.
+   * The reader thread cuts the input into chunks that end on a newline
+   * (that isn't inside a quoted CSV field), each chunk is parsed into its
+   * own typed Table on the common fork-join pool, and the results are
+   * copied into this table in their original order.
+   */
+  protected void parseParallel(BufferedReader reader,
+                               boolean header, boolean tsv) throws IOException {
+    if (header) {
+      String line = reader.readLine();
+      if (line != null) {
+        try {
+          setColumnTitles(tsv ? PApplet.split(line, '\t') : splitLineCSV(line, reader));
+        } catch (Exception e) {
+          throw new RuntimeException("Error reading table on line 0", e);
+        }
+      }
+    }
+
+    ForkJoinPool pool = ForkJoinPool.commonPool();
+    // keep enough work queued to saturate the pool without reading the
+    // whole file into memory before the first chunk is copied
+    int maxPending = 2 * pool.getParallelism() + 1;
+    ArrayDeque<ParallelChunk> pending = new ArrayDeque<>();
+
+    int row = 0;
+    int field = FIELD_START;
+
+    char[] buffer = new char[PARALLEL_CHUNK_SIZE];
+    int count = 0;    // number of chars in buffer
+    int scanned = 0;  // chars already checked for newlines and quotes
+    int lastBreak = -1;  // index just past the last newline outside quotes
+    boolean done = false;
+
+    while (!done) {
+      int n = reader.read(buffer, count, buffer.length - count);
+      if (n == -1) {
+        done = true;
+      } else {
+        count += n;
+      }
+      int i = scanned;
+      while (i < count) {
+        char c = buffer[i];
+        if (c == '\n' || c == '\r') {
+          if (field != FIELD_QUOTED) {
+            field = FIELD_START;
+            if (c == '\n') {
+              lastBreak = i + 1;
+            }
+          }
+        } else if (!tsv) {
+          if (field == FIELD_QUOTED) {
+            if (c == '\"') {
+              if (i + 1 == count && !done) {
+                break;  // need the next char to know what this quote does
+              }
+              char next = (i + 1 == count) ? '\n' : buffer[i + 1];
+              field = quotedField(next);
+              if (next == '\"' || next == ',') {
+                i++;  // an escaped quote, or the comma after the field
+              }
+            }
+          } else if (c == ',') {
+            field = FIELD_START;
+          } else if (field == FIELD_START) {
+            field = (c == '\"') ? FIELD_QUOTED : FIELD_PLAIN;
+          }
+        }
+        i++;
+      }
+      scanned = i;
+
+      if (done) {
+        // whatever is left, including a last line without a newline
+        lastBreak = count;
+
+      } else if (count < buffer.length) {
+        continue;  // keep filling the buffer before cutting a chunk
+
+      } else if (lastBreak == -1) {
+        // a single row larger than the buffer, make some more room
+        buffer = Arrays.copyOf(buffer, buffer.length << 1);
+        continue;
+      }
+
+      if (lastBreak > 0) {
+        ParallelChunk chunk = new ParallelChunk(createChunkTable(), tsv,
+                                                buffer, lastBreak);
+        chunk.task = pool.submit(chunk);
+        pending.add(chunk);
+        if (pending.size() == maxPending) {
+          row = appendChunk(pending.remove(), row);
+        }
+      }
+
+      // move whatever follows the last newline to a fresh buffer
+      count -= lastBreak;
+      char[] remainder = new char[Math.max(PARALLEL_CHUNK_SIZE, count << 1)];
+      System.arraycopy(buffer, lastBreak, remainder, 0, count);
+      buffer = remainder;
+      scanned -= lastBreak;
+      lastBreak = -1;
+    }
+    // a quoted field that never ends was left for the last chunk, which
+    // fails on it the same way that parseBasic() does
+
+    while (!pending.isEmpty()) {
+      row = appendChunk(pending.remove(), row);
+    }
+    // shorten or lengthen based on what's left
+    if (row != getRowCount()) {
+      setRowCount(row);
+    }
+  }
+
+
+  // Where parseParallel() is in a line of CSV, so that it only cuts chunks
+  // where CommaSeparatedLine would start a new row.
+  static final int FIELD_START = 0;
+  static final int FIELD_PLAIN = 1;
+  static final int FIELD_QUOTED = 2;
+
+
+  /**
+   * What follows a quote inside a quoted field, with the same rules as
+   * CommaSeparatedLine.ingest(): the field only ends on a quote that's
+   * followed by a comma or the end of the line. A doubled quote is an
+   * escaped one, and any other quote is a stray that's kept as text.
+   */
+  static int quotedField(char next) {
+    if (next == ',') {
+      return FIELD_START;
+    } else if (next == '\n' || next == '\r') {
+      return FIELD_PLAIN;  // the newline that follows ends the row
+    }
+    return FIELD_QUOTED;
+  }
+
+
+  /**
+   * Create an empty table with the same column types and missing values as
+   * this one, for use by a single parsing worker. Category dictionaries are
+   * left empty, the indices are remapped by appendChunk().
+   */
+  protected Table createChunkTable() {
+    Table chunk = new Table();
+    chunk.setColumnCount(columns.length);
+    for (int col = 0; col < columns.length; col++) {
+      if (columnTypes[col] != STRING) {
+        chunk.setColumnType(col, columnTypes[col]);
+      }
+    }
+    chunk.missingString = missingString;
+    chunk.missingInt = missingInt;
+    chunk.missingLong = missingLong;
+    chunk.missingFloat = missingFloat;
+    chunk.missingDouble = missingDouble;
+    chunk.missingCategory = missingCategory;
+    return chunk;
+  }
+
+
+  /**
+   * Wait for a chunk to finish parsing and copy its rows into this table,
+   * starting at the specified row. Returns the index of the next free row.
+   */
+  protected int appendChunk(ParallelChunk chunk, int row) {
+    Table source = chunk.task.join();
+    if (chunk.error != null) {
+      // same message as parseBasic(), with the row counted from the start
+      throw new RuntimeException("Error reading table on line " +
+                                 (row + chunk.errorRow), chunk.error);
+    }
+    int sourceCount = source.getRowCount();
+    if (row + sourceCount > getRowCount()) {
+      setRowCount(Math.max(row + sourceCount, row << 1));
+    }
+    // rows with extra entries create new (String) columns, same as setRow()
+    ensureColumn(source.getColumnCount() - 1);
+
+    for (int col = 0; col < source.columns.length; col++) {
+      if (columnTypes[col] == CATEGORY) {
+        // re-index in row order, so the categories end up numbered the same
+        // way that a single-threaded parse would have numbered them
+        HashMapBlows categories = source.columnCategories[col];
+        int[] remap = new int[categories.size()];
+        for (int i = 0; i < remap.length; i++) {
+          remap[i] = columnCategories[col].index(categories.key(i));
+        }
+        int[] sourceData = (int[]) source.columns[col];
+        int[] indexData = (int[]) columns[col];
+        for (int i = 0; i < sourceCount; i++) {
+          int index = sourceData[i];
+          indexData[row + i] = (index == missingCategory) ? missingCategory : remap[index];
+        }
+      } else {
+        System.arraycopy(source.columns[col], 0, columns[col], row, sourceCount);
+      }
+    }
+    return row + sourceCount;
+  }
+
+
+  /**
+   * A run of complete lines, parsed into its own Table by a pool thread.
+   */
+  static class ParallelChunk implements Callable<Table> {
+    Table table;
+    boolean tsv;
+    char[] buffer;
+    int length;
+    ForkJoinTask<Table> task;
+
+    // what went wrong, and on which row of the chunk
+    Exception error;
+    int errorRow;
+
+    ParallelChunk(Table table, boolean tsv, char[] buffer, int length) {
+      this.table = table;
+      this.tsv = tsv;
+      this.buffer = buffer;
+      this.length = length;
+    }
+
+    public Table call() {
+      BufferedReader reader =
+        new BufferedReader(new CharArrayReader(buffer, 0, length));
+      String line;
+      int row = 0;
+      table.setRowCount(10);
+      try {
+        while ((line = reader.readLine()) != null) {
+          if (row == table.getRowCount()) {
+            table.setRowCount(row << 1);
+          }
+          table.setRow(row, tsv ? PApplet.split(line, '\t') : table.splitLineCSV(line, reader));
+          row++;
+        }
+      } catch (Exception e) {
+        error = e;
+        errorRow = row;
+      }
+      table.setRowCount(row);
+      buffer = null;  // done with the text, let it go
+      return table;
+    }
+  }
+
+
 //  public void convertTSV(BufferedReader reader, File outputFile) throws IOException {
 //    convertBasic(reader, true, outputFile);
 //  }
@@ -841,171 +1162,45 @@ public class Table {
   }
 
 
-  protected void odsParse(InputStream input, String worksheet, boolean header) {
-    try {
-      InputStream contentStream = odsFindContentXML(input);
-      XML xml = new XML(contentStream);
-
-      // table files will have multiple sheets..
-      // <table:table table:name="Sheet1" table:style-name="ta1" table:print="false">
-      // <table:table table:name="Sheet2" table:style-name="ta1" table:print="false">
-      // <table:table table:name="Sheet3" table:style-name="ta1" table:print="false">
-      XML[] sheets =
-        xml.getChildren("office:body/office:spreadsheet/table:table");
-
-      boolean found = false;
-      for (XML sheet : sheets) {
-//        System.out.println(sheet.getAttribute("table:name"));
-        if (worksheet == null || worksheet.equals(sheet.getString("table:name"))) {
-          odsParseSheet(sheet, header);
-          found = true;
-          if (worksheet == null) {
-            break;  // only read the first sheet
-          }
-        }
-      }
-      if (!found) {
-        if (worksheet == null) {
-          throw new RuntimeException("No worksheets found in the ODS file.");
-        } else {
-          throw new RuntimeException("No worksheet named " + worksheet +
-                                     " found in the ODS file.");
-        }
-      }
-    } catch (UnsupportedEncodingException e) {
-      e.printStackTrace();
-    } catch (IOException e) {
-      e.printStackTrace();
-    } catch (ParserConfigurationException e) {
-      e.printStackTrace();
-    } catch (SAXException e) {
-      e.printStackTrace();
+  protected void odsParse(InputStream input, String worksheet,
+                          boolean header) throws IOException {
+    InputStream contentStream = odsFindContentXML(input);
+    if (contentStream == null) {
+      throw new RuntimeException("No content.xml found in the ODS file.");
     }
-  }
 
-
-  /**
-   * Parses a single sheet of XML from this file.
-   * @param The XML object for a single worksheet from the ODS file
-   */
-  private void odsParseSheet(XML sheet, boolean header) {
-    // Extra <p> or <a> tags inside the text tag for the cell will be stripped.
-    // Different from showing formulas, and not quite the same as 'save as
-    // displayed' option when saving from inside OpenOffice. Only time we
-    // wouldn't want this would be so that we could parse hyperlinks and
-    // styling information intact, but that's out of scope for the p5 version.
-    final boolean ignoreTags = true;
-
-    XML[] rows = sheet.getChildren("table:table-row");
-    //xml.getChildren("office:body/office:spreadsheet/table:table/table:table-row");
-
-    int rowIndex = 0;
-    for (XML row : rows) {
-      int rowRepeat = row.getInt("table:number-rows-repeated", 1);
-//      if (rowRepeat != 1) {
-//          System.out.println(rowRepeat + " " + rowCount + " " + (rowCount + rowRepeat));
-//      }
-      boolean rowNotNull = false;
-      XML[] cells = row.getChildren();
-      int columnIndex = 0;
-
-      for (XML cell : cells) {
-        int cellRepeat = cell.getInt("table:number-columns-repeated", 1);
-
-//        <table:table-cell table:formula="of:=SUM([.E7:.E8])" office:value-type="float" office:value="4150">
-//        <text:p>4150.00</text:p>
-//        </table:table-cell>
-
-        String cellData = ignoreTags ? cell.getString("office:value") : null;
-
-        // if there's an office:value in the cell, just roll with that
-        if (cellData == null) {
-          int cellKids = cell.getChildCount();
-          if (cellKids != 0) {
-            XML[] paragraphElements = cell.getChildren("text:p");
-            if (paragraphElements.length != 1) {
-              for (XML el : paragraphElements) {
-                System.err.println(el.toString());
-              }
-              throw new RuntimeException("found more than one text:p element");
-            }
-            XML textp = paragraphElements[0];
-            String textpContent = textp.getContent();
-            // if there are sub-elements, the content shows up as a child element
-            // (for which getName() returns null.. which seems wrong)
-            if (textpContent != null) {
-              cellData = textpContent;  // nothing fancy, the text is in the text:p element
-            } else {
-              XML[] textpKids = textp.getChildren();
-              StringBuilder cellBuffer = new StringBuilder();
-              for (XML kid : textpKids) {
-                String kidName = kid.getName();
-                if (kidName == null) {
-                  odsAppendNotNull(kid, cellBuffer);
-
-                } else if (kidName.equals("text:s")) {
-                  int spaceCount = kid.getInt("text:c", 1);
-                  for (int space = 0; space < spaceCount; space++) {
-                    cellBuffer.append(' ');
-                  }
-                } else if (kidName.equals("text:span")) {
-                  odsAppendNotNull(kid, cellBuffer);
-
-                } else if (kidName.equals("text:a")) {
-                  // <text:a xlink:href="http://blah.com/">blah.com</text:a>
-                  if (ignoreTags) {
-                    cellBuffer.append(kid.getString("xlink:href"));
-                  } else {
-                    odsAppendNotNull(kid, cellBuffer);
-                  }
-
-                } else {
-                  odsAppendNotNull(kid, cellBuffer);
-                  System.err.println(getClass().getName() + ": don't understand: " + kid);
-                  //throw new RuntimeException("I'm not used to this.");
-                }
-              }
-              cellData = cellBuffer.toString();
-            }
-            //setString(rowIndex, columnIndex, c); //text[0].getContent());
-            //columnIndex++;
-          }
-        }
-        for (int r = 0; r < cellRepeat; r++) {
-          if (cellData != null) {
-            //System.out.println("setting " + rowIndex + "," + columnIndex + " to " + cellData);
-            setString(rowIndex, columnIndex, cellData);
-          }
-          columnIndex++;
-          if (cellData != null) {
-//            if (columnIndex > columnMax) {
-//              columnMax = columnIndex;
-//            }
-            rowNotNull = true;
-          }
+    // table files will have multiple sheets..
+    // <table:table table:name="Sheet1" table:style-name="ta1" table:print="false">
+    // <table:table table:name="Sheet2" table:style-name="ta1" table:print="false">
+    // <table:table table:name="Sheet3" table:style-name="ta1" table:print="false">
+    // Same reader as stream(), so both handle repeated rows and cells
+    // (and the header) the same way.
+    OdsRowReader ods = new OdsRowReader(contentStream, worksheet, header);
+    int row = 0;
+    try {
+      if (header) {
+        String[] titles = ods.next();
+        if (titles != null) {
+          setColumnTitles(titles);
         }
       }
-      if (header) {
-        removeTitleRow();  // efficient enough on the first row
-        header = false;  // avoid infinite loop
-
-      } else {
-        if (rowNotNull && rowRepeat > 1) {
-          String[] rowStrings = getStringRow(rowIndex);
-          for (int r = 1; r < rowRepeat; r++) {
-            addRow(rowStrings);
-          }
+      if (rowCount == 0) {
+        setRowCount(10);
+      }
+      String[] pieces;
+      while ((pieces = ods.next()) != null) {
+        if (row == getRowCount()) {
+          setRowCount(row << 1);
         }
-        rowIndex += rowRepeat;
+        setRow(row++, pieces);
       }
+      ods.close();
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
     }
-  }
-
-
-  private void odsAppendNotNull(XML kid, StringBuilder buffer) {
-    String content = kid.getContent();
-    if (content != null) {
-      buffer.append(content);
+    // shorten or lengthen based on what's left
+    if (row != getRowCount()) {
+      setRowCount(row);
     }
   }
 
@@ -1225,6 +1420,13 @@ public class Table {
         e.printStackTrace();
         return false;
       }
+    } else if (extension.equals("cbin")) {
+      try {
+        saveColumnar(output);
+      } catch (IOException e) {
+        e.printStackTrace();
+        return false;
+      }
     }
     writer.flush();
     writer.close();
@@ -1788,94 +1990,451 @@ public class Table {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
-  /**
-   * @webref table:method
-   * @brief Adds a new column to a table
-   * @see Table#removeColumn(String)
-   */
-  public void addColumn() {
-    addColumn(null, STRING);
-  }
+  static final int COLUMNAR_MAGIC = 0x9007C01A;
 
 
   /**
-   * @param title the title to be used for the new column
+   * Write the table in the columnar binary format ("cbin"). Unlike the
+   * row-by-row "bin" format, each column is stored as one contiguous block
+   * of little-endian primitives, so that it can be memory mapped and decoded
+   * in a single pass. String and category columns are stored as int indices
+   * into a dictionary, and each distinct String is written only once.
+   * <pre>
+   * int magic, rowCount, columnCount, headerLength
+   * header: titles, types, missing values, dictionaries
+   * (padding to a multiple of 8 bytes)
+   * column 0, column 1, ... (each padded to a multiple of 8 bytes)
+   * </pre>
    */
-  public void addColumn(String title) {
-    addColumn(title, STRING);
-  }
+  protected void saveColumnar(OutputStream os) throws IOException {
+    loadColumns();
+    int columnCount = getColumnCount();
+
+    // Strings are written as indices into a per-column dictionary
+    HashMapBlows[] dictionaries = new HashMapBlows[columnCount];
+    for (int col = 0; col < columnCount; col++) {
+      if (columnTypes[col] == STRING) {
+        HashMapBlows dict = new HashMapBlows();
+        String[] stringData = (String[]) columns[col];
+        for (int row = 0; row < rowCount; row++) {
+          if (stringData[row] != null) {
+            dict.index(stringData[row]);
+          }
+        }
+        dictionaries[col] = dict;
+      } else if (columnTypes[col] == CATEGORY) {
+        dictionaries[col] = columnCategories[col];
+      }
+    }
 
+    ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    DataOutputStream header = new DataOutputStream(headerBytes);
+    header.writeBoolean(columnTitles != null);
+    if (columnTitles != null) {
+      for (String title : columnTitles) {
+        writeColumnarString(header, title);
+      }
+    }
+    for (int col = 0; col < columnCount; col++) {
+      header.writeInt(columnTypes[col]);
+    }
+    writeColumnarString(header, missingString);
+    header.writeInt(missingInt);
+    header.writeLong(missingLong);
+    header.writeFloat(missingFloat);
+    header.writeDouble(missingDouble);
+    header.writeInt(missingCategory);
+    for (int col = 0; col < columnCount; col++) {
+      if (dictionaries[col] != null) {
+        HashMapBlows dict = dictionaries[col];
+        header.writeInt(dict.indexToData.size());
+        for (String entry : dict.indexToData) {
+          writeColumnarString(header, entry);
+        }
+      }
+    }
+    header.flush();
 
-  /**
-   * @param type the type to be used for the new column: INT, LONG, FLOAT, DOUBLE, or STRING
-   */
-  public void addColumn(String title, int type) {
-    insertColumn(columns.length, title, type);
+    DataOutputStream output = new DataOutputStream(new BufferedOutputStream(os));
+    output.writeInt(COLUMNAR_MAGIC);
+    output.writeInt(rowCount);
+    output.writeInt(columnCount);
+    output.writeInt(headerBytes.size());
+    headerBytes.writeTo(output);
+    writeColumnarPadding(output, 16 + headerBytes.size());
+
+    ByteBuffer buffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+    for (int col = 0; col < columnCount; col++) {
+      int width = columnarWidth(columnTypes[col]);
+      buffer.clear();
+      for (int row = 0; row < rowCount; row++) {
+        if (buffer.remaining() < width) {
+          output.write(buffer.array(), 0, buffer.position());
+          buffer.clear();
+        }
+        switch (columnTypes[col]) {
+        case INT:
+        case CATEGORY:
+          buffer.putInt(((int[]) columns[col])[row]);
+          break;
+        case LONG:
+          buffer.putLong(((long[]) columns[col])[row]);
+          break;
+        case FLOAT:
+          buffer.putFloat(((float[]) columns[col])[row]);
+          break;
+        case DOUBLE:
+          buffer.putDouble(((double[]) columns[col])[row]);
+          break;
+        case STRING:
+          String str = ((String[]) columns[col])[row];
+          buffer.putInt(str == null ? -1 : dictionaries[col].index(str));
+          break;
+        }
+      }
+      output.write(buffer.array(), 0, buffer.position());
+      writeColumnarPadding(output, (long) rowCount * width);
+    }
+    output.flush();
+    output.close();
   }
 
 
-  public void insertColumn(int index) {
-    insertColumn(index, null, STRING);
+  /** Number of bytes used by each entry of a column in a cbin file. */
+  static int columnarWidth(int type) {
+    return (type == LONG || type == DOUBLE) ? 8 : 4;
   }
 
 
-  public void insertColumn(int index, String title) {
-    insertColumn(index, title, STRING);
+  /** Round up to the next multiple of 8. */
+  static long columnarAlign(long length) {
+    return (length + 7) & ~7L;
   }
 
 
-  public void insertColumn(int index, String title, int type) {
-    if (title != null && columnTitles == null) {
-      columnTitles = new String[columns.length];
+  static private void writeColumnarPadding(DataOutputStream output,
+                                           long length) throws IOException {
+    for (long i = length; i < columnarAlign(length); i++) {
+      output.write(0);
     }
-    if (columnTitles != null) {
-      columnTitles = PApplet.splice(columnTitles, title, index);
-      columnIndices = null;
-    }
-    columnTypes = PApplet.splice(columnTypes, type, index);
+  }
 
-//    columnCategories = (HashMapBlows[])
-//      PApplet.splice(columnCategories, new HashMapBlows(), index);
-    HashMapBlows[] catTemp = new HashMapBlows[columns.length + 1];
-    // Faster than arrayCopy for a dozen or so entries
-    for (int i = 0; i < index; i++) {
-      catTemp[i] = columnCategories[i];
-    }
-    catTemp[index] = new HashMapBlows();
-    for (int i = index; i < columns.length; i++) {
-      catTemp[i+1] = columnCategories[i];
+
+  // Not using writeUTF(), which is limited to 64k and can't handle null
+  static private void writeColumnarString(DataOutputStream output,
+                                          String str) throws IOException {
+    if (str == null) {
+      output.writeInt(-1);
+    } else {
+      byte[] b = str.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(b.length);
+      output.write(b);
     }
-    columnCategories = catTemp;
+  }
 
-    Object[] temp = new Object[columns.length + 1];
-    System.arraycopy(columns, 0, temp, 0, index);
-    System.arraycopy(columns, index, temp, index+1, columns.length - index);
-    columns = temp;
 
-    switch (type) {
-      case INT: columns[index] = new int[rowCount]; break;
-      case LONG: columns[index] = new long[rowCount]; break;
-      case FLOAT: columns[index] = new float[rowCount]; break;
-      case DOUBLE: columns[index] = new double[rowCount]; break;
-      case STRING: columns[index] = new String[rowCount]; break;
-      case CATEGORY: columns[index] = new int[rowCount]; break;
+  static private String readColumnarString(DataInputStream input) throws IOException {
+    int length = input.readInt();
+    if (length == -1) {
+      return null;
     }
+    byte[] b = new byte[length];
+    input.readFully(b);
+    return new String(b, StandardCharsets.UTF_8);
   }
 
- /**
-   * @webref table:method
-   * @brief Removes a column from a table
-   * @param columnName the title of the column to be removed
-   * @see Table#addColumn()
-   */
-  public void removeColumn(String columnName) {
-    removeColumn(getColumnIndex(columnName));
-  }
+
+  /**
+   * Read the header of a cbin file, and set up the column titles, types,
+   * and category dictionaries. The column data itself is left for later.
+   * Returns the number of bytes read, the first column starts at the next
+   * multiple of 8 after that.
+   */
+  protected long loadColumnarHeader(DataInputStream input,
+                                    ColumnarSource source) throws IOException {
+    int magic = input.readInt();
+    if (magic != COLUMNAR_MAGIC) {
+      throw new IOException("Not a columnar binary table (magic was " + PApplet.hex(magic) + ")");
+    }
+    int rowCount = input.readInt();
+    int columnCount = input.readInt();
+    int headerLength = input.readInt();
+
+    columns = new Object[columnCount];  // all null until decoded
+    columnTypes = new int[columnCount];
+    columnCategories = new HashMapBlows[columnCount];
+    columnTitles = null;
+    columnIndices = null;
+    this.rowCount = rowCount;
+
+    if (input.readBoolean()) {
+      columnTitles = new String[columnCount];
+      for (int col = 0; col < columnCount; col++) {
+        columnTitles[col] = readColumnarString(input);
+      }
+    }
+    for (int col = 0; col < columnCount; col++) {
+      int type = input.readInt();
+      if (type < STRING || type > CATEGORY) {
+        throw new IOException(type + " is not a valid column type.");
+      }
+      columnTypes[col] = type;
+    }
+    missingString = readColumnarString(input);
+    missingInt = input.readInt();
+    missingLong = input.readLong();
+    missingFloat = input.readFloat();
+    missingDouble = input.readDouble();
+    missingCategory = input.readInt();
+
+    source.dictionaries = new String[columnCount][];
+    for (int col = 0; col < columnCount; col++) {
+      if (columnTypes[col] == STRING || columnTypes[col] == CATEGORY) {
+        String[] dict = new String[input.readInt()];
+        for (int i = 0; i < dict.length; i++) {
+          dict[i] = readColumnarString(input);
+        }
+        if (columnTypes[col] == CATEGORY) {
+          HashMapBlows categories = new HashMapBlows();
+          for (int i = 0; i < dict.length; i++) {
+            if (dict[i] != null) {
+              categories.setCategory(i, dict[i]);
+            }
+          }
+          columnCategories[col] = categories;
+        } else {
+          source.dictionaries[col] = dict;
+        }
+      }
+    }
+    source.regions = new ByteBuffer[columnCount];
+    columnarSource = source;
+    return 16 + headerLength;
+  }
+
+
+  /**
+   * Load a cbin file by memory mapping it. Nothing but the header is read
+   * here; each column is decoded the first time it's used, and the OS only
+   * pages in the parts of the file that belong to those columns.
+   */
+  protected void loadColumnar(File file) throws IOException {
+    ColumnarSource source = new ColumnarSource();
+    long offset;
+    try (DataInputStream input =
+      new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      offset = columnarAlign(loadColumnarHeader(input, source));
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      for (int col = 0; col < columns.length; col++) {
+        long length = (long) rowCount * columnarWidth(columnTypes[col]);
+        if (offset + length > channel.size()) {
+          throw new IOException(file + " is truncated");
+        }
+        // mappings remain valid after the channel is closed
+        source.regions[col] = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        offset += columnarAlign(length);
+      }
+    }
+  }
+
+
+  /**
+   * Load a cbin file from a stream. The bytes have to be read either way,
+   * but decoding the columns is still put off until they're needed.
+   */
+  protected void loadColumnar(InputStream is) throws IOException {
+    ColumnarSource source = new ColumnarSource();
+    DataInputStream input = new DataInputStream(new BufferedInputStream(is));
+    long headerEnd = loadColumnarHeader(input, source);
+    input.skipBytes((int) (columnarAlign(headerEnd) - headerEnd));
+    for (int col = 0; col < columns.length; col++) {
+      int length = rowCount * columnarWidth(columnTypes[col]);
+      byte[] data = new byte[length];
+      input.readFully(data);
+      source.regions[col] = ByteBuffer.wrap(data);
+      input.skipBytes((int) (columnarAlign(length) - length));
+    }
+    input.close();
+  }
+
+
+  /**
+   * Column data from a cbin file that hasn't been decoded yet. Access is
+   * synchronized so that columns can be touched from several threads.
+   */
+  static class ColumnarSource {
+    ByteBuffer[] regions;  // column data, null after the column is decoded
+    String[][] dictionaries;  // entries for STRING columns
+
+    synchronized void decode(Table table, int column) {
+      if (table.columns[column] != null) {
+        return;  // another thread got here first
+      }
+      ByteBuffer region = regions[column].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      int count = table.rowCount;
+      Object data;
+      switch (table.columnTypes[column]) {
+      case INT:
+      case CATEGORY:
+        int[] intData = new int[count];
+        region.asIntBuffer().get(intData);
+        data = intData;
+        break;
+      case LONG:
+        long[] longData = new long[count];
+        region.asLongBuffer().get(longData);
+        data = longData;
+        break;
+      case FLOAT:
+        float[] floatData = new float[count];
+        region.asFloatBuffer().get(floatData);
+        data = floatData;
+        break;
+      case DOUBLE:
+        double[] doubleData = new double[count];
+        region.asDoubleBuffer().get(doubleData);
+        data = doubleData;
+        break;
+      default:  // STRING
+        String[] dict = dictionaries[column];
+        String[] stringData = new String[count];
+        IntBuffer indices = region.asIntBuffer();
+        for (int row = 0; row < count; row++) {
+          int index = indices.get(row);
+          stringData[row] = (index == -1) ? null : dict[index];
+        }
+        data = stringData;
+        dictionaries[column] = null;
+        break;
+      }
+      table.columns[column] = data;
+      regions[column] = null;
+    }
+  }
+
+
+  /** Decode any columns left over from loadColumnar(). */
+  protected void loadColumns() {
+    if (columnarSource != null) {
+      for (int col = 0; col < columns.length; col++) {
+        if (columns[col] == null) {
+          columnarSource.decode(this, col);
+        }
+      }
+      columnarSource = null;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * @webref table:method
+   * @brief Adds a new column to a table
+   * @see Table#removeColumn(String)
+   */
+  public void addColumn() {
+    addColumn(null, STRING);
+  }
+
+
+  /**
+   * @param title the title to be used for the new column
+   */
+  public void addColumn(String title) {
+    addColumn(title, STRING);
+  }
+
+
+  /**
+   * @param type the type to be used for the new column: INT, LONG, FLOAT, DOUBLE, or STRING
+   */
+  public void addColumn(String title, int type) {
+    insertColumn(columns.length, title, type);
+  }
+
+
+  public void insertColumn(int index) {
+    insertColumn(index, null, STRING);
+  }
+
+
+  public void insertColumn(int index, String title) {
+    insertColumn(index, title, STRING);
+  }
+
+
+  public void insertColumn(int index, String title, int type) {
+    loadColumns();
+    if (title != null && columnTitles == null) {
+      columnTitles = new String[columns.length];
+    }
+    if (columnTitles != null) {
+      columnTitles = PApplet.splice(columnTitles, title, index);
+      columnIndices = null;
+    }
+    columnTypes = PApplet.splice(columnTypes, type, index);
+
+//    columnCategories = (HashMapBlows[])
+//      PApplet.splice(columnCategories, new HashMapBlows(), index);
+    HashMapBlows[] catTemp = new HashMapBlows[columns.length + 1];
+    // Faster than arrayCopy for a dozen or so entries
+    for (int i = 0; i < index; i++) {
+      catTemp[i] = columnCategories[i];
+    }
+    catTemp[index] = new HashMapBlows();
+    for (int i = index; i < columns.length; i++) {
+      catTemp[i+1] = columnCategories[i];
+    }
+    columnCategories = catTemp;
+
+    if (indexes != null) {
+      ColumnIndex[] indexTemp = new ColumnIndex[columns.length + 1];
+      for (int i = 0; i < Math.min(indexes.length, columns.length); i++) {
+        if (i < index) {
+          indexTemp[i] = indexes[i];
+        } else {
+          indexTemp[i+1] = indexes[i];
+          if (indexes[i] != null) {
+            indexes[i].column++;
+          }
+        }
+      }
+      indexes = indexTemp;
+    }
+
+    Object[] temp = new Object[columns.length + 1];
+    System.arraycopy(columns, 0, temp, 0, index);
+    System.arraycopy(columns, index, temp, index+1, columns.length - index);
+    columns = temp;
+
+    switch (type) {
+      case INT: columns[index] = new int[rowCount]; break;
+      case LONG: columns[index] = new long[rowCount]; break;
+      case FLOAT: columns[index] = new float[rowCount]; break;
+      case DOUBLE: columns[index] = new double[rowCount]; break;
+      case STRING: columns[index] = new String[rowCount]; break;
+      case CATEGORY: columns[index] = new int[rowCount]; break;
+    }
+  }
+
+ /**
+   * @webref table:method
+   * @brief Removes a column from a table
+   * @param columnName the title of the column to be removed
+   * @see Table#addColumn()
+   */
+  public void removeColumn(String columnName) {
+    removeColumn(getColumnIndex(columnName));
+  }
 
  /**
    * @param column the index number of the column to be removed
    */
   public void removeColumn(int column) {
+    loadColumns();
     int newCount = columns.length - 1;
 
     Object[] columnsTemp = new Object[newCount];
@@ -1893,6 +2452,21 @@ public class Table {
     columns = columnsTemp;
     columnCategories = catTemp;
 
+    if (indexes != null) {
+      ColumnIndex[] indexTemp = new ColumnIndex[newCount];
+      for (int i = 0; i < Math.min(indexes.length, newCount + 1); i++) {
+        if (i < column) {
+          indexTemp[i] = indexes[i];
+        } else if (i > column) {
+          indexTemp[i-1] = indexes[i];
+          if (indexes[i] != null) {
+            indexes[i].column--;
+          }
+        }
+      }
+      indexes = indexTemp;
+    }
+
     if (columnTitles != null) {
       String[] titlesTemp = new String[newCount];
       for (int i = 0; i < column; i++) {
@@ -1938,6 +2512,9 @@ public class Table {
       columnTypes = PApplet.expand(columnTypes, newCount);
       columnCategories = (HashMapBlows[])
         PApplet.expand(columnCategories, newCount);
+      if (indexes != null) {
+        indexes = Arrays.copyOf(indexes, newCount);
+      }
     }
   }
 
@@ -2063,6 +2640,7 @@ public class Table {
     }
 //    System.out.println("new type is " + newType);
     columnTypes[column] = newType;
+    invalidateIndex(column);
   }
 
 
@@ -2282,6 +2860,11 @@ public class Table {
 
 
   public void setRowCount(int newCount) {
+    loadColumns();
+    int oldCount = rowCount;
+    if (newCount < oldCount) {
+      indexRowsRemoved(newCount, oldCount);
+    }
     if (newCount != rowCount) {
       if (newCount > 1000000) {
         System.out.print("Note: setting maximum row count to " + PApplet.nfc(newCount));
@@ -2310,6 +2893,9 @@ public class Table {
       }
     }
     rowCount = newCount;
+    if (newCount > oldCount) {
+      indexRowsAdded(oldCount, newCount);
+    }
   }
 
 
@@ -2357,10 +2943,12 @@ public class Table {
         break;
       case CATEGORY:
         int index = source.getInt(col);
-        setInt(row, col, index);
+        // name the category first, so the index sees the row's real value
         if (!columnCategories[col].hasCategory(index)) {
           columnCategories[col].setCategory(index, source.getString(col));
+          categoryAdded(col, index);
         }
+        setInt(row, col, index);
         break;
 
       default:
@@ -2390,6 +2978,7 @@ public class Table {
 
 
   public void insertRow(int insert, Object[] columnData) {
+    loadColumns();
     for (int col = 0; col < columns.length; col++) {
       switch (columnTypes[col]) {
         case CATEGORY:
@@ -2433,6 +3022,7 @@ public class Table {
     // Need to increment before setRow(), because it calls ensureBounds()
     // https://github.com/processing/processing/issues/5406
     ++rowCount;
+    indexRowInserted(insert);
     setRow(insert, columnData);
   }
 
@@ -2445,6 +3035,8 @@ public class Table {
    * @see Table#clearRows()
    */
   public void removeRow(int row) {
+    loadColumns();
+    indexRowRemoved(row);
     for (int col = 0; col < columns.length; col++) {
       switch (columnTypes[col]) {
         case CATEGORY:
@@ -2561,6 +3153,7 @@ public class Table {
 
 
   protected void setRowCol(int row, int col, Object piece) {
+    unindex(row, col);
     switch (columnTypes[col]) {
       case STRING:
         String[] stringData = (String[]) columns[col];
@@ -2631,13 +3224,18 @@ public class Table {
           if (peace.equals(missingString)) {  // missingString might be null
             indexData[row] = missingCategory;
           } else {
+            int count = columnCategories[col].size();
             indexData[row] = columnCategories[col].index(peace);
+            if (columnCategories[col].size() != count) {
+              categoryAdded(col, indexData[row]);
+            }
           }
         }
         break;
       default:
         throw new IllegalArgumentException("That's not a valid column type.");
     }
+    reindex(row, col);
   }
 
 
@@ -2696,6 +3294,57 @@ public class Table {
   }
 
 
+  /**
+   * Read a table one row at a time, rather than loading the whole thing.
+   * Use this for files that are too large to fit in memory:
+   * <pre>
+   * Table schema = new Table();
+   * schema.addColumn("time", Table.LONG);
+   * schema.addColumn("level", Table.CATEGORY);
+   * schema.addColumn("bytes", Table.INT);
+   * long total = 0;
+   * for (TableRow row : schema.stream(createInput("huge.csv.gz"), "csv,header")) {
+   *   total += row.getInt("bytes");
+   * }
+   * </pre>
+   * The column titles and types of this table are used for the rows (a
+   * header in the file will replace the titles), and CATEGORY columns add
+   * to this table's category dictionaries. Options are the same as for
+   * loading a Table, except that "bin", "cbin", and "parallel" can't be
+   * streamed. The same TableRow object is re-used for every row, so copy
+   * anything that's needed after moving on to the next one. The rows can
+   * only be read once, and the input is closed when the last row is read.
+   * <p/>
+   * To handle rows on several threads, use the Spliterator with
+   * java.util.stream.StreamSupport.stream(rows.spliterator(), true). Rows
+   * are still parsed in order on one thread, but handed out in batches.
+   * Rows from a parallel stream should be treated as read-only.
+   *
+   * @nowebref
+   */
+  public Iterable<TableRow> stream(InputStream input, String options) throws IOException {
+    return new RowStream(this, input, options);
+  }
+
+
+  /**
+   * Create a table for a single streamed row or batch of rows, with the
+   * titles and types of this table, and sharing its category dictionaries.
+   */
+  protected Table createStreamTable() {
+    Table outgoing = createChunkTable();
+    if (columnTitles != null) {
+      outgoing.setColumnTitles(columnTitles.clone());
+    }
+    for (int col = 0; col < columns.length; col++) {
+      if (columnTypes[col] == CATEGORY) {
+        outgoing.columnCategories[col] = columnCategories[col];
+      }
+    }
+    return outgoing;
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
@@ -2895,48 +3544,487 @@ public class Table {
   }
 
 
-  /*
-  static public Iterator<TableRow> createIterator(final ResultSet rs) {
-    return new Iterator<TableRow>() {
-      boolean already;
+  /**
+   * Rows parsed incrementally from an InputStream, see stream().
+   */
+  static class RowStream implements Iterable<TableRow>, Spliterator<TableRow> {
+    static final int BATCH_UNIT = 1 << 10;
+    static final int MAX_BATCH = 1 << 16;
 
-      public boolean hasNext() {
-        already = true;
-        try {
-          return rs.next();
-        } catch (SQLException e) {
-          throw new RuntimeException(e);
+    Table template;
+    Table current;  // holds the single row being read
+    RowPointer rp;
+
+    BufferedReader reader;
+    boolean tsv;
+    OdsRowReader ods;
+
+    int line;  // for error messages
+    boolean started;
+    boolean finished;
+    int batchSize;
+
+    // last copy of each category dictionary handed to a batch
+    HashMapBlows[] categorySnapshots;
+
+
+    RowStream(Table template, InputStream input, String options) throws IOException {
+      this.template = template;
+
+      boolean header = false;
+      String extension = null;
+      String encoding = "UTF-8";
+      String worksheet = null;
+      final String sheetParam = "worksheet=";
+
+      if (options != null) {
+        for (String opt : PApplet.trim(PApplet.split(options, ','))) {
+          if (opt.equals("tsv") || opt.equals("csv") || opt.equals("ods")) {
+            extension = opt;
+          } else if (opt.equals("header")) {
+            header = true;
+          } else if (opt.startsWith(sheetParam)) {
+            worksheet = opt.substring(sheetParam.length());
+          } else if (opt.startsWith("encoding=")) {
+            encoding = opt.substring(9);
+          } else if (opt.startsWith("dictionary=")) {
+            // ignore option, this is only handled by PApplet
+          } else if (opt.equals("bin") || opt.equals("cbin") || opt.equals("parallel")) {
+            throw new IllegalArgumentException("'" + opt + "' cannot be used when streaming a Table");
+          } else {
+            throw new IllegalArgumentException("'" + opt + "' is not a valid option for loading a Table");
+          }
         }
       }
+      if (extension == null) {
+        throw new IllegalArgumentException("No extension specified for this Table");
+      }
 
+      if (extension.equals("ods")) {
+        ods = new OdsRowReader(template.odsFindContentXML(input), worksheet, header);
+      } else {
+        tsv = extension.equals("tsv");
+        reader = new BufferedReader(new InputStreamReader(input, encoding));
+        // strip out the Unicode BOM, if present
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') {
+          reader.reset();
+        }
+      }
 
-      public TableRow next() {
-        if (!already) {
-          try {
-            rs.next();
-          } catch (SQLException e) {
-            throw new RuntimeException(e);
+      current = template.createStreamTable();
+      if (header) {
+        String[] titles = readPieces(current);
+        if (titles != null) {
+          current.setColumnTitles(titles);
+        }
+      }
+      current.setRowCount(1);
+      rp = new RowPointer(current, 0);
+    }
+
+
+    /** Read the next row from the file, or return null when done. */
+    String[] readPieces(Table table) {
+      if (finished) {
+        return null;
+      }
+      try {
+        String[] pieces;
+        if (ods != null) {
+          pieces = ods.next();
+        } else {
+          String str = reader.readLine();
+          if (str == null) {
+            pieces = null;
+          } else {
+            pieces = tsv ? PApplet.split(str, '\t') : table.splitLineCSV(str, reader);
           }
+        }
+        if (pieces == null) {
+          finished = true;
+          close();
         } else {
-          already = false;
+          line++;
         }
+        return pieces;
 
-        return new TableRow() {
-          public double getDouble(int column) {
-            try {
-              return rs.getDouble(column);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
+      } catch (Exception e) {
+        finished = true;
+        close();
+        throw new RuntimeException("Error reading table on line " + line, e);
+      }
+    }
 
-          public double getDouble(String columnName) {
-            try {
-              return rs.getDouble(columnName);
-            } catch (SQLException e) {
-              throw new RuntimeException(e);
-            }
-          }
+
+    void close() {
+      try {
+        if (reader != null) {
+          reader.close();
+        } else {
+          ods.close();
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+
+
+    public Iterator<TableRow> iterator() {
+      if (started) {
+        throw new IllegalStateException("The rows from stream() can only be read once");
+      }
+      started = true;
+      return Spliterators.iterator(this);
+    }
+
+
+    @Override
+    public Spliterator<TableRow> spliterator() {
+      if (started) {
+        throw new IllegalStateException("The rows from stream() can only be read once");
+      }
+      started = true;
+      return this;
+    }
+
+
+    public boolean tryAdvance(Consumer<? super TableRow> action) {
+      String[] pieces = readPieces(current);
+      if (pieces == null) {
+        return false;
+      }
+      current.setRow(0, pieces);
+      // entries not in this row are missing, rather than left over
+      for (int col = pieces.length; col < current.columns.length; col++) {
+        current.setRowCol(0, col, null);
+      }
+      action.accept(rp);
+      return true;
+    }
+
+
+    /**
+     * Parse the next batch of rows into a separate table, and hand them off
+     * to another thread. The batch size grows the same way as the one used
+     * by Spliterators.AbstractSpliterator.
+     */
+    public Spliterator<TableRow> trySplit() {
+      Table batch = template.createStreamTable();
+      batch.setColumnTitles(current.columnTitles);
+      int size = Math.min(batchSize + BATCH_UNIT, MAX_BATCH);
+      batch.setRowCount(size);
+      int row = 0;
+      String[] pieces;
+      while (row < size && (pieces = readPieces(batch)) != null) {
+        batch.setRow(row++, pieces);
+      }
+      if (row == 0) {
+        return null;
+      }
+      batchSize = row;
+      batch.setRowCount(row);
+
+      // The other thread only reads from the dictionaries, but this one
+      // keeps adding to them, so give the batch its own copy (or share
+      // the last one, if nothing new has been added since).
+      if (categorySnapshots == null) {
+        categorySnapshots = new HashMapBlows[batch.columns.length];
+      } else if (categorySnapshots.length < batch.columns.length) {
+        categorySnapshots = Arrays.copyOf(categorySnapshots, batch.columns.length);
+      }
+      for (int col = 0; col < batch.columns.length; col++) {
+        if (batch.columnTypes[col] == CATEGORY) {
+          HashMapBlows master = batch.columnCategories[col];
+          HashMapBlows snapshot = categorySnapshots[col];
+          if (snapshot == null || snapshot.indexToData.size() != master.indexToData.size()) {
+            snapshot = new HashMapBlows();
+            snapshot.dataToIndex = new HashMap<>(master.dataToIndex);
+            snapshot.indexToData = new ArrayList<>(master.indexToData);
+            categorySnapshots[col] = snapshot;
+          }
+          batch.columnCategories[col] = snapshot;
+        }
+      }
+      return new BatchSpliterator(batch, 0, row);
+    }
+
+
+    public long estimateSize() {
+      return finished ? 0 : Long.MAX_VALUE;
+    }
+
+
+    public int characteristics() {
+      return ORDERED | NONNULL;
+    }
+  }
+
+
+  /**
+   * A batch of rows that have already been parsed by RowStream.trySplit().
+   * Each split gets its own RowPointer, so they can be read concurrently.
+   */
+  static class BatchSpliterator implements Spliterator<TableRow> {
+    RowPointer rp;
+    int index;
+    int stop;
+
+    BatchSpliterator(Table table, int start, int stop) {
+      rp = new RowPointer(table, -1);
+      index = start;
+      this.stop = stop;
+    }
+
+    public boolean tryAdvance(Consumer<? super TableRow> action) {
+      if (index < stop) {
+        rp.setRow(index++);
+        action.accept(rp);
+        return true;
+      }
+      return false;
+    }
+
+    public Spliterator<TableRow> trySplit() {
+      int middle = (index + stop) >>> 1;
+      if (middle - index < BATCH_SPLIT_MIN) {
+        return null;
+      }
+      Spliterator<TableRow> outgoing = new BatchSpliterator(rp.table, index, middle);
+      index = middle;
+      return outgoing;
+    }
+
+    public long estimateSize() {
+      return stop - index;
+    }
+
+    public int characteristics() {
+      return ORDERED | NONNULL | SIZED | SUBSIZED;
+    }
+
+    static final int BATCH_SPLIT_MIN = 256;
+  }
+
+
+  /**
+   * Reads the rows of one sheet from the content.xml of an ODS file with
+   * StAX, one at a time, for both odsParse() and stream(). Rows that are
+   * repeated come back once for each repeat, and empty rows only when a
+   * row with data follows them. Extra tags inside a cell are stripped,
+   * except for links, which are replaced with their href.
+   */
+  static class OdsRowReader {
+    XMLStreamReader xml;
+    String[] repeatRow;  // row that's being repeated
+    int repeatCount;
+    int emptyCount;  // empty rows waiting for a non-empty one to follow
+    boolean first;  // still waiting for the header row
+
+    OdsRowReader(InputStream input, String worksheet, boolean header) throws IOException {
+      first = header;
+      if (input == null) {
+        throw new IOException("No content.xml found in the ODS file.");
+      }
+      try {
+        xml = XMLInputFactory.newInstance().createXMLStreamReader(input);
+        while (xml.hasNext()) {
+          if (xml.next() == XMLStreamConstants.START_ELEMENT &&
+              xml.getLocalName().equals("table")) {
+            if (worksheet == null || worksheet.equals(attribute("name"))) {
+              return;
+            }
+          }
+        }
+      } catch (XMLStreamException e) {
+        throw new IOException(e);
+      }
+      if (worksheet == null) {
+        throw new RuntimeException("No worksheets found in the ODS file.");
+      } else {
+        throw new RuntimeException("No worksheet named " + worksheet +
+                                   " found in the ODS file.");
+      }
+    }
+
+
+    /** Get an attribute by its local name, ignoring the namespace. */
+    String attribute(String localName) {
+      for (int i = 0; i < xml.getAttributeCount(); i++) {
+        if (xml.getAttributeLocalName(i).equals(localName)) {
+          return xml.getAttributeValue(i);
+        }
+      }
+      return null;
+    }
+
+
+    int attributeInt(String localName, int otherwise) {
+      String value = attribute(localName);
+      return (value == null) ? otherwise : PApplet.parseInt(value, otherwise);
+    }
+
+
+    String[] next() throws XMLStreamException {
+      if (emptyCount > 0 && repeatCount > 0) {
+        emptyCount--;
+        return new String[0];
+      }
+      if (repeatCount > 0) {
+        repeatCount--;
+        return repeatRow;
+      }
+      while (xml.hasNext()) {
+        int event = xml.next();
+        if (event == XMLStreamConstants.END_ELEMENT &&
+            xml.getLocalName().equals("table")) {
+          return null;  // end of this sheet, ignore any empty rows
+        }
+        if (event == XMLStreamConstants.START_ELEMENT &&
+            xml.getLocalName().equals("table-row")) {
+          int rowRepeat = attributeInt("number-rows-repeated", 1);
+          String[] row = readRow();
+          if (first) {
+            // the header is always the first row, even if it's empty
+            first = false;
+            return row;
+          }
+          if (row == null) {
+            emptyCount += rowRepeat;
+          } else {
+            repeatRow = row;
+            repeatCount = rowRepeat;
+            return next();
+          }
+        }
+      }
+      return null;
+    }
+
+
+    /** Read the cells of a row. Returns null if none of them have data. */
+    String[] readRow() throws XMLStreamException {
+      StringList cells = new StringList();
+      boolean rowNotNull = false;
+      while (xml.hasNext()) {
+        int event = xml.next();
+        if (event == XMLStreamConstants.END_ELEMENT &&
+            xml.getLocalName().equals("table-row")) {
+          break;
+        }
+        if (event == XMLStreamConstants.START_ELEMENT &&
+            xml.getLocalName().endsWith("table-cell")) {
+          int cellRepeat = attributeInt("number-columns-repeated", 1);
+          String cellData = readCell();
+          for (int r = 0; r < cellRepeat; r++) {
+            cells.append(cellData);
+          }
+          if (cellData != null) {
+            rowNotNull = true;
+          }
+        }
+      }
+      if (!rowNotNull) {
+        return first ? new String[0] : null;
+      }
+      // drop the empty cells at the end of the row
+      int count = cells.size();
+      while (cells.get(count - 1) == null) {
+        count--;
+      }
+      return PApplet.subset(cells.array(), 0, count);
+    }
+
+
+    String readCell() throws XMLStreamException {
+      // if there's an office:value in the cell, just roll with that
+      String cellData = attribute("value");
+      StringBuilder buffer = null;
+      int depth = 1;
+      while (depth > 0) {
+        int event = xml.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          depth++;
+          if (buffer == null) {
+            buffer = new StringBuilder();
+          }
+          String name = xml.getLocalName();
+          if (name.equals("s")) {
+            int spaceCount = attributeInt("c", 1);
+            for (int space = 0; space < spaceCount; space++) {
+              buffer.append(' ');
+            }
+          } else if (name.equals("a")) {
+            // <text:a xlink:href="http://blah.com/">blah.com</text:a>
+            buffer.append(attribute("href"));
+            xml.getElementText();  // skip the link text
+            depth--;
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        } else if (event == XMLStreamConstants.CHARACTERS ||
+                   event == XMLStreamConstants.CDATA) {
+          // text directly inside the cell is only formatting whitespace
+          if (depth > 1) {
+            buffer.append(xml.getText());
+          }
+        }
+      }
+      if (cellData == null && buffer != null) {
+        cellData = buffer.toString();
+      }
+      return cellData;
+    }
+
+
+    void close() throws XMLStreamException {
+      xml.close();
+    }
+  }
+
+
+  /*
+  static public Iterator<TableRow> createIterator(final ResultSet rs) {
+    return new Iterator<TableRow>() {
+      boolean already;
+
+      public boolean hasNext() {
+        already = true;
+        try {
+          return rs.next();
+        } catch (SQLException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+
+      public TableRow next() {
+        if (!already) {
+          try {
+            rs.next();
+          } catch (SQLException e) {
+            throw new RuntimeException(e);
+          }
+        } else {
+          already = false;
+        }
+
+        return new TableRow() {
+          public double getDouble(int column) {
+            try {
+              return rs.getDouble(column);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
+
+          public double getDouble(String columnName) {
+            try {
+              return rs.getDouble(columnName);
+            } catch (SQLException e) {
+              throw new RuntimeException(e);
+            }
+          }
 
           public float getFloat(int column) {
             try {
@@ -3111,7 +4199,9 @@ public class Table {
         throw new IllegalArgumentException("Column " + column + " is not an int column.");
       }
       int[] intData = (int[]) columns[column];
+      unindex(row, column);
       intData[row] = value;
+      reindex(row, column);
     }
   }
 
@@ -3189,7 +4279,9 @@ public class Table {
         throw new IllegalArgumentException("Column " + column + " is not a 'long' column.");
       }
       long[] longData = (long[]) columns[column];
+      unindex(row, column);
       longData[row] = value;
+      reindex(row, column);
     }
   }
 
@@ -3291,7 +4383,9 @@ public class Table {
         throw new IllegalArgumentException("Column " + column + " is not a float column.");
       }
       float[] longData = (float[]) columns[column];
+      unindex(row, column);
       longData[row] = value;
+      reindex(row, column);
     }
   }
 
@@ -3368,7 +4462,9 @@ public class Table {
         throw new IllegalArgumentException("Column " + column + " is not a 'double' column.");
       }
       double[] doubleData = (double[]) columns[column];
+      unindex(row, column);
       doubleData[row] = value;
+      reindex(row, column);
     }
   }
 
@@ -3534,7 +4630,9 @@ public class Table {
       throw new IllegalArgumentException("Column " + column + " is not a String column.");
     }
     String[] stringData = (String[]) columns[column];
+    unindex(row, column);
     stringData[row] = value;
+    reindex(row, column);
   }
 
   /**
@@ -3586,6 +4684,185 @@ public class Table {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
+  /**
+   * Build a lookup structure for a column so that findRow(), matchRow(),
+   * getRowMap() and the range queries don't have to scan every row.
+   * Use HASH for exact lookups, or SORTED to also support
+   * findRowsInRange() on numeric columns. The index is kept up to date
+   * as rows are set, added, removed, or sorted.
+   * @param columnName title of the column to index
+   * @param type HASH or SORTED
+   */
+  public void createIndex(String columnName, int type) {
+    createIndex(checkColumnIndex(columnName), type);
+  }
+
+
+  /**
+   * @param column ID number of the column to index
+   */
+  public void createIndex(int column, int type) {
+    checkColumn(column);
+    ColumnIndex index;
+    if (type == HASH) {
+      index = new HashIndex(this, column);
+    } else if (type == SORTED) {
+      index = new SortedIndex(this, column);
+    } else {
+      throw new IllegalArgumentException("Index type must be HASH or SORTED");
+    }
+    if (indexes == null) {
+      indexes = new ColumnIndex[columns.length];
+    } else if (indexes.length < columns.length) {
+      indexes = Arrays.copyOf(indexes, columns.length);
+    }
+    index.rebuild();
+    indexes[column] = index;
+  }
+
+
+  public void removeIndex(String columnName) {
+    removeIndex(checkColumnIndex(columnName));
+  }
+
+
+  public void removeIndex(int column) {
+    if (indexes != null && column < indexes.length) {
+      indexes[column] = null;
+    }
+  }
+
+
+  /**
+   * Return the index for this column (bringing it up to date if needed),
+   * or null if createIndex() hasn't been called for it.
+   */
+  protected ColumnIndex getIndex(int column) {
+    if (indexes == null || column >= indexes.length) {
+      return null;
+    }
+    ColumnIndex index = indexes[column];
+    if (index != null && index.stale) {
+      index.rebuild();
+    }
+    return index;
+  }
+
+
+  /** Take a single entry out of its column's index before it changes. */
+  protected void unindex(int row, int column) {
+    if (indexes != null && column < indexes.length) {
+      ColumnIndex index = indexes[column];
+      if (index != null && !index.stale) {
+        index.remove(row);
+      }
+    }
+  }
+
+
+  /** Put an entry back into its column's index after it has changed. */
+  protected void reindex(int row, int column) {
+    if (indexes != null && column < indexes.length) {
+      ColumnIndex index = indexes[column];
+      if (index != null && !index.stale) {
+        index.add(row);
+      }
+    }
+  }
+
+
+  protected void invalidateIndex(int column) {
+    if (indexes != null && column < indexes.length &&
+        indexes[column] != null) {
+      indexes[column].stale = true;
+    }
+  }
+
+
+  /**
+   * A code was just added to this column's category dictionary. Rows that
+   * setRowCount() added and nothing has set yet hold code 0, which the
+   * indexes file as missing while it has no name, so naming it means
+   * building them again.
+   */
+  protected void categoryAdded(int column, int code) {
+    if (code == 0) {
+      invalidateIndex(column);
+    }
+  }
+
+
+  protected void invalidateIndexes() {
+    if (indexes != null) {
+      for (ColumnIndex index : indexes) {
+        if (index != null) {
+          index.stale = true;
+        }
+      }
+    }
+  }
+
+
+  /** Rows [start, stop) were just added with their default values. */
+  protected void indexRowsAdded(int start, int stop) {
+    if (indexes != null) {
+      for (ColumnIndex index : indexes) {
+        if (index != null && !index.stale) {
+          if (stop - start > INDEX_BATCH) {
+            // cheaper to rebuild once than to insert one by one
+            index.stale = true;
+          } else {
+            for (int row = start; row < stop; row++) {
+              index.add(row);
+            }
+          }
+        }
+      }
+    }
+  }
+
+
+  /** Rows [start, stop) are about to be dropped from the end of the table. */
+  protected void indexRowsRemoved(int start, int stop) {
+    if (indexes != null) {
+      for (ColumnIndex index : indexes) {
+        if (index != null && !index.stale) {
+          index.truncate(start);
+        }
+      }
+    }
+  }
+
+
+  /** A row was opened up at this position, but not yet filled in. */
+  protected void indexRowInserted(int row) {
+    if (indexes != null) {
+      for (ColumnIndex index : indexes) {
+        if (index != null && !index.stale) {
+          index.shift(row, 1);
+          index.add(row);
+        }
+      }
+    }
+  }
+
+
+  /** This row is about to be removed from the table. */
+  protected void indexRowRemoved(int row) {
+    if (indexes != null) {
+      for (ColumnIndex index : indexes) {
+        if (index != null && !index.stale) {
+          index.remove(row);
+          index.shift(row + 1, -1);
+        }
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   /**
    * Return the row that contains the first String that matches.
    * @param value the String to match
@@ -3593,6 +4870,13 @@ public class Table {
    */
   public int findRowIndex(String value, int column) {
     checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index != null) {
+      int row = index.findFirst(value);
+      if (row != -2) {
+        return row;
+      }
+    }
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       if (value == null) {
@@ -3639,10 +4923,18 @@ public class Table {
    * @param column ID number of the column to search
    */
   public int[] findRowIndices(String value, int column) {
+    checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index != null) {
+      int[] rows = index.find(value);
+      if (rows != null) {
+        return rows;
+      }
+    }
+
     int[] outgoing = new int[rowCount];
     int count = 0;
 
-    checkColumn(column);
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       if (value == null) {
@@ -3728,33 +5020,109 @@ public class Table {
       public Iterator<TableRow> iterator() {
         return findRowIterator(value, column);
       }
-    };
+    };
+  }
+
+
+  /**
+   * @param columnName title of the column to search
+   */
+  public Iterable<TableRow> findRows(final String value, final String columnName) {
+    return findRows(value, getColumnIndex(columnName));
+  }
+
+
+  /**
+   * @brief Finds multiple rows that contain the given value
+   * @param value the value to match
+   * @param column ID number of the column to search
+   */
+  public Iterator<TableRow> findRowIterator(String value, int column) {
+    return new RowIndexIterator(this, findRowIndices(value, column));
+  }
+
+
+  /**
+   * @param columnName title of the column to search
+   */
+  public Iterator<TableRow> findRowIterator(String value, String columnName) {
+    return findRowIterator(value, getColumnIndex(columnName));
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /**
+   * Return the rows whose numeric value falls between min and max
+   * (inclusive), in ascending row order. Uses a SORTED index when the
+   * column has one, otherwise checks every row.
+   * @param min lowest value to include
+   * @param max highest value to include
+   * @param column ID number of the column to search
+   */
+  public int[] findRowIndicesInRange(double min, double max, int column) {
+    checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index instanceof SortedIndex) {
+      int[] outgoing = ((SortedIndex) index).range(min, max);
+      if (outgoing != null) {
+        return outgoing;
+      }
+    }
+    int[] outgoing = new int[rowCount];
+    int count = 0;
+    int type = columnTypes[column];
+    for (int row = 0; row < rowCount; row++) {
+      double value;
+      if (type == INT) {
+        value = ((int[]) columns[column])[row];
+      } else if (type == LONG) {
+        value = ((long[]) columns[column])[row];
+      } else if (type == FLOAT) {
+        value = ((float[]) columns[column])[row];
+      } else {  // less efficient, includes conversion as necessary
+        value = getDouble(row, column);
+      }
+      if (value >= min && value <= max) {
+        outgoing[count++] = row;
+      }
+    }
+    return PApplet.subset(outgoing, 0, count);
   }
 
 
   /**
    * @param columnName title of the column to search
    */
-  public Iterable<TableRow> findRows(final String value, final String columnName) {
-    return findRows(value, getColumnIndex(columnName));
+  public int[] findRowIndicesInRange(double min, double max, String columnName) {
+    return findRowIndicesInRange(min, max, getColumnIndex(columnName));
   }
 
 
   /**
-   * @brief Finds multiple rows that contain the given value
-   * @param value the value to match
+   * @brief Finds rows with a numeric value between min and max
+   * @param min lowest value to include
+   * @param max highest value to include
    * @param column ID number of the column to search
    */
-  public Iterator<TableRow> findRowIterator(String value, int column) {
-    return new RowIndexIterator(this, findRowIndices(value, column));
+  public Iterable<TableRow> findRowsInRange(final double min, final double max,
+                                            final int column) {
+    return new Iterable<TableRow>() {
+      public Iterator<TableRow> iterator() {
+        return new RowIndexIterator(Table.this,
+                                    findRowIndicesInRange(min, max, column));
+      }
+    };
   }
 
 
   /**
    * @param columnName title of the column to search
    */
-  public Iterator<TableRow> findRowIterator(String value, String columnName) {
-    return findRowIterator(value, getColumnIndex(columnName));
+  public Iterable<TableRow> findRowsInRange(double min, double max,
+                                            String columnName) {
+    return findRowsInRange(min, max, getColumnIndex(columnName));
   }
 
 
@@ -3768,6 +5136,10 @@ public class Table {
    */
   public int matchRowIndex(String regexp, int column) {
     checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index instanceof HashIndex) {
+      return ((HashIndex) index).match(regexp, false)[0];
+    }
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
@@ -3806,10 +5178,15 @@ public class Table {
    * @param column ID number of the column to search
    */
   public int[] matchRowIndices(String regexp, int column) {
+    checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index instanceof HashIndex) {
+      return ((HashIndex) index).match(regexp, true);
+    }
+
     int[] outgoing = new int[rowCount];
     int count = 0;
 
-    checkColumn(column);
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
@@ -3934,6 +5311,8 @@ public class Table {
 
 
   public void replace(String orig, String replacement, int col) {
+    checkColumn(col);
+    invalidateIndex(col);
     if (columnTypes[col] == STRING) {
       String[] stringData = (String[]) columns[col];
 
@@ -3971,6 +5350,7 @@ public class Table {
 
   public void replaceAll(String regex, String replacement, int column) {
     checkColumn(column);
+    invalidateIndex(column);
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
@@ -4129,6 +5509,8 @@ public class Table {
    * @param column ID number of the column to trim
    */
   public void trim(int column) {
+    checkColumn(column);
+    invalidateIndex(column);
     if (columnTypes[column] == STRING) {
       String[] stringData = (String[]) columns[column];
       for (int row = 0; row < rowCount; row++) {
@@ -4152,6 +5534,8 @@ public class Table {
 
   /** Make sure this is a legit column, and if not, expand the table. */
   protected void ensureColumn(int col) {
+    // about to modify the table, so decode anything still mapped
+    loadColumns();
     if (col >= columns.length) {
       setColumnCount(col + 1);
     }
@@ -4186,6 +5570,10 @@ public class Table {
     if (column < 0 || column >= columns.length) {
       throw new ArrayIndexOutOfBoundsException("Column " + column + " does not exist.");
     }
+    if (columns[column] == null) {
+      // first use of a column from a cbin file
+      columnarSource.decode(this, column);
+    }
   }
 
 
@@ -4199,6 +5587,473 @@ public class Table {
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
+  /**
+   * Lookup structure for a single column, kept in sync by the set, insert,
+   * and remove methods. When a change is too large to apply entry by entry,
+   * the index is marked stale and rebuilt the next time it's used.
+   */
+  static abstract class ColumnIndex {
+    Table table;
+    int column;
+    boolean stale;
+
+    ColumnIndex(Table table, int column) {
+      this.table = table;
+      this.column = column;
+    }
+
+    abstract void rebuild();
+
+    /**
+     * The value in this row, as getString() returns it. A category code
+     * that isn't in the dictionary yet, like the 0 in a row that addRow()
+     * has only made room for, counts as missing instead of failing.
+     */
+    String getString(int row) {
+      if (table.columnTypes[column] == CATEGORY) {
+        int code = ((int[]) table.columns[column])[row];
+        if (code != table.missingCategory &&
+            (code < 0 || !table.columnCategories[column].hasCategory(code))) {
+          return table.missingString;
+        }
+      }
+      return table.getString(row, column);
+    }
+
+    /** Add this row, using the value currently in the table. */
+    abstract void add(int row);
+
+    /** Remove this row, using the value currently in the table. */
+    abstract void remove(int row);
+
+    /** Add delta to every row number at or after start. */
+    abstract void shift(int start, int delta);
+
+    /** Drop every row number at or past count. */
+    abstract void truncate(int count);
+
+    /**
+     * Rows (in ascending order) whose getString() equals value,
+     * or null if the caller should search the column itself.
+     */
+    abstract int[] find(String value);
+
+    int findFirst(String value) {
+      int[] rows = find(value);
+      if (rows == null) {
+        return -2;  // not handled
+      }
+      return (rows.length == 0) ? -1 : rows[0];
+    }
+  }
+
+
+  /** Sorted, duplicate-free list of row numbers. */
+  static class RowList {
+    int[] rows = new int[1];
+    int count;
+
+    int position(int row) {
+      return Arrays.binarySearch(rows, 0, count, row);
+    }
+
+    void add(int row) {
+      if (count == 0 || row > rows[count-1]) {
+        if (count == rows.length) {
+          rows = Arrays.copyOf(rows, count << 1);
+        }
+        rows[count++] = row;
+      } else {
+        int pos = position(row);
+        if (pos < 0) {
+          pos = -(pos + 1);
+          if (count == rows.length) {
+            rows = Arrays.copyOf(rows, count << 1);
+          }
+          System.arraycopy(rows, pos, rows, pos+1, count - pos);
+          rows[pos] = row;
+          count++;
+        }
+      }
+    }
+
+    void remove(int row) {
+      int pos = position(row);
+      if (pos >= 0) {
+        System.arraycopy(rows, pos+1, rows, pos, count - pos - 1);
+        count--;
+      }
+    }
+
+    void shift(int start, int delta) {
+      int pos = position(start);
+      if (pos < 0) {
+        pos = -(pos + 1);
+      }
+      for (int i = pos; i < count; i++) {
+        rows[i] += delta;
+      }
+    }
+
+    void truncate(int limit) {
+      int pos = position(limit);
+      count = (pos < 0) ? -(pos + 1) : pos;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(rows, count);
+    }
+  }
+
+
+  /** Maps each distinct value (as returned by getString) to its rows. */
+  static class HashIndex extends ColumnIndex {
+    HashMap<String, RowList> map = new HashMap<>();
+
+    HashIndex(Table table, int column) {
+      super(table, column);
+    }
+
+    void rebuild() {
+      map.clear();
+      for (int row = 0; row < table.rowCount; row++) {
+        add(row);
+      }
+      stale = false;
+    }
+
+    void add(int row) {
+      String key = getString(row);
+      RowList list = map.get(key);
+      if (list == null) {
+        list = new RowList();
+        map.put(key, list);
+      }
+      list.add(row);
+    }
+
+    void remove(int row) {
+      String key = getString(row);
+      RowList list = map.get(key);
+      if (list != null) {
+        list.remove(row);
+        if (list.count == 0) {
+          map.remove(key);
+        }
+      }
+    }
+
+    void shift(int start, int delta) {
+      for (RowList list : map.values()) {
+        list.shift(start, delta);
+      }
+    }
+
+    void truncate(int count) {
+      Iterator<RowList> it = map.values().iterator();
+      while (it.hasNext()) {
+        RowList list = it.next();
+        list.truncate(count);
+        if (list.count == 0) {
+          it.remove();
+        }
+      }
+    }
+
+    int[] find(String value) {
+      RowList list = map.get(value);
+      return (list == null) ? new int[0] : list.toArray();
+    }
+
+    int findFirst(String value) {
+      RowList list = map.get(value);
+      return (list == null) ? -1 : list.rows[0];
+    }
+
+    /** First matching row, or every matching row in ascending order. */
+    int[] match(String regexp, boolean all) {
+      int first = -1;
+      IntList outgoing = new IntList();
+      for (Map.Entry<String, RowList> entry : map.entrySet()) {
+        String key = entry.getKey();
+        if (key != null && PApplet.match(key, regexp) != null) {
+          RowList list = entry.getValue();
+          if (all) {
+            for (int i = 0; i < list.count; i++) {
+              outgoing.append(list.rows[i]);
+            }
+          } else if (first == -1 || list.rows[0] < first) {
+            first = list.rows[0];
+          }
+        }
+      }
+      if (all) {
+        int[] rows = outgoing.array();
+        Arrays.sort(rows);
+        return rows;
+      }
+      return new int[] { first };
+    }
+
+    Map<String, TableRow> getRowMap() {
+      Map<String, TableRow> outgoing = new HashMap<>();
+      for (Map.Entry<String, RowList> entry : map.entrySet()) {
+        RowList list = entry.getValue();
+        // the last occurrence wins, same as the full scan
+        outgoing.put(entry.getKey(),
+                     new RowPointer(table, list.rows[list.count - 1]));
+      }
+      return outgoing;
+    }
+  }
+
+
+  /**
+   * Row numbers ordered by the column's value (and then by row number),
+   * so that exact and range lookups are a pair of binary searches.
+   * Numeric columns sort by value, String and category columns sort
+   * alphabetically with null first.
+   */
+  static class SortedIndex extends ColumnIndex {
+    int[] rows = new int[0];
+    int count;
+
+    SortedIndex(Table table, int column) {
+      super(table, column);
+    }
+
+    boolean isNumeric() {
+      int type = table.columnTypes[column];
+      return type == INT || type == LONG || type == FLOAT || type == DOUBLE;
+    }
+
+    void rebuild() {
+      count = table.rowCount;
+      // stable, so equal values stay in row order
+      Object data = table.columns[column];
+      switch (table.columnTypes[column]) {
+        case INT:
+          rows = Sort.order((int[]) data, count, false);
+          break;
+        case LONG:
+          rows = Sort.order((long[]) data, count, false);
+          break;
+        case FLOAT:
+          rows = Sort.order((float[]) data, count, false);
+          break;
+        case DOUBLE:
+          rows = Sort.order((double[]) data, count, false);
+          break;
+        default:
+          rows = Sort.order(count, this::compareRows);
+      }
+      stale = false;
+    }
+
+    int compareRows(int a, int b) {
+      Object data = table.columns[column];
+      switch (table.columnTypes[column]) {
+        case INT:
+          return Integer.compare(((int[]) data)[a], ((int[]) data)[b]);
+        case LONG:
+          return Long.compare(((long[]) data)[a], ((long[]) data)[b]);
+        case FLOAT:
+          return Float.compare(((float[]) data)[a], ((float[]) data)[b]);
+        case DOUBLE:
+          return Double.compare(((double[]) data)[a], ((double[]) data)[b]);
+        default:
+          return compareStrings(getString(a), getString(b));
+      }
+    }
+
+    static int compareStrings(String a, String b) {
+      if (a == null) {
+        return (b == null) ? 0 : -1;
+      }
+      return (b == null) ? 1 : a.compareTo(b);
+    }
+
+    /** Compare the value in this row against a key from parseKey(). */
+    int compareKey(int row, Object key) {
+      Object data = table.columns[column];
+      switch (table.columnTypes[column]) {
+        case INT:
+          return Long.compare(((int[]) data)[row], (Long) key);
+        case LONG:
+          return Long.compare(((long[]) data)[row], (Long) key);
+        case FLOAT:
+          return Double.compare(((float[]) data)[row], (Double) key);
+        case DOUBLE:
+          return Double.compare(((double[]) data)[row], (Double) key);
+        default:
+          return compareStrings(getString(row), (String) key);
+      }
+    }
+
+    Object parseKey(String value) {
+      switch (table.columnTypes[column]) {
+        case INT: return (long) Integer.parseInt(value);
+        case LONG: return Long.parseLong(value);
+        case FLOAT: return (double) Float.parseFloat(value);
+        case DOUBLE: return Double.parseDouble(value);
+        default: return value;
+      }
+    }
+
+    double getValue(int row) {
+      Object data = table.columns[column];
+      switch (table.columnTypes[column]) {
+        case INT: return ((int[]) data)[row];
+        case LONG: return ((long[]) data)[row];
+        case FLOAT: return ((float[]) data)[row];
+        default: return ((double[]) data)[row];
+      }
+    }
+
+    /** Position of this row, or -(insertion point) - 1 if it's not here. */
+    int position(int row) {
+      int low = 0;
+      int high = count - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int diff = compareRows(rows[mid], row);
+        if (diff == 0) {
+          diff = Integer.compare(rows[mid], row);
+        }
+        if (diff < 0) {
+          low = mid + 1;
+        } else if (diff > 0) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -(low + 1);
+    }
+
+    void add(int row) {
+      int pos = position(row);
+      if (pos < 0) {
+        pos = -(pos + 1);
+        if (count == rows.length) {
+          rows = Arrays.copyOf(rows, Math.max(16, count << 1));
+        }
+        System.arraycopy(rows, pos, rows, pos+1, count - pos);
+        rows[pos] = row;
+        count++;
+      }
+    }
+
+    void remove(int row) {
+      int pos = position(row);
+      if (pos >= 0) {
+        System.arraycopy(rows, pos+1, rows, pos, count - pos - 1);
+        count--;
+      }
+    }
+
+    void shift(int start, int delta) {
+      for (int i = 0; i < count; i++) {
+        if (rows[i] >= start) {
+          rows[i] += delta;
+        }
+      }
+    }
+
+    void truncate(int limit) {
+      int kept = 0;
+      for (int i = 0; i < count; i++) {
+        if (rows[i] < limit) {
+          rows[kept++] = rows[i];
+        }
+      }
+      count = kept;
+    }
+
+    int[] find(String value) {
+      Object key;
+      if (value == null) {
+        if (isNumeric()) {
+          return null;  // missing values are easier to scan for
+        }
+        key = null;
+      } else {
+        try {
+          key = parseKey(value);
+        } catch (NumberFormatException nfe) {
+          return new int[0];  // getString() never returns it either
+        }
+      }
+      int low = 0;
+      int high = count;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (compareKey(rows[mid], key) < 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      int start = low;
+      high = count;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (compareKey(rows[mid], key) <= 0) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      // within a value, entries are already in row order
+      int[] outgoing = Arrays.copyOfRange(rows, start, low);
+      if (isNumeric()) {
+        // "3" and "03" parse the same, but only one of them is a match
+        int matched = 0;
+        for (int row : outgoing) {
+          if (value.equals(table.getString(row, column))) {
+            outgoing[matched++] = row;
+          }
+        }
+        outgoing = Arrays.copyOf(outgoing, matched);
+      }
+      return outgoing;
+    }
+
+    /** Rows between min and max inclusive, or null if not numeric. */
+    int[] range(double min, double max) {
+      if (!isNumeric()) {
+        return null;
+      }
+      int low = 0;
+      int high = count;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (getValue(rows[mid]) < min) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      int start = low;
+      high = count;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (getValue(rows[mid]) <= max) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      int[] outgoing = Arrays.copyOfRange(rows, start, Math.max(start, low));
+      Arrays.sort(outgoing);
+      return outgoing;
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
   static class HashMapBlows {
     HashMap<String,Integer> dataToIndex = new HashMap<>();
     ArrayList<String> indexToData = new ArrayList<>();
@@ -4325,67 +6180,24 @@ public class Table {
   }
 
 
+  /**
+   * Rows are put in a stable order (rows with equal values stay in the
+   * order they were in), using a radix sort for numeric and category
+   * columns, and a merge sort across all cores for String columns.
+   * Then every column is rearranged at once, also in parallel.
+   */
   protected void sort(final int column, final boolean reverse) {
-    final int[] order = IntList.fromRange(getRowCount()).array();
-    Sort s = new Sort() {
-
-      @Override
-      public int size() {
-        return getRowCount();
-      }
-
-      @Override
-      public int compare(int index1, int index2) {
-        int a = reverse ? order[index2] : order[index1];
-        int b = reverse ? order[index1] : order[index2];
-
-        switch (getColumnType(column)) {
-        case INT:
-          return getInt(a, column) - getInt(b, column);
-        case LONG:
-          long diffl = getLong(a, column) - getLong(b, column);
-          return diffl == 0 ? 0 : (diffl < 0 ? -1 : 1);
-        case FLOAT:
-          float difff = getFloat(a, column) - getFloat(b, column);
-          return difff == 0 ? 0 : (difff < 0 ? -1 : 1);
-        case DOUBLE:
-          double diffd = getDouble(a, column) - getDouble(b, column);
-          return diffd == 0 ? 0 : (diffd < 0 ? -1 : 1);
-        case STRING:
-          String string1 = getString(a, column);
-          if (string1 == null) {
-            string1 = "";  // avoid NPE when cells are left empty
-          }
-          String string2 = getString(b, column);
-          if (string2 == null) {
-            string2 = "";
-          }
-          return string1.compareToIgnoreCase(string2);
-        case CATEGORY:
-          return getInt(a, column) - getInt(b, column);
-        default:
-          throw new IllegalArgumentException("Invalid column type: " + getColumnType(column));
-        }
-      }
-
-      @Override
-      public void swap(int a, int b) {
-        int temp = order[a];
-        order[a] = order[b];
-        order[b] = temp;
-      }
+    loadColumns();
+    invalidateIndexes();
+    int[] order = sortOrder(column, reverse);
 
-    };
-    s.run();
-
-    //Object[] newColumns = new Object[getColumnCount()];
-    for (int col = 0; col < getColumnCount(); col++) {
-      switch (getColumnType(col)) {
+    IntStream.range(0, getColumnCount()).parallel().forEach(col -> {
+      switch (columnTypes[col]) {
       case INT:
       case CATEGORY:
         int[] oldInt = (int[]) columns[col];
         int[] newInt = new int[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
+        for (int row = 0; row < order.length; row++) {
           newInt[row] = oldInt[order[row]];
         }
         columns[col] = newInt;
@@ -4393,7 +6205,7 @@ public class Table {
       case LONG:
         long[] oldLong = (long[]) columns[col];
         long[] newLong = new long[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
+        for (int row = 0; row < order.length; row++) {
           newLong[row] = oldLong[order[row]];
         }
         columns[col] = newLong;
@@ -4401,7 +6213,7 @@ public class Table {
       case FLOAT:
         float[] oldFloat = (float[]) columns[col];
         float[] newFloat = new float[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
+        for (int row = 0; row < order.length; row++) {
           newFloat[row] = oldFloat[order[row]];
         }
         columns[col] = newFloat;
@@ -4409,7 +6221,7 @@ public class Table {
       case DOUBLE:
         double[] oldDouble = (double[]) columns[col];
         double[] newDouble = new double[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
+        for (int row = 0; row < order.length; row++) {
           newDouble[row] = oldDouble[order[row]];
         }
         columns[col] = newDouble;
@@ -4417,12 +6229,45 @@ public class Table {
       case STRING:
         String[] oldString = (String[]) columns[col];
         String[] newString = new String[rowCount];
-        for (int row = 0; row < getRowCount(); row++) {
+        for (int row = 0; row < order.length; row++) {
           newString[row] = oldString[order[row]];
         }
         columns[col] = newString;
         break;
       }
+    });
+  }
+
+
+  /** Row numbers in the order that sort() will put them. */
+  protected int[] sortOrder(final int column, final boolean reverse) {
+    int count = getRowCount();
+    switch (getColumnType(column)) {
+    case INT:
+    case CATEGORY:  // by category number, same as before
+      return Sort.order((int[]) columns[column], count, reverse);
+    case LONG:
+      return Sort.order((long[]) columns[column], count, reverse);
+    case FLOAT:
+      return Sort.order((float[]) columns[column], count, reverse);
+    case DOUBLE:
+      return Sort.order((double[]) columns[column], count, reverse);
+    case STRING:
+      final String[] strings = (String[]) columns[column];
+      return Sort.order(count, (a, b) -> {
+        String string1 = strings[a];
+        if (string1 == null) {
+          string1 = "";  // avoid NPE when cells are left empty
+        }
+        String string2 = strings[b];
+        if (string2 == null) {
+          string2 = "";
+        }
+        int diff = string1.compareToIgnoreCase(string2);
+        return reverse ? -diff : diff;
+      });
+    default:
+      throw new IllegalArgumentException("Invalid column type: " + getColumnType(column));
     }
   }
 
@@ -4463,6 +6308,28 @@ public class Table {
   }
 
 
+  /**
+   * Group rows that share the same values in these columns, for use with
+   * agg() to produce a summary table.
+   * <pre>
+   * Table totals = table.groupBy("region", "year").agg("sum(sales)", "count");
+   * </pre>
+   * @see TableGroup#agg(String...)
+   */
+  public TableGroup groupBy(String... columnNames) {
+    int[] columns = new int[columnNames.length];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = checkColumnIndex(columnNames[i]);
+    }
+    return new TableGroup(this, columns);
+  }
+
+
+  public TableGroup groupBy(int... columns) {
+    return new TableGroup(this, columns.clone());
+  }
+
+
   // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
 
 
@@ -4555,6 +6422,11 @@ public class Table {
    * </pre>
    */
   public Map<String, TableRow> getRowMap(int column) {
+    checkColumn(column);
+    ColumnIndex index = getIndex(column);
+    if (index instanceof HashIndex) {
+      return ((HashIndex) index).getRowMap();
+    }
     Map<String, TableRow> outgoing = new HashMap<>();
     for (int row = 0; row < getRowCount(); row++) {
       String id = getString(row, column);
@@ -0,0 +1,598 @@
+package processing.data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+
+/**
+ * Rows of a Table grouped by the values in one or more columns, created by
+ * Table.groupBy(). Each call to agg() (or count(), sum(), mean(), min(),
+ * and max()) returns a new Table with one row per group, in the order that
+ * each group first appears, followed by one column per aggregate.
+ * <pre>
+ * Table summary = table.groupBy("region").agg("count", "sum(sales)", "max(price)");
+ * </pre>
+ * Grouping and aggregation work directly on the typed column arrays, and
+ * large tables are split into blocks of rows that are handled in parallel.
+ * Blocks are merged in row order, so results don't depend on the number
+ * of cores.
+ *
+ * @see Table#groupBy(String...)
+ */
+public class TableGroup {
+  /** Rows handled by each parallel task. */
+  static final int BLOCK = 1 << 16;
+
+  Table table;
+  int[] keyColumns;
+
+  int rowCount;
+  int groupCount;
+  int[] groupOf;   // [row] -> group
+  int[] firstRow;  // [group] -> first row in that group
+  int[] groupSize;
+
+
+  TableGroup(Table table, int[] keyColumns) {
+    this.table = table;
+    this.keyColumns = keyColumns;
+    rowCount = table.getRowCount();
+    for (int column : keyColumns) {
+      table.checkColumn(column);
+    }
+
+    groupOf = new int[rowCount];
+    if (keyColumns.length == 0) {
+      // everything in one group
+      groupCount = (rowCount == 0) ? 0 : 1;
+      firstRow = new int[groupCount];
+
+    } else {
+      long[] keys = new long[rowCount];
+      loadKeys(keyColumns[0], keys);
+      groupCount = densify(keys, groupOf);
+      for (int i = 1; i < keyColumns.length; i++) {
+        // combine the groups so far with the (dense) codes of the next column
+        int[] codes = new int[rowCount];
+        loadKeys(keyColumns[i], keys);
+        final long count = densify(keys, codes);
+        final int[] prev = groupOf;
+        blocks(rowCount, (start, stop) -> {
+          for (int row = start; row < stop; row++) {
+            keys[row] = prev[row] * count + codes[row];
+          }
+        });
+        groupCount = densify(keys, groupOf);
+      }
+      firstRow = new int[groupCount];
+      Arrays.fill(firstRow, -1);
+      for (int row = rowCount - 1; row >= 0; --row) {
+        firstRow[groupOf[row]] = row;
+      }
+    }
+
+    groupSize = new int[groupCount];
+    for (int row = 0; row < rowCount; row++) {
+      groupSize[groupOf[row]]++;
+    }
+  }
+
+
+  /** Number of distinct groups. */
+  public int getGroupCount() {
+    return groupCount;
+  }
+
+
+  /** Group number (a row in the tables returned by agg) for this row. */
+  public int getGroup(int row) {
+    return groupOf[row];
+  }
+
+
+  public Table count() {
+    return agg("count");
+  }
+
+
+  public Table sum(String columnName) {
+    return agg("sum(" + columnName + ")");
+  }
+
+
+  public Table mean(String columnName) {
+    return agg("mean(" + columnName + ")");
+  }
+
+
+  public Table min(String columnName) {
+    return agg("min(" + columnName + ")");
+  }
+
+
+  public Table max(String columnName) {
+    return agg("max(" + columnName + ")");
+  }
+
+
+  /**
+   * Summarize each group. Each spec is "count" (the number of rows in the
+   * group) or one of sum, mean, min, or max followed by the name of a
+   * numeric column in parentheses, e.g. "mean(temperature)". The specs are
+   * also used as the titles of the new columns. Sums of int and long
+   * columns are long, other sums and means are double, and min and max
+   * keep the type of the column. NaN entries are skipped.
+   */
+  public Table agg(String... specs) {
+    Table outgoing = new Table();
+    outgoing.rowCount = groupCount;
+    for (int column : keyColumns) {
+      copyKeyColumn(outgoing, column);
+    }
+
+    HashMap<Integer, Partial> partials = new HashMap<>();
+    for (String spec : specs) {
+      spec = spec.trim();
+      if (spec.equals("count")) {
+        outgoing.addColumn(spec, Table.INT);
+        outgoing.columns[outgoing.getColumnCount() - 1] = groupSize.clone();
+        continue;
+      }
+      int paren = spec.indexOf('(');
+      if (paren == -1 || !spec.endsWith(")")) {
+        throw new IllegalArgumentException("Use count, sum(column), mean(column), " +
+                                           "min(column), or max(column), not " + spec);
+      }
+      String op = spec.substring(0, paren).trim();
+      String title = spec.substring(paren + 1, spec.length() - 1).trim();
+      int column = table.checkColumnIndex(title);
+      table.checkColumn(column);  // decode it if it's from a cbin file
+      int type = table.getColumnType(column);
+      if (type != Table.INT && type != Table.LONG &&
+          type != Table.FLOAT && type != Table.DOUBLE) {
+        throw new IllegalArgumentException("Column " + title + " is not numeric");
+      }
+      Partial p = partials.get(column);
+      if (p == null) {
+        p = accumulate(column);
+        partials.put(column, p);
+      }
+
+      switch (op) {
+        case "sum":
+          if (p.longSum != null) {
+            outgoing.addColumn(spec, Table.LONG);
+            outgoing.columns[outgoing.getColumnCount() - 1] = p.longSum.clone();
+          } else {
+            outgoing.addColumn(spec, Table.DOUBLE);
+            outgoing.columns[outgoing.getColumnCount() - 1] = p.sum.clone();
+          }
+          break;
+        case "mean":
+          double[] mean = new double[groupCount];
+          for (int g = 0; g < groupCount; g++) {
+            double total = (p.longSum != null) ? p.longSum[g] : p.sum[g];
+            mean[g] = (p.count[g] == 0) ? Double.NaN : total / p.count[g];
+          }
+          outgoing.addColumn(spec, Table.DOUBLE);
+          outgoing.columns[outgoing.getColumnCount() - 1] = mean;
+          break;
+        case "min":
+          copyRows(outgoing, spec, column, p.minRow);
+          break;
+        case "max":
+          copyRows(outgoing, spec, column, p.maxRow);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown aggregate " + op);
+      }
+    }
+    return outgoing;
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  interface Block {
+    void run(int start, int stop);
+  }
+
+
+  /** Split [0, count) into blocks and run them on the common pool. */
+  static void blocks(int count, Block block) {
+    int blockCount = (count + BLOCK - 1) / BLOCK;
+    if (blockCount <= 1) {
+      block.run(0, count);
+    } else {
+      IntStream.range(0, blockCount).parallel().forEach(i ->
+        block.run(i * BLOCK, Math.min(count, (i + 1) * BLOCK)));
+    }
+  }
+
+
+  /** Fill keys with a long for each row that is equal only for equal values. */
+  void loadKeys(int column, long[] keys) {
+    Object data = table.columns[column];
+    switch (table.getColumnType(column)) {
+      case Table.INT:
+      case Table.CATEGORY: {
+        int[] intData = (int[]) data;
+        blocks(rowCount, (start, stop) -> {
+          for (int row = start; row < stop; row++) {
+            keys[row] = intData[row];
+          }
+        });
+        break;
+      }
+      case Table.LONG:
+        System.arraycopy(data, 0, keys, 0, rowCount);
+        break;
+      case Table.FLOAT: {
+        float[] floatData = (float[]) data;
+        blocks(rowCount, (start, stop) -> {
+          for (int row = start; row < stop; row++) {
+            keys[row] = Float.floatToIntBits(floatData[row]);
+          }
+        });
+        break;
+      }
+      case Table.DOUBLE: {
+        double[] doubleData = (double[]) data;
+        blocks(rowCount, (start, stop) -> {
+          for (int row = start; row < stop; row++) {
+            keys[row] = Double.doubleToLongBits(doubleData[row]);
+          }
+        });
+        break;
+      }
+      default: {  // STRING, not much to be gained from parallel here
+        String[] stringData = (String[]) data;
+        HashMap<String, Integer> codes = new HashMap<>();
+        for (int row = 0; row < rowCount; row++) {
+          Integer code = codes.get(stringData[row]);
+          if (code == null) {
+            code = codes.size();
+            codes.put(stringData[row], code);
+          }
+          keys[row] = code;
+        }
+      }
+    }
+  }
+
+
+  /**
+   * Replace each key with a number from 0 to (distinct keys - 1), in order
+   * of first appearance. Blocks are numbered locally in parallel, then the
+   * local numbers are mapped to global ones in block order.
+   */
+  static int densify(long[] keys, int[] codes) {
+    int count = keys.length;
+    int blockCount = Math.max(1, (count + BLOCK - 1) / BLOCK);
+    KeyMap[] local = new KeyMap[blockCount];
+    blocks(count, (start, stop) -> {
+      KeyMap map = new KeyMap();
+      for (int row = start; row < stop; row++) {
+        codes[row] = map.code(keys[row]);
+      }
+      local[start / BLOCK] = map;
+    });
+    if (blockCount == 1) {
+      return (local[0] == null) ? 0 : local[0].size;
+    }
+
+    KeyMap global = new KeyMap();
+    int[][] remap = new int[blockCount][];
+    for (int i = 0; i < blockCount; i++) {
+      KeyMap map = local[i];
+      remap[i] = new int[map.size];
+      for (int j = 0; j < map.size; j++) {
+        remap[i][j] = global.code(map.order[j]);
+      }
+    }
+    blocks(count, (start, stop) -> {
+      int[] lookup = remap[start / BLOCK];
+      for (int row = start; row < stop; row++) {
+        codes[row] = lookup[codes[row]];
+      }
+    });
+    return global.size;
+  }
+
+
+  /** Open addressing long to int map that hands out codes in order. */
+  static class KeyMap {
+    long[] keys = new long[16];
+    int[] slots = new int[16];  // code + 1, or 0 for empty
+    long[] order = new long[16];
+    int size;
+
+    int code(long key) {
+      int mask = slots.length - 1;
+      int h = Long.hashCode(key * 0x9E3779B97F4A7C15L);
+      int i = (h ^ (h >>> 16)) & mask;
+      while (slots[i] != 0) {
+        if (keys[i] == key) {
+          return slots[i] - 1;
+        }
+        i = (i + 1) & mask;
+      }
+      if (size == order.length) {
+        order = Arrays.copyOf(order, size << 1);
+      }
+      order[size] = key;
+      keys[i] = key;
+      slots[i] = ++size;
+      if (size * 2 > slots.length) {
+        grow();
+      }
+      return size - 1;
+    }
+
+    void grow() {
+      long[] oldKeys = keys;
+      int[] oldSlots = slots;
+      keys = new long[oldKeys.length << 1];
+      slots = new int[oldSlots.length << 1];
+      int mask = slots.length - 1;
+      for (int j = 0; j < oldSlots.length; j++) {
+        if (oldSlots[j] != 0) {
+          int h = Long.hashCode(oldKeys[j] * 0x9E3779B97F4A7C15L);
+          int i = (h ^ (h >>> 16)) & mask;
+          while (slots[i] != 0) {
+            i = (i + 1) & mask;
+          }
+          keys[i] = oldKeys[j];
+          slots[i] = oldSlots[j];
+        }
+      }
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Per-group sums, counts, and extremes for one column. */
+  static class Partial {
+    double[] sum;
+    long[] longSum;
+    int[] count;   // entries that aren't NaN
+    int[] minRow;  // row holding the smallest value, or -1
+    int[] maxRow;
+
+    Partial(int groupCount, boolean integer) {
+      if (integer) {
+        longSum = new long[groupCount];
+      } else {
+        sum = new double[groupCount];
+      }
+      count = new int[groupCount];
+      minRow = new int[groupCount];
+      maxRow = new int[groupCount];
+      Arrays.fill(minRow, -1);
+      Arrays.fill(maxRow, -1);
+    }
+  }
+
+
+  Partial accumulate(int column) {
+    int type = table.getColumnType(column);
+    boolean integer = (type == Table.INT || type == Table.LONG);
+    // Each block needs its own arrays, so use fewer (larger) blocks when
+    // there are many groups, keeping the extra memory close to rowCount.
+    int rowsPerBlock = Math.max(BLOCK, groupCount);
+    int blockCount = Math.max(1, (rowCount + rowsPerBlock - 1) / rowsPerBlock);
+    Partial[] partials = new Partial[blockCount];
+    IntStream.range(0, blockCount).parallel().forEach(i -> {
+      Partial p = new Partial(groupCount, integer);
+      accumulate(column, p, i * rowsPerBlock,
+                 Math.min(rowCount, (i + 1) * rowsPerBlock));
+      partials[i] = p;
+    });
+
+    Partial outgoing = partials[0];
+    for (int i = 1; i < blockCount; i++) {
+      Partial p = partials[i];
+      for (int g = 0; g < groupCount; g++) {
+        if (integer) {
+          outgoing.longSum[g] += p.longSum[g];
+        } else {
+          outgoing.sum[g] += p.sum[g];
+        }
+        outgoing.count[g] += p.count[g];
+        // later blocks only win on a strictly better value
+        if (p.minRow[g] != -1 &&
+            (outgoing.minRow[g] == -1 ||
+             compare(column, p.minRow[g], outgoing.minRow[g]) < 0)) {
+          outgoing.minRow[g] = p.minRow[g];
+        }
+        if (p.maxRow[g] != -1 &&
+            (outgoing.maxRow[g] == -1 ||
+             compare(column, p.maxRow[g], outgoing.maxRow[g]) > 0)) {
+          outgoing.maxRow[g] = p.maxRow[g];
+        }
+      }
+    }
+    return outgoing;
+  }
+
+
+  void accumulate(int column, Partial p, int start, int stop) {
+    int[] minRow = p.minRow;
+    int[] maxRow = p.maxRow;
+    int[] count = p.count;
+    switch (table.getColumnType(column)) {
+      case Table.INT: {
+        int[] data = (int[]) table.columns[column];
+        long[] sum = p.longSum;
+        for (int row = start; row < stop; row++) {
+          int g = groupOf[row];
+          int value = data[row];
+          sum[g] += value;
+          if (count[g]++ == 0) {
+            minRow[g] = row;
+            maxRow[g] = row;
+          } else if (value < data[minRow[g]]) {
+            minRow[g] = row;
+          } else if (value > data[maxRow[g]]) {
+            maxRow[g] = row;
+          }
+        }
+        break;
+      }
+      case Table.LONG: {
+        long[] data = (long[]) table.columns[column];
+        long[] sum = p.longSum;
+        for (int row = start; row < stop; row++) {
+          int g = groupOf[row];
+          long value = data[row];
+          sum[g] += value;
+          if (count[g]++ == 0) {
+            minRow[g] = row;
+            maxRow[g] = row;
+          } else if (value < data[minRow[g]]) {
+            minRow[g] = row;
+          } else if (value > data[maxRow[g]]) {
+            maxRow[g] = row;
+          }
+        }
+        break;
+      }
+      case Table.FLOAT: {
+        float[] data = (float[]) table.columns[column];
+        double[] sum = p.sum;
+        for (int row = start; row < stop; row++) {
+          float value = data[row];
+          if (value == value) {  // skip NaN
+            int g = groupOf[row];
+            sum[g] += value;
+            if (count[g]++ == 0) {
+              minRow[g] = row;
+              maxRow[g] = row;
+            } else if (value < data[minRow[g]]) {
+              minRow[g] = row;
+            } else if (value > data[maxRow[g]]) {
+              maxRow[g] = row;
+            }
+          }
+        }
+        break;
+      }
+      case Table.DOUBLE: {
+        double[] data = (double[]) table.columns[column];
+        double[] sum = p.sum;
+        for (int row = start; row < stop; row++) {
+          double value = data[row];
+          if (value == value) {  // skip NaN
+            int g = groupOf[row];
+            sum[g] += value;
+            if (count[g]++ == 0) {
+              minRow[g] = row;
+              maxRow[g] = row;
+            } else if (value < data[minRow[g]]) {
+              minRow[g] = row;
+            } else if (value > data[maxRow[g]]) {
+              maxRow[g] = row;
+            }
+          }
+        }
+        break;
+      }
+    }
+  }
+
+
+  int compare(int column, int a, int b) {
+    Object data = table.columns[column];
+    switch (table.getColumnType(column)) {
+      case Table.INT: return Integer.compare(((int[]) data)[a], ((int[]) data)[b]);
+      case Table.LONG: return Long.compare(((long[]) data)[a], ((long[]) data)[b]);
+      case Table.FLOAT: return Float.compare(((float[]) data)[a], ((float[]) data)[b]);
+      default: return Double.compare(((double[]) data)[a], ((double[]) data)[b]);
+    }
+  }
+
+
+  // . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . . .
+
+
+  /** Add a column with the value of each group's key from its first row. */
+  void copyKeyColumn(Table outgoing, int column) {
+    int type = table.getColumnType(column);
+    outgoing.addColumn(table.getColumnTitle(column), type);
+    copyRows(outgoing, column, firstRow);
+    if (type == Table.CATEGORY) {
+      Table.HashMapBlows source = table.columnCategories[column];
+      Table.HashMapBlows categories = new Table.HashMapBlows();
+      for (int i = 0; i < source.size(); i++) {
+        categories.setCategory(i, source.key(i));
+      }
+      outgoing.columnCategories[outgoing.getColumnCount() - 1] = categories;
+    }
+  }
+
+
+  void copyRows(Table outgoing, String title, int column, int[] rows) {
+    outgoing.addColumn(title, table.getColumnType(column));
+    copyRows(outgoing, column, rows);
+  }
+
+
+  /** Fill the last column of outgoing with these rows of a column (-1 for missing). */
+  void copyRows(Table outgoing, int column, int[] rows) {
+    int target = outgoing.getColumnCount() - 1;
+    Object data = table.columns[column];
+    switch (table.getColumnType(column)) {
+      case Table.INT:
+      case Table.CATEGORY: {
+        int[] source = (int[]) data;
+        int missing = (table.getColumnType(column) == Table.CATEGORY) ?
+          table.missingCategory : table.missingInt;
+        int[] values = new int[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+          values[g] = (rows[g] == -1) ? missing : source[rows[g]];
+        }
+        outgoing.columns[target] = values;
+        break;
+      }
+      case Table.LONG: {
+        long[] source = (long[]) data;
+        long[] values = new long[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+          values[g] = (rows[g] == -1) ? table.missingLong : source[rows[g]];
+        }
+        outgoing.columns[target] = values;
+        break;
+      }
+      case Table.FLOAT: {
+        float[] source = (float[]) data;
+        float[] values = new float[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+          values[g] = (rows[g] == -1) ? Float.NaN : source[rows[g]];
+        }
+        outgoing.columns[target] = values;
+        break;
+      }
+      case Table.DOUBLE: {
+        double[] source = (double[]) data;
+        double[] values = new double[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+          values[g] = (rows[g] == -1) ? Double.NaN : source[rows[g]];
+        }
+        outgoing.columns[target] = values;
+        break;
+      }
+      default: {
+        String[] source = (String[]) data;
+        String[] values = new String[groupCount];
+        for (int g = 0; g < groupCount; g++) {
+          values[g] = (rows[g] == -1) ? null : source[rows[g]];
+        }
+        outgoing.columns[target] = values;
+      }
+    }
+  }
+}
@@ -24,8 +24,14 @@
 package processing.data;
 
 import java.io.*;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import javax.xml.parsers.*;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.w3c.dom.*;
 import org.xml.sax.*;
@@ -268,6 +274,230 @@ public class XML implements Serializable {
   }
 
 
+  /**
+   * Read a large XML file one element at a time, rather than loading the
+   * whole document. Each element that matches the path (relative to the
+   * root element, same as getChildren()) is returned as its own XML object
+   * with all of its content, and memory use is limited to the largest of
+   * those elements.
+   * <pre>
+   * for (XML point : XML.stream(createInput("track.gpx"), "trk/trkseg/trkpt")) {
+   *   float lat = point.getFloat("lat");
+   * }
+   * </pre>
+   * The getParent() of each element only has the attributes of the
+   * enclosing elements, not their other children. The results can only
+   * be iterated once, and the input is closed at the end.
+   *
+   * @param input the XML data, closed once the last element has been read
+   * @param path element names separated by slashes
+   */
+  static public Iterable<XML> stream(InputStream input, String path) {
+    try {
+      return new ElementStream(createStreamFactory().createXMLStreamReader(input), input, path);
+    } catch (XMLStreamException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  /**
+   * @param reader the XML data, closed once the last element has been read
+   */
+  static public Iterable<XML> stream(final Reader reader, String path) {
+    // same line separator handling as the XML(Reader) constructor
+    Reader filtered = new FilterReader(reader) {
+      @Override
+      public int read(char[] cbuf, int off, int len) throws IOException {
+        int count = super.read(cbuf, off, len);
+        for (int i = 0; i < count; i++) {
+          if (cbuf[off+i] == '\u2028') {
+            cbuf[off+i] = '\n';
+          }
+        }
+        return count;
+      }
+    };
+    try {
+      return new ElementStream(createStreamFactory().createXMLStreamReader(filtered), filtered, path);
+    } catch (XMLStreamException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+
+  static private XMLInputFactory createStreamFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    // Prevent 503 errors from www.w3.org, same as the DOM version
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    try {
+      factory.setProperty("http://java.sun.com/xml/stream/properties/ignore-external-dtd", true);
+    } catch (IllegalArgumentException e) {
+      // not available with this StAX implementation
+    }
+    return factory;
+  }
+
+
+  /**
+   * Pulls matching elements from a StAX reader, building a small DOM tree
+   * for each one.
+   */
+  static class ElementStream implements Iterable<XML>, Iterator<XML> {
+    XMLStreamReader reader;
+    Closeable source;
+    String[] path;
+    Document document;
+
+    // enclosing elements of the current position, attributes only
+    XML[] ancestors;
+    int depth;  // number of open elements
+    XML next;
+    boolean started;
+
+    ElementStream(XMLStreamReader reader, Closeable source, String path) {
+      this.reader = reader;
+      this.source = source;
+      this.path = PApplet.split(path, '/');
+      ancestors = new XML[this.path.length + 1];
+      try {
+        document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+      } catch (ParserConfigurationException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    public Iterator<XML> iterator() {
+      if (started) {
+        throw new IllegalStateException("XML.stream() can only be read once");
+      }
+      started = true;
+      return this;
+    }
+
+    public boolean hasNext() {
+      if (next == null && reader != null) {
+        next = advance();
+      }
+      return next != null;
+    }
+
+    public XML next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      XML outgoing = next;
+      next = null;
+      return outgoing;
+    }
+
+    /** Read up to the next match, or close up shop and return null. */
+    XML advance() {
+      try {
+        while (reader.hasNext()) {
+          int event = reader.next();
+          if (event == XMLStreamConstants.START_ELEMENT) {
+            depth++;
+            // only look closer at elements along the path
+            int level = depth - 1;  // 0 for the root
+            if (level <= path.length &&
+                (level == 0 || ancestors[level - 1] != null) &&
+                (level == 0 || qualifiedName(reader.getPrefix(), reader.getLocalName()).equals(path[level - 1]))) {
+              Element element = createElement();
+              XML xml;
+              if (level == 0) {
+                xml = new XML();
+                xml.node = element;
+              } else {
+                xml = new XML(ancestors[level - 1], element);
+              }
+              if (level == path.length) {
+                readContent(element);
+                depth--;
+                return xml;
+              }
+              ancestors[level] = xml;
+            }
+          } else if (event == XMLStreamConstants.END_ELEMENT) {
+            depth--;
+            if (depth < ancestors.length) {
+              ancestors[depth] = null;
+            }
+          }
+        }
+        reader.close();
+        source.close();
+      } catch (XMLStreamException e) {
+        throw new RuntimeException(e);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      reader = null;
+      return null;
+    }
+
+    /** Element for the current START_ELEMENT, with its attributes. */
+    Element createElement() {
+      Element element =
+        document.createElement(qualifiedName(reader.getPrefix(), reader.getLocalName()));
+      for (int i = 0; i < reader.getNamespaceCount(); i++) {
+        String prefix = reader.getNamespacePrefix(i);
+        String name = (prefix == null || prefix.isEmpty()) ? "xmlns" : "xmlns:" + prefix;
+        element.setAttribute(name, reader.getNamespaceURI(i));
+      }
+      for (int i = 0; i < reader.getAttributeCount(); i++) {
+        element.setAttribute(qualifiedName(reader.getAttributePrefix(i),
+                                           reader.getAttributeLocalName(i)),
+                             reader.getAttributeValue(i));
+      }
+      return element;
+    }
+
+    /** Read everything up to the matching END_ELEMENT into this element. */
+    void readContent(Element element) throws XMLStreamException {
+      Node parent = element;
+      int level = 0;
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            Element kid = createElement();
+            parent.appendChild(kid);
+            parent = kid;
+            level++;
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            if (level == 0) {
+              return;
+            }
+            parent = parent.getParentNode();
+            level--;
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.SPACE:
+            // StAX may split text into pieces, DOM keeps it as one node
+            Node last = parent.getLastChild();
+            if (last != null && last.getNodeType() == Node.TEXT_NODE) {
+              ((Text) last).appendData(reader.getText());
+            } else {
+              parent.appendChild(document.createTextNode(reader.getText()));
+            }
+            break;
+          case XMLStreamConstants.CDATA:
+            parent.appendChild(document.createCDATASection(reader.getText()));
+            break;
+          case XMLStreamConstants.COMMENT:
+            parent.appendChild(document.createComment(reader.getText()));
+            break;
+        }
+      }
+    }
+
+    static String qualifiedName(String prefix, String local) {
+      return (prefix == null || prefix.isEmpty()) ? local : prefix + ":" + local;
+    }
+  }
+
+
 //  protected boolean save(OutputStream output) {
 //    return write(PApplet.createWriter(output));
 //  }
@@ -0,0 +1,249 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+
+/**
+ * Streams the geometry of one kind (polygons, lines or points) drawn in
+ * immediate mode into the same vertex and index buffers flush after flush,
+ * instead of respecifying the buffers with bufferData() every time.
+ * <p>
+ * Each flush gets the next free range of vertices and indices, and writes
+ * only those through mapBufferRange() without synchronization. Once the
+ * end of the buffers is reached, the ring starts over from the beginning.
+ * With sync objects, a fence after the draw calls of each flush tells when
+ * the GPU is done reading its range, and the ring only waits on it when
+ * it comes back around to that range. Without them, the buffers are
+ * orphaned instead every time the ring starts over.
+ */
+class BufferRing {
+  static protected final int INIT_VERTEX_COUNT = 1 << 14;
+  static protected final int INIT_INDEX_COUNT  = 1 << 15;
+
+  /** Flushes of the largest size so far that fit before starting over. */
+  static protected final int MIN_FLUSHES = 3;
+
+  /** Nanoseconds to wait on a fence before asking again. */
+  static protected final long WAIT_TIMEOUT = 1000000000L;
+
+  static private int lastGeneration = 0;
+
+  protected PGL pgl;
+  protected boolean fenced;
+
+  // Buffers with a different generation get new storage on their next
+  // write, so changing it orphans all of them at once.
+  protected int generation;
+
+  protected int vertexCapacity = INIT_VERTEX_COUNT;
+  protected int indexCapacity = INIT_INDEX_COUNT;
+  protected int vertexHead;
+  protected int indexHead;
+
+  // The range of the current flush
+  protected int vertexBase;
+  protected int vertexCount;
+  protected int indexBase;
+  protected int indexCount;
+
+  // Fences of the flushes the GPU might still be reading, oldest first,
+  // with the vertex and index ranges of each one.
+  protected long[] fences = new long[16];
+  protected int[] ranges = new int[4 * 16];
+  protected int fenceCount;
+
+
+  BufferRing(PGL pgl) {
+    this.pgl = pgl;
+    fenced = pgl.hasSynchronization();
+    generation = ++lastGeneration;
+  }
+
+
+  /**
+   * Sets aside the ranges for the vertices and indices of the next flush,
+   * waiting first for the GPU to be done with them if needed.
+   */
+  void reserve(int vcount, int icount) {
+    if (vertexCapacity < MIN_FLUSHES * vcount ||
+        indexCapacity < MIN_FLUSHES * icount) {
+      while (vertexCapacity < MIN_FLUSHES * vcount) vertexCapacity <<= 1;
+      while (indexCapacity < MIN_FLUSHES * icount) indexCapacity <<= 1;
+      // Larger storage for every buffer, nothing in it is in use
+      generation = ++lastGeneration;
+      deleteFences(fenceCount);
+      vertexHead = indexHead = 0;
+    } else if (vertexCapacity < vertexHead + vcount ||
+               indexCapacity < indexHead + icount) {
+      if (!fenced) generation = ++lastGeneration;
+      vertexHead = indexHead = 0;
+    }
+
+    if (fenced) {
+      waitFor(vertexHead, vertexHead + vcount, indexHead, indexHead + icount);
+    }
+
+    vertexBase = vertexHead;
+    vertexCount = vcount;
+    indexBase = indexHead;
+    indexCount = icount;
+    vertexHead += vcount;
+    indexHead += icount;
+  }
+
+
+  void write(VertexBuffer buf, float[] data, int ncoords) {
+    ByteBuffer range = map(buf, ncoords * PGL.SIZEOF_FLOAT);
+    if (range == null) return;
+    range.asFloatBuffer().put(data, 0, ncoords * count(buf));
+    pgl.unmapBuffer(buf.target);
+  }
+
+
+  void write(VertexBuffer buf, int[] data, int ncoords) {
+    ByteBuffer range = map(buf, ncoords * PGL.SIZEOF_INT);
+    if (range == null) return;
+    range.asIntBuffer().put(data, 0, ncoords * count(buf));
+    pgl.unmapBuffer(buf.target);
+  }
+
+
+  void write(VertexBuffer buf, byte[] data, int ncoords, int stride) {
+    ByteBuffer range = map(buf, stride);
+    if (range == null) return;
+    range.put(data, 0, ncoords * count(buf));
+    pgl.unmapBuffer(buf.target);
+  }
+
+
+  void write(VertexBuffer buf, short[] indices) {
+    ByteBuffer range = map(buf, PGL.SIZEOF_INDEX);
+    if (range == null) return;
+    range.asShortBuffer().put(indices, 0, count(buf));
+    pgl.unmapBuffer(buf.target);
+  }
+
+
+  /** Marks the end of the draw calls that read the current ranges. */
+  void fence() {
+    if (!fenced || (vertexCount == 0 && indexCount == 0)) return;
+
+    if (fenceCount == fences.length) {
+      fences = Arrays.copyOf(fences, 2 * fenceCount);
+      ranges = Arrays.copyOf(ranges, 8 * fenceCount);
+    }
+    fences[fenceCount] = pgl.fenceSync(PGL.SYNC_GPU_COMMANDS_COMPLETE, 0);
+    ranges[4 * fenceCount    ] = vertexBase;
+    ranges[4 * fenceCount + 1] = vertexBase + vertexCount;
+    ranges[4 * fenceCount + 2] = indexBase;
+    ranges[4 * fenceCount + 3] = indexBase + indexCount;
+    fenceCount++;
+  }
+
+
+  void dispose() {
+    deleteFences(fenceCount);
+  }
+
+
+  protected int count(VertexBuffer buf) {
+    return buf.index ? indexCount : vertexCount;
+  }
+
+
+  protected ByteBuffer map(VertexBuffer buf, int stride) {
+    int count = count(buf);
+    if (count == 0) return null;
+
+    pgl.bindBuffer(buf.target, buf.glId);
+    if (buf.streamGeneration != generation) {
+      int capacity = buf.index ? indexCapacity : vertexCapacity;
+      pgl.bufferData(buf.target, capacity * stride, null, PGL.STREAM_DRAW);
+      buf.streamGeneration = generation;
+    }
+
+    int base = buf.index ? indexBase : vertexBase;
+    ByteBuffer range = pgl.mapBufferRange(buf.target, base * stride,
+                                          count * stride,
+                                          PGL.MAP_WRITE_BIT |
+                                          PGL.MAP_INVALIDATE_RANGE_BIT |
+                                          PGL.MAP_UNSYNCHRONIZED_BIT);
+    if (range == null) {
+      throw new RuntimeException("Cannot map the range of the vertex buffer " +
+                                 "to stream into");
+    }
+    return range.order(ByteOrder.nativeOrder());
+  }
+
+
+  protected void waitFor(int v0, int v1, int i0, int i1) {
+    // The GPU finishes the flushes in order, so the newest one reading
+    // from the ranges is the only one worth waiting on.
+    int last = -1;
+    for (int n = fenceCount - 1; n >= 0 && last == -1; n--) {
+      if (overlap(ranges[4 * n], ranges[4 * n + 1], v0, v1) ||
+          overlap(ranges[4 * n + 2], ranges[4 * n + 3], i0, i1)) {
+        last = n;
+      }
+    }
+    if (last != -1) {
+      int status;
+      do {
+        status = pgl.clientWaitSync(fences[last], PGL.SYNC_FLUSH_COMMANDS_BIT,
+                                    WAIT_TIMEOUT);
+      } while (status == PGL.TIMEOUT_EXPIRED);
+      deleteFences(last + 1);
+    }
+
+    // Let go of the fences that are done already, so they don't pile up
+    // while the ring is large compared to the flushes
+    int done = 0;
+    while (done < fenceCount) {
+      int status = pgl.clientWaitSync(fences[done], 0, 0);
+      if (status != PGL.ALREADY_SIGNALED &&
+          status != PGL.CONDITION_SATISFIED) break;
+      done++;
+    }
+    deleteFences(done);
+  }
+
+
+  /** Deletes the oldest fences. */
+  protected void deleteFences(int count) {
+    if (count == 0) return;
+    for (int n = 0; n < count; n++) {
+      pgl.deleteSync(fences[n]);
+    }
+    fenceCount -= count;
+    System.arraycopy(fences, count, fences, 0, fenceCount);
+    System.arraycopy(ranges, 4 * count, ranges, 0, 4 * fenceCount);
+  }
+
+
+  static protected boolean overlap(int a0, int a1, int b0, int b1) {
+    return a0 < b1 && b0 < a1;
+  }
+}
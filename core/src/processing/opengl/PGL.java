@@ -38,6 +38,7 @@ import java.util.regex.Pattern;
 import processing.core.PApplet;
 import processing.core.PConstants;
 import processing.core.PGraphics;
+import processing.core.PixelKernels;
 
 
 /**
@@ -1628,40 +1629,9 @@ public abstract class PGL {
    * flipped vertically.
    */
   protected static void nativeToJavaARGB(int[] pixels, int width, int height) {
-    int index = 0;
-    int yindex = (height - 1) * width;
-    for (int y = 0; y < height / 2; y++) {
-      for (int x = 0; x < width; x++) {
-        int pixy = pixels[yindex];
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // RGBA to ARGB
-          pixels[index] = (pixy >>> 8) | (pixy << 24);
-          pixels[yindex] = (pixi >>> 8) | (pixi << 24);
-        } else { // ABGR to ARGB
-          int rbi = pixi & 0x00FF00FF;
-          int rby = pixy & 0x00FF00FF;
-          pixels[index] = (pixy & 0xFF00FF00) | (rby << 16) | (rby >> 16);
-          pixels[yindex] = (pixi & 0xFF00FF00) | (rbi << 16) | (rbi >> 16);
-        }
-        index++;
-        yindex++;
-      }
-      yindex -= width * 2;
-    }
-
-    if ((height % 2) == 1) { // Converts center row
-      index = (height / 2) * width;
-      for (int x = 0; x < width; x++) {
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // RGBA to ARGB
-          pixels[index] = (pixi >>> 8) | (pixi << 24);
-        } else { // ABGR to ARGB
-          int rbi = pixi & 0x00FF00FF;
-          pixels[index] = (pixi & 0xFF00FF00) | (rbi << 16) | (rbi >> 16);
-        }
-        index++;
-      }
-    }
+    PixelKernels.get().convertFlipped(pixels, width, height, BIG_ENDIAN ?
+                                      PixelKernels.RGBA_TO_ARGB :
+                                      PixelKernels.SWAP_RED_BLUE);
   }
 
 
@@ -1750,40 +1720,9 @@ public abstract class PGL {
    * image is flipped vertically.
    */
   protected static void javaToNativeARGB(int[] pixels, int width, int height) {
-    int index = 0;
-    int yindex = (height - 1) * width;
-    for (int y = 0; y < height / 2; y++) {
-      for (int x = 0; x < width; x++) {
-        int pixy = pixels[yindex];
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // ARGB to RGBA
-          pixels[index] = (pixy >>> 24) | (pixy << 8);
-          pixels[yindex] = (pixi >>> 24) | (pixi << 8);
-        } else { // ARGB to ABGR
-          int rbi = pixi & 0x00FF00FF;
-          int rby = pixy & 0x00FF00FF;
-          pixels[index] = (pixy & 0xFF00FF00) | (rby << 16) | (rby >> 16);
-          pixels[yindex] = (pixi & 0xFF00FF00) | (rbi << 16) | (rbi >> 16);
-        }
-        index++;
-        yindex++;
-      }
-      yindex -= width * 2;
-    }
-
-    if ((height % 2) == 1) { // Converts center row
-      index = (height / 2) * width;
-      for (int x = 0; x < width; x++) {
-        int pixi = pixels[index];
-        if (BIG_ENDIAN) { // ARGB to RGBA
-          pixels[index] = (pixi >>> 24) | (pixi << 8);
-        } else { // ARGB to ABGR
-          int rbi = pixi & 0x00FF00FF;
-          pixels[index] = (pixi & 0xFF00FF00) | (rbi << 16) | (rbi >> 16);
-        }
-        index++;
-      }
-    }
+    PixelKernels.get().convertFlipped(pixels, width, height, BIG_ENDIAN ?
+                                      PixelKernels.ARGB_TO_RGBA :
+                                      PixelKernels.SWAP_RED_BLUE);
   }
 
 
@@ -2263,6 +2202,20 @@ public abstract class PGL {
   }
 
 
+  protected boolean hasInstancing() {
+    int[] version = getGLVersion();
+    if (isES()) {
+      return version[0] >= 3;
+    }
+    return (version[0] > 3) || (version[0] == 3 && version[1] >= 3);
+  }
+
+
+  protected boolean hasMapBufferRange() {
+    return !isES() && getGLVersion()[0] >= 3;
+  }
+
+
   protected boolean hasPBOs() {
     int[] version = getGLVersion();
     if (isES()) {
@@ -2836,6 +2789,11 @@ public abstract class PGL {
   public static int WRITE_ONLY;
   public static int READ_WRITE;
 
+  public static int MAP_WRITE_BIT;
+  public static int MAP_INVALIDATE_RANGE_BIT;
+  public static int MAP_INVALIDATE_BUFFER_BIT;
+  public static int MAP_UNSYNCHRONIZED_BIT;
+
   public static int TESS_WINDING_NONZERO;
   public static int TESS_WINDING_ODD;
   public static int TESS_EDGE_FLAG;
@@ -3095,6 +3053,8 @@ public abstract class PGL {
   public static int SYNC_GPU_COMMANDS_COMPLETE;
   public static int ALREADY_SIGNALED;
   public static int CONDITION_SATISFIED;
+  public static int TIMEOUT_EXPIRED;
+  public static int SYNC_FLUSH_COMMANDS_BIT;
 
   ///////////////////////////////////////////////////////////
 
@@ -3211,6 +3171,12 @@ public abstract class PGL {
   public abstract void enableVertexAttribArray(int index);
   public abstract void disableVertexAttribArray(int index);
 
+  // Instancing needs OpenGL 3.3 or ES 3.0, callers check hasInstancing()
+  // first, so renderers that don't have it needn't implement these two.
+  public void vertexAttribDivisor(int index, int divisor) {
+    throw new RuntimeException(String.format(MISSING_GLFUNC_ERROR, "glVertexAttribDivisor()"));
+  }
+
   public void drawArrays(int mode, int first, int count) {
     geomCount += count;
     drawArraysImpl(mode, first, count);
@@ -3225,6 +3191,15 @@ public abstract class PGL {
 
   public abstract void drawElementsImpl(int mode, int count, int type, int offset);
 
+  public void drawElementsInstanced(int mode, int count, int type, int offset, int instances) {
+    geomCount += count * instances;
+    drawElementsInstancedImpl(mode, count, type, offset, instances);
+  }
+
+  public void drawElementsInstancedImpl(int mode, int count, int type, int offset, int instances) {
+    throw new RuntimeException(String.format(MISSING_GLFUNC_ERROR, "glDrawElementsInstanced()"));
+  }
+
   //////////////////////////////////////////////////////////////////////////////
 
   // Rasterization
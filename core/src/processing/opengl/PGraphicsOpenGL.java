@@ -32,6 +32,11 @@ import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.nio.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 
 /**
@@ -136,11 +141,30 @@ public class PGraphicsOpenGL extends PGraphics {
   protected boolean pointBuffersCreated = false;
   protected int pointBuffersContext;
 
+  // Rings the buffers above are streamed through, while
+  // hint(ENABLE_BUFFER_STREAMING) is on.
+  protected BufferRing polyRing;
+  protected BufferRing lineRing;
+  protected BufferRing pointRing;
+
+  // Copies of the shape drawn by shape(PShape, float[], int[], int): the
+  // top three rows of the transformation of each copy and its color, and
+  // the buffers they are uploaded to when the GPU supports instancing.
+  protected int instanceCount;
+  protected float[] instanceRows = new float[12 * INIT_INSTANCE_COUNT];
+  protected int[] instanceColors = new int[INIT_INSTANCE_COUNT];
+  protected boolean instancesLoaded;
+  protected FloatBuffer instanceRowsBuffer;
+  protected IntBuffer instanceColorsBuffer;
+  protected VertexBuffer bufInstanceRows;
+  protected VertexBuffer bufInstanceColor;
+
   // Generic vertex attributes (only for polys)
   protected AttributeMap polyAttribs;
 
   static protected final int INIT_VERTEX_BUFFER_SIZE  = 256;
   static protected final int INIT_INDEX_BUFFER_SIZE   = 512;
+  static protected final int INIT_INSTANCE_COUNT      = 64;
 
   // ........................................................
 
@@ -216,6 +240,9 @@ public class PGraphicsOpenGL extends PGraphics {
   protected PShader lineShader;
   protected PShader pointShader;
 
+  // Variants of the poly shaders that read the instance attributes
+  protected WeakHashMap<PShader, PShader> instanceShaders;
+
   // ........................................................
 
   // Tessellator, geometry
@@ -668,6 +695,8 @@ public class PGraphicsOpenGL extends PGraphics {
       asyncPixelReader = null;
     }
 
+    disposeBufferRings();
+
     if (!primaryGraphics) {
       deleteSurfaceTextures();
       FrameBuffer ofb = offscreenFramebuffer;
@@ -1203,6 +1232,8 @@ public class PGraphicsOpenGL extends PGraphics {
       bufPolyIndex = new VertexBuffer(this, PGL.ELEMENT_ARRAY_BUFFER, 1, PGL.SIZEOF_INDEX, true);
       pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, 0);
 
+      // The fences of the old context are gone with it
+      polyRing = null;
       polyBuffersCreated = true;
     }
 
@@ -1222,6 +1253,11 @@ public class PGraphicsOpenGL extends PGraphics {
                                    boolean needNormals, boolean needTexCoords) {
     createPolyBuffers();
 
+    if (hints[ENABLE_BUFFER_STREAMING]) {
+      streamPolyBuffers(lit, tex, needNormals, needTexCoords);
+      return;
+    }
+
     int size = tessGeo.polyVertexCount;
     int sizef = size * PGL.SIZEOF_FLOAT;
     int sizei = size * PGL.SIZEOF_INT;
@@ -1288,6 +1324,45 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  protected void streamPolyBuffers(boolean lit, boolean tex,
+                                   boolean needNormals, boolean needTexCoords) {
+    if (polyRing == null) polyRing = new BufferRing(pgl);
+    polyRing.reserve(tessGeo.polyVertexCount, tessGeo.polyIndexCount);
+
+    polyRing.write(bufPolyVertex, tessGeo.polyVertices, 4);
+    polyRing.write(bufPolyColor, tessGeo.polyColors, 1);
+
+    if (lit) {
+      polyRing.write(bufPolyAmbient, tessGeo.polyAmbient, 1);
+      polyRing.write(bufPolySpecular, tessGeo.polySpecular, 1);
+      polyRing.write(bufPolyEmissive, tessGeo.polyEmissive, 1);
+      polyRing.write(bufPolyShininess, tessGeo.polyShininess, 1);
+    }
+
+    if (lit || needNormals) {
+      polyRing.write(bufPolyNormal, tessGeo.polyNormals, 3);
+    }
+
+    if (tex || needTexCoords) {
+      polyRing.write(bufPolyTexcoord, tessGeo.polyTexCoords, 2);
+    }
+
+    for (String name: polyAttribs.keySet()) {
+      VertexAttribute attrib = polyAttribs.get(name);
+      if (attrib.type == PGL.FLOAT) {
+        polyRing.write(attrib.buf, tessGeo.fpolyAttribs.get(name), attrib.tessSize);
+      } else if (attrib.type == PGL.INT) {
+        polyRing.write(attrib.buf, tessGeo.ipolyAttribs.get(name), attrib.tessSize);
+      } else if (attrib.type == PGL.BOOL) {
+        polyRing.write(attrib.buf, tessGeo.bpolyAttribs.get(name),
+                       attrib.tessSize, attrib.sizeInBytes(1));
+      }
+    }
+
+    polyRing.write(bufPolyIndex, tessGeo.polyIndices);
+  }
+
+
   protected void unbindPolyBuffers() {
     pgl.bindBuffer(PGL.ARRAY_BUFFER, 0);
     pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, 0);
@@ -1310,6 +1385,7 @@ public class PGraphicsOpenGL extends PGraphics {
       bufLineIndex = new VertexBuffer(this, PGL.ELEMENT_ARRAY_BUFFER, 1, PGL.SIZEOF_INDEX, true);
       pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, 0);
 
+      lineRing = null;
       lineBuffersCreated = true;
     }
   }
@@ -1318,6 +1394,16 @@ public class PGraphicsOpenGL extends PGraphics {
   protected void updateLineBuffers() {
     createLineBuffers();
 
+    if (hints[ENABLE_BUFFER_STREAMING]) {
+      if (lineRing == null) lineRing = new BufferRing(pgl);
+      lineRing.reserve(tessGeo.lineVertexCount, tessGeo.lineIndexCount);
+      lineRing.write(bufLineVertex, tessGeo.lineVertices, 4);
+      lineRing.write(bufLineColor, tessGeo.lineColors, 1);
+      lineRing.write(bufLineAttrib, tessGeo.lineDirections, 4);
+      lineRing.write(bufLineIndex, tessGeo.lineIndices);
+      return;
+    }
+
     int size = tessGeo.lineVertexCount;
     int sizef = size * PGL.SIZEOF_FLOAT;
     int sizei = size * PGL.SIZEOF_INT;
@@ -1369,6 +1455,7 @@ public class PGraphicsOpenGL extends PGraphics {
       bufPointIndex = new VertexBuffer(this, PGL.ELEMENT_ARRAY_BUFFER, 1, PGL.SIZEOF_INDEX, true);
       pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, 0);
 
+      pointRing = null;
       pointBuffersCreated = true;
     }
   }
@@ -1377,6 +1464,16 @@ public class PGraphicsOpenGL extends PGraphics {
   protected void updatePointBuffers() {
     createPointBuffers();
 
+    if (hints[ENABLE_BUFFER_STREAMING]) {
+      if (pointRing == null) pointRing = new BufferRing(pgl);
+      pointRing.reserve(tessGeo.pointVertexCount, tessGeo.pointIndexCount);
+      pointRing.write(bufPointVertex, tessGeo.pointVertices, 4);
+      pointRing.write(bufPointColor, tessGeo.pointColors, 1);
+      pointRing.write(bufPointAttrib, tessGeo.pointOffsets, 2);
+      pointRing.write(bufPointIndex, tessGeo.pointIndices);
+      return;
+    }
+
     int size = tessGeo.pointVertexCount;
     int sizef = size * PGL.SIZEOF_FLOAT;
     int sizei = size * PGL.SIZEOF_INT;
@@ -1901,10 +1998,27 @@ public class PGraphicsOpenGL extends PGraphics {
       restartPGL();
     } else if (which == DISABLE_BUFFER_READING) {
       restartPGL();
+    } else if (which == ENABLE_BUFFER_STREAMING) {
+      flush();
+      if (!pgl.hasMapBufferRange()) {
+        PGraphics.showWarning("Buffer streaming needs OpenGL 3.0 or newer");
+        hints[ENABLE_BUFFER_STREAMING] = false;
+      }
+    } else if (which == DISABLE_BUFFER_STREAMING) {
+      flush();
+      disposeBufferRings();
     }
   }
 
 
+  protected void disposeBufferRings() {
+    if (polyRing != null) polyRing.dispose();
+    if (lineRing != null) lineRing.dispose();
+    if (pointRing != null) pointRing.dispose();
+    polyRing = lineRing = pointRing = null;
+  }
+
+
   protected boolean getHint(int which) {
     if (which > 0) {
       return hints[which];
@@ -2359,8 +2473,14 @@ public class PGraphicsOpenGL extends PGraphics {
 
 
   protected void flushPixels() {
-    drawPixels(mx1, my1, mx2 - mx1, my2 - my1);
-    modified = false;
+    // Only the rectangles that were updated, not everything between them
+    int count = getModifiedCount();
+    int[] rects = getModifiedRects();
+    for (int i = 0; i < count; i++) {
+      int x = rects[4*i], y = rects[4*i + 1];
+      drawPixels(x, y, rects[4*i + 2] - x, rects[4*i + 3] - y);
+    }
+    setModified(false);
   }
 
 
@@ -2370,6 +2490,8 @@ public class PGraphicsOpenGL extends PGraphics {
     boolean needTexCoords = customShader && polyShader.accessTexCoords();
 
     updatePolyBuffers(lights, texCache.hasTextures, needNormals, needTexCoords);
+    int vbase = polyRing == null ? 0 : polyRing.vertexBase;
+    int ibase = polyRing == null ? 0 : polyRing.indexBase;
 
     for (int i = 0; i < texCache.size; i++) {
       Texture tex = texCache.getTexture(i);
@@ -2387,7 +2509,7 @@ public class PGraphicsOpenGL extends PGraphics {
         int ioffset = n == first ? texCache.firstIndex[i] : cache.indexOffset[n];
         int icount = n == last ? texCache.lastIndex[i] - ioffset + 1 :
                                  cache.indexOffset[n] + cache.indexCount[n] - ioffset;
-        int voffset = cache.vertexOffset[n];
+        int voffset = vbase + cache.vertexOffset[n];
 
         shader.setVertexAttribute(bufPolyVertex.glId, 4, PGL.FLOAT, 0,
                                   4 * voffset * PGL.SIZEOF_FLOAT);
@@ -2426,7 +2548,7 @@ public class PGraphicsOpenGL extends PGraphics {
                                  attrib.isColor(), 0, attrib.sizeInBytes(voffset));
         }
 
-        shader.draw(bufPolyIndex.glId, icount, ioffset);
+        shader.draw(bufPolyIndex.glId, icount, ibase + ioffset);
       }
 
       for (VertexAttribute attrib: polyAttribs.values()) {
@@ -2435,6 +2557,7 @@ public class PGraphicsOpenGL extends PGraphics {
       shader.unbind();
     }
     unbindPolyBuffers();
+    if (polyRing != null) polyRing.fence();
   }
 
   protected void flushSortedPolys() {
@@ -2451,6 +2574,8 @@ public class PGraphicsOpenGL extends PGraphics {
     int[] vertexOffset = tessGeo.polyIndexCache.vertexOffset;
 
     updatePolyBuffers(lights, texCache.hasTextures, needNormals, needTexCoords);
+    int vbase = polyRing == null ? 0 : polyRing.vertexBase;
+    int ibase = polyRing == null ? 0 : polyRing.indexBase;
 
     int ti = 0;
 
@@ -2470,9 +2595,9 @@ public class PGraphicsOpenGL extends PGraphics {
 
       Texture tex = texCache.getTexture(texId);
 
-      int voffset = vertexOffset[voffsetId];
+      int voffset = vbase + vertexOffset[voffsetId];
 
-      int ioffset = 3 * startTi;
+      int ioffset = ibase + 3 * startTi;
       int icount = 3 * (endTi - startTi);
 
       // If the renderer is 2D, then lights should always be false,
@@ -2525,6 +2650,7 @@ public class PGraphicsOpenGL extends PGraphics {
       shader.unbind();
     }
     unbindPolyBuffers();
+    if (polyRing != null) polyRing.fence();
   }
 
 
@@ -2738,15 +2864,17 @@ public class PGraphicsOpenGL extends PGraphics {
 
   protected void flushLines() {
     updateLineBuffers();
+    int vbase = lineRing == null ? 0 : lineRing.vertexBase;
+    int ibase = lineRing == null ? 0 : lineRing.indexBase;
 
     PShader shader = getLineShader();
     shader.bind();
 
     IndexCache cache = tessGeo.lineIndexCache;
     for (int n = 0; n < cache.size; n++) {
-      int ioffset = cache.indexOffset[n];
+      int ioffset = ibase + cache.indexOffset[n];
       int icount = cache.indexCount[n];
-      int voffset = cache.vertexOffset[n];
+      int voffset = vbase + cache.vertexOffset[n];
 
       shader.setVertexAttribute(bufLineVertex.glId, 4, PGL.FLOAT, 0,
                                 4 * voffset * PGL.SIZEOF_FLOAT);
@@ -2760,6 +2888,7 @@ public class PGraphicsOpenGL extends PGraphics {
 
     shader.unbind();
     unbindLineBuffers();
+    if (lineRing != null) lineRing.fence();
   }
 
 
@@ -2839,15 +2968,17 @@ public class PGraphicsOpenGL extends PGraphics {
 
   protected void flushPoints() {
     updatePointBuffers();
+    int vbase = pointRing == null ? 0 : pointRing.vertexBase;
+    int ibase = pointRing == null ? 0 : pointRing.indexBase;
 
     PShader shader = getPointShader();
     shader.bind();
 
     IndexCache cache = tessGeo.pointIndexCache;
     for (int n = 0; n < cache.size; n++) {
-      int ioffset = cache.indexOffset[n];
+      int ioffset = ibase + cache.indexOffset[n];
       int icount = cache.indexCount[n];
-      int voffset = cache.vertexOffset[n];
+      int voffset = vbase + cache.vertexOffset[n];
 
       shader.setVertexAttribute(bufPointVertex.glId, 4, PGL.FLOAT, 0,
                                 4 * voffset * PGL.SIZEOF_FLOAT);
@@ -2861,6 +2992,7 @@ public class PGraphicsOpenGL extends PGraphics {
 
     shader.unbind();
     unbindPointBuffers();
+    if (pointRing != null) pointRing.fence();
   }
 
 
@@ -3405,6 +3537,151 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  /**
+   * Draws many copies of a shape at once, for example the particles of a
+   * particle system, each one with a transformation of its own applied
+   * after the current one. In 2D, every copy takes the six values of a
+   * PMatrix2D from the transforms array (m00, m01, m02, m10, m11, m12);
+   * in 3D, the top three rows of a PMatrix3D, twelve values in total. The
+   * colors, one per copy and optional, multiply the colors of the shape
+   * the way tint() does with images.
+   * <p>
+   * With OpenGL 3.3 or ES 3.0, the values of all the copies are uploaded
+   * together and the fills are drawn with a single instanced draw call.
+   * In 3D, strokes and points are still drawn copy by copy, and without
+   * the colors. Normals are transformed by the same rows as the vertices,
+   * so lit copies should be scaled uniformly.
+   * <p>
+   * With shapeMode(CENTER), each copy is centered on the origin of its
+   * own transformation, the same way shape() centers a single one. The
+   * other modes draw the copies from their corners.
+   *
+   * @param shape the shape to draw
+   * @param transforms transformations of the copies, one after the other
+   * @param colors colors of the copies, or null to leave them unchanged
+   * @param count number of copies
+   */
+  public void shape(PShape shape, float[] transforms, int[] colors,
+                    int count) {
+    int stride = is3D() ? 12 : 6;
+    if (transforms.length < stride * count) {
+      throw new IllegalArgumentException("shape() needs " + stride +
+                                         " values in transforms per copy");
+    }
+    if (colors != null && colors.length < count) {
+      throw new IllegalArgumentException("shape() needs a color per copy");
+    }
+    if (count <= 0 || !shape.isVisible()) return;
+
+    flush();
+    if (shapeMode == CENTER) {
+      loadInstances(transforms, colors, count, stride,
+                    -shape.getWidth()/2, -shape.getHeight()/2);
+    } else {
+      loadInstances(transforms, colors, count, stride, 0, 0);
+    }
+    if (shape instanceof PShapeOpenGL &&
+        (polyShader == null || instanceShader(polyShader) != null)) {
+      if (pgl.hasInstancing()) uploadInstances(count);
+      instanceCount = count;
+      shape.draw(this);
+      instanceCount = 0;
+      instancesLoaded = false;
+    } else {
+      // A shader that cannot be made to read the instance attributes, or
+      // a shape that is not on the GPU: one copy at a time then.
+      for (int i = 0; i < count; i++) {
+        pushMatrix();
+        applyInstanceMatrix(i);
+        shape.draw(this);
+        popMatrix();
+      }
+    }
+  }
+
+
+  /**
+   * Copies the transformations into instanceRows as three rows each, with
+   * a translation by (dx, dy) applied before each one, so that the copies
+   * can be offset the way shapeMode(CENTER) offsets a single shape.
+   */
+  protected void loadInstances(float[] transforms, int[] colors, int count,
+                               int stride, float dx, float dy) {
+    if (instanceColors.length < count) {
+      int newSize = expandArraySize(instanceColors.length, count);
+      instanceRows = new float[12 * newSize];
+      instanceColors = new int[newSize];
+    }
+    for (int i = 0; i < count; i++) {
+      int n = 12 * i;
+      int m = stride * i;
+      if (stride == 12) {
+        System.arraycopy(transforms, m, instanceRows, n, 12);
+      } else {
+        instanceRows[n     ] = transforms[m    ];
+        instanceRows[n +  1] = transforms[m + 1];
+        instanceRows[n +  2] = 0;
+        instanceRows[n +  3] = transforms[m + 2];
+        instanceRows[n +  4] = transforms[m + 3];
+        instanceRows[n +  5] = transforms[m + 4];
+        instanceRows[n +  6] = 0;
+        instanceRows[n +  7] = transforms[m + 5];
+        instanceRows[n +  8] = 0;
+        instanceRows[n +  9] = 0;
+        instanceRows[n + 10] = 1;
+        instanceRows[n + 11] = 0;
+      }
+      if (dx != 0 || dy != 0) {
+        for (int row = n; row < n + 12; row += 4) {
+          instanceRows[row + 3] += instanceRows[row] * dx + instanceRows[row + 1] * dy;
+        }
+      }
+      instanceColors[i] = colors == null ? 0xFFFFFFFF : colors[i];
+    }
+  }
+
+
+  protected void uploadInstances(int count) {
+    if (instanceColorsBuffer == null ||
+        instanceColorsBuffer.capacity() < instanceColors.length) {
+      instanceRowsBuffer = PGL.allocateDirectFloatBuffer(instanceRows.length);
+      instanceColorsBuffer = PGL.allocateDirectIntBuffer(instanceColors.length);
+    }
+    if (bufInstanceRows == null || bufInstanceRows.contextIsOutdated()) {
+      bufInstanceRows = new VertexBuffer(this, PGL.ARRAY_BUFFER, 12, PGL.SIZEOF_FLOAT);
+      bufInstanceColor = new VertexBuffer(this, PGL.ARRAY_BUFFER, 1, PGL.SIZEOF_INT);
+    }
+
+    for (int i = 0; i < count; i++) {
+      instanceColorsBuffer.put(i, PGL.javaToNativeARGB(instanceColors[i]));
+    }
+    instanceRowsBuffer.rewind();
+    instanceRowsBuffer.put(instanceRows, 0, 12 * count);
+    instanceRowsBuffer.rewind();
+    instanceColorsBuffer.rewind();
+
+    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufInstanceRows.glId);
+    pgl.bufferData(PGL.ARRAY_BUFFER, 12 * count * PGL.SIZEOF_FLOAT,
+                   instanceRowsBuffer, PGL.STREAM_DRAW);
+    pgl.bindBuffer(PGL.ARRAY_BUFFER, bufInstanceColor.glId);
+    pgl.bufferData(PGL.ARRAY_BUFFER, count * PGL.SIZEOF_INT,
+                   instanceColorsBuffer, PGL.STREAM_DRAW);
+    pgl.bindBuffer(PGL.ARRAY_BUFFER, 0);
+    instancesLoaded = true;
+  }
+
+
+  /** Applies the transformation of a copy to the modelview. */
+  protected void applyInstanceMatrix(int i) {
+    float[] r = instanceRows;
+    int n = 12 * i;
+    applyMatrixImpl(r[n    ], r[n + 1], r[n +  2], r[n +  3],
+                    r[n + 4], r[n + 5], r[n +  6], r[n +  7],
+                    r[n + 8], r[n + 9], r[n + 10], r[n + 11],
+                           0,        0,         0,         1);
+  }
+
+
   //////////////////////////////////////////////////////////////
 
   // SHAPE I/O
@@ -6532,11 +6809,14 @@ public class PGraphicsOpenGL extends PGraphics {
   protected void updateTexture(PImage img, Texture tex) {
     if (tex != null) {
       if (img.isModified()) {
-        int x = img.getModifiedX1();
-        int y = img.getModifiedY1();
-        int w = img.getModifiedX2() - x;
-        int h = img.getModifiedY2() - y;
-        tex.set(img.pixels, x, y, w, h, img.format);
+        int count = img.getModifiedCount();
+        int[] rects = img.getModifiedRects();
+        for (int i = 0; i < count; i++) {
+          int x = rects[4*i], y = rects[4*i + 1];
+          int w = rects[4*i + 2] - x;
+          int h = rects[4*i + 3] - y;
+          tex.setRegion(img.pixels, x, y, w, h, img.format);
+        }
       }
     }
     img.setModified(false);
@@ -7109,10 +7389,104 @@ public class PGraphicsOpenGL extends PGraphics {
       shader.loadAttributes();
       shader.loadUniforms();
     }
+    if (0 < instanceCount && !shader.accessInstances()) {
+      shader = instanceShader(shader);
+      shader.setRenderer(this);
+      shader.loadAttributes();
+      shader.loadUniforms();
+    }
     return shader;
   }
 
 
+  /**
+   * Returns the variant of the poly shader that draws the copies of an
+   * instanced shape, the shader itself if it declares the instance
+   * attributes already, or null if its source cannot be rewritten.
+   */
+  protected PShader instanceShader(PShader shader) {
+    String[] vertSource = shader.vertexShaderSource;
+    if (vertSource == null) return null;
+    for (String line : vertSource) {
+      if (line.contains("instanceRow0")) return shader;
+    }
+
+    PGraphicsOpenGL ppg = getPrimaryPG();
+    if (ppg.instanceShaders == null) {
+      ppg.instanceShaders = new WeakHashMap<>();
+    }
+    if (!ppg.instanceShaders.containsKey(shader)) {
+      String[] instSource = instanceVertexSource(vertSource);
+      ppg.instanceShaders.put(shader, instSource == null ? null :
+        new PShader(parent, instSource, shader.fragmentShaderSource));
+    }
+    return ppg.instanceShaders.get(shader);
+  }
+
+
+  /**
+   * Rewrites the source of a vertex shader to transform its position,
+   * normal and color by the attributes of each copy: the top three rows of
+   * its transformation, and a color that multiplies the vertex colors.
+   * Returns null if there is no position attribute or main() to rewrite.
+   */
+  static protected String[] instanceVertexSource(String[] source) {
+    Pattern decl = Pattern.compile("^\\s*(attribute|in)\\s+(vec[34])\\s+" +
+                                   "(vertex|position|normal|color)\\s*;");
+    Pattern main = Pattern.compile("^\\s*void\\s+main\\s*\\(\\s*\\)\\s*\\{");
+    String position = null;
+    boolean normal = false, color = false;
+    for (String line : source) {
+      Matcher m = decl.matcher(line);
+      if (!m.find()) continue;
+      String name = m.group(3);
+      boolean vec4 = m.group(2).equals("vec4");
+      if (name.equals("normal")) normal = !vec4;
+      else if (name.equals("color")) color = vec4;
+      else if (position == null && vec4) position = name;
+    }
+    if (position == null) return null;
+
+    ArrayList<String> lines = new ArrayList<>();
+    boolean declared = false, inMain = false;
+    for (String line : source) {
+      if (inMain) {
+        line = line.replaceAll("\\b" + position + "\\b", "instancedPosition");
+        if (normal) line = line.replaceAll("\\bnormal\\b", "instancedNormal");
+        if (color) line = line.replaceAll("\\bcolor\\b", "instancedColor");
+        lines.add(line);
+        continue;
+      }
+      lines.add(line);
+
+      Matcher m = decl.matcher(line);
+      if (!declared && m.find() && m.group(3).equals(position)) {
+        String qualifier = m.group(1);
+        lines.add(qualifier + " vec4 instanceRow0;");
+        lines.add(qualifier + " vec4 instanceRow1;");
+        lines.add(qualifier + " vec4 instanceRow2;");
+        lines.add(qualifier + " vec4 instanceColor;");
+        declared = true;
+      } else if (declared && main.matcher(line).find()) {
+        String p = position;
+        lines.add("  vec4 instancedPosition = vec4(dot(instanceRow0, " + p +
+                  "), dot(instanceRow1, " + p + "), dot(instanceRow2, " + p +
+                  "), " + p + ".w);");
+        if (normal) {
+          lines.add("  vec3 instancedNormal = vec3(dot(instanceRow0.xyz, " +
+                    "normal), dot(instanceRow1.xyz, normal), " +
+                    "dot(instanceRow2.xyz, normal));");
+        }
+        if (color) {
+          lines.add("  vec4 instancedColor = color * instanceColor;");
+        }
+        inMain = true;
+      }
+    }
+    return inMain ? lines.toArray(new String[0]) : null;
+  }
+
+
   protected PShader getLineShader() {
     PShader shader;
     PGraphicsOpenGL ppg = getPrimaryPG();
@@ -7388,6 +7762,33 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  // A renderer without a GL context, with the size, matrices and detail
+  // settings of pg, that retained shapes are tessellated with off the GL
+  // thread. Tessellation changes the detail settings and curve state of the
+  // renderer, so every thread needs its own.
+  static protected PGraphicsOpenGL newTessRenderer(PGraphicsOpenGL pg) {
+    PGraphicsOpenGL renderer = new PGraphicsOpenGL() {
+      @Override
+      protected PGL createPGL(PGraphicsOpenGL pg) {
+        return null;
+      }
+    };
+    renderer.width = pg.width;
+    renderer.height = pg.height;
+    renderer.projection.set(pg.projection);
+    renderer.camera.set(pg.camera);
+    renderer.cameraInv.set(pg.cameraInv);
+    renderer.modelview.set(pg.modelview);
+    renderer.modelviewInv.set(pg.modelviewInv);
+    renderer.projmodelview.set(pg.projmodelview);
+    renderer.sphereDetail(pg.sphereDetailU, pg.sphereDetailV);
+    renderer.bezierDetail(pg.bezierDetail);
+    renderer.curveDetail(pg.curveDetail);
+    renderer.curveTightness(pg.curveTightness);
+    return renderer;
+  }
+
+
   // Holds an array of textures and the range of vertex
   // indices each texture applies to.
   static protected class TexCache {
@@ -7574,6 +7975,19 @@ public class PGraphicsOpenGL extends PGraphics {
       }
     }
 
+    // Adds the entries of other at the end, with their offsets moved by
+    // ioffset indices and voffset vertices.
+    void append(IndexCache other, int ioffset, int voffset) {
+      for (int n = 0; n < other.size; n++) {
+        arrayCheck();
+        indexCount[size] = other.indexCount[n];
+        indexOffset[size] = other.indexOffset[n] + ioffset;
+        vertexCount[size] = other.vertexCount[n];
+        vertexOffset[size] = other.vertexOffset[n] + voffset;
+        size++;
+      }
+    }
+
     void init(int n) {
       if (0 < n) {
         indexOffset[n] = indexOffset[n - 1] + indexCount[n - 1];
@@ -9831,6 +10245,63 @@ public class PGraphicsOpenGL extends PGraphics {
       pointIndicesBuffer = PGL.allocateShortBuffer(pointIndices);
     }
 
+    // -----------------------------------------------------------------
+    //
+    // Append
+
+    // Adds the geometry in other, tessellated separately with the same
+    // attributes, after the geometry already here. The indices stay as they
+    // are, since they are relative to the offsets in the index caches.
+    void append(TessGeometry other) {
+      int pvert = polyVertexCount;
+      int pind = polyIndexCount;
+      int n = other.polyVertexCount;
+      polyVertexCheck(n);
+      PApplet.arrayCopy(other.polyVertices, 0, polyVertices, 4 * pvert, 4 * n);
+      PApplet.arrayCopy(other.polyColors, 0, polyColors, pvert, n);
+      PApplet.arrayCopy(other.polyNormals, 0, polyNormals, 3 * pvert, 3 * n);
+      PApplet.arrayCopy(other.polyTexCoords, 0, polyTexCoords, 2 * pvert, 2 * n);
+      PApplet.arrayCopy(other.polyAmbient, 0, polyAmbient, pvert, n);
+      PApplet.arrayCopy(other.polySpecular, 0, polySpecular, pvert, n);
+      PApplet.arrayCopy(other.polyEmissive, 0, polyEmissive, pvert, n);
+      PApplet.arrayCopy(other.polyShininess, 0, polyShininess, pvert, n);
+      for (VertexAttribute attrib: polyAttribs.values()) {
+        int size = attrib.tessSize;
+        Object array = attrib.type == PGL.FLOAT ? fpolyAttribs.get(attrib.name) :
+                       attrib.type == PGL.INT ? ipolyAttribs.get(attrib.name) :
+                                                bpolyAttribs.get(attrib.name);
+        Object from = attrib.type == PGL.FLOAT ? other.fpolyAttribs.get(attrib.name) :
+                      attrib.type == PGL.INT ? other.ipolyAttribs.get(attrib.name) :
+                                               other.bpolyAttribs.get(attrib.name);
+        PApplet.arrayCopy(from, 0, array, size * pvert, size * n);
+      }
+      polyIndexCheck(other.polyIndexCount);
+      PApplet.arrayCopy(other.polyIndices, 0, polyIndices, pind, other.polyIndexCount);
+      polyIndexCache.append(other.polyIndexCache, pind, pvert);
+
+      int lvert = lineVertexCount;
+      int lind = lineIndexCount;
+      n = other.lineVertexCount;
+      lineVertexCheck(n);
+      PApplet.arrayCopy(other.lineVertices, 0, lineVertices, 4 * lvert, 4 * n);
+      PApplet.arrayCopy(other.lineColors, 0, lineColors, lvert, n);
+      PApplet.arrayCopy(other.lineDirections, 0, lineDirections, 4 * lvert, 4 * n);
+      lineIndexCheck(other.lineIndexCount);
+      PApplet.arrayCopy(other.lineIndices, 0, lineIndices, lind, other.lineIndexCount);
+      lineIndexCache.append(other.lineIndexCache, lind, lvert);
+
+      int ptvert = pointVertexCount;
+      int ptind = pointIndexCount;
+      n = other.pointVertexCount;
+      pointVertexCheck(n);
+      PApplet.arrayCopy(other.pointVertices, 0, pointVertices, 4 * ptvert, 4 * n);
+      PApplet.arrayCopy(other.pointColors, 0, pointColors, ptvert, n);
+      PApplet.arrayCopy(other.pointOffsets, 0, pointOffsets, 2 * ptvert, 2 * n);
+      pointIndexCheck(other.pointIndexCount);
+      PApplet.arrayCopy(other.pointIndices, 0, pointIndices, ptind, other.pointIndexCount);
+      pointIndexCache.append(other.pointIndexCache, ptind, ptvert);
+    }
+
     // -----------------------------------------------------------------
     //
     // Trim arrays
@@ -10929,7 +11400,7 @@ public class PGraphicsOpenGL extends PGraphics {
     int firstTexIndex;
     int firstTexCache;
 
-    PGL.Tessellator gluTess;
+    PolygonTessellator polyTess;
     TessellatorCallback callback;
 
     boolean fill;
@@ -10980,10 +11451,10 @@ public class PGraphicsOpenGL extends PGraphics {
       is3D = true;
     }
 
-    void initGluTess() {
-      if (gluTess == null) {
+    void initPolyTess() {
+      if (polyTess == null) {
         callback = new TessellatorCallback(tess.polyAttribs);
-        gluTess = pg.pgl.createTessellator(callback);
+        polyTess = new PolygonTessellator(callback);
       }
     }
 
@@ -12033,8 +12504,8 @@ public class PGraphicsOpenGL extends PGraphics {
       if (!accurate2DStrokes) {
         return true;
       } else if (PGL.MAX_CAPS_JOINS_LENGTH <= nInVert) {
-        // The line path is too long, so it could make the GLU tess
-        // to run out of memory, so full caps and joins are disabled.
+        // The line path is too long, so it could make the tessellator
+        // run out of memory, so full caps and joins are disabled.
         return true;
       } else {
         return noCapsJoins();
@@ -12554,20 +13025,20 @@ public class PGraphicsOpenGL extends PGraphics {
       if (3 <= nInVert) {
         firstPolyIndexCache = -1;
 
-        initGluTess();
+        initPolyTess();
         boolean clamp = clampPolygon();
         callback.init(in.renderMode == RETAINED, false, calcNormals, clamp);
 
         if (fill) {
-          gluTess.beginPolygon();
+          polyTess.beginPolygon();
           if (solid) {
             // Using NONZERO winding rule for solid polygons.
-            gluTess.setWindingRule(PGL.TESS_WINDING_NONZERO);
+            polyTess.setWindingRule(PolygonTessellator.WINDING_NONZERO);
           } else {
             // Using ODD winding rule to generate polygon with holes.
-            gluTess.setWindingRule(PGL.TESS_WINDING_ODD);
+            polyTess.setWindingRule(PolygonTessellator.WINDING_ODD);
           }
-          gluTess.beginContour();
+          polyTess.beginContour();
         }
 
         if (stroke) {
@@ -12594,8 +13065,8 @@ public class PGraphicsOpenGL extends PGraphics {
               beginStrokePath();
             }
             if (fill) {
-              gluTess.endContour();
-              gluTess.beginContour();
+              polyTess.endContour();
+              polyTess.beginContour();
             }
           }
 
@@ -12618,8 +13089,8 @@ public class PGraphicsOpenGL extends PGraphics {
           endPolygonStroke();
         }
         if (fill) {
-          gluTess.endContour();
-          gluTess.endPolygon();
+          polyTess.endContour();
+          polyTess.endPolygon();
         }
       }
       endTex();
@@ -12679,7 +13150,7 @@ public class PGraphicsOpenGL extends PGraphics {
           vertex[0] = x1;
           vertex[1] = y1;
           vertex[2] = z1;
-          gluTess.addVertex(vertex);
+          polyTess.addVertex(vertex);
         }
         if (stroke) addStrokeVertex(x1, y1, z1, strokeColor, strokeWeight);
       }
@@ -12744,7 +13215,7 @@ public class PGraphicsOpenGL extends PGraphics {
           vertex[0] = x1;
           vertex[1] = y1;
           vertex[2] = z1;
-          gluTess.addVertex(vertex);
+          polyTess.addVertex(vertex);
         }
         if (stroke) addStrokeVertex(x1, y1, z1, strokeColor, strokeWeight);
       }
@@ -12782,7 +13253,7 @@ public class PGraphicsOpenGL extends PGraphics {
         vertex0[0] = x;
         vertex0[1] = y;
         vertex0[2] = z;
-        gluTess.addVertex(vertex0);
+        polyTess.addVertex(vertex0);
       }
       if (stroke) {
         addStrokeVertex(x, y, z, in.strokeColors[i], strokeWeight);
@@ -12829,7 +13300,7 @@ public class PGraphicsOpenGL extends PGraphics {
           vertex1[0] = x;
           vertex1[1] = y;
           vertex1[2] = z;
-          gluTess.addVertex(vertex1);
+          polyTess.addVertex(vertex1);
         }
         if (stroke) addStrokeVertex(x, y, z, strokeColor, strokeWeight);
       }
@@ -12847,7 +13318,7 @@ public class PGraphicsOpenGL extends PGraphics {
         vertex[0] = x;
         vertex[1] = y;
         vertex[2] = z;
-        gluTess.addVertex(vertex);
+        polyTess.addVertex(vertex);
       }
       if (stroke) {
         addStrokeVertex(x, y, z, in.strokeColors[i], in.strokeWeights[i]);
@@ -12985,7 +13456,7 @@ public class PGraphicsOpenGL extends PGraphics {
     // Based on the opengl stroke hack described here:
     // http://wiki.processing.org/w/Stroke_attributes_in_OpenGL
     public void tessellateLinePath(LinePath path) {
-      initGluTess();
+      initPolyTess();
       boolean clamp = clampLinePath();
       callback.init(in.renderMode == RETAINED, true, false, clamp);
 
@@ -13000,7 +13471,7 @@ public class PGraphicsOpenGL extends PGraphics {
       LinePath strokedPath = LinePath.createStrokedPath(path, strokeWeight,
                                                         cap, join);
 
-      gluTess.beginPolygon();
+      polyTess.beginPolygon();
 
       double[] vertex;
       float[] coords = new float[6];
@@ -13009,10 +13480,10 @@ public class PGraphicsOpenGL extends PGraphics {
       int rule = iter.getWindingRule();
       switch(rule) {
       case LinePath.WIND_EVEN_ODD:
-        gluTess.setWindingRule(PGL.TESS_WINDING_ODD);
+        polyTess.setWindingRule(PolygonTessellator.WINDING_ODD);
         break;
       case LinePath.WIND_NON_ZERO:
-        gluTess.setWindingRule(PGL.TESS_WINDING_NONZERO);
+        polyTess.setWindingRule(PolygonTessellator.WINDING_NONZERO);
         break;
       }
 
@@ -13020,7 +13491,7 @@ public class PGraphicsOpenGL extends PGraphics {
         switch (iter.currentSegment(coords)) {
 
         case LinePath.SEG_MOVETO:
-          gluTess.beginContour();
+          polyTess.beginContour();
 
           // $FALL-THROUGH$
         case LinePath.SEG_LINETO:
@@ -13032,16 +13503,16 @@ public class PGraphicsOpenGL extends PGraphics {
                                   0, 0,
                                   0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
 
-          gluTess.addVertex(vertex);
+          polyTess.addVertex(vertex);
 
           break;
         case LinePath.SEG_CLOSE:
-          gluTess.endContour();
+          polyTess.endContour();
           break;
         }
         iter.next();
       }
-      gluTess.endPolygon();
+      polyTess.endPolygon();
     }
 
     boolean clampLinePath() {
@@ -13052,20 +13523,11 @@ public class PGraphicsOpenGL extends PGraphics {
 
     /////////////////////////////////////////
 
-    // Interesting notes about using the GLU tessellator to render thick
-    // polylines:
-    // http://stackoverflow.com/questions/687173/how-do-i-render-thick-2d-lines-as-polygons
-    //
-    // "...Since I disliked the tesselator API I lifted the tesselation code
-    //  from the free SGI OpenGL reference implementation, rewrote the entire
-    //  front-end and added memory pools to get the number of allocations down.
-    //  It took two days to do this, but it was well worth it (like factor five
-    //  performance improvement)..."
-    //
-    // This C implementation of GLU could be useful:
-    // http://code.google.com/p/glues/
-    // to eventually come up with an optimized GLU tessellator in native code.
-    protected class TessellatorCallback implements PGL.TessellatorCallback {
+    // Receives the triangles from PolygonTessellator, all at once, and
+    // copies them into the tessellated geometry. It still takes the GLU
+    // style callbacks as well, for a PGL.Tessellator.
+    protected class TessellatorCallback
+      implements PGL.TessellatorCallback, PolygonTessellator.Callback {
       AttributeMap attribs;
       boolean calcNormals;
       boolean strokeTess;
@@ -13076,6 +13538,7 @@ public class PGraphicsOpenGL extends PGraphics {
       int vertCount;
       int vertOffset;
       int primitive;
+      int[] tessIndex = new int[0];
 
       public TessellatorCallback(AttributeMap attribs) {
         this.attribs = attribs;
@@ -13174,6 +13637,64 @@ public class PGraphicsOpenGL extends PGraphics {
         }
       }
 
+      /**
+       * Adds each vertex once, however many triangles share it, and the
+       * indices straight into the index array, starting a new index block
+       * whenever a triangle might not fit in the current one.
+       */
+      public void triangles(double[][] vertices, int[] indices, int count) {
+        cacheIndex = cache.getLast();
+        if (firstPolyIndexCache == -1) {
+          firstPolyIndexCache = cacheIndex;
+        }
+        if (strokeTess && firstLineIndexCache == -1) {
+          firstLineIndexCache = cacheIndex;
+        }
+        vertFirst = cache.vertexCount[cacheIndex];
+        vertOffset = cache.vertexOffset[cacheIndex];
+        vertCount = 0;
+
+        if (tessIndex.length < vertices.length) {
+          tessIndex = new int[vertices.length];
+        }
+        Arrays.fill(tessIndex, -1);
+        int indCount = 0;
+        for (int i = 0; i < count; i += 3) {
+          if (PGL.MAX_VERTEX_INDEX1 < vertFirst + vertCount + 3) {
+            cache.incCounts(cacheIndex, indCount, vertCount);
+            cacheIndex = cache.addNew();
+            vertFirst = cache.vertexCount[cacheIndex];
+            vertOffset = cache.vertexOffset[cacheIndex];
+            vertCount = 0;
+            indCount = 0;
+            Arrays.fill(tessIndex, -1);
+          }
+          for (int j = i; j < i + 3; j++) {
+            int v = indices[j];
+            if (tessIndex[v] == -1) {
+              if (vertices[v].length < 25) {
+                throw new RuntimeException("TessCallback vertex() data is " +
+                                           "too small");
+              }
+              tess.addPolyVertex(vertices[v], clampXY);
+              tessIndex[v] = vertCount++;
+            }
+            addIndex(tessIndex[v]);
+          }
+          indCount += 3;
+          if (calcNormals) {
+            calcTriNormal(tessIndex[indices[i]], tessIndex[indices[i + 1]],
+                          tessIndex[indices[i + 2]]);
+          }
+        }
+
+        cache.incCounts(cacheIndex, indCount, vertCount);
+        lastPolyIndexCache = cacheIndex;
+        if (strokeTess) {
+          lastLineIndexCache = cacheIndex;
+        }
+      }
+
       protected void addIndex(int tessIdx) {
         tess.polyIndexCheck();
         tess.polyIndices[tess.polyIndexCount - 1] =
@@ -13285,6 +13806,15 @@ public class PGraphicsOpenGL extends PGraphics {
   }
 
 
+  /**
+   * Sorts the triangles of a flush back to front for hint(ENABLE_DEPTH_SORT).
+   * The vertices are projected and the bounds of the triangles computed in
+   * parallel bands, the triangles are presorted by their nearest depth with
+   * a radix sort, and then a pass over the sorted list fixes the order of
+   * the triangles that overlap on the screen. That pass tests each
+   * triangle against at most MAX_TESTS others, so scenes where lots of
+   * triangles overlap in depth don't make it quadratic.
+   */
   static protected class DepthSorter {
 
     static final int X = 0;
@@ -13302,6 +13832,18 @@ public class PGraphicsOpenGL extends PGraphics {
     static final int Y2 = 7;
     static final int Z2 = 8;
 
+    /** Triangles an active one is tested against before it is drawn as is. */
+    static final int MAX_TESTS = 2048;
+
+    /** Triangles (or vertices) below which the passes stay on one thread. */
+    static final int MIN_PARALLEL = 1 << 13;
+
+    /** Runs per thread, so a slow thread doesn't hold up the rest. */
+    static final int RUNS_PER_THREAD = 4;
+
+    static final int RADIX_BITS = 11;
+    static final int RADIX_SIZE = 1 << RADIX_BITS;
+
     int[] triangleIndices = new int[0];
     int[] texMap = new int[0];
     int[] voffsetMap = new int[0];
@@ -13313,6 +13855,27 @@ public class PGraphicsOpenGL extends PGraphics {
     float[] maxYBuffer = new float[0];
     float[] maxZBuffer = new float[0];
 
+    // Keys of the radix sort, and the scratch space it needs
+    int[] sortKeys = new int[0];
+    int[] tempKeys = new int[0];
+    int[] tempIndices = new int[0];
+    int[] radixCounts = new int[RADIX_SIZE];
+
+    // Bounds of the triangles in sorted order, BOUNDS values each
+    static final int MIN_X = 0;
+    static final int MAX_X = 1;
+    static final int MIN_Y = 2;
+    static final int MAX_Y = 3;
+    static final int MIN_Z = 4;
+    static final int BOUNDS = 5;
+    float[] bounds = new float[0];
+    boolean[] settled = new boolean[0];
+    int[] conflicts = new int[0];
+    int[] ranks = new int[0];  // positions in the presorted order
+
+    // Equations of the planes of the triangles, 4 values each
+    float[] planes = new float[0];
+
     float[] screenVertices = new float[0];
 
     float[] triA = new float[9];
@@ -13321,6 +13884,9 @@ public class PGraphicsOpenGL extends PGraphics {
     BitSet marked = new BitSet();
     BitSet swapped = new BitSet();
 
+    // The triangles set in swapped, to clear them one by one
+    int[] swappedList = new int[16];
+
     PGraphicsOpenGL pg;
 
     DepthSorter (PGraphicsOpenGL pg) {
@@ -13339,6 +13905,14 @@ public class PGraphicsOpenGL extends PGraphics {
         maxXBuffer      = new float[newSize];
         maxYBuffer      = new float[newSize];
         maxZBuffer      = new float[newSize];
+        sortKeys        = new int[newSize];
+        tempKeys        = new int[newSize];
+        tempIndices     = new int[newSize];
+        bounds          = new float[BOUNDS * newSize];
+        settled         = new boolean[newSize];
+        conflicts       = new int[newSize];
+        ranks           = new int[newSize];
+        planes          = new float[4 * newSize];
       }
     }
 
@@ -13360,12 +13934,6 @@ public class PGraphicsOpenGL extends PGraphics {
       int[] texMap = this.texMap;
       int[] voffsetMap = this.voffsetMap;
 
-      { // Initialize triangle indices
-        for (int i = 0; i < triangleCount; i++) {
-          triangleIndices[i] = i;
-        }
-      }
-
       { // Map caches to triangles
         TexCache texCache = pg.texCache;
         IndexCache indexCache = tessGeo.polyIndexCache;
@@ -13388,120 +13956,146 @@ public class PGraphicsOpenGL extends PGraphics {
         }
       }
 
-      { // Map vertices to screen
-        int polyVertexCount = tessGeo.polyVertexCount;
-        checkVertexBuffer(polyVertexCount);
-        float[] screenVertices = this.screenVertices;
+      int polyVertexCount = tessGeo.polyVertexCount;
+      checkVertexBuffer(polyVertexCount);
+      float[] screenVertices = this.screenVertices;
+      float[] polyVertices = tessGeo.polyVertices;
+      PMatrix3D projection = pg.projection.get();
+
+      // Map vertices to screen
+      runs(polyVertexCount, (start, stop) ->
+        project(projection, polyVertices, screenVertices, start, stop));
 
-        float[] polyVertices = tessGeo.polyVertices;
+      int[] vertexOffset = tessGeo.polyIndexCache.vertexOffset;
+      short[] polyIndices = tessGeo.polyIndices;
 
-        PMatrix3D projection = pg.projection;
+      // Bounds of the triangles, and their keys for the presort
+      runs(triangleCount, (start, stop) ->
+        bound(vertexOffset, polyIndices, start, stop));
 
-        for (int i = 0; i < polyVertexCount; i++) {
-          float x = polyVertices[4*i+X];
-          float y = polyVertices[4*i+Y];
-          float z = polyVertices[4*i+Z];
-          float w = polyVertices[4*i+W];
+      radixSort(triangleCount);
 
-          float ox = projection.m00 * x + projection.m01 * y +
-              projection.m02 * z + projection.m03 * w;
-          float oy = projection.m10 * x + projection.m11 * y +
-              projection.m12 * z + projection.m13 * w;
-          float oz = projection.m20 * x + projection.m21 * y +
-              projection.m22 * z + projection.m23 * w;
-          float ow = projection.m30 * x + projection.m31 * y +
-              projection.m32 * z + projection.m33 * w;
-          if (nonZero(ow)) {
-            ox /= ow;
-            oy /= ow;
-            oz /= ow;
-          }
-          screenVertices[3*i+X] = ox;
-          screenVertices[3*i+Y] = oy;
-          screenVertices[3*i+Z] = -oz;
-        }
-      }
-      float[] screenVertices = this.screenVertices;
+      // Bounds in sorted order, so the tests below read them one after the
+      // other, and whether each triangle would be drawn right where it is
+      runs(triangleCount, this::gather);
+      runs(triangleCount, (start, stop) ->
+        settle(vertexOffset, polyIndices, triangleCount, start, stop));
 
-      int[] vertexOffset = tessGeo.polyIndexCache.vertexOffset;
-      short[] polyIndices = tessGeo.polyIndices;
+      float[] bounds = this.bounds;
+      boolean[] settled = this.settled;
+      int[] conflicts = this.conflicts;
+      int[] ranks = this.ranks;
+      float[] planes = this.planes;
 
       float[] triA = this.triA;
       float[] triB = this.triB;
 
-      for (int i = 0; i < triangleCount; i++) {
-        fetchTriCoords(triA, i, vertexOffset, voffsetMap, screenVertices, polyIndices);
-        minXBuffer[i] = PApplet.min(triA[X0], triA[X1], triA[X2]);
-        maxXBuffer[i] = PApplet.max(triA[X0], triA[X1], triA[X2]);
-        minYBuffer[i] = PApplet.min(triA[Y0], triA[Y1], triA[Y2]);
-        maxYBuffer[i] = PApplet.max(triA[Y0], triA[Y1], triA[Y2]);
-        minZBuffer[i] = PApplet.min(triA[Z0], triA[Z1], triA[Z2]);
-        maxZBuffer[i] = PApplet.max(triA[Z0], triA[Z1], triA[Z2]);
-      }
-
-      sortByMinZ(0, triangleCount - 1, triangleIndices, minZBuffer);
-
       int activeTid = 0;
 
       BitSet marked = this.marked;
       BitSet swapped = this.swapped;
 
       marked.clear();
+      swapped.clear();
 
       while (activeTid < triangleCount) {
+        // Swaps only move triangles to the front, where they get marked, so
+        // the unmarked ones always stay in the presorted order after all
+        // the marked ones. The triangles after an unmarked one are those
+        // after it in the presorted order, and a settled one would pass
+        // all the tests below.
+        int first = triangleIndices[activeTid];
+        if (settled[first] && !marked.get(first)) {
+          activeTid++;
+          continue;
+        }
+
         int testTid = activeTid + 1;
+        int tests = 0;
+        int swapCount = 0;
         boolean draw = false;
 
-        swapped.clear();
-
         int ati = triangleIndices[activeTid];
-        float minXA = minXBuffer[ati];
-        float maxXA = maxXBuffer[ati];
-        float minYA = minYBuffer[ati];
-        float maxYA = maxYBuffer[ati];
+        int ab = BOUNDS * activeTid;
+        float minXA = bounds[ab + MIN_X];
+        float maxXA = bounds[ab + MAX_X];
+        float minYA = bounds[ab + MIN_Y];
+        float maxYA = bounds[ab + MAX_Y];
         float maxZA = maxZBuffer[ati];
 
         fetchTriCoords(triA, ati, vertexOffset, voffsetMap, screenVertices, polyIndices);
 
+        boolean skip = true;
         while (!draw && testTid < triangleCount) {
           int tti = triangleIndices[testTid];
 
+          if (skip && ranks[activeTid] < ranks[testTid] && !marked.get(tti)) {
+            // From here on the triangles are those after the active one in
+            // the presorted order, so the settle pass has tested them all,
+            // or knows the first one it fails against
+            skip = false;
+            if (settled[ati]) break;
+            int conflict = conflicts[ati];
+            if (conflict != -1 && !marked.get(conflict)) {
+              int pos = testTid;
+              while (pos < triangleCount && triangleIndices[pos] != conflict) pos++;
+              if (pos < triangleCount) {
+                tests += pos - testTid;
+                testTid = pos;
+                tti = conflict;
+              }
+            }
+          }
+
+          int tb = BOUNDS * testTid;
+
           // TEST 1 // Z overlap
-          if (maxZA <= minZBuffer[tti] && !marked.get(tti)) {
+          if (maxZA <= bounds[tb + MIN_Z] && !marked.get(tti)) {
             draw = true; // pass, not overlapping in Z, draw it
 
+            // Tested against enough of them, draw it where it is now
+          } else if (MAX_TESTS <= tests++) {
+            draw = true;
+
             // TEST 2 // XY overlap using square window
-          } else if (maxXA <= minXBuffer[tti] || maxYA <= minYBuffer[tti] ||
-              minXA >= maxXBuffer[tti] || minYA >= maxYBuffer[tti]) {
+          } else if (maxXA <= bounds[tb + MIN_X] | maxYA <= bounds[tb + MIN_Y] |
+              minXA >= bounds[tb + MAX_X] | minYA >= bounds[tb + MAX_Y]) {
             testTid++; // pass, not overlapping in XY
 
             // TEST 3 // test on which side ACTIVE is relative to TEST
           } else {
             fetchTriCoords(triB, tti, vertexOffset, voffsetMap,
                 screenVertices, polyIndices);
-            if (side(triB, triA, -1) > 0) {
+            if (side(planes, tti, triB, triA, -1) > 0) {
               testTid++; // pass, ACTIVE is in halfspace behind current TEST
 
               // TEST 4 // test on which side TEST is relative to ACTIVE
-            } else if (side(triA, triB, 1) > 0) {
+            } else if (side(planes, ati, triA, triB, 1) > 0) {
               testTid++; // pass, current TEST is in halfspace in front of ACTIVE
 
               // FAIL, wrong depth order, swap
             } else {
               if (!swapped.get(tti)) {
                 swapped.set(ati);
+                if (swapCount == swappedList.length) {
+                  swappedList = PApplet.expand(swappedList);
+                }
+                swappedList[swapCount++] = ati;
                 marked.set(tti);
                 rotateRight(triangleIndices, activeTid, testTid);
+                rotateRight(ranks, activeTid, testTid);
+                rotateRight(bounds, BOUNDS * activeTid, BOUNDS * testTid, BOUNDS);
 
                 ati = tti;
                 System.arraycopy(triB, 0, triA, 0, 9);
-                minXA = minXBuffer[ati];
-                maxXA = maxXBuffer[ati];
-                minYA = minYBuffer[ati];
-                maxYA = maxYBuffer[ati];
+                minXA = bounds[ab + MIN_X];
+                maxXA = bounds[ab + MAX_X];
+                minYA = bounds[ab + MIN_Y];
+                maxYA = bounds[ab + MAX_Y];
                 maxZA = maxZBuffer[ati];
 
                 testTid = activeTid + 1;
+                skip = true;
               } else {
                 // oops, we already tested this one, either in one plane or
                 // interlocked in loop with others, just ignore it for now :(
@@ -13510,6 +14104,12 @@ public class PGraphicsOpenGL extends PGraphics {
             }
           }
         }
+
+        // Only the bits set for this triangle, clearing the whole set
+        // every time would make the pass quadratic again
+        for (int n = 0; n < swapCount; n++) {
+          swapped.clear(swappedList[n]);
+        }
         activeTid++;
       }
 
@@ -13570,50 +14170,221 @@ public class PGraphicsOpenGL extends PGraphics {
       tri[Z2] = screenVertices[i2+Z];
     }
 
-    static void sortByMinZ(int leftTid, int rightTid, int[] triangleIndices,
-        float[] minZBuffer) {
-
-      // swap pivot to the front
-      swap(triangleIndices, leftTid, ((leftTid + rightTid) / 2));
+    void project(PMatrix3D projection, float[] polyVertices,
+                 float[] screenVertices, int start, int stop) {
+      for (int i = start; i < stop; i++) {
+        float x = polyVertices[4*i+X];
+        float y = polyVertices[4*i+Y];
+        float z = polyVertices[4*i+Z];
+        float w = polyVertices[4*i+W];
 
-      int k = leftTid;
-      float leftMinZ = minZBuffer[triangleIndices[leftTid]];
-
-      // sort by min z
-      for (int tid = leftTid+1; tid <= rightTid; tid++) {
-        float minZ = minZBuffer[triangleIndices[tid]];
-        if (minZ < leftMinZ) {
-          swap(triangleIndices, ++k, tid);
+        float ox = projection.m00 * x + projection.m01 * y +
+            projection.m02 * z + projection.m03 * w;
+        float oy = projection.m10 * x + projection.m11 * y +
+            projection.m12 * z + projection.m13 * w;
+        float oz = projection.m20 * x + projection.m21 * y +
+            projection.m22 * z + projection.m23 * w;
+        float ow = projection.m30 * x + projection.m31 * y +
+            projection.m32 * z + projection.m33 * w;
+        if (nonZero(ow)) {
+          ox /= ow;
+          oy /= ow;
+          oz /= ow;
         }
+        screenVertices[3*i+X] = ox;
+        screenVertices[3*i+Y] = oy;
+        screenVertices[3*i+Z] = -oz;
       }
+    }
 
-      // swap pivot back to the middle
-      swap(triangleIndices, leftTid, k);
+    void bound(int[] vertexOffset, short[] polyIndices, int start, int stop) {
+      float[] screenVertices = this.screenVertices;
+      int[] voffsetMap = this.voffsetMap;
+      float[] tri = new float[9];
+      for (int i = start; i < stop; i++) {
+        triangleIndices[i] = i;
+        fetchTriCoords(tri, i, vertexOffset, voffsetMap, screenVertices, polyIndices);
+        minXBuffer[i] = PApplet.min(tri[X0], tri[X1], tri[X2]);
+        maxXBuffer[i] = PApplet.max(tri[X0], tri[X1], tri[X2]);
+        minYBuffer[i] = PApplet.min(tri[Y0], tri[Y1], tri[Y2]);
+        maxYBuffer[i] = PApplet.max(tri[Y0], tri[Y1], tri[Y2]);
+        minZBuffer[i] = PApplet.min(tri[Z0], tri[Z1], tri[Z2]);
+        maxZBuffer[i] = PApplet.max(tri[Z0], tri[Z1], tri[Z2]);
+        sortKeys[i] = sortKey(minZBuffer[i]);
+        plane(tri, planes, 4 * i);
+      }
+    }
+
+    void gather(int start, int stop) {
+      float[] bounds = this.bounds;
+      for (int p = start; p < stop; p++) {
+        int t = triangleIndices[p];
+        int b = BOUNDS * p;
+        ranks[p] = p;
+        bounds[b + MIN_X] = minXBuffer[t];
+        bounds[b + MAX_X] = maxXBuffer[t];
+        bounds[b + MIN_Y] = minYBuffer[t];
+        bounds[b + MAX_Y] = maxYBuffer[t];
+        bounds[b + MIN_Z] = minZBuffer[t];
+      }
+    }
+
+    /**
+     * Finds out which of the sorted triangles from start to stop pass the
+     * tests of the overlap pass against all the triangles after them in
+     * the presorted order, up to the first one behind them, and otherwise
+     * the first one they fail against. Those with more than MAX_TESTS to
+     * test against are left to the overlap pass.
+     */
+    void settle(int[] vertexOffset, short[] polyIndices, int count,
+                int start, int stop) {
+      float[] bounds = this.bounds;
+      float[] planes = this.planes;
+      float[] triA = new float[9];
+      float[] triB = new float[9];
+      for (int p = start; p < stop; p++) {
+        int ati = triangleIndices[p];
+        int ab = BOUNDS * p;
+        float minXA = bounds[ab + MIN_X];
+        float maxXA = bounds[ab + MAX_X];
+        float minYA = bounds[ab + MIN_Y];
+        float maxYA = bounds[ab + MAX_Y];
+        float maxZA = maxZBuffer[ati];
+        boolean fetched = false;
+        boolean settle = true;
+        int conflict = -1;
+        int tests = 0;
+        for (int q = p + 1; q < count; q++) {
+          int tb = BOUNDS * q;
+          if (maxZA <= bounds[tb + MIN_Z]) break;
+          if (MAX_TESTS <= tests++) {
+            settle = false;  // let the overlap pass decide
+            break;
+          }
+          // Not || so there is one branch to predict, which rarely fails
+          if (maxXA <= bounds[tb + MIN_X] | maxYA <= bounds[tb + MIN_Y] |
+              minXA >= bounds[tb + MAX_X] | minYA >= bounds[tb + MAX_Y]) continue;
+          int tti = triangleIndices[q];
+          if (!fetched) {
+            fetchTriCoords(triA, ati, vertexOffset, voffsetMap,
+                           screenVertices, polyIndices);
+            fetched = true;
+          }
+          fetchTriCoords(triB, tti, vertexOffset, voffsetMap,
+                         screenVertices, polyIndices);
+          if (side(planes, tti, triB, triA, -1) <= 0 &&
+              side(planes, ati, triA, triB, 1) <= 0) {
+            settle = false;
+            conflict = tti;
+            break;
+          }
+        }
+        settled[ati] = settle;
+        conflicts[ati] = conflict;
+      }
+    }
 
-      if (leftTid  < k - 1) sortByMinZ(leftTid,  k - 1, triangleIndices,
-          minZBuffer);
-      if (k + 1 < rightTid) sortByMinZ(k + 1, rightTid, triangleIndices,
-          minZBuffer);
+    /**
+     * Sorts the triangle indices by the keys of their min z, least
+     * significant digit first. Each pass is stable, so triangles with the
+     * same min z stay in the order they were drawn.
+     */
+    void radixSort(int count) {
+      if (count < 2) return;
+      int[] keys = sortKeys;
+      int[] indices = triangleIndices;
+      int[] tkeys = tempKeys;
+      int[] tindices = tempIndices;
+      int[] counts = radixCounts;
+      for (int shift = 0; shift < 32; shift += RADIX_BITS) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < count; i++) {
+          counts[(keys[i] >>> shift) & (RADIX_SIZE - 1)]++;
+        }
+        if (counts[(keys[0] >>> shift) & (RADIX_SIZE - 1)] == count) {
+          continue;  // same digit everywhere, nothing to move
+        }
+        int sum = 0;
+        for (int d = 0; d < RADIX_SIZE; d++) {
+          int c = counts[d];
+          counts[d] = sum;
+          sum += c;
+        }
+        for (int i = 0; i < count; i++) {
+          int pos = counts[(keys[i] >>> shift) & (RADIX_SIZE - 1)]++;
+          tkeys[pos] = keys[i];
+          tindices[pos] = indices[i];
+        }
+        int[] temp = keys; keys = tkeys; tkeys = temp;
+        temp = indices; indices = tindices; tindices = temp;
+      }
+      if (indices != triangleIndices) {
+        System.arraycopy(indices, 0, triangleIndices, 0, count);
+      }
     }
 
-    // Math -----------------------------------------------
+    /** Maps a float to an int that has the same order as unsigned. */
+    static int sortKey(float value) {
+      int bits = Float.floatToIntBits(value);
+      return bits ^ ((bits >> 31) | 0x80000000);
+    }
 
-    static int side(float[] tri1, float[] tri2, float tz) {
-      float Dx, Dy, Dz, Dw;
-      { // Get the equation of the plane
-        float
-            ABx = tri1[X1] - tri1[X0], ACx = tri1[X2] - tri1[X0],
-            ABy = tri1[Y1] - tri1[Y0], ACy = tri1[Y2] - tri1[Y0],
-            ABz = tri1[Z1] - tri1[Z0], ACz = tri1[Z2] - tri1[Z0];
+    interface Run {
+      void run(int start, int stop);
+    }
 
-        Dx = ABy*ACz - ABz*ACy; Dy = ABz*ACx - ABx*ACz; Dz = ABx*ACy - ABy*ACx;
+    /**
+     * Splits [0, count) into runs on the pool of the caller, or the common
+     * one. Each run writes only to its own part of the buffers, so the
+     * results are the same no matter how many threads there are.
+     */
+    static void runs(int count, Run run) {
+      ForkJoinPool pool = ForkJoinTask.getPool();
+      int threads = (pool != null) ?
+        pool.getParallelism() : ForkJoinPool.getCommonPoolParallelism();
+      if (threads < 2 || count < MIN_PARALLEL) {
+        run.run(0, count);
+      } else {
+        int runs = Math.min(count, threads * RUNS_PER_THREAD);
+        IntStream.range(0, runs).parallel().forEach(i ->
+          run.run((int) ((long) count * i / runs),
+                  (int) ((long) count * (i + 1) / runs)));
+      }
+    }
 
-        // Normalize normal vector
-        float rMag = 1.0f/(float) Math.sqrt(Dx * Dx + Dy * Dy + Dz * Dz);
-        Dx *= rMag; Dy *= rMag; Dz *= rMag;
+    // Math -----------------------------------------------
 
-        Dw = -dot(Dx, Dy, Dz, tri1[X0], tri1[Y0], tri1[Z0]);
-      }
+    /** Puts the equation of the plane of a triangle in planes. */
+    static void plane(float[] tri, float[] planes, int offset) {
+      float
+          ABx = tri[X1] - tri[X0], ACx = tri[X2] - tri[X0],
+          ABy = tri[Y1] - tri[Y0], ACy = tri[Y2] - tri[Y0],
+          ABz = tri[Z1] - tri[Z0], ACz = tri[Z2] - tri[Z0];
+
+      float Dx = ABy*ACz - ABz*ACy;
+      float Dy = ABz*ACx - ABx*ACz;
+      float Dz = ABx*ACy - ABy*ACx;
+
+      // Normalize normal vector
+      float rMag = 1.0f/(float) Math.sqrt(Dx * Dx + Dy * Dy + Dz * Dz);
+      Dx *= rMag; Dy *= rMag; Dz *= rMag;
+
+      planes[offset    ] = Dx;
+      planes[offset + 1] = Dy;
+      planes[offset + 2] = Dz;
+      planes[offset + 3] = -dot(Dx, Dy, Dz, tri[X0], tri[Y0], tri[Z0]);
+    }
+
+    /**
+     * @param planes the planes of the triangles, see plane()
+     * @param ti1 the triangle whose plane is tested against
+     */
+    static int side(float[] planes, int ti1, float[] tri1, float[] tri2,
+                    float tz) {
+      float Dx = planes[4*ti1  ];
+      float Dy = planes[4*ti1+1];
+      float Dz = planes[4*ti1+2];
+      float Dw = planes[4*ti1+3];
 
       float distTest = dot(Dx, Dy, Dz,
           tri1[X0], tri1[Y0], tri1[Z0] + 100*tz) + Dw;
@@ -13660,6 +14431,14 @@ public class PGraphicsOpenGL extends PGraphics {
       array[i1] = temp;
     }
 
+    static void rotateRight(float[] array, int i1, int i2, int size) {
+      if (i1 == i2) return;
+      float[] temp = new float[size];
+      System.arraycopy(array, i2, temp, 0, size);
+      System.arraycopy(array, i1, array, i1 + size, i2 - i1);
+      System.arraycopy(temp, 0, array, i1, size);
+    }
+
   }
 
 }
@@ -781,6 +781,11 @@ public class PJOGL extends PGL {
     WRITE_ONLY = GL.GL_WRITE_ONLY;
     READ_WRITE = GL2ES3.GL_READ_WRITE;
 
+    MAP_WRITE_BIT             = GL.GL_MAP_WRITE_BIT;
+    MAP_INVALIDATE_RANGE_BIT  = GL.GL_MAP_INVALIDATE_RANGE_BIT;
+    MAP_INVALIDATE_BUFFER_BIT = GL.GL_MAP_INVALIDATE_BUFFER_BIT;
+    MAP_UNSYNCHRONIZED_BIT    = GL.GL_MAP_UNSYNCHRONIZED_BIT;
+
     TESS_WINDING_NONZERO = GLU.GLU_TESS_WINDING_NONZERO;
     TESS_WINDING_ODD     = GLU.GLU_TESS_WINDING_ODD;
     TESS_EDGE_FLAG       = GLU.GLU_TESS_EDGE_FLAG;
@@ -1041,6 +1046,8 @@ public class PJOGL extends PGL {
     SYNC_GPU_COMMANDS_COMPLETE = GL3ES3.GL_SYNC_GPU_COMMANDS_COMPLETE;
     ALREADY_SIGNALED           = GL3ES3.GL_ALREADY_SIGNALED;
     CONDITION_SATISFIED        = GL3ES3.GL_CONDITION_SATISFIED;
+    TIMEOUT_EXPIRED            = GL3ES3.GL_TIMEOUT_EXPIRED;
+    SYNC_FLUSH_COMMANDS_BIT    = GL3ES3.GL_SYNC_FLUSH_COMMANDS_BIT;
   }
 
   ///////////////////////////////////////////////////////////
@@ -1321,6 +1328,15 @@ public class PJOGL extends PGL {
     gl2.glDisableVertexAttribArray(index);
   }
 
+  @Override
+  public void vertexAttribDivisor(int index, int divisor) {
+    if (gl3es3 != null) {
+      gl3es3.glVertexAttribDivisor(index, divisor);
+    } else {
+      throw new RuntimeException(String.format(MISSING_GLFUNC_ERROR, "glVertexAttribDivisor()"));
+    }
+  }
+
   @Override
   public void drawArraysImpl(int mode, int first, int count) {
     gl.glDrawArrays(mode, first, count);
@@ -1331,6 +1347,15 @@ public class PJOGL extends PGL {
     gl.glDrawElements(mode, count, type, offset);
   }
 
+  @Override
+  public void drawElementsInstancedImpl(int mode, int count, int type, int offset, int instances) {
+    if (gl3es3 != null) {
+      gl3es3.glDrawElementsInstanced(mode, count, type, offset, instances);
+    } else {
+      throw new RuntimeException(String.format(MISSING_GLFUNC_ERROR, "glDrawElementsInstanced()"));
+    }
+  }
+
   //////////////////////////////////////////////////////////////////////////////
 
   // Rasterization
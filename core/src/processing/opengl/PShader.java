@@ -163,6 +163,12 @@ public class PShader implements PConstants {
   protected int emissiveLoc;
   protected int shininessLoc;
 
+  // Per-copy attributes of instanced shapes
+  protected int instanceRow0Loc;
+  protected int instanceRow1Loc;
+  protected int instanceRow2Loc;
+  protected int instanceColorLoc;
+
   public PShader() {
     parent = null;
     pgl = null;
@@ -585,6 +591,68 @@ public class PShader implements PConstants {
   }
 
 
+  /**
+   * Draws the copies of the renderer's current instanced shape. With
+   * instancing, the transformations and colors of the copies are read from
+   * the buffers uploaded by the renderer, advancing once per copy, in a
+   * single draw call. Otherwise the copies are drawn one by one, with their
+   * values set as constant attributes.
+   */
+  protected void drawInstances(int idxId, int count, int offset) {
+    PGraphicsOpenGL pg = currentPG;
+    int[] rowLocs = { instanceRow0Loc, instanceRow1Loc, instanceRow2Loc };
+    if (pg.instancesLoaded) {
+      for (int r = 0; r < 3; r++) {
+        if (rowLocs[r] == -1) continue;
+        pgl.enableVertexAttribArray(rowLocs[r]);
+        setAttributeVBO(rowLocs[r], pg.bufInstanceRows.glId, 4, PGL.FLOAT,
+                        false, 12 * PGL.SIZEOF_FLOAT, 4 * r * PGL.SIZEOF_FLOAT);
+        pgl.vertexAttribDivisor(rowLocs[r], 1);
+      }
+      if (-1 < instanceColorLoc) {
+        pgl.enableVertexAttribArray(instanceColorLoc);
+        setAttributeVBO(instanceColorLoc, pg.bufInstanceColor.glId, 4,
+                        PGL.UNSIGNED_BYTE, true, 0, 0);
+        pgl.vertexAttribDivisor(instanceColorLoc, 1);
+      }
+
+      pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, idxId);
+      pgl.drawElementsInstanced(PGL.TRIANGLES, count, PGL.INDEX_TYPE,
+                                offset * PGL.SIZEOF_INDEX, pg.instanceCount);
+      pgl.bindBuffer(PGL.ELEMENT_ARRAY_BUFFER, 0);
+
+      // Other shapes drawn with this program don't advance per instance
+      for (int r = 0; r < 3; r++) {
+        if (rowLocs[r] == -1) continue;
+        pgl.vertexAttribDivisor(rowLocs[r], 0);
+        pgl.disableVertexAttribArray(rowLocs[r]);
+      }
+      if (-1 < instanceColorLoc) {
+        pgl.vertexAttribDivisor(instanceColorLoc, 0);
+        pgl.disableVertexAttribArray(instanceColorLoc);
+      }
+    } else {
+      float[] rows = pg.instanceRows;
+      for (int i = 0; i < pg.instanceCount; i++) {
+        for (int r = 0; r < 3; r++) {
+          if (rowLocs[r] == -1) continue;
+          int n = 12 * i + 4 * r;
+          pgl.vertexAttrib4f(rowLocs[r], rows[n], rows[n + 1], rows[n + 2],
+                             rows[n + 3]);
+        }
+        if (-1 < instanceColorLoc) {
+          int c = pg.instanceColors[i];
+          pgl.vertexAttrib4f(instanceColorLoc, ((c >> 16) & 0xFF) / 255.0f,
+                                               ((c >>  8) & 0xFF) / 255.0f,
+                                               ((c      ) & 0xFF) / 255.0f,
+                                               ((c >> 24) & 0xFF) / 255.0f);
+        }
+        draw(idxId, count, offset);
+      }
+    }
+  }
+
+
   /**
    * Returns the ID location of the attribute parameter given its name.
    *
@@ -1139,6 +1207,11 @@ public class PShader implements PConstants {
     directionLoc = getAttributeLoc("direction");
     offsetLoc = getAttributeLoc("offset");
 
+    instanceRow0Loc = getAttributeLoc("instanceRow0");
+    instanceRow1Loc = getAttributeLoc("instanceRow1");
+    instanceRow2Loc = getAttributeLoc("instanceRow2");
+    instanceColorLoc = getAttributeLoc("instanceColor");
+
     loadedAttributes = true;
   }
 
@@ -1385,6 +1458,10 @@ public class PShader implements PConstants {
     return -1 < normalLoc;
   }
 
+  protected boolean accessInstances() {
+    return -1 < instanceRow0Loc;
+  }
+
   protected boolean accessLightAttribs() {
     return -1 < ambientLoc || -1 < specularLoc || -1 < emissiveLoc ||
            -1 < shininessLoc;
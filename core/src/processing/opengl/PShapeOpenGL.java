@@ -41,8 +41,12 @@ import processing.opengl.PGraphicsOpenGL.Tessellator;
 import processing.opengl.PGraphicsOpenGL.VertexAttribute;
 
 import java.nio.Buffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.IntStream;
 
 /**
  * This class holds a 3D model composed of vertices, normals, colors
@@ -74,6 +78,10 @@ public class PShapeOpenGL extends PShape {
   static protected final int SCALE     = 2;
   static protected final int MATRIX    = 3;
 
+  // Runs of leaf shapes per thread in tessellateAsync(), so that a run
+  // with a few heavy shapes doesn't hold up the rest.
+  static protected final int TESS_RUNS_PER_THREAD = 4;
+
   protected PGraphicsOpenGL pg;
   protected PGL pgl;
   protected int context;      // The context that created this shape.
@@ -180,6 +188,9 @@ public class PShapeOpenGL extends PShape {
   protected boolean tessellated;
   protected boolean needBufferInit = false;
 
+  // Tessellation running on the worker threads, only set in the root shape.
+  protected ForkJoinTask<?> tessTask;
+
   // Flag to indicate if the shape can have holes or not.
   protected boolean solid = true;
 
@@ -2761,6 +2772,9 @@ public class PShapeOpenGL extends PShape {
 
 
   protected void updateTessellation() {
+    if (root.tessTask != null) {
+      root.finishTessellation();
+    }
     if (!root.tessellated) {
       root.tessellate();
       root.aggregate();
@@ -2771,11 +2785,145 @@ public class PShapeOpenGL extends PShape {
 
 
   protected void markForTessellation() {
+    if (root.tessTask != null) {
+      root.finishTessellation();
+    }
     root.tessellated = false;
     tessellated = false;
   }
 
 
+  /**
+   * Starts tessellating the shape on worker threads, so that the first
+   * draw() doesn't stall while a large shape (an SVG or OBJ file with
+   * thousands of children, for instance) is turned into triangles. The
+   * children are split into runs that are tessellated at the same time, and
+   * draw() is left with uploading the result to the GPU. Drawing the shape
+   * before isReady() returns true waits for the tessellation to finish, and
+   * the shape shouldn't be changed until then.
+   *
+   * @nowebref
+   */
+  public void tessellateAsync() {
+    if (root != this) {
+      root.tessellateAsync();
+      return;
+    }
+    if (tessellated || tessTask != null || parent != null) return;
+
+    // The walk over the hierarchy happens here, so that each worker
+    // only writes to the leaf shapes and the geometry it was given.
+    initTessGeometry();
+    ArrayList<PShapeOpenGL> leaves = new ArrayList<>();
+    tessellateImpl(leaves);
+    tessellated = false;
+
+    int count = leaves.size();
+    int runs = Math.max(1, Math.min(count, TESS_RUNS_PER_THREAD *
+                                    ForkJoinPool.getCommonPoolParallelism()));
+    TessGeometry[] parts = new TessGeometry[runs];
+    PGraphicsOpenGL[] renderers = new PGraphicsOpenGL[runs];
+    for (int i = 0; i < runs; i++) {
+      renderers[i] = PGraphicsOpenGL.newTessRenderer(pg);
+      parts[i] = PGraphicsOpenGL.newTessGeometry(renderers[i], polyAttribs,
+                                                 PGraphicsOpenGL.RETAINED);
+      for (int j = 0; j < polyAttribs.size(); j++) {
+        parts[i].initAttrib(polyAttribs.get(j));
+      }
+    }
+
+    tessTask = ForkJoinPool.commonPool().submit(() -> {
+      IntStream.range(0, runs).parallel().forEach(i ->
+        tessellateLeaves(leaves, count * i / runs, count * (i + 1) / runs,
+                         parts[i], renderers[i]));
+      for (int i = 0; i < runs; i++) {
+        int polyCache = tessGeo.polyIndexCache.size;
+        int lineCache = tessGeo.lineIndexCache.size;
+        int pointCache = tessGeo.pointIndexCache.size;
+        tessGeo.append(parts[i]);
+        for (int n = count * i / runs; n < count * (i + 1) / runs; n++) {
+          leaves.get(n).moveIndexCaches(polyCache, lineCache, pointCache);
+        }
+      }
+      tessGeo.trim();
+      aggregate();
+      initModified();
+    });
+  }
+
+
+  /**
+   * Returns true when the shape is tessellated, so drawing it doesn't
+   * have to wait for tessellateAsync() or tessellate it first.
+   *
+   * @nowebref
+   */
+  public boolean isReady() {
+    if (root.tessTask != null) {
+      return root.tessTask.isDone();
+    }
+    return root.tessellated;
+  }
+
+
+  // Waits for the workers started by tessellateAsync(), and rethrows
+  // whatever went wrong on them.
+  protected void finishTessellation() {
+    ForkJoinTask<?> task = tessTask;
+    tessTask = null;
+    task.join();
+    tessellated = true;
+    needBufferInit = true;
+  }
+
+
+  // Tessellates leaves from start up to stop into part, with a tessellator
+  // and a renderer that no other thread uses. The index caches of the
+  // leaves point into part until it is appended to the root geometry.
+  static protected void tessellateLeaves(ArrayList<PShapeOpenGL> leaves,
+                                         int start, int stop,
+                                         TessGeometry part,
+                                         PGraphicsOpenGL renderer) {
+    Tessellator tessellator = new Tessellator();
+    for (int i = start; i < stop; i++) {
+      PShapeOpenGL leaf = leaves.get(i);
+      PGraphicsOpenGL pg = leaf.pg;
+      Tessellator tessellator0 = leaf.tessellator;
+      // a single shape is its own root, so this is the geometry the
+      // parts get appended to, and it can't be read back from leaf.root
+      TessGeometry tessGeo0 = leaf.tessGeo;
+      leaf.pg = renderer;
+      leaf.inGeo.pg = renderer;
+      leaf.tessellator = tessellator;
+      leaf.tessGeo = part;
+      try {
+        leaf.tessellateLeaf();
+      } finally {
+        leaf.pg = pg;
+        leaf.inGeo.pg = pg;
+        leaf.tessellator = tessellator0;
+        leaf.tessGeo = tessGeo0;
+      }
+    }
+  }
+
+
+  // Moves the index cache ranges of a leaf shape past the entries that
+  // were already in the root geometry when its own was appended.
+  protected void moveIndexCaches(int polyCache, int lineCache, int pointCache) {
+    if (is2D()) {
+      // lines and points are stored along with the polygons
+      lineCache = pointCache = polyCache;
+    }
+    if (-1 < firstPolyIndexCache) firstPolyIndexCache += polyCache;
+    if (-1 < lastPolyIndexCache) lastPolyIndexCache += polyCache;
+    if (-1 < firstLineIndexCache) firstLineIndexCache += lineCache;
+    if (-1 < lastLineIndexCache) lastLineIndexCache += lineCache;
+    if (-1 < firstPointIndexCache) firstPointIndexCache += pointCache;
+    if (-1 < lastPointIndexCache) lastPointIndexCache += pointCache;
+  }
+
+
   protected void initModified() {
     modified = false;
 
@@ -2831,27 +2979,8 @@ public class PShapeOpenGL extends PShape {
 
   protected void tessellate() {
     if (root == this && parent == null) { // Root shape
-      boolean initAttr = false;
-      if (polyAttribs == null) {
-        polyAttribs = PGraphicsOpenGL.newAttributeMap();
-        initAttr = true;
-      }
-
-      if (tessGeo == null) {
-        tessGeo = PGraphicsOpenGL.newTessGeometry(pg, polyAttribs, PGraphicsOpenGL.RETAINED);
-      }
-      tessGeo.clear();
-
-      if (initAttr) {
-        collectPolyAttribs();
-      }
-
-      for (int i = 0; i < polyAttribs.size(); i++) {
-        VertexAttribute attrib = polyAttribs.get(i);
-        tessGeo.initAttrib(attrib);
-      }
-
-      tessellateImpl();
+      initTessGeometry();
+      tessellateImpl(null);
 
       // Tessellated arrays are trimmed since they are expanded
       // by doubling their old size, which might lead to arrays
@@ -2861,6 +2990,29 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  protected void initTessGeometry() {
+    boolean initAttr = false;
+    if (polyAttribs == null) {
+      polyAttribs = PGraphicsOpenGL.newAttributeMap();
+      initAttr = true;
+    }
+
+    if (tessGeo == null) {
+      tessGeo = PGraphicsOpenGL.newTessGeometry(pg, polyAttribs, PGraphicsOpenGL.RETAINED);
+    }
+    tessGeo.clear();
+
+    if (initAttr) {
+      collectPolyAttribs();
+    }
+
+    for (int i = 0; i < polyAttribs.size(); i++) {
+      VertexAttribute attrib = polyAttribs.get(i);
+      tessGeo.initAttrib(attrib);
+    }
+  }
+
+
   protected void collectPolyAttribs() {
     AttributeMap rootAttribs = root.polyAttribs;
     tessGeo = root.tessGeo;
@@ -2886,7 +3038,9 @@ public class PShapeOpenGL extends PShape {
     }
   }
 
-  protected void tessellateImpl() {
+  // When leaves is not null, the leaf shapes are added to it instead of
+  // being tessellated, and tessellateLeaf() is left to the caller.
+  protected void tessellateImpl(ArrayList<PShapeOpenGL> leaves) {
     tessGeo = root.tessGeo;
 
     firstPolyIndexCache = -1;
@@ -2904,112 +3058,19 @@ public class PShapeOpenGL extends PShape {
 
       for (int i = 0; i < childCount; i++) {
         PShapeOpenGL child = (PShapeOpenGL) children[i];
-        child.tessellateImpl();
+        child.tessellateImpl(leaves);
       }
     } else {
       if (shapeCreated) {
-        // If the geometry was tessellated previously, then
-        // the edges information will still be stored in the
-        // input object, so it needs to be removed to avoid
-        // duplication.
-        inGeo.clearEdges();
-
-        tessellator.setInGeometry(inGeo);
-        tessellator.setTessGeometry(tessGeo);
-        tessellator.setFill(fill || image != null);
-        tessellator.setTexCache(null, null);
-        tessellator.setStroke(stroke);
-        tessellator.setStrokeColor(strokeColor);
-        tessellator.setStrokeWeight(strokeWeight);
-        tessellator.setStrokeCap(strokeCap);
-        tessellator.setStrokeJoin(strokeJoin);
-        tessellator.setRenderer(pg);
-        tessellator.setTransform(matrix);
-        tessellator.set3D(is3D());
-
-        if (family == GEOMETRY) {
-          if (kind == POINTS) {
-            tessellator.tessellatePoints();
-          } else if (kind == LINES) {
-            tessellator.tessellateLines();
-          } else if (kind == LINE_STRIP) {
-            tessellator.tessellateLineStrip();
-          } else if (kind == LINE_LOOP) {
-            tessellator.tessellateLineLoop();
-          } else if (kind == TRIANGLE || kind == TRIANGLES) {
-            if (stroke) inGeo.addTrianglesEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTrianglesNormals();
-            tessellator.tessellateTriangles();
-          } else if (kind == TRIANGLE_FAN) {
-            if (stroke) inGeo.addTriangleFanEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleFanNormals();
-            tessellator.tessellateTriangleFan();
-          } else if (kind == TRIANGLE_STRIP) {
-            if (stroke) inGeo.addTriangleStripEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleStripNormals();
-            tessellator.tessellateTriangleStrip();
-          } else if (kind == QUAD || kind == QUADS) {
-            if (stroke) inGeo.addQuadsEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadsNormals();
-            tessellator.tessellateQuads();
-          } else if (kind == QUAD_STRIP) {
-            if (stroke) inGeo.addQuadStripEdges();
-            if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadStripNormals();
-            tessellator.tessellateQuadStrip();
-          } else if (kind == POLYGON) {
-            boolean bez = inGeo.hasBezierVertex();
-            boolean quad = inGeo.hasQuadraticVertex();
-            boolean curv = inGeo.hasCurveVertex();
-            if (bez || quad) saveBezierVertexSettings();
-            if (curv) {
-              saveCurveVertexSettings();
-              tessellator.resetCurveVertexCount();
-            }
-            tessellator.tessellatePolygon(solid, close,
-                                          normalMode == NORMAL_MODE_AUTO);
-            if (bez ||quad) restoreBezierVertexSettings();
-            if (curv) restoreCurveVertexSettings();
-          }
-        } else if (family == PRIMITIVE) {
-          // The input geometry needs to be cleared because the geometry
-          // generation methods in InGeometry add the vertices of the
-          // new primitive to what is already stored.
-          inGeo.clear();
-
-          if (kind == POINT) {
-            tessellatePoint();
-          } else if (kind == LINE) {
-            tessellateLine();
-          } else if (kind == TRIANGLE) {
-            tessellateTriangle();
-          } else if (kind == QUAD) {
-            tessellateQuad();
-          } else if (kind == RECT) {
-            tessellateRect();
-          } else if (kind == ELLIPSE) {
-            tessellateEllipse();
-          } else if (kind == ARC) {
-            tessellateArc();
-          } else if (kind == BOX) {
-            tessellateBox();
-          } else if (kind == SPHERE) {
-            tessellateSphere();
-          }
-        } else if (family == PATH) {
-          inGeo.clear();
-          tessellatePath();
+        if (leaves != null) {
+          leaves.add(this);
+        } else {
+          tessellateLeaf();
         }
 
         if (image != null && parent != null) {
           ((PShapeOpenGL)parent).addTexture(image);
         }
-
-        firstPolyIndexCache = tessellator.firstPolyIndexCache;
-        lastPolyIndexCache = tessellator.lastPolyIndexCache;
-        firstLineIndexCache = tessellator.firstLineIndexCache;
-        lastLineIndexCache = tessellator.lastLineIndexCache;
-        firstPointIndexCache = tessellator.firstPointIndexCache;
-        lastPointIndexCache = tessellator.lastPointIndexCache;
       }
     }
 
@@ -3021,6 +3082,109 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  // Tessellates the input geometry of this leaf shape into tessGeo.
+  protected void tessellateLeaf() {
+    // If the geometry was tessellated previously, then
+    // the edges information will still be stored in the
+    // input object, so it needs to be removed to avoid
+    // duplication.
+    inGeo.clearEdges();
+
+    tessellator.setInGeometry(inGeo);
+    tessellator.setTessGeometry(tessGeo);
+    tessellator.setFill(fill || image != null);
+    tessellator.setTexCache(null, null);
+    tessellator.setStroke(stroke);
+    tessellator.setStrokeColor(strokeColor);
+    tessellator.setStrokeWeight(strokeWeight);
+    tessellator.setStrokeCap(strokeCap);
+    tessellator.setStrokeJoin(strokeJoin);
+    tessellator.setRenderer(pg);
+    tessellator.setTransform(matrix);
+    tessellator.set3D(is3D());
+
+    if (family == GEOMETRY) {
+      if (kind == POINTS) {
+        tessellator.tessellatePoints();
+      } else if (kind == LINES) {
+        tessellator.tessellateLines();
+      } else if (kind == LINE_STRIP) {
+        tessellator.tessellateLineStrip();
+      } else if (kind == LINE_LOOP) {
+        tessellator.tessellateLineLoop();
+      } else if (kind == TRIANGLE || kind == TRIANGLES) {
+        if (stroke) inGeo.addTrianglesEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTrianglesNormals();
+        tessellator.tessellateTriangles();
+      } else if (kind == TRIANGLE_FAN) {
+        if (stroke) inGeo.addTriangleFanEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleFanNormals();
+        tessellator.tessellateTriangleFan();
+      } else if (kind == TRIANGLE_STRIP) {
+        if (stroke) inGeo.addTriangleStripEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcTriangleStripNormals();
+        tessellator.tessellateTriangleStrip();
+      } else if (kind == QUAD || kind == QUADS) {
+        if (stroke) inGeo.addQuadsEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadsNormals();
+        tessellator.tessellateQuads();
+      } else if (kind == QUAD_STRIP) {
+        if (stroke) inGeo.addQuadStripEdges();
+        if (normalMode == NORMAL_MODE_AUTO) inGeo.calcQuadStripNormals();
+        tessellator.tessellateQuadStrip();
+      } else if (kind == POLYGON) {
+        boolean bez = inGeo.hasBezierVertex();
+        boolean quad = inGeo.hasQuadraticVertex();
+        boolean curv = inGeo.hasCurveVertex();
+        if (bez || quad) saveBezierVertexSettings();
+        if (curv) {
+          saveCurveVertexSettings();
+          tessellator.resetCurveVertexCount();
+        }
+        tessellator.tessellatePolygon(solid, close,
+                                      normalMode == NORMAL_MODE_AUTO);
+        if (bez ||quad) restoreBezierVertexSettings();
+        if (curv) restoreCurveVertexSettings();
+      }
+    } else if (family == PRIMITIVE) {
+      // The input geometry needs to be cleared because the geometry
+      // generation methods in InGeometry add the vertices of the
+      // new primitive to what is already stored.
+      inGeo.clear();
+
+      if (kind == POINT) {
+        tessellatePoint();
+      } else if (kind == LINE) {
+        tessellateLine();
+      } else if (kind == TRIANGLE) {
+        tessellateTriangle();
+      } else if (kind == QUAD) {
+        tessellateQuad();
+      } else if (kind == RECT) {
+        tessellateRect();
+      } else if (kind == ELLIPSE) {
+        tessellateEllipse();
+      } else if (kind == ARC) {
+        tessellateArc();
+      } else if (kind == BOX) {
+        tessellateBox();
+      } else if (kind == SPHERE) {
+        tessellateSphere();
+      }
+    } else if (family == PATH) {
+      inGeo.clear();
+      tessellatePath();
+    }
+
+    firstPolyIndexCache = tessellator.firstPolyIndexCache;
+    lastPolyIndexCache = tessellator.lastPolyIndexCache;
+    firstLineIndexCache = tessellator.firstLineIndexCache;
+    lastLineIndexCache = tessellator.lastLineIndexCache;
+    firstPointIndexCache = tessellator.firstPointIndexCache;
+    lastPointIndexCache = tessellator.lastPointIndexCache;
+  }
+
+
   protected void tessellatePoint() {
     float x = 0, y = 0, z = 0;
     if (params.length == 2) {
@@ -4858,6 +5022,11 @@ public class PShapeOpenGL extends PShape {
     if (is3D()) {
       // In 3D mode, the lines and points need to be rendered separately
       // as they require their own shaders.
+      if (0 < g.instanceCount) {
+        renderInstanceStrokes(g);
+        return;
+      }
+
       if (hasLines) {
         renderLines(g);
         if (g.haveRaw()) {
@@ -4875,6 +5044,23 @@ public class PShapeOpenGL extends PShape {
   }
 
 
+  // The line and point shaders don't read the instance attributes, so the
+  // copies of the strokes are drawn one at a time.
+  protected void renderInstanceStrokes(PGraphicsOpenGL g) {
+    if (!hasLines && !hasPoints) return;
+    int count = g.instanceCount;
+    g.instanceCount = 0;
+    for (int i = 0; i < count; i++) {
+      g.pushMatrix();
+      g.applyInstanceMatrix(i);
+      if (hasLines) renderLines(g);
+      if (hasPoints) renderPoints(g);
+      g.popMatrix();
+    }
+    g.instanceCount = count;
+  }
+
+
   protected void renderPolys(PGraphicsOpenGL g, PImage textureImage) {
     boolean customShader = g.polyShader != null;
     boolean needNormals = customShader ? g.polyShader.accessNormals() : false;
@@ -4958,7 +5144,11 @@ public class PShapeOpenGL extends PShape {
                                attrib.isColor(), 0, attrib.sizeInBytes(voffset));
       }
 
-      shader.draw(root.bufPolyIndex.glId, icount, ioffset);
+      if (0 < g.instanceCount) {
+        shader.drawInstances(root.bufPolyIndex.glId, icount, ioffset);
+      } else {
+        shader.draw(root.bufPolyIndex.glId, icount, ioffset);
+      }
     }
 
     for (VertexAttribute attrib: polyAttribs.values()) {
@@ -0,0 +1,1167 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ * Breaks polygons into triangles in plain Java, so it needs no OpenGL
+ * context and can run on any thread, or in a test. It's driven like the
+ * GLU tessellator it replaces: contours of vertices, filled with the ODD
+ * or NONZERO winding rule. But rather than calling back once per vertex,
+ * it hands over all the triangles at once, as indices into the vertex
+ * data, for the renderer to copy into its own arrays.
+ * <p>
+ * A polygon that is a single contour that doesn't cross or touch itself,
+ * which is nearly every polygon, is ear clipped right away. Otherwise the
+ * contours are cut wherever they cross or touch, the pieces are joined up
+ * into the faces of a planar graph, each face gets its winding number
+ * from its neighbors, and the faces that the winding rule fills are ear
+ * clipped, with the outlines of whatever sits inside them bridged in as
+ * holes.
+ * <p>
+ * Vertices are double arrays that start with x, y, and z. Whatever comes
+ * after that (colors, normals, texture coordinates) is only looked at by
+ * the callback's combine(), which makes up the data for the new vertices
+ * where edges cross, the same as GLU_TESS_COMBINE. The polygon can be in
+ * any plane; it's flattened along the axis it faces most.
+ */
+class PolygonTessellator {
+  static final int WINDING_ODD = 0;
+  static final int WINDING_NONZERO = 1;
+
+  interface Callback {
+    /**
+     * Make the data for a new vertex at coords, which is where two edges
+     * cross, by mixing the four vertices in data with the given weights.
+     * The result goes in outData[0]. Same as GLU_TESS_COMBINE.
+     */
+    public void combine(double[] coords, Object[] data,
+                        float[] weight, Object[] outData);
+
+    /**
+     * The whole polygon, count indices into vertices, three for each
+     * triangle. The triangles go around the same way as the polygon.
+     */
+    public void triangles(double[][] vertices, int[] indices, int count);
+  }
+
+  protected Callback callback;
+  protected int windingRule = WINDING_ODD;
+
+  // The vertices as they were given, followed by those made by combine().
+  protected double[][] vertices = new double[64][];
+  protected int vertexCount;
+  protected int inputCount;
+  protected int[] contourStart = new int[4];
+  protected int contourCount;
+
+  // The vertices flattened to 2D, and how close two of them can be before
+  // they count as the same point.
+  protected double[] px = new double[64];
+  protected double[] py = new double[64];
+  protected double left, right, bottom, top;
+  protected double epsilon;
+
+  // Union-find over the vertices that are at the same place.
+  protected int[] same = new int[64];
+  protected boolean merged;
+
+  // The edges of the contours, and where they need to be cut.
+  protected int[] segStart = new int[64];
+  protected int[] segEnd = new int[64];
+  protected int segCount;
+  protected int[] splitSeg = new int[16];
+  protected int[] splitVertex = new int[16];
+  protected double[] splitKey = new double[16];
+  protected int splitCount;
+
+  // The planar graph: each edge is two half edges, 2e from the lower
+  // vertex to the higher one, and 2e + 1 back. The net number of times
+  // the contours go along 2e is edgeWinding[e]; crossing it from right
+  // to left adds that much to the winding number.
+  protected int[] edgeWinding;
+  protected int[] halfFrom;
+  protected int[] halfNext;
+  protected int[] halfCycle;
+  protected int[] cycleFirst;
+  protected double[] cycleArea;
+  protected int cycleCount;
+
+  // The rings being ear clipped, as a linked list of slots that point
+  // to vertices. A vertex can be in several slots, where holes are
+  // bridged in.
+  protected int[] slotVertex = new int[64];
+  protected int[] slotPrev = new int[64];
+  protected int[] slotNext = new int[64];
+  protected boolean[] slotGone = new boolean[64];
+  protected boolean[] slotReflex = new boolean[64];
+  protected int slotCount;
+  protected int[] reflex = new int[64];
+  protected int reflexCount;
+  protected boolean flip;
+
+  protected int[] indices = new int[192];
+  protected int indexCount;
+
+  private final double[] combineCoords = new double[3];
+  private final Object[] combineData = new Object[4];
+  private final float[] combineWeight = new float[4];
+  private final Object[] combineOut = new Object[1];
+
+
+  PolygonTessellator(Callback callback) {
+    this.callback = callback;
+  }
+
+
+  /** WINDING_ODD (the default) or WINDING_NONZERO. */
+  void setWindingRule(int rule) {
+    windingRule = rule;
+  }
+
+
+  void beginPolygon() {
+    vertexCount = 0;
+    contourCount = 0;
+  }
+
+
+  void beginContour() {
+    if (contourCount == contourStart.length) {
+      contourStart = Arrays.copyOf(contourStart, contourCount << 1);
+    }
+    contourStart[contourCount++] = vertexCount;
+  }
+
+
+  void addVertex(double[] v) {
+    if (vertexCount == vertices.length) {
+      vertices = Arrays.copyOf(vertices, vertexCount << 1);
+    }
+    vertices[vertexCount++] = v;
+  }
+
+
+  /**
+   * Drops repeated points, including a last one that's the same as the
+   * first, and the whole contour if that leaves fewer than three.
+   */
+  void endContour() {
+    int start = contourStart[contourCount - 1];
+    int count = start;
+    for (int i = start; i < vertexCount; i++) {
+      if (count == start || !samePoint(vertices[count - 1], vertices[i])) {
+        vertices[count++] = vertices[i];
+      }
+    }
+    while (count - start > 1 && samePoint(vertices[count - 1], vertices[start])) {
+      count--;
+    }
+    if (count - start < 3) {
+      count = start;
+      contourCount--;
+    }
+    Arrays.fill(vertices, count, vertexCount, null);
+    vertexCount = count;
+  }
+
+
+  static private boolean samePoint(double[] a, double[] b) {
+    return a[0] == b[0] && a[1] == b[1] && a[2] == b[2];
+  }
+
+
+  void endPolygon() {
+    indexCount = 0;
+    if (0 < contourCount) {
+      tessellate();
+    }
+    if (0 < indexCount) {
+      callback.triangles(vertices, indices, indexCount);
+    }
+    // don't hold on to the caller's data
+    Arrays.fill(vertices, 0, vertexCount, null);
+    vertexCount = 0;
+    contourCount = 0;
+  }
+
+
+  protected void tessellate() {
+    inputCount = vertexCount;
+    flatten();
+
+    double area = 0;
+    for (int c = 0; c < contourCount; c++) {
+      area += contourArea(c);
+    }
+    flip = area < 0;
+
+    merged = false;
+    for (int i = 0; i < inputCount; i++) {
+      same[i] = i;
+    }
+    snap();
+
+    segCount = 0;
+    for (int c = 0; c < contourCount; c++) {
+      int start = contourStart[c];
+      int stop = contourStop(c);
+      for (int i = start; i < stop; i++) {
+        addSegment(find(i), find(i + 1 < stop ? i + 1 : start));
+      }
+    }
+    splitCount = 0;
+    findCrossings();
+
+    if (contourCount == 1 && !merged && splitCount == 0) {
+      clipContour();
+    } else {
+      if (inputCount < vertexCount) {
+        // the new vertices may land on each other, or on old ones
+        snap();
+      }
+      buildGraph();
+      fillFaces();
+    }
+  }
+
+
+  protected int contourStop(int c) {
+    return c + 1 < contourCount ? contourStart[c + 1] : inputCount;
+  }
+
+
+  protected double contourArea(int c) {
+    int start = contourStart[c];
+    int stop = contourStop(c);
+    double sum = 0;
+    for (int i = start, j = stop - 1; i < stop; j = i++) {
+      sum += px[j] * py[i] - px[i] * py[j];
+    }
+    return sum / 2;
+  }
+
+
+  /**
+   * Flatten to 2D by leaving out the axis that the polygon faces most,
+   * found with Newell's method. Flat polygons in the XY plane, which is
+   * all of them in 2D, skip straight to x and y.
+   */
+  protected void flatten() {
+    if (px.length < vertexCount) {
+      expandVertices(vertexCount);
+    }
+    double z = vertices[0][2];
+    boolean flat = true;
+    for (int i = 1; i < vertexCount && flat; i++) {
+      flat = vertices[i][2] == z;
+    }
+
+    int u = 0, v = 1;
+    if (!flat) {
+      double nx = 0, ny = 0, nz = 0;
+      for (int c = 0; c < contourCount; c++) {
+        int start = contourStart[c];
+        int stop = contourStop(c);
+        for (int i = start, j = stop - 1; i < stop; j = i++) {
+          double[] a = vertices[j];
+          double[] b = vertices[i];
+          nx += (a[1] - b[1]) * (a[2] + b[2]);
+          ny += (a[2] - b[2]) * (a[0] + b[0]);
+          nz += (a[0] - b[0]) * (a[1] + b[1]);
+        }
+      }
+      nx = Math.abs(nx);
+      ny = Math.abs(ny);
+      nz = Math.abs(nz);
+      if (nz < nx && ny <= nx) {
+        u = 1; v = 2;
+      } else if (nz < ny) {
+        u = 2; v = 0;
+      }
+    }
+
+    double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+    double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+    for (int i = 0; i < vertexCount; i++) {
+      double x = vertices[i][u];
+      double y = vertices[i][v];
+      px[i] = x;
+      py[i] = y;
+      if (x < minX) minX = x;
+      if (x > maxX) maxX = x;
+      if (y < minY) minY = y;
+      if (y > maxY) maxY = y;
+    }
+    left = minX;
+    right = maxX;
+    bottom = minY;
+    top = maxY;
+    epsilon = Math.max(maxX - minX, maxY - minY) * 1e-9;
+  }
+
+
+  protected void expandVertices(int count) {
+    int size = Math.max(count, px.length << 1);
+    px = Arrays.copyOf(px, size);
+    py = Arrays.copyOf(py, size);
+    same = Arrays.copyOf(same, size);
+  }
+
+
+  protected int find(int i) {
+    while (same[i] != i) {
+      same[i] = same[same[i]];
+      i = same[i];
+    }
+    return i;
+  }
+
+
+  /** Merge the vertices that are no more than epsilon apart. */
+  protected void snap() {
+    int[] order = new int[vertexCount];
+    for (int i = 0; i < vertexCount; i++) {
+      order[i] = i;
+    }
+    sort(order, 0, vertexCount, px);
+    for (int k = 0; k < vertexCount; k++) {
+      int i = order[k];
+      for (int m = k + 1; m < vertexCount; m++) {
+        int j = order[m];
+        if (px[j] - px[i] > epsilon) break;
+        if (Math.abs(py[j] - py[i]) <= epsilon) {
+          int a = find(i);
+          int b = find(j);
+          if (a != b) {
+            // the lower one stays, so input vertices win over new ones
+            same[Math.max(a, b)] = Math.min(a, b);
+            merged = true;
+          }
+        }
+      }
+    }
+  }
+
+
+  protected void addSegment(int a, int b) {
+    if (a == b) return;
+    if (segCount == segStart.length) {
+      segStart = Arrays.copyOf(segStart, segCount << 1);
+      segEnd = Arrays.copyOf(segEnd, segCount << 1);
+    }
+    segStart[segCount] = a;
+    segEnd[segCount] = b;
+    segCount++;
+  }
+
+
+  // -----------------------------------------------------------------
+  //
+  // Where the edges cross
+
+
+  /**
+   * Drop the segments into a grid of about one cell per segment, going
+   * through each row of cells that a segment crosses, and only compare
+   * the segments that share a cell. Notes where each one has to be cut.
+   */
+  protected void findCrossings() {
+    int size = Math.max(1, Math.min(512, (int) Math.sqrt(4 * segCount)));
+    double cellX = (right - left) / size;
+    double cellY = (top - bottom) / size;
+
+    // the cells of each segment, then the segments of each cell
+    int[] segFirst = new int[segCount + 1];
+    int[] segCells = new int[4 * segCount];
+    int count = 0;
+    for (int s = 0; s < segCount; s++) {
+      segFirst[s] = count;
+      int a = segStart[s], b = segEnd[s];
+      double ax = px[a], ay = py[a], bx = px[b], by = py[b];
+      double lowY = Math.min(ay, by), highY = Math.max(ay, by);
+      int row0 = cell(lowY - epsilon, bottom, cellY, size);
+      int row1 = cell(highY + epsilon, bottom, cellY, size);
+      for (int row = row0; row <= row1; row++) {
+        double x0 = ax, x1 = bx;
+        if (ay != by) {
+          // where the segment is within this row
+          double y0 = Math.max(lowY, bottom + row * cellY - epsilon);
+          double y1 = Math.min(highY, bottom + (row + 1) * cellY + epsilon);
+          x0 = ax + (y0 - ay) * (bx - ax) / (by - ay);
+          x1 = ax + (y1 - ay) * (bx - ax) / (by - ay);
+        }
+        int col0 = cell(Math.min(x0, x1) - epsilon, left, cellX, size);
+        int col1 = cell(Math.max(x0, x1) + epsilon, left, cellX, size);
+        if (segCells.length < count + col1 - col0 + 1) {
+          segCells = Arrays.copyOf(segCells, 2 * (count + col1 - col0 + 1));
+        }
+        for (int col = col0; col <= col1; col++) {
+          segCells[count++] = row * size + col;
+        }
+      }
+    }
+    segFirst[segCount] = count;
+
+    int[] first = new int[size * size + 1];
+    for (int i = 0; i < count; i++) {
+      first[segCells[i] + 1]++;
+    }
+    for (int c = 0; c < size * size; c++) {
+      first[c + 1] += first[c];
+    }
+    int[] cells = new int[count];
+    int[] fill = Arrays.copyOf(first, size * size);
+    for (int s = 0; s < segCount; s++) {
+      for (int i = segFirst[s]; i < segFirst[s + 1]; i++) {
+        cells[fill[segCells[i]]++] = s;
+      }
+    }
+
+    // each segment against the later ones in its cells, once each
+    int[] seen = new int[segCount];
+    Arrays.fill(seen, -1);
+    for (int s = 0; s < segCount; s++) {
+      for (int i = segFirst[s]; i < segFirst[s + 1]; i++) {
+        int c = segCells[i];
+        for (int j = first[c]; j < first[c + 1]; j++) {
+          int t = cells[j];
+          if (s < t && seen[t] != s) {
+            seen[t] = s;
+            if (overlap(s, t)) cross(s, t);
+          }
+        }
+      }
+    }
+  }
+
+
+  static private int cell(double v, double min, double size, int count) {
+    int c = (size > 0) ? (int) ((v - min) / size) : 0;
+    return Math.max(0, Math.min(count - 1, c));
+  }
+
+
+  protected boolean overlap(int s, int t) {
+    int a = segStart[s], b = segEnd[s];
+    int c = segStart[t], d = segEnd[t];
+    return Math.min(px[c], px[d]) <= Math.max(px[a], px[b]) + epsilon &&
+           Math.min(px[a], px[b]) <= Math.max(px[c], px[d]) + epsilon &&
+           Math.min(py[c], py[d]) <= Math.max(py[a], py[b]) + epsilon &&
+           Math.min(py[a], py[b]) <= Math.max(py[c], py[d]) + epsilon;
+  }
+
+
+  protected void cross(int s, int t) {
+    int a = segStart[s], b = segEnd[s];
+    int c = segStart[t], d = segEnd[t];
+    if ((a == c && b == d) || (a == d && b == c)) return;
+
+    // an end of one lying on the other, including where they overlap
+    boolean touch = touch(s, c) | touch(s, d) | touch(t, a) | touch(t, b);
+    if (touch || a == c || a == d || b == c || b == d) return;
+
+    double o1 = orient(a, b, c);
+    double o2 = orient(a, b, d);
+    if ((o1 > 0 && o2 > 0) || (o1 < 0 && o2 < 0) || o1 == o2) return;
+    double o3 = orient(c, d, a);
+    double o4 = orient(c, d, b);
+    if ((o3 > 0 && o4 > 0) || (o3 < 0 && o4 < 0) || o3 == o4) return;
+
+    double ts = o3 / (o3 - o4);
+    double tt = o1 / (o1 - o2);
+    int v = combine(a, b, ts, c, d, tt);
+    px[v] = px[a] + ts * (px[b] - px[a]);
+    py[v] = py[a] + ts * (py[b] - py[a]);
+    addSplit(s, v, ts);
+    addSplit(t, v, tt);
+  }
+
+
+  /** If vertex v is on segment s, but not at either end, cut s there. */
+  protected boolean touch(int s, int v) {
+    int a = segStart[s], b = segEnd[s];
+    if (v == a || v == b) return false;
+    double dx = px[b] - px[a];
+    double dy = py[b] - py[a];
+    double t = ((px[v] - px[a]) * dx + (py[v] - py[a]) * dy) / (dx * dx + dy * dy);
+    if (t <= 0 || 1 <= t) return false;
+    double ex = px[a] + t * dx - px[v];
+    double ey = py[a] + t * dy - py[v];
+    if (ex * ex + ey * ey > epsilon * epsilon) return false;
+    addSplit(s, v, t);
+    return true;
+  }
+
+
+  /** A new vertex where a-b, at ts, crosses c-d, at tt. */
+  protected int combine(int a, int b, double ts, int c, int d, double tt) {
+    double[] da = vertices[a], db = vertices[b];
+    double[] dc = vertices[c], dd = vertices[d];
+    for (int i = 0; i < 3; i++) {
+      combineCoords[i] = ((1 - ts) * da[i] + ts * db[i] +
+                          (1 - tt) * dc[i] + tt * dd[i]) / 2;
+    }
+    combineData[0] = da;
+    combineData[1] = db;
+    combineData[2] = dc;
+    combineData[3] = dd;
+    combineWeight[0] = (float) (1 - ts) / 2;
+    combineWeight[1] = (float) ts / 2;
+    combineWeight[2] = (float) (1 - tt) / 2;
+    combineWeight[3] = (float) tt / 2;
+    combineOut[0] = null;
+    callback.combine(combineCoords.clone(), combineData, combineWeight, combineOut);
+    double[] data = (double[]) combineOut[0];
+    if (data == null) {
+      data = combineCoords.clone();
+    }
+
+    if (px.length <= vertexCount) {
+      expandVertices(vertexCount + 1);
+    }
+    same[vertexCount] = vertexCount;
+    addVertex(data);
+    return vertexCount - 1;
+  }
+
+
+  protected void addSplit(int s, int v, double t) {
+    if (splitCount == splitSeg.length) {
+      splitSeg = Arrays.copyOf(splitSeg, splitCount << 1);
+      splitVertex = Arrays.copyOf(splitVertex, splitCount << 1);
+      splitKey = Arrays.copyOf(splitKey, splitCount << 1);
+    }
+    splitSeg[splitCount] = s;
+    splitVertex[splitCount] = v;
+    // sorts by segment, then by how far along it
+    splitKey[splitCount] = s + t;
+    splitCount++;
+  }
+
+
+  protected double orient(int a, int b, int c) {
+    return (px[b] - px[a]) * (py[c] - py[a]) - (py[b] - py[a]) * (px[c] - px[a]);
+  }
+
+
+  // -----------------------------------------------------------------
+  //
+  // Faces and their winding numbers
+
+
+  /**
+   * Cut the segments, merge the pieces that run over each other into
+   * edges, and link the half edges around each face, keeping the face
+   * on the left: bounded faces go around counterclockwise, and each
+   * connected piece of the graph gets one clockwise outline as well.
+   */
+  protected void buildGraph() {
+    int[] order = new int[splitCount];
+    for (int i = 0; i < splitCount; i++) {
+      order[i] = i;
+    }
+    sort(order, 0, splitCount, splitKey);
+
+    HashMap<Long, Integer> edges = new HashMap<>();
+    int[] edgeLow = new int[segCount + splitCount];
+    int[] edgeHigh = new int[segCount + splitCount];
+    int[] winding = new int[segCount + splitCount];
+    int edgeCount = 0;
+    int next = 0;
+    for (int s = 0; s < segCount; s++) {
+      int from = find(segStart[s]);
+      int last = find(segEnd[s]);
+      while (true) {
+        int to;
+        if (next < splitCount && splitSeg[order[next]] == s) {
+          to = find(splitVertex[order[next++]]);
+        } else {
+          to = last;
+        }
+        if (from != to) {
+          int low = Math.min(from, to);
+          int high = Math.max(from, to);
+          Long key = ((long) low << 32) | high;
+          Integer e = edges.get(key);
+          if (e == null) {
+            e = edgeCount++;
+            edges.put(key, e);
+            edgeLow[e] = low;
+            edgeHigh[e] = high;
+          }
+          winding[e] += (from == low) ? 1 : -1;
+        }
+        if (to == last && (next == splitCount || splitSeg[order[next]] != s)) break;
+        from = to;
+      }
+    }
+
+    // edges that the contours go along as many times each way don't
+    // change the winding, so they don't separate anything
+    int count = 0;
+    for (int e = 0; e < edgeCount; e++) {
+      if (winding[e] != 0) {
+        edgeLow[count] = edgeLow[e];
+        edgeHigh[count] = edgeHigh[e];
+        winding[count] = winding[e];
+        count++;
+      }
+    }
+    edgeCount = count;
+    edgeWinding = winding;
+
+    int halfCount = 2 * edgeCount;
+    halfFrom = new int[halfCount];
+    for (int e = 0; e < edgeCount; e++) {
+      halfFrom[2 * e] = edgeLow[e];
+      halfFrom[2 * e + 1] = edgeHigh[e];
+    }
+
+    // the half edges leaving each vertex, counterclockwise
+    int[] first = new int[vertexCount + 1];
+    for (int h = 0; h < halfCount; h++) {
+      first[halfFrom[h] + 1]++;
+    }
+    for (int v = 0; v < vertexCount; v++) {
+      first[v + 1] += first[v];
+    }
+    int[] around = new int[halfCount];
+    int[] fill = Arrays.copyOf(first, vertexCount);
+    double[] angle = new double[halfCount];
+    for (int h = 0; h < halfCount; h++) {
+      int from = halfFrom[h];
+      int to = halfFrom[h ^ 1];
+      angle[h] = Math.atan2(py[to] - py[from], px[to] - px[from]);
+      around[fill[from]++] = h;
+    }
+    int[] position = new int[halfCount];
+    for (int v = 0; v < vertexCount; v++) {
+      sort(around, first[v], first[v + 1], angle);
+      for (int i = first[v]; i < first[v + 1]; i++) {
+        position[around[i]] = i;
+      }
+    }
+
+    // after arriving at a vertex, turn as far right as possible
+    halfNext = new int[halfCount];
+    for (int h = 0; h < halfCount; h++) {
+      int to = halfFrom[h ^ 1];
+      int start = first[to];
+      int size = first[to + 1] - start;
+      int i = position[h ^ 1] - start;
+      halfNext[h] = around[start + (i + size - 1) % size];
+    }
+
+    halfCycle = new int[halfCount];
+    Arrays.fill(halfCycle, -1);
+    cycleFirst = new int[halfCount];
+    cycleArea = new double[halfCount];
+    cycleCount = 0;
+    for (int h = 0; h < halfCount; h++) {
+      if (halfCycle[h] != -1) continue;
+      double sum = 0;
+      int g = h;
+      do {
+        halfCycle[g] = cycleCount;
+        int a = halfFrom[g];
+        int b = halfFrom[g ^ 1];
+        sum += px[a] * py[b] - px[b] * py[a];
+        g = halfNext[g];
+      } while (g != h);
+      cycleFirst[cycleCount] = h;
+      cycleArea[cycleCount] = sum / 2;
+      cycleCount++;
+    }
+  }
+
+
+  /**
+   * Work out the winding number of every face, one connected piece at a
+   * time, biggest first, so that whatever a piece sits inside is already
+   * known. Then clip the faces that the winding rule fills, with the
+   * outlines of the pieces inside them as holes.
+   */
+  protected void fillFaces() {
+    // each connected piece's outline is its most clockwise cycle
+    int[] piece = new int[vertexCount];
+    for (int v = 0; v < vertexCount; v++) {
+      piece[v] = v;
+    }
+    for (int h = 0; h < halfFrom.length; h += 2) {
+      int a = root(piece, halfFrom[h]);
+      int b = root(piece, halfFrom[h + 1]);
+      if (a != b) piece[a] = b;
+    }
+    int[] outline = new int[vertexCount];
+    Arrays.fill(outline, -1);
+    int outlineCount = 0;
+    for (int c = 0; c < cycleCount; c++) {
+      int p = root(piece, halfFrom[cycleFirst[c]]);
+      if (outline[p] == -1) {
+        outlineCount++;
+        outline[p] = c;
+      } else if (cycleArea[c] < cycleArea[outline[p]]) {
+        outline[p] = c;
+      }
+    }
+    int[] outlines = new int[outlineCount];
+    int n = 0;
+    for (int v = 0; v < vertexCount; v++) {
+      if (outline[v] != -1) outlines[n++] = outline[v];
+    }
+    sort(outlines, 0, outlineCount, cycleArea);
+
+    int[] winding = new int[cycleCount];
+    boolean[] known = new boolean[cycleCount];
+    int[] holeFirst = new int[cycleCount];
+    int[] holeNext = new int[cycleCount];
+    Arrays.fill(holeFirst, -1);
+    int[] faces = new int[cycleCount];
+    int faceCount = 0;
+    int[] queue = new int[cycleCount];
+
+    for (int o : outlines) {
+      int v = halfFrom[cycleFirst[o]];
+      int container = -1;
+      for (int i = 0; i < faceCount; i++) {
+        int f = faces[i];
+        if ((container == -1 || cycleArea[f] < cycleArea[container]) &&
+            contains(f, px[v], py[v])) {
+          container = f;
+        }
+      }
+      if (container != -1) {
+        winding[o] = winding[container];
+        holeNext[o] = holeFirst[container];
+        holeFirst[container] = o;
+      }
+      known[o] = true;
+
+      int head = 0, tail = 0;
+      queue[tail++] = o;
+      while (head < tail) {
+        int c = queue[head++];
+        if (c != o && 0 < cycleArea[c]) {
+          faces[faceCount++] = c;
+        }
+        int h = cycleFirst[c];
+        do {
+          int other = halfCycle[h ^ 1];
+          if (!known[other]) {
+            int w = edgeWinding[h >> 1];
+            winding[other] = winding[c] - ((h & 1) == 0 ? w : -w);
+            known[other] = true;
+            queue[tail++] = other;
+          }
+          h = halfNext[h];
+        } while (h != cycleFirst[c]);
+      }
+    }
+
+    for (int i = 0; i < faceCount; i++) {
+      int f = faces[i];
+      int w = winding[f];
+      boolean filled = (windingRule == WINDING_ODD) ? (w & 1) != 0 : w != 0;
+      if (filled) {
+        slotCount = 0;
+        int ring = addCycle(f);
+        // holes to the right go first, so that no bridge can cross a
+        // hole that hasn't been joined in yet
+        int holeCount = 0;
+        for (int hole = holeFirst[f]; hole != -1; hole = holeNext[hole]) {
+          holeCount++;
+        }
+        int[] holes = new int[holeCount];
+        double[] left = new double[holeCount];
+        int[] order = new int[holeCount];
+        holeCount = 0;
+        for (int hole = holeFirst[f]; hole != -1; hole = holeNext[hole]) {
+          int m = rightmost(addCycle(hole));
+          holes[holeCount] = m;
+          left[holeCount] = -px[slotVertex[m]];
+          order[holeCount] = holeCount;
+          holeCount++;
+        }
+        sort(order, 0, holeCount, left);
+        for (int k = 0; k < holeCount; k++) {
+          addHole(ring, holes[order[k]]);
+        }
+        clip(ring, slotCount);
+      }
+    }
+  }
+
+
+  static private int root(int[] parent, int i) {
+    while (parent[i] != i) {
+      parent[i] = parent[parent[i]];
+      i = parent[i];
+    }
+    return i;
+  }
+
+
+  /** Whether the point is inside the cycle, by counting crossings. */
+  protected boolean contains(int cycle, double x, double y) {
+    boolean inside = false;
+    int h = cycleFirst[cycle];
+    do {
+      int a = halfFrom[h];
+      int b = halfFrom[h ^ 1];
+      if ((py[a] > y) != (py[b] > y) &&
+          x < px[a] + (y - py[a]) * (px[b] - px[a]) / (py[b] - py[a])) {
+        inside = !inside;
+      }
+      h = halfNext[h];
+    } while (h != cycleFirst[cycle]);
+    return inside;
+  }
+
+
+  // -----------------------------------------------------------------
+  //
+  // Ear clipping
+
+
+  protected void clipContour() {
+    slotCount = 0;
+    int start = contourStart[0];
+    int stop = contourStop(0);
+    int first = -1;
+    int last = -1;
+    boolean backwards = contourArea(0) < 0;
+    for (int i = start; i < stop; i++) {
+      last = addSlot(backwards ? stop - 1 - (i - start) : i, last);
+      if (first == -1) first = last;
+    }
+    closeRing(first, last);
+    clip(first, slotCount);
+  }
+
+
+  protected int addCycle(int cycle) {
+    int first = -1;
+    int last = -1;
+    int h = cycleFirst[cycle];
+    do {
+      last = addSlot(halfFrom[h], last);
+      if (first == -1) first = last;
+      h = halfNext[h];
+    } while (h != cycleFirst[cycle]);
+    closeRing(first, last);
+    return first;
+  }
+
+
+  protected int addSlot(int vertex, int last) {
+    if (slotCount == slotVertex.length) {
+      int size = slotCount << 1;
+      slotVertex = Arrays.copyOf(slotVertex, size);
+      slotPrev = Arrays.copyOf(slotPrev, size);
+      slotNext = Arrays.copyOf(slotNext, size);
+      slotGone = Arrays.copyOf(slotGone, size);
+      slotReflex = Arrays.copyOf(slotReflex, size);
+      reflex = Arrays.copyOf(reflex, size);
+    }
+    int s = slotCount++;
+    slotVertex[s] = vertex;
+    slotGone[s] = false;
+    slotReflex[s] = false;
+    slotPrev[s] = last;
+    if (last != -1) {
+      slotNext[last] = s;
+    }
+    return s;
+  }
+
+
+  protected void closeRing(int first, int last) {
+    slotNext[last] = first;
+    slotPrev[first] = last;
+  }
+
+
+  protected int rightmost(int ring) {
+    int m = ring;
+    for (int s = slotNext[ring]; s != ring; s = slotNext[s]) {
+      if (px[slotVertex[s]] > px[slotVertex[m]]) m = s;
+    }
+    return m;
+  }
+
+
+  /**
+   * Join a hole (going clockwise) to the ring around it (counterclockwise)
+   * with a bridge from the hole's rightmost point, m, to a point of the ring
+   * that it can see, found by looking right along x (David Eberly's
+   * method). The bridge is walked twice, once each way.
+   */
+  protected void addHole(int ring, int m) {
+    int mv = slotVertex[m];
+    double mx = px[mv], my = py[mv];
+
+    // the nearest edge to the right, and its end that's furthest right
+    double hitX = Double.MAX_VALUE;
+    int p = -1;
+    int s = ring;
+    do {
+      int t = slotNext[s];
+      double sy = py[slotVertex[s]], ty = py[slotVertex[t]];
+      if (sy != ty && (sy <= my) == (my <= ty)) {
+        double sx = px[slotVertex[s]], tx = px[slotVertex[t]];
+        double x = sx + (my - sy) * (tx - sx) / (ty - sy);
+        if (mx <= x && x < hitX) {
+          hitX = x;
+          p = (sx > tx) ? s : t;
+        }
+      }
+      s = t;
+    } while (s != ring);
+    if (p == -1) return;  // can't happen unless the numbers went wrong
+
+    // a point of the ring inside the triangle from m to the edge and up
+    // to p would block the view, then take the one closest to the ray
+    double ax = mx, ay = my, bx = hitX, by = my;
+    double cx = px[slotVertex[p]], cy = py[slotVertex[p]];
+    double best = Double.MAX_VALUE;
+    int bridge = p;
+    s = ring;
+    do {
+      int v = slotVertex[s];
+      double x = px[v], y = py[v];
+      if (mx < x && !(x == cx && y == cy) &&
+          inTriangle(ax, ay, bx, by, cx, cy, x, y) && locallyInside(s, mv)) {
+        double tan = Math.abs(y - my) / (x - mx);
+        if (tan < best) {
+          best = tan;
+          bridge = s;
+        }
+      }
+      s = slotNext[s];
+    } while (s != ring);
+
+    // where the ring already goes through that point more than once,
+    // use the pass that m is on the inside of
+    int bv = slotVertex[bridge];
+    s = ring;
+    do {
+      int v = slotVertex[s];
+      if (px[v] == px[bv] && py[v] == py[bv] && locallyInside(s, mv)) {
+        bridge = s;
+        break;
+      }
+      s = slotNext[s];
+    } while (s != ring);
+
+    int m2 = addSlot(mv, -1);
+    int b2 = addSlot(slotVertex[bridge], -1);
+    int bridgeNext = slotNext[bridge];
+    int holePrev = slotPrev[m];
+    slotNext[bridge] = m;
+    slotPrev[m] = bridge;
+    slotNext[holePrev] = m2;
+    slotPrev[m2] = holePrev;
+    slotNext[m2] = b2;
+    slotPrev[b2] = m2;
+    slotNext[b2] = bridgeNext;
+    slotPrev[bridgeNext] = b2;
+  }
+
+
+  /** Whether vertex v is on the inside of the corner that slot s makes. */
+  protected boolean locallyInside(int s, int v) {
+    int a = slotVertex[slotPrev[s]];
+    int b = slotVertex[s];
+    int c = slotVertex[slotNext[s]];
+    if (orient(a, b, c) >= 0) {
+      return orient(a, b, v) >= 0 && orient(b, c, v) >= 0;
+    } else {
+      return orient(a, b, v) >= 0 || orient(b, c, v) >= 0;
+    }
+  }
+
+
+  /**
+   * Clip ears off the counterclockwise ring until one triangle is left.
+   * Only the reflex corners can get in the way of an ear, so those are
+   * the only ones checked. If a whole lap goes by without an ear, which
+   * only happens when rounding has left the ring touching itself, the
+   * next convex corner is clipped anyway, so it always finishes.
+   */
+  protected void clip(int s, int count) {
+    reflexCount = 0;
+    for (int i = 0; i < count; i++) {
+      checkReflex(s);
+      s = slotNext[s];
+    }
+
+    int misses = 0;
+    while (count > 3) {
+      int p = slotPrev[s];
+      int n = slotNext[s];
+      double turn = orient(slotVertex[p], slotVertex[s], slotVertex[n]);
+      boolean ear = 0 < turn && isEar(p, s, n);
+      if (ear || turn == 0 || (count < misses && 0 < turn) || 2 * count < misses) {
+        if (0 < turn) {
+          addTriangle(p, s, n);
+        }
+        slotGone[s] = true;
+        slotNext[p] = n;
+        slotPrev[n] = p;
+        count--;
+        misses = 0;
+        checkReflex(p);
+        checkReflex(n);
+      } else {
+        misses++;
+      }
+      s = n;
+    }
+    int p = slotPrev[s];
+    int n = slotNext[s];
+    if (0 < orient(slotVertex[p], slotVertex[s], slotVertex[n])) {
+      addTriangle(p, s, n);
+    }
+  }
+
+
+  protected void checkReflex(int s) {
+    if (!slotReflex[s] && !convex(s)) {
+      slotReflex[s] = true;
+      reflex[reflexCount++] = s;
+    }
+  }
+
+
+  protected boolean convex(int s) {
+    return 0 < orient(slotVertex[slotPrev[s]], slotVertex[s], slotVertex[slotNext[s]]);
+  }
+
+
+  protected boolean isEar(int p, int s, int n) {
+    int a = slotVertex[p], b = slotVertex[s], c = slotVertex[n];
+    double ax = px[a], ay = py[a];
+    double bx = px[b], by = py[b];
+    double cx = px[c], cy = py[c];
+    double minX = Math.min(ax, Math.min(bx, cx));
+    double maxX = Math.max(ax, Math.max(bx, cx));
+    double minY = Math.min(ay, Math.min(by, cy));
+    double maxY = Math.max(ay, Math.max(by, cy));
+    int i = 0;
+    while (i < reflexCount) {
+      int r = reflex[i];
+      int v = slotVertex[r];
+      double x = px[v], y = py[v];
+      if (x < minX || maxX < x || y < minY || maxY < y) {
+        i++;
+        continue;
+      }
+      if (slotGone[r] || convex(r)) {
+        // reflex corners only ever become convex, so drop it for good
+        slotReflex[r] = false;
+        reflex[i] = reflex[--reflexCount];
+        continue;
+      }
+      if (!(x == ax && y == ay) && !(x == bx && y == by) && !(x == cx && y == cy) &&
+          inTriangle(ax, ay, bx, by, cx, cy, x, y)) {
+        return false;
+      }
+      i++;
+    }
+    return true;
+  }
+
+
+  /** Inside or on the edge of the triangle, whichever way it goes around. */
+  static protected boolean inTriangle(double ax, double ay, double bx, double by,
+                                      double cx, double cy, double x, double y) {
+    double d1 = (bx - ax) * (y - ay) - (by - ay) * (x - ax);
+    double d2 = (cx - bx) * (y - by) - (cy - by) * (x - bx);
+    double d3 = (ax - cx) * (y - cy) - (ay - cy) * (x - cx);
+    boolean negative = d1 < 0 || d2 < 0 || d3 < 0;
+    boolean positive = d1 > 0 || d2 > 0 || d3 > 0;
+    return !(negative && positive);
+  }
+
+
+  protected void addTriangle(int p, int s, int n) {
+    if (indexCount + 3 > indices.length) {
+      indices = Arrays.copyOf(indices, indices.length << 1);
+    }
+    indices[indexCount++] = slotVertex[p];
+    if (flip) {
+      indices[indexCount++] = slotVertex[n];
+      indices[indexCount++] = slotVertex[s];
+    } else {
+      indices[indexCount++] = slotVertex[s];
+      indices[indexCount++] = slotVertex[n];
+    }
+  }
+
+
+  /** Sort items from start to stop by key[item]. */
+  static protected void sort(int[] items, int start, int stop, double[] key) {
+    while (stop - start > 16) {
+      int mid = (start + stop) >>> 1;
+      double pivot = median(key[items[start]], key[items[mid]], key[items[stop - 1]]);
+      int i = start, j = stop - 1;
+      while (i <= j) {
+        while (key[items[i]] < pivot) i++;
+        while (key[items[j]] > pivot) j--;
+        if (i <= j) {
+          int temp = items[i];
+          items[i] = items[j];
+          items[j] = temp;
+          i++;
+          j--;
+        }
+      }
+      // recurse into the smaller side, loop on the bigger one
+      if (j - start < stop - i) {
+        sort(items, start, j + 1, key);
+        start = i;
+      } else {
+        sort(items, i, stop, key);
+        stop = j + 1;
+      }
+    }
+    for (int i = start + 1; i < stop; i++) {
+      int item = items[i];
+      double k = key[item];
+      int j = i - 1;
+      while (j >= start && key[items[j]] > k) {
+        items[j + 1] = items[j];
+        j--;
+      }
+      items[j + 1] = item;
+    }
+  }
+
+
+  static private double median(double a, double b, double c) {
+    return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+  }
+}
@@ -367,6 +367,65 @@ public class Texture implements PConstants {
   }
 
 
+  /**
+   * Copies the rectangle x, y, w, h out of an array that holds the whole
+   * image (width * height pixels), instead of one with just the w * h
+   * pixels being set. Only that part of the texture is uploaded.
+   */
+  public void setRegion(int[] pixels, int x, int y, int w, int h, int format) {
+    if (pixels == null || pixels.length < width * height) {
+      PGraphics.showWarning("The pixel array should have a length of at " +
+                            "least " + width * height);
+      return;
+    }
+    if (invertedX || invertedY ||
+        (x == 0 && y == 0 && w == width && h == height)) {
+      // the flips work on the whole image
+      set(pixels, 0, 0, width, height, format);
+      return;
+    }
+    x = PApplet.max(0, x);
+    y = PApplet.max(0, y);
+    w = PApplet.min(width, x + w) - x;
+    h = PApplet.min(height, y + h) - y;
+    if (w <= 0 || h <= 0) {
+      return;
+    }
+
+    boolean enabledTex = false;
+    if (!pgl.texturingIsEnabled(glTarget)) {
+      pgl.enableTexturing(glTarget);
+      enabledTex = true;
+    }
+    pgl.bindTexture(glTarget, glName);
+
+    loadPixels(w * h);
+    for (int row = 0; row < h; row++) {
+      System.arraycopy(pixels, (y + row) * width + x, rgbaPixels, row * w, w);
+    }
+    convertToRGBA(rgbaPixels, format, w, h);
+    updatePixelBuffer(rgbaPixels, w * h);
+    pgl.texSubImage2D(glTarget, 0, x, y, w, h, PGL.RGBA, PGL.UNSIGNED_BYTE,
+                      pixelBuffer);
+    fillEdges(x, y, w, h);
+
+    if (usingMipmaps) {
+      if (PGraphicsOpenGL.autoMipmapGenSupported) {
+        pgl.generateMipmap(glTarget);
+      } else {
+        manualMipmap();
+      }
+    }
+
+    pgl.bindTexture(glTarget, 0);
+    if (enabledTex) {
+      pgl.disableTexturing(glTarget);
+    }
+
+    updateTexels(x, y, w, h);
+  }
+
+
   ////////////////////////////////////////////////////////////
 
   // Native set methods
@@ -795,6 +854,16 @@ public class Texture implements PConstants {
   }
 
 
+  // Copies only the first count pixels, for updating part of the texture.
+  protected void updatePixelBuffer(int[] pixels, int count) {
+    if (pixelBuffer == null || pixelBuffer.capacity() < count) {
+      pixelBuffer = PGL.allocateIntBuffer(count);
+    }
+    PGL.updateIntBuffer(pixelBuffer, pixels, 0, count);
+    pixBufUpdateCount++;
+  }
+
+
   protected void manualMipmap() {
     // TODO: finish manual mipmap generation,
     // https://github.com/processing/processing/issues/3335
@@ -999,18 +1068,19 @@ public class Texture implements PConstants {
    * @param h int
    */
   protected void convertToRGBA(int[] pixels, int format, int w, int h)  {
+    int count = PApplet.min(pixels.length, w * h);
     if (PGL.BIG_ENDIAN)  {
       switch (format) {
       case ALPHA:
         // Converting from xxxA into RGBA. RGB is set to white
         // (0xFFFFFF, i.e.: (255, 255, 255))
-        for (int i = 0; i< pixels.length; i++) {
+        for (int i = 0; i < count; i++) {
           rgbaPixels[i] = 0xFFFFFF00 | pixels[i];
         }
         break;
       case RGB:
         // Converting xRGB into RGBA. A is set to 0xFF (255, full opacity).
-        for (int i = 0; i< pixels.length; i++) {
+        for (int i = 0; i < count; i++) {
           int pixel = pixels[i];
           rgbaPixels[i] = (pixel << 8) | 0xFF;
         }
@@ -1018,7 +1088,7 @@ public class Texture implements PConstants {
       case ARGB:
         // Converting ARGB into RGBA. Shifting RGB to 8 bits to the left,
         // and bringing A to the first byte.
-        for (int i = 0; i< pixels.length; i++) {
+        for (int i = 0; i < count; i++) {
           int pixel = pixels[i];
           rgbaPixels[i] = (pixel << 8) | ((pixel >> 24) & 0xFF);
         }
@@ -1033,14 +1103,14 @@ public class Texture implements PConstants {
       switch (format)  {
       case ALPHA:
         // Converting xxxA into ARGB, with RGB set to white.
-        for (int i = 0; i< pixels.length; i++) {
+        for (int i = 0; i < count; i++) {
           rgbaPixels[i] = (pixels[i] << 24) | 0x00FFFFFF;
         }
         break;
       case RGB:
         // We need to convert xRGB into ABGR,
         // so R and B must be swapped, and the x just made 0xFF.
-        for (int i = 0; i< pixels.length; i++) {
+        for (int i = 0; i < count; i++) {
           int pixel = pixels[i];
           rgbaPixels[i] = 0xFF000000 |
                           ((pixel & 0xFF) << 16) | ((pixel & 0xFF0000) >> 16) |
@@ -1050,7 +1120,7 @@ public class Texture implements PConstants {
       case ARGB:
         // We need to convert ARGB into ABGR,
         // so R and B must be swapped, A and G just brought back in.
-        for (int i = 0; i < pixels.length; i++) {
+        for (int i = 0; i < count; i++) {
           int pixel = pixels[i];
           rgbaPixels[i] = ((pixel & 0xFF) << 16) | ((pixel & 0xFF0000) >> 16) |
                           (pixel & 0xFF00FF00);
@@ -36,6 +36,7 @@ public class VertexBuffer {
   int elementSize;
   int ncoords;
   boolean index;
+  int streamGeneration;             // Storage allocated by a BufferRing
 
   protected PGL pgl;                // The interface between Processing and OpenGL.
   protected int context;            // The context that created this texture.
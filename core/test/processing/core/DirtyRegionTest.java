@@ -0,0 +1,150 @@
+package processing.core;
+
+import org.junit.Test;
+import processing.awt.PGraphicsJava2D;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DirtyRegionTest implements PConstants {
+
+    @Test
+    public void farApartStaySeparate() {
+        DirtyRegion region = new DirtyRegion();
+        region.add(0, 0, 10, 10);
+        region.add(3000, 2000, 3010, 2010);
+        assertEquals(2, region.count);
+        assertEquals(200, region.area());
+    }
+
+    @Test
+    public void closeTogetherMerge() {
+        DirtyRegion region = new DirtyRegion();
+        region.add(0, 0, 10, 10);
+        region.add(5, 5, 20, 20);
+        region.add(20, 0, 30, 10);
+        assertEquals(1, region.count);
+        assertArrayEquals(new int[] { 0, 0, 30, 20 }, Arrays.copyOf(region.rects, 4));
+
+        // inside what's already there changes nothing
+        region.add(1, 1, 2, 2);
+        assertEquals(1, region.count);
+        assertEquals(600, region.area());
+
+        // empty rectangles are ignored
+        region.add(50, 50, 50, 60);
+        assertEquals(1, region.count);
+    }
+
+    @Test
+    public void listIsBoundedAndCoversEverything() {
+        Random random = new Random(17);
+        for (int round = 0; round < 50; round++) {
+            DirtyRegion region = new DirtyRegion();
+            int width = 2000, height = 1500;
+            boolean[] added = new boolean[width * height];
+            for (int i = 0; i < 40; i++) {
+                int w = 1 + random.nextInt(60);
+                int h = 1 + random.nextInt(60);
+                int x = random.nextInt(width - w);
+                int y = random.nextInt(height - h);
+                region.add(x, y, x + w, y + h);
+                mark(added, width, x, y, x + w, y + h);
+                assertTrue(region.count <= DirtyRegion.MAX);
+            }
+            boolean[] covered = new boolean[width * height];
+            for (int i = 0; i < region.count; i++) {
+                int o = i * 4;
+                mark(covered, width, region.rects[o], region.rects[o+1],
+                     region.rects[o+2], region.rects[o+3]);
+            }
+            for (int i = 0; i < added.length; i++) {
+                if (added[i]) {
+                    assertTrue("pixel " + i + " lost", covered[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void imageKeepsRectangles() {
+        PImage image = new PImage(3840, 2160, RGB);
+        assertEquals(0, image.getModifiedCount());
+        image.updatePixels(10, 10, 4, 4);
+        image.updatePixels(3800, 2100, 100, 100);  // clipped to the image
+        assertEquals(2, image.getModifiedCount());
+        int[] rects = image.getModifiedRects();
+        assertArrayEquals(new int[] { 10, 10, 14, 14, 3800, 2100, 3840, 2160 },
+                          Arrays.copyOf(rects, 8));
+        // the bounds still cover both
+        assertEquals(10, image.getModifiedX1());
+        assertEquals(3840, image.getModifiedX2());
+
+        image.setModified(false);
+        assertEquals(0, image.getModifiedCount());
+        image.updatePixels(20, 20, 1, 1);
+        assertEquals(1, image.getModifiedCount());
+        assertEquals(20, image.getModifiedRects()[0]);
+
+        // marking the whole image isn't forgotten by a later small update
+        image.setModified();
+        image.updatePixels(5, 5, 1, 1);
+        assertEquals(1, image.getModifiedCount());
+        assertArrayEquals(new int[] { 0, 0, 3840, 2160 },
+                          Arrays.copyOf(image.getModifiedRects(), 4));
+    }
+
+    @Test
+    public void java2DCopiesOnlyChanges() {
+        PGraphicsJava2D pg = new PGraphicsJava2D();
+        pg.setParent(new PApplet());
+        pg.setPrimary(false);
+        pg.setSize(64, 64);
+        pg.beginDraw();
+        pg.background(0);
+
+        PImage image = new PImage(64, 64, RGB);
+        Arrays.fill(image.pixels, 0xffff0000);
+        pg.image(image, 0, 0);
+        assertFalse(image.isModified());
+
+        // change a pixel outside of the updated region, which should stay
+        // as it was in the cache, and one inside it, which should not
+        image.pixels[0] = 0xff0000ff;
+        image.pixels[40 * 64 + 40] = 0xff00ff00;
+        image.updatePixels(40, 40, 1, 1);
+        pg.image(image, 0, 0);
+        pg.endDraw();
+        pg.loadPixels();
+        assertEquals(0xffff0000, pg.pixels[0]);
+        assertEquals(0xff00ff00, pg.pixels[40 * 64 + 40]);
+
+        // a new tint means the whole image has to be copied again
+        pg.beginDraw();
+        pg.tint(255, 0, 0);
+        pg.image(image, 0, 0);
+        pg.endDraw();
+        pg.loadPixels();
+        assertEquals(0xff000000, pg.pixels[0]);
+        assertEquals(0xfffe0000, pg.pixels[20 * 64 + 60]);  // 255 * 255 >> 8
+
+        // updating part of the renderer's own pixels
+        pg.beginDraw();
+        pg.loadPixels();
+        Arrays.fill(pg.pixels, 0xff000000);
+        pg.pixels[63 * 64 + 63] = 0xffffffff;
+        pg.updatePixels(60, 60, 4, 4);
+        pg.endDraw();
+        pg.loadPixels();
+        assertEquals(0xffffffff, pg.pixels[63 * 64 + 63]);
+        assertEquals(0xfffe0000, pg.pixels[20 * 64 + 60]);  // left alone
+    }
+
+    static void mark(boolean[] mask, int width, int x1, int y1, int x2, int y2) {
+        for (int y = y1; y < y2; y++) {
+            Arrays.fill(mask, y * width + x1, y * width + x2, true);
+        }
+    }
+}
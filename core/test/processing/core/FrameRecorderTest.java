@@ -0,0 +1,212 @@
+package processing.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class FrameRecorderTest implements PConstants {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Records the frames it's given instead of writing them. */
+    static class FakeRecorder extends FrameRecorder {
+        final List<String> written = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate;
+
+        FakeRecorder(int queueSize, CountDownLatch gate) {
+            super(new PApplet(), queueSize, 1);
+            this.gate = gate;
+        }
+
+        @Override
+        protected void encode(int[] pixels, int width, int height, int format,
+                              String path, int compression) throws IOException {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            written.add(new File(path).getName());
+        }
+    }
+
+    @Test
+    public void pngRoundTrip() throws IOException {
+        // large enough to be deflated in several chunks
+        for (int format : new int[] { RGB, ARGB, ALPHA }) {
+            PImage image = image(701, 409, format);
+            for (int level : new int[] { 0, 1, 6, 9 }) {
+                for (int threads : new int[] { 1, 4 }) {
+                    byte[] png = encode(image, level, threads);
+                    assertPixels(image, ImageIO.read(new ByteArrayInputStream(png)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void pngSameBytesOnAnyThreadCount() throws IOException {
+        PImage image = image(640, 480, ARGB);
+        assertArrayEquals(encode(image, 6, 1), encode(image, 6, 4));
+    }
+
+    @Test
+    public void pngCompressionLevels() throws IOException {
+        // smooth gradients, which is what the row filters are for
+        PImage image = new PImage(512, 512, RGB);
+        for (int y = 0; y < 512; y++) {
+            for (int x = 0; x < 512; x++) {
+                image.pixels[y * 512 + x] = 0xff000000 | (x / 2) << 16 | (y / 2) << 8 | ((x + y) / 4);
+            }
+        }
+        int stored = encode(image, 0, 1).length;
+        int fast = encode(image, 1, 1).length;
+        assertTrue(stored > 512 * 512 * 3);
+        assertTrue(fast < stored / 10);
+    }
+
+    @Test
+    public void savesFiles() throws IOException {
+        PImage image = image(64, 48, RGB);
+        FrameRecorder recorder = new FrameRecorder(new PApplet(), 4, 2);
+        for (String ext : new String[] { "png", "tga", "tif" }) {
+            assertTrue(recorder.save(image, new File(folder.getRoot(), "frame." + ext).getAbsolutePath()));
+        }
+        recorder.flush();
+        assertEquals(3, recorder.saved());
+        assertEquals(0, recorder.queued());
+        assertPixels(image, ImageIO.read(new File(folder.getRoot(), "frame.png")));
+        assertTrue(new File(folder.getRoot(), "frame.tga").length() > 0);
+        assertTrue(new File(folder.getRoot(), "frame.tif").length() > 0);
+        recorder.dispose();
+        assertFalse(recorder.save(image, new File(folder.getRoot(), "late.png").getAbsolutePath()));
+    }
+
+    @Test
+    public void dropNewest() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        FakeRecorder recorder = new FakeRecorder(2, gate);
+        recorder.policy(FrameRecorder.DROP_NEWEST);
+        PImage image = image(8, 8, RGB);
+        assertTrue(recorder.save(image, path(0)));
+        recorder.entered.await();  // frame 0 is being written
+        assertTrue(recorder.save(image, path(1)));
+        assertTrue(recorder.save(image, path(2)));
+        assertFalse(recorder.save(image, path(3)));
+        assertEquals(2, recorder.queued());
+        assertEquals(1, recorder.dropped());
+        gate.countDown();
+        recorder.flush();
+        assertEquals(List.of("0.png", "1.png", "2.png"), recorder.written);
+        recorder.dispose();
+    }
+
+    @Test
+    public void dropOldest() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        FakeRecorder recorder = new FakeRecorder(2, gate);
+        recorder.policy(FrameRecorder.DROP_OLDEST);
+        PImage image = image(8, 8, RGB);
+        recorder.save(image, path(0));
+        recorder.entered.await();
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(recorder.save(image, path(i)));
+        }
+        assertEquals(2, recorder.dropped());
+        gate.countDown();
+        recorder.flush();
+        assertEquals(List.of("0.png", "3.png", "4.png"), recorder.written);
+        assertEquals(3, recorder.saved());
+        recorder.dispose();
+    }
+
+    @Test
+    public void blockWaitsForRoom() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        FakeRecorder recorder = new FakeRecorder(1, gate);
+        PImage image = image(8, 8, RGB);
+        recorder.save(image, path(0));
+        recorder.entered.await();
+        recorder.save(image, path(1));  // fills the queue
+
+        Thread producer = new Thread(() -> recorder.save(image, path(2)));
+        producer.start();
+        producer.join(200);
+        assertTrue(producer.isAlive());  // held up until there's room
+        gate.countDown();
+        producer.join();
+        recorder.flush();
+        assertEquals(List.of("0.png", "1.png", "2.png"), recorder.written);
+        assertEquals(0, recorder.dropped());
+        recorder.dispose();
+    }
+
+    private String path(int frame) {
+        return new File(folder.getRoot(), frame + ".png").getAbsolutePath();
+    }
+
+    private static byte[] encode(PImage image, int level, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(() -> {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                PNGEncoder.write(output, image.pixels, image.pixelWidth,
+                                 image.pixelHeight, image.format, level);
+                return output.toByteArray();
+            }).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertPixels(PImage image, BufferedImage read) {
+        assertEquals(image.pixelWidth, read.getWidth());
+        assertEquals(image.pixelHeight, read.getHeight());
+        for (int y = 0; y < read.getHeight(); y++) {
+            for (int x = 0; x < read.getWidth(); x++) {
+                int expected = image.pixels[y * image.pixelWidth + x];
+                if (image.format == ALPHA) {
+                    // getRGB() would convert the gray to sRGB
+                    assertEquals(expected & 0xff, read.getRaster().getSample(x, y, 0));
+                    continue;
+                }
+                int actual = read.getRGB(x, y);
+                if (image.format == RGB) {
+                    assertEquals(expected | 0xff000000, actual);
+                } else {
+                    assertEquals(expected, actual);
+                }
+            }
+        }
+    }
+
+    private static PImage image(int width, int height, int format) {
+        PImage image = new PImage(width, height, format);
+        Random random = new Random(15);
+        for (int i = 0; i < image.pixels.length; i++) {
+            // mostly smooth, with some noise, so every filter gets picked
+            int c = (i % width) * 0x010203 + ((i / width) << 8);
+            if (random.nextInt(8) == 0) c = random.nextInt();
+            image.pixels[i] = (format == ALPHA) ? (c & 0xff) : c;
+        }
+        return image;
+    }
+}
@@ -0,0 +1,99 @@
+package processing.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class PImageBlendTest implements PConstants {
+
+    static final int[] MODES = {
+        REPLACE, BLEND, ADD, SUBTRACT, LIGHTEST, DARKEST, DIFFERENCE, EXCLUSION,
+        MULTIPLY, SCREEN, OVERLAY, HARD_LIGHT, SOFT_LIGHT, DODGE, BURN
+    };
+
+    // sx, sy, sw, sh, dx, dy, dw, dh from a 300x200 image into a 320x240 one
+    static final int[][] RECTS = {
+        { 0, 0, 300, 200, 0, 0, 300, 200 },        // unscaled
+        { 10, 20, 150, 90, 40, 30, 150, 90 },      // unscaled, offset
+        { 0, 0, 300, 200, -25, -15, 300, 200 },    // clipped at the top left
+        { 50, 50, 300, 200, 250, 150, 300, 200 },  // clipped at the bottom right
+        { 0, 0, 300, 200, 0, 0, 173, 311 },        // scaled
+        { 30, 10, 77, 55, -20, 5, 390, 260 },      // scaled up and clipped
+    };
+
+    // Arrays.hashCode() of the destination pixels, from the blitter
+    // before it was rewritten, for each of RECTS and MODES
+    static final int[][] HASHES = {
+        { -580995241, -197124972, 234428752, -878142652, -1324832062, 1318809112, 1364573787, -1382061885,
+          -1293241215, 1475617219, -1297704538, 320779912, 1452547080, -990989737, -393403278 },
+        { -1790093330, 641390093, -794682537, -427667370, 526989287, 708156012, 1794944123, 1689385863,
+          -542057411, -912129644, -1905913215, -2132831819, -1603293518, -1836565798, -453367899 },
+        { -1939263777, -1700412647, -1932628682, -266736717, 385744370, -1978941075, 1637326703, 1008766428,
+          -1326853797, -1732718851, 429541099, -1283002831, 1310291458, 115073373, -856271401 },
+        { 64006012, -124933174, -1898054425, 870488027, -50761010, -117951166, 642162195, -836660337,
+          -358054091, 1273553545, -1470317386, 1078996802, -910010213, -784730129, 499256110 },
+        { 1990105474, 1297873548, 1697330258, -1825757330, -1126890748, 1877668814, -1819471354, 1158915544,
+          -98622679, -1273805484, 1456956192, 2088446330, -546030129, -410748423, 2068632111 },
+        { -317627725, 397306040, 1574436426, -125792989, 706806670, -1057922704, 1694755712, -796981130,
+          -1825480441, 1507199892, 1390430837, -1737957520, 1996455581, -1445808429, 1475874928 },
+    };
+    static final int SELF_HASH = -343379243;
+
+    @Test
+    public void blendMatchesOriginal() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            // run inside a pool with more than one thread, so rows are split up
+            pool.submit(() -> {
+                for (int i = 0; i < RECTS.length; i++) {
+                    int[] r = RECTS[i];
+                    for (int j = 0; j < MODES.length; j++) {
+                        PImage dst = image(320, 240, 1);
+                        PImage src = image(300, 200, 2);
+                        dst.blend(src, r[0], r[1], r[2], r[3], r[4], r[5], r[6], r[7], MODES[j]);
+                        assertEquals("rect " + i + ", mode " + MODES[j],
+                                     HASHES[i][j], Arrays.hashCode(dst.pixels));
+                    }
+                }
+            }).join();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void copyWithinImage() {
+        PImage image = image(320, 240, 3);
+        image.copy(0, 0, 100, 100, 50, 50, 100, 100);
+        image.blend(200, 0, 100, 100, 0, 140, 100, 100, MULTIPLY);
+        image.copy(0, 0, 320, 240, 10, 10, 160, 120);
+        assertEquals(SELF_HASH, Arrays.hashCode(image.pixels));
+    }
+
+    @Test
+    public void clippedAway() {
+        PImage dst = image(32, 24, 1);
+        int[] before = dst.pixels.clone();
+        dst.blend(image(30, 20, 2), 0, 0, 30, 20, -40, 0, 30, 20, BLEND);
+        dst.blend(image(30, 20, 2), 0, 0, 30, 20, 0, 40, 30, 20, ADD);
+        assertArrayEquals(before, dst.pixels);
+    }
+
+    /** A mix of transparent, opaque, and partly transparent pixels. */
+    private static PImage image(int w, int h, long seed) {
+        Random random = new Random(seed);
+        PImage image = new PImage(w, h, ARGB);
+        for (int i = 0; i < image.pixels.length; i++) {
+            int c = random.nextInt();
+            int k = random.nextInt(4);
+            if (k == 0) c &= 0x00ffffff;
+            else if (k == 1) c |= 0xff000000;
+            image.pixels[i] = c;
+        }
+        return image;
+    }
+}
@@ -0,0 +1,321 @@
+package processing.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import processing.awt.ShimAWT;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class PImageCodecTest implements PConstants {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static final int[] FORMATS = { RGB, ARGB, ALPHA };
+    static final int[] COMPRESSIONS = { TIFFCodec.NONE, TIFFCodec.LZW, TIFFCodec.PACKBITS };
+
+    @Test
+    public void tiffRoundTrip() throws IOException {
+        for (int format : FORMATS) {
+            // tall enough for several strips
+            PImage image = image(301, 503, format);
+            for (int compression : COMPRESSIONS) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                assertTrue(image.saveTIFF(output, compression));
+                PImage back = PImage.loadTIFF(new ByteArrayInputStream(output.toByteArray()));
+                assertEquals(format == ARGB ? ARGB : RGB, back.format);
+                assertSamePixels(image, back);
+
+                // and ImageIO agrees about what's in the file
+                BufferedImage read = ImageIO.read(new ByteArrayInputStream(output.toByteArray()));
+                assertSamePixels(image, read);
+            }
+        }
+    }
+
+    @Test
+    public void compressionHelpsOnFlatImages() throws IOException {
+        PImage image = new PImage(640, 480, RGB);
+        for (int i = 0; i < image.pixels.length; i++) {
+            image.pixels[i] = 0xff000000 | ((i % 640) / 40) * 0x101010;
+        }
+        int none = tiffSize(image, TIFFCodec.NONE);
+        assertTrue(tiffSize(image, TIFFCodec.LZW) < none / 20);
+        assertTrue(tiffSize(image, TIFFCodec.PACKBITS) < none / 20);
+    }
+
+    @Test
+    public void readsImageIOTiffs() throws IOException {
+        PImage image = image(257, 129, RGB);
+        BufferedImage rgb = new BufferedImage(257, 129, BufferedImage.TYPE_INT_RGB);
+        rgb.setRGB(0, 0, 257, 129, image.pixels, 0, 257);
+        for (String compression : new String[] { null, "LZW", "PackBits" }) {
+            byte[] tiff = writeTIFF(rgb, compression);
+            assertSamePixels(image, PImage.loadTIFF(new ByteArrayInputStream(tiff)));
+        }
+    }
+
+    @Test
+    public void reads16BitTiffs() throws IOException {
+        // 16-bit RGB and gray, rounded to the nearest 8-bit value
+        BufferedImage wide = new BufferedImage(
+            new java.awt.image.ComponentColorModel(
+                java.awt.color.ColorSpace.getInstance(java.awt.color.ColorSpace.CS_sRGB),
+                false, false, java.awt.Transparency.OPAQUE, java.awt.image.DataBuffer.TYPE_USHORT),
+            java.awt.image.Raster.createInterleavedRaster(
+                java.awt.image.DataBuffer.TYPE_USHORT, 64, 32, 3, null),
+            false, null);
+        BufferedImage gray = new BufferedImage(64, 32, BufferedImage.TYPE_USHORT_GRAY);
+        Random random = new Random(16);
+        int[][] values = new int[64 * 32][3];
+        for (int y = 0; y < 32; y++) {
+            for (int x = 0; x < 64; x++) {
+                int[] v = values[y * 64 + x];
+                for (int c = 0; c < 3; c++) {
+                    v[c] = random.nextInt(65536);
+                    wide.getRaster().setSample(x, y, c, v[c]);
+                }
+                gray.getRaster().setSample(x, y, 0, v[0]);
+            }
+        }
+        for (String compression : new String[] { null, "LZW" }) {
+            PImage color = PImage.loadTIFF(new ByteArrayInputStream(writeTIFF(wide, compression)));
+            PImage mono = PImage.loadTIFF(new ByteArrayInputStream(writeTIFF(gray, compression)));
+            for (int i = 0; i < values.length; i++) {
+                int[] v = values[i];
+                int expected = 0xff000000 | round(v[0]) << 16 | round(v[1]) << 8 | round(v[2]);
+                assertEquals(expected, color.pixels[i]);
+                assertEquals(0xff000000 | round(v[0]) * 0x010101, mono.pixels[i]);
+            }
+        }
+    }
+
+    @Test
+    public void readsOldProcessingTiffs() {
+        // what saveTIFF() wrote before it went through TIFFCodec
+        byte[] header = {
+            77, 77, 0, 42, 0, 0, 0, 8, 0, 9, 0, -2, 0, 4, 0, 0, 0, 1, 0, 0,
+            0, 0, 1, 0, 0, 3, 0, 0, 0, 1, 0, 0, 0, 0, 1, 1, 0, 3, 0, 0, 0, 1,
+            0, 0, 0, 0, 1, 2, 0, 3, 0, 0, 0, 3, 0, 0, 0, 122, 1, 6, 0, 3, 0,
+            0, 0, 1, 0, 2, 0, 0, 1, 17, 0, 4, 0, 0, 0, 1, 0, 0, 3, 0, 1, 21,
+            0, 3, 0, 0, 0, 1, 0, 3, 0, 0, 1, 22, 0, 3, 0, 0, 0, 1, 0, 0, 0, 0,
+            1, 23, 0, 4, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0, 8, 0, 8, 0, 8
+        };
+        int w = 5, h = 3;
+        byte[] tiff = new byte[768 + w * h * 3];
+        System.arraycopy(header, 0, tiff, 0, header.length);
+        tiff[31] = (byte) w;
+        tiff[43] = tiff[103] = (byte) h;
+        tiff[117] = (byte) (w * h * 3);
+        for (int i = 0; i < w * h * 3; i++) {
+            tiff[768 + i] = (byte) (i * 5);
+        }
+        PImage image = PImage.loadTIFF(new ByteArrayInputStream(tiff));
+        assertEquals(w, image.width);
+        assertEquals(h, image.height);
+        assertEquals(0xff000000 | 15 * 5 << 16 | 16 * 5 << 8 | 17 * 5, image.pixels[5]);
+    }
+
+    @Test
+    public void rejectsWhatItCantRead() {
+        assertNull(PImage.loadTIFF(new ByteArrayInputStream(new byte[] { 'G', 'I', 'F', '8', '9', 'a', 0, 0 })));
+    }
+
+    @Test
+    public void tgaRoundTrip() throws IOException {
+        for (int format : FORMATS) {
+            PImage image = image(301, 203, format);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            assertTrue(image.saveTGA(output));
+            PImage back = PImage.loadTGA(new ByteArrayInputStream(output.toByteArray()));
+            assertEquals(format, back.format);
+            if (format == ALPHA) {
+                for (int i = 0; i < image.pixels.length; i++) {
+                    assertEquals(image.pixels[i] & 0xff, back.pixels[i]);
+                }
+            } else {
+                assertSamePixels(image, back);
+            }
+        }
+    }
+
+    @Test
+    public void tgaRunsAreCompressed() throws IOException {
+        PImage image = new PImage(256, 256, RGB);
+        for (int i = 0; i < image.pixels.length; i++) {
+            image.pixels[i] = 0xff000000 | (i / 1000) * 0x030201;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        image.saveTGA(output);
+        assertTrue(output.size() < 256 * 256 * 3 / 20);
+    }
+
+    @Test
+    public void tgaUncompressedBottomUp() throws IOException {
+        // the usual layout from other apps: uncompressed, 24-bit, bottom row first,
+        // plus a 16-bit one, both with an image ID to skip
+        int w = 3, h = 2;
+        int[] expected = { 0xffff0000, 0xff00ff00, 0xff0000ff, 0xffffffff, 0xff000000, 0xff808080 };
+        ByteArrayOutputStream tga = new ByteArrayOutputStream();
+        tga.write(new byte[] { 2, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, (byte) w, 0, (byte) h, 0, 24, 0 });
+        tga.write(new byte[] { 'h', 'i' });
+        for (int y = h - 1; y >= 0; y--) {
+            for (int x = 0; x < w; x++) {
+                int c = expected[y * w + x];
+                tga.write(c & 0xff);
+                tga.write(c >> 8 & 0xff);
+                tga.write(c >> 16 & 0xff);
+            }
+        }
+        PImage image = PImage.loadTGA(new ByteArrayInputStream(tga.toByteArray()));
+        assertArrayEquals(expected, image.pixels);
+
+        // 16-bit, 1 bit of alpha, top row first
+        tga.reset();
+        tga.write(new byte[] { 0, 0, 2, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2, 0, 1, 0, 16, 0x21 });
+        tga.write(new byte[] { (byte) 0xff, (byte) 0xff, 0x00, 0x00 });  // opaque white, clear black
+        image = PImage.loadTGA(new ByteArrayInputStream(tga.toByteArray()));
+        assertEquals(ARGB, image.format);
+        assertArrayEquals(new int[] { 0xffffffff, 0x00000000 }, image.pixels);
+    }
+
+    @Test
+    public void largeFiles() throws IOException {
+        // read in one go since the size is known, and not mapped, so the
+        // file isn't held open (or locked on Windows) once it's loaded
+        PImage image = image(640, 480, ARGB);
+        File tiff = folder.newFile("big.tif");
+        File tga = folder.newFile("big.tga");
+        try (FileOutputStream output = new FileOutputStream(tiff)) {
+            image.saveTIFF(output, TIFFCodec.NONE);
+        }
+        try (FileOutputStream output = new FileOutputStream(tga)) {
+            image.saveTGA(output);
+        }
+        assertTrue(tiff.length() > 256 * 1024);
+        try (InputStream input = new FileInputStream(tiff)) {
+            assertSamePixels(image, PImage.loadTIFF(input));
+        }
+        try (InputStream input = new FileInputStream(tga)) {
+            assertSamePixels(image, PImage.loadTGA(input));
+        }
+        try (InputStream input = new FileInputStream(tiff)) {
+            ByteBuffer buffer = PImage.readInput(input);
+            assertFalse(buffer instanceof MappedByteBuffer);
+            assertEquals(tiff.length(), buffer.remaining());
+        }
+        try (FileOutputStream output = new FileOutputStream(tiff)) {
+            image.saveTIFF(output, TIFFCodec.NONE);
+        }
+    }
+
+    @Test
+    public void gzippedFilesThroughLoadImage() throws IOException {
+        PImage image = image(64, 48, ARGB);
+        File tga = folder.newFile("small.tga.gz");
+        File tiff = folder.newFile("small.tif.gz");
+        try (OutputStream output = new GZIPOutputStream(new FileOutputStream(tga))) {
+            image.saveTGA(output);
+        }
+        try (OutputStream output = new GZIPOutputStream(new FileOutputStream(tiff))) {
+            image.saveTIFF(output, TIFFCodec.LZW);
+        }
+        PApplet sketch = new PApplet();
+        sketch.sketchPath();  // absolute paths are used, any folder will do
+        assertSamePixels(image, ShimAWT.loadImage(sketch, tga.getAbsolutePath(), "tga"));
+        assertSamePixels(image, ShimAWT.loadImage(sketch, tiff.getAbsolutePath(), "tif"));
+    }
+
+    private static int round(int sample) {
+        return (sample * 255 + 32767) / 65535;
+    }
+
+    private static int tiffSize(PImage image, int compression) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        image.saveTIFF(output, compression);
+        return output.size();
+    }
+
+    private static byte[] writeTIFF(BufferedImage image, String compression) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("tiff").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        if (compression != null) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionType(compression);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(bytes)) {
+            writer.setOutput(output);
+            writer.write(null, new IIOImage(image, null, null), param);
+        }
+        writer.dispose();
+        return bytes.toByteArray();
+    }
+
+    private static void assertSamePixels(PImage expected, PImage actual) {
+        assertEquals(expected.width, actual.width);
+        assertEquals(expected.height, actual.height);
+        for (int i = 0; i < expected.pixels.length; i++) {
+            assertEquals("pixel " + i, color(expected, expected.pixels[i]), actual.pixels[i]);
+        }
+    }
+
+    private static void assertSamePixels(PImage expected, BufferedImage actual) {
+        assertEquals(expected.width, actual.getWidth());
+        WritableRaster raster = actual.getRaster();
+        for (int y = 0; y < expected.height; y++) {
+            for (int x = 0; x < expected.width; x++) {
+                int c = color(expected, expected.pixels[y * expected.width + x]);
+                if (expected.format == ALPHA) {
+                    // getRGB() would convert the gray to sRGB
+                    assertEquals(c & 0xff, raster.getSample(x, y, 0));
+                } else {
+                    assertEquals(c, actual.getRGB(x, y));
+                }
+            }
+        }
+    }
+
+    /** What a pixel should look like after going through a file. */
+    private static int color(PImage image, int c) {
+        if (image.format == ALPHA) return 0xff000000 | (c & 0xff) * 0x010101;
+        if (image.format == RGB) return c | 0xff000000;
+        return c;
+    }
+
+    private static PImage image(int width, int height, int format) {
+        PImage image = new PImage(width, height, format);
+        Random random = new Random(16);
+        for (int i = 0; i < image.pixels.length; i++) {
+            // runs, gradients, and noise, so that every kind of packet is used
+            int x = i % width;
+            int c = (x < width / 3) ? 0x80402010 :
+                (x < 2 * width / 3) ? x * 0x01010101 : random.nextInt();
+            if (format == ALPHA) c &= 0xff;
+            if (format == RGB) c |= 0xff000000;
+            image.pixels[i] = c;
+        }
+        return image;
+    }
+}
@@ -0,0 +1,90 @@
+package processing.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class PImageFilterTest implements PConstants {
+
+    // Arrays.hashCode() of the results from the single-threaded filters,
+    // for BLUR 1, 2.5, 20, then GRAY, INVERT, OPAQUE, ERODE, DILATE,
+    // POSTERIZE 4, and THRESHOLD 0.3
+    static final int[] RGB_HASHES = {
+        -168069553, -986933414, 601332547, 338336488, 131679414,
+        190972007, -1739312504, 305181205, 1575792733, 114427268
+    };
+    static final int[] ARGB_HASHES = {
+        1979414095, -869492902, 1188535107, 271227624, 64570550,
+        190972007, 1096037000, 942715413, 1508683869, 47318404
+    };
+    static final int[] ALPHA_HASHES = {
+        -1753439409, -356608422, -1127501245, 673589942, -1460817226,
+        189633127, 651302829, -680299855, -389640099, 709421674
+    };
+
+    @Test
+    public void singleThreadMatchesOriginal() {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            checkFormats(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void multiThreadMatchesOriginal() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            checkFormats(pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void checkFormats(ForkJoinPool pool) {
+        // the filters pick up the parallelism of the pool they're run from
+        assertArrayEquals(RGB_HASHES, pool.submit(() -> filterHashes(RGB)).join());
+        assertArrayEquals(ARGB_HASHES, pool.submit(() -> filterHashes(ARGB)).join());
+        assertArrayEquals(ALPHA_HASHES, pool.submit(() -> filterHashes(ALPHA)).join());
+    }
+
+    private static int[] filterHashes(int format) {
+        int[] hashes = new int[10];
+        int index = 0;
+        for (float radius : new float[] { 1, 2.5f, 20 }) {
+            PImage image = image(format);
+            image.filter(BLUR, radius);
+            hashes[index++] = Arrays.hashCode(image.pixels);
+        }
+        for (int kind : new int[] { GRAY, INVERT, OPAQUE, ERODE, DILATE }) {
+            PImage image = image(format);
+            image.filter(kind);
+            hashes[index++] = Arrays.hashCode(image.pixels);
+        }
+        PImage image = image(format);
+        image.filter(POSTERIZE, 4);
+        hashes[index++] = Arrays.hashCode(image.pixels);
+        image = image(format);
+        image.filter(THRESHOLD, 0.3f);
+        hashes[index++] = Arrays.hashCode(image.pixels);
+        return hashes;
+    }
+
+    private static PImage image(int format) {
+        // odd size, and large enough that every filter is split up
+        PImage image = new PImage(311, 257, format);
+        Random random = new Random(11);
+        for (int i = 0; i < image.pixels.length; i++) {
+            int c = random.nextInt();
+            if (format == ALPHA) c &= 0xff;
+            if (format == RGB) c |= 0xff000000;
+            image.pixels[i] = c;
+        }
+        return image;
+    }
+}
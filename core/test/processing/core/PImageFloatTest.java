@@ -0,0 +1,362 @@
+package processing.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PImageFloatTest implements PConstants {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void pfmRoundTrip() throws IOException {
+        PImageFloat image = image(37, 23, 3);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PFMCodec.write(output, image.values, image.pixelWidth, image.pixelHeight);
+        assertEquals(14 + 37 * 23 * 12, output.size());  // "PF\n37 23\n-1.0\n"
+
+        PImageFloat back = PFMCodec.read(ByteBuffer.wrap(output.toByteArray()));
+        assertEquals(37, back.pixelWidth);
+        assertEquals(23, back.pixelHeight);
+        for (int v = 0; v < image.values.length; v++) {
+            // exact, including values outside of 0 to 1, but always opaque
+            float expected = (v % 4 == 3) ? 1 : image.values[v];
+            assertEquals(expected, back.values[v], 0);
+        }
+        // and pixels[] caught up
+        assertEquals(PImageFloat.color(back.values, 40), back.pixels[10]);
+    }
+
+    @Test
+    public void pfmBigEndianGray() throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(12 + 2 * 2 * 4);
+        data.put("Pf\n2 2\n1.0\n".getBytes("US-ASCII"));
+        // bottom row first
+        data.putFloat(0.25f).putFloat(0.5f).putFloat(2f).putFloat(-1f);
+        PImageFloat image = PFMCodec.read(ByteBuffer.wrap(data.array()));
+        assertArrayEquals(new float[] { 2, 2, 2, 1 }, image.getFloat(0, 0, null), 0);
+        assertArrayEquals(new float[] { 0.5f, 0.5f, 0.5f, 1 }, image.getFloat(1, 1, null), 0);
+        assertEquals(0xff000000, image.get(1, 0));  // clamped in pixels[]
+        assertEquals(0xffffffff, image.get(0, 0));
+    }
+
+    @Test
+    public void tiffKeeps16Bits() throws IOException {
+        PImageFloat image = image(61, 45, 1);
+        image.values[3] = 0.5f;  // so that alpha is written
+        for (int compression : PImageCodecTest.COMPRESSIONS) {
+            for (boolean alpha : new boolean[] { false, true }) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                TIFFCodec.write(output, image.values, image.pixelWidth,
+                                image.pixelHeight, alpha, compression);
+                PImageFloat back = TIFFCodec.readFloat(ByteBuffer.wrap(output.toByteArray()));
+                for (int v = 0; v < image.values.length; v++) {
+                    float expected = (v % 4 == 3 && !alpha) ? 1 : image.values[v];
+                    assertEquals(expected, back.values[v], 0.5f / 65535);
+                }
+                // the 8-bit reader still gets something sensible out of it
+                PImage bytes = PImage.loadTIFF(new ByteArrayInputStream(output.toByteArray()));
+                assertEquals(image.get(7, 9) & 0xffffff, bytes.get(7, 9) & 0xffffff);
+            }
+        }
+        // and 8-bit files come back as the same colors
+        PImage rgb = new PImage(3, 1, RGB);
+        rgb.pixels = new int[] { 0xff102030, 0xffffffff, 0xff000000 };
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertTrue(rgb.saveTIFF(output, TIFFCodec.LZW));
+        PImageFloat back = TIFFCodec.readFloat(ByteBuffer.wrap(output.toByteArray()));
+        assertArrayEquals(rgb.pixels, back.pixels);
+    }
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        PImageFloat image = image(20, 10, 1);
+        File pfm = new File(folder.getRoot(), "out.pfm");
+        File tif = new File(folder.getRoot(), "out.tif");
+        assertTrue(image.save(pfm.getAbsolutePath()));
+        assertTrue(image.save(tif.getAbsolutePath()));
+
+        try (InputStream input = new FileInputStream(pfm)) {
+            PImageFloat back = PImageFloat.loadPFM(input);
+            assertEquals(image.values[41], back.values[41], 0);
+        }
+        try (InputStream input = new FileInputStream(tif)) {
+            PImageFloat back = TIFFCodec.readFloat(PImage.readInput(input));
+            assertEquals(image.values[41], back.values[41], 1f / 65535);
+        }
+    }
+
+    @Test
+    public void accumulateDoesNotLoseDim() {
+        // 200 frames of a color too dim to survive 8-bit averaging
+        PImage frame = new PImage(8, 8, RGB);
+        Arrays.fill(frame.pixels, 0xff010203);
+        PImageFloat sum = new PImageFloat(8, 8);
+        for (int i = 0; i < 200; i++) {
+            sum.accumulate(frame, 1 / 200f);
+        }
+        assertEquals(1 / 255f, sum.getFloat(3, 3, null)[0], 1e-5);
+        assertEquals(3 / 255f, sum.getFloat(3, 3, null)[2], 1e-5);
+        assertEquals(0xff010203, sum.get(3, 3));
+
+        // a running average, with the image itself as the source
+        sum.accumulate(sum, -0.5f);
+        assertEquals(0.5f / 255, sum.getFloat(3, 3, null)[0], 1e-6);
+    }
+
+    @Test
+    public void getSetAndConvert() {
+        PImageFloat image = new PImageFloat(10, 10);
+        image.setFloat(2, 3, 4, 0.5f, -1, 1);
+        assertEquals(0xffff8000, image.get(2, 3));
+        assertEquals(0, image.get(-1, 3));
+        image.set(4, 4, 0x80ff0000);
+        assertArrayEquals(new float[] { 1, 0, 0, 128 / 255f }, image.getFloat(4, 4, null), 0);
+
+        PImage part = image.get(2, 3, 3, 2);
+        assertTrue(part instanceof PImageFloat);
+        assertEquals(4, ((PImageFloat) part).values[0], 0);  // not clamped
+
+        PImage plain = image.toImage();
+        assertEquals(ARGB, plain.format);
+        assertEquals(image.get(2, 3), plain.pixels[3 * 10 + 2]);
+
+        // an 8-bit image goes through unchanged
+        PImage source = new PImage(5, 5, ARGB);
+        Random random = new Random(1);
+        for (int i = 0; i < source.pixels.length; i++) {
+            source.pixels[i] = random.nextInt();
+        }
+        assertArrayEquals(source.pixels, new PImageFloat(source).pixels);
+        PImage alpha = new PImage(1, 1, ALPHA);
+        alpha.pixels[0] = 0x40;
+        assertEquals(0x40ffffff, new PImageFloat(alpha).get(0, 0));
+
+        // and copy() brings over the floats
+        PImageFloat copy = new PImageFloat(10, 10);
+        copy.copy(image, 0, 0, 10, 10, 0, 0, 10, 10);
+        assertArrayEquals(image.values, copy.values, 0);
+    }
+
+    @Test
+    public void blendInFloat() {
+        PImageFloat dest = new PImageFloat(4, 4);
+        PImageFloat src = new PImageFloat(4, 4);
+        Arrays.fill(dest.values, 0.75f);
+        Arrays.fill(src.values, 0.5f);
+        for (int v = 3; v < src.values.length; v += 4) {
+            src.values[v] = 1;
+        }
+        dest.blend(src, 0, 0, 4, 4, 0, 0, 4, 4, ADD);
+        assertEquals(1.25f, dest.values[0], 1e-6);  // past 1.0
+        assertEquals(1, dest.values[3], 0);
+
+        dest.blend(src, 0, 0, 4, 4, 0, 0, 4, 4, MULTIPLY);
+        assertEquals(0.625f, dest.values[0], 1e-6);
+        dest.blend(src, 0, 0, 4, 4, 0, 0, 4, 4, SUBTRACT);
+        assertEquals(0.125f, dest.values[0], 1e-6);
+        dest.blend(src, 0, 0, 4, 4, 0, 0, 4, 4, DIFFERENCE);
+        assertEquals(0.375f, dest.values[0], 1e-6);
+
+        // scaled, only the area given changes
+        dest.blend(src, 0, 0, 4, 4, 0, 0, 2, 2, BLEND);
+        assertEquals(0.5f, dest.getFloat(1, 1, null)[0], 1e-6);
+        assertEquals(0.375f, dest.getFloat(2, 2, null)[0], 1e-6);
+
+        // the same answers as 8-bit blending, to within rounding
+        PImage a = new PImage(16, 16, ARGB), b = new PImage(16, 16, ARGB);
+        Random random = new Random(5);
+        for (int i = 0; i < a.pixels.length; i++) {
+            a.pixels[i] = random.nextInt() | 0xff000000;
+            b.pixels[i] = random.nextInt() | 0xff000000;
+        }
+        for (int mode : new int[] { BLEND, ADD, SUBTRACT, LIGHTEST, DARKEST,
+                                    MULTIPLY, SCREEN }) {
+            PImageFloat f = new PImageFloat(a);
+            f.blend(b, 0, 0, 16, 16, 0, 0, 16, 16, mode);
+            PImage c = a.copy();
+            c.blend(b, 0, 0, 16, 16, 0, 0, 16, 16, mode);
+            for (int i = 0; i < c.pixels.length; i++) {
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int expected = (c.pixels[i] >> shift) & 0xff;
+                    int actual = (f.pixels[i] >> shift) & 0xff;
+                    assertTrue("mode " + mode, Math.abs(expected - actual) <= 2);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void translucentBlendMatchesBlendColor() {
+        // d=0x64, s=0xC8 at half alpha: all of s/2 comes off, down to black
+        PImageFloat dest = new PImageFloat(1, 1);
+        dest.set(0, 0, 0xff646464);
+        PImage half = new PImage(1, 1, ARGB);
+        half.pixels[0] = 0x80c8c8c8;
+        dest.blend(half, 0, 0, 1, 1, 0, 0, 1, 1, SUBTRACT);
+        assertEquals(PImage.blendColor(0xff646464, 0x80c8c8c8, SUBTRACT), dest.get(0, 0));
+        assertEquals(0xff000000, dest.get(0, 0));
+
+        Random random = new Random(9);
+        for (int mode : new int[] { BLEND, ADD, SUBTRACT }) {
+            for (int i = 0; i < 1000; i++) {
+                int d = random.nextInt() | 0xff000000;
+                int c = random.nextInt();
+                PImageFloat f = new PImageFloat(1, 1);
+                f.set(0, 0, d);
+                PImage source = new PImage(1, 1, ARGB);
+                source.pixels[0] = c;
+                f.blend(source, 0, 0, 1, 1, 0, 0, 1, 1, mode);
+                int expected = PImage.blendColor(d, c, mode);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int diff = ((expected >> shift) & 0xff) - ((f.get(0, 0) >> shift) & 0xff);
+                    assertTrue("mode " + mode, Math.abs(diff) <= 2);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void filters() {
+        PImageFloat image = image(24, 24, 1);
+        PImageFloat gray = new PImageFloat(image);
+        gray.filter(GRAY);
+        float[] rgba = gray.getFloat(5, 5, null);
+        assertEquals(rgba[0], rgba[1], 0);
+        assertEquals(rgba[0], rgba[2], 0);
+
+        PImageFloat inverted = new PImageFloat(image);
+        inverted.filter(INVERT);
+        assertEquals(1 - image.values[0], inverted.values[0], 1e-6);
+
+        PImageFloat threshold = new PImageFloat(image);
+        threshold.filter(THRESHOLD, 0.5f);
+        for (int v = 0; v < threshold.values.length; v += 4) {
+            assertTrue(threshold.values[v] == 0 || threshold.values[v] == 1);
+        }
+
+        // compared in 8-bit levels, the same as other images
+        PImageFloat gate = new PImageFloat(1, 1);
+        gate.set(0, 0, 0xff4c4c4c);
+        gate.filter(THRESHOLD, 0.3f);
+        PImage reference = new PImage(1, 1, ARGB);
+        reference.pixels[0] = 0xff4c4c4c;
+        reference.filter(THRESHOLD, 0.3f);
+        assertEquals(0xffffffff, reference.pixels[0]);
+        assertEquals(reference.pixels[0], gate.get(0, 0));
+
+        PImageFloat posterized = new PImageFloat(image);
+        posterized.filter(POSTERIZE, 3);
+        for (int v = 0; v < posterized.values.length; v += 4) {
+            float level = posterized.values[v] * 2;
+            assertEquals(Math.round(level), level, 1e-6);
+        }
+        try {
+            posterized.filter(POSTERIZE, 1);
+            fail();
+        } catch (RuntimeException expected) { }
+
+        // blurring a flat image changes nothing, even at the edges
+        PImageFloat flat = new PImageFloat(30, 20);
+        Arrays.fill(flat.values, 0.3f);
+        flat.filter(BLUR, 3);
+        for (float value : flat.values) {
+            assertEquals(0.3f, value, 1e-6);
+        }
+        // and a bright dot spreads out but keeps its total
+        PImageFloat dot = new PImageFloat(31, 31);
+        dot.setFloat(15, 15, 100, 100, 100, 1);
+        dot.filter(BLUR, 2);
+        float total = 0;
+        for (int v = 0; v < dot.values.length; v += 4) {
+            total += dot.values[v];
+        }
+        assertEquals(100, total, 0.01);
+        assertTrue(dot.getFloat(15, 15, null)[0] < 100);
+        assertTrue(dot.getFloat(17, 15, null)[0] > 0);
+
+        PImageFloat dilated = new PImageFloat(5, 5);
+        dilated.setFloat(2, 2, 1, 1, 1, 1);
+        dilated.filter(DILATE);
+        assertEquals(1, dilated.getFloat(1, 2, null)[0], 0);
+        assertEquals(0, dilated.getFloat(1, 1, null)[0], 0);
+        dilated.filter(ERODE);
+        assertEquals(0, dilated.getFloat(1, 2, null)[0], 0);
+    }
+
+    @Test
+    public void resizeAndMask() {
+        PImageFloat image = new PImageFloat(40, 40);
+        Arrays.fill(image.values, 2f);
+        image.resize(17, 0, BILINEAR);
+        assertEquals(17, image.pixelWidth);
+        assertEquals(17, image.pixelHeight);
+        assertEquals(17 * 17 * 4, image.values.length);
+        assertEquals(2f, image.values[100], 1e-5);  // colors past 1 survive
+        assertEquals(1f, image.values[103], 1e-5);  // alpha doesn't
+
+        PImageFloat mask = new PImageFloat(17, 17);
+        mask.setFloat(0, 0, 0, 0, 0.25f, 1);
+        image.mask(mask);
+        assertEquals(0.25f, image.values[3], 0);
+        assertEquals(0, image.values[7], 0);
+    }
+
+    @Test
+    public void directPixelWrites() {
+        PImageFloat image = new PImageFloat(8, 8);
+        Arrays.fill(image.values, 2f);
+        image.updatePixels();
+
+        image.loadPixels();
+        image.pixels[9] = 0xff336699;
+        image.updatePixels();
+        assertEquals(0xff336699, image.pixels[9]);  // not made again from the floats
+        assertArrayEquals(new float[] { 0x33 / 255f, 0x66 / 255f, 0x99 / 255f, 1 },
+                          image.getFloat(1, 1, null), 1e-6f);
+        assertEquals(2f, image.values[0], 0);  // the others are left alone
+
+        // picked up by the float methods even without updatePixels()
+        image.pixels[10] = 0xff000000;
+        image.filter(INVERT);
+        assertEquals(0xffffffff, image.get(2, 1));
+        assertEquals(1f, image.values[10 * 4], 1e-6f);
+
+        // where both changed, pixels[] wins
+        image.values[11 * 4] = 0.5f;
+        image.pixels[11] = 0xff0000ff;
+        image.updatePixels();
+        assertEquals(0f, image.values[11 * 4], 0);
+        assertEquals(0xff0000ff, image.get(3, 1));
+
+        // set() afterwards still goes through
+        image.pixels[12] = 0xff00ff00;
+        image.set(4, 1, 0xffff0000);
+        image.updatePixels();
+        assertEquals(0xffff0000, image.pixels[12]);
+    }
+
+    /** Random values, a few of them outside of 0 to 1 when spread > 1. */
+    static PImageFloat image(int width, int height, float spread) {
+        PImageFloat image = new PImageFloat(width, height);
+        Random random = new Random(width * height);
+        for (int v = 0; v < image.values.length; v++) {
+            image.values[v] = (v % 4 == 3) ? 1 : random.nextFloat() * spread;
+        }
+        image.updatePixels();
+        return image;
+    }
+}
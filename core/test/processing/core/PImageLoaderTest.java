@@ -0,0 +1,102 @@
+package processing.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class PImageLoaderTest {
+
+    /** Makes up an image for each name instead of reading a file. */
+    static class FakeLoader extends PImageLoader {
+        final List<String> decoded = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate;
+
+        FakeLoader(int threads, long cacheBytes, CountDownLatch gate) {
+            super(new PApplet(), threads, cacheBytes);
+            this.gate = gate;
+        }
+
+        @Override
+        protected PImage decode(String filename, String extension) {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                return null;
+            }
+            decoded.add(filename);
+            if (filename.startsWith("missing")) {
+                return null;
+            }
+            return new PImage(100, 100, PConstants.RGB);  // 40,000 bytes
+        }
+    }
+
+    @Test
+    public void cacheIsBoundedLRU() {
+        FakeLoader loader = new FakeLoader(1, 100000, new CountDownLatch(0));
+        PImage a = loader.load("a.png", null);
+        assertSame(a, loader.load("a.png", null));
+        loader.load("b.png", null);
+        loader.load("a.png", null);  // now b is the oldest
+        loader.load("c.png", null);  // over 100k, so b goes
+        assertEquals(2, loader.cacheCount());
+        assertEquals(80000, loader.cacheBytes());
+        assertSame(a, loader.load("a.png", null));
+        assertNotSame(a, loader.load("a.png", "jpg"));  // extension is part of the key
+        assertNull(loader.load("missing.png", null));
+        assertEquals(List.of("a.png", "b.png", "c.png", "a.png", "missing.png"), loader.decoded);
+        assertEquals(3f / 8, loader.hitRate(), 0.001f);
+
+        loader.cacheSize(0);
+        assertEquals(0, loader.cacheCount());
+        assertEquals(0, loader.cacheBytes());
+        loader.dispose();
+    }
+
+    @Test
+    public void loadImageUsesTheCacheOnceItIsOn() {
+        PApplet applet = new PApplet();
+        FakeLoader loader = new FakeLoader(1, 100000, new CountDownLatch(0));
+        applet.requestImageLoader = loader;
+        PImage a = applet.loadImage("a.png");
+        assertSame(a, applet.loadImage("a.png"));
+        assertSame(a, loader.request("a.png", null));
+        assertEquals(List.of("a.png"), loader.decoded);
+        loader.dispose();
+    }
+
+    @Test
+    public void priorityAndCancel() throws InterruptedException {
+        CountDownLatch gate = new CountDownLatch(1);
+        FakeLoader loader = new FakeLoader(1, 0, gate);
+        PImage first = loader.request("first.png", null);
+        loader.entered.await();  // the only thread is busy with this one
+
+        PImage low = loader.request("low.png", null, 1);
+        PImage high = loader.request("high.png", null, 10);
+        PImage stale = loader.request("stale.png", null, 5);
+        PImage missing = loader.request("missing.png", null, 0);
+        assertTrue(loader.cancel(stale));
+        assertFalse(loader.cancel(first));  // already started
+        assertEquals(4, loader.pendingCount());
+
+        gate.countDown();
+        while (loader.pendingCount() > 0) {
+            Thread.sleep(5);
+        }
+        assertEquals(List.of("first.png", "high.png", "low.png", "missing.png"), loader.decoded);
+        assertEquals(100, first.width);
+        assertEquals(100, high.height);
+        assertEquals(100, low.width);
+        assertEquals(0, stale.width);
+        assertEquals(-1, missing.width);
+        loader.dispose();
+    }
+}
@@ -0,0 +1,102 @@
+package processing.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class PImageResizeTest implements PConstants {
+
+    static final int[] FILTERS = { NEAREST, BILINEAR, BICUBIC, LANCZOS };
+
+    @Test
+    public void solidColorStaysSolid() {
+        for (int filter : FILTERS) {
+            for (int[] size : new int[][] { { 37, 23 }, { 400, 300 }, { 3, 1 } }) {
+                PImage image = solid(123, 77, 0x80336699, ARGB);
+                image.resize(size[0], size[1], filter);
+                assertEquals(size[0], image.width);
+                assertEquals(size[1], image.height);
+                assertEquals(size[0] * size[1], image.pixels.length);
+                for (int c : image.pixels) {
+                    assertEquals("filter " + filter, 0x80336699, c);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void proportionalSize() {
+        PImage image = solid(400, 300, 0xff000000, RGB);
+        image.resize(100, 0);
+        assertEquals(75, image.height);
+        image.resize(0, 150);
+        assertEquals(200, image.width);
+        image.resize(1000, 0);  // larger than the original is fine too
+        assertEquals(750, image.height);
+    }
+
+    @Test
+    public void transparentPixelsDontBleed() {
+        // a red half that's invisible next to an opaque blue half
+        PImage image = new PImage(64, 64, ARGB);
+        for (int i = 0; i < image.pixels.length; i++) {
+            image.pixels[i] = (i % 64 < 32) ? 0x00ff0000 : 0xff0000ff;
+        }
+        for (int filter : FILTERS) {
+            PImage copy = image.copy();
+            copy.resize(17, 17, filter);
+            for (int c : copy.pixels) {
+                if ((c >>> 24) != 0) {
+                    assertEquals("filter " + filter, 0, (c >> 16) & 0xff);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkerboardAveragesToGray() {
+        PImage image = new PImage(256, 256, RGB);
+        for (int y = 0; y < 256; y++) {
+            for (int x = 0; x < 256; x++) {
+                image.pixels[y*256 + x] = ((x ^ y) & 1) == 0 ? 0xffffffff : 0xff000000;
+            }
+        }
+        for (int filter : new int[] { BILINEAR, BICUBIC, LANCZOS }) {
+            PImage copy = image.copy();
+            copy.resize(32, 32, filter);
+            for (int c : copy.pixels) {
+                assertEquals("filter " + filter, 128, c & 0xff, 2);
+            }
+        }
+    }
+
+    @Test
+    public void sameResultOnMoreThreads() {
+        PImage image = new PImage(301, 203, ARGB);
+        Random random = new Random(13);
+        for (int i = 0; i < image.pixels.length; i++) {
+            image.pixels[i] = random.nextInt();
+        }
+        PImage serial = image.copy();
+        serial.resize(517, 97, LANCZOS);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            PImage parallel = image.copy();
+            pool.submit(() -> parallel.resize(517, 97, LANCZOS)).join();
+            assertArrayEquals(serial.pixels, parallel.pixels);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static PImage solid(int w, int h, int color, int format) {
+        PImage image = new PImage(w, h, format);
+        Arrays.fill(image.pixels, color);
+        return image;
+    }
+}
@@ -0,0 +1,202 @@
+package processing.core;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PTiledImageTest implements PConstants {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void regionsAcrossTiles() {
+        // a cache of two tiles, so nearly everything goes through the store
+        for (File file : new File[] { null, new File(folder.getRoot(), "a.tiles") }) {
+            PTiledImage tiled = new PTiledImage(100, 70, 16, file);
+            tiled.cacheSize(2);
+            PImage whole = new PImage(100, 70, ARGB);
+
+            Random random = new Random(4);
+            for (int i = 0; i < 20; i++) {
+                PImage piece = image(1 + random.nextInt(40), 1 + random.nextInt(40), i);
+                int x = random.nextInt(120) - 10;
+                int y = random.nextInt(90) - 10;
+                tiled.set(x, y, piece);
+                whole.set(x, y, piece);
+                assertTrue(tiled.cacheCount() <= 2);
+            }
+            assertArrayEquals(whole.pixels, tiled.get(0, 0, 100, 70).pixels);
+            assertEquals(whole.pixels[33 * 100 + 47], tiled.get(47, 33));
+
+            // outside the image is transparent
+            PImage region = tiled.get(90, 60, 20, 20);
+            assertEquals(whole.pixels[65 * 100 + 95], region.pixels[5 * 20 + 5]);
+            assertEquals(0, region.pixels[15 * 20 + 15]);
+            assertEquals(0, tiled.get(-1, 5));
+            tiled.dispose();
+        }
+    }
+
+    @Test
+    public void setConvertsFormats() {
+        PTiledImage tiled = new PTiledImage(20, 20, 8, null);
+        PImage rgb = new PImage(2, 1, RGB);
+        rgb.pixels = new int[] { 0x00123456, 0xff654321 };
+        tiled.set(7, 7, rgb);
+        assertEquals(0xff123456, tiled.get(7, 7));
+        assertEquals(0xff654321, tiled.get(8, 7));
+
+        PImage alpha = new PImage(1, 1, ALPHA);
+        alpha.pixels[0] = 0x80;
+        tiled.set(0, 0, alpha);
+        assertEquals(0x80ffffff, tiled.get(0, 0));
+    }
+
+    @Test
+    public void saveOnlyWritesChanges() throws IOException {
+        File file = new File(folder.getRoot(), "b.tiles");
+        PTiledImage tiled = new PTiledImage(200, 200, 32, file);
+        tiled.set(0, 0, image(100, 100, 1));  // 16 tiles
+        tiled.save();
+        long writes = tiled.writes;
+        assertEquals(16, writes);
+
+        tiled.set(150, 150, 0xff00ff00);
+        tiled.save();
+        assertEquals(writes + 1, tiled.writes);
+        tiled.save();
+        assertEquals(writes + 1, tiled.writes);
+        tiled.dispose();
+
+        // and it reopens with everything in place
+        PTiledImage back = new PTiledImage(file);
+        assertEquals(200, back.width);
+        assertEquals(32, back.tileSize);
+        assertArrayEquals(image(100, 100, 1).pixels, back.get(0, 0, 100, 100).pixels);
+        assertEquals(0xff00ff00, back.get(150, 150));
+        assertEquals(0, back.get(199, 0));
+        back.dispose();
+    }
+
+    @Test
+    public void offHeapSavesToAFile() throws IOException {
+        File file = new File(folder.getRoot(), "c.tiles");
+        PTiledImage tiled = new PTiledImage(64, 64, 16, null);
+        tiled.set(0, 0, image(64, 64, 2));
+        tiled.save(file);
+        long full = file.length();
+
+        // saving to the same file again only writes what changed, so a
+        // mark made in the first tile outside of PTiledImage stays there
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(PTiledImage.HEADER);
+            raf.writeInt(0x12345678);
+        }
+        tiled.set(63, 63, 0xffff0000);
+        tiled.save(file);
+        assertEquals(full, file.length());
+
+        PTiledImage back = new PTiledImage(file);
+        assertEquals(0xffff0000, back.get(63, 63));
+        assertEquals(0x12345678, back.get(0, 0));
+        assertEquals(image(64, 64, 2).pixels[64 * 20 + 3], back.get(3, 20));
+        back.dispose();
+        tiled.dispose();
+
+        try {
+            new PTiledImage(10, 10).save();
+            fail();
+        } catch (IllegalStateException expected) { }
+    }
+
+    @Test
+    public void scaledDownAverages() {
+        PTiledImage tiled = new PTiledImage(300, 200, 16, null);
+        tiled.cacheSize(4);
+        PImage source = image(300, 200, 3);
+        tiled.set(0, 0, source);
+
+        PImage small = tiled.get(0, 0, 300, 200, 30, 20);
+        assertEquals(30, small.pixelWidth);
+        // each pixel is the average of a 10x10 block, weighted by alpha
+        for (int oy = 0; oy < 20; oy += 7) {
+            for (int ox = 0; ox < 30; ox += 7) {
+                long a = 0, r = 0;
+                for (int y = oy * 10; y < oy * 10 + 10; y++) {
+                    for (int x = ox * 10; x < ox * 10 + 10; x++) {
+                        int c = source.pixels[y * 300 + x];
+                        a += c >>> 24;
+                        r += (c >>> 24) * ((c >> 16) & 0xff);
+                    }
+                }
+                int c = small.pixels[oy * 30 + ox];
+                assertEquals((a + 50) / 100, c >>> 24);
+                assertEquals((r + a / 2) / a, (c >> 16) & 0xff);
+            }
+        }
+
+        // larger regions are scaled up like copy() does
+        PImage big = tiled.get(10, 10, 5, 5, 20, 20);
+        PImage expected = new PImage(20, 20, ARGB);
+        expected.copy(source.get(10, 10, 5, 5), 0, 0, 5, 5, 0, 0, 20, 20);
+        assertArrayEquals(expected.pixels, big.pixels);
+    }
+
+    @Test
+    public void copyAndBlendIntoImages() {
+        PImage source = image(80, 60, 5);
+        PTiledImage tiled = new PTiledImage(80, 60, 16, null);
+        tiled.set(0, 0, source);
+
+        PImage a = image(50, 50, 6);
+        PImage b = a.copy();
+        tiled.blendTo(a, 10, 10, 30, 30, 5, 5, 30, 30, MULTIPLY);
+        b.blend(source, 10, 10, 30, 30, 5, 5, 30, 30, MULTIPLY);
+        assertArrayEquals(b.pixels, a.pixels);
+
+        tiled.copyTo(a, 0, 0, 40, 40, 0, 0, 40, 40);
+        b.copy(source, 0, 0, 40, 40, 0, 0, 40, 40);
+        assertArrayEquals(b.pixels, a.pixels);
+    }
+
+    @Test
+    public void biggerThanAnArray() {
+        // 4.9 billion pixels, but only the tiles that are touched exist
+        PTiledImage tiled = new PTiledImage(70000, 70000);
+        PImage blue = new PImage(1000, 1000, RGB);
+        Arrays.fill(blue.pixels, 0xff0000ff);
+        tiled.set(69000, 69000, blue);
+        tiled.set(35000, 0, image(300, 2, 7));
+        assertEquals(0xff0000ff, tiled.get(69999, 69999));
+        assertEquals(0, tiled.get(0, 69999));
+        PImage corner = tiled.get(69990, 69990, 20, 20);
+        assertEquals(0xff0000ff, corner.pixels[9 * 20 + 9]);
+
+        // an overview of the whole thing, one band of tiles at a time
+        PImage overview = tiled.get(0, 0, 70000, 70000, 70, 70);
+        assertEquals(0, overview.pixels[0]);
+        assertEquals(0xff0000ff, overview.pixels[69 * 70 + 69]);
+        assertEquals(0, overview.pixels[68 * 70 + 68]);
+        // only the blue tiles and the strip at the top were read
+        assertTrue(tiled.reads < 40);
+        tiled.dispose();
+    }
+
+    static PImage image(int width, int height, long seed) {
+        Random random = new Random(seed);
+        PImage image = new PImage(width, height, ARGB);
+        for (int i = 0; i < image.pixels.length; i++) {
+            image.pixels[i] = random.nextInt();
+        }
+        return image;
+    }
+}
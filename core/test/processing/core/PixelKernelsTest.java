@@ -0,0 +1,122 @@
+package processing.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PixelKernelsTest implements PConstants {
+
+    // the plain versions, to check whatever get() returns against
+    static final PixelKernels PLAIN = new PixelKernels();
+    static final PixelKernels KERNELS = PixelKernels.get();
+
+    // lengths that leave something over after the vector loop
+    static final int[] LENGTHS = { 0, 1, 7, 64, 1001 };
+
+    @Test
+    public void vectorsLoadWhenTheModuleIsThere() {
+        boolean module = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        boolean built = getClass().getClassLoader()
+            .getResource("processing/core/VectorKernels.class") != null;
+        assertEquals(module && built, KERNELS.isVectorized());
+    }
+
+    @Test
+    public void filtersMatch() {
+        for (int length : LENGTHS) {
+            int[] source = random(length + 3, length);
+            check(source, (kernels, pixels) -> kernels.gray(pixels, 3, pixels.length));
+            check(source, (kernels, pixels) -> kernels.invert(pixels, 3, pixels.length));
+            for (int thresh : new int[] { 0, 1, 127, 128, 255, 256 }) {
+                check(source, (kernels, pixels) ->
+                      kernels.threshold(pixels, 3, pixels.length, thresh));
+            }
+            int[] mask = random(length + 3, ~length);
+            check(source, (kernels, pixels) -> kernels.mask(pixels, mask, 3, pixels.length));
+        }
+    }
+
+    @Test
+    public void posterizeMatchesForEveryLevel() {
+        // every value of every channel, at every number of levels
+        int[] source = new int[256];
+        for (int i = 0; i < 256; i++) {
+            source[i] = (255 - i) << 24 | i << 16 | (i ^ 0x5a) << 8 | (255 - i);
+        }
+        for (int levels = 2; levels <= 255; levels++) {
+            int count = levels;
+            check(source, (kernels, pixels) ->
+                  kernels.posterize(pixels, 0, pixels.length, count));
+        }
+    }
+
+    @Test
+    public void conversionsMatch() {
+        int[] orders = {
+            PixelKernels.SWAP_RED_BLUE, PixelKernels.RGBA_TO_ARGB, PixelKernels.ARGB_TO_RGBA
+        };
+        for (int order : orders) {
+            for (int length : LENGTHS) {
+                int[] source = random(length + 5, order * 31 + length);
+                check(source, (kernels, pixels) ->
+                      kernels.convert(pixels, 5, pixels, 0, length, order));
+            }
+            // odd and even heights, so that the center row is covered
+            for (int height : new int[] { 1, 2, 7, 300 }) {
+                int width = 37;
+                int[] source = random(width * height, height);
+                int[] expected = new int[source.length];
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        expected[(height - 1 - y) * width + x] =
+                            PixelKernels.convert(source[y * width + x], order);
+                    }
+                }
+                int[] pixels = source.clone();
+                KERNELS.convertFlipped(pixels, width, height, order);
+                assertArrayEquals(expected, pixels);
+            }
+        }
+        // going to OpenGL's order and back changes nothing
+        int[] source = random(99, 1);
+        int[] pixels = source.clone();
+        KERNELS.convert(pixels, 0, pixels, 0, 99, PixelKernels.ARGB_TO_RGBA);
+        KERNELS.convert(pixels, 0, pixels, 0, 99, PixelKernels.RGBA_TO_ARGB);
+        assertArrayEquals(source, pixels);
+    }
+
+    @Test
+    public void imageFiltersUseThem() {
+        PImage image = new PImage(64, 48, ARGB);
+        image.pixels = random(64 * 48, 3);
+        int[] expected = image.pixels.clone();
+        PLAIN.gray(expected, 0, expected.length);
+        PLAIN.posterize(expected, 0, expected.length, 5);
+        image.filter(GRAY);
+        image.filter(POSTERIZE, 5);
+        assertArrayEquals(expected, image.pixels);
+    }
+
+    interface Op {
+        void run(PixelKernels kernels, int[] pixels);
+    }
+
+    static void check(int[] source, Op op) {
+        int[] expected = source.clone();
+        op.run(PLAIN, expected);
+        int[] actual = source.clone();
+        op.run(KERNELS, actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    static int[] random(int length, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[length];
+        for (int i = 0; i < length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,158 @@
+package processing.data;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DictTest {
+
+    @Test
+    public void removeKeepsOrder() {
+        IntDict dict = new IntDict();
+        for (int i = 0; i < 10; i++) {
+            dict.set("k" + i, i);
+        }
+        assertEquals(3, dict.remove("k3"));
+        assertEquals(9, dict.remove("k9"));
+        dict.remove("k0");
+        assertEquals(7, dict.size());
+        assertFalse(dict.hasKey("k3"));
+        assertEquals(5, dict.get("k5"));
+
+        // re-added keys go to the end, like before
+        dict.set("k3", 33);
+        assertArrayEquals(new String[] { "k1", "k2", "k4", "k5", "k6", "k7", "k8", "k3" },
+                          dict.keyArray());
+        assertEquals("k4", dict.key(2));
+        assertEquals(2, dict.index("k4"));
+
+        Iterator<String> it = dict.keyIterator();
+        while (it.hasNext()) {
+            if (it.next().compareTo("k5") < 0) {
+                it.remove();
+            }
+        }
+        assertArrayEquals(new int[] { 5, 6, 7, 8 }, dict.valueArray());
+
+        dict.sortValuesReverse();
+        assertEquals("k8", dict.key(0));
+        assertEquals(8, dict.get("k8"));
+        assertEquals("{ \"k8\": 8, \"k7\": 7, \"k6\": 6, \"k5\": 5 }", dict.toJSON());
+    }
+
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(8);
+        StringDict dict = new StringDict();
+        IntFloatDict ids = new IntFloatDict();
+        HashMap<String, String> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            int id = random.nextInt(5000);
+            String key = "#" + id;
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key) != null, dict.hasKey(key));
+                if (dict.hasKey(key)) {
+                    dict.remove(key);
+                    ids.remove(id);
+                }
+            } else {
+                expected.put(key, key + i);
+                dict.set(key, key + i);
+                ids.set(id, i);
+            }
+        }
+        assertEquals(expected.size(), dict.size());
+        assertEquals(expected.size(), ids.size());
+        for (StringDict.Entry e : dict.entries()) {
+            assertEquals(expected.get(e.key), e.value);
+            assertEquals(e.value, e.key + (int) ids.get(Integer.parseInt(e.key.substring(1))));
+        }
+        assertEquals(dict.copy().keyArray().length, dict.size());
+    }
+
+    @Test
+    public void swapMovesTheKeysToo() {
+        IntDict dict = new IntDict();
+        for (int i = 0; i < 10; i++) {
+            dict.set("k" + i, i);
+        }
+        dict.swap(0, 9);
+        assertEquals(0, dict.get("k0"));
+        assertEquals(9, dict.get("k9"));
+        assertEquals(9, dict.index("k0"));
+        dict.set("k0", 100);
+        assertEquals(10, dict.size());
+        assertEquals(100, dict.value(9));
+        assertEquals(9, dict.remove("k9"));
+        assertEquals(9, dict.size());
+        assertFalse(dict.hasKey("k9"));
+
+        StringDict strings = new StringDict();
+        strings.set("a", "1");
+        strings.set("b", "2");
+        strings.swap(0, 1);
+        strings.swap(1, 1);
+        assertEquals("1", strings.get("a"));
+        assertEquals("b", strings.key(0));
+
+        IntIntDict ids = new IntIntDict();
+        ids.set(5, 50);
+        ids.set(7, 70);
+        ids.swap(0, 1);
+        assertEquals(50, ids.get(5));
+        assertEquals(70, ids.remove(7));
+        assertEquals(1, ids.size());
+        assertEquals(5, ids.key(0));
+    }
+
+    @Test
+    public void intKeys() {
+        IntIntDict dict = new IntIntDict();
+        for (int i = 0; i < 1000; i++) {
+            dict.increment(i % 100 - 50);
+        }
+        assertEquals(100, dict.size());
+        assertEquals(10, dict.get(-50));
+        assertEquals(-1, dict.get(1000, -1));
+        dict.remove(-50);
+        dict.add(7, 5);
+        assertEquals(15, dict.maxValue());
+        assertEquals(7, dict.maxKey());
+        assertEquals(-49, dict.key(0));
+        dict.sortKeysReverse();
+        assertEquals(49, dict.key(0));
+        assertEquals(15, dict.get(7));
+        assertEquals(995, dict.sum());
+    }
+
+    @Test
+    public void churnDoesNotGrowTheArrays() {
+        IntDict dict = new IntDict();
+        IntFloatDict ids = new IntFloatDict();
+        for (int i = 0; i < 10; i++) {
+            dict.set("live" + i, i);
+            ids.set(-1 - i, i);
+        }
+        for (int i = 0; i < 200000; i++) {
+            // remove the one before, so it's never the last entry
+            dict.set("k" + i, i);
+            ids.set(i, i);
+            if (i > 0) {
+                dict.remove("k" + (i - 1));
+                ids.remove(i - 1);
+            }
+        }
+        assertEquals(11, dict.size());
+        assertEquals(11, ids.size());
+        assertTrue(dict.keys.length < 64);
+        assertTrue(ids.keys.length < 64);
+        assertEquals(9, dict.get("live9"));
+        assertEquals(9, ids.get(-10), 0);
+        assertEquals("live0", dict.key(0));
+        assertEquals(-1, ids.key(0));
+    }
+}
@@ -0,0 +1,118 @@
+package processing.data;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class JSONReaderTest {
+
+    private static final String SOURCE =
+        "{\"name\": \"ring \\\"a\\\" \\u00e9\", \"count\": 3, \"big\": 12345678901,\n" +
+        " \"ratio\": -0.125, \"tiny\": 1e-7, \"ok\": true, \"none\": null,\n" +
+        " \"list\": [1, 2.5, \"x\", [], {}], 'single': 'quoted', bare = word; \"nested\": {\"a\": [ , 7]}}";
+
+    @Test
+    public void matchesTokenerTrees() {
+        JSONObject expected = new JSONObject(new JSONTokener(SOURCE));
+        JSONObject actual = new JSONObject(new StringReader(SOURCE));
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(Integer.valueOf(3), actual.get("count"));
+        assertEquals(Long.valueOf(12345678901L), actual.get("big"));
+        assertEquals("word", actual.getString("bare"));
+
+        String array = "[1, \"two\", {\"three\": 3.0}]";
+        assertEquals(new JSONArray(new JSONTokener(array)).toString(),
+                     JSONArray.parse(array).toString());
+    }
+
+    @Test
+    public void streamsTokens() {
+        JSONReader json = new JSONReader(new StringReader(SOURCE));
+        assertEquals(JSONReader.BEGIN_OBJECT, json.next());
+        assertEquals(JSONReader.KEY, json.next());
+        assertEquals("name", json.getKey());
+        assertEquals(JSONReader.STRING, json.next());
+        assertEquals("ring \"a\" \u00e9", json.getString());
+        json.next();
+        json.next();
+        assertEquals(3, json.getInt());
+        json.next();
+        json.next();
+        assertEquals(12345678901L, json.getLong());
+        json.next();
+        json.next();
+        assertEquals(-0.125f, json.getFloat(), 0);
+        json.next();
+        json.next();
+        assertEquals(1e-7, json.getDouble(), 0);
+        json.next();
+        json.next();
+        assertTrue(json.getBoolean());
+        json.next();
+        assertEquals(JSONReader.NULL, json.next());
+        json.next();
+        json.next();
+        json.skipValue();  // the list
+        assertEquals(1, json.getDepth());
+        assertEquals("single", (json.next() == JSONReader.KEY) ? json.getKey() : null);
+    }
+
+    @Test
+    public void parsesNumbersExactly() {
+        Random random = new Random(3);
+        StringBuilder source = new StringBuilder("[");
+        double[] doubles = new double[2000];
+        for (int i = 0; i < doubles.length; i++) {
+            doubles[i] = (i % 2 == 0) ? random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20) : random.nextInt(100000) / 1000.0;
+            source.append(doubles[i]).append(',');
+        }
+        source.append("0]");
+        JSONReader json = new JSONReader(new StringReader(source.toString()));
+        json.next();
+        for (double value : doubles) {
+            json.next();
+            assertEquals(value, json.getDouble(), 0);
+            assertEquals(Float.parseFloat(json.getString()), json.getFloat(), 0);
+        }
+    }
+
+    @Test
+    public void writesNewlineDelimited() throws Exception {
+        StringWriter out = new StringWriter();
+        JSONWriter writer = new JSONWriter(out);
+        for (int i = 0; i < 3; i++) {
+            writer.beginObject();
+            writer.key("id").value(i);
+            writer.key("score").value(i + 0.5f);
+            writer.key("tags").beginArray().value("a\nb").nullValue().value(true).endArray();
+            writer.key("tree").value(JSONObject.parse("{\"k\": [1, 2]}"));
+            writer.endObject();
+        }
+        writer.close();
+        assertEquals(3, out.toString().split("\n").length);
+
+        JSONReader json = new JSONReader(new StringReader(out.toString()));
+        int count = 0;
+        Object value;
+        while ((value = json.readValue()) != null) {
+            JSONObject obj = (JSONObject) value;
+            assertEquals(count, obj.getInt("id"));
+            assertEquals(count + 0.5f, obj.getFloat("score"), 0);
+            assertEquals("a\nb", obj.getJSONArray("tags").getString(0));
+            assertEquals(2, obj.getJSONObject("tree").getJSONArray("k").getInt(1));
+            count++;
+        }
+        assertEquals(3, count);
+    }
+
+    @Test
+    public void sharesKeys() {
+        JSONObject a = JSONObject.parse("{\"temperature\": 1}");
+        JSONObject b = JSONObject.parse("{\"temperature\": 2}");
+        assertSame(a.keys().iterator().next(), b.keys().iterator().next());
+    }
+}
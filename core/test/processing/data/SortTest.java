@@ -0,0 +1,132 @@
+package processing.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SortTest {
+
+    @Test
+    public void primitivesMatchArraysSort() {
+        Random random = new Random(9);
+        int n = 50000;  // large enough for the radix path
+        int[] ints = new int[n];
+        long[] longs = new long[n];
+        float[] floats = new float[n];
+        double[] doubles = new double[n];
+        for (int i = 0; i < n; i++) {
+            ints[i] = random.nextInt();
+            longs[i] = random.nextLong() >> random.nextInt(64);
+            floats[i] = (float) random.nextGaussian();
+            doubles[i] = random.nextGaussian() * 1e300;
+        }
+        floats[7] = Float.NaN;
+        floats[8] = -0f;
+        floats[9] = Float.NEGATIVE_INFINITY;
+        doubles[7] = Double.NaN;
+
+        IntList intList = new IntList(ints);
+        intList.sort();
+        int[] expectedInts = ints.clone();
+        Arrays.sort(expectedInts);
+        assertArrayEquals(expectedInts, intList.array());
+        intList.sortReverse();
+        assertEquals(expectedInts[n - 1], intList.get(0));
+
+        long[] sortedLongs = longs.clone();
+        Sort.sort(sortedLongs, 0, n);
+        long[] expectedLongs = longs.clone();
+        Arrays.sort(expectedLongs);
+        assertArrayEquals(expectedLongs, sortedLongs);
+
+        FloatList floatList = new FloatList(floats);
+        floatList.sort();
+        float[] expectedFloats = floats.clone();
+        Arrays.sort(expectedFloats);
+        assertArrayEquals(expectedFloats, floatList.array(), 0);
+        floatList.sortReverse();
+        assertEquals(expectedFloats[n - 2], floatList.get(0), 0);
+        assertTrue(Float.isNaN(floatList.get(n - 1)));
+
+        DoubleList doubleList = new DoubleList(doubles);
+        doubleList.sort();
+        double[] expectedDoubles = doubles.clone();
+        Arrays.sort(expectedDoubles);
+        assertArrayEquals(expectedDoubles, doubleList.array(), 0);
+    }
+
+    @Test
+    public void genericSortHandlesBadInput() {
+        // presorted, reversed, and all-equal input used to recurse n deep
+        for (int pattern = 0; pattern < 3; pattern++) {
+            int n = 200000;
+            StringList list = new StringList();
+            for (int i = 0; i < n; i++) {
+                int v = (pattern == 0) ? i : (pattern == 1) ? n - i : 5;
+                list.append(String.format("%08d", v));
+            }
+            list.sort();
+            for (int i = 1; i < n; i++) {
+                assertTrue(list.get(i - 1).compareTo(list.get(i)) <= 0);
+            }
+        }
+    }
+
+    @Test
+    public void tableSortIsStable() {
+        Table table = new Table();
+        table.addColumn("name", Table.STRING);
+        table.addColumn("group", Table.INT);
+        table.addColumn("score", Table.FLOAT);
+        Random random = new Random(10);
+        int rows = 20000;
+        for (int i = 0; i < rows; i++) {
+            TableRow row = table.addRow();
+            row.setString(0, "n" + random.nextInt(50));
+            row.setInt(1, i);
+            row.setFloat(2, random.nextInt(20));
+        }
+
+        table.sort("score");
+        for (int i = 1; i < rows; i++) {
+            float a = table.getFloat(i - 1, 2);
+            float b = table.getFloat(i, 2);
+            assertTrue(a <= b);
+            if (a == b) {
+                assertTrue(table.getInt(i - 1, 1) < table.getInt(i, 1));
+            }
+        }
+
+        table.sortReverse("name");
+        for (int i = 1; i < rows; i++) {
+            int diff = table.getString(i - 1, 0).compareToIgnoreCase(table.getString(i, 0));
+            assertTrue(diff >= 0);
+            if (diff == 0) {
+                assertTrue(table.getFloat(i - 1, 2) <= table.getFloat(i, 2));
+            }
+        }
+    }
+
+    @Test
+    public void reverseSortsLeaveNaNLast() {
+        float[] values = { 3, Float.NaN, -1, 7, Float.NaN, 0 };
+        Table table = new Table();
+        table.addColumn("value", Table.FLOAT);
+        table.addColumn("exact", Table.DOUBLE);
+        for (float value : values) {
+            table.addRow(new Object[] { value, (double) value });
+        }
+        FloatList list = new FloatList(values);
+        list.sortReverse();
+
+        table.sortReverse("value");
+        assertArrayEquals(list.array(), table.getFloatColumn("value"), 0);
+        table.sort("value");
+        assertTrue(Float.isNaN(table.getFloat(5, "value")));
+        table.sortReverse("exact");
+        assertArrayEquals(list.array(), table.getFloatColumn("value"), 0);
+    }
+}
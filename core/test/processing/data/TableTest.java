@@ -4,6 +4,20 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
 import static org.junit.Assert.*;
 
 public class TableTest {
@@ -36,4 +50,413 @@ public class TableTest {
         Assert.assertEquals(people[0].name, "Person1");
         Assert.assertEquals(people[0].age, 30);
     }
+
+    private static InputStream createCSV(int rows) {
+        StringBuilder sb = new StringBuilder("id,name,score,kind\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(',');
+            if (i % 97 == 0) {
+                // quoted field with an embedded newline and escaped quotes
+                sb.append("\"row ").append(i).append("\nsays \"\"hi\"\"\"");
+            } else {
+                sb.append("name").append(i);
+            }
+            sb.append(',').append(i * 0.5f).append(',');
+            sb.append("kind").append(i % 7).append('\n');
+        }
+        return new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void parseParallel() throws IOException {
+        // large enough to be split across several chunks
+        int rows = 300000;
+
+        Table dictionary = new Table();
+        dictionary.addColumn("title");
+        dictionary.addColumn("type");
+        dictionary.addRow(new Object[] { "id", "int" });
+        dictionary.addRow(new Object[] { "name", "string" });
+        dictionary.addRow(new Object[] { "score", "float" });
+        dictionary.addRow(new Object[] { "kind", "category" });
+
+        Table serial = dictionary.typedParse(createCSV(rows), "csv,header");
+        Table parallel = dictionary.typedParse(createCSV(rows), "csv,header,parallel");
+
+        assertEquals(rows, serial.getRowCount());
+        assertEquals(serial.getRowCount(), parallel.getRowCount());
+        assertArrayEquals(serial.getColumnTitles(), parallel.getColumnTitles());
+        assertArrayEquals(serial.getIntColumn(0), parallel.getIntColumn(0));
+        assertArrayEquals(serial.getStringColumn(1), parallel.getStringColumn(1));
+        assertArrayEquals(serial.getStringColumn(2), parallel.getStringColumn(2));
+        // category indices must be numbered the same way as a serial parse
+        assertArrayEquals(serial.getIntColumn(3), parallel.getIntColumn(3));
+        assertEquals("row 97\nsays \"hi\"", parallel.getString(97, "name"));
+    }
+
+    @Test
+    public void parseParallelStrayQuotes() throws IOException {
+        // a stray quote inside a quoted field is kept as text by the serial
+        // parser, so it mustn't throw off where the chunks are cut
+        int rows = 300000;
+        StringBuilder sb = new StringBuilder("id,name\n");
+        for (int i = 0; i < rows; i++) {
+            sb.append(i).append(',');
+            sb.append(i == 5 ? "\"5\" tall\"" : "\"name\n" + i + "\"").append('\n');
+        }
+        byte[] csv = sb.toString().getBytes(StandardCharsets.UTF_8);
+        Table serial = new Table(new ByteArrayInputStream(csv), "csv,header");
+        Table parallel = new Table(new ByteArrayInputStream(csv), "csv,header,parallel");
+        assertEquals(rows, parallel.getRowCount());
+        assertEquals("5\" tall", parallel.getString(5, "name"));
+        assertArrayEquals(serial.getStringColumn("name"), parallel.getStringColumn("name"));
+    }
+
+    @Test
+    public void parseParallelErrors() {
+        String[] broken = {
+            "a,b\n1,2\n3,x\"y\n5,6\n",  // stray quote outside a quoted field
+            "a,b\n1,2\n3,\"never closed\n5,6\n"
+        };
+        for (String text : broken) {
+            byte[] csv = text.getBytes(StandardCharsets.UTF_8);
+            String serial = parseError(csv, "csv,header");
+            assertEquals("Error reading table on line 1", serial);
+            assertEquals(serial, parseError(csv, "csv,header,parallel"));
+        }
+    }
+
+    private static String parseError(byte[] csv, String options) {
+        try {
+            new Table(new ByteArrayInputStream(csv), options);
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    @Test
+    public void columnarRoundTrip() throws IOException {
+        Table table = new Table();
+        table.addColumn("id", Table.INT);
+        table.addColumn("name", Table.STRING);
+        table.addColumn("value", Table.DOUBLE);
+        table.addColumn("big", Table.LONG);
+        table.addColumn("kind", Table.CATEGORY);
+        for (int i = 0; i < 1000; i++) {
+            table.addRow(new Object[] {
+                i, (i % 10 == 0) ? null : "name" + (i % 13), i / 3.0,
+                (long) i << 40, "kind" + (i % 4)
+            });
+        }
+
+        File file = File.createTempFile("table", ".cbin");
+        file.deleteOnExit();
+        FileOutputStream output = new FileOutputStream(file);
+        assertTrue(table.save(output, "cbin"));
+
+        // mapped from the file, and read from a stream
+        Table mapped = new Table(file);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        table.save(bytes, "cbin");
+        Table streamed = new Table(new ByteArrayInputStream(bytes.toByteArray()), "cbin");
+
+        for (Table loaded : new Table[] { mapped, streamed }) {
+            assertEquals(1000, loaded.getRowCount());
+            assertArrayEquals(table.getColumnTitles(), loaded.getColumnTitles());
+            assertArrayEquals(table.getColumnTypes(), loaded.getColumnTypes());
+            // columns are decoded one at a time, as they're used
+            assertNull(loaded.columns[1]);
+            assertEquals(999.0 / 3.0, loaded.getDouble(999, "value"), 0);
+            assertNull(loaded.columns[1]);
+            assertArrayEquals(table.getStringColumn("name"), loaded.getStringColumn("name"));
+            assertArrayEquals(table.getIntColumn("id"), loaded.getIntColumn("id"));
+            assertArrayEquals(table.getLongColumn("big"), loaded.getLongColumn("big"));
+            assertArrayEquals(table.getIntColumn("kind"), loaded.getIntColumn("kind"));
+            assertEquals("kind3", loaded.getString(7, "kind"));
+        }
+
+        // changing the table decodes everything that's still mapped
+        Table edited = new Table(file);
+        edited.removeRow(0);
+        assertEquals(999, edited.getRowCount());
+        assertEquals("name1", edited.getString(0, "name"));
+        assertEquals("kind1", edited.getString(0, "kind"));
+    }
+
+    @Test
+    public void streamRows() throws IOException {
+        int rows = 20000;
+        Table schema = new Table();
+        schema.addColumn("id", Table.INT);
+        schema.addColumn("name");
+        schema.addColumn("score", Table.FLOAT);
+        schema.addColumn("kind", Table.CATEGORY);
+
+        long idSum = 0;
+        int count = 0;
+        TableRow previous = null;
+        for (TableRow row : schema.stream(createCSV(rows), "csv,header")) {
+            idSum += row.getInt("id");
+            if (count == 97) {
+                assertEquals("row 97\nsays \"hi\"", row.getString("name"));
+            }
+            if (previous != null) {
+                assertSame(previous, row);  // the row object is re-used
+            }
+            previous = row;
+            count++;
+        }
+        assertEquals(rows, count);
+        assertEquals((long) rows * (rows - 1) / 2, idSum);
+
+        Iterable<TableRow> parallel = schema.stream(createCSV(rows), "csv,header");
+        long parallelSum = StreamSupport.stream(parallel.spliterator(), true)
+            .mapToLong(row -> row.getInt("id") + (row.getString("kind").equals("kind3") ? 1L << 32 : 0))
+            .sum();
+        long kind3 = (rows + 3) / 7;
+        assertEquals(idSum + (kind3 << 32), parallelSum);
+    }
+
+    @Test
+    public void streamODS() throws IOException {
+        Table table = new Table();
+        table.addColumn("name");
+        table.addColumn("count", Table.INT);
+        for (int i = 0; i < 50; i++) {
+            table.addRow(new Object[] { "item " + i, i * 2 });
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertTrue(table.save(bytes, "ods"));
+
+        int row = 0;
+        Table schema = new Table();
+        for (TableRow streamed : schema.stream(new ByteArrayInputStream(bytes.toByteArray()), "ods,header")) {
+            assertEquals(table.getString(row, 0), streamed.getString("name"));
+            assertEquals(table.getInt(row, 1), streamed.getInt("count"));
+            row++;
+        }
+        assertEquals(50, row);
+
+        Table loaded = new Table(new ByteArrayInputStream(bytes.toByteArray()), "ods,header");
+        assertEquals("name", loaded.getColumnTitle(0));
+        assertEquals(table.getString(49, 0), loaded.getString(49, 0));
+    }
+
+    @Test
+    public void repeatedODSRows() throws IOException {
+        String content =
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+            "<office:document-content xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\" " +
+            "xmlns:table=\"urn:oasis:names:tc:opendocument:xmlns:table:1.0\" " +
+            "xmlns:text=\"urn:oasis:names:tc:opendocument:xmlns:text:1.0\" " +
+            "xmlns:xlink=\"http://www.w3.org/1999/xlink\"><office:body><office:spreadsheet>" +
+            "<table:table table:name=\"Skipped\"><table:table-row><table:table-cell><text:p>no</text:p>" +
+            "</table:table-cell></table:table-row></table:table>" +
+            "<table:table table:name=\"Data\">" +
+            "<table:table-row><table:table-cell><text:p>name</text:p></table:table-cell>" +
+            "<table:table-cell><text:p>value</text:p></table:table-cell></table:table-row>" +
+            "<table:table-row table:number-rows-repeated=\"3\">" +
+            "<table:table-cell table:number-columns-repeated=\"2\" office:value=\"7\"><text:p>7.0</text:p></table:table-cell>" +
+            "</table:table-row>" +
+            "<table:table-row table:number-rows-repeated=\"2\"><table:table-cell/></table:table-row>" +
+            "<table:table-row><table:table-cell><text:p>a<text:s text:c=\"2\"/><text:span>b</text:span></text:p></table:table-cell>" +
+            "<table:table-cell><text:p><text:a xlink:href=\"http://processing.org/\">link</text:a></text:p></table:table-cell></table:table-row>" +
+            "<table:table-row table:number-rows-repeated=\"1000\"><table:table-cell table:number-columns-repeated=\"5\"/></table:table-row>" +
+            "</table:table></office:spreadsheet></office:body></office:document-content>";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("content.xml"));
+            zip.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        String options = "ods,header,worksheet=Data";
+        Table loaded = new Table(new ByteArrayInputStream(bytes.toByteArray()), options);
+        assertArrayEquals(new String[] { "name", "value" }, loaded.getColumnTitles());
+        assertEquals(6, loaded.getRowCount());
+        assertEquals("7", loaded.getString(2, "value"));
+        assertNull(loaded.getString(3, "name"));
+        assertEquals("a  b", loaded.getString(5, "name"));
+        assertEquals("http://processing.org/", loaded.getString(5, "value"));
+
+        int row = 0;
+        for (TableRow streamed : new Table().stream(new ByteArrayInputStream(bytes.toByteArray()), options)) {
+            assertEquals(loaded.getString(row, 0), streamed.getString("name"));
+            assertEquals(loaded.getString(row, 1), streamed.getString("value"));
+            row++;
+        }
+        assertEquals(loaded.getRowCount(), row);
+    }
+
+    @Test
+    public void indexesFollowEdits() {
+        Table table = new Table();
+        table.addColumn("name");
+        table.addColumn("score", Table.INT);
+        table.addColumn("weight", Table.FLOAT);
+        Random random = new Random(5);
+        for (int i = 0; i < 200; i++) {
+            table.addRow(new Object[] { "n" + random.nextInt(20), random.nextInt(50), random.nextInt(100) / 4f });
+        }
+        table.createIndex("name", Table.HASH);
+        table.createIndex("score", Table.SORTED);
+        table.createIndex("weight", Table.SORTED);
+
+        for (int step = 0; step < 300; step++) {
+            int row = random.nextInt(table.getRowCount());
+            switch (step % 6) {
+                case 0: table.setString(row, "name", "n" + random.nextInt(20)); break;
+                case 1: table.setInt(row, "score", random.nextInt(50)); break;
+                case 2: table.addRow(new Object[] { "n" + random.nextInt(20), random.nextInt(50), 1.5f }); break;
+                case 3: table.insertRow(row, new Object[] { "n3", 7 }); break;
+                case 4: table.removeRow(row); break;
+                case 5: table.setFloat(row, "weight", random.nextInt(100) / 4f); break;
+            }
+            if (step == 150) {
+                table.sort("score");
+            }
+            for (int column = 0; column < 3; column++) {
+                String value = table.getString(random.nextInt(table.getRowCount()), column);
+                int[] expected = scan(table, value, column);
+                assertArrayEquals(expected, table.findRowIndices(value, column));
+                assertEquals(expected.length == 0 ? -1 : expected[0], table.findRowIndex(value, column));
+            }
+        }
+        assertArrayEquals(new int[0], table.findRowIndices("03", "score"));
+
+        int[] range = table.findRowIndicesInRange(10, 20, "score");
+        int count = 0;
+        for (int row = 0; row < table.getRowCount(); row++) {
+            int score = table.getInt(row, "score");
+            if (score >= 10 && score <= 20) {
+                assertEquals(row, range[count++]);
+            }
+        }
+        assertEquals(count, range.length);
+
+        int[] matched = table.matchRowIndices("n1[0-9]", "name");
+        assertTrue(matched.length > 0);
+        for (int row : matched) {
+            assertTrue(table.getString(row, "name").matches("n1[0-9]"));
+        }
+        assertEquals(table.getRowMap("name").get("n3").getString("name"), "n3");
+    }
+
+    @Test
+    public void indexedCategoryColumnsStartEmpty() {
+        Table table = new Table();
+        table.addColumn("kind", Table.CATEGORY);
+        table.addColumn("color", Table.CATEGORY);
+        table.createIndex("kind", Table.HASH);
+        table.createIndex("color", Table.SORTED);
+
+        table.addRow();  // nothing in the dictionaries yet
+        table.addRow(new Object[] { "cat", "gray" });
+        table.addRow(new Object[] { "dog", "brown" });
+        table.addRow();
+        // the rows that were never set hold code 0, the first name added
+        assertArrayEquals(new int[] { 0, 1, 3 }, table.findRowIndices("cat", "kind"));
+        assertArrayEquals(new int[] { 0, 1, 3 }, table.findRowIndices("gray", "color"));
+
+        Table other = new Table();
+        other.addColumn("kind", Table.CATEGORY);
+        other.addColumn("color", Table.CATEGORY);
+        other.addRow(new Object[] { "bird", "blue" });
+        other.addRow(new Object[] { "cat", "black" });
+        other.addRow(new Object[] { "fish", "red" });  // code 2, new here
+        for (TableRow row : other.rows()) {
+            table.addRow(row);
+        }
+
+        for (int column = 0; column < 2; column++) {
+            for (int row = 0; row < table.getRowCount(); row++) {
+                String value = table.getString(row, column);
+                assertArrayEquals(scan(table, value, column), table.findRowIndices(value, column));
+            }
+        }
+    }
+
+    @Test
+    public void groupByAgg() {
+        Table table = new Table();
+        table.addColumn("region");
+        table.addColumn("year", Table.INT);
+        table.addColumn("sales", Table.FLOAT);
+        int rows = 200000;  // enough for several parallel blocks
+        table.setRowCount(rows);
+        String[] regions = { "north", "south", "east", "west" };
+        for (int row = 0; row < rows; row++) {
+            table.setString(row, "region", regions[(row / 3) % 4]);
+            table.setInt(row, "year", 2000 + row % 5);
+            table.setFloat(row, "sales", (row % 5 == 4 && row % 7 == 0) ? Float.NaN : row % 100);
+        }
+        table.setColumnType("region", Table.CATEGORY);
+
+        Table summary = table.groupBy("region", "year").agg("count", "sum(sales)", "mean(sales)", "min(sales)", "max(year)");
+        assertEquals(20, summary.getRowCount());
+        assertEquals("north", summary.getString(0, "region"));
+        assertEquals(2000, summary.getInt(0, "year"));
+
+        int total = 0;
+        for (int group = 0; group < summary.getRowCount(); group++) {
+            String region = summary.getString(group, "region");
+            int year = summary.getInt(group, "year");
+            int count = 0;
+            int values = 0;
+            double sum = 0;
+            float min = Float.MAX_VALUE;
+            for (int row = 0; row < rows; row++) {
+                if (region.equals(table.getString(row, "region")) && year == table.getInt(row, "year")) {
+                    count++;
+                    float value = table.getFloat(row, "sales");
+                    if (!Float.isNaN(value)) {
+                        values++;
+                        sum += value;
+                        min = Math.min(min, value);
+                    }
+                }
+            }
+            assertEquals(count, summary.getInt(group, "count"));
+            assertEquals(sum, summary.getDouble(group, "sum(sales)"), 1e-6);
+            assertEquals(sum / values, summary.getDouble(group, "mean(sales)"), 1e-9);
+            assertEquals(min, summary.getFloat(group, "min(sales)"), 0);
+            assertEquals(year, summary.getInt(group, "max(year)"));
+            total += count;
+        }
+        assertEquals(rows, total);
+
+        Table all = table.groupBy(new int[0]).agg("count", "max(sales)");
+        assertEquals(1, all.getRowCount());
+        assertEquals(rows, all.getInt(0, "count"));
+        assertEquals(99, all.getFloat(0, "max(sales)"), 0);
+    }
+
+    @Test
+    public void groupByAggOnColumnarFile() throws IOException {
+        Table table = new Table();
+        table.addColumn("region", Table.CATEGORY);
+        table.addColumn("sales", Table.INT);
+        table.addColumn("price", Table.DOUBLE);
+        for (int i = 0; i < 100; i++) {
+            table.addRow(new Object[] { (i % 2 == 0) ? "north" : "south", i, i / 4.0 });
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        table.save(bytes, "cbin");
+        Table loaded = new Table(new ByteArrayInputStream(bytes.toByteArray()), "cbin");
+        assertNull(loaded.columns[1]);
+
+        Table summary = loaded.groupBy("region").agg("count", "sum(sales)", "max(price)");
+        assertEquals(2, summary.getRowCount());
+        assertEquals("north", summary.getString(0, "region"));
+        assertEquals(50, summary.getInt(0, "count"));
+        assertEquals(2450, summary.getLong(0, "sum(sales)"));
+        assertEquals(2500, summary.getLong(1, "sum(sales)"));
+        assertEquals(99 / 4.0, summary.getDouble(1, "max(price)"), 0);
+    }
+
+    private static int[] scan(Table table, String value, int column) {
+        return IntStream.range(0, table.getRowCount())
+            .filter(row -> Objects.equals(value, table.getString(row, column)))
+            .toArray();
+    }
 }
@@ -0,0 +1,58 @@
+package processing.data;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class XMLTest {
+
+    private static final String GPX =
+        "<?xml version=\"1.0\"?>\n" +
+        "<gpx xmlns:ex=\"http://example.com/ex\" version=\"1.1\">\n" +
+        "  <metadata><name>ride</name></metadata>\n" +
+        "  <trk name=\"first\">\n" +
+        "    <trkseg>\n" +
+        "      <trkpt lat=\"1.5\" lon=\"2\"><ele>10</ele><ex:note><![CDATA[a < b]]></ex:note></trkpt>\n" +
+        "      <trkpt lat=\"3.5\" lon=\"4\"><ele>20</ele></trkpt>\n" +
+        "    </trkseg>\n" +
+        "    <other><trkseg><trkpt lat=\"-1\" lon=\"-1\"/></trkseg></other>\n" +
+        "  </trk>\n" +
+        "  <trk name=\"second\"><trkseg><trkpt lat=\"5.5\" lon=\"6\"/></trkseg></trk>\n" +
+        "</gpx>\n";
+
+    @Test
+    public void streamMatchesDOM() throws Exception {
+        XML[] expected = XML.parse(GPX).getChildren("trk/trkseg/trkpt");
+        int count = 0;
+        InputStream input = new ByteArrayInputStream(GPX.getBytes(StandardCharsets.UTF_8));
+        for (XML point : XML.stream(input, "trk/trkseg/trkpt")) {
+            assertEquals(expected[count].getFloat("lat"), point.getFloat("lat"), 0);
+            assertEquals(expected[count].getChildren().length, point.getChildren().length);
+            assertEquals("trkseg", point.getParent().getName());
+            count++;
+        }
+        assertEquals(expected.length, count);
+    }
+
+    @Test
+    public void streamKeepsContent() {
+        int count = 0;
+        for (XML point : XML.stream(new StringReader(GPX), "trk/trkseg/trkpt")) {
+            if (count == 0) {
+                assertEquals(10, point.getChild("ele").getIntContent());
+                assertEquals("a < b", point.getChild("ex:note").getContent());
+                assertEquals("http://example.com/ex", point.getString("xmlns:ex"));
+                assertEquals("first", point.getParent().getParent().getString("name"));
+            } else if (count == 2) {
+                assertEquals("second", point.getParent().getParent().getString("name"));
+            }
+            count++;
+        }
+        assertEquals(3, count);
+    }
+}
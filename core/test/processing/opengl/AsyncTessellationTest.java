@@ -0,0 +1,222 @@
+package processing.opengl;
+
+import org.junit.Test;
+import processing.core.PConstants;
+import processing.core.PShape;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AsyncTessellationTest implements PConstants {
+
+    @Test
+    public void sameAsOnTheGLThread() {
+        for (boolean is3D : new boolean[] { false, true }) {
+            PGraphicsOpenGL pg = renderer();
+            PShapeOpenGL sync = group(pg, is3D, 300);
+            sync.updateTessellation();
+
+            PShapeOpenGL async = group(pg, is3D, 300);
+            async.tessellateAsync();
+            async.updateTessellation();
+            assertTrue(async.isReady());
+            assertTrue(async.needBufferInit);
+            assertSame(sync, async, sync, async);
+        }
+    }
+
+    @Test
+    public void leavesTheRendererAlone() {
+        PGraphicsOpenGL pg = renderer();
+        PShapeOpenGL shape = group(pg, false, 50);
+        pg.bezierDetail(3);
+        pg.curveDetail(4);
+        assertFalse(shape.isReady());
+        shape.tessellateAsync();
+        // the children have details of their own, set on the workers' renderers
+        shape.updateTessellation();
+        assertEquals(3, pg.bezierDetail);
+        assertEquals(4, pg.curveDetail);
+    }
+
+    @Test
+    public void changesAfterwardsTessellateAgain() {
+        PGraphicsOpenGL pg = renderer();
+        PShapeOpenGL shape = group(pg, false, 40);
+        shape.tessellateAsync();
+        while (!shape.isReady()) {
+            Thread.yield();
+        }
+        ((PShapeOpenGL) shape.getChild(3)).setParams(new float[] { 10, 10, 50, 40 });
+        assertNull(shape.tessTask);
+        assertFalse(shape.isReady());
+        shape.updateTessellation();
+        assertTrue(shape.isReady());
+
+        PShapeOpenGL same = group(pg, false, 40);
+        ((PShapeOpenGL) same.getChild(3)).setParams(new float[] { 10, 10, 50, 40 });
+        same.updateTessellation();
+        assertSame(same, shape, same, shape);
+
+        // tessellated already, so there is nothing to start
+        shape.tessellateAsync();
+        assertNull(shape.tessTask);
+    }
+
+    @Test
+    public void singleShape() {
+        for (boolean is3D : new boolean[] { false, true }) {
+            PGraphicsOpenGL pg = renderer();
+            PShapeOpenGL sync = new PShapeOpenGL(pg, ELLIPSE, 100, 100, 80, 60);
+            sync.set3D(is3D);
+            sync.updateTessellation();
+
+            PShapeOpenGL async = new PShapeOpenGL(pg, ELLIPSE, 100, 100, 80, 60);
+            async.set3D(is3D);
+            async.tessellateAsync();
+            async.updateTessellation();
+            assertTrue(async.isReady());
+            assertSame(sync, async, sync, async);
+        }
+    }
+
+    @Test
+    public void emptyGroup() {
+        PGraphicsOpenGL pg = renderer();
+        PShapeOpenGL group = new PShapeOpenGL(pg, GROUP);
+        group.tessellateAsync();
+        group.updateTessellation();
+        assertTrue(group.isReady());
+        assertEquals(0, group.tessGeo.polyVertexCount);
+    }
+
+    static PGraphicsOpenGL renderer() {
+        PGraphicsOpenGL pg = new PGraphicsOpenGL();
+        pg.tessellator = new PGraphicsOpenGL.Tessellator();
+        pg.fill = true;
+        pg.fillColor = 0xffcc8844;
+        pg.strokeColor = 0xff000000;
+        pg.strokeWeight = 2;
+        // ellipse detail comes from the size on the screen
+        pg.width = pg.height = 400;
+        pg.modelview.scale(0.02f);
+        return pg;
+    }
+
+    /** A group with some of every kind of leaf, and a nested group. */
+    static PShapeOpenGL group(PGraphicsOpenGL pg, boolean is3D, int count) {
+        Random random = new Random(7);
+        PShapeOpenGL group = new PShapeOpenGL(pg, GROUP);
+        group.set3D(is3D);
+        PShapeOpenGL nested = new PShapeOpenGL(pg, GROUP);
+        nested.set3D(is3D);
+        nested.translate(5, 5);
+        for (int i = 0; i < count; i++) {
+            float x = random.nextFloat() * 400;
+            float y = random.nextFloat() * 400;
+            PShapeOpenGL child;
+            switch (i % 5) {
+            case 0:
+                child = new PShapeOpenGL(pg, ELLIPSE, x, y, 30, 20);
+                break;
+            case 1:
+                child = new PShapeOpenGL(pg, RECT, x, y, 20, 10, 3);
+                break;
+            case 2:
+                child = new PShapeOpenGL(pg, PShape.GEOMETRY);
+                child.set3D(is3D);
+                child.bezierDetail(12);
+                child.beginShape();
+                child.vertex(x, y);
+                child.bezierVertex(x + 30, y - 20, x + 60, y + 40, x + 80, y);
+                child.vertex(x + 40, y + 10);
+                child.endShape(CLOSE);
+                break;
+            case 3:
+                child = new PShapeOpenGL(pg, PShape.GEOMETRY);
+                child.set3D(is3D);
+                child.curveDetail(9);
+                child.beginShape();
+                for (int j = 0; j < 8; j++) {
+                    child.curveVertex(x + random.nextFloat() * 50, y + random.nextFloat() * 50);
+                }
+                child.endShape();
+                break;
+            default:
+                child = new PShapeOpenGL(pg, PShape.GEOMETRY);
+                child.set3D(is3D);
+                child.beginShape(LINES);
+                child.vertex(x, y);
+                child.vertex(x + 20, y + 5);
+                child.endShape();
+                break;
+            }
+            child.set3D(is3D);
+            child.setStroke(i % 3 != 0);
+            if (i % 7 == 0) {
+                if (is3D) {
+                    child.rotate(0.5f, 0, 0, 1);
+                } else {
+                    child.rotate(0.5f);
+                }
+            }
+            (i % 4 == 0 ? nested : group).addChild(child);
+        }
+        group.addChild(nested);
+        return group;
+    }
+
+    /** Same geometry, index caches and ranges in both shapes and their children. */
+    static void assertSame(PShapeOpenGL rootA, PShapeOpenGL rootB,
+                           PShapeOpenGL a, PShapeOpenGL b) {
+        PGraphicsOpenGL.TessGeometry ta = rootA.tessGeo, tb = rootB.tessGeo;
+        if (a == rootA) {
+            assertEquals(ta.polyVertexCount, tb.polyVertexCount);
+            assertEquals(ta.polyIndexCount, tb.polyIndexCount);
+            assertEquals(ta.lineVertexCount, tb.lineVertexCount);
+            assertEquals(ta.pointVertexCount, tb.pointVertexCount);
+            assertTrue(0 < ta.polyIndexCount);
+            int n = ta.polyVertexCount;
+            assertArrayEquals(Arrays.copyOf(ta.polyVertices, 4 * n),
+                              Arrays.copyOf(tb.polyVertices, 4 * n), 0);
+            assertArrayEquals(Arrays.copyOf(ta.polyColors, n),
+                              Arrays.copyOf(tb.polyColors, n));
+            assertArrayEquals(Arrays.copyOf(ta.polyNormals, 3 * n),
+                              Arrays.copyOf(tb.polyNormals, 3 * n), 0);
+            assertArrayEquals(Arrays.copyOf(ta.polyIndices, ta.polyIndexCount),
+                              Arrays.copyOf(tb.polyIndices, tb.polyIndexCount));
+            n = ta.lineVertexCount;
+            assertArrayEquals(Arrays.copyOf(ta.lineVertices, 4 * n),
+                              Arrays.copyOf(tb.lineVertices, 4 * n), 0);
+            assertArrayEquals(Arrays.copyOf(ta.lineDirections, 4 * n),
+                              Arrays.copyOf(tb.lineDirections, 4 * n), 0);
+            assertArrayEquals(Arrays.copyOf(ta.lineIndices, ta.lineIndexCount),
+                              Arrays.copyOf(tb.lineIndices, tb.lineIndexCount));
+            assertSame(ta.polyIndexCache, tb.polyIndexCache);
+            assertSame(ta.lineIndexCache, tb.lineIndexCache);
+            assertSame(ta.pointIndexCache, tb.pointIndexCache);
+        }
+        assertEquals(a.firstPolyIndexCache, b.firstPolyIndexCache);
+        assertEquals(a.lastPolyIndexCache, b.lastPolyIndexCache);
+        assertEquals(a.firstLineIndexCache, b.firstLineIndexCache);
+        assertEquals(a.lastLineIndexCache, b.lastLineIndexCache);
+        assertEquals(a.firstPolyVertex, b.firstPolyVertex);
+        assertEquals(a.lastPolyVertex, b.lastPolyVertex);
+        assertEquals(a.lastLineVertex, b.lastLineVertex);
+        assertEquals(a.hasPolys, b.hasPolys);
+        assertEquals(a.getChildCount(), b.getChildCount());
+        for (int i = 0; i < a.getChildCount(); i++) {
+            assertSame(rootA, rootB, (PShapeOpenGL) a.getChild(i), (PShapeOpenGL) b.getChild(i));
+        }
+    }
+
+    static void assertSame(PGraphicsOpenGL.IndexCache a, PGraphicsOpenGL.IndexCache b) {
+        assertEquals(a.size, b.size);
+        assertArrayEquals(Arrays.copyOf(a.indexOffset, a.size), Arrays.copyOf(b.indexOffset, b.size));
+        assertArrayEquals(Arrays.copyOf(a.indexCount, a.size), Arrays.copyOf(b.indexCount, b.size));
+        assertArrayEquals(Arrays.copyOf(a.vertexOffset, a.size), Arrays.copyOf(b.vertexOffset, b.size));
+        assertArrayEquals(Arrays.copyOf(a.vertexCount, a.size), Arrays.copyOf(b.vertexCount, b.size));
+    }
+}
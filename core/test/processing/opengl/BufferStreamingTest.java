@@ -0,0 +1,214 @@
+package processing.opengl;
+
+import org.junit.Test;
+import processing.core.PApplet;
+import processing.core.PConstants;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class BufferStreamingTest implements PConstants {
+
+    @Test
+    public void streamsOnlyWhatWasDrawn() {
+        PGraphicsOpenGL pg = renderer(new PGraphicsOpenGL());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        pg.hint(ENABLE_BUFFER_STREAMING);
+        for (int frame = 0; frame < 3; frame++) {
+            pgl.resetCounts();
+            rects(pg, 10);
+            pg.flush();
+            // 4 floats of position and a color per vertex, short indices
+            assertEquals(40 * (4 * 4 + 4), pgl.vertexBytes);
+            assertEquals(60 * 2, pgl.indexBytes);
+            assertEquals(1, pgl.fences);
+            if (0 < frame) {
+                assertEquals(0, pgl.allocatedBytes);
+                assertEquals(0, pgl.bufferDataCalls);
+            }
+        }
+    }
+
+    @Test
+    public void withoutTheHintBuffersAreRespecified() {
+        PGraphicsOpenGL pg = renderer(new PGraphicsOpenGL());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        for (int frame = 0; frame < 3; frame++) {
+            rects(pg, 10);
+            pg.flush();
+            pgl.resetCounts();
+            rects(pg, 10);
+            pg.flush();
+            assertEquals(40 * (4 * 4 + 4), pgl.vertexBytes);
+            assertEquals(pgl.vertexBytes + pgl.indexBytes, pgl.allocatedBytes);
+            assertEquals(3, pgl.bufferDataCalls);
+            assertEquals(0, pgl.mapCalls);
+            assertEquals(0, pgl.fences);
+        }
+    }
+
+    @Test
+    public void drawsFromWhereEachFlushWentInTheRing() {
+        PGraphicsOpenGL pg = renderer(new PGraphicsOpenGL());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        pg.hint(ENABLE_BUFFER_STREAMING);
+        rects(pg, 10);
+        float[] first = Arrays.copyOf(pg.tessGeo.polyVertices, 4 * 40);
+        pg.flush();
+        assertEquals(0, pg.polyRing.vertexBase);
+
+        rects(pg, 5);
+        float[] second = Arrays.copyOf(pg.tessGeo.polyVertices, 4 * 20);
+        short[] indices = Arrays.copyOf(pg.tessGeo.polyIndices, 30);
+        pg.flush();
+        assertEquals(40, pg.polyRing.vertexBase);
+        assertEquals(60, pg.polyRing.indexBase);
+
+        FloatBuffer vertices = pgl.storage(pg.bufPolyVertex.glId).asFloatBuffer();
+        float[] stored = new float[4 * 60];
+        vertices.get(stored);
+        assertArrayEquals(first, Arrays.copyOfRange(stored, 0, 4 * 40), 0);
+        assertArrayEquals(second, Arrays.copyOfRange(stored, 4 * 40, 4 * 60), 0);
+
+        short[] storedIndices = new short[30];
+        pgl.storage(pg.bufPolyIndex.glId).position(60 * 2).slice()
+           .order(java.nio.ByteOrder.nativeOrder()).asShortBuffer().get(storedIndices);
+        assertArrayEquals(indices, storedIndices);
+    }
+
+    @Test
+    public void waitsOnlyWhenComingBackToARangeInUse() {
+        PGraphicsOpenGL pg = renderer(new PGraphicsOpenGL());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        pg.hint(ENABLE_BUFFER_STREAMING);
+        // the GPU is three flushes behind, and three fit in the ring
+        pgl.latency = 3;
+        for (int i = 0; i < 3; i++) {
+            rects(pg, 1250);
+            pg.flush();
+        }
+        assertEquals(10000, pg.polyRing.vertexBase);
+        assertEquals(0, pgl.stalls);
+
+        rects(pg, 1250);
+        pg.flush();
+        assertEquals(0, pg.polyRing.vertexBase);
+        assertEquals(1, pgl.stalls);
+
+        // a GPU that keeps up never holds the ring back
+        pg = renderer(new PGraphicsOpenGL());
+        pgl = (HeadlessPGL) pg.pgl;
+        pg.hint(ENABLE_BUFFER_STREAMING);
+        pgl.latency = 1;
+        for (int i = 0; i < 20; i++) {
+            rects(pg, 1250);
+            pg.flush();
+            assertTrue(pg.polyRing.fenceCount <= 2);
+        }
+        assertEquals(0, pgl.stalls);
+        assertEquals(0, pgl.waits);
+    }
+
+    @Test
+    public void growsForLargerFlushes() {
+        PGraphicsOpenGL pg = renderer(new PGraphicsOpenGL());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        pg.hint(ENABLE_BUFFER_STREAMING);
+        rects(pg, 10);
+        pg.flush();
+        pgl.resetCounts();
+        rects(pg, 6000);
+        pg.flush();
+        assertTrue(3 * 24000 <= pg.polyRing.vertexCapacity);
+        assertEquals(0, pg.polyRing.vertexBase);
+        assertEquals(3, pgl.bufferDataCalls);
+
+        pgl.resetCounts();
+        rects(pg, 6000);
+        pg.flush();
+        assertEquals(24000, pg.polyRing.vertexBase);
+        assertEquals(0, pgl.bufferDataCalls);
+    }
+
+    @Test
+    public void orphansInsteadWithoutSyncObjects() {
+        PGraphicsOpenGL pg = renderer(new PGraphicsOpenGL());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        pgl.version = "3.0 Headless";
+        pg.hint(ENABLE_BUFFER_STREAMING);
+        for (int i = 0; i < 3; i++) {
+            rects(pg, 1250);
+            pg.flush();
+        }
+        pgl.resetCounts();
+        rects(pg, 1250);
+        pg.flush();
+        assertEquals(0, pg.polyRing.vertexBase);
+        assertEquals(3, pgl.bufferDataCalls);
+        assertEquals(0, pgl.fences);
+        assertEquals(0, pgl.waits);
+    }
+
+    @Test
+    public void needsMapBufferRange() {
+        PGraphicsOpenGL pg = renderer(new PGraphicsOpenGL());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        pgl.version = "2.1 Headless";
+        pg.hint(ENABLE_BUFFER_STREAMING);
+        assertFalse(pg.getHint(ENABLE_BUFFER_STREAMING));
+        rects(pg, 10);
+        pg.flush();
+        assertNull(pg.polyRing);
+        assertEquals(0, pgl.mapCalls);
+    }
+
+    @Test
+    public void streamsLinesAndPointsToo() {
+        PGraphicsOpenGL pg = renderer(new PGraphics3D());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        pg.hint(ENABLE_BUFFER_STREAMING);
+        pg.fill = false;
+        pg.stroke = true;
+        for (int frame = 0; frame < 2; frame++) {
+            pgl.resetCounts();
+            pg.line(0, 0, 0, 50, 50, 0);
+            pg.point(20, 30, 0);
+            int lines = pg.tessGeo.lineVertexCount;
+            int points = pg.tessGeo.pointVertexCount;
+            int indices = pg.tessGeo.lineIndexCount + pg.tessGeo.pointIndexCount;
+            assertTrue(0 < lines && 0 < points);
+            pg.flush();
+            assertEquals(lines * (4 * 4 + 4 + 4 * 4) + points * (4 * 4 + 4 + 2 * 4),
+                         pgl.vertexBytes);
+            assertEquals(2 * indices, pgl.indexBytes);
+            assertEquals(2, pgl.fences);
+            if (0 < frame) assertEquals(0, pgl.allocatedBytes);
+        }
+        pg.hint(DISABLE_BUFFER_STREAMING);
+        assertNull(pg.lineRing);
+        assertNull(pg.pointRing);
+    }
+
+    static PGraphicsOpenGL renderer(PGraphicsOpenGL pg) {
+        pg.pgl = new HeadlessPGL(pg);
+        PApplet applet = new PApplet();
+        applet.g = pg;
+        pg.setParent(applet);
+        pg.setPrimary(true);
+        pg.width = pg.height = 400;
+        pg.fill = true;
+        pg.fillColor = 0xffcc8844;
+        pg.stroke = false;
+        pg.strokeColor = 0xff000000;
+        pg.strokeWeight = 2;
+        return pg;
+    }
+
+    static void rects(PGraphicsOpenGL pg, int count) {
+        for (int i = 0; i < count; i++) {
+            pg.rect(i % 400, i / 400, 10, 10);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package processing.opengl;
+
+import org.junit.Test;
+import processing.core.PConstants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class DepthSortTest implements PConstants {
+
+    @Test
+    public void drawsBackToFront() {
+        PGraphicsOpenGL pg = renderer();
+        List<Integer> depths = new ArrayList<>();
+        for (int i = 0; i < 200; i++) depths.add(i);
+        Collections.shuffle(depths, new Random(3));
+
+        pg.beginShape(TRIANGLES);
+        for (int z : depths) {
+            pg.vertex(-0.5f, -0.5f, z / 1000f);
+            pg.vertex(0.5f, -0.5f, z / 1000f);
+            pg.vertex(0, 0.5f, z / 1000f);
+        }
+        pg.endShape();
+        sort(pg, 1);
+
+        PGraphicsOpenGL.TessGeometry tess = pg.tessGeo;
+        float last = Float.MAX_VALUE;
+        for (int t = 0; t < 200; t++) {
+            float z = tess.polyVertices[4 * tess.polyIndices[3 * t] + 2];
+            assertTrue(z <= last);
+            last = z;
+        }
+    }
+
+    @Test
+    public void sameOrderOnAnyNumberOfThreads() {
+        PGraphicsOpenGL one = renderer();
+        PGraphicsOpenGL four = renderer();
+        soup(one, 20000, 1);
+        soup(four, 20000, 1);
+        sort(one, 1);
+        sort(four, 4);
+        assertArrayEquals(Arrays.copyOf(one.tessGeo.polyIndices, one.tessGeo.polyIndexCount),
+                          Arrays.copyOf(four.tessGeo.polyIndices, four.tessGeo.polyIndexCount));
+    }
+
+    @Test
+    public void interlockedTrianglesAreStillAllDrawn() {
+        // all on top of each other and crossing in depth, the worst case
+        // for the pass that fixes the overlaps
+        PGraphicsOpenGL pg = renderer();
+        soup(pg, 5000, 0);
+        PGraphicsOpenGL.TessGeometry tess = pg.tessGeo;
+        List<String> before = triangles(tess);
+        sort(pg, 1);
+        List<String> after = triangles(tess);
+        Collections.sort(before);
+        Collections.sort(after);
+        assertEquals(before, after);
+    }
+
+    @Test
+    public void keysKeepTheOrderOfTheFloats() {
+        float[] values = { Float.NEGATIVE_INFINITY, -1e9f, -2, -0.5f, -0f, 0,
+                           1e-30f, 0.5f, 3, 1e9f, Float.POSITIVE_INFINITY };
+        for (int i = 1; i < values.length; i++) {
+            int a = PGraphicsOpenGL.DepthSorter.sortKey(values[i - 1]);
+            int b = PGraphicsOpenGL.DepthSorter.sortKey(values[i]);
+            assertTrue(Integer.compareUnsigned(a, b) < 0);
+        }
+    }
+
+    static PGraphicsOpenGL renderer() {
+        PGraphicsOpenGL pg = BufferStreamingTest.renderer(new PGraphics3D());
+        pg.projection.reset();
+        return pg;
+    }
+
+    /** Random triangles, spread over the screen by the given amount. */
+    static void soup(PGraphicsOpenGL pg, int count, float spread) {
+        Random random = new Random(11);
+        pg.beginShape(TRIANGLES);
+        for (int i = 0; i < 3 * count; i++) {
+            float cx = (i / 3 % 100) / 100f * spread;
+            float cy = (i / 300 % 100) / 100f * spread;
+            pg.vertex(cx + random.nextFloat() * 0.2f - 0.1f,
+                      cy + random.nextFloat() * 0.2f - 0.1f,
+                      random.nextFloat() * 2 - 1);
+        }
+        pg.endShape();
+    }
+
+    static void sort(PGraphicsOpenGL pg, int threads) {
+        PGraphicsOpenGL.DepthSorter sorter = new PGraphicsOpenGL.DepthSorter(pg);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> sorter.sort(pg.tessGeo)).get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static List<String> triangles(PGraphicsOpenGL.TessGeometry tess) {
+        List<String> list = new ArrayList<>();
+        short[] indices = tess.polyIndices;
+        for (int t = 0; t < tess.polyIndexCount / 3; t++) {
+            list.add(indices[3 * t] + " " + indices[3 * t + 1] + " " + indices[3 * t + 2]);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,828 @@
+/* -*- mode: java; c-basic-offset: 2; indent-tabs-mode: nil -*- */
+
+/*
+  Part of the Processing project - http://processing.org
+
+  This library is free software; you can redistribute it and/or
+  modify it under the terms of the GNU Lesser General Public
+  License as published by the Free Software Foundation; either
+  version 2.1 of the License, or (at your option) any later version.
+
+  This library is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+  Lesser General Public License for more details.
+
+  You should have received a copy of the GNU Lesser General
+  Public License along with this library; if not, write to the
+  Free Software Foundation, Inc., 59 Temple Place, Suite 330,
+  Boston, MA  02111-1307  USA
+*/
+
+package processing.opengl;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * A PGL without OpenGL underneath, that keeps the contents of the buffers
+ * in memory and counts what goes into them, so the uploads of the renderer
+ * can be checked in a test without a context. Fences are signaled once
+ * <code>latency</code> newer ones have been created, like a GPU that is
+ * that many flushes behind; waiting on one that isn't counts as a stall,
+ * after which it and the ones before it are done.
+ * Shaders always compile, and their attributes and uniforms get locations
+ * if their sources declare them. Everything else does nothing.
+ */
+class HeadlessPGL extends PGL {
+  static {
+    // Same values as in PJOGL, for the constants the counting relies on
+    VERSION = 0x1F02;
+    MAX_TEXTURE_IMAGE_UNITS = 0x8872;
+    ARRAY_BUFFER = 0x8892;
+    ELEMENT_ARRAY_BUFFER = 0x8893;
+    STREAM_DRAW = 0x88E0;
+    STATIC_DRAW = 0x88E4;
+    MAP_WRITE_BIT = 0x0002;
+    MAP_INVALIDATE_RANGE_BIT = 0x0004;
+    MAP_INVALIDATE_BUFFER_BIT = 0x0008;
+    MAP_UNSYNCHRONIZED_BIT = 0x0020;
+    SYNC_GPU_COMMANDS_COMPLETE = 0x9117;
+    ALREADY_SIGNALED = 0x911A;
+    TIMEOUT_EXPIRED = 0x911B;
+    CONDITION_SATISFIED = 0x911C;
+    SYNC_FLUSH_COMMANDS_BIT = 0x0001;
+  }
+
+  /** What getString(VERSION) returns. */
+  String version = "3.3";
+
+  /** Newer fences needed before a fence is signaled. */
+  int latency = 0;
+
+  // Bytes of vertex and index data sent, whichever way
+  long vertexBytes;
+  long indexBytes;
+  // Bytes of storage (re)allocated with bufferData()
+  long allocatedBytes;
+  int bufferDataCalls;
+  int mapCalls;
+  int fences;
+  int waits;
+  int stalls;
+  int drawCalls;
+  int instancedDrawCalls;
+  int instances;
+  int constantAttribs;
+
+  protected int lastBuffer;
+  protected int lastShader;
+  protected HashMap<Integer, ByteBuffer> storage = new HashMap<>();
+  protected HashMap<Integer, Integer> bound = new HashMap<>();
+  protected HashMap<Integer, String> sources = new HashMap<>();
+  protected HashMap<Integer, ArrayList<Integer>> attached = new HashMap<>();
+  protected HashMap<String, Integer> locations = new HashMap<>();
+  protected HashMap<Integer, Integer> divisors = new HashMap<>();
+  protected long lastFence;
+  protected long signaled;
+
+
+  HeadlessPGL(PGraphicsOpenGL pg) {
+    super(pg);
+  }
+
+
+  void resetCounts() {
+    vertexBytes = indexBytes = allocatedBytes = 0;
+    bufferDataCalls = mapCalls = fences = waits = stalls = drawCalls = 0;
+    instancedDrawCalls = instances = constantAttribs = 0;
+  }
+
+
+  /** The contents of a buffer, as the GPU would see them. */
+  ByteBuffer storage(int buffer) {
+    ByteBuffer data = storage.get(buffer);
+    return data == null ? null : data.duplicate().order(ByteOrder.nativeOrder());
+  }
+
+
+  /** The divisor last set for an attribute. */
+  int divisor(int index) {
+    return divisors.getOrDefault(index, 0);
+  }
+
+
+  protected int location(int program, String name, String declaration) {
+    Pattern pattern = Pattern.compile("(?m)^\\s*" + declaration +
+                                      "(?:\\s+\\w+)+\\s+" + name + "\\s*[;\\[]");
+    for (int shader : attached.getOrDefault(program, new ArrayList<>())) {
+      Matcher m = pattern.matcher(sources.getOrDefault(shader, ""));
+      if (m.find()) {
+        String key = program + " " + name;
+        Integer loc = locations.get(key);
+        if (loc == null) {
+          loc = locations.size();
+          locations.put(key, loc);
+        }
+        return loc;
+      }
+    }
+    return -1;
+  }
+
+
+  protected void count(int target, int size) {
+    if (target == ELEMENT_ARRAY_BUFFER) {
+      indexBytes += size;
+    } else {
+      vertexBytes += size;
+    }
+  }
+
+
+  protected ByteBuffer bound(int target) {
+    Integer buffer = bound.get(target);
+    if (buffer == null || !storage.containsKey(buffer)) {
+      throw new IllegalStateException("No buffer with storage is bound");
+    }
+    return storage.get(buffer);
+  }
+
+
+  static protected void copy(Buffer data, ByteBuffer dst, int size) {
+    ByteBuffer to = dst.duplicate().order(ByteOrder.nativeOrder());
+    to.limit(to.position() + size);
+    if (data instanceof FloatBuffer) {
+      FloatBuffer from = ((FloatBuffer) data).duplicate();
+      from.limit(from.position() + size / SIZEOF_FLOAT);
+      to.asFloatBuffer().put(from);
+    } else if (data instanceof IntBuffer) {
+      IntBuffer from = ((IntBuffer) data).duplicate();
+      from.limit(from.position() + size / SIZEOF_INT);
+      to.asIntBuffer().put(from);
+    } else if (data instanceof ShortBuffer) {
+      ShortBuffer from = ((ShortBuffer) data).duplicate();
+      from.limit(from.position() + size / SIZEOF_SHORT);
+      to.asShortBuffer().put(from);
+    } else if (data instanceof ByteBuffer) {
+      ByteBuffer from = ((ByteBuffer) data).duplicate();
+      from.limit(from.position() + Math.min(size, from.remaining()));
+      to.put(from);
+    }
+  }
+
+
+  ///////////////////////////////////////////////////////////
+
+  // Counted
+
+
+  @Override
+  public String getString(int name) {
+    return name == VERSION ? version : "";
+  }
+
+
+  @Override
+  public int getError() {
+    return 0;
+  }
+
+
+  @Override
+  public String errorString(int err) {
+    return "";
+  }
+
+
+  @Override
+  public void genBuffers(int n, IntBuffer buffers) {
+    for (int i = 0; i < n; i++) {
+      buffers.put(i, ++lastBuffer);
+    }
+  }
+
+
+  @Override
+  public void bindBuffer(int target, int buffer) {
+    bound.put(target, buffer);
+  }
+
+
+  @Override
+  public void bufferData(int target, int size, Buffer data, int usage) {
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    if (data != null) {
+      copy(data, buffer, size);
+      count(target, size);
+    }
+    storage.put(bound.get(target), buffer);
+    allocatedBytes += size;
+    bufferDataCalls++;
+  }
+
+
+  @Override
+  public void bufferSubData(int target, int offset, int size, Buffer data) {
+    ByteBuffer buffer = bound(target).duplicate();
+    buffer.position(offset);
+    copy(data, buffer, size);
+    count(target, size);
+  }
+
+
+  @Override
+  public ByteBuffer mapBuffer(int target, int access) {
+    ByteBuffer buffer = bound(target);
+    count(target, buffer.capacity());
+    mapCalls++;
+    return buffer.duplicate();
+  }
+
+
+  @Override
+  public ByteBuffer mapBufferRange(int target, int offset, int length, int access) {
+    ByteBuffer buffer = bound(target).duplicate();
+    if (length <= 0 || buffer.capacity() < offset + length) {
+      throw new IllegalArgumentException("Range out of the buffer storage");
+    }
+    buffer.position(offset);
+    buffer.limit(offset + length);
+    count(target, length);
+    mapCalls++;
+    return buffer.slice();
+  }
+
+
+  @Override
+  public void unmapBuffer(int target) { }
+
+
+  @Override
+  public long fenceSync(int condition, int flags) {
+    fences++;
+    return ++lastFence;
+  }
+
+
+  @Override
+  public void deleteSync(long sync) { }
+
+
+  @Override
+  public int clientWaitSync(long sync, int flags, long timeout) {
+    if (0 < timeout) waits++;
+    if (sync <= signaled || latency <= lastFence - sync) {
+      return ALREADY_SIGNALED;
+    }
+    if (timeout == 0) {
+      return TIMEOUT_EXPIRED;
+    }
+    stalls++;
+    signaled = sync;
+    return CONDITION_SATISFIED;
+  }
+
+
+  @Override
+  public void drawArraysImpl(int mode, int first, int count) {
+    drawCalls++;
+  }
+
+
+  @Override
+  public void drawElementsImpl(int mode, int count, int type, int offset) {
+    drawCalls++;
+  }
+
+
+  @Override
+  public void drawElementsInstancedImpl(int mode, int count, int type, int offset, int instances) {
+    instancedDrawCalls++;
+    this.instances += instances;
+  }
+
+
+  @Override
+  public void vertexAttribDivisor(int index, int divisor) {
+    divisors.put(index, divisor);
+  }
+
+
+  @Override
+  public void vertexAttrib4f(int index, float value0, float value1, float value2, float value3) {
+    constantAttribs++;
+  }
+
+
+  @Override
+  public void shaderSource(int shader, String source) {
+    sources.put(shader, source);
+  }
+
+
+  @Override
+  public void attachShader(int program, int shader) {
+    attached.computeIfAbsent(program, p -> new ArrayList<>()).add(shader);
+  }
+
+
+  @Override
+  public int getAttribLocation(int program, String name) {
+    return location(program, name, "(?:attribute|in)");
+  }
+
+
+  @Override
+  public int getUniformLocation(int program, String name) {
+    return location(program, name, "uniform");
+  }
+
+
+  ///////////////////////////////////////////////////////////
+
+  // Everything else
+
+
+  @Override
+  public Object getNative() { return null; }
+
+  @Override
+  protected void setFrameRate(float fps) { }
+
+  @Override
+  protected void initSurface(int antialias) { }
+
+  @Override
+  protected void reinitSurface() { }
+
+  @Override
+  protected void registerListeners() { }
+
+  @Override
+  protected int getDepthBits() { return 0; }
+
+  @Override
+  protected int getStencilBits() { return 0; }
+
+  @Override
+  protected float getPixelScale() { return 1; }
+
+  @Override
+  protected void getGL(PGL pgl) { }
+
+  @Override
+  protected boolean canDraw() { return false; }
+
+  @Override
+  protected void requestFocus() { }
+
+  @Override
+  protected void requestDraw() { }
+
+  @Override
+  protected void swapBuffers() { }
+
+  @Override
+  protected void initFBOLayer() { }
+
+  @Override
+  protected int getGLSLVersion() { return 0; }
+
+  @Override
+  protected String getGLSLVersionSuffix() { return null; }
+
+  @Override
+  protected int getFontAscent(Object font) { return 0; }
+
+  @Override
+  protected int getFontDescent(Object font) { return 0; }
+
+  @Override
+  protected int getTextWidth(Object font, char[] buffer, int start, int stop) { return 0; }
+
+  @Override
+  protected Object getDerivedFont(Object font, float size) { return null; }
+
+  @Override
+  protected Tessellator createTessellator(TessellatorCallback callback) { return null; }
+
+  @Override
+  protected FontOutline createFontOutline(char ch, Object font) { return null; }
+
+  @Override
+  public void flush() { }
+
+  @Override
+  public void finish() { }
+
+  @Override
+  public void hint(int target, int hint) { }
+
+  @Override
+  public void enable(int value) { }
+
+  @Override
+  public void disable(int value) { }
+
+  @Override
+  public void getBooleanv(int value, IntBuffer data) { }
+
+  @Override
+  public void getIntegerv(int value, IntBuffer data) {
+    if (value == MAX_TEXTURE_IMAGE_UNITS) data.put(0, 16);
+  }
+
+  @Override
+  public void getFloatv(int value, FloatBuffer data) { }
+
+  @Override
+  public boolean isEnabled(int value) { return false; }
+
+  @Override
+  public void deleteBuffers(int n, IntBuffer buffers) { }
+
+  @Override
+  public void isBuffer(int buffer) { }
+
+  @Override
+  public void getBufferParameteriv(int target, int value, IntBuffer data) { }
+
+  @Override
+  public void depthRangef(float n, float f) { }
+
+  @Override
+  public void viewport(int x, int y, int w, int h) { }
+
+  @Override
+  protected void viewportImpl(int x, int y, int w, int h) { }
+
+  @Override
+  protected void readPixelsImpl(int x, int y, int width, int height, int format, int type, Buffer buffer) { }
+
+  @Override
+  protected void readPixelsImpl(int x, int y, int width, int height, int format, int type, long offset) { }
+
+  @Override
+  public void vertexAttrib1f(int index, float value) { }
+
+  @Override
+  public void vertexAttrib2f(int index, float value0, float value1) { }
+
+  @Override
+  public void vertexAttrib3f(int index, float value0, float value1, float value2) { }
+
+  @Override
+  public void vertexAttrib1fv(int index, FloatBuffer values) { }
+
+  @Override
+  public void vertexAttrib2fv(int index, FloatBuffer values) { }
+
+  @Override
+  public void vertexAttrib3fv(int index, FloatBuffer values) { }
+
+  @Override
+  public void vertexAttrib4fv(int index, FloatBuffer values) { }
+
+  @Override
+  public void vertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) { }
+
+  @Override
+  public void enableVertexAttribArray(int index) { }
+
+  @Override
+  public void disableVertexAttribArray(int index) { }
+
+  @Override
+  public void lineWidth(float width) { }
+
+  @Override
+  public void frontFace(int dir) { }
+
+  @Override
+  public void cullFace(int mode) { }
+
+  @Override
+  public void polygonOffset(float factor, float units) { }
+
+  @Override
+  public void pixelStorei(int pname, int param) { }
+
+  @Override
+  public void texImage2D(int target, int level, int internalFormat, int width, int height, int border, int format, int type, Buffer data) { }
+
+  @Override
+  public void copyTexImage2D(int target, int level, int internalFormat, int x, int y, int width, int height, int border) { }
+
+  @Override
+  public void texSubImage2D(int target, int level, int xOffset, int yOffset, int width, int height, int format, int type, Buffer data) { }
+
+  @Override
+  public void copyTexSubImage2D(int target, int level, int xOffset, int yOffset, int x, int y, int width, int height) { }
+
+  @Override
+  public void compressedTexImage2D(int target, int level, int internalFormat, int width, int height, int border, int imageSize, Buffer data) { }
+
+  @Override
+  public void compressedTexSubImage2D(int target, int level, int xOffset, int yOffset, int width, int height, int format, int imageSize, Buffer data) { }
+
+  @Override
+  public void texParameteri(int target, int pname, int param) { }
+
+  @Override
+  public void texParameterf(int target, int pname, float param) { }
+
+  @Override
+  public void texParameteriv(int target, int pname, IntBuffer params) { }
+
+  @Override
+  public void texParameterfv(int target, int pname, FloatBuffer params) { }
+
+  @Override
+  public void generateMipmap(int target) { }
+
+  @Override
+  public void genTextures(int n, IntBuffer textures) { }
+
+  @Override
+  public void deleteTextures(int n, IntBuffer textures) { }
+
+  @Override
+  public void getTexParameteriv(int target, int pname, IntBuffer params) { }
+
+  @Override
+  public void getTexParameterfv(int target, int pname, FloatBuffer params) { }
+
+  @Override
+  public boolean isTexture(int texture) { return false; }
+
+  @Override
+  protected void activeTextureImpl(int texture) { }
+
+  @Override
+  protected void bindTextureImpl(int target, int texture) { }
+
+  @Override
+  public int createShader(int type) { return ++lastShader; }
+
+  @Override
+  public void compileShader(int shader) { }
+
+  @Override
+  public void releaseShaderCompiler() { }
+
+  @Override
+  public void deleteShader(int shader) { }
+
+  @Override
+  public void shaderBinary(int count, IntBuffer shaders, int binaryFormat, Buffer binary, int length) { }
+
+  @Override
+  public int createProgram() { return ++lastShader; }
+
+  @Override
+  public void detachShader(int program, int shader) { }
+
+  @Override
+  public void linkProgram(int program) { }
+
+  @Override
+  public void useProgram(int program) { }
+
+  @Override
+  public void deleteProgram(int program) { }
+
+  @Override
+  public String getActiveAttrib(int program, int index, IntBuffer size, IntBuffer type) { return null; }
+
+  @Override
+  public void bindAttribLocation(int program, int index, String name) { }
+
+  @Override
+  public String getActiveUniform(int program, int index, IntBuffer size, IntBuffer type) { return null; }
+
+  @Override
+  public void uniform1i(int location, int value) { }
+
+  @Override
+  public void uniform2i(int location, int value0, int value1) { }
+
+  @Override
+  public void uniform3i(int location, int value0, int value1, int value2) { }
+
+  @Override
+  public void uniform4i(int location, int value0, int value1, int value2, int value3) { }
+
+  @Override
+  public void uniform1f(int location, float value) { }
+
+  @Override
+  public void uniform2f(int location, float value0, float value1) { }
+
+  @Override
+  public void uniform3f(int location, float value0, float value1, float value2) { }
+
+  @Override
+  public void uniform4f(int location, float value0, float value1, float value2, float value3) { }
+
+  @Override
+  public void uniform1iv(int location, int count, IntBuffer v) { }
+
+  @Override
+  public void uniform2iv(int location, int count, IntBuffer v) { }
+
+  @Override
+  public void uniform3iv(int location, int count, IntBuffer v) { }
+
+  @Override
+  public void uniform4iv(int location, int count, IntBuffer v) { }
+
+  @Override
+  public void uniform1fv(int location, int count, FloatBuffer v) { }
+
+  @Override
+  public void uniform2fv(int location, int count, FloatBuffer v) { }
+
+  @Override
+  public void uniform3fv(int location, int count, FloatBuffer v) { }
+
+  @Override
+  public void uniform4fv(int location, int count, FloatBuffer v) { }
+
+  @Override
+  public void uniformMatrix2fv(int location, int count, boolean transpose, FloatBuffer mat) { }
+
+  @Override
+  public void uniformMatrix3fv(int location, int count, boolean transpose, FloatBuffer mat) { }
+
+  @Override
+  public void uniformMatrix4fv(int location, int count, boolean transpose, FloatBuffer mat) { }
+
+  @Override
+  public void validateProgram(int program) { }
+
+  @Override
+  public boolean isShader(int shader) { return false; }
+
+  @Override
+  public void getShaderiv(int shader, int pname, IntBuffer params) { params.put(0, 1); }
+
+  @Override
+  public void getAttachedShaders(int program, int maxCount, IntBuffer count, IntBuffer shaders) { }
+
+  @Override
+  public String getShaderInfoLog(int shader) { return null; }
+
+  @Override
+  public String getShaderSource(int shader) { return null; }
+
+  @Override
+  public void getShaderPrecisionFormat(int shaderType, int precisionType, IntBuffer range, IntBuffer precision) { }
+
+  @Override
+  public void getVertexAttribfv(int index, int pname, FloatBuffer params) { }
+
+  @Override
+  public void getVertexAttribiv(int index, int pname, IntBuffer params) { }
+
+  @Override
+  public void getVertexAttribPointerv(int index, int pname, ByteBuffer data) { }
+
+  @Override
+  public void getUniformfv(int program, int location, FloatBuffer params) { }
+
+  @Override
+  public void getUniformiv(int program, int location, IntBuffer params) { }
+
+  @Override
+  public boolean isProgram(int program) { return false; }
+
+  @Override
+  public void getProgramiv(int program, int pname, IntBuffer params) { params.put(0, 1); }
+
+  @Override
+  public String getProgramInfoLog(int program) { return null; }
+
+  @Override
+  public void scissor(int x, int y, int w, int h) { }
+
+  @Override
+  public void sampleCoverage(float value, boolean invert) { }
+
+  @Override
+  public void stencilFunc(int func, int ref, int mask) { }
+
+  @Override
+  public void stencilFuncSeparate(int face, int func, int ref, int mask) { }
+
+  @Override
+  public void stencilOp(int sfail, int dpfail, int dppass) { }
+
+  @Override
+  public void stencilOpSeparate(int face, int sfail, int dpfail, int dppass) { }
+
+  @Override
+  public void depthFunc(int func) { }
+
+  @Override
+  public void blendEquation(int mode) { }
+
+  @Override
+  public void blendEquationSeparate(int modeRGB, int modeAlpha) { }
+
+  @Override
+  public void blendFunc(int src, int dst) { }
+
+  @Override
+  public void blendFuncSeparate(int srcRGB, int dstRGB, int srcAlpha, int dstAlpha) { }
+
+  @Override
+  public void blendColor(float red, float green, float blue, float alpha) { }
+
+  @Override
+  public void colorMask(boolean r, boolean g, boolean b, boolean a) { }
+
+  @Override
+  public void depthMask(boolean mask) { }
+
+  @Override
+  public void stencilMask(int mask) { }
+
+  @Override
+  public void stencilMaskSeparate(int face, int mask) { }
+
+  @Override
+  public void clearColor(float r, float g, float b, float a) { }
+
+  @Override
+  public void clearDepth(float d) { }
+
+  @Override
+  public void clearStencil(int s) { }
+
+  @Override
+  public void clear(int buf) { }
+
+  @Override
+  protected void bindFramebufferImpl(int target, int framebuffer) { }
+
+  @Override
+  public void deleteFramebuffers(int n, IntBuffer framebuffers) { }
+
+  @Override
+  public void genFramebuffers(int n, IntBuffer framebuffers) { }
+
+  @Override
+  public void bindRenderbuffer(int target, int renderbuffer) { }
+
+  @Override
+  public void deleteRenderbuffers(int n, IntBuffer renderbuffers) { }
+
+  @Override
+  public void genRenderbuffers(int n, IntBuffer renderbuffers) { }
+
+  @Override
+  public void renderbufferStorage(int target, int internalFormat, int width, int height) { }
+
+  @Override
+  public void framebufferRenderbuffer(int target, int attachment, int rendbuferfTarget, int renderbuffer) { }
+
+  @Override
+  public void framebufferTexture2D(int target, int attachment, int texTarget, int texture, int level) { }
+
+  @Override
+  public int checkFramebufferStatus(int target) { return 0; }
+
+  @Override
+  public boolean isFramebuffer(int framebuffer) { return false; }
+
+  @Override
+  public void getFramebufferAttachmentParameteriv(int target, int attachment, int pname, IntBuffer params) { }
+
+  @Override
+  public boolean isRenderbuffer(int renderbuffer) { return false; }
+
+  @Override
+  public void getRenderbufferParameteriv(int target, int pname, IntBuffer params) { }
+
+  @Override
+  public void blitFramebuffer(int srcX0, int srcY0, int srcX1, int srcY1, int dstX0, int dstY0, int dstX1, int dstY1, int mask, int filter) { }
+
+  @Override
+  public void renderbufferStorageMultisample(int target, int samples, int format, int width, int height) { }
+
+  @Override
+  public void readBuffer(int buf) { }
+
+  @Override
+  public void drawBuffer(int buf) { }
+}
@@ -0,0 +1,160 @@
+package processing.opengl;
+
+import org.junit.Test;
+import processing.core.PConstants;
+import processing.core.PShape;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class InstancedShapeTest implements PConstants {
+
+    @Test
+    public void drawsAllTheCopiesAtOnce() {
+        PGraphicsOpenGL pg = BufferStreamingTest.renderer(new PGraphics3D());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        PShape box = new PShapeOpenGL(pg, BOX, 10);
+        float[] transforms = transforms(1000, 12);
+        int[] colors = new int[1000];
+        Arrays.fill(colors, 0x80ff0000);
+
+        pgl.resetCounts();
+        pg.shape(box, transforms, colors, 1000);
+        assertEquals(1, pgl.instancedDrawCalls);
+        assertEquals(1000, pgl.instances);
+        assertEquals(0, pgl.drawCalls);
+        assertEquals(0, pg.instanceCount);
+
+        PShader shader = pg.getPrimaryPG().instanceShaders.get(pg.getPrimaryPG().defColorShader);
+        assertNotNull(shader);
+        assertTrue(shader.accessInstances());
+        for (int loc : new int[] { shader.instanceRow0Loc, shader.instanceRow1Loc,
+                                   shader.instanceRow2Loc, shader.instanceColorLoc }) {
+            assertEquals(0, pgl.divisor(loc));
+        }
+
+        // drawn regularly afterwards
+        pgl.resetCounts();
+        pg.shape(box);
+        assertEquals(0, pgl.instancedDrawCalls);
+        assertEquals(1, pgl.drawCalls);
+    }
+
+    @Test
+    public void uploadsTheCopiesOncePerCall() {
+        PGraphicsOpenGL pg = BufferStreamingTest.renderer(new PGraphics3D());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        PShape box = new PShapeOpenGL(pg, BOX, 10);
+        float[] transforms = transforms(300, 12);
+
+        pg.shape(box, transforms, null, 300);
+        pgl.resetCounts();
+        pg.shape(box, transforms, null, 300);
+        assertEquals(2, pgl.bufferDataCalls);
+        assertEquals(300 * (12 * 4 + 4), pgl.allocatedBytes);
+
+        FloatBuffer rows = pgl.storage(pg.bufInstanceRows.glId).asFloatBuffer();
+        float[] stored = new float[12 * 300];
+        rows.get(stored);
+        assertArrayEquals(transforms, stored, 0);
+        int white = PGL.javaToNativeARGB(0xffffffff);
+        assertEquals(white, pgl.storage(pg.bufInstanceColor.glId).asIntBuffer().get(299));
+    }
+
+    @Test
+    public void expands2DTransforms() {
+        PGraphicsOpenGL pg = BufferStreamingTest.renderer(new PGraphics2D());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        PShape rect = new PShapeOpenGL(pg, RECT, 0, 0, 10, 10);
+        float[] transforms = { 1, 2, 3, 4, 5, 6,  7, 8, 9, 10, 11, 12 };
+
+        pgl.resetCounts();
+        pg.shape(rect, transforms, null, 2);
+        assertEquals(1, pgl.instancedDrawCalls);
+        assertArrayEquals(new float[] { 1, 2, 0, 3,  4, 5, 0, 6,  0, 0, 1, 0,
+                                        7, 8, 0, 9,  10, 11, 0, 12,  0, 0, 1, 0 },
+                          Arrays.copyOf(pg.instanceRows, 24), 0);
+    }
+
+    @Test
+    public void centersTheCopiesWithShapeMode() {
+        PGraphicsOpenGL pg = BufferStreamingTest.renderer(new PGraphics2D());
+        PShape rect = new PShapeOpenGL(pg, RECT, 0, 0, 10, 10);
+        float[] transforms = { 2, 0, 5, 0, 2, 7 };  // scale by 2, then move
+
+        pg.shapeMode(CENTER);
+        pg.shape(rect, transforms, null, 1);
+        // the shape's own (-5, -5) goes inside the scale, as it does in shape()
+        assertArrayEquals(new float[] { 2, 0, 0, -5,  0, 2, 0, -3,  0, 0, 1, 0 },
+                          Arrays.copyOf(pg.instanceRows, 12), 0);
+
+        pg.shapeMode(CORNER);
+        pg.shape(rect, transforms, null, 1);
+        assertArrayEquals(new float[] { 2, 0, 0, 5,  0, 2, 0, 7,  0, 0, 1, 0 },
+                          Arrays.copyOf(pg.instanceRows, 12), 0);
+    }
+
+    @Test
+    public void oneCopyAtATimeWithoutInstancing() {
+        PGraphicsOpenGL pg = BufferStreamingTest.renderer(new PGraphics3D());
+        HeadlessPGL pgl = (HeadlessPGL) pg.pgl;
+        pgl.version = "3.0 Headless";
+        PShape box = new PShapeOpenGL(pg, BOX, 10);
+
+        pgl.resetCounts();
+        pg.shape(box, transforms(50, 12), null, 50);
+        assertEquals(0, pgl.instancedDrawCalls);
+        assertEquals(50, pgl.drawCalls);
+        assertEquals(50 * 4, pgl.constantAttribs);
+        assertNull(pg.bufInstanceRows);
+    }
+
+    @Test
+    public void rewritesTheDefaultShaders() {
+        String[] source = PGraphicsOpenGL.instanceVertexSource(new String[] {
+            "uniform mat4 transformMatrix;",
+            "attribute vec4 position;",
+            "attribute vec4 color;",
+            "attribute vec3 normal;",
+            "varying vec4 vertColor;",
+            "void main() {",
+            "  gl_Position = transformMatrix * position;",
+            "  vertColor = color * dot(normal, vec3(0, 0, 1));",
+            "}"
+        });
+        String text = String.join("\n", source);
+        assertTrue(text.contains("attribute vec4 instanceRow0;"));
+        assertTrue(text.contains("attribute vec4 instanceColor;"));
+        assertTrue(text.contains("gl_Position = transformMatrix * instancedPosition;"));
+        assertTrue(text.contains("vertColor = instancedColor * dot(instancedNormal, vec3(0, 0, 1));"));
+        assertTrue(text.contains("vec4 instancedColor = color * instanceColor;"));
+
+        // GLSL 1.30 and newer
+        source = PGraphicsOpenGL.instanceVertexSource(new String[] {
+            "in vec4 position;", "void main() {", "  gl_Position = position;", "}"
+        });
+        assertTrue(String.join("\n", source).contains("in vec4 instanceRow2;"));
+
+        assertNull(PGraphicsOpenGL.instanceVertexSource(new String[] {
+            "attribute vec2 where;", "void main() {", "  gl_Position = vec4(where, 0, 1);", "}"
+        }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsATransformPerCopy() {
+        PGraphicsOpenGL pg = BufferStreamingTest.renderer(new PGraphics3D());
+        pg.shape(new PShapeOpenGL(pg, BOX, 10), new float[12 * 9], null, 10);
+    }
+
+    static float[] transforms(int count, int stride) {
+        float[] transforms = new float[stride * count];
+        for (int i = 0; i < count; i++) {
+            for (int j = 0; j < stride; j++) {
+                transforms[stride * i + j] = i + j / 100f;
+            }
+        }
+        return transforms;
+    }
+}
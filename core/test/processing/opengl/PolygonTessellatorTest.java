@@ -0,0 +1,426 @@
+package processing.opengl;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PolygonTessellatorTest {
+
+    static class Recorder implements PolygonTessellator.Callback {
+        List<double[][]> triangles = new ArrayList<>();
+        int combines;
+        int calls;
+
+        @Override
+        public void combine(double[] coords, Object[] data,
+                            float[] weight, Object[] outData) {
+            int n = ((double[]) data[0]).length;
+            double[] vertex = new double[n];
+            for (int i = 3; i < n; i++) {
+                for (int j = 0; j < 4; j++) {
+                    vertex[i] += weight[j] * ((double[]) data[j])[i];
+                }
+            }
+            System.arraycopy(coords, 0, vertex, 0, 3);
+            outData[0] = vertex;
+            combines++;
+        }
+
+        @Override
+        public void triangles(double[][] vertices, int[] indices, int count) {
+            assertEquals(0, count % 3);
+            for (int i = 0; i < count; i += 3) {
+                triangles.add(new double[][] {
+                    vertices[indices[i]], vertices[indices[i + 1]], vertices[indices[i + 2]]
+                });
+            }
+            calls++;
+        }
+
+        double area() {
+            double sum = 0;
+            for (double[][] t : triangles) {
+                sum += signedArea(t);
+            }
+            return sum;
+        }
+    }
+
+    @Test
+    public void square() {
+        Recorder out = tessellate(PolygonTessellator.WINDING_ODD,
+                                  new double[] { 0, 0, 1, 0, 1, 1, 0, 1 });
+        assertEquals(2, out.triangles.size());
+        assertEquals(1, out.calls);
+        assertEquals(1, out.area(), 1e-12);
+
+        // clockwise in, clockwise out
+        out = tessellate(PolygonTessellator.WINDING_ODD,
+                         new double[] { 0, 0, 0, 1, 1, 1, 1, 0 });
+        for (double[][] t : out.triangles) {
+            assertTrue(signedArea(t) < 0);
+        }
+        assertEquals(-1, out.area(), 1e-12);
+    }
+
+    @Test
+    public void concave() {
+        // a comb, which fans and strips get wrong
+        double[] comb = { 0, 0, 10, 0, 10, 5, 8, 5, 8, 1, 6, 1, 6, 5, 4, 5, 4, 1, 2, 1, 2, 5, 0, 5 };
+        Recorder out = tessellate(PolygonTessellator.WINDING_NONZERO, comb);
+        assertEquals(shoelace(comb), out.area(), 1e-9);
+        for (double[][] t : out.triangles) {
+            assertTrue(signedArea(t) > 0);
+        }
+        checkCoverage(PolygonTessellator.WINDING_NONZERO, new double[][] { comb }, out, 500);
+    }
+
+    @Test
+    public void holes() {
+        double[] outer = { 0, 0, 10, 0, 10, 10, 0, 10 };
+        double[] same = { 3, 3, 7, 3, 7, 7, 3, 7 };
+        double[] reverse = { 3, 3, 3, 7, 7, 7, 7, 3 };
+
+        assertEquals(84, tessellate(PolygonTessellator.WINDING_ODD, outer, same).area(), 1e-9);
+        assertEquals(84, tessellate(PolygonTessellator.WINDING_ODD, outer, reverse).area(), 1e-9);
+        assertEquals(100, tessellate(PolygonTessellator.WINDING_NONZERO, outer, same).area(), 1e-9);
+        assertEquals(84, tessellate(PolygonTessellator.WINDING_NONZERO, outer, reverse).area(), 1e-9);
+
+        // several holes, and an island inside one of them
+        double[] a = { 1, 1, 1, 4, 4, 4, 4, 1 };
+        double[] b = { 6, 1, 6, 9, 9, 9, 9, 1 };
+        double[] island = { 7, 2, 8, 2, 8, 8, 7, 8 };
+        double[][] contours = { outer, a, b, island };
+        Recorder out = tessellate(PolygonTessellator.WINDING_NONZERO, contours);
+        assertEquals(100 - 9 - 24 + 6, out.area(), 1e-9);
+        checkCoverage(PolygonTessellator.WINDING_NONZERO, contours, out, 2000);
+    }
+
+    @Test
+    public void selfIntersecting() {
+        // a pentagram: ODD leaves the middle empty, NONZERO fills it
+        double[] star = new double[10];
+        for (int i = 0; i < 5; i++) {
+            double angle = Math.PI / 2 + i * 4 * Math.PI / 5;
+            star[2 * i] = Math.cos(angle);
+            star[2 * i + 1] = Math.sin(angle);
+        }
+        Recorder odd = tessellate(PolygonTessellator.WINDING_ODD, star);
+        Recorder nonzero = tessellate(PolygonTessellator.WINDING_NONZERO, star);
+        assertEquals(5, odd.combines);
+        assertTrue(odd.area() < nonzero.area());
+        checkCoverage(PolygonTessellator.WINDING_ODD, new double[][] { star }, odd, 2000);
+        checkCoverage(PolygonTessellator.WINDING_NONZERO, new double[][] { star }, nonzero, 2000);
+
+        // a bow tie: the two halves go around opposite ways
+        double[] bowtie = { 0, 0, 2, 2, 2, 0, 0, 2 };
+        Recorder out = tessellate(PolygonTessellator.WINDING_NONZERO, bowtie);
+        assertEquals(2, out.triangles.size());
+        assertEquals(1, out.combines);
+        double total = 0;
+        for (double[][] t : out.triangles) {
+            total += Math.abs(signedArea(t));
+        }
+        assertEquals(2, total, 1e-9);
+    }
+
+    @Test
+    public void combineMixesData() {
+        // two triangles crossing, with a value after x, y, z that's 0 on
+        // the left and 1 on the right
+        PolygonTessellator tess = new PolygonTessellator(new Recorder());
+        Recorder out = (Recorder) tess.callback;
+        tess.beginPolygon();
+        tess.beginContour();
+        tess.addVertex(new double[] { 0, 0, 0, 0 });
+        tess.addVertex(new double[] { 2, 2, 0, 1 });
+        tess.addVertex(new double[] { 2, 0, 0, 1 });
+        tess.addVertex(new double[] { 0, 2, 0, 0 });
+        tess.endContour();
+        tess.endPolygon();
+        for (double[][] t : out.triangles) {
+            for (double[] v : t) {
+                assertEquals(v[0] / 2, v[3], 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void touchingAndOverlapping() {
+        // two squares sharing an edge, and one that touches at a corner
+        double[] left = { 0, 0, 1, 0, 1, 1, 0, 1 };
+        double[] right = { 1, 0, 2, 0, 2, 1, 1, 1 };
+        double[] corner = { 2, 1, 3, 1, 3, 2, 2, 2 };
+        double[][] contours = { left, right, corner };
+        Recorder out = tessellate(PolygonTessellator.WINDING_NONZERO, contours);
+        assertEquals(3, out.area(), 1e-9);
+        checkCoverage(PolygonTessellator.WINDING_NONZERO, contours, out, 1000);
+
+        // a contour that goes around twice, and one with a spike
+        double[] twice = { 0, 0, 1, 0, 1, 1, 0, 1, 0, 0, 1, 0, 1, 1, 0, 1 };
+        assertEquals(1, tessellate(PolygonTessellator.WINDING_NONZERO, twice).area(), 1e-9);
+        assertEquals(0, tessellate(PolygonTessellator.WINDING_ODD, twice).triangles.size());
+        double[] spike = { 0, 0, 1, 0, 1, 1, 1, 3, 1, 1, 0, 1 };
+        assertEquals(1, tessellate(PolygonTessellator.WINDING_ODD, spike).area(), 1e-9);
+    }
+
+    @Test
+    public void degenerate() {
+        assertEquals(0, tessellate(PolygonTessellator.WINDING_ODD,
+                                   new double[] { 0, 0, 1, 1 }).calls);
+        assertEquals(0, tessellate(PolygonTessellator.WINDING_ODD,
+                                   new double[] { 0, 0, 1, 1, 2, 2, 3, 3 }).triangles.size());
+        // repeated points, and the first one again at the end
+        Recorder out = tessellate(PolygonTessellator.WINDING_ODD,
+                                  new double[] { 0, 0, 0, 0, 1, 0, 1, 1, 1, 1, 0, 1, 0, 0 });
+        assertEquals(2, out.triangles.size());
+        // points along the edges
+        out = tessellate(PolygonTessellator.WINDING_ODD,
+                         new double[] { 0, 0, 1, 0, 2, 0, 2, 1, 2, 2, 1, 2, 0, 2, 0, 1 });
+        assertEquals(4, out.area(), 1e-9);
+        for (double[][] t : out.triangles) {
+            assertTrue(signedArea(t) > 0);
+        }
+    }
+
+    @Test
+    public void anyPlane() {
+        // a square standing up in the YZ plane
+        PolygonTessellator tess = new PolygonTessellator(new Recorder());
+        Recorder out = (Recorder) tess.callback;
+        tess.beginPolygon();
+        tess.beginContour();
+        tess.addVertex(new double[] { 5, 0, 0 });
+        tess.addVertex(new double[] { 5, 2, 0 });
+        tess.addVertex(new double[] { 5, 2, 3 });
+        tess.addVertex(new double[] { 5, 0, 3 });
+        tess.endContour();
+        tess.endPolygon();
+        assertEquals(2, out.triangles.size());
+        double area = 0;
+        for (double[][] t : out.triangles) {
+            double[] u = { t[1][1] - t[0][1], t[1][2] - t[0][2] };
+            double[] v = { t[2][1] - t[0][1], t[2][2] - t[0][2] };
+            area += Math.abs(u[0] * v[1] - u[1] * v[0]) / 2;
+        }
+        assertEquals(6, area, 1e-9);
+    }
+
+    @Test
+    public void randomPolygons() {
+        Random random = new Random(8);
+        for (int round = 0; round < 60; round++) {
+            int contours = 1 + random.nextInt(3);
+            double[][] points = new double[contours][];
+            for (int c = 0; c < contours; c++) {
+                int n = 3 + random.nextInt(12);
+                points[c] = new double[2 * n];
+                for (int i = 0; i < 2 * n; i++) {
+                    // a coarse grid, so that there's plenty of touching
+                    points[c][i] = (round % 2 == 0) ? random.nextInt(8) : random.nextDouble() * 8;
+                }
+            }
+            for (int rule : new int[] { PolygonTessellator.WINDING_ODD,
+                                        PolygonTessellator.WINDING_NONZERO }) {
+                Recorder out = tessellate(rule, points);
+                checkCoverage(rule, points, out, 400);
+            }
+        }
+    }
+
+    @Test
+    public void bigCircle() {
+        int n = 20000;
+        double[] circle = new double[2 * n];
+        for (int i = 0; i < n; i++) {
+            circle[2 * i] = Math.cos(2 * Math.PI * i / n);
+            circle[2 * i + 1] = Math.sin(2 * Math.PI * i / n);
+        }
+        Recorder out = tessellate(PolygonTessellator.WINDING_NONZERO, circle);
+        assertEquals(n - 2, out.triangles.size());
+        assertEquals(shoelace(circle), out.area(), 1e-9);
+    }
+
+    @Test
+    public void reusable() {
+        PolygonTessellator tess = new PolygonTessellator(new Recorder());
+        Recorder out = (Recorder) tess.callback;
+        for (int i = 0; i < 3; i++) {
+            tess.setWindingRule(PolygonTessellator.WINDING_ODD);
+            tess.beginPolygon();
+            add(tess, new double[] { 0, 0, 4, 0, 4, 4, 0, 4 });
+            add(tess, new double[] { 1, 1, 3, 1, 3, 3, 1, 3 });
+            tess.endPolygon();
+        }
+        assertEquals(3, out.calls);
+        assertEquals(3 * 12, out.area(), 1e-9);
+    }
+
+    @Test
+    public void intoTessGeometry() {
+        // a square with a hole, through the renderer's own Tessellator
+        PGraphicsOpenGL pg = new PGraphicsOpenGL();
+        PGraphicsOpenGL.InGeometry in =
+            PGraphicsOpenGL.newInGeometry(pg, pg.polyAttribs, PGraphicsOpenGL.RETAINED);
+        PGraphicsOpenGL.TessGeometry tess =
+            PGraphicsOpenGL.newTessGeometry(pg, pg.polyAttribs, PGraphicsOpenGL.RETAINED);
+        in.setMaterial(0xffff0000, 0, 1, 0, 0, 0, 0);
+        in.addVertex(0, 0, false);
+        in.addVertex(10, 0, false);
+        in.addVertex(10, 10, false);
+        in.addVertex(0, 10, false);
+        in.addVertex(3, 3, true);
+        in.addVertex(3, 7, false);
+        in.addVertex(7, 7, false);
+        in.addVertex(7, 3, false);
+        tessellate(pg, in, tess);
+
+        // each vertex once, shared by the triangles
+        assertEquals(8, tess.polyVertexCount);
+        assertEquals(24, tess.polyIndexCount);
+        assertEquals(1, tess.polyIndexCache.size);
+        double area = 0;
+        for (int i = 0; i < tess.polyIndexCount; i += 3) {
+            double[][] t = new double[3][];
+            for (int j = 0; j < 3; j++) {
+                int v = 4 * tess.polyIndices[i + j];
+                t[j] = new double[] { tess.polyVertices[v], tess.polyVertices[v + 1] };
+            }
+            area += signedArea(t);
+        }
+        assertEquals(84, area, 1e-6);
+        assertEquals(0xffff0000, PGL.nativeToJavaARGB(tess.polyColors[0]));
+    }
+
+    @Test
+    public void moreVerticesThanAnIndexBlock() {
+        PGraphicsOpenGL pg = new PGraphicsOpenGL();
+        PGraphicsOpenGL.InGeometry in =
+            PGraphicsOpenGL.newInGeometry(pg, pg.polyAttribs, PGraphicsOpenGL.RETAINED);
+        PGraphicsOpenGL.TessGeometry tess =
+            PGraphicsOpenGL.newTessGeometry(pg, pg.polyAttribs, PGraphicsOpenGL.RETAINED);
+        int n = PGL.MAX_VERTEX_INDEX1 + 1000;
+        for (int i = 0; i < n; i++) {
+            in.addVertex(100 * (float) Math.cos(2 * Math.PI * i / n),
+                         100 * (float) Math.sin(2 * Math.PI * i / n), false);
+        }
+        tessellate(pg, in, tess);
+
+        PGraphicsOpenGL.IndexCache cache = tess.polyIndexCache;
+        assertEquals(2, cache.size);
+        int indices = 0;
+        for (int b = 0; b < cache.size; b++) {
+            indices += cache.indexCount[b];
+            for (int i = 0; i < cache.indexCount[b]; i++) {
+                int index = tess.polyIndices[cache.indexOffset[b] + i];
+                assertTrue(0 <= index && index < cache.vertexCount[b]);
+            }
+        }
+        assertEquals(tess.polyIndexCount, indices);
+        // less a few where the float points round off to a straight line
+        assertTrue(3 * (n - 10) < indices);
+    }
+
+    static void tessellate(PGraphicsOpenGL pg, PGraphicsOpenGL.InGeometry in,
+                           PGraphicsOpenGL.TessGeometry tess) {
+        PGraphicsOpenGL.Tessellator tessellator = new PGraphicsOpenGL.Tessellator();
+        tessellator.setInGeometry(in);
+        tessellator.setTessGeometry(tess);
+        tessellator.setTexCache(PGraphicsOpenGL.newTexCache(pg), null);
+        tessellator.setFill(true);
+        tessellator.setStroke(false);
+        tessellator.setRenderer(pg);
+        tessellator.set3D(false);
+        tessellator.tessellatePolygon(false, true, false);
+    }
+
+    static Recorder tessellate(int rule, double[]... contours) {
+        PolygonTessellator tess = new PolygonTessellator(new Recorder());
+        tess.setWindingRule(rule);
+        tess.beginPolygon();
+        for (double[] contour : contours) {
+            add(tess, contour);
+        }
+        tess.endPolygon();
+        return (Recorder) tess.callback;
+    }
+
+    static void add(PolygonTessellator tess, double[] contour) {
+        tess.beginContour();
+        for (int i = 0; i < contour.length; i += 2) {
+            tess.addVertex(new double[] { contour[i], contour[i + 1], 0 });
+        }
+        tess.endContour();
+    }
+
+    /**
+     * Random points should be covered by exactly one triangle where the
+     * winding rule says the polygon is filled, and by none elsewhere.
+     */
+    static void checkCoverage(int rule, double[][] contours, Recorder out, int samples) {
+        double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (double[] c : contours) {
+            for (int i = 0; i < c.length; i += 2) {
+                minX = Math.min(minX, c[i]);
+                maxX = Math.max(maxX, c[i]);
+                minY = Math.min(minY, c[i + 1]);
+                maxY = Math.max(maxY, c[i + 1]);
+            }
+        }
+        Random random = new Random(1);
+        for (int s = 0; s < samples; s++) {
+            double x = minX + random.nextDouble() * (maxX - minX);
+            double y = minY + random.nextDouble() * (maxY - minY);
+            int winding = 0;
+            for (double[] c : contours) {
+                winding += winding(c, x, y);
+            }
+            boolean filled = rule == PolygonTessellator.WINDING_ODD ?
+                (winding & 1) != 0 : winding != 0;
+            int covered = 0;
+            for (double[][] t : out.triangles) {
+                if (inside(t, x, y)) covered++;
+            }
+            assertEquals("at " + x + ", " + y, filled ? 1 : 0, covered);
+        }
+    }
+
+    static int winding(double[] c, double x, double y) {
+        int w = 0;
+        int n = c.length / 2;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            double ax = c[2 * j], ay = c[2 * j + 1];
+            double bx = c[2 * i], by = c[2 * i + 1];
+            double side = (bx - ax) * (y - ay) - (by - ay) * (x - ax);
+            if (ay <= y && by > y && side > 0) w++;
+            if (ay > y && by <= y && side < 0) w--;
+        }
+        return w;
+    }
+
+    static boolean inside(double[][] t, double x, double y) {
+        double d1 = (t[1][0] - t[0][0]) * (y - t[0][1]) - (t[1][1] - t[0][1]) * (x - t[0][0]);
+        double d2 = (t[2][0] - t[1][0]) * (y - t[1][1]) - (t[2][1] - t[1][1]) * (x - t[1][0]);
+        double d3 = (t[0][0] - t[2][0]) * (y - t[2][1]) - (t[0][1] - t[2][1]) * (x - t[2][0]);
+        return (d1 > 0 && d2 > 0 && d3 > 0) || (d1 < 0 && d2 < 0 && d3 < 0);
+    }
+
+    static double signedArea(double[][] t) {
+        return ((t[1][0] - t[0][0]) * (t[2][1] - t[0][1]) -
+                (t[1][1] - t[0][1]) * (t[2][0] - t[0][0])) / 2;
+    }
+
+    static double shoelace(double[] c) {
+        double sum = 0;
+        int n = c.length / 2;
+        for (int i = 0, j = n - 1; i < n; j = i++) {
+            sum += c[2 * j] * c[2 * i + 1] - c[2 * i] * c[2 * j + 1];
+        }
+        return sum / 2;
+    }
+}